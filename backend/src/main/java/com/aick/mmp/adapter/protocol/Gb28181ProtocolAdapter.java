@@ -1,25 +1,50 @@
 package com.aick.mmp.adapter.protocol;
 
+import com.aick.mmp.adapter.protocol.gb28181.Gb28181MediaReceiver;
+import com.aick.mmp.adapter.protocol.gb28181.Gb28181SipServer;
+import com.aick.mmp.adapter.protocol.gb28181.SipDevice;
+import com.aick.mmp.adapter.protocol.gb28181.SipDialog;
+import com.aick.mmp.adapter.protocol.media.AccessUnitListener;
+import com.aick.mmp.adapter.protocol.media.IngestStatistics;
 import com.aick.mmp.model.Camera;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * GB28181协议适配器，处理国标协议摄像头的接入和媒体流管理
+ * <p>
+ * 摄像头的connectionUrl填写设备编码和通道编码，格式为gb28181://{设备编码}/{通道编码}，
+ * 省略通道编码时使用设备目录中的第一个通道
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class Gb28181ProtocolAdapter implements ProtocolAdapter {
 
-    // 存储活动的GB28181会话
-    private final Map<String, Object> gb28181SessionMap = new ConcurrentHashMap<>();
-    private final Map<String, Object> activeConnections = new ConcurrentHashMap<>();
+    private static final String URL_SCHEME = "gb28181://";
+
+    private final Gb28181SipServer sipServer;
+    private final Gb28181MediaReceiver mediaReceiver;
+
+    @Value("${gb28181.media.ip:127.0.0.1}")
+    private String mediaIp = "127.0.0.1";
+
+    @Value("${gb28181.invite-timeout:10000}")
+    private long inviteTimeoutMs = 10000;
+
+    // 存储活动的GB28181点播会话
+    private final Map<String, Gb28181StreamSession> activeConnections = new ConcurrentHashMap<>();
 
     @Override
     public String getProtocol() {
@@ -30,11 +55,9 @@ public class Gb28181ProtocolAdapter implements ProtocolAdapter {
     public boolean testConnection(Camera camera) {
         try {
             log.info("Testing GB28181 connection for camera: {}", camera.getName());
-            
-            // 模拟GB28181连接测试
-            // 实际实现应该通过GB28181协议进行SIP注册和心跳检测
-            
-            return true; // 模拟成功
+            // 设备已向平台注册且心跳未超时即认为可用
+            String[] address = parseConnectionUrl(camera);
+            return sipServer.isOnline(address[0]);
         } catch (Exception e) {
             log.error("GB28181 connection test failed for camera {}: {}", camera.getId(), e.getMessage());
             return false;
@@ -43,39 +66,70 @@ public class Gb28181ProtocolAdapter implements ProtocolAdapter {
 
     @Override
     public String startStreamSession(Camera camera) {
+        return startStreamSession(camera, accessUnit -> { });
+    }
+
+    @Override
+    public String startStreamSession(Camera camera, AccessUnitListener listener) {
+        CompletableFuture<SipDialog> future = null;
+        Gb28181MediaReceiver.MediaStream mediaStream = null;
         try {
             String sessionId = generateSessionId();
-            
-            log.info("Starting GB28181 stream session for camera: {} (session: {})", 
+
+            log.info("Starting GB28181 stream session for camera: {} (session: {})",
                     camera.getId(), sessionId);
-            
-            // 模拟启动GB28181流会话
-            // 实际实现应该发送GB28181 Invite请求获取媒体流
-            
-            activeConnections.put(sessionId, camera);
-            gb28181SessionMap.put(sessionId, "sip-session-" + sessionId);
-            
+
+            String[] address = parseConnectionUrl(camera);
+            String channelId = address[1] != null ? address[1] : defaultChannel(address[0]);
+            String ssrc = sipServer.nextSsrc();
+            // 先按SSRC登记接收流水线，设备收到INVITE后可能立即推流
+            mediaStream = mediaReceiver.open(Long.parseLong(ssrc), listener);
+            future = sipServer.invite(address[0], channelId, mediaIp, mediaReceiver.getPort(), ssrc);
+            SipDialog dialog = future.get(inviteTimeoutMs, TimeUnit.MILLISECONDS);
+
+            String answeredSsrc = answeredSsrc(dialog.getAnswerSdp());
+            if (answeredSsrc != null && !answeredSsrc.equals(ssrc)) {
+                // 部分设备不使用平台分配的SSRC，以设备应答的为准
+                mediaReceiver.changeSsrc(mediaStream, Long.parseLong(answeredSsrc));
+            }
+            Gb28181StreamSession session = new Gb28181StreamSession(dialog, mediaStream);
+            activeConnections.put(sessionId, session);
+            dialog.setTerminationListener(ended -> {
+                Gb28181StreamSession removed = activeConnections.remove(sessionId);
+                if (removed != null) {
+                    log.warn("GB28181 stream session {} ended by device {}", sessionId, ended.getDeviceId());
+                    mediaReceiver.close(removed.mediaStream, new IllegalStateException("device sent BYE"));
+                }
+            });
+
             return sessionId;
         } catch (Exception e) {
-            log.error("Failed to start GB28181 stream session for camera {}: {}", 
-                    camera.getId(), e.getMessage());
-            throw new RuntimeException("GB28181 stream initialization failed: " + e.getMessage());
+            if (future != null) {
+                // 等待超时后INVITE仍可能成功，成功时立即挂断
+                future.thenAccept(sipServer::bye);
+            }
+            if (mediaStream != null) {
+                mediaReceiver.close(mediaStream, null);
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            String reason = e instanceof ExecutionException && e.getCause() != null ? e.getCause().getMessage()
+                    : e instanceof TimeoutException ? "INVITE timed out" : e.getMessage();
+            log.error("Failed to start GB28181 stream session for camera {}: {}",
+                    camera.getId(), reason);
+            throw new RuntimeException("GB28181 stream initialization failed: " + reason);
         }
     }
 
     @Override
     public void stopStreamSession(String sessionId) {
         try {
-            // 停止媒体流
-            String sipSession = (String) gb28181SessionMap.remove(sessionId);
-            if (sipSession != null) {
-                log.info("Stopped GB28181 SIP session: {}", sipSession);
-            }
-
-            // 移除连接
-            Object connection = activeConnections.remove(sessionId);
-            if (connection != null) {
-                log.info("Stopped GB28181 stream session: {}", sessionId);
+            Gb28181StreamSession session = activeConnections.remove(sessionId);
+            if (session != null) {
+                sipServer.bye(session.dialog);
+                mediaReceiver.close(session.mediaStream, null);
+                log.info("Stopped GB28181 stream session: {} (call {})", sessionId, session.dialog.getCallId());
             }
         } catch (Exception e) {
             log.error("Error stopping GB28181 stream session {}: {}", sessionId, e.getMessage());
@@ -84,7 +138,7 @@ public class Gb28181ProtocolAdapter implements ProtocolAdapter {
 
     @Override
     public void adjustStreamQuality(String sessionId, int qualityLevel) {
-        if (!gb28181SessionMap.containsKey(sessionId)) {
+        if (!activeConnections.containsKey(sessionId)) {
             throw new RuntimeException("GB28181 stream session not found: " + sessionId);
         }
 
@@ -106,7 +160,7 @@ public class Gb28181ProtocolAdapter implements ProtocolAdapter {
      * 发送GB28181 PTZ控制命令
      */
     public void sendPTZCommand(String sessionId, String command, int speed) {
-        if (!gb28181SessionMap.containsKey(sessionId)) {
+        if (!activeConnections.containsKey(sessionId)) {
             throw new RuntimeException("GB28181 stream session not found: " + sessionId);
         }
 
@@ -120,26 +174,84 @@ public class Gb28181ProtocolAdapter implements ProtocolAdapter {
 
     @Override
     public Map<String, Object> getStreamMetrics(String sessionId) {
-        if (!activeConnections.containsKey(sessionId)) {
+        Gb28181StreamSession session = activeConnections.get(sessionId);
+        if (session == null) {
             throw new RuntimeException("GB28181 stream session not found: " + sessionId);
         }
 
-        // 模拟返回流指标和设备状态
+        SipDialog dialog = session.dialog;
+        long now = System.currentTimeMillis();
         Map<String, Object> deviceStatus = new HashMap<>();
-        deviceStatus.put("online", true);
-        deviceStatus.put("signalLevel", 85);
-        
+        SipDevice device = sipServer.getDevice(dialog.getDeviceId());
+        deviceStatus.put("online", device != null && device.isOnline());
+        if (device != null) {
+            deviceStatus.put("lastKeepaliveMillisAgo", now - device.getLastKeepaliveAt());
+            deviceStatus.put("keepaliveCount", device.getKeepaliveCount());
+            deviceStatus.put("channelCount", device.getChannels().size());
+        }
+
         Map<String, Object> metrics = new HashMap<>();
-        metrics.put("bitrate", 2048);
-        metrics.put("framerate", 25);
-        metrics.put("packetLoss", 0.02);
-        metrics.put("latency", 120);
+        IngestStatistics statistics = session.mediaStream.getStatistics();
+        metrics.putAll(statistics.toMetrics());
+        metrics.put("framerate", statistics.getFrameRate());
+        metrics.put("packetLoss", statistics.getPacketLossPercent());
+        long elapsedMs = Math.max(1, now - session.mediaStream.getOpenedAt());
+        metrics.put("bitrate", session.mediaStream.getBytesReceived() * 8 / elapsedMs);
+        metrics.put("bytesReceived", session.mediaStream.getBytesReceived());
+        metrics.put("deviceId", dialog.getDeviceId());
+        metrics.put("channelId", dialog.getChannelId());
+        metrics.put("ssrc", dialog.getSsrc());
+        metrics.put("callId", dialog.getCallId());
+        metrics.put("sessionDurationMillis", now - dialog.getEstablishedAt());
         metrics.put("deviceStatus", deviceStatus);
         metrics.put("protocol", "GB28181");
 
         return metrics;
     }
 
+    /**
+     * 解析connectionUrl，返回[设备编码, 通道编码或null]
+     */
+    private String[] parseConnectionUrl(Camera camera) {
+        String url = camera.getConnectionUrl();
+        if (url == null || url.trim().isEmpty()) {
+            throw new RuntimeException("GB28181 camera has no device id: " + camera.getId());
+        }
+        String value = url.trim();
+        if (value.regionMatches(true, 0, URL_SCHEME, 0, URL_SCHEME.length())) {
+            value = value.substring(URL_SCHEME.length());
+        }
+        int separator = value.indexOf('/');
+        if (separator < 0) {
+            separator = value.indexOf(':');
+        }
+        String deviceId = separator < 0 ? value : value.substring(0, separator);
+        String channelId = separator < 0 ? null : value.substring(separator + 1);
+        return new String[]{deviceId, channelId == null || channelId.isEmpty() ? null : channelId};
+    }
+
+    private String defaultChannel(String deviceId) {
+        SipDevice device = sipServer.getDevice(deviceId);
+        List<SipDevice.Channel> channels = device == null ? null : device.getChannels();
+        return channels == null || channels.isEmpty() ? deviceId : channels.get(0).getChannelId();
+    }
+
+    /**
+     * 设备200 OK应答SDP中的y=字段（SSRC）
+     */
+    private String answeredSsrc(String sdp) {
+        if (sdp == null) {
+            return null;
+        }
+        for (String line : sdp.split("\r?\n")) {
+            if (line.startsWith("y=") && line.length() > 2) {
+                String value = line.substring(2).trim();
+                return value.matches("\\d{1,10}") ? value : null;
+            }
+        }
+        return null;
+    }
+
     private String generateSessionId() {
         return "gb28181-" + System.currentTimeMillis() + "-" + (int)(Math.random() * 1000);
     }
@@ -201,4 +313,17 @@ public class Gb28181ProtocolAdapter implements ProtocolAdapter {
                 return "1280x720";  // 默认中等质量
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 一路国标点播：SIP对话加上按SSRC接收的媒体流
+     */
+    private static class Gb28181StreamSession {
+        private final SipDialog dialog;
+        private final Gb28181MediaReceiver.MediaStream mediaStream;
+
+        Gb28181StreamSession(SipDialog dialog, Gb28181MediaReceiver.MediaStream mediaStream) {
+            this.dialog = dialog;
+            this.mediaStream = mediaStream;
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package com.aick.mmp.adapter.protocol;
 
+import com.aick.mmp.adapter.protocol.media.AccessUnitListener;
+import com.aick.mmp.adapter.protocol.onvif.OnvifClient;
+import com.aick.mmp.adapter.protocol.onvif.OnvifDevice;
+import com.aick.mmp.adapter.protocol.onvif.OnvifException;
+import com.aick.mmp.adapter.protocol.onvif.OnvifProfile;
+import com.aick.mmp.adapter.protocol.onvif.VideoEncoderConfiguration;
 import com.aick.mmp.model.Camera;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,12 +15,22 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * ONVIF协议适配器：通过ONVIF获取码流的RTSP地址和编码配置，媒体数据交给RTSP适配器拉取
+ * <p>
+ * connectionUrl为设备服务地址（http://host[:port]/onvif/device_service，或只写host[:port]），
+ * 末尾可用 #配置文件token 指定码流，默认使用第一个带视频编码器的配置文件。
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class OnvifProtocolAdapter implements ProtocolAdapter {
 
-    private final Map<String, Object> activeConnections = new ConcurrentHashMap<>();
+    private final OnvifClient onvifClient;
+    private final RtspProtocolAdapter rtspProtocolAdapter;
+
+    // 存储活动的ONVIF流会话
+    private final Map<String, OnvifStreamSession> activeConnections = new ConcurrentHashMap<>();
 
     @Override
     public String getProtocol() {
@@ -25,11 +41,9 @@ public class OnvifProtocolAdapter implements ProtocolAdapter {
     public boolean testConnection(Camera camera) {
         try {
             log.info("Testing ONVIF connection for camera: {}", camera.getName());
-            
-            // 模拟ONVIF连接测试
-            // 实际实现应该使用ONVIF客户端库进行设备发现和连接测试
-            
-            return true; // 模拟成功
+            // 重新获取能力集和配置文件，同时预热缓存
+            onvifClient.refresh(device(camera));
+            return true;
         } catch (Exception e) {
             log.error("ONVIF connection test failed for camera {}: {}", camera.getId(), e.getMessage());
             return false;
@@ -38,20 +52,53 @@ public class OnvifProtocolAdapter implements ProtocolAdapter {
 
     @Override
     public String startStreamSession(Camera camera) {
+        return startStreamSession(camera, accessUnit -> { });
+    }
+
+    @Override
+    public String startStreamSession(Camera camera, AccessUnitListener listener) {
         try {
             String sessionId = generateSessionId();
-            
-            log.info("Starting ONVIF stream session for camera: {} (session: {})", 
+
+            log.info("Starting ONVIF stream session for camera: {} (session: {})",
                     camera.getId(), sessionId);
-            
-            // 模拟启动ONVIF流会话
-            // 实际实现应该通过ONVIF协议获取媒体配置和流URI
-            
-            activeConnections.put(sessionId, camera);
-            
+
+            OnvifDevice device = device(camera);
+            String requestedProfile = profileToken(camera);
+            long start = System.currentTimeMillis();
+            OnvifProfile profile;
+            String streamUri;
+            try {
+                profile = onvifClient.getProfile(device, requestedProfile);
+                streamUri = onvifClient.getStreamUri(device, profile.getToken());
+            } catch (OnvifException e) {
+                if (!e.isStaleConfiguration()) {
+                    throw e;
+                }
+                // 缓存的配置文件已失效，重新发现后再试一次
+                profile = onvifClient.getProfile(device, requestedProfile);
+                streamUri = onvifClient.getStreamUri(device, profile.getToken());
+            }
+            long resolveMillis = System.currentTimeMillis() - start;
+
+            Camera rtspCamera = Camera.builder()
+                    .id(camera.getId())
+                    .name(camera.getName())
+                    .location(camera.getLocation())
+                    .protocol(Camera.Protocol.RTSP)
+                    .connectionUrl(streamUri)
+                    .username(camera.getUsername())
+                    .password(camera.getPassword())
+                    .build();
+            String rtspSessionId = rtspProtocolAdapter.startStreamSession(rtspCamera, listener);
+            activeConnections.put(sessionId, new OnvifStreamSession(device, profile.getToken(), rtspSessionId,
+                    resolveMillis));
+            log.debug("ONVIF session {} resolved profile {} to {} in {} ms", sessionId, profile.getToken(),
+                    streamUri, resolveMillis);
+
             return sessionId;
         } catch (Exception e) {
-            log.error("Failed to start ONVIF stream session for camera {}: {}", 
+            log.error("Failed to start ONVIF stream session for camera {}: {}",
                     camera.getId(), e.getMessage());
             throw new RuntimeException("ONVIF stream initialization failed: " + e.getMessage());
         }
@@ -60,8 +107,9 @@ public class OnvifProtocolAdapter implements ProtocolAdapter {
     @Override
     public void stopStreamSession(String sessionId) {
         try {
-            Object connection = activeConnections.remove(sessionId);
-            if (connection != null) {
+            OnvifStreamSession session = activeConnections.remove(sessionId);
+            if (session != null) {
+                rtspProtocolAdapter.stopStreamSession(session.rtspSessionId);
                 log.info("Stopped ONVIF stream session: {}", sessionId);
             }
         } catch (Exception e) {
@@ -71,7 +119,8 @@ public class OnvifProtocolAdapter implements ProtocolAdapter {
 
     @Override
     public void adjustStreamQuality(String sessionId, int qualityLevel) {
-        if (!activeConnections.containsKey(sessionId)) {
+        OnvifStreamSession session = activeConnections.get(sessionId);
+        if (session == null) {
             throw new RuntimeException("ONVIF stream session not found: " + sessionId);
         }
 
@@ -80,6 +129,21 @@ public class OnvifProtocolAdapter implements ProtocolAdapter {
             int bitrate = getBitrateForQualityLevel(qualityLevel);
             int framerate = getFramerateForQualityLevel(qualityLevel);
             String resolution = getResolutionForQualityLevel(qualityLevel);
+            String[] size = resolution.split("x");
+
+            VideoEncoderConfiguration encoder = onvifClient.getProfile(session.device, session.profileToken)
+                    .getVideoEncoder();
+            if (encoder == null) {
+                throw new RuntimeException("profile " + session.profileToken + " has no video encoder");
+            }
+            // 只修改分辨率、帧率和码率，其余字段按设备当前配置原样提交
+            VideoEncoderConfiguration updated = encoder.toBuilder()
+                    .width(Integer.parseInt(size[0]))
+                    .height(Integer.parseInt(size[1]))
+                    .frameRateLimit(framerate)
+                    .bitrateLimit(bitrate)
+                    .build();
+            onvifClient.setVideoEncoderConfiguration(session.device, updated);
 
             log.info("Adjusted ONVIF stream quality for session {}: resolution={}, framerate={}, bitrate={}kbps",
                     sessionId, resolution, framerate, bitrate);
@@ -91,21 +155,43 @@ public class OnvifProtocolAdapter implements ProtocolAdapter {
 
     @Override
     public Map<String, Object> getStreamMetrics(String sessionId) {
-        if (!activeConnections.containsKey(sessionId)) {
+        OnvifStreamSession session = activeConnections.get(sessionId);
+        if (session == null) {
             throw new RuntimeException("ONVIF stream session not found: " + sessionId);
         }
 
-        // 模拟返回流指标
-        Map<String, Object> metrics = new HashMap<>();
-        metrics.put("bitrate", 2048);
-        metrics.put("framerate", 25);
-        metrics.put("packetLoss", 0.1);
-        metrics.put("latency", 100);
+        Map<String, Object> metrics = new HashMap<>(rtspProtocolAdapter.getStreamMetrics(session.rtspSessionId));
+        metrics.put("profileToken", session.profileToken);
+        metrics.put("streamUriResolveMillis", session.resolveMillis);
+        VideoEncoderConfiguration encoder = onvifClient.getProfile(session.device, session.profileToken)
+                .getVideoEncoder();
+        if (encoder != null) {
+            metrics.put("encoding", encoder.getEncoding());
+            metrics.put("resolution", encoder.getWidth() + "x" + encoder.getHeight());
+            metrics.put("frameRateLimit", encoder.getFrameRateLimit());
+            metrics.put("bitrateLimit", encoder.getBitrateLimit());
+        }
         metrics.put("protocol", "ONVIF");
 
         return metrics;
     }
 
+    private OnvifDevice device(Camera camera) {
+        String url = camera.getConnectionUrl();
+        if (url == null || url.trim().isEmpty()) {
+            throw new RuntimeException("ONVIF camera has no device address: " + camera.getId());
+        }
+        int fragment = url.indexOf('#');
+        return OnvifDevice.of(fragment >= 0 ? url.substring(0, fragment) : url, camera.getUsername(),
+                camera.getPassword());
+    }
+
+    private String profileToken(Camera camera) {
+        String url = camera.getConnectionUrl();
+        int fragment = url.indexOf('#');
+        return fragment >= 0 && fragment < url.length() - 1 ? url.substring(fragment + 1).trim() : null;
+    }
+
     private String generateSessionId() {
         return "onvif-" + System.currentTimeMillis() + "-" + (int)(Math.random() * 1000);
     }
@@ -158,4 +244,21 @@ public class OnvifProtocolAdapter implements ProtocolAdapter {
                 return "1280x720";
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 一路ONVIF点播：设备、配置文件和实际承载媒体的RTSP会话
+     */
+    private static class OnvifStreamSession {
+        private final OnvifDevice device;
+        private final String profileToken;
+        private final String rtspSessionId;
+        private final long resolveMillis;
+
+        OnvifStreamSession(OnvifDevice device, String profileToken, String rtspSessionId, long resolveMillis) {
+            this.device = device;
+            this.profileToken = profileToken;
+            this.rtspSessionId = rtspSessionId;
+            this.resolveMillis = resolveMillis;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.aick.mmp.adapter.protocol;
 
+import com.aick.mmp.adapter.protocol.media.AccessUnitListener;
 import com.aick.mmp.model.Camera;
 import com.aick.mmp.model.StreamSession;
 import java.util.Map;
@@ -29,6 +30,18 @@ public interface ProtocolAdapter {
      */
     String startStreamSession(Camera camera);
 
+    /**
+     * 启动流会话并接收重组后的视频帧
+     * <p>
+     * 不支持帧数据输出的适配器只启动会话，监听器不会收到回调
+     * @param camera 摄像头信息
+     * @param listener 视频帧回调
+     * @return 会话ID
+     */
+    default String startStreamSession(Camera camera, AccessUnitListener listener) {
+        return startStreamSession(camera);
+    }
+
     /**
      * 停止流会话
      * @param sessionId 会话ID
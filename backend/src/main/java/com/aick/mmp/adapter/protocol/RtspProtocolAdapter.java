@@ -1,13 +1,28 @@
 package com.aick.mmp.adapter.protocol;
 
+import com.aick.mmp.adapter.protocol.media.AccessUnit;
+import com.aick.mmp.adapter.protocol.media.AccessUnitListener;
+import com.aick.mmp.adapter.protocol.media.BufferPool;
+import com.aick.mmp.adapter.protocol.media.IngestStatistics;
+import com.aick.mmp.adapter.protocol.media.MediaIngestPipeline;
+import com.aick.mmp.adapter.protocol.rtsp.RtspClientEngine;
+import com.aick.mmp.adapter.protocol.rtsp.RtspConnection;
+import com.aick.mmp.adapter.protocol.rtsp.RtspSessionListener;
+import com.aick.mmp.adapter.protocol.rtsp.SdpDescription;
 import com.aick.mmp.model.Camera;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * RTSP协议适配器，处理RTSP协议摄像头的接入和媒体流管理
@@ -17,8 +32,14 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class RtspProtocolAdapter implements ProtocolAdapter {
 
+    private final RtspClientEngine rtspClientEngine;
+    private final BufferPool bufferPool;
+
+    @Value("${rtsp.client.session-start-timeout:10000}")
+    private long sessionStartTimeoutMs = 10000;
+
     // 存储活动的RTSP连接
-    private final Map<String, Object> activeConnections = new ConcurrentHashMap<>();
+    private final Map<String, RtspStreamSession> activeConnections = new ConcurrentHashMap<>();
 
     @Override
     public String getProtocol() {
@@ -29,11 +50,10 @@ public class RtspProtocolAdapter implements ProtocolAdapter {
     public boolean testConnection(Camera camera) {
         try {
             log.info("Testing RTSP connection for camera: {}", camera.getName());
-            
-            // 模拟RTSP连接测试
-            // 实际实现应该使用RTSP客户端库进行连接测试
-            
-            return true; // 模拟成功
+            return rtspClientEngine.probe(camera).get(sessionStartTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         } catch (Exception e) {
             log.error("RTSP connection test failed for camera {}: {}", camera.getId(), e.getMessage());
             return false;
@@ -42,28 +62,46 @@ public class RtspProtocolAdapter implements ProtocolAdapter {
 
     @Override
     public String startStreamSession(Camera camera) {
+        return startStreamSession(camera, accessUnit -> { });
+    }
+
+    @Override
+    public String startStreamSession(Camera camera, AccessUnitListener listener) {
+        CompletableFuture<RtspConnection> future = null;
         try {
             String sessionId = generateSessionId();
-            
-            log.info("Starting RTSP stream session for camera: {} (session: {})", 
+
+            log.info("Starting RTSP stream session for camera: {} (session: {})",
                     camera.getId(), sessionId);
-            
-            // 模拟启动RTSP流会话
-            activeConnections.put(sessionId, camera);
-            
+
+            RtspStreamSession session = new RtspStreamSession(sessionId, listener);
+            future = rtspClientEngine.open(camera, session);
+            future.get(sessionStartTimeoutMs, TimeUnit.MILLISECONDS);
+            activeConnections.put(sessionId, session);
+
             return sessionId;
         } catch (Exception e) {
-            log.error("Failed to start RTSP stream session for camera {}: {}", 
-                    camera.getId(), e.getMessage());
-            throw new RuntimeException("RTSP stream initialization failed: " + e.getMessage());
+            if (future != null) {
+                // 握手超时后仍可能成功，成功时立即释放连接
+                future.thenAccept(RtspConnection::close);
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            String reason = e instanceof ExecutionException && e.getCause() != null ? e.getCause().getMessage()
+                    : e instanceof TimeoutException ? "handshake timed out" : e.getMessage();
+            log.error("Failed to start RTSP stream session for camera {}: {}",
+                    camera.getId(), reason);
+            throw new RuntimeException("RTSP stream initialization failed: " + reason);
         }
     }
 
     @Override
     public void stopStreamSession(String sessionId) {
         try {
-            Object connection = activeConnections.remove(sessionId);
-            if (connection != null) {
+            RtspStreamSession session = activeConnections.remove(sessionId);
+            if (session != null) {
+                session.connection.close();
                 log.info("Stopped RTSP stream session: {}", sessionId);
             }
         } catch (Exception e) {
@@ -92,18 +130,30 @@ public class RtspProtocolAdapter implements ProtocolAdapter {
 
     @Override
     public Map<String, Object> getStreamMetrics(String sessionId) {
-        if (!activeConnections.containsKey(sessionId)) {
+        RtspStreamSession session = activeConnections.get(sessionId);
+        if (session == null) {
             throw new RuntimeException("RTSP stream session not found: " + sessionId);
         }
 
-        // 模拟返回流指标
+        RtspConnection connection = session.connection;
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - connection.getPlayingSince());
+
         Map<String, Object> metrics = new HashMap<>();
-        metrics.put("bitrate", 2048);
-        metrics.put("framerate", 25);
-        metrics.put("packetLoss", 0.05);
-        metrics.put("latency", 50);
+        IngestStatistics statistics = session.getVideoStatistics();
+        if (statistics != null) {
+            metrics.putAll(statistics.toMetrics());
+            metrics.put("framerate", statistics.getFrameRate());
+            // 丢包率（百分比），由抖动缓冲区按序列号缺口统计
+            metrics.put("packetLoss", statistics.getPacketLossPercent());
+        }
+        metrics.put("bitrate", connection.getBytesReceived() * 8 / elapsedMs);
+        metrics.put("latency", connection.getLastRoundTripMillis());
+        metrics.put("handshakeMillis", connection.getHandshakeMillis());
+        metrics.put("rtpPackets", connection.getRtpPackets());
+        metrics.put("bytesReceived", connection.getBytesReceived());
+        metrics.put("state", connection.getState().name());
         metrics.put("protocol", "RTSP");
-        
+
         return metrics;
     }
 
@@ -143,4 +193,83 @@ public class RtspProtocolAdapter implements ProtocolAdapter {
                 return 30;   // 中高质量: 30fps
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 单个RTSP会话：每个SETUP轨道对应一条媒体接入流水线，在IO线程中完成排序和帧重组
+     */
+    private class RtspStreamSession implements RtspSessionListener {
+        private final String sessionId;
+        private final AccessUnitListener accessUnitListener;
+        private volatile RtspConnection connection;
+        private volatile MediaIngestPipeline[] pipelines = new MediaIngestPipeline[0];
+
+        RtspStreamSession(String sessionId, AccessUnitListener accessUnitListener) {
+            this.sessionId = sessionId;
+            this.accessUnitListener = accessUnitListener;
+        }
+
+        @Override
+        public void onSessionStarted(RtspConnection rtspConnection) {
+            connection = rtspConnection;
+            int trackCount = 0;
+            while (rtspConnection.getTrackForChannel(trackCount * 2) != null) {
+                trackCount++;
+            }
+            MediaIngestPipeline[] created = new MediaIngestPipeline[trackCount];
+            for (int i = 0; i < trackCount; i++) {
+                SdpDescription.MediaTrack track = rtspConnection.getTrackForChannel(i * 2);
+                AccessUnit.Codec codec = AccessUnit.Codec.fromEncodingName(track.getEncodingName());
+                if (codec != null) {
+                    created[i] = new MediaIngestPipeline(bufferPool, codec, track.getClockRate(), accessUnitListener);
+                } else {
+                    log.warn("Unsupported RTSP media encoding {} in session {}", track.getEncodingName(), sessionId);
+                }
+            }
+            pipelines = created;
+        }
+
+        @Override
+        public void onInterleavedPacket(int channel, ByteBuffer packet) {
+            // 奇数通道为RTCP，暂不处理
+            if ((channel & 1) != 0) {
+                return;
+            }
+            MediaIngestPipeline[] current = pipelines;
+            int index = channel / 2;
+            if (index < current.length && current[index] != null) {
+                current[index].onRtpPacket(packet);
+            }
+        }
+
+        @Override
+        public void onTick(long now) {
+            for (MediaIngestPipeline pipeline : pipelines) {
+                if (pipeline != null) {
+                    pipeline.onTick(now);
+                }
+            }
+        }
+
+        @Override
+        public void onSessionClosed(Throwable cause) {
+            for (MediaIngestPipeline pipeline : pipelines) {
+                if (pipeline != null) {
+                    pipeline.close();
+                }
+            }
+            if (cause != null) {
+                log.warn("RTSP stream session {} closed unexpectedly: {}", sessionId, cause.getMessage());
+            }
+            accessUnitListener.onStreamClosed(cause);
+        }
+
+        IngestStatistics getVideoStatistics() {
+            for (MediaIngestPipeline pipeline : pipelines) {
+                if (pipeline != null) {
+                    return pipeline.getStatistics();
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.aick.mmp.adapter.protocol.gb28181;
+
+/**
+ * 按国标20位编码索引设备的开放寻址哈希表
+ * <p>
+ * 编码前后各10位分别转成一个long作为键，查找时直接读接收缓冲区中的字节，不创建字符串，
+ * 保证心跳风暴时热路径不产生垃圾。只允许IO线程访问。
+ */
+final class DeviceIndex {
+
+    static final int ID_LENGTH = 20;
+
+    private long[] highs;
+    private long[] lows;
+    private SipDevice[] devices;
+    private int size;
+    private int mask;
+
+    DeviceIndex(int expectedDevices) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedDevices * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * 校验data[start, end)是否为合法的国标编码
+     */
+    static boolean isValidId(byte[] data, int start, int end) {
+        if (end - start != ID_LENGTH) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (data[i] < '0' || data[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static long high(byte[] data, int start) {
+        return digits(data, start, start + ID_LENGTH / 2);
+    }
+
+    static long low(byte[] data, int start) {
+        return digits(data, start + ID_LENGTH / 2, start + ID_LENGTH);
+    }
+
+    SipDevice get(long high, long low) {
+        int slot = slot(high, low);
+        while (devices[slot] != null) {
+            if (highs[slot] == high && lows[slot] == low) {
+                return devices[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    void put(long high, long low, SipDevice device) {
+        if ((size + 1) * 2 > devices.length) {
+            rehash(devices.length << 1);
+        }
+        int slot = slot(high, low);
+        while (devices[slot] != null) {
+            if (highs[slot] == high && lows[slot] == low) {
+                devices[slot] = device;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        highs[slot] = high;
+        lows[slot] = low;
+        devices[slot] = device;
+        size++;
+    }
+
+    SipDevice remove(long high, long low) {
+        int slot = slot(high, low);
+        while (devices[slot] != null) {
+            if (highs[slot] == high && lows[slot] == low) {
+                SipDevice removed = devices[slot];
+                devices[slot] = null;
+                size--;
+                shiftBack(slot);
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 线性探测删除后把后续冲突项前移，避免使用墓碑
+     */
+    private void shiftBack(int emptied) {
+        int slot = (emptied + 1) & mask;
+        while (devices[slot] != null) {
+            int home = slot(highs[slot], lows[slot]);
+            // home不在(emptied, slot]区间内时，该项可以移到空位
+            boolean movable = emptied <= slot ? (home <= emptied || home > slot) : (home <= emptied && home > slot);
+            if (movable) {
+                highs[emptied] = highs[slot];
+                lows[emptied] = lows[slot];
+                devices[emptied] = devices[slot];
+                devices[slot] = null;
+                emptied = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        SipDevice[] oldDevices = devices;
+        allocate(capacity);
+        for (int i = 0; i < oldDevices.length; i++) {
+            if (oldDevices[i] != null) {
+                int slot = slot(oldHighs[i], oldLows[i]);
+                while (devices[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                highs[slot] = oldHighs[i];
+                lows[slot] = oldLows[i];
+                devices[slot] = oldDevices[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        devices = new SipDevice[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(long high, long low) {
+        long hash = high * 0x9E3779B97F4A7C15L ^ low * 0xC2B2AE3D27D4EB4FL;
+        hash ^= hash >>> 29;
+        return (int) hash & mask;
+    }
+
+    private static long digits(byte[] data, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (data[i] - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,335 @@
+package com.aick.mmp.adapter.protocol.gb28181;
+
+import com.aick.mmp.adapter.protocol.media.AccessUnitListener;
+import com.aick.mmp.adapter.protocol.media.BufferPool;
+import com.aick.mmp.adapter.protocol.media.IngestStatistics;
+import com.aick.mmp.adapter.protocol.media.MediaIngestPipeline;
+import com.aick.mmp.adapter.protocol.media.PooledBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * GB28181媒体接收端：所有设备的PS over RTP流推送到同一个UDP端口，按SSRC分发到各自的接入流水线
+ * <p>
+ * 数据报直接收进池化缓冲区并整体交给流水线，接收路径上不再拷贝。流水线只在本线程中访问，
+ * 打开和关闭通过任务队列投递。
+ */
+@Component
+@Slf4j
+public class Gb28181MediaReceiver implements Runnable {
+
+    private static final long TICK_INTERVAL_MS = 100;
+    private static final int MAX_DATAGRAMS_PER_WAKEUP = 4096;
+    /** GB28181设备按MTU分包，单个RTP包不会超过池中最小规格 */
+    private static final int RECEIVE_BUFFER_SIZE = 2048;
+
+    private final BufferPool bufferPool;
+
+    @Value("${gb28181.sip.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${gb28181.media.bind-ip:0.0.0.0}")
+    private String bindIp = "0.0.0.0";
+
+    @Value("${gb28181.media.port:30000}")
+    private int port = 30000;
+
+    @Value("${gb28181.media.idle-timeout:15000}")
+    private long idleTimeoutMs = 15000;
+
+    @Value("${gb28181.media.socket-receive-buffer:16777216}")
+    private int socketReceiveBuffer = 16 * 1024 * 1024;
+
+    // 以下状态只在媒体线程内访问
+    private final Map<Long, MediaStream> streams = new HashMap<>();
+    private MediaStream lastStream;
+    private PooledBuffer spare;
+    private long lastTick;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile long unknownSsrcPackets;
+    private volatile long truncatedPackets;
+
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    @Autowired
+    public Gb28181MediaReceiver(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public Gb28181MediaReceiver(BufferPool bufferPool, String bindIp, int port) {
+        this.bufferPool = bufferPool;
+        this.bindIp = bindIp;
+        this.port = port;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        selector = Selector.open();
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, socketReceiveBuffer);
+        channel.bind(new InetSocketAddress(bindIp, port));
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+
+        running = true;
+        thread = new Thread(this, "gb28181-media");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("GB28181 media receiver listening on udp {}:{}", bindIp, port);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * 开始接收指定SSRC的媒体流，访问单元在媒体线程中回调
+     */
+    public MediaStream open(long ssrc, AccessUnitListener listener) {
+        MediaStream stream = new MediaStream(ssrc, MediaIngestPipeline.forProgramStream(bufferPool, listener),
+                listener);
+        execute(() -> {
+            MediaStream previous = streams.put(ssrc, stream);
+            if (previous != null) {
+                closeInLoop(previous, null);
+            }
+        });
+        return stream;
+    }
+
+    /**
+     * 设备应答的SSRC与平台分配的不同时，把已打开的流改挂到设备实际使用的SSRC下，监听器不受影响
+     */
+    public void changeSsrc(MediaStream stream, long ssrc) {
+        execute(() -> {
+            if (stream.closed || stream.ssrc == ssrc) {
+                return;
+            }
+            if (streams.get(stream.ssrc) == stream) {
+                streams.remove(stream.ssrc);
+            }
+            if (lastStream == stream) {
+                lastStream = null;
+            }
+            stream.ssrc = ssrc;
+            MediaStream previous = streams.put(ssrc, stream);
+            if (previous != null) {
+                closeInLoop(previous, null);
+            }
+        });
+    }
+
+    /**
+     * 停止接收并释放流水线中的缓冲区，监听器收到onStreamClosed(cause)
+     */
+    public void close(MediaStream stream, Throwable cause) {
+        execute(() -> {
+            if (streams.get(stream.ssrc) == stream) {
+                streams.remove(stream.ssrc);
+            }
+            closeInLoop(stream, cause);
+        });
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("unknownSsrcPackets", unknownSsrcPackets);
+        statistics.put("truncatedPackets", truncatedPackets);
+        return statistics;
+    }
+
+    private void execute(Runnable task) {
+        if (!running) {
+            throw new IllegalStateException("GB28181 media receiver is not running");
+        }
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(TICK_INTERVAL_MS);
+                selector.selectedKeys().clear();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                receiveAll();
+                long now = System.currentTimeMillis();
+                if (now - lastTick >= TICK_INTERVAL_MS) {
+                    tick(now);
+                    lastTick = now;
+                }
+            } catch (Throwable e) {
+                log.error("GB28181 media loop error", e);
+            }
+        }
+        for (MediaStream stream : new ArrayList<>(streams.values())) {
+            closeInLoop(stream, null);
+        }
+        streams.clear();
+        if (spare != null) {
+            spare.release();
+        }
+        try {
+            channel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Error closing GB28181 media channel: {}", e.getMessage());
+        }
+    }
+
+    private void receiveAll() throws IOException {
+        for (int i = 0; i < MAX_DATAGRAMS_PER_WAKEUP; i++) {
+            if (spare == null) {
+                spare = bufferPool.acquire(RECEIVE_BUFFER_SIZE);
+            }
+            ByteBuffer buffer = spare.buffer();
+            buffer.clear();
+            SocketAddress source = channel.receive(buffer);
+            if (source == null) {
+                return;
+            }
+            buffer.flip();
+            if (buffer.limit() == buffer.capacity()) {
+                // 数据报超过缓冲区大小，已被截断
+                truncatedPackets++;
+                continue;
+            }
+            if (buffer.limit() < 12) {
+                continue;
+            }
+            long ssrc = buffer.getInt(8) & 0xFFFFFFFFL;
+            MediaStream stream = lastStream;
+            if (stream == null || stream.ssrc != ssrc) {
+                stream = streams.get(ssrc);
+                if (stream == null) {
+                    unknownSsrcPackets++;
+                    continue;
+                }
+                lastStream = stream;
+            }
+            PooledBuffer packet = spare;
+            spare = null;
+            stream.lastPacketAt = System.currentTimeMillis();
+            stream.bytesReceived += buffer.limit();
+            stream.pipeline.onRtpPacket(packet);
+        }
+    }
+
+    private void tick(long now) {
+        if (streams.isEmpty()) {
+            return;
+        }
+        for (MediaStream stream : new ArrayList<>(streams.values())) {
+            if (now - stream.lastPacketAt > idleTimeoutMs) {
+                streams.remove(stream.ssrc);
+                log.warn("GB28181 media stream ssrc {} idle for {} ms, closing", stream.ssrc, idleTimeoutMs);
+                closeInLoop(stream, new TimeoutException("no media received for " + idleTimeoutMs + " ms"));
+            } else {
+                stream.pipeline.onTick(now);
+            }
+        }
+    }
+
+    private void closeInLoop(MediaStream stream, Throwable cause) {
+        if (stream.closed) {
+            return;
+        }
+        stream.closed = true;
+        if (lastStream == stream) {
+            lastStream = null;
+        }
+        stream.pipeline.close();
+        stream.listener.onStreamClosed(cause);
+    }
+
+    /**
+     * 一路按SSRC区分的媒体流
+     */
+    public static class MediaStream {
+        private volatile long ssrc;
+        private final MediaIngestPipeline pipeline;
+        private final AccessUnitListener listener;
+        private final long openedAt = System.currentTimeMillis();
+        private volatile long lastPacketAt = openedAt;
+        private volatile long bytesReceived;
+        private volatile boolean closed;
+
+        MediaStream(long ssrc, MediaIngestPipeline pipeline, AccessUnitListener listener) {
+            this.ssrc = ssrc;
+            this.pipeline = pipeline;
+            this.listener = listener;
+        }
+
+        public long getSsrc() {
+            return ssrc;
+        }
+
+        public IngestStatistics getStatistics() {
+            return pipeline.getStatistics();
+        }
+
+        public long getOpenedAt() {
+            return openedAt;
+        }
+
+        public long getLastPacketAt() {
+            return lastPacketAt;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+}
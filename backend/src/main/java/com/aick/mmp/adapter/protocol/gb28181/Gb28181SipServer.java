@@ -0,0 +1,1036 @@
+package com.aick.mmp.adapter.protocol.gb28181;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.aick.mmp.exception.ServiceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GB28181 SIP服务端（注册服务器 + 用户代理）
+ * <p>
+ * 单个非阻塞UDP套接字承载全部设备的REGISTER、MESSAGE心跳和目录应答，一个线程完成收包、解析和应答。
+ * 心跳等高频请求直接在接收缓冲区上按偏移解析，应答从请求中逐字节拷贝头域写入复用的直接内存缓冲区，
+ * 热路径上不创建字符串。INVITE/BYE等平台发起的请求通过{@link #execute(Runnable)}投递到本线程发送，
+ * 并按RFC 3261的定时器重传。
+ */
+@Component
+@Slf4j
+public class Gb28181SipServer implements Runnable {
+
+    private static final long TICK_INTERVAL_MS = 100;
+    private static final long EXPIRY_SCAN_INTERVAL_MS = 5000;
+    private static final long RETRANSMIT_T1_MS = 500;
+    private static final long RETRANSMIT_T2_MS = 4000;
+    private static final long NONCE_VALIDITY_MS = 5 * 60 * 1000;
+    private static final int MAX_DATAGRAMS_PER_WAKEUP = 4096;
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+    private static final Charset GB_CHARSET = Charset.forName("GB18030");
+
+    private static final byte[] CRLF = SipMessage.bytes("\r\n");
+    private static final byte[] STATUS_PREFIX = SipMessage.bytes("SIP/2.0 ");
+    private static final byte[] VIA = SipMessage.bytes("Via: ");
+    private static final byte[] FROM = SipMessage.bytes("From: ");
+    private static final byte[] TO = SipMessage.bytes("To: ");
+    private static final byte[] TAG = SipMessage.bytes(";tag=");
+    private static final byte[] CALL_ID = SipMessage.bytes("Call-ID: ");
+    private static final byte[] CSEQ = SipMessage.bytes("CSeq: ");
+    private static final byte[] CONTACT = SipMessage.bytes("Contact: ");
+    private static final byte[] EXPIRES = SipMessage.bytes("Expires: ");
+    private static final byte[] DATE = SipMessage.bytes("Date: ");
+    private static final byte[] TRAILER = SipMessage.bytes("User-Agent: AICK-MMP\r\nContent-Length: 0\r\n\r\n");
+
+    private static final byte[] REASON_OK = SipMessage.bytes("OK");
+    private static final byte[] REASON_BAD_REQUEST = SipMessage.bytes("Bad Request");
+    private static final byte[] REASON_UNAUTHORIZED = SipMessage.bytes("Unauthorized");
+    private static final byte[] REASON_FORBIDDEN = SipMessage.bytes("Forbidden");
+    private static final byte[] REASON_NOT_ALLOWED = SipMessage.bytes("Method Not Allowed");
+    private static final byte[] REASON_NO_TRANSACTION = SipMessage.bytes("Call/Transaction Does Not Exist");
+
+    private static final byte[] CMD_TYPE = SipMessage.bytes("<CmdType>");
+    private static final byte[] KEEPALIVE = SipMessage.bytes("Keepalive");
+    private static final byte[] CATALOG = SipMessage.bytes("Catalog");
+
+    @Value("${gb28181.sip.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${gb28181.sip.bind-ip:0.0.0.0}")
+    private String bindIp = "0.0.0.0";
+
+    @Value("${gb28181.sip.advertised-ip:127.0.0.1}")
+    private String advertisedIp = "127.0.0.1";
+
+    @Value("${gb28181.sip.port:5060}")
+    private int port = 5060;
+
+    @Value("${gb28181.sip.server-id:34020000002000000001}")
+    private String serverId = "34020000002000000001";
+
+    @Value("${gb28181.sip.domain:3402000000}")
+    private String domain = "3402000000";
+
+    @Value("${gb28181.sip.password:}")
+    private String password = "";
+
+    @Value("${gb28181.sip.default-expires:3600}")
+    private long defaultExpires = 3600;
+
+    @Value("${gb28181.sip.keepalive-timeout:180000}")
+    private long keepaliveTimeoutMs = 180000;
+
+    @Value("${gb28181.sip.transaction-timeout:8000}")
+    private long transactionTimeoutMs = 8000;
+
+    @Value("${gb28181.sip.catalog-queries-per-second:200}")
+    private int catalogQueriesPerSecond = 200;
+
+    @Value("${gb28181.sip.expected-devices:16384}")
+    private int expectedDevices = 16384;
+
+    @Value("${gb28181.sip.socket-receive-buffer:8388608}")
+    private int socketReceiveBuffer = 8 * 1024 * 1024;
+
+    // 以下状态只在SIP线程内访问
+    private final byte[] receiveArray = new byte[MAX_DATAGRAM_SIZE];
+    private final ByteBuffer receiveBuffer = ByteBuffer.wrap(receiveArray);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+    private final byte[] decimalScratch = new byte[20];
+    private final SipMessage message = new SipMessage();
+    private final Map<String, ClientTransaction> transactions = new HashMap<>();
+    private final ArrayDeque<SipDevice> catalogQueue = new ArrayDeque<>();
+    private DeviceIndex deviceIndex;
+    private byte[] serverTag;
+    private byte[] dateHeader;
+    private long dateSecond;
+    private double catalogTokens;
+    private long lastTick;
+    private long lastExpiryScan;
+    private int lastReportedOnline = -1;
+
+    // 跨线程共享的状态
+    private final Map<String, SipDevice> devices = new ConcurrentHashMap<>();
+    private final Map<String, SipDialog> dialogs = new ConcurrentHashMap<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sequence = new AtomicLong(ThreadLocalRandom.current().nextInt(1 << 20));
+    private final AtomicInteger ssrcSequence = new AtomicInteger();
+    private final String nonceSecret = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private volatile long datagramsReceived;
+    private volatile long registrations;
+    private volatile long keepalives;
+    private volatile long keepalivesFromUnknown;
+    private volatile long catalogResponses;
+    private volatile long parseErrors;
+    private volatile long authFailures;
+    private volatile long sendDrops;
+    private volatile long retransmissions;
+
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    public Gb28181SipServer() {
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public Gb28181SipServer(String bindIp, int port, String serverId, String domain, String password) {
+        this.bindIp = bindIp;
+        this.advertisedIp = "0.0.0.0".equals(bindIp) ? "127.0.0.1" : bindIp;
+        this.port = port;
+        this.serverId = serverId;
+        this.domain = domain;
+        this.password = password;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            log.info("GB28181 SIP server disabled");
+            return;
+        }
+        deviceIndex = new DeviceIndex(expectedDevices);
+        serverTag = SipMessage.bytes(Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE));
+        selector = Selector.open();
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        // 网络闪断恢复后的注册/心跳风暴会在瞬间涌入，需要足够大的内核接收缓冲区
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, socketReceiveBuffer);
+        channel.bind(new InetSocketAddress(bindIp, port));
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+
+        running = true;
+        thread = new Thread(this, "gb28181-sip");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("GB28181 SIP server listening on udp {}:{} (server id {}, domain {})", bindIp, port, serverId, domain);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        log.info("GB28181 SIP server stopped");
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public SipDevice getDevice(String deviceId) {
+        return devices.get(deviceId);
+    }
+
+    public Collection<SipDevice> getDevices() {
+        return devices.values();
+    }
+
+    /**
+     * 设备已注册且心跳未超时
+     */
+    public boolean isOnline(String deviceId) {
+        SipDevice device = devices.get(deviceId);
+        return device != null && device.isOnline();
+    }
+
+    /**
+     * 生成国标SSRC：实时流以0开头，后接域编码第4到8位和4位流水号
+     */
+    public String nextSsrc() {
+        String domainPart = domain.length() >= 8 ? domain.substring(3, 8) : "00000";
+        return "0" + domainPart + String.format("%04d", ssrcSequence.incrementAndGet() % 10000);
+    }
+
+    public Map<String, Object> getStatistics() {
+        int online = 0;
+        for (SipDevice device : devices.values()) {
+            if (device.isOnline()) {
+                online++;
+            }
+        }
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("registeredDevices", devices.size());
+        statistics.put("onlineDevices", online);
+        statistics.put("activeDialogs", dialogs.size());
+        statistics.put("datagramsReceived", datagramsReceived);
+        statistics.put("registrations", registrations);
+        statistics.put("keepalives", keepalives);
+        statistics.put("keepalivesFromUnknown", keepalivesFromUnknown);
+        statistics.put("catalogResponses", catalogResponses);
+        statistics.put("parseErrors", parseErrors);
+        statistics.put("authFailures", authFailures);
+        statistics.put("sendDrops", sendDrops);
+        statistics.put("retransmissions", retransmissions);
+        return statistics;
+    }
+
+    /**
+     * 向设备发起实时点播，成功时返回已确认（已发送ACK）的对话
+     * @param mediaIp 媒体接收地址
+     * @param mediaPort 媒体接收端口（PS over RTP/UDP）
+     */
+    public CompletableFuture<SipDialog> invite(String deviceId, String channelId, String mediaIp, int mediaPort,
+                                               String ssrc) {
+        CompletableFuture<SipDialog> future = new CompletableFuture<>();
+        execute(() -> {
+            SipDevice device = devices.get(deviceId);
+            if (device == null || !device.isOnline()) {
+                future.completeExceptionally(new ServiceException("GB28181 device not online: " + deviceId));
+                return;
+            }
+            sendInvite(device, channelId, mediaIp, mediaPort, ssrc, future);
+        });
+        return future;
+    }
+
+    /**
+     * 结束点播对话
+     */
+    public CompletableFuture<Void> bye(SipDialog dialog) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        execute(() -> {
+            if (dialogs.remove(dialog.getCallId()) == null) {
+                future.complete(null);
+                return;
+            }
+            dialog.cseq++;
+            String branch = newBranch();
+            String request = requestBuilder("BYE", dialog.getRemoteTarget(), branch)
+                    .from(dialog.getLocalTag())
+                    .to(dialog.getDeviceId(), dialog.getRemoteTag())
+                    .callId(dialog.getCallId())
+                    .cseq(dialog.cseq, "BYE")
+                    .build(null, null);
+            dialog.terminate();
+            startTransaction(new ClientTransaction(branch, SipMessage.METHOD_BYE, request, dialog.getAddress()) {
+                @Override
+                void onFinalResponse(SipMessage response) {
+                    future.complete(null);
+                }
+
+                @Override
+                void onTimeout() {
+                    future.completeExceptionally(new TimeoutException("BYE timed out"));
+                }
+            });
+        });
+        return future;
+    }
+
+    /**
+     * 主动查询设备目录，设备收到查询后另行发送MESSAGE应答
+     */
+    public void queryCatalog(String deviceId) {
+        execute(() -> {
+            SipDevice device = devices.get(deviceId);
+            if (device != null) {
+                catalogQueue.add(device);
+            }
+        });
+    }
+
+    /**
+     * 在SIP线程中执行任务
+     */
+    public void execute(Runnable task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(TICK_INTERVAL_MS);
+                selector.selectedKeys().clear();
+                runTasks();
+                receiveAll();
+                long now = System.currentTimeMillis();
+                if (now - lastTick >= TICK_INTERVAL_MS) {
+                    tick(now);
+                    lastTick = now;
+                }
+            } catch (Throwable e) {
+                log.error("GB28181 SIP loop error", e);
+            }
+        }
+        try {
+            channel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Error closing GB28181 SIP channel: {}", e.getMessage());
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("GB28181 SIP task failed", e);
+            }
+        }
+    }
+
+    private void receiveAll() throws IOException {
+        for (int i = 0; i < MAX_DATAGRAMS_PER_WAKEUP; i++) {
+            receiveBuffer.clear();
+            SocketAddress source = channel.receive(receiveBuffer);
+            if (source == null) {
+                return;
+            }
+            datagramsReceived++;
+            int length = receiveBuffer.position();
+            // 设备的CRLF保活包直接忽略
+            if (length <= 4) {
+                continue;
+            }
+            if (!message.parse(receiveArray, length)) {
+                parseErrors++;
+                continue;
+            }
+            InetSocketAddress sender = (InetSocketAddress) source;
+            if (message.isRequest()) {
+                handleRequest(sender);
+            } else {
+                handleResponse(sender);
+            }
+        }
+    }
+
+    private void handleRequest(InetSocketAddress source) {
+        switch (message.method()) {
+            case SipMessage.METHOD_REGISTER:
+                handleRegister(source);
+                break;
+            case SipMessage.METHOD_MESSAGE:
+                handleMessage(source);
+                break;
+            case SipMessage.METHOD_BYE:
+                handleBye(source);
+                break;
+            case SipMessage.METHOD_ACK:
+                break;
+            case SipMessage.METHOD_OPTIONS:
+                respond(200, REASON_OK, source);
+                break;
+            default:
+                respond(405, REASON_NOT_ALLOWED, source);
+                break;
+        }
+    }
+
+    private void handleRegister(InetSocketAddress source) {
+        if (!message.findFromUser()
+                || !DeviceIndex.isValidId(message.data(), message.foundStart, message.foundEnd)) {
+            respond(400, REASON_BAD_REQUEST, source);
+            return;
+        }
+        long high = DeviceIndex.high(message.data(), message.foundStart);
+        long low = DeviceIndex.low(message.data(), message.foundStart);
+        int idStart = message.foundStart;
+        int idEnd = message.foundEnd;
+
+        if (!password.isEmpty()) {
+            if (message.authorizationStart < 0) {
+                respondChallenge(source);
+                return;
+            }
+            Map<String, String> credentials = parseDigestParams(
+                    message.string(message.authorizationStart, message.authorizationEnd));
+            if (!isNonceValid(credentials.get("nonce"))) {
+                respondChallenge(source);
+                return;
+            }
+            if (!verifyDigest(credentials)) {
+                authFailures++;
+                respond(403, REASON_FORBIDDEN, source);
+                return;
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        long expires = message.expires(defaultExpires);
+        SipDevice device = deviceIndex.get(high, low);
+        if (expires <= 0) {
+            if (device != null) {
+                deviceIndex.remove(high, low);
+                devices.remove(device.getDeviceId());
+                device.setOffline();
+                log.info("GB28181 device {} unregistered", device.getDeviceId());
+            }
+            respondRegister(source, 0);
+            return;
+        }
+
+        boolean fresh = device == null || !device.isOnline();
+        if (device == null) {
+            device = new SipDevice(message.string(idStart, idEnd), high, low);
+            deviceIndex.put(high, low, device);
+            devices.put(device.getDeviceId(), device);
+        }
+        device.onRegistered(source, now, expires);
+        registrations++;
+        respondRegister(source, expires);
+        if (fresh) {
+            log.debug("GB28181 device {} registered from {}", device.getDeviceId(), source);
+            // 新上线的设备排队查询目录，注册风暴时按速率限制发出
+            catalogQueue.add(device);
+        }
+    }
+
+    private void handleMessage(InetSocketAddress source) {
+        if (!message.findFromUser()
+                || !DeviceIndex.isValidId(message.data(), message.foundStart, message.foundEnd)) {
+            respond(400, REASON_BAD_REQUEST, source);
+            return;
+        }
+        SipDevice device = deviceIndex.get(DeviceIndex.high(message.data(), message.foundStart),
+                DeviceIndex.low(message.data(), message.foundStart));
+        if (device == null) {
+            // 平台重启后设备仍在发心跳：返回403促使设备重新注册
+            keepalivesFromUnknown++;
+            respond(403, REASON_FORBIDDEN, source);
+            return;
+        }
+        if (!message.findXmlElement(CMD_TYPE)) {
+            respond(200, REASON_OK, source);
+            return;
+        }
+        if (message.foundEquals(KEEPALIVE)) {
+            device.onKeepalive(source, System.currentTimeMillis());
+            keepalives++;
+            respond(200, REASON_OK, source);
+        } else if (message.foundEquals(CATALOG)) {
+            respond(200, REASON_OK, source);
+            catalogResponses++;
+            handleCatalog(device);
+        } else {
+            respond(200, REASON_OK, source);
+        }
+    }
+
+    /**
+     * 处理目录应答；通道较多时设备会分多条MESSAGE发送，收齐SumNum条后整体替换
+     */
+    private void handleCatalog(SipDevice device) {
+        String probe = message.string(message.bodyStart, Math.min(message.bodyEnd, message.bodyStart + 64));
+        boolean gbEncoded = probe != null && probe.toUpperCase().contains("GB");
+        String body = new String(message.data(), message.bodyStart, message.bodyEnd - message.bodyStart,
+                gbEncoded ? GB_CHARSET : StandardCharsets.UTF_8);
+
+        String sumNum = xmlValue(body, "SumNum", 0);
+        int total = sumNum == null ? 0 : Integer.parseInt(sumNum.trim());
+        Map<String, SipDevice.Channel> pending = device.pendingCatalog;
+        int position = 0;
+        while ((position = body.indexOf("<Item>", position)) >= 0) {
+            int end = body.indexOf("</Item>", position);
+            if (end < 0) {
+                break;
+            }
+            String item = body.substring(position, end);
+            String channelId = xmlValue(item, "DeviceID", 0);
+            if (channelId != null) {
+                pending.put(channelId, new SipDevice.Channel(channelId, xmlValue(item, "Name", 0),
+                        xmlValue(item, "Status", 0)));
+            }
+            position = end;
+        }
+        if (pending.size() >= total) {
+            device.updateCatalog(new ArrayList<>(pending.values()), System.currentTimeMillis());
+            pending.clear();
+            log.debug("GB28181 device {} catalog updated: {} channels", device.getDeviceId(), total);
+        }
+    }
+
+    private void handleBye(InetSocketAddress source) {
+        SipDialog dialog = dialogs.remove(message.string(message.callIdStart, message.callIdEnd));
+        if (dialog == null) {
+            respond(481, REASON_NO_TRANSACTION, source);
+            return;
+        }
+        respond(200, REASON_OK, source);
+        log.info("GB28181 device {} ended dialog {}", dialog.getDeviceId(), dialog.getCallId());
+        dialog.terminate();
+    }
+
+    private void handleResponse(InetSocketAddress source) {
+        if (!message.findBranch()) {
+            return;
+        }
+        ClientTransaction transaction = transactions.get(message.found());
+        if (transaction == null) {
+            // 事务结束后设备重传的INVITE 200 OK，需要重发ACK
+            if (message.cseqMethod() == SipMessage.METHOD_INVITE && message.statusCode() / 100 == 2) {
+                SipDialog dialog = dialogs.get(message.string(message.callIdStart, message.callIdEnd));
+                if (dialog != null && dialog.ack != null) {
+                    send(dialog.ack, dialog.getAddress());
+                }
+            }
+            return;
+        }
+        if (message.statusCode() < 200) {
+            // 临时应答：INVITE停止重传，等待最终应答
+            transaction.provisional = true;
+            return;
+        }
+        transactions.remove(transaction.branch);
+        transaction.onFinalResponse(message);
+    }
+
+    private void sendInvite(SipDevice device, String channelId, String mediaIp, int mediaPort, String ssrc,
+                            CompletableFuture<SipDialog> future) {
+        InetSocketAddress address = device.getAddress();
+        String requestUri = "sip:" + channelId + "@" + address.getHostString() + ":" + address.getPort();
+        String branch = newBranch();
+        String localTag = newTag();
+        String callId = newCallId();
+        long cseq = 1;
+        String sdp = "v=0\r\n"
+                + "o=" + channelId + " 0 0 IN IP4 " + mediaIp + "\r\n"
+                + "s=Play\r\n"
+                + "c=IN IP4 " + mediaIp + "\r\n"
+                + "t=0 0\r\n"
+                + "m=video " + mediaPort + " RTP/AVP 96 98 97\r\n"
+                + "a=recvonly\r\n"
+                + "a=rtpmap:96 PS/90000\r\n"
+                + "a=rtpmap:98 H264/90000\r\n"
+                + "a=rtpmap:97 MPEG4/90000\r\n"
+                + "y=" + ssrc + "\r\n";
+        String request = requestBuilder("INVITE", requestUri, branch)
+                .from(localTag)
+                .to(channelId, null)
+                .callId(callId)
+                .cseq(cseq, "INVITE")
+                .header("Subject", channelId + ":" + ssrc + "," + serverId + ":0")
+                .build("APPLICATION/SDP", sdp);
+
+        startTransaction(new ClientTransaction(branch, SipMessage.METHOD_INVITE, request, address) {
+            @Override
+            void onFinalResponse(SipMessage response) {
+                String remoteTag = response.findToTag() ? response.found() : null;
+                String to = response.string(response.toStart, response.toEnd);
+                if (response.statusCode() / 100 != 2) {
+                    // 非2xx最终应答的ACK属于同一事务，沿用原分支
+                    send(requestBuilder("ACK", requestUri, branch)
+                            .from(localTag).rawTo(to).callId(callId).cseq(cseq, "ACK")
+                            .build(null, null), address);
+                    future.completeExceptionally(new ServiceException("GB28181 INVITE rejected by "
+                            + device.getDeviceId() + ": " + response.statusCode()));
+                    return;
+                }
+                String remoteTarget = contactUri(response, requestUri);
+                SipDialog dialog = new SipDialog(callId, device.getDeviceId(), channelId, ssrc, localTag,
+                        remoteTag, remoteTarget, address, response.body(), cseq);
+                dialog.ack = requestBuilder("ACK", remoteTarget, newBranch())
+                        .from(localTag).rawTo(to).callId(callId).cseq(cseq, "ACK")
+                        .build(null, null);
+                send(dialog.ack, address);
+                dialogs.put(callId, dialog);
+                if (!future.complete(dialog)) {
+                    // 调用方已放弃等待，立即挂断
+                    bye(dialog);
+                }
+            }
+
+            @Override
+            void onTimeout() {
+                future.completeExceptionally(new TimeoutException("GB28181 INVITE to "
+                        + device.getDeviceId() + " timed out"));
+            }
+        });
+    }
+
+    private void sendCatalogQuery(SipDevice device) {
+        InetSocketAddress address = device.getAddress();
+        if (address == null || !device.isOnline()) {
+            return;
+        }
+        String body = "<?xml version=\"1.0\" encoding=\"GB2312\"?>\r\n"
+                + "<Query>\r\n"
+                + "<CmdType>Catalog</CmdType>\r\n"
+                + "<SN>" + (sequence.incrementAndGet() % 1000000) + "</SN>\r\n"
+                + "<DeviceID>" + device.getDeviceId() + "</DeviceID>\r\n"
+                + "</Query>\r\n";
+        String branch = newBranch();
+        String request = requestBuilder("MESSAGE", "sip:" + device.getDeviceId() + "@" + domain, branch)
+                .from(newTag())
+                .to(device.getDeviceId(), null)
+                .callId(newCallId())
+                .cseq(1, "MESSAGE")
+                .build("Application/MANSCDP+xml", body);
+        startTransaction(new ClientTransaction(branch, SipMessage.METHOD_MESSAGE, request, address) {
+            @Override
+            void onFinalResponse(SipMessage response) {
+                if (response.statusCode() / 100 != 2) {
+                    log.warn("GB28181 device {} rejected catalog query: {}", device.getDeviceId(),
+                            response.statusCode());
+                }
+            }
+
+            @Override
+            void onTimeout() {
+                log.debug("GB28181 catalog query to {} timed out", device.getDeviceId());
+            }
+        });
+    }
+
+    private void startTransaction(ClientTransaction transaction) {
+        long now = System.currentTimeMillis();
+        transaction.deadline = now + transactionTimeoutMs;
+        transaction.interval = RETRANSMIT_T1_MS;
+        transaction.nextRetransmitAt = now + RETRANSMIT_T1_MS;
+        transactions.put(transaction.branch, transaction);
+        send(transaction.request, transaction.target);
+    }
+
+    private void tick(long now) {
+        long second = now / 1000;
+        if (second != dateSecond) {
+            dateSecond = second;
+            // 国标要求注册应答携带Date头用于设备校时，每秒只格式化一次
+            dateHeader = SipMessage.bytes(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS").format(new Date(now)));
+        }
+
+        if (!transactions.isEmpty()) {
+            Iterator<ClientTransaction> iterator = transactions.values().iterator();
+            while (iterator.hasNext()) {
+                ClientTransaction transaction = iterator.next();
+                if (now >= transaction.deadline) {
+                    iterator.remove();
+                    transaction.onTimeout();
+                } else if (!transaction.provisional && now >= transaction.nextRetransmitAt) {
+                    retransmissions++;
+                    send(transaction.request, transaction.target);
+                    transaction.interval = transaction.method == SipMessage.METHOD_INVITE
+                            ? transaction.interval * 2 : Math.min(transaction.interval * 2, RETRANSMIT_T2_MS);
+                    transaction.nextRetransmitAt = now + transaction.interval;
+                }
+            }
+        }
+
+        long elapsed = lastTick == 0 ? TICK_INTERVAL_MS : now - lastTick;
+        catalogTokens = Math.min(catalogQueriesPerSecond, catalogTokens + catalogQueriesPerSecond * elapsed / 1000.0);
+        while (catalogTokens >= 1 && !catalogQueue.isEmpty()) {
+            sendCatalogQuery(catalogQueue.poll());
+            catalogTokens--;
+        }
+
+        if (now - lastExpiryScan >= EXPIRY_SCAN_INTERVAL_MS) {
+            lastExpiryScan = now;
+            expireDevices(now);
+        }
+    }
+
+    private void expireDevices(long now) {
+        int online = 0;
+        Iterator<SipDevice> iterator = devices.values().iterator();
+        while (iterator.hasNext()) {
+            SipDevice device = iterator.next();
+            if (now > device.getExpiresAt()) {
+                iterator.remove();
+                deviceIndex.remove(device.idHigh, device.idLow);
+                device.setOffline();
+                log.info("GB28181 device {} registration expired", device.getDeviceId());
+            } else if (device.isOnline() && now - device.getLastKeepaliveAt() > keepaliveTimeoutMs) {
+                device.setOffline();
+                log.warn("GB28181 device {} keepalive timed out", device.getDeviceId());
+            }
+            if (device.isOnline()) {
+                online++;
+            }
+        }
+        if (online != lastReportedOnline) {
+            lastReportedOnline = online;
+            log.info("GB28181 devices online: {}/{}", online, devices.size());
+        }
+    }
+
+    private void respondRegister(InetSocketAddress target, long expires) {
+        ByteBuffer out = beginResponse(200, REASON_OK);
+        if (message.contactStart >= 0) {
+            out.put(CONTACT);
+            putRegion(out, message.contactStart, message.contactEnd);
+            out.put(CRLF);
+        }
+        out.put(EXPIRES);
+        putDecimal(out, expires);
+        out.put(CRLF);
+        out.put(DATE).put(dateHeader != null ? dateHeader : SipMessage.bytes("1970-01-01T00:00:00.000")).put(CRLF);
+        finishResponse(out, target);
+    }
+
+    private void respondChallenge(InetSocketAddress target) {
+        ByteBuffer out = beginResponse(401, REASON_UNAUTHORIZED);
+        out.put(SipMessage.bytes("WWW-Authenticate: Digest realm=\"" + domain + "\", nonce=\"" + newNonce()
+                + "\", algorithm=MD5\r\n"));
+        finishResponse(out, target);
+    }
+
+    /**
+     * 无状态应答：直接把请求中的Via/From/To/Call-ID/CSeq拷贝到发送缓冲区
+     */
+    private void respond(int status, byte[] reason, InetSocketAddress target) {
+        finishResponse(beginResponse(status, reason), target);
+    }
+
+    private ByteBuffer beginResponse(int status, byte[] reason) {
+        ByteBuffer out = sendBuffer;
+        out.clear();
+        out.put(STATUS_PREFIX);
+        putDecimal(out, status);
+        out.put((byte) ' ').put(reason).put(CRLF);
+        out.put(VIA);
+        putRegion(out, message.viaStart, message.viaEnd);
+        out.put(CRLF).put(FROM);
+        putRegion(out, message.fromStart, message.fromEnd);
+        out.put(CRLF).put(TO);
+        putRegion(out, message.toStart, message.toEnd);
+        if (!message.findToTag()) {
+            out.put(TAG).put(serverTag);
+        }
+        out.put(CRLF).put(CALL_ID);
+        putRegion(out, message.callIdStart, message.callIdEnd);
+        out.put(CRLF).put(CSEQ);
+        putRegion(out, message.cseqStart, message.cseqEnd);
+        out.put(CRLF);
+        return out;
+    }
+
+    private void finishResponse(ByteBuffer out, InetSocketAddress target) {
+        out.put(TRAILER);
+        out.flip();
+        sendBuffer(out, target);
+    }
+
+    private void send(String request, InetSocketAddress target) {
+        ByteBuffer out = sendBuffer;
+        out.clear();
+        out.put(request.getBytes(StandardCharsets.UTF_8));
+        out.flip();
+        sendBuffer(out, target);
+    }
+
+    private void sendBuffer(ByteBuffer out, InetSocketAddress target) {
+        try {
+            if (channel.send(out, target) == 0) {
+                // 套接字发送缓冲区已满，UDP语义下直接丢弃，由对端重传
+                sendDrops++;
+            }
+        } catch (IOException e) {
+            sendDrops++;
+            log.debug("Failed to send SIP message to {}: {}", target, e.getMessage());
+        }
+    }
+
+    private void putRegion(ByteBuffer out, int start, int end) {
+        out.put(message.data(), start, end - start);
+    }
+
+    private void putDecimal(ByteBuffer out, long value) {
+        if (value == 0) {
+            out.put((byte) '0');
+            return;
+        }
+        int position = decimalScratch.length;
+        while (value > 0) {
+            decimalScratch[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        out.put(decimalScratch, position, decimalScratch.length - position);
+    }
+
+    private String contactUri(SipMessage response, String fallback) {
+        if (response.contactStart < 0) {
+            return fallback;
+        }
+        String contact = response.string(response.contactStart, response.contactEnd);
+        int open = contact.indexOf('<');
+        int close = contact.indexOf('>');
+        return open >= 0 && close > open ? contact.substring(open + 1, close) : contact;
+    }
+
+    private String newNonce() {
+        String timestamp = Long.toHexString(System.currentTimeMillis());
+        return timestamp + DigestUtil.md5Hex(timestamp + ":" + nonceSecret).substring(0, 16);
+    }
+
+    /**
+     * nonce由时间戳和签名组成，无需保存即可校验是否为本平台签发且未过期
+     */
+    private boolean isNonceValid(String nonce) {
+        if (nonce == null || nonce.length() <= 16) {
+            return false;
+        }
+        String timestamp = nonce.substring(0, nonce.length() - 16);
+        if (!nonce.endsWith(DigestUtil.md5Hex(timestamp + ":" + nonceSecret).substring(0, 16))) {
+            return false;
+        }
+        try {
+            return System.currentTimeMillis() - Long.parseLong(timestamp, 16) <= NONCE_VALIDITY_MS;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private boolean verifyDigest(Map<String, String> credentials) {
+        String response = credentials.get("response");
+        if (response == null) {
+            return false;
+        }
+        String ha1 = DigestUtil.md5Hex(credentials.get("username") + ":" + credentials.get("realm") + ":" + password);
+        String ha2 = DigestUtil.md5Hex("REGISTER:" + credentials.get("uri"));
+        String qop = credentials.get("qop");
+        String expected = qop == null
+                ? DigestUtil.md5Hex(ha1 + ":" + credentials.get("nonce") + ":" + ha2)
+                : DigestUtil.md5Hex(ha1 + ":" + credentials.get("nonce") + ":" + credentials.get("nc") + ":"
+                        + credentials.get("cnonce") + ":" + qop + ":" + ha2);
+        return expected.equalsIgnoreCase(response);
+    }
+
+    private static Map<String, String> parseDigestParams(String header) {
+        Map<String, String> params = new HashMap<>();
+        String value = header.trim();
+        if (value.regionMatches(true, 0, "Digest", 0, 6)) {
+            value = value.substring(6);
+        }
+        for (String part : value.split(",")) {
+            int equals = part.indexOf('=');
+            if (equals > 0) {
+                String name = part.substring(0, equals).trim().toLowerCase();
+                String paramValue = part.substring(equals + 1).trim();
+                if (paramValue.length() >= 2 && paramValue.startsWith("\"") && paramValue.endsWith("\"")) {
+                    paramValue = paramValue.substring(1, paramValue.length() - 1);
+                }
+                params.put(name, paramValue);
+            }
+        }
+        return params;
+    }
+
+    private static String xmlValue(String xml, String tag, int from) {
+        String open = "<" + tag + ">";
+        int start = xml.indexOf(open, from);
+        if (start < 0) {
+            return null;
+        }
+        int end = xml.indexOf("</" + tag + ">", start);
+        return end < 0 ? null : xml.substring(start + open.length(), end).trim();
+    }
+
+    private String newBranch() {
+        return "z9hG4bK" + Long.toHexString(sequence.incrementAndGet()) + newTag();
+    }
+
+    private String newTag() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong() & 0xFFFFFFFFFFL);
+    }
+
+    private String newCallId() {
+        return Long.toHexString(sequence.incrementAndGet()) + newTag() + "@" + advertisedIp;
+    }
+
+    private RequestBuilder requestBuilder(String method, String requestUri, String branch) {
+        return new RequestBuilder(method, requestUri, branch);
+    }
+
+    /**
+     * 平台发起请求的文本构造器，这些请求频率低，直接拼接字符串
+     */
+    private class RequestBuilder {
+        private final StringBuilder text = new StringBuilder(512);
+
+        RequestBuilder(String method, String requestUri, String branch) {
+            text.append(method).append(' ').append(requestUri).append(" SIP/2.0\r\n");
+            text.append("Via: SIP/2.0/UDP ").append(advertisedIp).append(':').append(port)
+                    .append(";rport;branch=").append(branch).append("\r\n");
+        }
+
+        RequestBuilder from(String tag) {
+            text.append("From: <sip:").append(serverId).append('@').append(domain).append(">;tag=").append(tag)
+                    .append("\r\n");
+            return this;
+        }
+
+        RequestBuilder to(String user, String tag) {
+            text.append("To: <sip:").append(user).append('@').append(domain).append('>');
+            if (tag != null) {
+                text.append(";tag=").append(tag);
+            }
+            text.append("\r\n");
+            return this;
+        }
+
+        RequestBuilder rawTo(String to) {
+            text.append("To: ").append(to).append("\r\n");
+            return this;
+        }
+
+        RequestBuilder callId(String callId) {
+            text.append("Call-ID: ").append(callId).append("\r\n");
+            return this;
+        }
+
+        RequestBuilder cseq(long number, String method) {
+            text.append("CSeq: ").append(number).append(' ').append(method).append("\r\n");
+            return this;
+        }
+
+        RequestBuilder header(String name, String value) {
+            text.append(name).append(": ").append(value).append("\r\n");
+            return this;
+        }
+
+        String build(String contentType, String body) {
+            text.append("Max-Forwards: 70\r\n");
+            text.append("Contact: <sip:").append(serverId).append('@').append(advertisedIp).append(':').append(port)
+                    .append(">\r\n");
+            text.append("User-Agent: AICK-MMP\r\n");
+            if (contentType != null) {
+                text.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            byte[] content = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+            text.append("Content-Length: ").append(content.length).append("\r\n\r\n");
+            if (body != null) {
+                text.append(body);
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * 平台发起的客户端事务，收到最终应答或超时后结束；回调在SIP线程执行
+     */
+    private abstract static class ClientTransaction {
+        final String branch;
+        final int method;
+        final String request;
+        final InetSocketAddress target;
+        long deadline;
+        long interval;
+        long nextRetransmitAt;
+        boolean provisional;
+
+        ClientTransaction(String branch, int method, String request, InetSocketAddress target) {
+            this.branch = branch;
+            this.method = method;
+            this.request = request;
+            this.target = target;
+        }
+
+        abstract void onFinalResponse(SipMessage response);
+
+        abstract void onTimeout();
+    }
+}
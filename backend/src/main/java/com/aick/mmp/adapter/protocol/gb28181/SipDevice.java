@@ -0,0 +1,86 @@
+package com.aick.mmp.adapter.protocol.gb28181;
+
+import lombok.Getter;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 已注册到本平台的国标设备
+ * <p>
+ * 由SIP线程更新，其他线程只读；时间戳均为毫秒
+ */
+@Getter
+public class SipDevice {
+
+    private final String deviceId;
+    final long idHigh;
+    final long idLow;
+
+    private volatile InetSocketAddress address;
+    private volatile long registeredAt;
+    private volatile long expiresAt;
+    private volatile long lastKeepaliveAt;
+    private volatile long keepaliveCount;
+    private volatile boolean online;
+    private volatile List<Channel> channels = Collections.emptyList();
+    private volatile long catalogUpdatedAt;
+    /** 分多条MESSAGE到达的目录应答，收齐前暂存在这里（仅SIP线程访问） */
+    final Map<String, Channel> pendingCatalog = new LinkedHashMap<>();
+
+    SipDevice(String deviceId, long idHigh, long idLow) {
+        this.deviceId = deviceId;
+        this.idHigh = idHigh;
+        this.idLow = idLow;
+    }
+
+    void onRegistered(InetSocketAddress address, long now, long expiresSeconds) {
+        this.address = address;
+        this.registeredAt = now;
+        this.expiresAt = now + expiresSeconds * 1000;
+        this.lastKeepaliveAt = now;
+        this.online = true;
+    }
+
+    void onKeepalive(InetSocketAddress source, long now) {
+        // NAT映射变化时以最新的源地址为准
+        if (!source.equals(address)) {
+            address = source;
+        }
+        lastKeepaliveAt = now;
+        keepaliveCount++;
+        online = true;
+    }
+
+    void setOffline() {
+        online = false;
+    }
+
+    void updateCatalog(List<Channel> channels, long now) {
+        this.channels = Collections.unmodifiableList(channels);
+        this.catalogUpdatedAt = now;
+    }
+
+    /**
+     * 目录查询返回的通道（通常是设备下挂的摄像头）
+     */
+    @Getter
+    public static class Channel {
+        private final String channelId;
+        private final String name;
+        private final String status;
+
+        Channel(String channelId, String name, String status) {
+            this.channelId = channelId;
+            this.name = name;
+            this.status = status;
+        }
+
+        public boolean isOnline() {
+            return "ON".equalsIgnoreCase(status) || "ONLINE".equalsIgnoreCase(status);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.aick.mmp.adapter.protocol.gb28181;
+
+import lombok.Getter;
+
+import java.net.InetSocketAddress;
+import java.util.function.Consumer;
+
+/**
+ * INVITE建立的实时点播对话，BYE时使用其中的标签和路由信息
+ */
+@Getter
+public class SipDialog {
+
+    private final String callId;
+    private final String deviceId;
+    private final String channelId;
+    private final String ssrc;
+    private final String localTag;
+    private final String remoteTag;
+    private final String remoteTarget;
+    private final InetSocketAddress address;
+    /** 设备在200 OK的SDP中应答的媒体参数 */
+    private final String answerSdp;
+    private final long establishedAt;
+
+    long cseq;
+    /** 2xx应答的ACK，设备重传200 OK时原样重发 */
+    String ack;
+    private volatile boolean terminated;
+    private volatile Consumer<SipDialog> terminationListener;
+
+    SipDialog(String callId, String deviceId, String channelId, String ssrc, String localTag, String remoteTag,
+              String remoteTarget, InetSocketAddress address, String answerSdp, long cseq) {
+        this.callId = callId;
+        this.deviceId = deviceId;
+        this.channelId = channelId;
+        this.ssrc = ssrc;
+        this.localTag = localTag;
+        this.remoteTag = remoteTag;
+        this.remoteTarget = remoteTarget;
+        this.address = address;
+        this.answerSdp = answerSdp;
+        this.cseq = cseq;
+        this.establishedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 设置对话被设备侧BYE或平台侧结束时的回调（在SIP线程执行）
+     */
+    public void setTerminationListener(Consumer<SipDialog> terminationListener) {
+        this.terminationListener = terminationListener;
+    }
+
+    void terminate() {
+        if (terminated) {
+            return;
+        }
+        terminated = true;
+        Consumer<SipDialog> listener = terminationListener;
+        if (listener != null) {
+            listener.accept(this);
+        }
+    }
+}
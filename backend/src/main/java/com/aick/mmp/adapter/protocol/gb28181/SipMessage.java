@@ -0,0 +1,489 @@
+package com.aick.mmp.adapter.protocol.gb28181;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 可复用的SIP报文解析器
+ * <p>
+ * 只记录起始行和常用头域在接收缓冲区中的偏移，不创建字符串；需要字符串时再按偏移按需截取。
+ * 一个实例由IO线程独占，每收到一个数据报调用一次{@link #parse(byte[], int)}。
+ */
+final class SipMessage {
+
+    static final int METHOD_UNKNOWN = 0;
+    static final int METHOD_REGISTER = 1;
+    static final int METHOD_MESSAGE = 2;
+    static final int METHOD_INVITE = 3;
+    static final int METHOD_ACK = 4;
+    static final int METHOD_BYE = 5;
+    static final int METHOD_CANCEL = 6;
+    static final int METHOD_OPTIONS = 7;
+    static final int METHOD_INFO = 8;
+
+    private static final byte[][] METHOD_NAMES = {
+            null, bytes("REGISTER"), bytes("MESSAGE"), bytes("INVITE"), bytes("ACK"),
+            bytes("BYE"), bytes("CANCEL"), bytes("OPTIONS"), bytes("INFO")
+    };
+
+    private static final byte[] SIP_VERSION = bytes("SIP/2.0");
+    private static final byte[] H_VIA = bytes("via");
+    private static final byte[] H_FROM = bytes("from");
+    private static final byte[] H_TO = bytes("to");
+    private static final byte[] H_CALL_ID = bytes("call-id");
+    private static final byte[] H_CSEQ = bytes("cseq");
+    private static final byte[] H_CONTACT = bytes("contact");
+    private static final byte[] H_EXPIRES = bytes("expires");
+    private static final byte[] H_CONTENT_LENGTH = bytes("content-length");
+    private static final byte[] H_AUTHORIZATION = bytes("authorization");
+    private static final byte[] H_WWW_AUTHENTICATE = bytes("www-authenticate");
+    private static final byte[] SIP_SCHEME = bytes("sip:");
+    private static final byte[] EXPIRES_PARAM = bytes("expires");
+    private static final byte[] TAG_PARAM = bytes("tag");
+    private static final byte[] BRANCH_PARAM = bytes("branch");
+
+    private byte[] data;
+    private int length;
+
+    private boolean request;
+    private int method;
+    private int statusCode;
+    private int startLineEnd;
+    private int uriStart;
+    private int uriEnd;
+
+    int viaStart;
+    int viaEnd;
+    int fromStart;
+    int fromEnd;
+    int toStart;
+    int toEnd;
+    int callIdStart;
+    int callIdEnd;
+    int cseqStart;
+    int cseqEnd;
+    int contactStart;
+    int contactEnd;
+    int expiresStart;
+    int expiresEnd;
+    int authorizationStart;
+    int authorizationEnd;
+    int authenticateStart;
+    int authenticateEnd;
+    int bodyStart;
+    int bodyEnd;
+
+    /** 最近一次find*调用找到的区间 */
+    int foundStart;
+    int foundEnd;
+
+    /**
+     * 解析一个完整的SIP数据报
+     * @return 报文格式正确且包含必需头域时返回true
+     */
+    boolean parse(byte[] data, int length) {
+        this.data = data;
+        this.length = length;
+        viaStart = fromStart = toStart = callIdStart = cseqStart = contactStart = -1;
+        expiresStart = authorizationStart = authenticateStart = -1;
+        viaEnd = fromEnd = toEnd = callIdEnd = cseqEnd = contactEnd = -1;
+        expiresEnd = authorizationEnd = authenticateEnd = -1;
+        method = METHOD_UNKNOWN;
+        statusCode = 0;
+
+        int lineEnd = indexOfLineEnd(0);
+        if (lineEnd < 0) {
+            return false;
+        }
+        startLineEnd = lineEnd;
+        if (!parseStartLine(lineEnd)) {
+            return false;
+        }
+
+        int contentLength = -1;
+        int position = skipLineEnd(lineEnd);
+        while (position < length) {
+            lineEnd = indexOfLineEnd(position);
+            if (lineEnd < 0) {
+                return false;
+            }
+            if (lineEnd == position) {
+                position = skipLineEnd(lineEnd);
+                break;
+            }
+            int colon = indexOf((byte) ':', position, lineEnd);
+            if (colon < 0) {
+                return false;
+            }
+            int nameEnd = trimEnd(position, colon);
+            int valueStart = trimStart(colon + 1, lineEnd);
+            int valueEnd = trimEnd(valueStart, lineEnd);
+
+            if (headerIs(position, nameEnd, H_VIA, 'v')) {
+                // 只记录最上层的Via
+                if (viaStart < 0) {
+                    viaStart = valueStart;
+                    viaEnd = valueEnd;
+                }
+            } else if (headerIs(position, nameEnd, H_FROM, 'f')) {
+                fromStart = valueStart;
+                fromEnd = valueEnd;
+            } else if (headerIs(position, nameEnd, H_TO, 't')) {
+                toStart = valueStart;
+                toEnd = valueEnd;
+            } else if (headerIs(position, nameEnd, H_CALL_ID, 'i')) {
+                callIdStart = valueStart;
+                callIdEnd = valueEnd;
+            } else if (headerIs(position, nameEnd, H_CSEQ, (char) 0)) {
+                cseqStart = valueStart;
+                cseqEnd = valueEnd;
+            } else if (headerIs(position, nameEnd, H_CONTACT, 'm')) {
+                contactStart = valueStart;
+                contactEnd = valueEnd;
+            } else if (headerIs(position, nameEnd, H_EXPIRES, (char) 0)) {
+                expiresStart = valueStart;
+                expiresEnd = valueEnd;
+            } else if (headerIs(position, nameEnd, H_CONTENT_LENGTH, 'l')) {
+                contentLength = (int) parseDecimal(valueStart, valueEnd);
+            } else if (headerIs(position, nameEnd, H_AUTHORIZATION, (char) 0)) {
+                authorizationStart = valueStart;
+                authorizationEnd = valueEnd;
+            } else if (headerIs(position, nameEnd, H_WWW_AUTHENTICATE, (char) 0)) {
+                authenticateStart = valueStart;
+                authenticateEnd = valueEnd;
+            }
+            position = skipLineEnd(lineEnd);
+        }
+
+        bodyStart = Math.min(position, length);
+        bodyEnd = contentLength >= 0 ? Math.min(length, bodyStart + contentLength) : length;
+        return viaStart >= 0 && fromStart >= 0 && toStart >= 0 && callIdStart >= 0 && cseqStart >= 0;
+    }
+
+    private boolean parseStartLine(int lineEnd) {
+        if (startsWith(0, lineEnd, SIP_VERSION)) {
+            request = false;
+            int codeStart = SIP_VERSION.length + 1;
+            if (codeStart + 3 > lineEnd) {
+                return false;
+            }
+            statusCode = (int) parseDecimal(codeStart, codeStart + 3);
+            return statusCode >= 100 && statusCode < 700;
+        }
+        request = true;
+        int methodEnd = indexOf((byte) ' ', 0, lineEnd);
+        if (methodEnd <= 0) {
+            return false;
+        }
+        for (int i = 1; i < METHOD_NAMES.length; i++) {
+            if (regionEquals(0, methodEnd, METHOD_NAMES[i])) {
+                method = i;
+                break;
+            }
+        }
+        uriStart = methodEnd + 1;
+        uriEnd = indexOf((byte) ' ', uriStart, lineEnd);
+        return uriEnd > uriStart && startsWith(uriEnd + 1, lineEnd, SIP_VERSION);
+    }
+
+    boolean isRequest() {
+        return request;
+    }
+
+    int method() {
+        return method;
+    }
+
+    int statusCode() {
+        return statusCode;
+    }
+
+    byte[] data() {
+        return data;
+    }
+
+    int length() {
+        return length;
+    }
+
+    int startLineEnd() {
+        return startLineEnd;
+    }
+
+    boolean hasBody() {
+        return bodyEnd > bodyStart;
+    }
+
+    /**
+     * CSeq中的序号
+     */
+    long cseqNumber() {
+        int end = indexOf((byte) ' ', cseqStart, cseqEnd);
+        return parseDecimal(cseqStart, end < 0 ? cseqEnd : end);
+    }
+
+    /**
+     * CSeq中的方法
+     */
+    int cseqMethod() {
+        int space = indexOf((byte) ' ', cseqStart, cseqEnd);
+        if (space < 0) {
+            return METHOD_UNKNOWN;
+        }
+        int start = trimStart(space, cseqEnd);
+        for (int i = 1; i < METHOD_NAMES.length; i++) {
+            if (regionEquals(start, cseqEnd, METHOD_NAMES[i])) {
+                return i;
+            }
+        }
+        return METHOD_UNKNOWN;
+    }
+
+    /**
+     * Expires头的值；未携带时读取Contact中的expires参数，都没有时返回defaultValue
+     */
+    long expires(long defaultValue) {
+        if (expiresStart >= 0) {
+            return parseDecimal(expiresStart, expiresEnd);
+        }
+        if (contactStart >= 0 && findParam(contactStart, contactEnd, EXPIRES_PARAM)) {
+            return parseDecimal(foundStart, foundEnd);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * 查找From头中sip URI的用户部分（国标设备编码），结果保存在foundStart/foundEnd
+     */
+    boolean findFromUser() {
+        return findUser(fromStart, fromEnd);
+    }
+
+    /**
+     * 查找请求URI的用户部分
+     */
+    boolean findRequestUriUser() {
+        return findUser(uriStart, uriEnd);
+    }
+
+    boolean findToTag() {
+        return findParam(toStart, toEnd, TAG_PARAM);
+    }
+
+    boolean findBranch() {
+        return findParam(viaStart, viaEnd, BRANCH_PARAM);
+    }
+
+    /**
+     * 在消息体中查找XML元素的文本内容，例如&lt;CmdType&gt;Keepalive&lt;/CmdType&gt;
+     * @param openTag 包含尖括号的开始标签
+     */
+    boolean findXmlElement(byte[] openTag) {
+        return findXmlElement(openTag, bodyStart, bodyEnd);
+    }
+
+    boolean findXmlElement(byte[] openTag, int from, int to) {
+        int start = indexOf(openTag, from, to);
+        if (start < 0) {
+            return false;
+        }
+        int valueStart = start + openTag.length;
+        int valueEnd = indexOf((byte) '<', valueStart, to);
+        if (valueEnd < 0) {
+            return false;
+        }
+        foundStart = trimStart(valueStart, valueEnd);
+        foundEnd = trimEnd(foundStart, valueEnd);
+        return true;
+    }
+
+    private boolean findUser(int start, int end) {
+        if (start < 0) {
+            return false;
+        }
+        int scheme = indexOf(SIP_SCHEME, start, end);
+        if (scheme < 0) {
+            return false;
+        }
+        int userStart = scheme + SIP_SCHEME.length;
+        int position = userStart;
+        while (position < end) {
+            byte b = data[position];
+            if (b == '@') {
+                foundStart = userStart;
+                foundEnd = position;
+                return position > userStart;
+            }
+            if (b == '>' || b == ';' || b == ':') {
+                break;
+            }
+            position++;
+        }
+        return false;
+    }
+
+    /**
+     * 在头域值中查找;name=value参数，结果保存在foundStart/foundEnd
+     */
+    boolean findParam(int start, int end, byte[] name) {
+        if (start < 0) {
+            return false;
+        }
+        int position = start;
+        while (position < end) {
+            int semicolon = indexOf((byte) ';', position, end);
+            if (semicolon < 0) {
+                return false;
+            }
+            int nameStart = trimStart(semicolon + 1, end);
+            int nameEnd = nameStart + name.length;
+            if (nameEnd < end && data[nameEnd] == '=' && regionEqualsIgnoreCase(nameStart, nameEnd, name)) {
+                int valueEnd = nameEnd + 1;
+                while (valueEnd < end && data[valueEnd] != ';' && data[valueEnd] != '>' && data[valueEnd] != ',') {
+                    valueEnd++;
+                }
+                foundStart = nameEnd + 1;
+                foundEnd = trimEnd(foundStart, valueEnd);
+                return true;
+            }
+            position = semicolon + 1;
+        }
+        return false;
+    }
+
+    String string(int start, int end) {
+        return start < 0 ? null : new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    String found() {
+        return string(foundStart, foundEnd);
+    }
+
+    String requestUri() {
+        return string(uriStart, uriEnd);
+    }
+
+    String body() {
+        return string(bodyStart, bodyEnd);
+    }
+
+    boolean regionEquals(int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (data[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean foundEquals(byte[] expected) {
+        return regionEquals(foundStart, foundEnd, expected);
+    }
+
+    long parseDecimal(int start, int end) {
+        long value = 0;
+        int position = trimStart(start, end);
+        boolean digits = false;
+        while (position < end) {
+            byte b = data[position++];
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            digits = true;
+        }
+        return digits ? value : -1;
+    }
+
+    private boolean headerIs(int start, int end, byte[] name, char compact) {
+        if (end - start == 1) {
+            return compact != 0 && (data[start] | 0x20) == compact;
+        }
+        return regionEqualsIgnoreCase(start, end, name);
+    }
+
+    /**
+     * 与小写常量比较，忽略大小写
+     */
+    private boolean regionEqualsIgnoreCase(int start, int end, byte[] lowerCase) {
+        if (end - start != lowerCase.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCase.length; i++) {
+            byte b = data[start + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 32;
+            }
+            if (b != lowerCase[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        return end - start >= prefix.length && regionEquals(start, start + prefix.length, prefix);
+    }
+
+    private int indexOfLineEnd(int from) {
+        for (int i = from; i < length; i++) {
+            if (data[i] == '\r' || data[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipLineEnd(int lineEnd) {
+        if (lineEnd < length && data[lineEnd] == '\r') {
+            lineEnd++;
+        }
+        if (lineEnd < length && data[lineEnd] == '\n') {
+            lineEnd++;
+        }
+        return lineEnd;
+    }
+
+    int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        int last = to - pattern.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private int trimStart(int start, int end) {
+        while (start < end && (data[start] == ' ' || data[start] == '\t')) {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && (data[end - 1] == ' ' || data[end - 1] == '\t')) {
+            end--;
+        }
+        return end;
+    }
+
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,82 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 重组后的视频访问单元（一帧），数据为Annex-B格式（每个NAL前带 00 00 00 01 起始码）
+ * <p>
+ * 数据存放在池化缓冲区中，可被多个消费者共享：需要在回调之外继续持有时先调用{@link #retain()}，
+ * 用完后调用{@link #release()}。共享数据只能通过{@link #data()}返回的独立视图读取。
+ */
+@Getter
+public class AccessUnit {
+
+    public enum Codec {
+        H264, H265;
+
+        /**
+         * 根据SDP中的编码名称识别编码格式，不支持时返回null
+         */
+        public static Codec fromEncodingName(String encodingName) {
+            if (encodingName == null) {
+                return null;
+            }
+            switch (encodingName.toUpperCase()) {
+                case "H264":
+                    return H264;
+                case "H265":
+                case "HEVC":
+                    return H265;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final Codec codec;
+    private final PooledBuffer buffer;
+    private final int size;
+    private final long timestamp;
+    private final int clockRate;
+    private final boolean keyframe;
+    private final long receivedAt;
+
+    public AccessUnit(Codec codec, PooledBuffer buffer, int size, long timestamp, int clockRate,
+                      boolean keyframe, long receivedAt) {
+        this.codec = codec;
+        this.buffer = buffer;
+        this.size = size;
+        this.timestamp = timestamp;
+        this.clockRate = clockRate;
+        this.keyframe = keyframe;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * 帧数据的只读视图，position为0，limit为帧长度
+     */
+    public ByteBuffer data() {
+        ByteBuffer view = buffer.buffer().duplicate();
+        view.position(0);
+        view.limit(size);
+        return view;
+    }
+
+    /**
+     * 以毫秒表示的RTP时间戳
+     */
+    public long getTimestampMillis() {
+        return timestamp * 1000 / clockRate;
+    }
+
+    public AccessUnit retain() {
+        buffer.retain();
+        return this;
+    }
+
+    public boolean release() {
+        return buffer.release();
+    }
+}
@@ -0,0 +1,18 @@
+package com.aick.mmp.adapter.protocol.media;
+
+/**
+ * 访问单元回调接口
+ * <p>
+ * 回调返回后调用方会释放自己的引用，需要异步处理的实现必须先{@link AccessUnit#retain()}
+ */
+public interface AccessUnitListener {
+
+    void onAccessUnit(AccessUnit accessUnit);
+
+    /**
+     * 上游会话结束，之后不会再有新的访问单元
+     * @param cause 异常原因，主动关闭时为null
+     */
+    default void onStreamClosed(Throwable cause) {
+    }
+}
@@ -0,0 +1,124 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分级直接内存缓冲池
+ * <p>
+ * RTP包和重组后的访问单元都从这里分配，稳态下不产生新的堆内存或直接内存分配。
+ * 每个规格的空闲缓冲区数量有上限，超出的部分交给GC回收。
+ */
+@Component
+@Slf4j
+public class BufferPool {
+
+    /** 各规格大小：RTP包、大RTP包、普通帧、关键帧、超大关键帧 */
+    private static final int[] SIZE_CLASSES = {2 * 1024, 64 * 1024 + 16, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024};
+
+    /** 每个规格最多保留的空闲内存 */
+    private static final long MAX_FREE_BYTES_PER_CLASS = 64L * 1024 * 1024;
+
+    private final SizeClass[] sizeClasses;
+    private final AtomicLong unpooledAllocations = new AtomicLong();
+
+    public BufferPool() {
+        this(MAX_FREE_BYTES_PER_CLASS);
+    }
+
+    public BufferPool(long maxFreeBytesPerClass) {
+        sizeClasses = new SizeClass[SIZE_CLASSES.length];
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            int maxFree = (int) Math.max(4, maxFreeBytesPerClass / SIZE_CLASSES[i]);
+            sizeClasses[i] = new SizeClass(SIZE_CLASSES[i], maxFree);
+        }
+    }
+
+    /**
+     * 获取容量不小于minCapacity的缓冲区，引用计数为1
+     */
+    public PooledBuffer acquire(int minCapacity) {
+        for (SizeClass sizeClass : sizeClasses) {
+            if (sizeClass.size >= minCapacity) {
+                return sizeClass.acquire();
+            }
+        }
+        unpooledAllocations.incrementAndGet();
+        return new PooledBuffer(null, ByteBuffer.allocateDirect(minCapacity));
+    }
+
+    /**
+     * acquire(minCapacity)实际会分配的容量
+     */
+    public int capacityFor(int minCapacity) {
+        for (SizeClass sizeClass : sizeClasses) {
+            if (sizeClass.size >= minCapacity) {
+                return sizeClass.size;
+            }
+        }
+        return minCapacity;
+    }
+
+    /**
+     * 缓冲池统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        long allocatedBytes = 0;
+        long freeBytes = 0;
+        long inUse = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            synchronized (sizeClass) {
+                allocatedBytes += sizeClass.allocated * sizeClass.size;
+                freeBytes += (long) sizeClass.free.size() * sizeClass.size;
+                inUse += sizeClass.allocated - sizeClass.free.size() - sizeClass.discarded;
+            }
+        }
+        statistics.put("allocatedBytes", allocatedBytes);
+        statistics.put("freeBytes", freeBytes);
+        statistics.put("buffersInUse", inUse);
+        statistics.put("unpooledAllocations", unpooledAllocations.get());
+        return statistics;
+    }
+
+    /**
+     * 单个规格的空闲列表
+     */
+    static final class SizeClass {
+        private final int size;
+        private final int maxFree;
+        private final ArrayDeque<PooledBuffer> free;
+        private long allocated;
+        private long discarded;
+
+        SizeClass(int size, int maxFree) {
+            this.size = size;
+            this.maxFree = maxFree;
+            this.free = new ArrayDeque<>(Math.min(maxFree, 1024));
+        }
+
+        synchronized PooledBuffer acquire() {
+            PooledBuffer buffer = free.pollLast();
+            if (buffer == null) {
+                allocated++;
+                return new PooledBuffer(this, ByteBuffer.allocateDirect(size));
+            }
+            buffer.reset();
+            return buffer;
+        }
+
+        synchronized void recycle(PooledBuffer buffer) {
+            if (free.size() < maxFree) {
+                free.addLast(buffer);
+            } else {
+                discarded++;
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import java.nio.ByteBuffer;
+
+/**
+ * H.264 RTP解包（RFC 6184），支持单NAL、STAP-A和FU-A
+ */
+public class H264Depacketizer extends RtpDepacketizer {
+
+    private static final int NAL_IDR = 5;
+    private static final int STAP_A = 24;
+    private static final int FU_A = 28;
+
+    private final byte[] fragmentHeader = new byte[1];
+
+    public H264Depacketizer(BufferPool bufferPool, int clockRate, AccessUnitListener listener,
+                            IngestStatistics statistics) {
+        super(AccessUnit.Codec.H264, bufferPool, clockRate, listener, statistics);
+    }
+
+    @Override
+    protected void depacketize(ByteBuffer packet, int offset, int end) {
+        int nalHeader = packet.get(offset) & 0xFF;
+        int type = nalHeader & 0x1F;
+
+        if (type >= 1 && type <= 23) {
+            noteNalType(type);
+            appendNal(packet, offset, end);
+        } else if (type == STAP_A) {
+            int position = offset + 1;
+            while (position + 2 <= end) {
+                int size = packet.getShort(position) & 0xFFFF;
+                position += 2;
+                if (size == 0 || position + size > end) {
+                    markCorrupted();
+                    return;
+                }
+                noteNalType(packet.get(position) & 0x1F);
+                appendNal(packet, position, position + size);
+                position += size;
+            }
+        } else if (type == FU_A) {
+            if (offset + 2 > end) {
+                markCorrupted();
+                return;
+            }
+            int fuHeader = packet.get(offset + 1) & 0xFF;
+            int fuType = fuHeader & 0x1F;
+            if ((fuHeader & 0x80) != 0) {
+                noteNalType(fuType);
+                fragmentHeader[0] = (byte) ((nalHeader & 0xE0) | fuType);
+                beginFragmentedNal(fragmentHeader, 1);
+            } else if (!fragmentInProgress) {
+                // 分片起始包丢失
+                markCorrupted();
+                return;
+            }
+            appendFragment(packet, offset + 2, end);
+            if ((fuHeader & 0x40) != 0) {
+                fragmentInProgress = false;
+            }
+        }
+        // STAP-B、MTAP、FU-B 在摄像头中基本不会出现，直接忽略
+    }
+
+    private void noteNalType(int type) {
+        if (type == NAL_IDR) {
+            markKeyframe();
+        }
+    }
+}
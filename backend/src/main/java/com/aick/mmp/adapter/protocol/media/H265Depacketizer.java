@@ -0,0 +1,73 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import java.nio.ByteBuffer;
+
+/**
+ * H.265 RTP解包（RFC 7798），支持单NAL、AP和FU（不含DONL字段）
+ */
+public class H265Depacketizer extends RtpDepacketizer {
+
+    private static final int AGGREGATION_PACKET = 48;
+    private static final int FRAGMENTATION_UNIT = 49;
+
+    private final byte[] fragmentHeader = new byte[2];
+
+    public H265Depacketizer(BufferPool bufferPool, int clockRate, AccessUnitListener listener,
+                            IngestStatistics statistics) {
+        super(AccessUnit.Codec.H265, bufferPool, clockRate, listener, statistics);
+    }
+
+    @Override
+    protected void depacketize(ByteBuffer packet, int offset, int end) {
+        if (offset + 2 > end) {
+            markCorrupted();
+            return;
+        }
+        int type = (packet.get(offset) >> 1) & 0x3F;
+
+        if (type < AGGREGATION_PACKET) {
+            noteNalType(type);
+            appendNal(packet, offset, end);
+        } else if (type == AGGREGATION_PACKET) {
+            int position = offset + 2;
+            while (position + 2 <= end) {
+                int size = packet.getShort(position) & 0xFFFF;
+                position += 2;
+                if (size < 2 || position + size > end) {
+                    markCorrupted();
+                    return;
+                }
+                noteNalType((packet.get(position) >> 1) & 0x3F);
+                appendNal(packet, position, position + size);
+                position += size;
+            }
+        } else if (type == FRAGMENTATION_UNIT) {
+            if (offset + 3 > end) {
+                markCorrupted();
+                return;
+            }
+            int fuHeader = packet.get(offset + 2) & 0xFF;
+            int fuType = fuHeader & 0x3F;
+            if ((fuHeader & 0x80) != 0) {
+                noteNalType(fuType);
+                fragmentHeader[0] = (byte) ((packet.get(offset) & 0x81) | (fuType << 1));
+                fragmentHeader[1] = packet.get(offset + 1);
+                beginFragmentedNal(fragmentHeader, 2);
+            } else if (!fragmentInProgress) {
+                markCorrupted();
+                return;
+            }
+            appendFragment(packet, offset + 3, end);
+            if ((fuHeader & 0x40) != 0) {
+                fragmentInProgress = false;
+            }
+        }
+    }
+
+    private void noteNalType(int type) {
+        // BLA/IDR/CRA 等IRAP帧
+        if (type >= 16 && type <= 21) {
+            markKeyframe();
+        }
+    }
+}
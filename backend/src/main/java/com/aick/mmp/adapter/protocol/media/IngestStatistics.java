@@ -0,0 +1,157 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单路媒体接入的统计计数
+ * <p>
+ * 只由接入所在的IO线程写入，其他线程可以随时读取
+ */
+public class IngestStatistics {
+
+    /** 计算近期丢包率的窗口大小（包数） */
+    private static final int LOSS_WINDOW_PACKETS = 1000;
+
+    private volatile long packetsReceived;
+    private volatile long packetsLost;
+    private volatile long packetsReordered;
+    private volatile long packetsDuplicated;
+    private volatile long packetsLate;
+    private volatile long malformedPackets;
+    private volatile long sequenceResets;
+    private volatile long bytesReceived;
+    private volatile long accessUnits;
+    private volatile long keyframes;
+    private volatile long droppedAccessUnits;
+    private volatile double recentLossPercent;
+    private volatile double frameIntervalTicks;
+    private volatile int clockRate = 90000;
+
+    private int windowPackets;
+    private int windowLost;
+    private long lastAccessUnitTimestamp = -1;
+
+    void onPacketReceived(int length) {
+        packetsReceived++;
+        bytesReceived += length;
+    }
+
+    void onPacketDelivered() {
+        windowPackets++;
+        rollLossWindow();
+    }
+
+    void onPacketLost() {
+        packetsLost++;
+        windowPackets++;
+        windowLost++;
+        rollLossWindow();
+    }
+
+    void onPacketReordered() {
+        packetsReordered++;
+    }
+
+    void onPacketDuplicated() {
+        packetsDuplicated++;
+    }
+
+    void onPacketLate() {
+        packetsLate++;
+    }
+
+    void onMalformedPacket() {
+        malformedPackets++;
+    }
+
+    void onSequenceReset() {
+        sequenceResets++;
+    }
+
+    void onAccessUnit(boolean keyframe, long timestamp, int rate) {
+        accessUnits++;
+        if (keyframe) {
+            keyframes++;
+        }
+        clockRate = rate;
+        if (lastAccessUnitTimestamp >= 0) {
+            long delta = (timestamp - lastAccessUnitTimestamp) & 0xFFFFFFFFL;
+            if (delta > 0 && delta < rate) {
+                frameIntervalTicks = frameIntervalTicks == 0 ? delta : frameIntervalTicks * 0.9 + delta * 0.1;
+            }
+        }
+        lastAccessUnitTimestamp = timestamp;
+    }
+
+    void onAccessUnitDropped() {
+        droppedAccessUnits++;
+    }
+
+    private void rollLossWindow() {
+        if (windowPackets >= LOSS_WINDOW_PACKETS) {
+            recentLossPercent = windowLost * 100.0 / windowPackets;
+            windowPackets = 0;
+            windowLost = 0;
+        }
+    }
+
+    /**
+     * 最近一个窗口的丢包率（百分比），首个窗口未满时使用累计值
+     */
+    public double getPacketLossPercent() {
+        long lost = packetsLost;
+        long total = lost + packetsReceived - packetsDuplicated - packetsLate;
+        if (lost + packetsReceived < LOSS_WINDOW_PACKETS) {
+            return total <= 0 ? 0.0 : lost * 100.0 / total;
+        }
+        return recentLossPercent;
+    }
+
+    /**
+     * 根据RTP时间戳估算的帧率
+     */
+    public double getFrameRate() {
+        double interval = frameIntervalTicks;
+        return interval > 0 ? clockRate / interval : 0.0;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getPacketsLost() {
+        return packetsLost;
+    }
+
+    public long getPacketsReordered() {
+        return packetsReordered;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getAccessUnits() {
+        return accessUnits;
+    }
+
+    public long getDroppedAccessUnits() {
+        return droppedAccessUnits;
+    }
+
+    public Map<String, Object> toMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("packetsReceived", packetsReceived);
+        metrics.put("packetsLost", packetsLost);
+        metrics.put("packetsReordered", packetsReordered);
+        metrics.put("packetsDuplicated", packetsDuplicated);
+        metrics.put("packetsLate", packetsLate);
+        metrics.put("malformedPackets", malformedPackets);
+        metrics.put("sequenceResets", sequenceResets);
+        metrics.put("accessUnits", accessUnits);
+        metrics.put("keyframes", keyframes);
+        metrics.put("droppedAccessUnits", droppedAccessUnits);
+        return metrics;
+    }
+}
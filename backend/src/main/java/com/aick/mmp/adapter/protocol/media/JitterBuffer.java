@@ -0,0 +1,164 @@
+package com.aick.mmp.adapter.protocol.media;
+
+/**
+ * RTP抖动缓冲区
+ * <p>
+ * 以序列号取模的环形数组保存乱序到达的包并按序输出。队首缺包时最多等待maxDelayMs，
+ * 超时后判定丢包并继续输出；序列号跳变超过缓冲容量时视为流重置。
+ * 只在单个线程中使用，不做同步。
+ */
+public class JitterBuffer {
+
+    /**
+     * 按序输出的下游
+     */
+    public interface Sink {
+
+        /**
+         * 按序列号顺序输出的包，所有权转移给下游，由下游负责释放
+         */
+        void onPacket(PooledBuffer packet);
+
+        /**
+         * 序列号出现缺口（丢包或流重置）
+         */
+        void onPacketLoss();
+    }
+
+    private final PooledBuffer[] slots;
+    private final int mask;
+    private final long maxDelayMs;
+    private final Sink sink;
+    private final IngestStatistics statistics;
+
+    private int nextSeq = -1;
+    private int highestSeq = -1;
+    private int buffered;
+    private long blockedSince = -1;
+
+    /**
+     * @param capacity 缓冲容量（包数），向上取整为2的幂
+     * @param maxDelayMs 队首缺包时的最大等待时间
+     */
+    public JitterBuffer(int capacity, long maxDelayMs, Sink sink, IngestStatistics statistics) {
+        int size = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        this.slots = new PooledBuffer[size];
+        this.mask = size - 1;
+        this.maxDelayMs = maxDelayMs;
+        this.sink = sink;
+        this.statistics = statistics;
+    }
+
+    /**
+     * 放入一个RTP包（buffer的0到limit为完整RTP包），所有权转移给抖动缓冲区
+     */
+    public void insert(PooledBuffer packet, long now) {
+        int seq = packet.buffer().getShort(2) & 0xFFFF;
+        if (nextSeq < 0) {
+            nextSeq = seq;
+            highestSeq = seq;
+        }
+
+        int distance = (short) (seq - nextSeq);
+        if (distance < -slots.length || distance >= slots.length) {
+            resync(seq);
+            distance = 0;
+        }
+        if (distance < 0) {
+            statistics.onPacketLate();
+            packet.release();
+            return;
+        }
+
+        int index = seq & mask;
+        if (slots[index] != null) {
+            statistics.onPacketDuplicated();
+            packet.release();
+            return;
+        }
+        if ((short) (seq - highestSeq) < 0) {
+            statistics.onPacketReordered();
+        } else {
+            highestSeq = seq;
+        }
+
+        slots[index] = packet;
+        buffered++;
+        drain(now);
+    }
+
+    /**
+     * 输出所有可以输出的包，也可由定时任务调用以处理超时缺包
+     */
+    public void drain(long now) {
+        while (buffered > 0) {
+            int index = nextSeq & mask;
+            PooledBuffer packet = slots[index];
+            if (packet != null) {
+                slots[index] = null;
+                buffered--;
+                nextSeq = (nextSeq + 1) & 0xFFFF;
+                blockedSince = -1;
+                statistics.onPacketDelivered();
+                sink.onPacket(packet);
+                continue;
+            }
+            if (blockedSince < 0) {
+                blockedSince = now;
+            }
+            if (now - blockedSince < maxDelayMs) {
+                return;
+            }
+            // 等待超时，判定队首包丢失；后续连续缺包无需再次等待
+            statistics.onPacketLost();
+            nextSeq = (nextSeq + 1) & 0xFFFF;
+            sink.onPacketLoss();
+        }
+    }
+
+    /**
+     * 释放所有缓存的包
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                slots[i].release();
+                slots[i] = null;
+            }
+        }
+        buffered = 0;
+        nextSeq = -1;
+        highestSeq = -1;
+        blockedSince = -1;
+    }
+
+    public int getBufferedPackets() {
+        return buffered;
+    }
+
+    /**
+     * 序列号大幅跳变（摄像头重启等），按序输出已缓存的包后从新序列号重新开始
+     */
+    private void resync(int seq) {
+        statistics.onSequenceReset();
+        while (buffered > 0) {
+            int index = nextSeq & mask;
+            PooledBuffer packet = slots[index];
+            if (packet != null) {
+                slots[index] = null;
+                buffered--;
+                statistics.onPacketDelivered();
+                sink.onPacket(packet);
+            } else {
+                // 中间的空位同样是丢包，需要通知解包器，否则会把前后两段数据拼进同一帧
+                statistics.onPacketLost();
+                sink.onPacketLoss();
+            }
+            nextSeq = (nextSeq + 1) & 0xFFFF;
+        }
+        sink.onPacketLoss();
+        nextSeq = seq;
+        highestSeq = seq;
+        blockedSince = -1;
+    }
+}
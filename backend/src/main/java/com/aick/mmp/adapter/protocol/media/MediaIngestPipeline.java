@@ -0,0 +1,100 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/**
+ * 单路RTP媒体接入流水线：拷贝到池化缓冲区 → 抖动缓冲排序 → 解包重组为访问单元
+ * <p>
+ * 所有方法必须在同一个线程（接收该流的IO线程）中调用
+ */
+public class MediaIngestPipeline {
+
+    private static final int RTP_HEADER_SIZE = 12;
+    private static final int DEFAULT_JITTER_CAPACITY = 1024;
+    private static final long DEFAULT_MAX_DELAY_MS = 150;
+
+    private final BufferPool bufferPool;
+    private final IngestStatistics statistics = new IngestStatistics();
+    private final RtpDepacketizer depacketizer;
+    private final JitterBuffer jitterBuffer;
+
+    public MediaIngestPipeline(BufferPool bufferPool, AccessUnit.Codec codec, int clockRate,
+                               AccessUnitListener listener) {
+        this(bufferPool, codec, clockRate, DEFAULT_JITTER_CAPACITY, DEFAULT_MAX_DELAY_MS, listener);
+    }
+
+    public MediaIngestPipeline(BufferPool bufferPool, AccessUnit.Codec codec, int clockRate,
+                               int jitterCapacity, long maxDelayMs, AccessUnitListener listener) {
+        this(bufferPool, jitterCapacity, maxDelayMs,
+                statistics -> RtpDepacketizer.create(codec, bufferPool, clockRate, listener, statistics));
+    }
+
+    private MediaIngestPipeline(BufferPool bufferPool, int jitterCapacity, long maxDelayMs,
+                                Function<IngestStatistics, RtpDepacketizer> depacketizerFactory) {
+        this.bufferPool = bufferPool;
+        this.depacketizer = depacketizerFactory.apply(statistics);
+        this.jitterBuffer = new JitterBuffer(jitterCapacity, maxDelayMs, depacketizer, statistics);
+    }
+
+    /**
+     * MPEG-PS over RTP（GB28181）接入流水线，编码格式由流中的PSM决定
+     */
+    public static MediaIngestPipeline forProgramStream(BufferPool bufferPool, AccessUnitListener listener) {
+        return new MediaIngestPipeline(bufferPool, DEFAULT_JITTER_CAPACITY, DEFAULT_MAX_DELAY_MS,
+                statistics -> new PsDepacketizer(bufferPool, listener, statistics));
+    }
+
+    /**
+     * 接收一个RTP包，packet的position到limit为完整RTP包，调用返回后不再引用该缓冲区
+     */
+    public void onRtpPacket(ByteBuffer packet) {
+        int length = packet.remaining();
+        if (length < RTP_HEADER_SIZE || (packet.get(packet.position()) & 0xC0) != 0x80) {
+            statistics.onMalformedPacket();
+            return;
+        }
+
+        PooledBuffer pooled = bufferPool.acquire(length);
+        ByteBuffer target = pooled.buffer();
+        target.put(packet);
+        target.flip();
+
+        statistics.onPacketReceived(length);
+        jitterBuffer.insert(pooled, System.currentTimeMillis());
+    }
+
+    /**
+     * 接收一个已经在池化缓冲区中的RTP包（0到limit为完整RTP包），所有权转移给流水线，不再拷贝
+     */
+    public void onRtpPacket(PooledBuffer packet) {
+        ByteBuffer buffer = packet.buffer();
+        int length = buffer.limit();
+        if (length < RTP_HEADER_SIZE || (buffer.get(0) & 0xC0) != 0x80) {
+            statistics.onMalformedPacket();
+            packet.release();
+            return;
+        }
+        statistics.onPacketReceived(length);
+        jitterBuffer.insert(packet, System.currentTimeMillis());
+    }
+
+    /**
+     * 处理队首缺包超时，用于流量很低时的定时调用
+     */
+    public void onTick(long now) {
+        jitterBuffer.drain(now);
+    }
+
+    /**
+     * 释放缓冲中的全部数据
+     */
+    public void close() {
+        jitterBuffer.clear();
+        depacketizer.reset();
+    }
+
+    public IngestStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,79 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 带引用计数的池化直接内存缓冲区
+ * <p>
+ * 获取时引用计数为1，每个额外持有者调用{@link #retain()}，用完后调用{@link #release()}，
+ * 计数归零时缓冲区回到{@link BufferPool}中复用。
+ */
+public final class PooledBuffer {
+
+    private static final AtomicIntegerFieldUpdater<PooledBuffer> REF_CNT =
+            AtomicIntegerFieldUpdater.newUpdater(PooledBuffer.class, "refCnt");
+
+    private final BufferPool.SizeClass owner;
+    private final ByteBuffer buffer;
+    private volatile int refCnt;
+
+    PooledBuffer(BufferPool.SizeClass owner, ByteBuffer buffer) {
+        this.owner = owner;
+        this.buffer = buffer;
+        this.refCnt = 1;
+    }
+
+    void reset() {
+        buffer.clear();
+        REF_CNT.set(this, 1);
+    }
+
+    /**
+     * 底层缓冲区，引用计数大于0时有效
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    public int refCnt() {
+        return refCnt;
+    }
+
+    /**
+     * 增加一次引用
+     */
+    public PooledBuffer retain() {
+        for (;;) {
+            int current = refCnt;
+            if (current <= 0) {
+                throw new IllegalStateException("Buffer already released");
+            }
+            if (REF_CNT.compareAndSet(this, current, current + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * 释放一次引用，计数归零时归还缓冲池
+     * @return 是否已归还
+     */
+    public boolean release() {
+        int remaining = REF_CNT.decrementAndGet(this);
+        if (remaining == 0) {
+            if (owner != null) {
+                owner.recycle(this);
+            }
+            return true;
+        }
+        if (remaining < 0) {
+            throw new IllegalStateException("Buffer released more times than retained");
+        }
+        return false;
+    }
+}
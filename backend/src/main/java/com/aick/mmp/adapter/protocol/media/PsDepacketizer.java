@@ -0,0 +1,294 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MPEG-PS over RTP解包（GB28181实时流）
+ * <p>
+ * RTP载荷按顺序拼起来是一条连续的节目流，PS包头、PES头可能跨RTP包。这里用流式状态机直接在RTP包
+ * 缓冲区上解析：包头、系统头和音频等PES整体跳过，只把视频PES的载荷从RTP缓冲区一次性写入访问单元，
+ * 不经过中间的PS重组缓冲区。编码格式取自节目流映射（PSM），关键帧通过帧首的NAL类型判断。
+ */
+public class PsDepacketizer extends RtpDepacketizer {
+
+    /** GB28181规定PS流使用90kHz时钟 */
+    public static final int CLOCK_RATE = 90000;
+
+    private static final int STREAM_TYPE_H264 = 0x1B;
+    private static final int STREAM_TYPE_H265 = 0x24;
+
+    private static final int PACK_START = 0xBA;
+    private static final int PROGRAM_END = 0xB9;
+    private static final int STREAM_MAP = 0xBC;
+    private static final int MPEG2_PACK_HEADER_SIZE = 10;
+    private static final int PES_FIXED_HEADER_SIZE = 3;
+
+    // 解析状态
+    private static final int SYNC = 0;
+    private static final int PACK_HEADER = 1;
+    private static final int PACKET_LENGTH = 2;
+    private static final int PES_HEADER = 3;
+    private static final int PES_HEADER_DATA = 4;
+    private static final int PES_PAYLOAD = 5;
+    private static final int STREAM_MAP_DATA = 6;
+    private static final int SKIP = 7;
+
+    private final byte[] scratch = new byte[1024];
+    private int state = SYNC;
+    private int startCodeWindow = -1;
+    private int streamId;
+    private int needed;
+    private int filled;
+    private int packetRemaining;
+    private int videoStreamId = -1;
+
+    private boolean sliceSeen;
+    private int nalWindow = -1;
+
+    public PsDepacketizer(BufferPool bufferPool, AccessUnitListener listener, IngestStatistics statistics) {
+        super(AccessUnit.Codec.H264, bufferPool, CLOCK_RATE, listener, statistics);
+    }
+
+    @Override
+    protected void depacketize(ByteBuffer packet, int offset, int end) {
+        int position = offset;
+        while (position < end) {
+            switch (state) {
+                case SYNC:
+                    position = findStartCode(packet, position, end);
+                    break;
+                case PACK_HEADER:
+                    position = fill(packet, position, end);
+                    if (filled == needed) {
+                        onPackHeader();
+                    }
+                    break;
+                case PACKET_LENGTH:
+                    position = fill(packet, position, end);
+                    if (filled == needed) {
+                        onPacketLength(((scratch[0] & 0xFF) << 8) | (scratch[1] & 0xFF));
+                    }
+                    break;
+                case PES_HEADER:
+                    position = fill(packet, position, end);
+                    if (filled == needed) {
+                        onPesHeader();
+                    }
+                    break;
+                case STREAM_MAP_DATA:
+                    position = fill(packet, position, end);
+                    if (filled == needed) {
+                        onStreamMap(filled);
+                        resync();
+                    }
+                    break;
+                case PES_PAYLOAD: {
+                    int length = Math.min(needed, end - position);
+                    if (!sliceSeen) {
+                        scanNalHeaders(packet, position, position + length);
+                    }
+                    appendFragment(packet, position, position + length);
+                    position += length;
+                    needed -= length;
+                    if (needed == 0) {
+                        resync();
+                    }
+                    break;
+                }
+                default: {
+                    // SKIP和PES_HEADER_DATA：整段跳过
+                    int length = Math.min(needed, end - position);
+                    position += length;
+                    needed -= length;
+                    if (needed == 0) {
+                        if (state == PES_HEADER_DATA) {
+                            state = PES_PAYLOAD;
+                            needed = packetRemaining;
+                            if (needed == 0) {
+                                resync();
+                            }
+                        } else {
+                            resync();
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void onAccessUnitStarted() {
+        sliceSeen = false;
+        nalWindow = -1;
+    }
+
+    @Override
+    protected void onDiscontinuity() {
+        resync();
+    }
+
+    /**
+     * 逐字节查找 00 00 01 xx 起始码；PES载荷结束后下一个起始码通常紧跟着出现，扫描量很小
+     */
+    private int findStartCode(ByteBuffer packet, int position, int end) {
+        int window = startCodeWindow;
+        while (position < end) {
+            window = (window << 8) | (packet.get(position++) & 0xFF);
+            // 0xB9以上才是PS/PES的流ID，同时也不会是合法的NAL头，丢包后在这里重新同步是安全的
+            if ((window & 0xFFFFFF00) == 0x00000100 && (window & 0xFF) >= PROGRAM_END) {
+                startCodeWindow = -1;
+                onStartCode(window & 0xFF);
+                return position;
+            }
+        }
+        startCodeWindow = window;
+        return position;
+    }
+
+    private void onStartCode(int id) {
+        if (id == PACK_START) {
+            expect(PACK_HEADER, MPEG2_PACK_HEADER_SIZE);
+        } else if (id != PROGRAM_END) {
+            streamId = id;
+            expect(PACKET_LENGTH, 2);
+        }
+    }
+
+    private void onPackHeader() {
+        if ((scratch[0] & 0xC0) != 0x40) {
+            // 不是MPEG-2节目流包头（GB28181不使用MPEG-1）
+            markCorrupted();
+            resync();
+            return;
+        }
+        int stuffing = scratch[9] & 0x07;
+        if (stuffing > 0) {
+            skip(stuffing);
+        } else {
+            resync();
+        }
+    }
+
+    private void onPacketLength(int length) {
+        boolean video = streamId >= 0xE0 && streamId <= 0xEF;
+        if (video && (videoStreamId < 0 || streamId == videoStreamId)) {
+            videoStreamId = streamId;
+            if (length < PES_FIXED_HEADER_SIZE) {
+                // PS中的视频PES必须带长度
+                markCorrupted();
+                resync();
+                return;
+            }
+            packetRemaining = length;
+            expect(PES_HEADER, PES_FIXED_HEADER_SIZE);
+        } else if (streamId == STREAM_MAP && length <= scratch.length) {
+            expect(STREAM_MAP_DATA, length);
+        } else if (length > 0) {
+            skip(length);
+        } else {
+            resync();
+        }
+    }
+
+    private void onPesHeader() {
+        int headerDataLength = scratch[2] & 0xFF;
+        packetRemaining -= PES_FIXED_HEADER_SIZE;
+        if ((scratch[0] & 0xC0) != 0x80 || headerDataLength > packetRemaining) {
+            markCorrupted();
+            resync();
+            return;
+        }
+        packetRemaining -= headerDataLength;
+        if (headerDataLength > 0) {
+            state = PES_HEADER_DATA;
+            needed = headerDataLength;
+        } else if (packetRemaining > 0) {
+            state = PES_PAYLOAD;
+            needed = packetRemaining;
+        } else {
+            resync();
+        }
+    }
+
+    /**
+     * 解析节目流映射，取第一个视频流的stream_type确定编码
+     */
+    private void onStreamMap(int length) {
+        if (length < 6) {
+            return;
+        }
+        int infoLength = ((scratch[2] & 0xFF) << 8) | (scratch[3] & 0xFF);
+        int position = 4 + infoLength;
+        if (position + 2 > length) {
+            return;
+        }
+        int mapLength = ((scratch[position] & 0xFF) << 8) | (scratch[position + 1] & 0xFF);
+        position += 2;
+        int mapEnd = Math.min(length, position + mapLength);
+        while (position + 4 <= mapEnd) {
+            int streamType = scratch[position] & 0xFF;
+            int elementaryStreamId = scratch[position + 1] & 0xFF;
+            int esInfoLength = ((scratch[position + 2] & 0xFF) << 8) | (scratch[position + 3] & 0xFF);
+            if (elementaryStreamId >= 0xE0 && elementaryStreamId <= 0xEF) {
+                if (streamType == STREAM_TYPE_H264) {
+                    setCodec(AccessUnit.Codec.H264);
+                } else if (streamType == STREAM_TYPE_H265) {
+                    setCodec(AccessUnit.Codec.H265);
+                }
+                videoStreamId = elementaryStreamId;
+                return;
+            }
+            position += 4 + esInfoLength;
+        }
+    }
+
+    /**
+     * 在帧首的载荷中查找第一个图像条带NAL，据此判断是否为关键帧；找到后本帧不再扫描
+     */
+    private void scanNalHeaders(ByteBuffer packet, int from, int to) {
+        boolean hevc = getCodec() == AccessUnit.Codec.H265;
+        int window = nalWindow;
+        for (int i = from; i < to; i++) {
+            int value = packet.get(i) & 0xFF;
+            if ((window & 0xFFFFFF) == 0x000001) {
+                int type = hevc ? (value >> 1) & 0x3F : value & 0x1F;
+                boolean slice = hevc ? type <= 31 : type >= 1 && type <= 5;
+                if (slice) {
+                    if (hevc ? type >= 16 && type <= 21 : type == 5) {
+                        markKeyframe();
+                    }
+                    sliceSeen = true;
+                    return;
+                }
+            }
+            window = (window << 8) | value;
+        }
+        nalWindow = window;
+    }
+
+    private int fill(ByteBuffer packet, int position, int end) {
+        int length = Math.min(needed - filled, end - position);
+        for (int i = 0; i < length; i++) {
+            scratch[filled + i] = packet.get(position + i);
+        }
+        filled += length;
+        return position + length;
+    }
+
+    private void expect(int nextState, int length) {
+        state = nextState;
+        needed = length;
+        filled = 0;
+    }
+
+    private void skip(int length) {
+        state = SKIP;
+        needed = length;
+    }
+
+    private void resync() {
+        state = SYNC;
+        startCodeWindow = -1;
+    }
+}
@@ -0,0 +1,272 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RTP解包器基类：把按序到达的RTP载荷重组为Annex-B格式的访问单元
+ * <p>
+ * 同一时间戳的包属于同一帧，遇到marker位或时间戳变化时输出。出现丢包的帧会被丢弃，
+ * 并丢弃后续帧直到下一个关键帧，避免把无法解码的数据交给下游。
+ */
+public abstract class RtpDepacketizer implements JitterBuffer.Sink {
+
+    private static final int INITIAL_ACCESS_UNIT_CAPACITY = 256 * 1024;
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+
+    private AccessUnit.Codec codec;
+    private final BufferPool bufferPool;
+    private final int clockRate;
+    private final AccessUnitListener listener;
+    private final IngestStatistics statistics;
+
+    private PooledBuffer current;
+    private long currentTimestamp;
+    private boolean currentKeyframe;
+    private boolean corrupted;
+    private boolean lossPending;
+    private boolean waitingForKeyframe = true;
+
+    /** 分片重组进行中（FU-A / FU） */
+    protected boolean fragmentInProgress;
+
+    protected RtpDepacketizer(AccessUnit.Codec codec, BufferPool bufferPool, int clockRate,
+                              AccessUnitListener listener, IngestStatistics statistics) {
+        this.codec = codec;
+        this.bufferPool = bufferPool;
+        this.clockRate = clockRate;
+        this.listener = listener;
+        this.statistics = statistics;
+    }
+
+    public static RtpDepacketizer create(AccessUnit.Codec codec, BufferPool bufferPool, int clockRate,
+                                         AccessUnitListener listener, IngestStatistics statistics) {
+        switch (codec) {
+            case H264:
+                return new H264Depacketizer(bufferPool, clockRate, listener, statistics);
+            case H265:
+                return new H265Depacketizer(bufferPool, clockRate, listener, statistics);
+            default:
+                throw new IllegalArgumentException("Unsupported codec: " + codec);
+        }
+    }
+
+    /**
+     * 解析一个RTP载荷，[offset, end)为载荷范围
+     */
+    protected abstract void depacketize(ByteBuffer packet, int offset, int end);
+
+    @Override
+    public void onPacket(PooledBuffer packet) {
+        try {
+            ByteBuffer buffer = packet.buffer();
+            int length = buffer.limit();
+            int first = buffer.get(0) & 0xFF;
+            boolean marker = (buffer.get(1) & 0x80) != 0;
+            long timestamp = buffer.getInt(4) & 0xFFFFFFFFL;
+
+            int offset = 12 + (first & 0x0F) * 4;
+            if ((first & 0x10) != 0) {
+                if (offset + 4 > length) {
+                    statistics.onMalformedPacket();
+                    return;
+                }
+                offset += 4 + (buffer.getShort(offset + 2) & 0xFFFF) * 4;
+            }
+            int end = (first & 0x20) != 0 ? length - (buffer.get(length - 1) & 0xFF) : length;
+            if (offset >= end) {
+                statistics.onMalformedPacket();
+                return;
+            }
+
+            if (current != null && timestamp != currentTimestamp) {
+                // 上一帧的marker包丢失
+                if (lossPending) {
+                    corrupted = true;
+                    lossPending = false;
+                }
+                flushAccessUnit();
+            }
+            if (current == null) {
+                startAccessUnit(timestamp);
+            }
+            if (lossPending) {
+                corrupted = true;
+                lossPending = false;
+            }
+
+            depacketize(buffer, offset, end);
+
+            if (marker) {
+                flushAccessUnit();
+            }
+        } finally {
+            packet.release();
+        }
+    }
+
+    @Override
+    public void onPacketLoss() {
+        lossPending = true;
+        onDiscontinuity();
+    }
+
+    /**
+     * 释放未完成的帧
+     */
+    public void reset() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+        fragmentInProgress = false;
+        corrupted = false;
+        lossPending = false;
+        waitingForKeyframe = true;
+        onDiscontinuity();
+    }
+
+    // ==================== 子类使用的写入方法 ====================
+
+    /**
+     * 写入一个完整NAL（带起始码）
+     */
+    protected void appendNal(ByteBuffer packet, int from, int to) {
+        ensureCapacity(START_CODE.length + to - from);
+        current.buffer().put(START_CODE);
+        copy(packet, from, to);
+    }
+
+    /**
+     * 开始一个分片NAL：写入起始码和重建后的NAL头
+     */
+    protected void beginFragmentedNal(byte[] header, int headerLength) {
+        ensureCapacity(START_CODE.length + headerLength);
+        current.buffer().put(START_CODE).put(header, 0, headerLength);
+        fragmentInProgress = true;
+    }
+
+    /**
+     * 追加分片数据
+     */
+    protected void appendFragment(ByteBuffer packet, int from, int to) {
+        ensureCapacity(to - from);
+        copy(packet, from, to);
+    }
+
+    protected void markKeyframe() {
+        currentKeyframe = true;
+    }
+
+    /**
+     * 载荷内自带编码信息的格式（如PS）在解析出编码后更新输出的编码格式
+     */
+    protected void setCodec(AccessUnit.Codec codec) {
+        this.codec = codec;
+    }
+
+    protected AccessUnit.Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * 开始重组新的访问单元
+     */
+    protected void onAccessUnitStarted() {
+    }
+
+    /**
+     * 数据不连续（丢包或重置），有跨包解析状态的子类需要重新同步
+     */
+    protected void onDiscontinuity() {
+    }
+
+    protected void markCorrupted() {
+        corrupted = true;
+        fragmentInProgress = false;
+    }
+
+    // ==================== 内部实现 ====================
+
+    private void startAccessUnit(long timestamp) {
+        current = bufferPool.acquire(INITIAL_ACCESS_UNIT_CAPACITY);
+        currentTimestamp = timestamp;
+        currentKeyframe = false;
+        corrupted = false;
+        fragmentInProgress = false;
+        onAccessUnitStarted();
+    }
+
+    private void flushAccessUnit() {
+        PooledBuffer data = current;
+        current = null;
+        fragmentInProgress = false;
+        int size = data.buffer().position();
+
+        if (size == 0 && !corrupted) {
+            // 不含视频数据的包（如PS流中的音频包），不计为丢弃
+            data.release();
+            return;
+        }
+        if (corrupted || size == 0) {
+            data.release();
+            statistics.onAccessUnitDropped();
+            if (corrupted) {
+                waitingForKeyframe = true;
+            }
+            corrupted = false;
+            return;
+        }
+        if (waitingForKeyframe && !currentKeyframe) {
+            data.release();
+            statistics.onAccessUnitDropped();
+            return;
+        }
+        waitingForKeyframe = false;
+        data = compact(data, size);
+
+        AccessUnit accessUnit = new AccessUnit(codec, data, size, currentTimestamp, clockRate,
+                currentKeyframe, System.currentTimeMillis());
+        statistics.onAccessUnit(currentKeyframe, currentTimestamp, clockRate);
+        try {
+            listener.onAccessUnit(accessUnit);
+        } finally {
+            accessUnit.release();
+        }
+    }
+
+    /**
+     * 重组缓冲区按最大帧预留，帧完成后换到合适的尺寸等级，避免下游长时间持有大块内存
+     */
+    private PooledBuffer compact(PooledBuffer data, int size) {
+        if (bufferPool.capacityFor(size) >= data.capacity()) {
+            return data;
+        }
+        PooledBuffer compacted = bufferPool.acquire(size);
+        ByteBuffer source = data.buffer();
+        source.flip();
+        compacted.buffer().put(source);
+        data.release();
+        return compacted;
+    }
+
+    private void ensureCapacity(int extra) {
+        ByteBuffer buffer = current.buffer();
+        if (buffer.remaining() >= extra) {
+            return;
+        }
+        PooledBuffer larger = bufferPool.acquire(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+        buffer.flip();
+        larger.buffer().put(buffer);
+        current.release();
+        current = larger;
+    }
+
+    private void copy(ByteBuffer packet, int from, int to) {
+        // 子类会继续按绝对位置读取后续数据，拷贝后恢复limit
+        int limit = packet.limit();
+        packet.limit(to);
+        packet.position(from);
+        current.buffer().put(packet);
+        packet.limit(limit);
+    }
+}
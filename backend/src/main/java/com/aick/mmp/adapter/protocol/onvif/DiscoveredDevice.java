@@ -0,0 +1,104 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import lombok.Getter;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * WS-Discovery ProbeMatch中的一台设备
+ */
+@Getter
+public class DiscoveredDevice {
+
+    private static final String SCOPE_PREFIX = "onvif://www.onvif.org/";
+
+    private final String endpointReference;
+    private final List<String> types;
+    private final List<String> scopes;
+    private final List<String> xaddrs;
+    private final int metadataVersion;
+    /**
+     * 发出应答的设备IP
+     */
+    private final String sourceAddress;
+
+    public DiscoveredDevice(String endpointReference, List<String> types, List<String> scopes, List<String> xaddrs,
+                            int metadataVersion, String sourceAddress) {
+        this.endpointReference = endpointReference;
+        this.types = Collections.unmodifiableList(types);
+        this.scopes = Collections.unmodifiableList(scopes);
+        this.xaddrs = Collections.unmodifiableList(xaddrs);
+        this.metadataVersion = metadataVersion;
+        this.sourceAddress = sourceAddress;
+    }
+
+    /**
+     * 设备服务地址：多个XAddr（如同时上报IPv4和IPv6）时优先取与应答来源IP一致的，其次取第一个IPv4地址
+     */
+    public String getDeviceServiceUrl() {
+        String fallback = null;
+        for (String xaddr : xaddrs) {
+            String host;
+            try {
+                host = URI.create(xaddr).getHost();
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (host == null) {
+                continue;
+            }
+            if (host.equals(sourceAddress)) {
+                return xaddr;
+            }
+            if (fallback == null && host.indexOf(':') < 0 && !host.startsWith("[")) {
+                fallback = xaddr;
+            }
+        }
+        if (fallback != null) {
+            return fallback;
+        }
+        return xaddrs.isEmpty() ? null : xaddrs.get(0);
+    }
+
+    /**
+     * 去重键：设备的EndpointReference在重启和换IP后保持不变，缺失时退回设备服务地址
+     */
+    public String getIdentity() {
+        return endpointReference != null && !endpointReference.isEmpty() ? endpointReference : getDeviceServiceUrl();
+    }
+
+    public String getName() {
+        return scope("name/");
+    }
+
+    public String getHardware() {
+        return scope("hardware/");
+    }
+
+    public String getLocation() {
+        return scope("location/");
+    }
+
+    /**
+     * 取ONVIF标准scope的值，如 onvif://www.onvif.org/name/Gate_Camera 的 name 为 "Gate Camera"
+     */
+    private String scope(String category) {
+        String prefix = SCOPE_PREFIX + category;
+        for (String scope : scopes) {
+            if (scope.startsWith(prefix) && scope.length() > prefix.length()) {
+                String value = scope.substring(prefix.length());
+                try {
+                    value = URLDecoder.decode(value, "UTF-8");
+                } catch (UnsupportedEncodingException | IllegalArgumentException ignored) {
+                    // 保留原值
+                }
+                return value.replace('_', ' ');
+            }
+        }
+        return null;
+    }
+}
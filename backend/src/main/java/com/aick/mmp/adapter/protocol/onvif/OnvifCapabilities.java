@@ -0,0 +1,25 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import lombok.Getter;
+
+/**
+ * GetCapabilities返回的各服务地址
+ */
+@Getter
+public class OnvifCapabilities {
+
+    private final String deviceXAddr;
+    private final String mediaXAddr;
+    private final String ptzXAddr;
+    private final String imagingXAddr;
+    private final String eventsXAddr;
+
+    public OnvifCapabilities(String deviceXAddr, String mediaXAddr, String ptzXAddr, String imagingXAddr,
+                             String eventsXAddr) {
+        this.deviceXAddr = deviceXAddr;
+        this.mediaXAddr = mediaXAddr;
+        this.ptzXAddr = ptzXAddr;
+        this.imagingXAddr = imagingXAddr;
+        this.eventsXAddr = eventsXAddr;
+    }
+}
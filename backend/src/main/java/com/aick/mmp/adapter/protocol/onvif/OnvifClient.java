@@ -0,0 +1,380 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 轻量ONVIF客户端：GetCapabilities、GetProfiles、GetStreamUri、SetVideoEncoderConfiguration
+ * <p>
+ * 能力集和配置文件按设备缓存，过期（TTL）或设备返回配置不存在时重新获取，
+ * 缓存命中时启动拉流只需要一次GetStreamUri往返。HTTP连接按设备保持长连接复用。
+ * 认证使用WS-Security UsernameToken，设备要求HTTP Digest时自动切换；
+ * 因时钟偏差认证失败时先用GetSystemDateAndTime校准再重试一次。
+ */
+@Component
+@Slf4j
+public class OnvifClient {
+
+    @Value("${onvif.client.connect-timeout:3000}")
+    private int connectTimeoutMs = 3000;
+
+    @Value("${onvif.client.read-timeout:5000}")
+    private int readTimeoutMs = 5000;
+
+    @Value("${onvif.client.max-idle-connections-per-host:4}")
+    private int maxIdleConnectionsPerHost = 4;
+
+    @Value("${onvif.client.connection-idle-timeout:30000}")
+    private long connectionIdleTimeoutMs = 30000;
+
+    @Value("${onvif.client.cache-ttl:600000}")
+    private long cacheTtlMs = 600000;
+
+    private final Map<String, DeviceState> devices = new ConcurrentHashMap<>();
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong clockSyncs = new AtomicLong();
+    private OnvifHttpTransport transport;
+
+    public OnvifClient() {
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public OnvifClient(int connectTimeoutMs, int readTimeoutMs, long cacheTtlMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.cacheTtlMs = cacheTtlMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        transport = new OnvifHttpTransport(connectTimeoutMs, readTimeoutMs, maxIdleConnectionsPerHost,
+                connectionIdleTimeoutMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        transport.close();
+    }
+
+    @Scheduled(fixedDelay = 30000)
+    public void evictIdleConnections() {
+        if (transport != null) {
+            transport.evictIdleConnections();
+        }
+    }
+
+    public OnvifCapabilities getCapabilities(OnvifDevice device) {
+        return discover(state(device), false).capabilities;
+    }
+
+    public List<OnvifProfile> getProfiles(OnvifDevice device) {
+        return discover(state(device), false).profiles;
+    }
+
+    /**
+     * 按token查找配置文件，token为空时选择第一个带视频编码器的配置文件（通常是主码流）
+     */
+    public OnvifProfile getProfile(OnvifDevice device, String token) {
+        DeviceState state = state(device);
+        for (OnvifProfile profile : discover(state, false).profiles) {
+            if (token == null ? profile.getVideoEncoder() != null : token.equals(profile.getToken())) {
+                return profile;
+            }
+        }
+        if (token == null) {
+            throw new OnvifException(200, null, "ONVIF device has no video profile");
+        }
+        // 配置文件可能是缓存之后新建的，让缓存失效，由调用方决定是否重试
+        state.discovery = null;
+        throw new OnvifException(200, "ter:NoProfile", "ONVIF profile not found: " + token);
+    }
+
+    /**
+     * 忽略缓存重新获取能力集和配置文件，可用于连接测试并顺带预热缓存
+     */
+    public void refresh(OnvifDevice device) {
+        discover(state(device), true);
+    }
+
+    /**
+     * 让设备的缓存失效，下次访问时重新获取
+     */
+    public void invalidate(OnvifDevice device) {
+        DeviceState state = devices.get(device.cacheKey());
+        if (state != null) {
+            state.discovery = null;
+        }
+    }
+
+    /**
+     * 获取配置文件的RTSP单播地址，能力集已缓存时只有这一次往返
+     */
+    public String getStreamUri(OnvifDevice device, String profileToken) {
+        DeviceState state = state(device);
+        Discovery discovery = discover(state, false);
+        try {
+            String uri = call(state, discovery.capabilities.getMediaXAddr(), OnvifSoap.ACTION_GET_STREAM_URI,
+                    OnvifSoap.getStreamUri(profileToken), true, OnvifSoap::parseStreamUri);
+            return withDeviceHost(device, uri);
+        } catch (OnvifException e) {
+            if (e.isStaleConfiguration()) {
+                state.discovery = null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 下发视频编码器配置，成功后同步更新缓存中引用该配置的配置文件
+     */
+    public void setVideoEncoderConfiguration(OnvifDevice device, VideoEncoderConfiguration configuration) {
+        DeviceState state = state(device);
+        Discovery discovery = discover(state, false);
+        try {
+            call(state, discovery.capabilities.getMediaXAddr(), OnvifSoap.ACTION_SET_VIDEO_ENCODER_CONFIGURATION,
+                    OnvifSoap.setVideoEncoderConfiguration(configuration), true, in -> Boolean.TRUE);
+        } catch (OnvifException e) {
+            if (e.isStaleConfiguration()) {
+                state.discovery = null;
+            }
+            throw e;
+        }
+        synchronized (state) {
+            Discovery current = state.discovery;
+            if (current != null) {
+                List<OnvifProfile> profiles = new ArrayList<>(current.profiles.size());
+                for (OnvifProfile profile : current.profiles) {
+                    VideoEncoderConfiguration encoder = profile.getVideoEncoder();
+                    boolean updated = encoder != null && configuration.getToken().equals(encoder.getToken());
+                    profiles.add(updated ? profile.withVideoEncoder(configuration) : profile);
+                }
+                state.discovery = new Discovery(current.capabilities, Collections.unmodifiableList(profiles),
+                        current.expiresAt);
+            }
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>(transport.getStatistics());
+        statistics.put("roundTrips", roundTrips.get());
+        statistics.put("cacheHits", cacheHits.get());
+        statistics.put("cacheMisses", cacheMisses.get());
+        statistics.put("clockSyncs", clockSyncs.get());
+        statistics.put("cachedDevices", devices.size());
+        return statistics;
+    }
+
+    private DeviceState state(OnvifDevice device) {
+        DeviceState state = devices.computeIfAbsent(device.cacheKey(), key -> new DeviceState(device));
+        if (!Objects.equals(state.device.getPassword(), device.getPassword())) {
+            // 摄像头密码修改后以最新的为准，HTTP Digest挑战与旧密码无关，可以继续使用
+            state.device = device;
+        }
+        return state;
+    }
+
+    /**
+     * 取缓存的能力集和配置文件；同一设备并发的首次访问只有一个线程去设备获取
+     */
+    private Discovery discover(DeviceState state, boolean force) {
+        Discovery discovery = state.discovery;
+        long now = System.currentTimeMillis();
+        if (!force && discovery != null && now < discovery.expiresAt) {
+            cacheHits.incrementAndGet();
+            return discovery;
+        }
+        synchronized (state) {
+            discovery = state.discovery;
+            if (!force && discovery != null && System.currentTimeMillis() < discovery.expiresAt) {
+                cacheHits.incrementAndGet();
+                return discovery;
+            }
+            cacheMisses.incrementAndGet();
+            long start = System.currentTimeMillis();
+            OnvifCapabilities capabilities = call(state, state.device.getServiceUrl().toString(),
+                    OnvifSoap.ACTION_GET_CAPABILITIES, OnvifSoap.getCapabilities(), true,
+                    OnvifSoap::parseCapabilities);
+            List<OnvifProfile> profiles = call(state, capabilities.getMediaXAddr(), OnvifSoap.ACTION_GET_PROFILES,
+                    OnvifSoap.getProfiles(), true, OnvifSoap::parseProfiles);
+            long finished = System.currentTimeMillis();
+            discovery = new Discovery(capabilities, Collections.unmodifiableList(profiles), finished + cacheTtlMs);
+            state.discovery = discovery;
+            log.debug("ONVIF discovery for {} took {} ms ({} profiles)", state.device.getServiceUrl(),
+                    finished - start, profiles.size());
+            return discovery;
+        }
+    }
+
+    private <T> T call(DeviceState state, String address, String action, String body, boolean authenticate,
+                       Parser<T> parser) {
+        URI uri = serviceUri(state.device, address);
+        OnvifDevice device = state.device;
+        boolean credentials = authenticate && device.getUsername() != null && !device.getUsername().isEmpty();
+        boolean digestRetried = false;
+        boolean clockSynced = false;
+        while (true) {
+            byte[] envelope = OnvifSoap.envelope(body, credentials ? device.getUsername() : null,
+                    device.getPassword(), System.currentTimeMillis() + state.clockOffsetMs);
+            HttpDigestAuth digest = credentials ? state.digest : null;
+            String authorization = digest == null ? null
+                    : digest.authorization(device.getUsername(), device.getPassword(), "POST", requestTarget(uri));
+
+            Response<T> response;
+            try {
+                roundTrips.incrementAndGet();
+                response = transport.post(uri, action, authorization, envelope, (status, headers, content) -> {
+                    if (status == 200) {
+                        return new Response<>(parser.parse(content), null, null);
+                    }
+                    return new Response<>(null, OnvifSoap.parseFault(status, content),
+                            status == 401 ? headers.get("www-authenticate") : null);
+                });
+            } catch (IOException e) {
+                throw new OnvifException(0, null, "ONVIF request to " + uri + " failed: " + e.getMessage());
+            }
+            if (response.fault == null) {
+                return response.value;
+            }
+
+            if (credentials && response.challenge != null && !digestRetried) {
+                HttpDigestAuth challenged = HttpDigestAuth.fromChallenge(response.challenge);
+                if (challenged != null) {
+                    state.digest = challenged;
+                    digestRetried = true;
+                    continue;
+                }
+            }
+            if (credentials && response.fault.isNotAuthorized() && !clockSynced) {
+                clockSynced = true;
+                if (syncClock(state)) {
+                    continue;
+                }
+            }
+            throw response.fault;
+        }
+    }
+
+    /**
+     * WS-Security的Created必须接近设备时钟，按设备时间计算偏差；返回偏差是否有变化
+     */
+    private boolean syncClock(DeviceState state) {
+        try {
+            long sentAt = System.currentTimeMillis();
+            long deviceTime = call(state, state.device.getServiceUrl().toString(),
+                    OnvifSoap.ACTION_GET_SYSTEM_DATE_AND_TIME, OnvifSoap.getSystemDateAndTime(), false,
+                    OnvifSoap::parseSystemDateAndTime);
+            long receivedAt = System.currentTimeMillis();
+            if (deviceTime < 0) {
+                return false;
+            }
+            long offset = deviceTime - (sentAt + receivedAt) / 2;
+            clockSyncs.incrementAndGet();
+            boolean changed = Math.abs(offset - state.clockOffsetMs) > 1000;
+            state.clockOffsetMs = offset;
+            log.info("ONVIF device {} clock offset {} ms", state.device.getServiceUrl(), offset);
+            return changed;
+        } catch (OnvifException e) {
+            log.debug("GetSystemDateAndTime failed for {}: {}", state.device.getServiceUrl(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 设备在NAT或端口映射之后时，能力集里的服务地址是设备自己的内网地址，统一替换为配置的设备地址，只保留路径
+     */
+    private static URI serviceUri(OnvifDevice device, String address) {
+        URI configured = device.getServiceUrl();
+        try {
+            URI reported = URI.create(address.trim());
+            String path = reported.getRawPath() == null || reported.getRawPath().isEmpty() ? "/" : reported.getRawPath();
+            return new URI(configured.getScheme() + "://" + configured.getRawAuthority() + path
+                    + (reported.getRawQuery() != null ? "?" + reported.getRawQuery() : ""));
+        } catch (Exception e) {
+            throw new OnvifException(0, null, "Invalid ONVIF service address: " + address);
+        }
+    }
+
+    /**
+     * 流地址中的主机同样替换为配置的设备主机，保留端口和路径
+     */
+    private static String withDeviceHost(OnvifDevice device, String streamUri) {
+        try {
+            URI uri = URI.create(streamUri);
+            String host = device.getServiceUrl().getHost();
+            if (uri.getHost() == null || uri.getHost().equalsIgnoreCase(host)) {
+                return streamUri;
+            }
+            return new URI(uri.getScheme(), uri.getRawUserInfo(), host, uri.getPort(), uri.getRawPath(),
+                    uri.getRawQuery(), null).toString();
+        } catch (Exception e) {
+            return streamUri;
+        }
+    }
+
+    private static String requestTarget(URI uri) {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        return uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+    }
+
+    private interface Parser<T> {
+        T parse(InputStream in) throws IOException;
+    }
+
+    private static final class Response<T> {
+        private final T value;
+        private final OnvifException fault;
+        private final String challenge;
+
+        Response(T value, OnvifException fault, String challenge) {
+            this.value = value;
+            this.fault = fault;
+            this.challenge = challenge;
+        }
+    }
+
+    /**
+     * 一次完整发现的结果，整体替换保证读取时的一致性
+     */
+    private static final class Discovery {
+        private final OnvifCapabilities capabilities;
+        private final List<OnvifProfile> profiles;
+        private final long expiresAt;
+
+        Discovery(OnvifCapabilities capabilities, List<OnvifProfile> profiles, long expiresAt) {
+            this.capabilities = capabilities;
+            this.profiles = profiles;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class DeviceState {
+        private volatile OnvifDevice device;
+        private volatile Discovery discovery;
+        private volatile long clockOffsetMs;
+        private volatile HttpDigestAuth digest;
+
+        DeviceState(OnvifDevice device) {
+            this.device = device;
+        }
+    }
+}
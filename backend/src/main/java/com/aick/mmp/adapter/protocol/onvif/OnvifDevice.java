@@ -0,0 +1,49 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import lombok.Getter;
+
+import java.net.URI;
+
+/**
+ * ONVIF设备的访问信息：设备服务地址和WS-Security账号
+ */
+@Getter
+public class OnvifDevice {
+
+    private static final String DEFAULT_SERVICE_PATH = "/onvif/device_service";
+
+    private final URI serviceUrl;
+    private final String username;
+    private final String password;
+
+    public OnvifDevice(URI serviceUrl, String username, String password) {
+        this.serviceUrl = serviceUrl;
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * 解析设备地址，支持完整的设备服务URL或只写 host[:port]（使用默认路径）
+     */
+    public static OnvifDevice of(String address, String username, String password) {
+        String value = address.trim();
+        if (!value.contains("://")) {
+            value = "http://" + value;
+        }
+        URI uri = URI.create(value);
+        if (uri.getHost() == null) {
+            throw new IllegalArgumentException("Invalid ONVIF device address: " + address);
+        }
+        if (uri.getRawPath() == null || uri.getRawPath().isEmpty() || "/".equals(uri.getRawPath())) {
+            uri = uri.resolve(DEFAULT_SERVICE_PATH);
+        }
+        return new OnvifDevice(uri, username, password);
+    }
+
+    /**
+     * 缓存键：同一设备用不同账号访问时看到的配置文件可能不同
+     */
+    String cacheKey() {
+        return serviceUrl + "|" + (username == null ? "" : username);
+    }
+}
@@ -0,0 +1,47 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+/**
+ * ONVIF调用失败：SOAP Fault或非200的HTTP响应
+ */
+public class OnvifException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int httpStatus;
+    private final String subcode;
+
+    public OnvifException(int httpStatus, String subcode, String message) {
+        super(message);
+        this.httpStatus = httpStatus;
+        this.subcode = subcode;
+    }
+
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    /**
+     * Fault中最内层的Subcode，如 ter:NotAuthorized、ter:NoProfile
+     */
+    public String getSubcode() {
+        return subcode;
+    }
+
+    /**
+     * 认证失败，WS-Security的Created与设备时钟相差过大时也会返回该错误
+     */
+    public boolean isNotAuthorized() {
+        return httpStatus == 401 || subcodeContains("NotAuthorized") || subcodeContains("FailedAuthentication");
+    }
+
+    /**
+     * 配置文件或配置已不存在（设备重置、被其他平台修改），缓存需要失效
+     */
+    public boolean isStaleConfiguration() {
+        return subcodeContains("NoProfile") || subcodeContains("NoConfig");
+    }
+
+    private boolean subcodeContains(String value) {
+        return subcode != null && subcode.contains(value);
+    }
+}
@@ -0,0 +1,468 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ONVIF SOAP请求使用的HTTP/1.1传输，按设备地址维护keep-alive长连接池
+ * <p>
+ * 响应体以流的形式直接交给XML解析器，解析完成后读完剩余数据再把连接放回池中。
+ * 复用的空闲连接可能已被设备关闭，在收到响应的第一个字节之前失败时换新连接重试一次。
+ */
+final class OnvifHttpTransport {
+
+    private static final int DEFAULT_HTTP_PORT = 80;
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int MAX_HEADERS = 100;
+    /** 解析器没有读完的响应体超过该长度时直接关闭连接，不再为复用而读完 */
+    private static final long MAX_DRAIN_BYTES = 64 * 1024;
+
+    /**
+     * 响应处理器，body只在回调期间有效
+     */
+    interface ResponseHandler<T> {
+        T handle(int status, Map<String, String> headers, InputStream body) throws IOException;
+    }
+
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int maxIdlePerHost;
+    private final long idleTimeoutMs;
+
+    private final Map<String, Deque<Connection>> idleConnections = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionsReused = new AtomicLong();
+
+    OnvifHttpTransport(int connectTimeoutMs, int readTimeoutMs, int maxIdlePerHost, long idleTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.maxIdlePerHost = maxIdlePerHost;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * 发送一个SOAP请求并在当前线程中处理响应
+     */
+    <T> T post(URI uri, String action, String authorization, byte[] body, ResponseHandler<T> handler)
+            throws IOException {
+        if (!"http".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+            throw new IOException("Unsupported ONVIF service address: " + uri);
+        }
+        String host = uri.getHost();
+        int port = uri.getPort() > 0 ? uri.getPort() : DEFAULT_HTTP_PORT;
+        String key = host + ":" + port;
+        byte[] head = requestHead(uri, host, port, action, authorization, body.length);
+        requests.incrementAndGet();
+
+        Connection connection = pollIdle(key);
+        if (connection != null) {
+            connectionsReused.incrementAndGet();
+            try {
+                return exchange(key, connection, head, body, handler);
+            } catch (StaleConnectionException e) {
+                // 设备已关闭空闲连接，在新连接上重发
+            }
+        }
+        connection = open(host, port);
+        try {
+            return exchange(key, connection, head, body, handler);
+        } catch (StaleConnectionException e) {
+            throw new IOException("Connection closed by " + key + " before response", e.getCause());
+        }
+    }
+
+    /**
+     * 关闭超过空闲时间的连接
+     */
+    void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (Deque<Connection> connections : idleConnections.values()) {
+            Iterator<Connection> iterator = connections.iterator();
+            while (iterator.hasNext()) {
+                Connection connection = iterator.next();
+                if (now - connection.lastUsedAt > idleTimeoutMs && connections.remove(connection)) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    void close() {
+        for (Deque<Connection> connections : idleConnections.values()) {
+            Connection connection;
+            while ((connection = connections.pollFirst()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    Map<String, Object> getStatistics() {
+        int idle = 0;
+        for (Deque<Connection> connections : idleConnections.values()) {
+            idle += connections.size();
+        }
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("httpRequests", requests.get());
+        statistics.put("connectionsOpened", connectionsOpened.get());
+        statistics.put("connectionsReused", connectionsReused.get());
+        statistics.put("idleConnections", idle);
+        return statistics;
+    }
+
+    private <T> T exchange(String key, Connection connection, byte[] head, byte[] body, ResponseHandler<T> handler)
+            throws IOException {
+        boolean reusable = false;
+        try {
+            int first;
+            try {
+                connection.out.write(head);
+                connection.out.write(body);
+                connection.out.flush();
+                first = connection.in.read();
+            } catch (IOException e) {
+                if (connection.reused) {
+                    throw new StaleConnectionException(e);
+                }
+                throw e;
+            }
+            if (first < 0) {
+                throw new StaleConnectionException(null);
+            }
+
+            String statusLine = (char) first + readLine(connection.in);
+            int status = parseStatus(statusLine);
+            Map<String, String> headers = readHeaders(connection.in);
+
+            boolean keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+            InputStream content;
+            String contentLength = headers.get("content-length");
+            if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+                content = new ChunkedInputStream(connection.in);
+            } else if (contentLength != null) {
+                content = new BoundedInputStream(connection.in, parseContentLength(contentLength));
+            } else {
+                // 没有长度信息，只能读到连接关闭
+                content = connection.in;
+                keepAlive = false;
+            }
+
+            T result = handler.handle(status, headers, content);
+            reusable = keepAlive && drain(content);
+            return result;
+        } finally {
+            if (reusable) {
+                release(key, connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    private Connection pollIdle(String key) {
+        Deque<Connection> connections = idleConnections.get(key);
+        if (connections == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Connection connection;
+        // 后进先出：最近用过的连接被设备关闭的可能性最小
+        while ((connection = connections.pollFirst()) != null) {
+            if (now - connection.lastUsedAt <= idleTimeoutMs && !connection.socket.isClosed()) {
+                connection.reused = true;
+                return connection;
+            }
+            connection.close();
+        }
+        return null;
+    }
+
+    private void release(String key, Connection connection) {
+        connection.lastUsedAt = System.currentTimeMillis();
+        Deque<Connection> connections = idleConnections.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+        if (connections.size() < maxIdlePerHost) {
+            connections.offerFirst(connection);
+        } else {
+            connection.close();
+        }
+    }
+
+    private Connection open(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            socket.setSoTimeout(readTimeoutMs);
+            connectionsOpened.incrementAndGet();
+            return new Connection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static byte[] requestHead(URI uri, String host, int port, String action, String authorization,
+                                      int contentLength) {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        StringBuilder head = new StringBuilder(256);
+        head.append("POST ").append(path).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(host);
+        if (port != DEFAULT_HTTP_PORT) {
+            head.append(':').append(port);
+        }
+        head.append("\r\n");
+        head.append("Content-Type: application/soap+xml; charset=utf-8; action=\"").append(action).append("\"\r\n");
+        head.append("Content-Length: ").append(contentLength).append("\r\n");
+        if (authorization != null) {
+            head.append("Authorization: ").append(authorization).append("\r\n");
+        }
+        head.append("Connection: keep-alive\r\n\r\n");
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static int parseStatus(String statusLine) throws IOException {
+        // HTTP/1.1 200 OK
+        int space = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || space < 0 || statusLine.length() < space + 4) {
+            throw new IOException("Malformed HTTP status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(space + 1, space + 4));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed HTTP status line: " + statusLine);
+        }
+    }
+
+    private static long parseContentLength(String value) throws IOException {
+        try {
+            long length = Long.parseLong(value.trim());
+            if (length < 0) {
+                throw new NumberFormatException();
+            }
+            return length;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid Content-Length: " + value);
+        }
+    }
+
+    private static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < MAX_HEADERS; i++) {
+            String line = readLine(in);
+            if (line.isEmpty()) {
+                return headers;
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+        }
+        throw new IOException("Too many HTTP response headers");
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("HTTP header line too long");
+            }
+            line.append((char) b);
+        }
+        throw new IOException("Connection closed while reading HTTP headers");
+    }
+
+    /**
+     * 读完解析器剩下的响应体，读完返回true表示连接可以复用
+     */
+    private static boolean drain(InputStream content) {
+        byte[] skip = new byte[4096];
+        long drained = 0;
+        try {
+            int n;
+            while ((n = content.read(skip)) >= 0) {
+                drained += n;
+                if (drained > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private volatile long lastUsedAt = System.currentTimeMillis();
+        private boolean reused;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 关闭失败不影响后续请求
+            }
+        }
+    }
+
+    /**
+     * 复用的连接在收到响应之前失败
+     */
+    private static final class StaleConnectionException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StaleConnectionException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * 按Content-Length截断的响应体，close不关闭底层连接
+     */
+    private static final class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed before end of response body");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (n < 0) {
+                throw new IOException("Connection closed before end of response body");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * chunked编码的响应体，close不关闭底层连接
+     */
+    private static final class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private long chunkRemaining;
+        private boolean finished;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed inside chunk");
+            }
+            chunkRemaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int n = in.read(buffer, offset, (int) Math.min(length, chunkRemaining));
+            if (n < 0) {
+                throw new IOException("Connection closed inside chunk");
+            }
+            chunkRemaining -= n;
+            return n;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (finished) {
+                return false;
+            }
+            if (chunkRemaining > 0) {
+                return true;
+            }
+            String line = readLine(in);
+            if (line.isEmpty()) {
+                // 上一个块结尾的CRLF
+                line = readLine(in);
+            }
+            int extension = line.indexOf(';');
+            String size = (extension >= 0 ? line.substring(0, extension) : line).trim();
+            try {
+                chunkRemaining = Long.parseLong(size, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size: " + line);
+            }
+            if (chunkRemaining == 0) {
+                // 跳过trailer直到空行
+                while (!readLine(in).isEmpty()) {
+                    // 丢弃
+                }
+                finished = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import lombok.Getter;
+
+/**
+ * 媒体配置文件（Profile），一个配置文件对应一路可拉取的码流
+ */
+@Getter
+public class OnvifProfile {
+
+    private final String token;
+    private final String name;
+    private final String videoSourceToken;
+    /** 没有绑定视频编码器的配置文件（如纯音频）为null */
+    private final VideoEncoderConfiguration videoEncoder;
+
+    public OnvifProfile(String token, String name, String videoSourceToken, VideoEncoderConfiguration videoEncoder) {
+        this.token = token;
+        this.name = name;
+        this.videoSourceToken = videoSourceToken;
+        this.videoEncoder = videoEncoder;
+    }
+
+    OnvifProfile withVideoEncoder(VideoEncoderConfiguration videoEncoder) {
+        return new OnvifProfile(token, name, videoSourceToken, videoEncoder);
+    }
+}
@@ -0,0 +1,641 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import cn.hutool.crypto.digest.DigestUtil;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * ONVIF SOAP报文的构造和解析
+ * <p>
+ * 响应使用StAX流式解析，只按元素本地名和父元素匹配需要的字段，不构建DOM，也不依赖设备使用的命名空间前缀。
+ */
+final class OnvifSoap {
+
+    static final String ACTION_GET_CAPABILITIES = "http://www.onvif.org/ver10/device/wsdl/GetCapabilities";
+    static final String ACTION_GET_SYSTEM_DATE_AND_TIME = "http://www.onvif.org/ver10/device/wsdl/GetSystemDateAndTime";
+    static final String ACTION_GET_PROFILES = "http://www.onvif.org/ver10/media/wsdl/GetProfiles";
+    static final String ACTION_GET_STREAM_URI = "http://www.onvif.org/ver10/media/wsdl/GetStreamUri";
+    static final String ACTION_SET_VIDEO_ENCODER_CONFIGURATION =
+            "http://www.onvif.org/ver10/media/wsdl/SetVideoEncoderConfiguration";
+
+    private static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<s:Envelope xmlns:s=\"http://www.w3.org/2003/05/soap-envelope\""
+            + " xmlns:tds=\"http://www.onvif.org/ver10/device/wsdl\""
+            + " xmlns:trt=\"http://www.onvif.org/ver10/media/wsdl\""
+            + " xmlns:tt=\"http://www.onvif.org/ver10/schema\">";
+    private static final String SECURITY_START = "<s:Header><Security s:mustUnderstand=\"1\""
+            + " xmlns=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-secext-1.0.xsd\">"
+            + "<UsernameToken><Username>";
+    private static final String PASSWORD_DIGEST_TYPE = "http://docs.oasis-open.org/wss/2004/01/"
+            + "oasis-200401-wss-username-token-profile-1.0#PasswordDigest";
+    private static final String NONCE_ENCODING = "http://docs.oasis-open.org/wss/2004/01/"
+            + "oasis-200401-wss-soap-message-security-1.0#Base64Binary";
+    private static final String WSU_NAMESPACE = "http://docs.oasis-open.org/wss/2004/01/"
+            + "oasis-200401-wss-wssecurity-utility-1.0.xsd";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int MAX_DEPTH = 64;
+
+    private OnvifSoap() {
+    }
+
+    // ==================== 请求 ====================
+
+    /**
+     * 组装SOAP 1.2信封；配置了账号时带WS-Security UsernameToken（PasswordDigest），Created使用设备时钟
+     */
+    static byte[] envelope(String body, String username, String password, long deviceTimeMillis) {
+        StringBuilder xml = new StringBuilder(1024 + body.length());
+        xml.append(ENVELOPE_START);
+        if (username != null && !username.isEmpty()) {
+            byte[] nonce = new byte[16];
+            RANDOM.nextBytes(nonce);
+            String created = Instant.ofEpochSecond(deviceTimeMillis / 1000).toString();
+            byte[] createdBytes = created.getBytes(StandardCharsets.UTF_8);
+            byte[] passwordBytes = (password == null ? "" : password).getBytes(StandardCharsets.UTF_8);
+            byte[] digestInput = new byte[nonce.length + createdBytes.length + passwordBytes.length];
+            System.arraycopy(nonce, 0, digestInput, 0, nonce.length);
+            System.arraycopy(createdBytes, 0, digestInput, nonce.length, createdBytes.length);
+            System.arraycopy(passwordBytes, 0, digestInput, nonce.length + createdBytes.length, passwordBytes.length);
+            Base64.Encoder base64 = Base64.getEncoder();
+
+            xml.append(SECURITY_START).append(escape(username)).append("</Username>")
+                    .append("<Password Type=\"").append(PASSWORD_DIGEST_TYPE).append("\">")
+                    .append(base64.encodeToString(DigestUtil.sha1(digestInput))).append("</Password>")
+                    .append("<Nonce EncodingType=\"").append(NONCE_ENCODING).append("\">")
+                    .append(base64.encodeToString(nonce)).append("</Nonce>")
+                    .append("<Created xmlns=\"").append(WSU_NAMESPACE).append("\">").append(created)
+                    .append("</Created></UsernameToken></Security></s:Header>");
+        }
+        xml.append("<s:Body>").append(body).append("</s:Body></s:Envelope>");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String getCapabilities() {
+        return "<tds:GetCapabilities><tds:Category>All</tds:Category></tds:GetCapabilities>";
+    }
+
+    static String getSystemDateAndTime() {
+        return "<tds:GetSystemDateAndTime/>";
+    }
+
+    static String getProfiles() {
+        return "<trt:GetProfiles/>";
+    }
+
+    static String getStreamUri(String profileToken) {
+        return "<trt:GetStreamUri><trt:StreamSetup><tt:Stream>RTP-Unicast</tt:Stream>"
+                + "<tt:Transport><tt:Protocol>RTSP</tt:Protocol></tt:Transport></trt:StreamSetup>"
+                + "<trt:ProfileToken>" + escape(profileToken) + "</trt:ProfileToken></trt:GetStreamUri>";
+    }
+
+    static String setVideoEncoderConfiguration(VideoEncoderConfiguration config) {
+        StringBuilder xml = new StringBuilder(1024);
+        xml.append("<trt:SetVideoEncoderConfiguration><trt:Configuration token=\"")
+                .append(escape(config.getToken())).append("\">");
+        element(xml, "tt:Name", config.getName());
+        element(xml, "tt:UseCount", String.valueOf(config.getUseCount()));
+        element(xml, "tt:Encoding", config.getEncoding());
+        xml.append("<tt:Resolution>");
+        element(xml, "tt:Width", String.valueOf(config.getWidth()));
+        element(xml, "tt:Height", String.valueOf(config.getHeight()));
+        xml.append("</tt:Resolution>");
+        element(xml, "tt:Quality", formatQuality(config.getQuality()));
+        xml.append("<tt:RateControl>");
+        element(xml, "tt:FrameRateLimit", String.valueOf(config.getFrameRateLimit()));
+        element(xml, "tt:EncodingInterval", String.valueOf(Math.max(1, config.getEncodingInterval())));
+        element(xml, "tt:BitrateLimit", String.valueOf(config.getBitrateLimit()));
+        xml.append("</tt:RateControl>");
+        if ("H264".equalsIgnoreCase(config.getEncoding())) {
+            xml.append("<tt:H264>");
+            element(xml, "tt:GovLength", String.valueOf(config.getGovLength()));
+            element(xml, "tt:H264Profile", config.getH264Profile() == null ? "Main" : config.getH264Profile());
+            xml.append("</tt:H264>");
+        }
+        // Multicast和SessionTimeout在schema中是必填项，设备未返回时填默认值
+        String addressType = config.getMulticastAddressType() == null ? "IPv4" : config.getMulticastAddressType();
+        String address = config.getMulticastAddress() == null
+                ? ("IPv6".equals(addressType) ? "::" : "0.0.0.0") : config.getMulticastAddress();
+        xml.append("<tt:Multicast><tt:Address>");
+        element(xml, "tt:Type", addressType);
+        element(xml, "IPv6".equals(addressType) ? "tt:IPv6Address" : "tt:IPv4Address", address);
+        xml.append("</tt:Address>");
+        element(xml, "tt:Port", String.valueOf(config.getMulticastPort()));
+        element(xml, "tt:TTL", String.valueOf(config.getMulticastTtl()));
+        element(xml, "tt:AutoStart", String.valueOf(config.isMulticastAutoStart()));
+        xml.append("</tt:Multicast>");
+        element(xml, "tt:SessionTimeout", config.getSessionTimeout() == null ? "PT60S" : config.getSessionTimeout());
+        xml.append("</trt:Configuration><trt:ForcePersistence>true</trt:ForcePersistence>")
+                .append("</trt:SetVideoEncoderConfiguration>");
+        return xml.toString();
+    }
+
+    // ==================== 响应 ====================
+
+    static OnvifCapabilities parseCapabilities(InputStream in) throws IOException {
+        String[] addresses = new String[5];
+        walk(in, new Visitor() {
+            @Override
+            public boolean start(String local, String parent, String grandparent, XMLStreamReader reader)
+                    throws XMLStreamException {
+                if (!"XAddr".equals(local) || !"Capabilities".equals(grandparent)) {
+                    return false;
+                }
+                int index = "Device".equals(parent) ? 0 : "Media".equals(parent) ? 1 : "PTZ".equals(parent) ? 2
+                        : "Imaging".equals(parent) ? 3 : "Events".equals(parent) ? 4 : -1;
+                String value = reader.getElementText().trim();
+                if (index >= 0) {
+                    addresses[index] = value;
+                }
+                return true;
+            }
+        });
+        if (addresses[1] == null) {
+            throw new OnvifException(200, null, "ONVIF device does not report a media service");
+        }
+        return new OnvifCapabilities(addresses[0], addresses[1], addresses[2], addresses[3], addresses[4]);
+    }
+
+    /**
+     * 设备的UTC时间（毫秒），设备未返回UTC时间时为-1
+     */
+    static long parseSystemDateAndTime(InputStream in) throws IOException {
+        int[] fields = {-1, -1, -1, -1, -1, -1};
+        walk(in, new Visitor() {
+            @Override
+            public boolean start(String local, String parent, String grandparent, XMLStreamReader reader)
+                    throws XMLStreamException {
+                if (!"UTCDateTime".equals(grandparent)) {
+                    return false;
+                }
+                int index = "Year".equals(local) ? 0 : "Month".equals(local) ? 1 : "Day".equals(local) ? 2
+                        : "Hour".equals(local) ? 3 : "Minute".equals(local) ? 4 : "Second".equals(local) ? 5 : -1;
+                if (index < 0) {
+                    return false;
+                }
+                fields[index] = intValue(reader.getElementText());
+                return true;
+            }
+        });
+        for (int field : fields) {
+            if (field < 0) {
+                return -1;
+            }
+        }
+        try {
+            return LocalDateTime.of(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5])
+                    .toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    static List<OnvifProfile> parseProfiles(InputStream in) throws IOException {
+        ProfilesVisitor visitor = new ProfilesVisitor();
+        walk(in, visitor);
+        return visitor.profiles;
+    }
+
+    static String parseStreamUri(InputStream in) throws IOException {
+        String[] uri = new String[1];
+        walk(in, new Visitor() {
+            @Override
+            public boolean start(String local, String parent, String grandparent, XMLStreamReader reader)
+                    throws XMLStreamException {
+                if ("Uri".equals(local) && "MediaUri".equals(parent)) {
+                    uri[0] = reader.getElementText().trim();
+                    return true;
+                }
+                return false;
+            }
+        });
+        if (uri[0] == null || uri[0].isEmpty()) {
+            throw new OnvifException(200, null, "GetStreamUri response contains no URI");
+        }
+        return uri[0];
+    }
+
+    /**
+     * 把非200的响应转换为异常；响应体不是SOAP Fault（如HTTP 401的HTML页面）时只保留状态码
+     */
+    static OnvifException parseFault(int status, InputStream in) {
+        String[] fault = new String[3];
+        try {
+            walk(in, new Visitor() {
+                @Override
+                public boolean start(String local, String parent, String grandparent, XMLStreamReader reader)
+                        throws XMLStreamException {
+                    if ("Value".equals(local) && "Code".equals(parent)) {
+                        fault[0] = reader.getElementText().trim();
+                        return true;
+                    }
+                    if ("Value".equals(local) && "Subcode".equals(parent)) {
+                        // 嵌套的Subcode越靠内越具体
+                        fault[1] = reader.getElementText().trim();
+                        return true;
+                    }
+                    if ("Text".equals(local) && "Reason".equals(parent)) {
+                        fault[2] = reader.getElementText().trim();
+                        return true;
+                    }
+                    return false;
+                }
+            });
+        } catch (IOException e) {
+            return new OnvifException(status, null, "ONVIF request failed with HTTP " + status);
+        }
+        if (fault[0] == null && fault[1] == null) {
+            return new OnvifException(status, null, "ONVIF request failed with HTTP " + status);
+        }
+        String code = fault[1] != null ? fault[1] : fault[0];
+        return new OnvifException(status, fault[1],
+                "ONVIF fault " + code + (fault[2] != null ? ": " + fault[2] : ""));
+    }
+
+    // ==================== WS-Discovery ====================
+
+    /**
+     * 查找NetworkVideoTransmitter的Probe报文，应答通过RelatesTo关联到本次扫描
+     */
+    static byte[] probe(String messageId) {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<s:Envelope xmlns:s=\"http://www.w3.org/2003/05/soap-envelope\""
+                + " xmlns:a=\"http://schemas.xmlsoap.org/ws/2004/08/addressing\""
+                + " xmlns:d=\"http://schemas.xmlsoap.org/ws/2005/04/discovery\""
+                + " xmlns:dn=\"http://www.onvif.org/ver10/network/wsdl\"><s:Header>"
+                + "<a:Action s:mustUnderstand=\"1\">http://schemas.xmlsoap.org/ws/2005/04/discovery/Probe</a:Action>"
+                + "<a:MessageID>" + escape(messageId) + "</a:MessageID>"
+                + "<a:ReplyTo><a:Address>http://schemas.xmlsoap.org/ws/2004/08/addressing/role/anonymous"
+                + "</a:Address></a:ReplyTo>"
+                + "<a:To s:mustUnderstand=\"1\">urn:schemas-xmlsoap-org:ws:2005:04:discovery</a:To>"
+                + "</s:Header><s:Body><d:Probe><d:Types>dn:NetworkVideoTransmitter</d:Types></d:Probe>"
+                + "</s:Body></s:Envelope>";
+        return xml.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解析ProbeMatches；RelatesTo不是本次扫描发出的MessageID（其他客户端的探测应答、Hello/Bye等）时返回空列表
+     */
+    static List<DiscoveredDevice> parseProbeMatches(InputStream in, Collection<String> messageIds,
+                                                    String sourceAddress) throws IOException {
+        ProbeMatchesVisitor visitor = new ProbeMatchesVisitor(sourceAddress);
+        walk(in, visitor);
+        if (visitor.relatesTo == null || !messageIds.contains(visitor.relatesTo)) {
+            return new ArrayList<>();
+        }
+        return visitor.devices;
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 流式遍历元素；start返回true表示已通过getElementText读到该元素结束
+     */
+    private interface Visitor {
+        boolean start(String local, String parent, String grandparent, XMLStreamReader reader)
+                throws XMLStreamException;
+
+        default void end(String local, String parent) {
+        }
+    }
+
+    private static void walk(InputStream in, Visitor visitor) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            String[] stack = new String[MAX_DEPTH];
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String local = reader.getLocalName();
+                    String parent = depth > 0 ? stack[depth - 1] : null;
+                    String grandparent = depth > 1 ? stack[depth - 2] : null;
+                    if (visitor.start(local, parent, grandparent, reader)) {
+                        continue;
+                    }
+                    if (depth == MAX_DEPTH) {
+                        throw new IOException("ONVIF response nested too deeply");
+                    }
+                    stack[depth++] = local;
+                } else if (event == XMLStreamConstants.END_ELEMENT && depth > 0) {
+                    depth--;
+                    visitor.end(stack[depth], depth > 0 ? stack[depth - 1] : null);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed ONVIF response: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    // 不关闭底层连接
+                }
+            }
+        }
+    }
+
+    /**
+     * GetProfiles响应解析，只关心配置文件下的视频源和视频编码器配置
+     */
+    private static final class ProfilesVisitor implements Visitor {
+        private final List<OnvifProfile> profiles = new ArrayList<>();
+        private String token;
+        private String name;
+        private String sourceToken;
+        private VideoEncoderConfiguration.VideoEncoderConfigurationBuilder encoder;
+        private boolean inProfile;
+        private boolean inSource;
+        private boolean inEncoder;
+
+        @Override
+        public boolean start(String local, String parent, String grandparent, XMLStreamReader reader)
+                throws XMLStreamException {
+            if ("Profiles".equals(local)) {
+                inProfile = true;
+                token = reader.getAttributeValue(null, "token");
+                name = null;
+                sourceToken = null;
+                encoder = null;
+                return false;
+            }
+            if (!inProfile) {
+                return false;
+            }
+            if ("Profiles".equals(parent)) {
+                if ("Name".equals(local)) {
+                    name = reader.getElementText().trim();
+                    return true;
+                }
+                if ("VideoSourceConfiguration".equals(local)) {
+                    inSource = true;
+                } else if ("VideoEncoderConfiguration".equals(local)) {
+                    inEncoder = true;
+                    encoder = VideoEncoderConfiguration.builder().token(reader.getAttributeValue(null, "token"));
+                }
+                return false;
+            }
+            if (inSource && "SourceToken".equals(local) && "VideoSourceConfiguration".equals(parent)) {
+                sourceToken = reader.getElementText().trim();
+                return true;
+            }
+            if (inEncoder) {
+                return encoderField(local, parent, grandparent, reader);
+            }
+            return false;
+        }
+
+        private boolean encoderField(String local, String parent, String grandparent, XMLStreamReader reader)
+                throws XMLStreamException {
+            switch (parent) {
+                case "VideoEncoderConfiguration":
+                    switch (local) {
+                        case "Name":
+                            encoder.name(reader.getElementText().trim());
+                            return true;
+                        case "UseCount":
+                            encoder.useCount(intValue(reader.getElementText()));
+                            return true;
+                        case "Encoding":
+                            encoder.encoding(reader.getElementText().trim());
+                            return true;
+                        case "Quality":
+                            encoder.quality(floatValue(reader.getElementText()));
+                            return true;
+                        case "SessionTimeout":
+                            encoder.sessionTimeout(reader.getElementText().trim());
+                            return true;
+                        default:
+                            return false;
+                    }
+                case "Resolution":
+                    if ("Width".equals(local)) {
+                        encoder.width(intValue(reader.getElementText()));
+                        return true;
+                    }
+                    if ("Height".equals(local)) {
+                        encoder.height(intValue(reader.getElementText()));
+                        return true;
+                    }
+                    return false;
+                case "RateControl":
+                    if ("FrameRateLimit".equals(local)) {
+                        encoder.frameRateLimit(intValue(reader.getElementText()));
+                        return true;
+                    }
+                    if ("EncodingInterval".equals(local)) {
+                        encoder.encodingInterval(intValue(reader.getElementText()));
+                        return true;
+                    }
+                    if ("BitrateLimit".equals(local)) {
+                        encoder.bitrateLimit(intValue(reader.getElementText()));
+                        return true;
+                    }
+                    return false;
+                case "H264":
+                    if ("GovLength".equals(local)) {
+                        encoder.govLength(intValue(reader.getElementText()));
+                        return true;
+                    }
+                    if ("H264Profile".equals(local)) {
+                        encoder.h264Profile(reader.getElementText().trim());
+                        return true;
+                    }
+                    return false;
+                case "Multicast":
+                    if ("Port".equals(local)) {
+                        encoder.multicastPort(intValue(reader.getElementText()));
+                        return true;
+                    }
+                    if ("TTL".equals(local)) {
+                        encoder.multicastTtl(intValue(reader.getElementText()));
+                        return true;
+                    }
+                    if ("AutoStart".equals(local)) {
+                        encoder.multicastAutoStart(Boolean.parseBoolean(reader.getElementText().trim()));
+                        return true;
+                    }
+                    return false;
+                case "Address":
+                    if (!"Multicast".equals(grandparent)) {
+                        return false;
+                    }
+                    if ("Type".equals(local)) {
+                        encoder.multicastAddressType(reader.getElementText().trim());
+                        return true;
+                    }
+                    if ("IPv4Address".equals(local) || "IPv6Address".equals(local)) {
+                        encoder.multicastAddress(reader.getElementText().trim());
+                        return true;
+                    }
+                    return false;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void end(String local, String parent) {
+            if ("Profiles".equals(parent)) {
+                if ("VideoSourceConfiguration".equals(local)) {
+                    inSource = false;
+                } else if ("VideoEncoderConfiguration".equals(local)) {
+                    inEncoder = false;
+                }
+            } else if ("Profiles".equals(local) && inProfile) {
+                inProfile = false;
+                profiles.add(new OnvifProfile(token, name, sourceToken, encoder == null ? null : encoder.build()));
+            }
+        }
+    }
+
+    /**
+     * ProbeMatches解析，一个数据报可以包含多个ProbeMatch
+     */
+    private static final class ProbeMatchesVisitor implements Visitor {
+        private final String sourceAddress;
+        private final List<DiscoveredDevice> devices = new ArrayList<>();
+        private String relatesTo;
+        private String endpointReference;
+        private List<String> types;
+        private List<String> scopes;
+        private List<String> xaddrs;
+        private int metadataVersion;
+        private boolean inMatch;
+
+        ProbeMatchesVisitor(String sourceAddress) {
+            this.sourceAddress = sourceAddress;
+        }
+
+        @Override
+        public boolean start(String local, String parent, String grandparent, XMLStreamReader reader)
+                throws XMLStreamException {
+            if ("RelatesTo".equals(local) && "Header".equals(parent)) {
+                relatesTo = reader.getElementText().trim();
+                return true;
+            }
+            if ("ProbeMatch".equals(local)) {
+                inMatch = true;
+                endpointReference = null;
+                types = new ArrayList<>();
+                scopes = new ArrayList<>();
+                xaddrs = new ArrayList<>();
+                metadataVersion = 0;
+                return false;
+            }
+            if (!inMatch) {
+                return false;
+            }
+            if ("Address".equals(local) && "EndpointReference".equals(parent)) {
+                endpointReference = reader.getElementText().trim();
+                return true;
+            }
+            if (!"ProbeMatch".equals(parent)) {
+                return false;
+            }
+            switch (local) {
+                case "Types":
+                    split(reader.getElementText(), types);
+                    return true;
+                case "Scopes":
+                    split(reader.getElementText(), scopes);
+                    return true;
+                case "XAddrs":
+                    split(reader.getElementText(), xaddrs);
+                    return true;
+                case "MetadataVersion":
+                    metadataVersion = intValue(reader.getElementText());
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void end(String local, String parent) {
+            if ("ProbeMatch".equals(local) && inMatch) {
+                inMatch = false;
+                if (!xaddrs.isEmpty()) {
+                    devices.add(new DiscoveredDevice(endpointReference, types, scopes, xaddrs, metadataVersion,
+                            sourceAddress));
+                }
+            }
+        }
+
+        private static void split(String text, List<String> values) {
+            for (String value : text.trim().split("\\s+")) {
+                if (!value.isEmpty()) {
+                    values.add(value);
+                }
+            }
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // 设备响应不可信，禁用DTD和外部实体
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    private static void element(StringBuilder xml, String name, String value) {
+        xml.append('<').append(name).append('>').append(escape(value == null ? "" : value))
+                .append("</").append(name).append('>');
+    }
+
+    private static String formatQuality(float quality) {
+        return quality == (int) quality ? String.valueOf((int) quality) : String.valueOf(quality);
+    }
+
+    private static int intValue(String text) {
+        try {
+            return (int) Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static float floatValue(String text) {
+        try {
+            return Float.parseFloat(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static String escape(String value) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = c == '&' ? "&amp;" : c == '<' ? "&lt;" : c == '>' ? "&gt;"
+                    : c == '"' ? "&quot;" : c == '\'' ? "&apos;" : null;
+            if (replacement != null) {
+                if (escaped == null) {
+                    escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+                }
+                escaped.append(replacement);
+            } else if (escaped != null) {
+                escaped.append(c);
+            }
+        }
+        return escaped == null ? value : escaped.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 视频编码器配置，SetVideoEncoderConfiguration需要提交完整配置，修改时基于GetProfiles的结果复制
+ */
+@Getter
+@Builder(toBuilder = true)
+public class VideoEncoderConfiguration {
+
+    private final String token;
+    private final String name;
+    private final int useCount;
+    /** JPEG / MPEG4 / H264 */
+    private final String encoding;
+    private final int width;
+    private final int height;
+    private final float quality;
+    private final int frameRateLimit;
+    private final int encodingInterval;
+    /** kbps */
+    private final int bitrateLimit;
+    private final int govLength;
+    private final String h264Profile;
+    private final String multicastAddressType;
+    private final String multicastAddress;
+    private final int multicastPort;
+    private final int multicastTtl;
+    private final boolean multicastAutoStart;
+    private final String sessionTimeout;
+}
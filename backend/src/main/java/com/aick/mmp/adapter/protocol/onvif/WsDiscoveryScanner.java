@@ -0,0 +1,396 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import com.aick.mmp.exception.ServiceException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * WS-Discovery探测引擎，用于批量发现ONVIF摄像头
+ * <p>
+ * 一次扫描只使用一个非阻塞UDP套接字：向组播地址发送一次Probe，同时按网段逐个地址单播Probe
+ * （跨网段的摄像头收不到组播），在途探测数受限并按速率发送，超时未应答的地址重发。
+ * 设备按MessageID丢弃重复报文，所以每轮重发使用新的MessageID。
+ * 应答按RelatesTo关联到本次扫描，按设备EndpointReference去重后立即交给调用方，不等扫描结束。
+ */
+@Component
+@Slf4j
+public class WsDiscoveryScanner {
+
+    private static final String MULTICAST_ADDRESS = "239.255.255.250";
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+    private static final long MAX_SELECT_MS = 20;
+
+    @Value("${onvif.discovery.subnets:}")
+    private String defaultSubnets = "";
+
+    @Value("${onvif.discovery.port:3702}")
+    private int port = 3702;
+
+    @Value("${onvif.discovery.max-in-flight:256}")
+    private int maxInFlight = 256;
+
+    @Value("${onvif.discovery.probes-per-second:2000}")
+    private int probesPerSecond = 2000;
+
+    @Value("${onvif.discovery.probe-timeout:1000}")
+    private long probeTimeoutMs = 1000;
+
+    @Value("${onvif.discovery.retries:1}")
+    private int retries = 1;
+
+    @Value("${onvif.discovery.multicast-wait:3000}")
+    private long multicastWaitMs = 3000;
+
+    @Value("${onvif.discovery.max-hosts:65536}")
+    private int maxHosts = 65536;
+
+    @Value("${onvif.discovery.socket-receive-buffer:4194304}")
+    private int socketReceiveBuffer = 4 * 1024 * 1024;
+
+    public WsDiscoveryScanner() {
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public WsDiscoveryScanner(int port, int maxInFlight, int probesPerSecond, long probeTimeoutMs,
+                              long multicastWaitMs) {
+        this.port = port;
+        this.maxInFlight = maxInFlight;
+        this.probesPerSecond = probesPerSecond;
+        this.probeTimeoutMs = probeTimeoutMs;
+        this.multicastWaitMs = multicastWaitMs;
+    }
+
+    /**
+     * 配置的默认扫描网段
+     */
+    public List<String> getDefaultSubnets() {
+        List<String> subnets = new ArrayList<>();
+        for (String subnet : defaultSubnets.split(",")) {
+            if (!subnet.trim().isEmpty()) {
+                subnets.add(subnet.trim());
+            }
+        }
+        return subnets;
+    }
+
+    /**
+     * 扫描并在调用线程上回调发现的设备，返回时扫描已结束
+     *
+     * @param targets   单播目标，CIDR网段（如 10.1.2.0/24）或单个IP
+     * @param multicast 是否同时发送组播Probe
+     * @param listener  每台去重后的设备回调一次
+     */
+    public ScanResult scan(Collection<String> targets, boolean multicast, Consumer<DiscoveredDevice> listener) {
+        List<long[]> parsed = new ArrayList<>();
+        for (String target : targets) {
+            parsed.add(parseTarget(target));
+        }
+        // 合并重叠的网段，每个地址只探测一次
+        parsed.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> ranges = new ArrayList<>();
+        long hosts = 0;
+        for (long[] range : parsed) {
+            long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                hosts += Math.max(0, range[1] - last[1]);
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                hosts += range[1] - range[0] + 1;
+                ranges.add(range);
+            }
+        }
+        if (hosts > maxHosts) {
+            throw new ServiceException("Discovery scan covers " + hosts + " hosts, limit is " + maxHosts);
+        }
+        if (ranges.isEmpty() && !multicast) {
+            throw new ServiceException("No discovery targets specified");
+        }
+        try (Scan scan = new Scan(ranges, multicast, listener)) {
+            return scan.run();
+        } catch (IOException e) {
+            throw new ServiceException("WS-Discovery scan failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 解析CIDR或单个IPv4地址为闭区间；/31以上的网段跳过网络地址和广播地址
+     */
+    static long[] parseTarget(String target) {
+        String value = target.trim();
+        int slash = value.indexOf('/');
+        int prefix = slash < 0 ? 32 : Integer.parseInt(value.substring(slash + 1).trim());
+        if (prefix < 0 || prefix > 32) {
+            throw new ServiceException("Invalid subnet: " + target);
+        }
+        long address;
+        try {
+            InetAddress inet = InetAddress.getByName(slash < 0 ? value : value.substring(0, slash).trim());
+            byte[] bytes = inet.getAddress();
+            if (bytes.length != 4) {
+                throw new ServiceException("Only IPv4 subnets can be scanned: " + target);
+            }
+            address = ((bytes[0] & 0xFFL) << 24) | ((bytes[1] & 0xFFL) << 16) | ((bytes[2] & 0xFFL) << 8)
+                    | (bytes[3] & 0xFFL);
+        } catch (UnknownHostException e) {
+            throw new ServiceException("Invalid subnet: " + target);
+        }
+        long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+        long first = address & mask;
+        long last = first | (~mask & 0xFFFFFFFFL);
+        if (prefix < 31) {
+            first++;
+            last--;
+        }
+        return new long[]{first, last};
+    }
+
+    private static InetAddress toInetAddress(long address) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[]{
+                (byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address});
+    }
+
+    /**
+     * 扫描结果统计
+     */
+    @Getter
+    public static class ScanResult {
+        private final long hostsProbed;
+        private final long probesSent;
+        private final long responses;
+        private final long devicesFound;
+        private final long duplicates;
+        private final long timeouts;
+        private final long unreachable;
+        private final long durationMillis;
+
+        ScanResult(long hostsProbed, long probesSent, long responses, long devicesFound, long duplicates,
+                   long timeouts, long unreachable, long durationMillis) {
+            this.hostsProbed = hostsProbed;
+            this.probesSent = probesSent;
+            this.responses = responses;
+            this.devicesFound = devicesFound;
+            this.duplicates = duplicates;
+            this.timeouts = timeouts;
+            this.unreachable = unreachable;
+            this.durationMillis = durationMillis;
+        }
+    }
+
+    /**
+     * 单次扫描的状态，只在调用线程内访问
+     */
+    private final class Scan implements AutoCloseable {
+        private final List<long[]> ranges;
+        private final boolean multicast;
+        private final Consumer<DiscoveredDevice> listener;
+        private final List<String> messageIds = new ArrayList<>();
+        private final ByteBuffer[] probes;
+        private final byte[] receiveArray = new byte[MAX_DATAGRAM_SIZE];
+        private final ByteBuffer receiveBuffer = ByteBuffer.wrap(receiveArray);
+        private final Map<Long, Integer> inFlight = new HashMap<>();
+        private final ArrayDeque<long[]> deadlines = new ArrayDeque<>();
+        private final Set<String> seen = new HashSet<>();
+        private final DatagramChannel channel;
+        private final Selector selector;
+        private int rangeIndex;
+        private long next;
+        private double tokens;
+        private long lastRefill;
+        private long hostsProbed;
+        private long probesSent;
+        private long responses;
+        private long duplicates;
+        private long timeouts;
+        private long unreachable;
+
+        Scan(List<long[]> ranges, boolean multicast, Consumer<DiscoveredDevice> listener) throws IOException {
+            this.ranges = ranges;
+            this.multicast = multicast;
+            this.listener = listener;
+            this.next = ranges.isEmpty() ? 0 : ranges.get(0)[0];
+            probes = new ByteBuffer[retries + 1];
+            for (int i = 0; i < probes.length; i++) {
+                String messageId = "urn:uuid:" + UUID.randomUUID();
+                messageIds.add(messageId);
+                probes[i] = ByteBuffer.wrap(OnvifSoap.probe(messageId));
+            }
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, socketReceiveBuffer);
+            channel.bind(new InetSocketAddress(0));
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+
+        ScanResult run() throws IOException {
+            long start = System.currentTimeMillis();
+            long multicastDeadline = 0;
+            if (multicast) {
+                sendMulticast();
+                multicastDeadline = start + multicastWaitMs;
+            }
+            lastRefill = start;
+            tokens = Math.min(maxInFlight, probesPerSecond);
+            while (true) {
+                receive();
+                long now = System.currentTimeMillis();
+                expire(now);
+                sendUnicast(now);
+                if (!hasMoreTargets() && inFlight.isEmpty() && now >= multicastDeadline) {
+                    break;
+                }
+                long wait = MAX_SELECT_MS;
+                if (!deadlines.isEmpty()) {
+                    wait = Math.min(wait, deadlines.peekFirst()[1] - now);
+                } else if (!hasMoreTargets()) {
+                    wait = Math.min(wait, multicastDeadline - now);
+                }
+                if (wait > 0) {
+                    selector.select(wait);
+                    selector.selectedKeys().clear();
+                }
+            }
+            long duration = System.currentTimeMillis() - start;
+            return new ScanResult(hostsProbed, probesSent, responses, seen.size(), duplicates, timeouts, unreachable,
+                    duration);
+        }
+
+        private void sendMulticast() {
+            try {
+                probes[0].rewind();
+                channel.send(probes[0], new InetSocketAddress(MULTICAST_ADDRESS, port));
+                probesSent++;
+            } catch (IOException e) {
+                // 没有组播路由的主机（如容器内）只做单播扫描
+                log.warn("WS-Discovery multicast probe failed, continuing with unicast only: {}", e.getMessage());
+            }
+        }
+
+        private boolean hasMoreTargets() {
+            return rangeIndex < ranges.size();
+        }
+
+        private void sendUnicast(long now) {
+            tokens = Math.min(maxInFlight, tokens + (now - lastRefill) * probesPerSecond / 1000.0);
+            lastRefill = now;
+            while (hasMoreTargets() && inFlight.size() < maxInFlight && tokens >= 1) {
+                long address = next;
+                if (next >= ranges.get(rangeIndex)[1]) {
+                    rangeIndex++;
+                    if (hasMoreTargets()) {
+                        next = ranges.get(rangeIndex)[0];
+                    }
+                } else {
+                    next++;
+                }
+                hostsProbed++;
+                tokens--;
+                if (send(address, 0)) {
+                    inFlight.put(address, 0);
+                    deadlines.addLast(new long[]{address, now + probeTimeoutMs, 0});
+                }
+            }
+        }
+
+        private boolean send(long address, int attempt) {
+            try {
+                probes[attempt].rewind();
+                channel.send(probes[attempt], new InetSocketAddress(toInetAddress(address), port));
+                probesSent++;
+                return true;
+            } catch (IOException e) {
+                unreachable++;
+                return false;
+            }
+        }
+
+        /**
+         * 所有探测的超时时间相同，按发送顺序排队即可；已应答的地址出队时跳过
+         */
+        private void expire(long now) {
+            while (!deadlines.isEmpty() && deadlines.peekFirst()[1] <= now) {
+                long[] deadline = deadlines.pollFirst();
+                Integer attempt = inFlight.get(deadline[0]);
+                if (attempt == null || attempt != deadline[2]) {
+                    continue;
+                }
+                if (attempt < retries && send(deadline[0], attempt + 1)) {
+                    inFlight.put(deadline[0], attempt + 1);
+                    deadlines.addLast(new long[]{deadline[0], now + probeTimeoutMs, attempt + 1});
+                } else {
+                    inFlight.remove(deadline[0]);
+                    timeouts++;
+                }
+            }
+        }
+
+        private void receive() throws IOException {
+            while (true) {
+                receiveBuffer.clear();
+                SocketAddress source = channel.receive(receiveBuffer);
+                if (source == null) {
+                    return;
+                }
+                InetAddress sourceAddress = ((InetSocketAddress) source).getAddress();
+                List<DiscoveredDevice> devices;
+                try {
+                    devices = OnvifSoap.parseProbeMatches(
+                            new ByteArrayInputStream(receiveArray, 0, receiveBuffer.position()), messageIds,
+                            sourceAddress.getHostAddress());
+                } catch (IOException e) {
+                    log.debug("Ignoring malformed WS-Discovery datagram from {}: {}", source, e.getMessage());
+                    continue;
+                }
+                if (devices.isEmpty()) {
+                    continue;
+                }
+                responses++;
+                byte[] bytes = sourceAddress.getAddress();
+                if (bytes.length == 4) {
+                    inFlight.remove(((bytes[0] & 0xFFL) << 24) | ((bytes[1] & 0xFFL) << 16)
+                            | ((bytes[2] & 0xFFL) << 8) | (bytes[3] & 0xFFL));
+                }
+                for (DiscoveredDevice device : devices) {
+                    String identity = device.getIdentity();
+                    if (identity == null || !seen.add(identity)) {
+                        duplicates++;
+                        continue;
+                    }
+                    listener.accept(device);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            selector.close();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.aick.mmp.adapter.protocol.rtsp;
+
+import cn.hutool.crypto.digest.DigestUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RTSP认证头生成器，支持Basic和Digest两种方式
+ */
+class RtspAuthenticator {
+
+    private final String username;
+    private final String password;
+    private final boolean digest;
+    private final String realm;
+    private final String nonce;
+
+    private RtspAuthenticator(String username, String password, boolean digest, String realm, String nonce) {
+        this.username = username;
+        this.password = password;
+        this.digest = digest;
+        this.realm = realm;
+        this.nonce = nonce;
+    }
+
+    /**
+     * 根据401响应中的WWW-Authenticate头创建认证器
+     */
+    static RtspAuthenticator fromChallenge(String challenge, String username, String password) {
+        if (challenge == null) {
+            return null;
+        }
+        String trimmed = challenge.trim();
+        if (trimmed.regionMatches(true, 0, "Digest", 0, 6)) {
+            Map<String, String> params = parseParams(trimmed.substring(6));
+            return new RtspAuthenticator(username, password, true, params.get("realm"), params.get("nonce"));
+        }
+        return new RtspAuthenticator(username, password, false, null, null);
+    }
+
+    /**
+     * 生成Authorization头的值
+     */
+    String authorization(String method, String uri) {
+        if (!digest) {
+            String credentials = username + ":" + password;
+            return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        }
+        String ha1 = DigestUtil.md5Hex(username + ":" + realm + ":" + password);
+        String ha2 = DigestUtil.md5Hex(method + ":" + uri);
+        String response = DigestUtil.md5Hex(ha1 + ":" + nonce + ":" + ha2);
+        return "Digest username=\"" + username + "\", realm=\"" + realm + "\", nonce=\"" + nonce
+                + "\", uri=\"" + uri + "\", response=\"" + response + "\"";
+    }
+
+    private static Map<String, String> parseParams(String value) {
+        Map<String, String> params = new HashMap<>();
+        for (String part : value.split(",")) {
+            int eq = part.indexOf('=');
+            if (eq > 0) {
+                String key = part.substring(0, eq).trim().toLowerCase();
+                String val = part.substring(eq + 1).trim();
+                if (val.startsWith("\"") && val.endsWith("\"") && val.length() >= 2) {
+                    val = val.substring(1, val.length() - 1);
+                }
+                params.put(key, val);
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,149 @@
+package com.aick.mmp.adapter.protocol.rtsp;
+
+import com.aick.mmp.exception.ServiceException;
+import com.aick.mmp.model.Camera;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于NIO Selector的RTSP客户端引擎
+ * <p>
+ * 少量IO线程（默认2个）多路复用全部摄像头连接，连接按轮询方式分配到各个事件循环上
+ */
+@Component
+@Slf4j
+public class RtspClientEngine {
+
+    private static final int DEFAULT_RTSP_PORT = 554;
+
+    @Value("${rtsp.client.io-threads:2}")
+    private int ioThreads = 2;
+
+    @Value("${rtsp.client.connect-timeout:5000}")
+    private long connectTimeoutMs = 5000;
+
+    @Value("${rtsp.client.response-timeout:5000}")
+    private long responseTimeoutMs = 5000;
+
+    @Value("${rtsp.client.idle-timeout:15000}")
+    private long idleTimeoutMs = 15000;
+
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private RtspIoLoop[] loops;
+
+    public RtspClientEngine() {
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public RtspClientEngine(int ioThreads, long connectTimeoutMs, long responseTimeoutMs, long idleTimeoutMs) {
+        this.ioThreads = ioThreads;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.responseTimeoutMs = responseTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        int threads = Math.max(1, ioThreads);
+        loops = new RtspIoLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new RtspIoLoop("rtsp-io-" + i);
+            loops[i].start();
+        }
+        log.info("RTSP client engine started with {} IO threads", threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (loops == null) {
+            return;
+        }
+        for (RtspIoLoop loop : loops) {
+            loop.shutdown();
+        }
+        log.info("RTSP client engine stopped");
+    }
+
+    /**
+     * 打开摄像头的RTSP拉流会话
+     * @param camera 摄像头信息
+     * @param listener 媒体数据回调（在IO线程执行）
+     * @return PLAY成功后完成的Future
+     */
+    public CompletableFuture<RtspConnection> open(Camera camera, RtspSessionListener listener) {
+        return connect(camera, false, listener).readyFuture();
+    }
+
+    /**
+     * 探测摄像头是否可用：完成OPTIONS和DESCRIBE后立即断开
+     */
+    public CompletableFuture<Boolean> probe(Camera camera) {
+        return connect(camera, true, null).readyFuture()
+                .handle((connection, error) -> error == null);
+    }
+
+    /**
+     * 当前所有事件循环上的连接数（近似值）
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        if (loops != null) {
+            for (RtspIoLoop loop : loops) {
+                count += loop.connectionCount();
+            }
+        }
+        return count;
+    }
+
+    private RtspConnection connect(Camera camera, boolean probeOnly, RtspSessionListener listener) {
+        if (loops == null) {
+            throw new ServiceException("RTSP client engine is not started");
+        }
+
+        URI uri;
+        try {
+            uri = URI.create(camera.getConnectionUrl().trim());
+        } catch (RuntimeException e) {
+            throw new ServiceException("Invalid RTSP URL for camera " + camera.getId() + ": " + camera.getConnectionUrl());
+        }
+        if (uri.getHost() == null || !"rtsp".equalsIgnoreCase(uri.getScheme())) {
+            throw new ServiceException("Invalid RTSP URL for camera " + camera.getId() + ": " + camera.getConnectionUrl());
+        }
+
+        String username = camera.getUsername();
+        String password = camera.getPassword();
+        String requestUrl = uri.toString();
+        if (uri.getRawUserInfo() != null) {
+            requestUrl = requestUrl.replace(uri.getRawUserInfo() + "@", "");
+            if (username == null) {
+                String[] userInfo = uri.getUserInfo().split(":", 2);
+                username = userInfo[0];
+                password = userInfo.length > 1 ? userInfo[1] : "";
+            }
+        }
+
+        int port = uri.getPort() > 0 ? uri.getPort() : DEFAULT_RTSP_PORT;
+        // 在调用线程完成域名解析，避免阻塞IO线程
+        InetSocketAddress address = new InetSocketAddress(uri.getHost(), port);
+        if (address.isUnresolved()) {
+            throw new ServiceException("Cannot resolve RTSP host for camera " + camera.getId() + ": " + uri.getHost());
+        }
+        RtspIoLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+
+        RtspConnection connection = new RtspConnection(loop, requestUrl, address, username, password,
+                probeOnly, listener, responseTimeoutMs, idleTimeoutMs);
+        loop.execute(() -> connection.connect(connectTimeoutMs));
+        return connection;
+    }
+}
@@ -0,0 +1,571 @@
+package com.aick.mmp.adapter.protocol.rtsp;
+
+import com.aick.mmp.exception.ServiceException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 单个摄像头的非阻塞RTSP连接
+ * <p>
+ * 按 OPTIONS → DESCRIBE → SETUP → PLAY 的顺序完成握手，媒体数据通过RTP over TCP（interleaved）接收。
+ * 所有状态只在所属的{@link RtspIoLoop}线程中访问，统计字段可以从其他线程读取。
+ */
+@Slf4j
+public class RtspConnection {
+
+    public enum State {
+        CONNECTING, OPTIONS, DESCRIBE, SETUP, PLAY, PLAYING, CLOSED
+    }
+
+    private static final int INITIAL_BUFFER_SIZE = 32 * 1024;
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+    private static final int MAX_BODY_SIZE = 64 * 1024;
+    private static final String USER_AGENT = "AICK-MMP RTSP Client";
+
+    private final RtspIoLoop loop;
+    private final String requestUrl;
+    private final InetSocketAddress address;
+    private final String username;
+    private final String password;
+    private final boolean probeOnly;
+    private final RtspSessionListener listener;
+    private final long responseTimeoutMs;
+    private final long idleTimeoutMs;
+    private final CompletableFuture<RtspConnection> readyFuture = new CompletableFuture<>();
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer readBuffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+
+    private volatile State state = State.CONNECTING;
+    private int cseq;
+    private String pendingMethod;
+    private String pendingUrl;
+    private String pendingHeaders;
+    private boolean authRetried;
+    private RtspAuthenticator authenticator;
+    private String contentBase;
+    private SdpDescription sdp;
+    private List<SdpDescription.MediaTrack> setupTracks = Collections.emptyList();
+    private int setupIndex;
+    private String sessionId;
+    private int sessionTimeoutSec = 60;
+    private long deadline;
+    private long connectStartedAt;
+    private long requestSentAt;
+    private long lastKeepaliveAt;
+
+    private volatile long bytesReceived;
+    private volatile long rtpPackets;
+    private volatile long rtcpPackets;
+    private volatile long lastPacketAt;
+    private volatile long playingSince;
+    private volatile long handshakeMillis;
+    private volatile long lastRoundTripMillis;
+
+    RtspConnection(RtspIoLoop loop, String requestUrl, InetSocketAddress address, String username, String password,
+                   boolean probeOnly, RtspSessionListener listener, long responseTimeoutMs, long idleTimeoutMs) {
+        this.loop = loop;
+        this.requestUrl = requestUrl;
+        this.address = address;
+        this.username = username;
+        this.password = password;
+        this.probeOnly = probeOnly;
+        this.listener = listener;
+        this.responseTimeoutMs = responseTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * 握手完成（PLAY成功，或探测模式下DESCRIBE成功）时完成的Future
+     */
+    public CompletableFuture<RtspConnection> readyFuture() {
+        return readyFuture;
+    }
+
+    /**
+     * 发送TEARDOWN并关闭连接，可在任意线程调用
+     */
+    public void close() {
+        loop.execute(() -> {
+            if (state == State.CLOSED) {
+                return;
+            }
+            if (sessionId != null && channel != null && channel.isConnected()) {
+                try {
+                    channel.write(ByteBuffer.wrap(buildRequest("TEARDOWN", requestUrl, null)));
+                } catch (IOException e) {
+                    log.debug("Failed to send TEARDOWN to {}: {}", requestUrl, e.getMessage());
+                }
+            }
+            closeNow(null);
+        });
+    }
+
+    // ==================== 事件循环回调 ====================
+
+    void connect(long connectTimeoutMs) {
+        try {
+            connectStartedAt = System.currentTimeMillis();
+            deadline = connectStartedAt + connectTimeoutMs;
+            loop.register(this);
+
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+
+            if (channel.connect(address)) {
+                key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+                onConnected();
+            } else {
+                key = channel.register(loop.selector(), SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    void handleIo(SelectionKey selectionKey) {
+        try {
+            if (!selectionKey.isValid()) {
+                return;
+            }
+            if (selectionKey.isConnectable()) {
+                channel.finishConnect();
+                selectionKey.interestOps(SelectionKey.OP_READ);
+                onConnected();
+            }
+            if (selectionKey.isValid() && selectionKey.isWritable()) {
+                flush();
+            }
+            if (selectionKey.isValid() && selectionKey.isReadable()) {
+                read();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    void onTick(long now) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (deadline > 0 && now > deadline) {
+            String phase = state == State.CONNECTING ? "connect" : pendingMethod;
+            fail(new ServiceException("RTSP " + phase + " timed out: " + requestUrl));
+            return;
+        }
+        if (state == State.PLAYING) {
+            if (now - lastPacketAt > idleTimeoutMs) {
+                fail(new ServiceException("RTSP stream stalled for " + (now - lastPacketAt) + "ms: " + requestUrl));
+            } else if (now - lastKeepaliveAt > keepaliveIntervalMs()) {
+                lastKeepaliveAt = now;
+                sendRequest("OPTIONS", requestUrl, null);
+            }
+            if (listener != null && state == State.PLAYING) {
+                listener.onTick(now);
+            }
+        }
+    }
+
+    void closeNow(Throwable cause) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        state = State.CLOSED;
+        loop.deregister(this);
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Error closing RTSP channel {}: {}", requestUrl, e.getMessage());
+            }
+        }
+        writeQueue.clear();
+        if (!readyFuture.isDone()) {
+            readyFuture.completeExceptionally(cause != null ? cause : new ServiceException("RTSP connection closed: " + requestUrl));
+        }
+        if (listener != null) {
+            try {
+                listener.onSessionClosed(cause);
+            } catch (RuntimeException e) {
+                log.warn("RTSP session listener failed on close: {}", e.getMessage());
+            }
+        }
+    }
+
+    // ==================== 信令处理 ====================
+
+    private void onConnected() {
+        state = State.OPTIONS;
+        sendRequest("OPTIONS", requestUrl, null);
+    }
+
+    private void sendDescribe() {
+        state = State.DESCRIBE;
+        sendRequest("DESCRIBE", requestUrl, "Accept: application/sdp\r\n");
+    }
+
+    private void sendSetup() {
+        state = State.SETUP;
+        SdpDescription.MediaTrack track = setupTracks.get(setupIndex);
+        int rtpChannel = setupIndex * 2;
+        sendRequest("SETUP", track.resolveControlUrl(contentBase),
+                "Transport: RTP/AVP/TCP;unicast;interleaved=" + rtpChannel + "-" + (rtpChannel + 1) + "\r\n");
+    }
+
+    private void sendPlay() {
+        state = State.PLAY;
+        sendRequest("PLAY", contentBase, "Range: npt=0.000-\r\n");
+    }
+
+    private void handleResponse(RtspMessage response) {
+        long now = System.currentTimeMillis();
+        lastRoundTripMillis = now - requestSentAt;
+        if (state != State.PLAYING) {
+            deadline = 0;
+        }
+
+        if (response.getStatusCode() == 401 && !authRetried && username != null) {
+            authRetried = true;
+            authenticator = RtspAuthenticator.fromChallenge(response.getHeader("WWW-Authenticate"), username, password);
+            sendRequest(pendingMethod, pendingUrl, pendingHeaders);
+            return;
+        }
+        if (state == State.PLAYING) {
+            // 保活响应，无需处理
+            return;
+        }
+        if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
+            fail(new ServiceException("RTSP " + pendingMethod + " failed: " + response.getStatusCode() + " "
+                    + response.getReason()));
+            return;
+        }
+        authRetried = false;
+
+        switch (state) {
+            case OPTIONS:
+                sendDescribe();
+                break;
+            case DESCRIBE:
+                contentBase = stripTrailingSlash(firstNonNull(response.getHeader("Content-Base"),
+                        response.getHeader("Content-Location"), requestUrl));
+                sdp = SdpDescription.parse(response.getBody());
+                if (probeOnly) {
+                    handshakeMillis = now - connectStartedAt;
+                    readyFuture.complete(this);
+                    closeNow(null);
+                    return;
+                }
+                setupTracks = sdp.getVideoTracks();
+                if (setupTracks.isEmpty()) {
+                    fail(new ServiceException("RTSP DESCRIBE returned no media track: " + requestUrl));
+                    return;
+                }
+                setupIndex = 0;
+                sendSetup();
+                break;
+            case SETUP:
+                parseSessionHeader(response.getHeader("Session"));
+                setupIndex++;
+                if (setupIndex < setupTracks.size()) {
+                    sendSetup();
+                } else {
+                    sendPlay();
+                }
+                break;
+            case PLAY:
+                state = State.PLAYING;
+                playingSince = now;
+                lastPacketAt = now;
+                lastKeepaliveAt = now;
+                handshakeMillis = now - connectStartedAt;
+                if (listener != null) {
+                    listener.onSessionStarted(this);
+                }
+                readyFuture.complete(this);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void parseSessionHeader(String header) {
+        if (header == null) {
+            return;
+        }
+        String[] parts = header.split(";");
+        sessionId = parts[0].trim();
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (part.startsWith("timeout=")) {
+                try {
+                    sessionTimeoutSec = Integer.parseInt(part.substring("timeout=".length()).trim());
+                } catch (NumberFormatException e) {
+                    log.debug("Invalid RTSP session timeout: {}", part);
+                }
+            }
+        }
+    }
+
+    private void sendRequest(String method, String url, String extraHeaders) {
+        pendingMethod = method;
+        pendingUrl = url;
+        pendingHeaders = extraHeaders;
+        requestSentAt = System.currentTimeMillis();
+        if (state != State.PLAYING) {
+            deadline = requestSentAt + responseTimeoutMs;
+        }
+        writeQueue.add(ByteBuffer.wrap(buildRequest(method, url, extraHeaders)));
+        try {
+            flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private byte[] buildRequest(String method, String url, String extraHeaders) {
+        StringBuilder request = new StringBuilder(256)
+                .append(method).append(' ').append(url).append(" RTSP/1.0\r\n")
+                .append("CSeq: ").append(++cseq).append("\r\n")
+                .append("User-Agent: ").append(USER_AGENT).append("\r\n");
+        if (authenticator != null) {
+            request.append("Authorization: ").append(authenticator.authorization(method, url)).append("\r\n");
+        }
+        if (sessionId != null) {
+            request.append("Session: ").append(sessionId).append("\r\n");
+        }
+        if (extraHeaders != null) {
+            request.append(extraHeaders);
+        }
+        request.append("\r\n");
+        return request.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // ==================== 读写 ====================
+
+    private void flush() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer buffer = writeQueue.peek();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            writeQueue.poll();
+        }
+        if (key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void read() throws IOException {
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            fail(new IOException("RTSP connection closed by peer: " + requestUrl));
+            return;
+        }
+        if (n == 0) {
+            return;
+        }
+        bytesReceived += n;
+        lastPacketAt = System.currentTimeMillis();
+
+        readBuffer.flip();
+        int needed = parse();
+        if (state == State.CLOSED) {
+            return;
+        }
+        readBuffer.compact();
+        if (needed > readBuffer.capacity()) {
+            growReadBuffer(needed);
+        }
+    }
+
+    /**
+     * 解析缓冲区中完整的消息，返回继续解析所需的最小缓冲区大小
+     */
+    private int parse() throws IOException {
+        while (readBuffer.hasRemaining() && state != State.CLOSED) {
+            int start = readBuffer.position();
+            int available = readBuffer.remaining();
+
+            if (readBuffer.get(start) == '$') {
+                if (available < 4) {
+                    return 4;
+                }
+                int rtspChannel = readBuffer.get(start + 1) & 0xFF;
+                int length = readBuffer.getShort(start + 2) & 0xFFFF;
+                if (available < 4 + length) {
+                    return 4 + length;
+                }
+                int end = start + 4 + length;
+                int limit = readBuffer.limit();
+                readBuffer.position(start + 4).limit(end);
+                dispatchPacket(rtspChannel);
+                readBuffer.limit(limit);
+                readBuffer.position(end);
+                continue;
+            }
+
+            int headerEnd = findHeaderEnd(start, readBuffer.limit());
+            if (headerEnd < 0) {
+                if (available > MAX_HEADER_SIZE) {
+                    throw new IOException("RTSP header too large from " + requestUrl);
+                }
+                return available + 1;
+            }
+            byte[] headerBytes = new byte[headerEnd - start - 4];
+            readBuffer.get(headerBytes);
+            RtspMessage message = RtspMessage.parseHeaders(new String(headerBytes, StandardCharsets.US_ASCII));
+            int contentLength = message.getContentLength();
+            if (contentLength > MAX_BODY_SIZE) {
+                throw new IOException("RTSP body too large from " + requestUrl);
+            }
+            if (readBuffer.remaining() - 4 < contentLength) {
+                readBuffer.position(start);
+                return headerEnd - start + contentLength;
+            }
+            readBuffer.position(headerEnd);
+            if (contentLength > 0) {
+                byte[] body = new byte[contentLength];
+                readBuffer.get(body);
+                message.setBody(new String(body, StandardCharsets.UTF_8));
+            }
+            if (message.isResponse()) {
+                handleResponse(message);
+            } else {
+                log.debug("Ignoring RTSP {} request from server {}", message.getMethod(), requestUrl);
+            }
+        }
+        return 0;
+    }
+
+    private void dispatchPacket(int rtspChannel) {
+        if ((rtspChannel & 1) == 0) {
+            rtpPackets++;
+        } else {
+            rtcpPackets++;
+        }
+        if (listener != null) {
+            listener.onInterleavedPacket(rtspChannel, readBuffer);
+        }
+    }
+
+    private int findHeaderEnd(int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (readBuffer.get(i) == '\r' && readBuffer.get(i + 1) == '\n'
+                    && readBuffer.get(i + 2) == '\r' && readBuffer.get(i + 3) == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    private void growReadBuffer(int needed) {
+        int capacity = readBuffer.capacity();
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        ByteBuffer larger = ByteBuffer.allocateDirect(capacity);
+        readBuffer.flip();
+        larger.put(readBuffer);
+        readBuffer = larger;
+    }
+
+    private void fail(Throwable cause) {
+        log.debug("RTSP connection {} failed in state {}: {}", requestUrl, state, cause.getMessage());
+        closeNow(cause);
+    }
+
+    private long keepaliveIntervalMs() {
+        return Math.max(5, sessionTimeoutSec / 2) * 1000L;
+    }
+
+    private static String firstNonNull(String... values) {
+        for (String value : values) {
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    // ==================== 状态查询 ====================
+
+    public State getState() {
+        return state;
+    }
+
+    public String getRequestUrl() {
+        return requestUrl;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * SDP描述，DESCRIBE成功后可用
+     */
+    public SdpDescription getSdp() {
+        return sdp;
+    }
+
+    /**
+     * 根据interleaved通道号获取对应的媒体轨道
+     */
+    public SdpDescription.MediaTrack getTrackForChannel(int rtspChannel) {
+        int index = rtspChannel / 2;
+        List<SdpDescription.MediaTrack> tracks = setupTracks;
+        return index < tracks.size() ? tracks.get(index) : null;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getRtpPackets() {
+        return rtpPackets;
+    }
+
+    public long getRtcpPackets() {
+        return rtcpPackets;
+    }
+
+    public long getLastPacketAt() {
+        return lastPacketAt;
+    }
+
+    public long getPlayingSince() {
+        return playingSince;
+    }
+
+    public long getHandshakeMillis() {
+        return handshakeMillis;
+    }
+
+    public long getLastRoundTripMillis() {
+        return lastRoundTripMillis;
+    }
+}
@@ -0,0 +1,101 @@
+package com.aick.mmp.adapter.protocol.rtsp;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * RTSP文本消息（请求或响应），仅用于信令交互，不在媒体数据路径上
+ */
+public class RtspMessage {
+
+    private final String startLine;
+    private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private int statusCode = -1;
+    private String reason = "";
+    private String method;
+    private String uri;
+    private String body = "";
+
+    private RtspMessage(String startLine) {
+        this.startLine = startLine;
+    }
+
+    /**
+     * 解析消息头部分（不含结尾的空行）
+     */
+    public static RtspMessage parseHeaders(String headerText) {
+        String[] lines = headerText.split("\r\n");
+        RtspMessage message = new RtspMessage(lines[0]);
+
+        String[] parts = lines[0].split(" ", 3);
+        if (lines[0].startsWith("RTSP/")) {
+            if (parts.length > 1) {
+                try {
+                    message.statusCode = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    message.statusCode = -1;
+                }
+            }
+            message.reason = parts.length > 2 ? parts[2] : "";
+        } else {
+            message.method = parts[0];
+            message.uri = parts.length > 1 ? parts[1] : "";
+        }
+
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                message.headers.put(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+            }
+        }
+        return message;
+    }
+
+    public boolean isResponse() {
+        return method == null;
+    }
+
+    public String getStartLine() {
+        return startLine;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public int getContentLength() {
+        String value = headers.get("Content-Length");
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    void setBody(String body) {
+        this.body = body;
+    }
+}
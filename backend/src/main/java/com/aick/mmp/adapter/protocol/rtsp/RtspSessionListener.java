@@ -0,0 +1,37 @@
+package com.aick.mmp.adapter.protocol.rtsp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RTSP会话回调接口
+ * <p>
+ * 回调在IO线程上执行，实现方不能阻塞，也不能在返回后继续持有传入的缓冲区
+ */
+public interface RtspSessionListener {
+
+    /**
+     * PLAY成功，媒体数据即将到达，此时可以通过连接获取SDP轨道信息
+     */
+    default void onSessionStarted(RtspConnection connection) {
+    }
+
+    /**
+     * 收到一个interleaved RTP/RTCP数据包
+     * @param channel interleaved通道号（偶数为RTP，奇数为RTCP）
+     * @param packet 数据包内容，position到limit为有效数据
+     */
+    void onInterleavedPacket(int channel, ByteBuffer packet);
+
+    /**
+     * IO线程的周期性回调，用于处理超时等定时逻辑
+     */
+    default void onTick(long now) {
+    }
+
+    /**
+     * 会话关闭（主动关闭或异常断开）
+     * @param cause 异常原因，正常关闭时为null
+     */
+    default void onSessionClosed(Throwable cause) {
+    }
+}
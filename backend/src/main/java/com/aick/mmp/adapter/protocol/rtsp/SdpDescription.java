@@ -0,0 +1,125 @@
+package com.aick.mmp.adapter.protocol.rtsp;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SDP会话描述，只解析RTSP拉流需要的媒体段信息
+ */
+@Data
+public class SdpDescription {
+
+    private final List<MediaTrack> tracks = new ArrayList<>();
+
+    /**
+     * 解析DESCRIBE响应中的SDP文本
+     */
+    public static SdpDescription parse(String sdp) {
+        SdpDescription description = new SdpDescription();
+        MediaTrack current = null;
+
+        for (String rawLine : sdp.split("\r?\n")) {
+            String line = rawLine.trim();
+            if (line.length() < 2 || line.charAt(1) != '=') {
+                continue;
+            }
+            char type = line.charAt(0);
+            String value = line.substring(2);
+
+            if (type == 'm') {
+                // m=video 0 RTP/AVP 96
+                String[] parts = value.split(" ");
+                current = new MediaTrack();
+                current.setMediaType(parts[0]);
+                if (parts.length > 3) {
+                    current.setPayloadType(parseInt(parts[3], -1));
+                }
+                description.tracks.add(current);
+            } else if (type == 'a' && current != null) {
+                parseAttribute(current, value);
+            }
+        }
+        return description;
+    }
+
+    /**
+     * 获取需要拉取的轨道，优先视频轨道
+     */
+    public List<MediaTrack> getVideoTracks() {
+        List<MediaTrack> videoTracks = new ArrayList<>();
+        for (MediaTrack track : tracks) {
+            if ("video".equalsIgnoreCase(track.getMediaType())) {
+                videoTracks.add(track);
+            }
+        }
+        if (videoTracks.isEmpty() && !tracks.isEmpty()) {
+            videoTracks.add(tracks.get(0));
+        }
+        return videoTracks;
+    }
+
+    private static void parseAttribute(MediaTrack track, String attribute) {
+        if (attribute.startsWith("control:")) {
+            track.setControl(attribute.substring("control:".length()).trim());
+        } else if (attribute.startsWith("rtpmap:")) {
+            // rtpmap:96 H264/90000
+            String[] parts = attribute.substring("rtpmap:".length()).split(" ", 2);
+            if (parts.length == 2) {
+                String[] encoding = parts[1].split("/");
+                track.setEncodingName(encoding[0].toUpperCase());
+                if (encoding.length > 1) {
+                    track.setClockRate(parseInt(encoding[1], 90000));
+                }
+            }
+        } else if (attribute.startsWith("fmtp:")) {
+            // fmtp:96 packetization-mode=1;sprop-parameter-sets=Z0IAKeKQ...,aM48gA==
+            String[] parts = attribute.substring("fmtp:".length()).split(" ", 2);
+            if (parts.length == 2) {
+                for (String param : parts[1].split(";")) {
+                    int eq = param.indexOf('=');
+                    if (eq > 0) {
+                        track.getFormatParameters().put(param.substring(0, eq).trim(), param.substring(eq + 1).trim());
+                    }
+                }
+            }
+        }
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * SDP中的单个媒体轨道
+     */
+    @Data
+    public static class MediaTrack {
+        private String mediaType;
+        private int payloadType = -1;
+        private String encodingName;
+        private int clockRate = 90000;
+        private String control;
+        private final Map<String, String> formatParameters = new HashMap<>();
+
+        /**
+         * 根据Content-Base解析轨道的SETUP地址
+         */
+        public String resolveControlUrl(String baseUrl) {
+            if (control == null || control.isEmpty() || "*".equals(control)) {
+                return baseUrl;
+            }
+            if (control.startsWith("rtsp://") || control.startsWith("rtsps://")) {
+                return control;
+            }
+            return baseUrl.endsWith("/") ? baseUrl + control : baseUrl + "/" + control;
+        }
+    }
+}
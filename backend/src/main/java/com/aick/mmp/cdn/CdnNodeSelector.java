@@ -0,0 +1,340 @@
+package com.aick.mmp.cdn;
+
+import com.aick.mmp.model.CdnNode;
+import com.aick.mmp.repository.CdnNodeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 内存中的CDN节点选择
+ * <p>
+ * 节点按区域（CdnNode.location）分组，保存在一个不可变的快照中，只有节点增删或换区域时才重建；
+ * 负载、容量和状态在每次心跳时原地更新。选择使用两次随机选择（power of two choices）：
+ * 在区域内随机取两个可用节点，选剩余容量（capacity - load）大的一个，并立即把它的负载加一，
+ * 下一次心跳再用节点上报的负载覆盖。与总是选负载最低的节点相比，同一心跳周期内的观众不会都涌向同一个节点。
+ * 区域内没有可用节点或所选节点已满时回退到全局选择。选择过程不访问数据库，也不分配对象。
+ * 只有ONLINE且stale-after内有心跳的节点参与选择；定时任务从数据库全量刷新，兜底心跳之外的变化。
+ */
+@Component
+@Slf4j
+public class CdnNodeSelector {
+
+    private static final Candidate[] NO_CANDIDATES = new Candidate[0];
+
+    /**
+     * 随机取样的轮数，都不可用时才顺序查找
+     */
+    private static final int SAMPLE_ROUNDS = 4;
+
+    private final CdnNodeRepository cdnNodeRepository;
+    private final LongSupplier clock;
+
+    @Value("${cdn.selector.stale-after:15000}")
+    private long staleAfterMs = 15000;
+
+    private final Map<Long, Candidate> candidates = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot = new Snapshot(new HashMap<>(), NO_CANDIDATES);
+    private final LongAdder selections = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public CdnNodeSelector(CdnNodeRepository cdnNodeRepository) {
+        this(cdnNodeRepository, System::currentTimeMillis);
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public CdnNodeSelector(CdnNodeRepository cdnNodeRepository, LongSupplier clock) {
+        this.cdnNodeRepository = cdnNodeRepository;
+        this.clock = clock;
+    }
+
+    /**
+     * 用节点的最新状态（心跳、创建、修改）更新选择表
+     */
+    public void update(CdnNode node) {
+        Candidate candidate = candidates.get(node.getId());
+        if (candidate == null || !Objects.equals(candidate.region, node.getLocation())) {
+            synchronized (this) {
+                candidate = place(node);
+                rebuild();
+            }
+        }
+        candidate.apply(node);
+    }
+
+    public void remove(Long nodeId) {
+        synchronized (this) {
+            if (candidates.remove(nodeId) != null) {
+                rebuild();
+            }
+        }
+    }
+
+    /**
+     * 从数据库全量刷新，兜底心跳之外对节点的修改（如失联检测写入的OFFLINE）
+     */
+    @Scheduled(fixedDelayString = "${cdn.selector.refresh-interval:60000}")
+    public void refresh() {
+        List<CdnNode> nodes;
+        try {
+            nodes = cdnNodeRepository.findAll();
+        } catch (Exception e) {
+            log.warn("Failed to refresh CDN node selector: {}", e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            Set<Long> present = new HashSet<>();
+            for (CdnNode node : nodes) {
+                present.add(node.getId());
+                place(node).apply(node);
+            }
+            candidates.keySet().retainAll(present);
+            rebuild();
+        }
+    }
+
+    /**
+     * 为一个观众选择节点并计入负载，返回节点ID，没有可用节点时返回-1
+     */
+    public long select(String region) {
+        Candidate chosen = choose(region, clock.getAsLong(), null, 0);
+        if (chosen == null) {
+            misses.increment();
+            return -1;
+        }
+        chosen.load.incrementAndGet();
+        selections.increment();
+        return chosen.id;
+    }
+
+    /**
+     * 选择最多count个不同的节点写入out，返回实际个数；只有第一个（主节点）计入负载，其余作为备用
+     */
+    public int select(String region, int count, long[] out) {
+        long now = clock.getAsLong();
+        int selected = 0;
+        while (selected < Math.min(count, out.length)) {
+            Candidate chosen = choose(region, now, out, selected);
+            if (chosen == null) {
+                break;
+            }
+            if (selected == 0) {
+                chosen.load.incrementAndGet();
+            }
+            out[selected++] = chosen.id;
+        }
+        if (selected == 0) {
+            misses.increment();
+        } else {
+            selections.increment();
+        }
+        return selected;
+    }
+
+    /**
+     * 为迁出excludeNodeId的会话预留一个仍有剩余容量的节点并计入负载，返回节点ID，没有时返回-1
+     */
+    public long reserve(String region, long excludeNodeId) {
+        Candidate chosen = choose(region, clock.getAsLong(), new long[]{excludeNodeId}, 1);
+        if (chosen == null) {
+            misses.increment();
+            return -1;
+        }
+        if (chosen.load.incrementAndGet() > chosen.capacity) {
+            chosen.load.decrementAndGet();
+            misses.increment();
+            return -1;
+        }
+        selections.increment();
+        return chosen.id;
+    }
+
+    /**
+     * 撤销预留（迁移写入失败或会话已结束），下一次心跳前不再占用节点的容量
+     */
+    public void release(long nodeId, int count) {
+        Candidate candidate = candidates.get(nodeId);
+        if (candidate != null && count > 0) {
+            candidate.load.addAndGet(-count);
+        }
+    }
+
+    /**
+     * 选择表中的节点，包含选择以来计入的负载；不在表中时返回null
+     */
+    public CdnNode getNode(Long nodeId) {
+        Candidate candidate = candidates.get(nodeId);
+        if (candidate == null) {
+            return null;
+        }
+        CdnNode node = candidate.node;
+        return CdnNode.builder()
+                .id(node.getId())
+                .name(node.getName())
+                .ipAddress(node.getIpAddress())
+                .port(node.getPort())
+                .status(node.getStatus())
+                .location(node.getLocation())
+                .capacity(node.getCapacity())
+                .currentLoad(candidate.load.get())
+                .lastHeartbeat(node.getLastHeartbeat())
+                .build();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Snapshot current = snapshot;
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("nodes", current.all.length);
+        statistics.put("regions", current.byRegion.size());
+        statistics.put("selections", selections.sum());
+        statistics.put("regionFallbacks", fallbacks.sum());
+        statistics.put("misses", misses.sum());
+        return statistics;
+    }
+
+    private Candidate choose(String region, long now, long[] exclude, int excluded) {
+        Snapshot current = snapshot;
+        Candidate[] group = region != null ? current.byRegion.get(region) : null;
+        Candidate chosen = group != null ? choose(group, now, exclude, excluded) : null;
+        if (chosen == null || chosen.headroom() <= 0) {
+            // 区域内没有可用节点或都已满，与全局选择的结果比较
+            Candidate global = choose(current.all, now, exclude, excluded);
+            if (global != null && (chosen == null || global.headroom() > chosen.headroom())) {
+                chosen = global;
+                fallbacks.increment();
+            }
+        }
+        return chosen;
+    }
+
+    private Candidate choose(Candidate[] group, long now, long[] exclude, int excluded) {
+        int n = group.length;
+        if (n == 0) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int round = 0; round < SAMPLE_ROUNDS; round++) {
+            Candidate first = usable(group[random.nextInt(n)], now, exclude, excluded);
+            Candidate second = usable(group[random.nextInt(n)], now, exclude, excluded);
+            if (first != null && second != null) {
+                return first.headroom() >= second.headroom() ? first : second;
+            }
+            if (first != null || second != null) {
+                return first != null ? first : second;
+            }
+        }
+        // 可用节点很少时随机取样容易落空，顺序找剩余容量最大的
+        Candidate best = null;
+        for (Candidate candidate : group) {
+            if (usable(candidate, now, exclude, excluded) != null
+                    && (best == null || candidate.headroom() > best.headroom())) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private Candidate usable(Candidate candidate, long now, long[] exclude, int excluded) {
+        if (!candidate.online || now - candidate.lastHeartbeat > staleAfterMs) {
+            return null;
+        }
+        for (int i = 0; i < excluded; i++) {
+            if (exclude[i] == candidate.id) {
+                return null;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * 返回节点在选择表中的条目，新节点或换了区域的节点换成新条目；调用方持有this的锁，之后需要重建快照
+     */
+    private Candidate place(CdnNode node) {
+        Candidate candidate = candidates.get(node.getId());
+        if (candidate == null || !Objects.equals(candidate.region, node.getLocation())) {
+            candidate = new Candidate(node.getId(), node.getLocation());
+            candidates.put(node.getId(), candidate);
+        }
+        return candidate;
+    }
+
+    /**
+     * 节点增删或换区域后重建快照，调用方持有this的锁
+     */
+    private void rebuild() {
+        Map<String, List<Candidate>> grouped = new HashMap<>();
+        for (Candidate candidate : candidates.values()) {
+            if (candidate.region != null) {
+                grouped.computeIfAbsent(candidate.region, key -> new ArrayList<>()).add(candidate);
+            }
+        }
+        Map<String, Candidate[]> byRegion = new HashMap<>();
+        grouped.forEach((region, members) -> byRegion.put(region, members.toArray(NO_CANDIDATES)));
+        snapshot = new Snapshot(byRegion, candidates.values().toArray(NO_CANDIDATES));
+    }
+
+    private static final class Snapshot {
+        private final Map<String, Candidate[]> byRegion;
+        private final Candidate[] all;
+
+        Snapshot(Map<String, Candidate[]> byRegion, Candidate[] all) {
+            this.byRegion = byRegion;
+            this.all = all;
+        }
+    }
+
+    private static final class Candidate {
+        private final long id;
+        private final String region;
+        /**
+         * 最近一次上报的负载加上之后选择计入的观众数
+         */
+        private final AtomicInteger load = new AtomicInteger();
+        private volatile int capacity;
+        private volatile boolean online;
+        private volatile long lastHeartbeat;
+        private volatile CdnNode node;
+
+        Candidate(long id, String region) {
+            this.id = id;
+            this.region = region;
+        }
+
+        void apply(CdnNode node) {
+            this.node = node;
+            this.capacity = node.getCapacity() != null ? node.getCapacity() : 0;
+            this.online = node.getStatus() == CdnNode.NodeStatus.ONLINE;
+            long heartbeat = node.getLastHeartbeat() != null ? Timestamp.valueOf(node.getLastHeartbeat()).getTime() : 0;
+            // 全量刷新读到的可能是较早的心跳，不能覆盖之后的心跳上报和选择计入的负载
+            if (heartbeat >= lastHeartbeat) {
+                lastHeartbeat = heartbeat;
+                load.set(node.getCurrentLoad() != null ? node.getCurrentLoad() : 0);
+            }
+        }
+
+        int headroom() {
+            return capacity - load.get();
+        }
+    }
+}
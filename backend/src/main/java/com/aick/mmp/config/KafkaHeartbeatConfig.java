@@ -0,0 +1,79 @@
+package com.aick.mmp.config;
+
+import com.aick.mmp.dto.NodeHeartbeatMessage;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+/**
+ * 节点心跳Kafka配置：心跳主题和批量消费的监听容器
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "heartbeat.kafka", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class KafkaHeartbeatConfig {
+
+    @Value("${heartbeat.kafka.topic:mmp-node-heartbeats}")
+    private String topic;
+
+    @Value("${heartbeat.kafka.partitions:12}")
+    private int partitions;
+
+    @Value("${heartbeat.kafka.replication-factor:1}")
+    private short replicationFactor;
+
+    @Value("${heartbeat.kafka.group-id:mmp-heartbeat-group}")
+    private String groupId;
+
+    @Value("${heartbeat.kafka.concurrency:3}")
+    private int concurrency;
+
+    @Value("${heartbeat.kafka.max-poll-records:2000}")
+    private int maxPollRecords;
+
+    @Value("${heartbeat.kafka.fetch-min-bytes:65536}")
+    private int fetchMinBytes;
+
+    @Value("${heartbeat.kafka.fetch-max-wait:100}")
+    private int fetchMaxWaitMs;
+
+    @Bean
+    public NewTopic heartbeatTopic() {
+        return TopicBuilder.name(topic).partitions(partitions).replicas(replicationFactor).build();
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, NodeHeartbeatMessage> heartbeatListenerContainerFactory(
+            KafkaProperties kafkaProperties) {
+        Map<String, Object> properties = kafkaProperties.buildConsumerProperties();
+        properties.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        properties.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, fetchMinBytes);
+        properties.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
+        // 积压的旧心跳没有意义，新的消费组从最新位置开始
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+
+        // 无法解析的消息得到null值，由监听器跳过，不会卡住分区
+        JsonDeserializer<NodeHeartbeatMessage> jsonDeserializer = new JsonDeserializer<>(NodeHeartbeatMessage.class, false);
+        DefaultKafkaConsumerFactory<String, NodeHeartbeatMessage> consumerFactory = new DefaultKafkaConsumerFactory<>(
+                properties, new StringDeserializer(), new ErrorHandlingDeserializer<>(jsonDeserializer));
+
+        ConcurrentKafkaListenerContainerFactory<String, NodeHeartbeatMessage> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        return factory;
+    }
+}
@@ -40,7 +40,10 @@ public class SecurityConfig {
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeRequests(authz -> authz
                 .antMatchers("/api/auth/**").permitAll()
-                .antMatchers("/api/health/**").permitAll()
+                // 只开放存活检查和版本信息，其余/api/health下的运行统计需要登录
+                .antMatchers("/api/health", "/api/health/info").permitAll()
+                // 播放器和CDN无法携带Bearer令牌，按地址签名授权
+                .antMatchers("/api/hls/**").permitAll()
                 .antMatchers("/actuator/**").permitAll()
                 .antMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
                 .anyRequest().authenticated()
@@ -0,0 +1,38 @@
+package com.aick.mmp.config;
+
+import com.aick.mmp.service.TokenRevocationService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 令牌吊销的Redis订阅：其他实例发布的吊销写入本实例的吊销列表
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "security.jwt.revocation", name = "redis-sync", havingValue = "true", matchIfMissing = true)
+public class TokenRevocationRedisConfig {
+
+    @Value("${security.jwt.revocation.channel:mmp:token-revocations}")
+    private String channel;
+
+    @Value("${security.jwt.revocation.recovery-interval:1000}")
+    private long recoveryInterval;
+
+    @Bean
+    public RedisMessageListenerContainer tokenRevocationListenerContainer(
+            RedisConnectionFactory connectionFactory, TokenRevocationService tokenRevocationService) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // 断线后每秒重新订阅，断线期间的吊销由定时同步补齐
+        container.setRecoveryInterval(recoveryInterval);
+        container.addMessageListener((message, pattern) -> tokenRevocationService.onRevocationMessage(
+                new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(channel));
+        return container;
+    }
+}
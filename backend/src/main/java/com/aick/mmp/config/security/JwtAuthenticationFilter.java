@@ -1,51 +1,53 @@
 package com.aick.mmp.config.security;
 
 import com.aick.mmp.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.CredentialsContainer;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 
+/**
+ * 按Bearer令牌认证请求
+ * <p>
+ * 令牌只解析一次：签名和有效期校验通过后直接用声明中的用户名和角色构造用户，不查询数据库；
+ * 没有角色声明的旧令牌查询一次用户。校验通过的用户按令牌摘要缓存到令牌过期，之后的请求不再解析令牌。
+ * 无论是否命中缓存都检查本地吊销列表，不访问网络。
+ */
 @Component
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final TokenPrincipalCache tokenPrincipalCache;
+    private final TokenRevocationList tokenRevocationList;
 
     @Override
-    protected void doFilterInternal(HttpServletRequest request, 
-                                   HttpServletResponse response, 
+    protected void doFilterInternal(HttpServletRequest request,
+                                   HttpServletResponse response,
                                    FilterChain filterChain) throws ServletException, IOException {
-        
-        String authHeader = request.getHeader("Authorization");
-        String token = null;
-        String username = null;
-
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            token = authHeader.substring(7);
-            try {
-                username = jwtUtil.getUsernameFromToken(token);
-            } catch (Exception e) {
-                logger.error("JWT Token解析失败", e);
-            }
-        }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            
-            if (jwtUtil.validateToken(token)) {
-                UsernamePasswordAuthenticationToken authToken = 
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            UserDetails userDetails = authenticate(authHeader.substring(7));
+            if (userDetails != null) {
+                UsernamePasswordAuthenticationToken authToken =
                     new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
@@ -54,4 +56,58 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    private UserDetails authenticate(String token) {
+        String key = TokenPrincipalCache.key(token);
+        TokenPrincipalCache.Entry cached = tokenPrincipalCache.get(key);
+        if (cached != null) {
+            if (tokenRevocationList.isRevoked(cached.getTokenId(), cached.getPrincipal().getUsername(),
+                    cached.getIssuedAt())) {
+                tokenPrincipalCache.remove(key);
+                return null;
+            }
+            return cached.getPrincipal();
+        }
+
+        Claims claims;
+        try {
+            claims = jwtUtil.parseClaims(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            logger.debug("JWT Token解析失败: " + e.getMessage());
+            return null;
+        }
+        String username = claims.getSubject();
+        if (username == null) {
+            return null;
+        }
+        if (tokenRevocationList.isRevoked(claims, key)) {
+            logger.debug("JWT Token已吊销: " + username);
+            return null;
+        }
+        UserDetails userDetails;
+        Object role = claims.get(JwtUtil.ROLE_CLAIM);
+        if (role != null) {
+            userDetails = User.withUsername(username).password("").roles(role.toString()).build();
+        } else {
+            try {
+                userDetails = userDetailsService.loadUserByUsername(username);
+            } catch (UsernameNotFoundException e) {
+                logger.debug("JWT Token用户不存在: " + username);
+                return null;
+            }
+            if (!userDetails.isEnabled()) {
+                return null;
+            }
+            if (userDetails instanceof CredentialsContainer) {
+                // 缓存中不保留密码哈希
+                ((CredentialsContainer) userDetails).eraseCredentials();
+            }
+        }
+        if (claims.getExpiration() != null) {
+            tokenPrincipalCache.put(key, userDetails, TokenRevocationList.tokenId(claims, key),
+                    claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() : 0,
+                    claims.getExpiration().getTime());
+        }
+        return userDetails;
+    }
+}
@@ -0,0 +1,136 @@
+package com.aick.mmp.config.security;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已校验令牌的用户缓存
+ * <p>
+ * 键为令牌的SHA-256摘要，内存中不保存令牌本身；条目在令牌的exp到期，命中时不再校验签名和查询用户。
+ * 条目数达到max-entries时先清理过期条目，仍然满时不再缓存新的令牌，直到定时清理腾出空间。
+ * 条目同时记录令牌的吊销标识和签发时间，命中后由调用方检查吊销。
+ */
+@Component
+@Slf4j
+public class TokenPrincipalCache {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    @Value("${security.jwt.principal-cache.max-entries:10000}")
+    private int maxEntries = 10000;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile long lastSweepAt;
+
+    public TokenPrincipalCache() {
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public TokenPrincipalCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public static String key(String token) {
+        MessageDigest digest = SHA_256.get();
+        return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 未缓存或已过期时返回null
+     */
+    public Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    public void put(String key, UserDetails principal, String tokenId, long issuedAt, long expiresAt) {
+        long now = System.currentTimeMillis();
+        if (expiresAt <= now) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            // 满时每秒最多清理一次
+            if (now - lastSweepAt >= 1000) {
+                sweep();
+            }
+            if (entries.size() >= maxEntries) {
+                rejected.increment();
+                return;
+            }
+        }
+        entries.put(key, new Entry(principal, tokenId, issuedAt, expiresAt));
+    }
+
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    @Scheduled(fixedDelayString = "${security.jwt.principal-cache.sweep-interval:60000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        lastSweepAt = now;
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+        int removed = before - entries.size();
+        if (removed > 0) {
+            log.debug("Removed {} expired token principals", removed);
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("entries", entries.size());
+        statistics.put("maxEntries", maxEntries);
+        statistics.put("hits", hitCount);
+        statistics.put("misses", misses.sum());
+        statistics.put("hitRate", total == 0 ? 0.0 : hitCount / (double) total);
+        statistics.put("rejected", rejected.sum());
+        return statistics;
+    }
+
+    @Getter
+    public static final class Entry {
+        private final UserDetails principal;
+        private final String tokenId;
+        private final long issuedAt;
+        private final long expiresAt;
+
+        Entry(UserDetails principal, String tokenId, long issuedAt, long expiresAt) {
+            this.principal = principal;
+            this.tokenId = tokenId;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
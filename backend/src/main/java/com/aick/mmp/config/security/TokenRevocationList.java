@@ -0,0 +1,188 @@
+package com.aick.mmp.config.security;
+
+import com.aick.mmp.util.BloomFilter;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本实例内存中的已吊销令牌
+ * <p>
+ * 认证过滤器每个请求查询一次，不加锁、不访问网络。判断以精确集合为准，布隆过滤器作为预检：
+ * 未命中直接返回，命中时再查精确集合排除误判，误判数见统计中的falsePositives。
+ * 条目保留到令牌的exp，过期后令牌本身已无法通过校验；
+ * 布隆过滤器不能删除，定时清理过期条目后按剩余条目重建，条目数超过预期时也会按两倍容量重建。
+ * 停用、删除或角色变更的用户按用户名记录一个生效时间，此前签发的该用户令牌全部视为吊销，条目保留一个令牌有效期。
+ * 吊销在实例间的同步见TokenRevocationService。
+ */
+@Component
+@Slf4j
+public class TokenRevocationList {
+
+    @Value("${security.jwt.revocation.expected-tokens:100000}")
+    private int expectedTokens = 100000;
+
+    @Value("${security.jwt.revocation.false-positive-rate:0.001}")
+    private double falsePositiveRate = 0.001;
+
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private final Map<String, UserRevocation> users = new ConcurrentHashMap<>();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder filterHits = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private volatile BloomFilter filter;
+    private int filterCapacity;
+    private long rebuilds;
+
+    public TokenRevocationList() {
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public TokenRevocationList(int expectedTokens, double falsePositiveRate) {
+        this.expectedTokens = expectedTokens;
+        this.falsePositiveRate = falsePositiveRate;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        filterCapacity = expectedTokens;
+        filter = new BloomFilter(filterCapacity, falsePositiveRate);
+    }
+
+    /**
+     * 令牌的吊销标识：jti，没有jti的旧令牌使用令牌摘要
+     */
+    public static String tokenId(Claims claims, String tokenKey) {
+        return claims.getId() != null ? claims.getId() : tokenKey;
+    }
+
+    /**
+     * 按令牌的声明检查吊销，tokenKey为令牌摘要
+     */
+    public boolean isRevoked(Claims claims, String tokenKey) {
+        return isRevoked(tokenId(claims, tokenKey), claims.getSubject(),
+                claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() : 0);
+    }
+
+    /**
+     * 令牌本身被吊销，或签发于用户吊销生效之前
+     */
+    public boolean isRevoked(String tokenId, String username, long issuedAt) {
+        if (isRevoked(tokenId)) {
+            return true;
+        }
+        if (users.isEmpty() || username == null) {
+            return false;
+        }
+        UserRevocation user = users.get(username);
+        // iat只精确到秒，与生效时间同一秒签发的令牌也视为吊销
+        return user != null && issuedAt <= user.notBefore;
+    }
+
+    public boolean isRevoked(String tokenId) {
+        checks.increment();
+        if (!filter.mightContain(tokenId)) {
+            return false;
+        }
+        filterHits.increment();
+        if (!revoked.containsKey(tokenId)) {
+            falsePositives.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 加入吊销列表，已存在或已过期时返回false
+     */
+    public synchronized boolean add(String tokenId, long expiresAt) {
+        if (expiresAt <= System.currentTimeMillis() || revoked.putIfAbsent(tokenId, expiresAt) != null) {
+            return false;
+        }
+        filter.put(tokenId);
+        if (revoked.size() > filterCapacity) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * 吊销用户在notBefore及之前签发的令牌，已有更晚的生效时间时返回false
+     */
+    public synchronized boolean addUser(String username, long notBefore, long expiresAt) {
+        if (expiresAt <= System.currentTimeMillis()) {
+            return false;
+        }
+        UserRevocation current = users.get(username);
+        if (current != null && current.notBefore >= notBefore) {
+            return false;
+        }
+        users.put(username, new UserRevocation(notBefore,
+                current != null ? Math.max(expiresAt, current.expiresAt) : expiresAt));
+        return true;
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    @Scheduled(fixedDelayString = "${security.jwt.revocation.sweep-interval:60000}")
+    public synchronized void sweep() {
+        long now = System.currentTimeMillis();
+        int before = revoked.size();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+        users.values().removeIf(user -> user.expiresAt <= now);
+        int removed = before - revoked.size();
+        if (removed > 0) {
+            rebuild();
+            log.debug("Removed {} expired token revocations", removed);
+        }
+    }
+
+    /**
+     * 新过滤器填充完成后再替换，查询线程始终看到包含全部条目的过滤器
+     */
+    private void rebuild() {
+        int capacity = Math.max(expectedTokens, revoked.size() * 2);
+        BloomFilter next = new BloomFilter(capacity, falsePositiveRate);
+        revoked.keySet().forEach(next::put);
+        filter = next;
+        filterCapacity = capacity;
+        rebuilds++;
+    }
+
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("revoked", revoked.size());
+        statistics.put("revokedUsers", users.size());
+        statistics.put("filterCapacity", filterCapacity);
+        statistics.put("filterBits", filter.getBits());
+        statistics.put("filterHashes", filter.getHashes());
+        statistics.put("checks", checks.sum());
+        statistics.put("filterHits", filterHits.sum());
+        statistics.put("falsePositives", falsePositives.sum());
+        statistics.put("rebuilds", rebuilds);
+        return statistics;
+    }
+
+    private static final class UserRevocation {
+        private final long notBefore;
+        private final long expiresAt;
+
+        UserRevocation(long notBefore, long expiresAt) {
+            this.notBefore = notBefore;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.aick.mmp.config.security;
+
+import com.aick.mmp.model.User;
+import com.aick.mmp.service.TokenRevocationService;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * 用户停用、删除或角色变更后吊销其已签发的令牌
+ * <p>
+ * 带角色声明的令牌认证时不再查询用户，停用的用户在令牌过期前仍能通过认证，降级的用户仍持有原角色，
+ * 因此在实体变更时吊销，用户重新登录后获得带新角色的令牌。角色变更按加载时记录的角色判断。
+ * 由Hibernate通过Spring容器创建；在事务提交后吊销，回滚的变更不会吊销令牌。
+ */
+@Component
+public class UserTokenRevocationListener {
+
+    private final TokenRevocationService tokenRevocationService;
+
+    /**
+     * 实体监听器随EntityManagerFactory创建，吊销服务延迟到第一次使用时获取
+     */
+    public UserTokenRevocationListener(@Lazy TokenRevocationService tokenRevocationService) {
+        this.tokenRevocationService = tokenRevocationService;
+    }
+
+    @PostLoad
+    @PostPersist
+    public void onLoad(User user) {
+        user.setLoadedRole(user.getRole());
+    }
+
+    @PostUpdate
+    public void onUpdate(User user) {
+        boolean roleChanged = user.getLoadedRole() != null && user.getLoadedRole() != user.getRole();
+        user.setLoadedRole(user.getRole());
+        if (!user.isEnabled() || roleChanged) {
+            afterCommit(user.getUsername());
+        }
+    }
+
+    @PostRemove
+    public void onRemove(User user) {
+        afterCommit(user.getUsername());
+    }
+
+    private void afterCommit(String username) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            tokenRevocationService.revokeUser(username);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                tokenRevocationService.revokeUser(username);
+            }
+        });
+    }
+}
@@ -4,7 +4,6 @@ import com.aick.mmp.dto.LoginRequest;
 import com.aick.mmp.dto.LoginResponse;
 import com.aick.mmp.dto.UserDTO;
 import com.aick.mmp.service.AuthService;
-import com.aick.mmp.util.JwtUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -18,7 +17,6 @@ import javax.validation.Valid;
 public class AuthController {
 
     private final AuthService authService;
-    private final JwtUtil jwtUtil;
 
     @PostMapping("/login")
     public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest loginRequest) {
@@ -29,8 +27,8 @@ public class AuthController {
     @GetMapping("/me")
     public ResponseEntity<UserDTO> getCurrentUser(HttpServletRequest request) {
         String token = extractTokenFromRequest(request);
-        if (token != null && jwtUtil.validateToken(token)) {
-            String username = jwtUtil.getUsernameFromToken(token);
+        String username = token != null ? authService.resolveUsername(token) : null;
+        if (username != null) {
             UserDTO user = authService.getCurrentUser(username);
             return ResponseEntity.ok(user);
         }
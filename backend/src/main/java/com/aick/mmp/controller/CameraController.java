@@ -1,6 +1,8 @@
 package com.aick.mmp.controller;
 
 import com.aick.mmp.dto.CameraDTO;
+import com.aick.mmp.dto.CameraDiscoveryRequest;
+import com.aick.mmp.dto.CameraDiscoveryResultDTO;
 import com.aick.mmp.service.CameraService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -9,6 +11,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collections;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/cameras")
 public class CameraController {
@@ -30,12 +35,22 @@ public class CameraController {
         return ResponseEntity.ok(cameraService.getCameraById(id));
     }
 
+    @GetMapping("/{id}/stream-url")
+    public ResponseEntity<Map<String, String>> getCameraStreamUrl(@PathVariable Long id) {
+        return ResponseEntity.ok(Collections.singletonMap("url", cameraService.getCameraStreamUrl(id)));
+    }
+
     @PostMapping
     public ResponseEntity<CameraDTO> createCamera(@RequestBody CameraDTO cameraDTO) {
         CameraDTO created = cameraService.createCamera(cameraDTO);
         return new ResponseEntity<>(created, HttpStatus.CREATED);
     }
 
+    @PostMapping("/discover")
+    public ResponseEntity<CameraDiscoveryResultDTO> discoverCameras(@RequestBody CameraDiscoveryRequest request) {
+        return ResponseEntity.ok(cameraService.discoverCameras(request));
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<CameraDTO> updateCamera(@PathVariable Long id, @RequestBody CameraDTO cameraDTO) {
         return ResponseEntity.ok(cameraService.updateCamera(id, cameraDTO));
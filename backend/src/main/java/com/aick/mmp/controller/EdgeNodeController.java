@@ -2,7 +2,13 @@ package com.aick.mmp.controller;
 
 import com.aick.mmp.dto.EdgeNodeDTO;
 import com.aick.mmp.dto.EdgeNodeStatusUpdateDTO;
+import com.aick.mmp.messaging.EdgeHeartbeatCodec;
+import com.aick.mmp.metrics.MetricPoint;
+import com.aick.mmp.metrics.Resolution;
+import com.aick.mmp.service.EdgeCommandService;
+import com.aick.mmp.service.EdgeFailoverService;
 import com.aick.mmp.service.EdgeNodeService;
+import com.aick.mmp.service.EdgePlacementService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -10,15 +16,27 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/edge-nodes")
 public class EdgeNodeController {
 
     private final EdgeNodeService edgeNodeService;
+    private final EdgePlacementService edgePlacementService;
+    private final EdgeFailoverService edgeFailoverService;
+    private final EdgeCommandService edgeCommandService;
 
     @Autowired
-    public EdgeNodeController(EdgeNodeService edgeNodeService) {
+    public EdgeNodeController(EdgeNodeService edgeNodeService, EdgePlacementService edgePlacementService,
+                              EdgeFailoverService edgeFailoverService, EdgeCommandService edgeCommandService) {
         this.edgeNodeService = edgeNodeService;
+        this.edgePlacementService = edgePlacementService;
+        this.edgeFailoverService = edgeFailoverService;
+        this.edgeCommandService = edgeCommandService;
     }
 
     @GetMapping
@@ -48,9 +66,101 @@ public class EdgeNodeController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * 指标历史，from/to为毫秒时间戳，默认最近1小时；resolution可选RAW、MINUTE、HOUR
+     */
+    @GetMapping("/{id}/metrics")
+    public ResponseEntity<List<MetricPoint>> getEdgeNodeMetricHistory(@PathVariable Long id,
+                                                                      @RequestParam String name,
+                                                                      @RequestParam(required = false) Long from,
+                                                                      @RequestParam(required = false) Long to,
+                                                                      @RequestParam(required = false) Resolution resolution) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 3_600_000L;
+        return ResponseEntity.ok(edgeNodeService.getEdgeNodeMetricHistory(id, name, start, end, resolution));
+    }
+
+    /**
+     * 二进制心跳，增量帧的基准已失效时返回409，节点应改发全量帧
+     */
+    @PostMapping(value = "/heartbeat", consumes = EdgeHeartbeatCodec.CONTENT_TYPE)
+    public ResponseEntity<Void> registerHeartbeat(@RequestBody byte[] frame) {
+        if (!edgeNodeService.registerHeartbeat(ByteBuffer.wrap(frame))) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
     @PatchMapping("/{id}/status")
     public ResponseEntity<Void> updateEdgeNodeStatus(@PathVariable Long id, @RequestBody EdgeNodeStatusUpdateDTO statusUpdateDTO) {
         edgeNodeService.updateEdgeNodeStatus(id, statusUpdateDTO);
         return ResponseEntity.ok().build();
     }
-}
\ No newline at end of file
+
+    /**
+     * 自动分配的累计放置数和最近一次的放置结果
+     */
+    @GetMapping("/placement")
+    public ResponseEntity<Map<String, Object>> getPlacementStatistics() {
+        return ResponseEntity.ok(edgePlacementService.getStatistics());
+    }
+
+    /**
+     * 立即为未分配节点的摄像头分配边缘节点
+     */
+    @PostMapping("/placement")
+    public ResponseEntity<Map<String, Object>> placeUnassignedCameras() {
+        return ResponseEntity.ok(edgePlacementService.placeUnassigned());
+    }
+
+    /**
+     * 失联转移和迁回的累计统计、进行中和最近完成的恢复
+     */
+    @GetMapping("/failover")
+    public ResponseEntity<Map<String, Object>> getFailoverStatistics() {
+        return ResponseEntity.ok(edgeFailoverService.getStatistics());
+    }
+
+    /**
+     * 把节点失联期间转移走的摄像头迁回该节点
+     */
+    @PostMapping("/{id}/failback")
+    public ResponseEntity<Map<String, Object>> failback(@PathVariable Long id) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("cameras", edgeFailoverService.failback(id));
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 通过命令通道测试节点是否可达
+     */
+    @PostMapping("/{id}/test-connection")
+    public ResponseEntity<Map<String, Object>> testConnection(@PathVariable Long id) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("reachable", edgeNodeService.testEdgeNodeConnection(id));
+        return ResponseEntity.ok(result);
+    }
+
+    @PostMapping("/{id}/restart")
+    public ResponseEntity<Void> restart(@PathVariable Long id) {
+        edgeNodeService.restartEdgeNodeService(id);
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * 向节点下发任意命令（如config、stream），请求体作为命令参数，返回节点的响应
+     */
+    @PostMapping("/{id}/commands/{command}")
+    public ResponseEntity<Map<String, Object>> sendCommand(@PathVariable Long id, @PathVariable String command,
+                                                           @RequestBody(required = false) Map<String, Object> params) {
+        return ResponseEntity.ok(edgeCommandService.execute(id, command, params));
+    }
+
+    /**
+     * 命令通道的连接数和命令统计
+     */
+    @GetMapping("/commands")
+    public ResponseEntity<Map<String, Object>> getCommandStatistics() {
+        return ResponseEntity.ok(edgeCommandService.getStatistics());
+    }
+}
@@ -1,5 +1,11 @@
 package com.aick.mmp.controller;
 
+import com.aick.mmp.config.security.TokenPrincipalCache;
+import com.aick.mmp.metrics.TimeSeriesStore;
+import com.aick.mmp.service.NodeFailureDetector;
+import com.aick.mmp.service.StreamMigrationService;
+import com.aick.mmp.service.TokenRevocationService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -9,10 +15,20 @@ import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * 健康检查：根路径和/info不要求登录，各组件的运行统计要求登录（见SecurityConfig）
+ */
 @RestController
 @RequestMapping("/api/health")
+@RequiredArgsConstructor
 public class HealthController {
 
+    private final TimeSeriesStore timeSeriesStore;
+    private final NodeFailureDetector nodeFailureDetector;
+    private final StreamMigrationService streamMigrationService;
+    private final TokenPrincipalCache tokenPrincipalCache;
+    private final TokenRevocationService tokenRevocationService;
+
     @GetMapping
     public ResponseEntity<Map<String, Object>> health() {
         Map<String, Object> response = new HashMap<>();
@@ -33,4 +49,44 @@ public class HealthController {
         response.put("spring.boot.version", "3.2.0");
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+
+    /**
+     * 指标历史存储的序列数和内存占用
+     */
+    @GetMapping("/metric-store")
+    public ResponseEntity<Map<String, Object>> metricStore() {
+        return ResponseEntity.ok(timeSeriesStore.getStatistics());
+    }
+
+    /**
+     * 节点失联检测的受检节点数、失联节点数和检测延迟
+     */
+    @GetMapping("/failure-detector")
+    public ResponseEntity<Map<String, Object>> failureDetector() {
+        return ResponseEntity.ok(nodeFailureDetector.getStatistics());
+    }
+
+    /**
+     * CDN节点迁出的进度、每波迁移的会话数、迁出耗时和失败数
+     */
+    @GetMapping("/stream-migration")
+    public ResponseEntity<Map<String, Object>> streamMigration() {
+        return ResponseEntity.ok(streamMigrationService.getStatistics());
+    }
+
+    /**
+     * 令牌用户缓存的条目数和命中率
+     */
+    @GetMapping("/auth-cache")
+    public ResponseEntity<Map<String, Object>> authCache() {
+        return ResponseEntity.ok(tokenPrincipalCache.getStatistics());
+    }
+
+    /**
+     * 已吊销令牌数、布隆过滤器的误判数和Redis同步状态
+     */
+    @GetMapping("/token-revocation")
+    public ResponseEntity<Map<String, Object>> tokenRevocation() {
+        return ResponseEntity.ok(tokenRevocationService.getStatistics());
+    }
+}
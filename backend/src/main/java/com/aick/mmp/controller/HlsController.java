@@ -0,0 +1,210 @@
+package com.aick.mmp.controller;
+
+import com.aick.mmp.stream.hls.HlsMediaRange;
+import com.aick.mmp.stream.hls.HlsUrlSigner;
+import com.aick.mmp.stream.hls.LlHlsManager;
+import com.aick.mmp.stream.hls.LlHlsPackager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * LL-HLS播放接口：播放列表支持阻塞式重载，媒体分片通过Tomcat sendfile零拷贝发送
+ * <p>
+ * 不要求登录，按地址中的签名令牌授权（见{@link HlsUrlSigner}），因此响应可以由CDN等共享缓存保存
+ */
+@RestController
+@RequestMapping("/api/hls")
+public class HlsController {
+
+    private static final MediaType PLAYLIST_TYPE = MediaType.parseMediaType("application/vnd.apple.mpegurl");
+    private static final Pattern PART_NAME = Pattern.compile("part-(\\d+)-(\\d+)\\.m4s");
+    private static final Pattern SEGMENT_NAME = Pattern.compile("seg-(\\d+)\\.m4s");
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final LlHlsManager hlsManager;
+    private final HlsUrlSigner urlSigner;
+
+    @Value("${hls.block-timeout:6000}")
+    private long blockTimeoutMs;
+
+    @Autowired
+    public HlsController(LlHlsManager hlsManager, HlsUrlSigner urlSigner) {
+        this.hlsManager = hlsManager;
+        this.urlSigner = urlSigner;
+    }
+
+    @GetMapping("/{cameraId}/{token}/index.m3u8")
+    public DeferredResult<ResponseEntity<String>> getPlaylist(@PathVariable Long cameraId, @PathVariable String token,
+            @RequestParam(name = "_HLS_msn", required = false) Integer mediaSequence,
+            @RequestParam(name = "_HLS_part", required = false) Integer part) {
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>(blockTimeoutMs,
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        if (!urlSigner.verify(cameraId, token)) {
+            result.setResult(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+            return result;
+        }
+        LlHlsPackager packager = hlsManager.getPackager(cameraId);
+        packager.touch();
+
+        boolean blocking = mediaSequence != null;
+        if (!blocking && packager.hasContent()) {
+            result.setResult(playlistResponse(packager, false));
+            return result;
+        }
+        if (blocking && packager.isTooFarAhead(mediaSequence)) {
+            result.setResult(ResponseEntity.badRequest().build());
+            return result;
+        }
+
+        // 打包器刚启动时第一个部分段尚未生成，普通请求也等待
+        int waitSequence = blocking ? mediaSequence : 0;
+        int waitPart = blocking ? (part == null ? -1 : part) : 0;
+        LlHlsPackager.Waiter waiter = packager.await(waitSequence, waitPart,
+                () -> result.setResult(playlistResponse(packager, blocking)));
+        result.onCompletion(() -> packager.cancel(waiter));
+        return result;
+    }
+
+    @GetMapping("/{cameraId}/{token}/init.mp4")
+    public ResponseEntity<byte[]> getInitSegment(@PathVariable Long cameraId, @PathVariable String token) {
+        if (!urlSigner.verify(cameraId, token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        byte[] initSegment = hlsManager.getPackager(cameraId).getInitSegment();
+        if (initSegment == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("video/mp4"))
+                .header("Cache-Control", "public, max-age=60")
+                .body(initSegment);
+    }
+
+    @GetMapping("/{cameraId}/{token}/{name:.+\\.m4s}")
+    public void getMedia(@PathVariable Long cameraId, @PathVariable String token, @PathVariable String name,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!urlSigner.verify(cameraId, token)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        LlHlsPackager packager = hlsManager.getPackager(cameraId);
+
+        Matcher partMatcher = PART_NAME.matcher(name);
+        Matcher segmentMatcher = SEGMENT_NAME.matcher(name);
+        HlsMediaRange range;
+        if (partMatcher.matches()) {
+            int mediaSequence = Integer.parseInt(partMatcher.group(1));
+            int partIndex = Integer.parseInt(partMatcher.group(2));
+            range = packager.findPart(mediaSequence, partIndex);
+            if (range == null && request.getDispatcherType() != DispatcherType.ASYNC
+                    && packager.isUpcoming(mediaSequence, partIndex)) {
+                // 预加载提示的部分段：挂起请求，生成后重新分派到本方法再发送
+                awaitPart(packager, mediaSequence, partIndex, request);
+                return;
+            }
+        } else if (segmentMatcher.matches()) {
+            range = packager.findSegment(Integer.parseInt(segmentMatcher.group(1)), true);
+        } else {
+            range = null;
+        }
+
+        if (range == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        writeMedia(range, request, response);
+    }
+
+    private void awaitPart(LlHlsPackager packager, int mediaSequence, int partIndex, HttpServletRequest request) {
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(blockTimeoutMs);
+        LlHlsPackager.Waiter waiter = packager.await(mediaSequence, partIndex, asyncContext::dispatch);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                packager.cancel(waiter);
+                ((HttpServletResponse) event.getSuppliedResponse()).sendError(HttpServletResponse.SC_NOT_FOUND);
+                event.getAsyncContext().complete();
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+                packager.cancel(waiter);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                packager.cancel(waiter);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
+    private void writeMedia(HlsMediaRange range, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setContentType("video/mp4");
+        response.setHeader("Cache-Control", "public, max-age=60");
+        response.setContentLength(range.getLength());
+
+        // Tomcat只在首次（同步）分派时处理sendfile，等待后重新分派的请求走回退路径
+        if (range.isContiguous() && request.getDispatcherType() != DispatcherType.ASYNC
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // 由Tomcat在servlet返回后从页缓存直接发送
+            request.setAttribute(SENDFILE_FILENAME, range.getPath().toString());
+            request.setAttribute(SENDFILE_START, range.getFileOffset());
+            request.setAttribute(SENDFILE_END, range.getFileOffset() + range.getLength());
+            return;
+        }
+
+        if (!range.retain()) {
+            // 打包器已停止，映射内存已释放
+            response.reset();
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        try {
+            WritableByteChannel channel = Channels.newChannel(response.getOutputStream());
+            for (ByteBuffer buffer : range.buffers()) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } finally {
+            range.release();
+        }
+    }
+
+    private ResponseEntity<String> playlistResponse(LlHlsPackager packager, boolean blocking) {
+        // 阻塞请求的URL带有序号，CDN可以缓存；普通请求只允许短暂缓存
+        String cacheControl = blocking ? "public, max-age=" + packager.getTargetDuration() * 6 : "max-age=1";
+        return ResponseEntity.ok()
+                .contentType(PLAYLIST_TYPE)
+                .header("Cache-Control", cacheControl)
+                .body(packager.getPlaylist());
+    }
+}
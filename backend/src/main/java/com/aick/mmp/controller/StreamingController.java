@@ -1,5 +1,6 @@
 package com.aick.mmp.controller;
 
+import com.aick.mmp.service.StreamMigrationService;
 import com.aick.mmp.service.StreamingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -11,10 +12,12 @@ import org.springframework.web.bind.annotation.*;
 public class StreamingController {
 
     private final StreamingService streamingService;
+    private final StreamMigrationService streamMigrationService;
 
     @Autowired
-    public StreamingController(StreamingService streamingService) {
+    public StreamingController(StreamingService streamingService, StreamMigrationService streamMigrationService) {
         this.streamingService = streamingService;
+        this.streamMigrationService = streamMigrationService;
     }
 
     @PostMapping("/{cameraId}/start")
@@ -33,4 +36,13 @@ public class StreamingController {
     public ResponseEntity<Map<String, Object>> getStreamStatus(@PathVariable Long cameraId) {
         return ResponseEntity.ok(streamingService.getStreamStatus(cameraId));
     }
-}
\ No newline at end of file
+
+    /**
+     * 会话所在的CDN节点降级后被迁移时，返回新节点和播放地址，观看端据此切换
+     */
+    @GetMapping("/sessions/{sessionId}/redirect")
+    public ResponseEntity<Map<String, Object>> getRedirect(@PathVariable String sessionId) {
+        Map<String, Object> redirect = streamMigrationService.getRedirect(sessionId);
+        return redirect != null ? ResponseEntity.ok(redirect) : ResponseEntity.notFound().build();
+    }
+}
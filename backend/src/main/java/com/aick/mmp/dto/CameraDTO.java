@@ -28,6 +28,7 @@ public class CameraDTO {
 
     private Long edgeNodeId;
     private String edgeNodeName;
+    private Long failoverFromEdgeNodeId;
 
     @NotNull(message = "Protocol is required")
     private Camera.Protocol protocol;
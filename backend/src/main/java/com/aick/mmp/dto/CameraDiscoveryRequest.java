@@ -0,0 +1,31 @@
+package com.aick.mmp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CameraDiscoveryRequest {
+    /**
+     * 单播扫描的网段（CIDR）或IP，为空时使用配置的默认网段
+     */
+    private List<String> subnets;
+
+    /**
+     * 是否同时发送组播Probe，默认发送
+     */
+    private Boolean multicast;
+
+    /**
+     * 新发现摄像头使用的ONVIF账号
+     */
+    private String username;
+    private String password;
+
+    private Long edgeNodeId;
+
+    /**
+     * 新摄像头的位置，为空时取设备上报的location scope
+     */
+    private String location;
+}
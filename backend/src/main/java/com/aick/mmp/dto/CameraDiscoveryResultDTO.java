@@ -0,0 +1,22 @@
+package com.aick.mmp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CameraDiscoveryResultDTO {
+    private long hostsProbed;
+    private long responses;
+    private long devicesFound;
+    private long camerasCreated;
+    private long camerasExisting;
+    private long durationMillis;
+    private List<CameraDTO> cameras;
+}
@@ -0,0 +1,39 @@
+package com.aick.mmp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 边缘节点和CDN节点通过Kafka上报的心跳，消息key为{@link #partitionKey()}，保证同一节点的心跳落在同一分区
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NodeHeartbeatMessage {
+    private NodeType nodeType;
+
+    /**
+     * 边缘节点为数据库id，CDN节点为nodeId
+     */
+    private String nodeId;
+
+    private Map<String, Object> metrics;
+
+    /**
+     * 节点生成心跳的时间（毫秒），为空时使用Kafka消息时间
+     */
+    private Long timestamp;
+
+    public String partitionKey() {
+        return nodeType + ":" + nodeId;
+    }
+
+    public enum NodeType {
+        EDGE, CDN
+    }
+}
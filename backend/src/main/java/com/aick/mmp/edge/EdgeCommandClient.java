@@ -0,0 +1,194 @@
+package com.aick.mmp.edge;
+
+import com.aick.mmp.exception.ServiceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 到边缘节点的多路复用命令通道
+ * <p>
+ * 每个节点一条长连接，首次发送命令时建立，之后所有命令（重启、配置下发、流控制等）复用这条连接，
+ * 不再为每个命令重新进行TCP握手。少量IO线程（默认2个）多路复用全部连接，连接按轮询方式分配到各个事件循环上。
+ * 连接断开后下一次发送时重新建立；节点地址变化时关闭旧连接。
+ * 返回的Future在IO线程完成，回调中不能执行阻塞操作。
+ */
+@Component
+@Slf4j
+public class EdgeCommandClient {
+
+    @Value("${edge-node.command.io-threads:2}")
+    private int ioThreads = 2;
+
+    @Value("${edge-node.command.connect-timeout:5000}")
+    private long connectTimeoutMs = 5000;
+
+    @Value("${edge-node.command.response-timeout:10000}")
+    private long responseTimeoutMs = 10000;
+
+    @Value("${edge-node.command.keepalive-interval:15000}")
+    private long keepaliveIntervalMs = 15000;
+
+    /**
+     * 每个连接上未完成的命令数上限
+     */
+    @Value("${edge-node.command.max-in-flight:256}")
+    private int maxInFlight = 256;
+
+    private final Map<Long, EdgeCommandConnection> connections = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final Counters counters = new Counters();
+    private EdgeCommandIoLoop[] loops;
+    private Settings settings;
+
+    public EdgeCommandClient() {
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public EdgeCommandClient(int ioThreads, long connectTimeoutMs, long responseTimeoutMs, long keepaliveIntervalMs,
+                             int maxInFlight) {
+        this.ioThreads = ioThreads;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.responseTimeoutMs = responseTimeoutMs;
+        this.keepaliveIntervalMs = keepaliveIntervalMs;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        settings = new Settings(connectTimeoutMs, responseTimeoutMs, keepaliveIntervalMs, maxInFlight);
+        int threads = Math.max(1, ioThreads);
+        loops = new EdgeCommandIoLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EdgeCommandIoLoop("edge-command-io-" + i);
+            loops[i].start();
+        }
+        log.info("Edge command client started with {} IO threads", threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (loops == null) {
+            return;
+        }
+        for (EdgeCommandIoLoop loop : loops) {
+            loop.shutdown();
+        }
+        connections.clear();
+        log.info("Edge command client stopped");
+    }
+
+    /**
+     * 向节点发送一个命令
+     *
+     * @param nodeUuid 节点UUID，连接建立时用于hello校验
+     * @param body     UTF-8 JSON
+     * @return 节点返回的body，节点返回失败、超时或连接断开时以ServiceException失败
+     */
+    public CompletableFuture<String> send(Long nodeId, String nodeUuid, InetSocketAddress address, String command,
+                                          byte[] body) {
+        if (loops == null) {
+            throw new ServiceException("Edge command client is not started");
+        }
+        EdgeCommandConnection[] replaced = new EdgeCommandConnection[1];
+        EdgeCommandConnection connection = connections.compute(nodeId, (id, existing) -> {
+            if (existing != null && !existing.isClosed() && existing.address().equals(address)) {
+                return existing;
+            }
+            replaced[0] = existing;
+            EdgeCommandIoLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+            EdgeCommandConnection created = new EdgeCommandConnection(loop, id, nodeUuid, address, settings, counters);
+            loop.execute(created::connect);
+            return created;
+        });
+        if (replaced[0] != null) {
+            replaced[0].close();
+        }
+        return connection.send(command, body);
+    }
+
+    /**
+     * 关闭节点的连接，节点删除时调用
+     */
+    public void disconnect(Long nodeId) {
+        EdgeCommandConnection connection = connections.remove(nodeId);
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * 当前所有事件循环上的连接数（近似值）
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        if (loops != null) {
+            for (EdgeCommandIoLoop loop : loops) {
+                count += loop.connectionCount();
+            }
+        }
+        return count;
+    }
+
+    public Map<String, Object> getStatistics() {
+        long completed = counters.succeeded.sum() + counters.failed.sum();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("ioThreads", loops != null ? loops.length : 0);
+        statistics.put("connections", getConnectionCount());
+        statistics.put("connectionsOpened", counters.opened.sum());
+        statistics.put("connectionsClosed", counters.closed.sum());
+        statistics.put("commandsSent", counters.sent.sum());
+        statistics.put("succeeded", counters.succeeded.sum());
+        statistics.put("failed", counters.failed.sum());
+        statistics.put("timeouts", counters.timeouts.sum());
+        statistics.put("rejected", counters.rejected.sum());
+        statistics.put("averageLatencyMillis", completed == 0 ? 0.0 : counters.latencyMillis.sum() / (double) completed);
+        statistics.put("maxLatencyMillis", counters.maxLatencyMillis.get());
+        return statistics;
+    }
+
+    static final class Settings {
+        final long connectTimeoutMs;
+        final long responseTimeoutMs;
+        final long keepaliveIntervalMs;
+        final int maxInFlight;
+
+        Settings(long connectTimeoutMs, long responseTimeoutMs, long keepaliveIntervalMs, int maxInFlight) {
+            this.connectTimeoutMs = connectTimeoutMs;
+            this.responseTimeoutMs = responseTimeoutMs;
+            this.keepaliveIntervalMs = keepaliveIntervalMs;
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    static final class Counters {
+        final LongAdder opened = new LongAdder();
+        final LongAdder closed = new LongAdder();
+        final LongAdder sent = new LongAdder();
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder latencyMillis = new LongAdder();
+        final AtomicLong maxLatencyMillis = new AtomicLong();
+
+        void recordLatency(long millis) {
+            latencyMillis.add(millis);
+            maxLatencyMillis.accumulateAndGet(millis, Math::max);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.aick.mmp.edge;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 边缘节点命令通道的帧编解码
+ * <p>
+ * 帧格式（版本1，多字节字段为大端序）：
+ * <pre>
+ * magic      2B  0x45 0x43 ("EC")
+ * version    1B  1
+ * type       1B  1=请求 2=响应
+ * requestId  4B  连接内唯一，响应与请求相同
+ * length     4B  之后的字节数
+ * 请求：command 1B长度 + ASCII命令名，其余为body（UTF-8 JSON）
+ * 响应：status 1B（0成功 1失败），其余为body（成功时为JSON，失败时为错误信息）
+ * </pre>
+ * 同一连接上可以连续发送多个请求而不等待响应，节点可以按任意顺序返回响应。
+ * 连接建立后的第一个请求是hello，body为{"uuid": 节点UUID}，节点UUID不符时返回失败并断开。
+ */
+public final class EdgeCommandCodec {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 12;
+    /**
+     * length字段的上限，超过时按协议错误断开连接
+     */
+    public static final int MAX_PAYLOAD_BYTES = 1024 * 1024;
+
+    private static final byte MAGIC_0 = 'E';
+    private static final byte MAGIC_1 = 'C';
+    private static final byte TYPE_REQUEST = 1;
+    private static final byte TYPE_RESPONSE = 2;
+    private static final byte STATUS_OK = 0;
+    private static final byte STATUS_ERROR = 1;
+
+    private EdgeCommandCodec() {
+    }
+
+    public static ByteBuffer encode(EdgeCommandFrame frame) {
+        byte[] body = frame.getBody() != null ? frame.getBody() : new byte[0];
+        byte[] command = frame.isRequest() ? frame.getCommand().getBytes(StandardCharsets.US_ASCII) : null;
+        if (command != null && (command.length == 0 || command.length > 255)) {
+            throw new IllegalArgumentException("Invalid edge command name: " + frame.getCommand());
+        }
+        int length = (command != null ? 1 + command.length : 1) + body.length;
+        if (length > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Edge command frame too large: " + length + " bytes");
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + length);
+        out.put(MAGIC_0).put(MAGIC_1).put((byte) VERSION).put(frame.isRequest() ? TYPE_REQUEST : TYPE_RESPONSE);
+        out.putInt(frame.getRequestId());
+        out.putInt(length);
+        if (command != null) {
+            out.put((byte) command.length).put(command);
+        } else {
+            out.put(frame.isOk() ? STATUS_OK : STATUS_ERROR);
+        }
+        out.put(body);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * 从in的当前位置解码一帧；数据不完整时返回null且不移动位置
+     *
+     * @throws IllegalArgumentException 帧头不合法
+     */
+    public static EdgeCommandFrame decode(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        if (in.get(start) != MAGIC_0 || in.get(start + 1) != MAGIC_1) {
+            throw new IllegalArgumentException("Invalid edge command frame magic");
+        }
+        if (in.get(start + 2) != VERSION) {
+            throw new IllegalArgumentException("Unsupported edge command frame version: " + in.get(start + 2));
+        }
+        byte type = in.get(start + 3);
+        int requestId = in.getInt(start + 4);
+        int length = in.getInt(start + 8);
+        if (length < 1 || length > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Invalid edge command frame length: " + length);
+        }
+        if (in.remaining() < HEADER_BYTES + length) {
+            return null;
+        }
+        in.position(start + HEADER_BYTES);
+        byte first = in.get();
+        EdgeCommandFrame frame;
+        if (type == TYPE_REQUEST) {
+            int commandLength = first & 0xFF;
+            if (commandLength == 0 || commandLength > length - 1) {
+                throw new IllegalArgumentException("Invalid edge command name length: " + commandLength);
+            }
+            byte[] command = new byte[commandLength];
+            in.get(command);
+            byte[] body = new byte[length - 1 - commandLength];
+            in.get(body);
+            frame = EdgeCommandFrame.request(requestId, new String(command, StandardCharsets.US_ASCII), body);
+        } else if (type == TYPE_RESPONSE) {
+            byte[] body = new byte[length - 1];
+            in.get(body);
+            frame = EdgeCommandFrame.response(requestId, first == STATUS_OK, body);
+        } else {
+            throw new IllegalArgumentException("Unknown edge command frame type: " + type);
+        }
+        return frame;
+    }
+
+    /**
+     * 解码in当前位置的帧需要的最小缓冲区大小
+     */
+    public static int requiredBytes(ByteBuffer in) {
+        if (in.remaining() < HEADER_BYTES) {
+            return HEADER_BYTES;
+        }
+        return HEADER_BYTES + in.getInt(in.position() + 8);
+    }
+}
@@ -0,0 +1,373 @@
+package com.aick.mmp.edge;
+
+import com.aick.mmp.exception.ServiceException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 到单个边缘节点的长连接
+ * <p>
+ * 请求分配连接内递增的requestId后直接写出，不等待前一个请求的响应；响应按requestId匹配，可以乱序到达。
+ * 连接建立前提交的请求排在hello之后，连接建立后一起写出。同一轮事件循环中积累的请求用一次聚集写发送。
+ * 空闲超过keepalive-interval时发送ping，ping超时即认为节点失联，关闭连接并让所有未完成的请求失败。
+ * 所有状态只在所属的{@link EdgeCommandIoLoop}线程中访问，Future也在该线程完成。
+ */
+@Slf4j
+class EdgeCommandConnection {
+
+    enum State {
+        CONNECTING, OPEN, CLOSED
+    }
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_GATHER = 64;
+    private static final String HELLO = "hello";
+    private static final String PING = "ping";
+
+    private final EdgeCommandIoLoop loop;
+    private final Long nodeId;
+    private final String nodeUuid;
+    private final InetSocketAddress address;
+    private final EdgeCommandClient.Settings settings;
+    private final EdgeCommandClient.Counters counters;
+    private final Map<Integer, Pending> pending = new HashMap<>();
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private volatile State state = State.CONNECTING;
+    private int nextRequestId = 1;
+    private long connectDeadline;
+    private long lastReadAt;
+    private boolean pingOutstanding;
+
+    EdgeCommandConnection(EdgeCommandIoLoop loop, Long nodeId, String nodeUuid, InetSocketAddress address,
+                          EdgeCommandClient.Settings settings, EdgeCommandClient.Counters counters) {
+        this.loop = loop;
+        this.nodeId = nodeId;
+        this.nodeUuid = nodeUuid;
+        this.address = address;
+        this.settings = settings;
+        this.counters = counters;
+    }
+
+    InetSocketAddress address() {
+        return address;
+    }
+
+    boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * 提交一个请求，可在任意线程调用；响应失败、超时或连接断开时Future以ServiceException失败
+     */
+    CompletableFuture<String> send(String command, byte[] body) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (inFlight.incrementAndGet() > settings.maxInFlight) {
+            inFlight.decrementAndGet();
+            counters.rejected.increment();
+            future.completeExceptionally(new ServiceException("Too many in-flight commands for edge node " + nodeId));
+            return future;
+        }
+        loop.execute(() -> enqueue(command, body, future, true));
+        return future;
+    }
+
+    /**
+     * 关闭连接，可在任意线程调用
+     */
+    void close() {
+        loop.execute(() -> closeNow(null));
+    }
+
+    // ==================== 事件循环回调 ====================
+
+    void connect() {
+        try {
+            long now = System.currentTimeMillis();
+            connectDeadline = now + settings.connectTimeoutMs;
+            lastReadAt = now;
+            loop.register(this);
+
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+
+            CompletableFuture<String> hello = new CompletableFuture<>();
+            hello.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    closeNow(error);
+                }
+            });
+            String uuid = nodeUuid.replace("\\", "\\\\").replace("\"", "\\\"");
+            enqueue(HELLO, ("{\"uuid\":\"" + uuid + "\"}").getBytes(StandardCharsets.UTF_8), hello, false);
+
+            if (channel.connect(address)) {
+                key = channel.register(loop.selector(), SelectionKey.OP_READ | SelectionKey.OP_WRITE, this);
+                onConnected();
+            } else {
+                key = channel.register(loop.selector(), SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeNow(e);
+        }
+    }
+
+    void handleIo(SelectionKey selectionKey) {
+        try {
+            if (!selectionKey.isValid()) {
+                return;
+            }
+            if (selectionKey.isConnectable()) {
+                channel.finishConnect();
+                selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                onConnected();
+            }
+            if (selectionKey.isValid() && selectionKey.isWritable()) {
+                flush();
+            }
+            if (selectionKey.isValid() && selectionKey.isReadable()) {
+                read();
+            }
+        } catch (IOException | RuntimeException e) {
+            closeNow(e);
+        }
+    }
+
+    void onTick(long now) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.CONNECTING) {
+            if (now > connectDeadline) {
+                closeNow(new ServiceException("Edge command connection to " + address + " timed out"));
+            }
+            return;
+        }
+        List<Pending> expired = null;
+        Iterator<Pending> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            Pending request = iterator.next();
+            if (now > request.deadline) {
+                iterator.remove();
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(request);
+            }
+        }
+        if (expired != null) {
+            boolean unresponsive = false;
+            for (Pending request : expired) {
+                if (!request.counted) {
+                    // hello或ping没有响应
+                    unresponsive = true;
+                    continue;
+                }
+                counters.timeouts.increment();
+                finish(request);
+                request.future.completeExceptionally(new ServiceException("Edge command " + request.command
+                        + " to node " + nodeId + " timed out after " + settings.responseTimeoutMs + "ms"));
+            }
+            if (unresponsive) {
+                closeNow(new ServiceException("Edge node " + nodeId + " stopped responding"));
+                return;
+            }
+        }
+        if (!pingOutstanding && now - lastReadAt >= settings.keepaliveIntervalMs) {
+            pingOutstanding = true;
+            CompletableFuture<String> ping = new CompletableFuture<>();
+            ping.whenComplete((ignored, error) -> pingOutstanding = false);
+            enqueue(PING, new byte[0], ping, false);
+        }
+    }
+
+    void closeNow(Throwable cause) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        state = State.CLOSED;
+        loop.deregister(this);
+        counters.closed.increment();
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Error closing edge command channel {}: {}", address, e.getMessage());
+            }
+        }
+        writeQueue.clear();
+        if (cause != null) {
+            log.warn("Edge command connection to node {} ({}) closed: {}", nodeId, address, cause.getMessage());
+        }
+        ServiceException failure = new ServiceException("Edge command connection to node " + nodeId + " closed"
+                + (cause != null ? ": " + cause.getMessage() : ""));
+        List<Pending> requests = new ArrayList<>(pending.values());
+        pending.clear();
+        for (Pending request : requests) {
+            finish(request);
+            request.future.completeExceptionally(failure);
+        }
+    }
+
+    // ==================== 读写 ====================
+
+    private void enqueue(String command, byte[] body, CompletableFuture<String> future, boolean counted) {
+        if (state == State.CLOSED) {
+            if (counted) {
+                inFlight.decrementAndGet();
+            }
+            future.completeExceptionally(new ServiceException("Edge command connection to node " + nodeId + " closed"));
+            return;
+        }
+        int requestId = nextRequestId++;
+        ByteBuffer frame;
+        try {
+            frame = EdgeCommandCodec.encode(EdgeCommandFrame.request(requestId, command, body));
+        } catch (IllegalArgumentException e) {
+            if (counted) {
+                inFlight.decrementAndGet();
+            }
+            future.completeExceptionally(new ServiceException(e.getMessage()));
+            return;
+        }
+        long now = System.currentTimeMillis();
+        pending.put(requestId, new Pending(command, future, now, now + settings.responseTimeoutMs, counted));
+        writeQueue.add(frame);
+        if (counted) {
+            counters.sent.increment();
+        }
+        if (state == State.OPEN && key.isValid()) {
+            // 同一轮循环中的请求合并到下一次可写事件中一起写出
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void onConnected() {
+        state = State.OPEN;
+        lastReadAt = System.currentTimeMillis();
+        counters.opened.increment();
+        log.debug("Edge command connection to node {} ({}) established", nodeId, address);
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer[] batch = new ByteBuffer[Math.min(MAX_GATHER, Math.max(1, writeQueue.size()))];
+        while (!writeQueue.isEmpty()) {
+            int count = 0;
+            long remaining = 0;
+            for (ByteBuffer buffer : writeQueue) {
+                batch[count++] = buffer;
+                remaining += buffer.remaining();
+                if (count == batch.length) {
+                    break;
+                }
+            }
+            long written = channel.write(batch, 0, count);
+            while (!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+                writeQueue.poll();
+            }
+            if (written < remaining) {
+                // 发送缓冲区已满，等待下一次可写事件
+                return;
+            }
+        }
+        if (key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void read() throws IOException {
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            closeNow(new IOException("connection closed by edge node"));
+            return;
+        }
+        if (n == 0) {
+            return;
+        }
+        lastReadAt = System.currentTimeMillis();
+        readBuffer.flip();
+        EdgeCommandFrame frame;
+        while (state != State.CLOSED && (frame = EdgeCommandCodec.decode(readBuffer)) != null) {
+            onFrame(frame);
+        }
+        if (state == State.CLOSED) {
+            return;
+        }
+        int required = EdgeCommandCodec.requiredBytes(readBuffer);
+        readBuffer.compact();
+        if (required > readBuffer.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocate(Integer.highestOneBit(required - 1) << 1);
+            readBuffer.flip();
+            grown.put(readBuffer);
+            readBuffer = grown;
+        }
+    }
+
+    private void onFrame(EdgeCommandFrame frame) {
+        if (frame.isRequest()) {
+            log.debug("Ignoring request {} from edge node {}", frame.getCommand(), nodeId);
+            return;
+        }
+        Pending request = pending.remove(frame.getRequestId());
+        if (request == null) {
+            // 已超时的请求
+            return;
+        }
+        finish(request);
+        if (request.counted) {
+            counters.recordLatency(System.currentTimeMillis() - request.sentAt);
+            (frame.isOk() ? counters.succeeded : counters.failed).increment();
+        }
+        if (frame.isOk()) {
+            request.future.complete(frame.bodyAsString());
+        } else {
+            request.future.completeExceptionally(new ServiceException("Edge node " + nodeId + " rejected "
+                    + request.command + ": " + frame.bodyAsString()));
+        }
+    }
+
+    private void finish(Pending request) {
+        if (request.counted) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static final class Pending {
+        private final String command;
+        private final CompletableFuture<String> future;
+        private final long sentAt;
+        private final long deadline;
+        private final boolean counted;
+
+        Pending(String command, CompletableFuture<String> future, long sentAt, long deadline, boolean counted) {
+            this.command = command;
+            this.future = future;
+            this.sentAt = sentAt;
+            this.deadline = deadline;
+            this.counted = counted;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.aick.mmp.edge;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 命令通道上的一帧：请求带命令名，响应带成功标志，两者的body都是UTF-8文本
+ */
+@Getter
+public final class EdgeCommandFrame {
+
+    private final boolean request;
+    private final int requestId;
+    private final String command;
+    private final boolean ok;
+    private final byte[] body;
+
+    private EdgeCommandFrame(boolean request, int requestId, String command, boolean ok, byte[] body) {
+        this.request = request;
+        this.requestId = requestId;
+        this.command = command;
+        this.ok = ok;
+        this.body = body;
+    }
+
+    public static EdgeCommandFrame request(int requestId, String command, byte[] body) {
+        return new EdgeCommandFrame(true, requestId, command, true, body);
+    }
+
+    public static EdgeCommandFrame response(int requestId, boolean ok, byte[] body) {
+        return new EdgeCommandFrame(false, requestId, null, ok, body);
+    }
+
+    public String bodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+package com.aick.mmp.edge;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 单个Selector事件循环，一个线程负责多路复用大量边缘节点的命令连接
+ * <p>
+ * 连接的所有状态只在本线程内修改，其他线程通过{@link #execute(Runnable)}投递任务
+ */
+@Slf4j
+class EdgeCommandIoLoop implements Runnable {
+
+    private static final long TICK_INTERVAL_MS = 200;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<EdgeCommandConnection> connections = new HashSet<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile int connectionCount;
+    private long lastTick;
+
+    EdgeCommandIoLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * 在事件循环线程中执行任务
+     */
+    void execute(Runnable task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    void register(EdgeCommandConnection connection) {
+        connections.add(connection);
+        connectionCount = connections.size();
+    }
+
+    void deregister(EdgeCommandConnection connection) {
+        connections.remove(connection);
+        connectionCount = connections.size();
+    }
+
+    int connectionCount() {
+        return connectionCount;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(TICK_INTERVAL_MS);
+                runTasks();
+                processSelectedKeys();
+
+                long now = System.currentTimeMillis();
+                if (now - lastTick >= TICK_INTERVAL_MS) {
+                    lastTick = now;
+                    for (EdgeCommandConnection connection : new ArrayList<>(connections)) {
+                        connection.onTick(now);
+                    }
+                }
+            } catch (Throwable t) {
+                log.error("Edge command IO loop {} error: {}", thread.getName(), t.getMessage(), t);
+            }
+        }
+
+        runTasks();
+        for (EdgeCommandConnection connection : new ArrayList<>(connections)) {
+            connection.closeNow(null);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Failed to close selector of {}: {}", thread.getName(), e.getMessage());
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.error("Edge command IO task failed: {}", t.getMessage(), t);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            EdgeCommandConnection connection = (EdgeCommandConnection) key.attachment();
+            if (connection != null) {
+                connection.handleIo(key);
+            }
+        }
+    }
+}
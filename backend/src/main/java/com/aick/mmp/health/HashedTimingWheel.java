@@ -0,0 +1,181 @@
+package com.aick.mmp.health;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 哈希时间轮：超时按到期刻度挂到对应的槽，推进时只访问到期的槽，调度、重新调度和取消都是O(1)
+ * <p>
+ * 每个槽是一个带锁的双向链表，调度线程和推进线程只在同一个槽上竞争。
+ * 超过一圈的超时在槽内等待，直到到期刻度被推进到；槽数应覆盖常用的超时长度，避免超时在槽内等待多圈。
+ * 同一个{@link Timeout}的调度和取消由调用方串行执行，推进可以与它们并发。
+ */
+public final class HashedTimingWheel {
+
+    private final long tickMs;
+    private final int mask;
+    private final Bucket[] buckets;
+    private volatile long lastTick;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param tickMs    刻度长度（毫秒），决定到期后最多延迟多久被发现
+     * @param wheelSize 槽数，向上取整为2的幂
+     * @param startMs   起始时间，早于它的超时在第一次推进时到期
+     */
+    public HashedTimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMs and wheelSize must be positive");
+        }
+        int slots = Integer.highestOneBit(wheelSize);
+        if (slots < wheelSize) {
+            slots <<= 1;
+        }
+        this.tickMs = tickMs;
+        this.mask = slots - 1;
+        this.buckets = new Bucket[slots];
+        this.lastTick = startMs / tickMs;
+        for (int i = 0; i < slots; i++) {
+            // 每个槽视为已处理到不晚于起始刻度的最后一个对应刻度
+            buckets[i] = new Bucket(lastTick - Math.floorMod(lastTick - i, slots));
+        }
+    }
+
+    /**
+     * 在deadline到期，已调度的超时先从原来的槽中移除；已经过去的deadline在下一个刻度到期
+     */
+    public void schedule(Timeout timeout, long deadline) {
+        cancel(timeout);
+        timeout.deadline = deadline;
+        // 向上取整，保证不会早于deadline到期
+        long tick = Math.max((deadline + tickMs - 1) / tickMs, lastTick + 1);
+        while (true) {
+            Bucket bucket = buckets[(int) (tick & mask)];
+            synchronized (bucket) {
+                // 推进线程可能刚处理过这个槽，此时挂上去要等一整圈，改挂到下一个刻度
+                if (bucket.processedTick < tick) {
+                    bucket.link(timeout, tick);
+                    break;
+                }
+                tick = bucket.processedTick + 1;
+            }
+        }
+    }
+
+    /**
+     * 取消尚未到期的超时，返回是否取消成功
+     */
+    public boolean cancel(Timeout timeout) {
+        Bucket bucket = timeout.bucket;
+        if (bucket == null) {
+            return false;
+        }
+        synchronized (bucket) {
+            if (timeout.bucket != bucket) {
+                return false;
+            }
+            bucket.unlink(timeout);
+            return true;
+        }
+    }
+
+    /**
+     * 推进到now，把到期的超时移出时间轮并加入expired，返回访问过的超时数（包括未到期、继续等待的）
+     * <p>
+     * 只能由单个线程调用。落后超过一圈时每个槽只访问一次。
+     */
+    public int expire(long now, List<? super Timeout> expired) {
+        long nowTick = now / tickMs;
+        long from = lastTick;
+        if (nowTick <= from) {
+            return 0;
+        }
+        long to = Math.min(nowTick, from + buckets.length);
+        int visited = 0;
+        for (long tick = from + 1; tick <= to; tick++) {
+            Bucket bucket = buckets[(int) (tick & mask)];
+            synchronized (bucket) {
+                Timeout timeout = bucket.head;
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    visited++;
+                    if (timeout.tick <= nowTick) {
+                        bucket.unlink(timeout);
+                        expired.add(timeout);
+                    }
+                    timeout = next;
+                }
+                // 落后超过一圈时，本槽对应的后续刻度也一并处理了
+                bucket.processedTick = nowTick - (nowTick - tick) % buckets.length;
+            }
+        }
+        lastTick = nowTick;
+        return visited;
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 时间轮中的一个超时，调用方继承它来携带自己的状态
+     */
+    public static class Timeout {
+        private volatile Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+        private long tick;
+        private volatile long deadline;
+
+        /**
+         * 是否在时间轮中等待到期
+         */
+        public boolean isScheduled() {
+            return bucket != null;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+
+    private final class Bucket {
+        private Timeout head;
+        private long processedTick;
+
+        Bucket(long processedTick) {
+            this.processedTick = processedTick;
+        }
+
+        void link(Timeout timeout, long tick) {
+            timeout.tick = tick;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+            timeout.bucket = this;
+            size.incrementAndGet();
+        }
+
+        void unlink(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            size.decrementAndGet();
+        }
+    }
+}
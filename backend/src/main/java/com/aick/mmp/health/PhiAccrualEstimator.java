@@ -0,0 +1,149 @@
+package com.aick.mmp.health;
+
+/**
+ * Phi累积失效检测（Hayashibara et al.）的心跳间隔统计
+ * <p>
+ * 记录最近若干次心跳间隔的均值和方差，把距上次心跳的时间换算成怀疑度phi = -log10(P(下一次心跳晚于此时))，
+ * 心跳越规律、间隔越稳定，同样的沉默时间对应的phi越高。
+ * 正态分布的尾部概率用logistic函数近似，因此phi达到阈值的时刻有解析的反函数，不需要轮询计算phi。
+ * 样本不足时用预期心跳间隔作为先验。非线程安全，由调用方按节点串行调用。
+ */
+public final class PhiAccrualEstimator {
+
+    private final Settings settings;
+    private final int[] intervals;
+    private int count;
+    private int next;
+    private double sum;
+    private double squaredSum;
+    private long lastHeartbeat = -1;
+
+    public PhiAccrualEstimator(Settings settings) {
+        this.settings = settings;
+        this.intervals = new int[settings.maxSamples];
+    }
+
+    /**
+     * 记录一次心跳；超过maxInterval的间隔（节点失联后恢复）不计入统计
+     */
+    public void heartbeat(long now) {
+        if (lastHeartbeat >= 0) {
+            long interval = now - lastHeartbeat;
+            if (interval >= 0 && interval <= settings.maxIntervalMs) {
+                add((int) interval);
+            }
+        }
+        lastHeartbeat = Math.max(lastHeartbeat, now);
+    }
+
+    public long getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+
+    /**
+     * phi达到阈值的时刻，即节点应被判定失联的时间，限制在[minTimeout, maxTimeout]内
+     */
+    public long deadline() {
+        double mean = mean() + settings.acceptablePauseMs;
+        double timeout = mean + settings.thresholdDeviations * standardDeviation();
+        timeout = Math.max(settings.minTimeoutMs, Math.min(settings.maxTimeoutMs, timeout));
+        return lastHeartbeat + (long) Math.ceil(timeout);
+    }
+
+    /**
+     * now时的怀疑度，尚未收到心跳时为0
+     */
+    public double phi(long now) {
+        if (lastHeartbeat < 0) {
+            return 0;
+        }
+        double y = (now - lastHeartbeat - mean() - settings.acceptablePauseMs) / standardDeviation();
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        // 两个分支数值上等价，分开写避免e很大或很小时的精度损失
+        return now - lastHeartbeat > mean() + settings.acceptablePauseMs
+                ? -Math.log10(e / (1 + e)) : -Math.log10(1 - 1 / (1 + e));
+    }
+
+    public double mean() {
+        return count == 0 ? settings.expectedIntervalMs : sum / count;
+    }
+
+    public double standardDeviation() {
+        double deviation = count < 2 ? settings.expectedIntervalMs / 4.0
+                : Math.sqrt(Math.max(0, squaredSum / count - (sum / count) * (sum / count)));
+        return Math.max(deviation, settings.minStandardDeviationMs);
+    }
+
+    public int getSampleCount() {
+        return count;
+    }
+
+    private void add(int interval) {
+        if (count == intervals.length) {
+            int evicted = intervals[next];
+            sum -= evicted;
+            squaredSum -= (double) evicted * evicted;
+        } else {
+            count++;
+        }
+        intervals[next] = interval;
+        next = (next + 1) % intervals.length;
+        sum += interval;
+        squaredSum += (double) interval * interval;
+    }
+
+    /**
+     * 检测参数，所有节点共用
+     */
+    public static final class Settings {
+        private final double expectedIntervalMs;
+        private final double minStandardDeviationMs;
+        private final double acceptablePauseMs;
+        private final int maxSamples;
+        private final long minTimeoutMs;
+        private final long maxTimeoutMs;
+        private final long maxIntervalMs;
+        /**
+         * phi达到阈值时距均值的标准差倍数，由阈值解出
+         */
+        private final double thresholdDeviations;
+
+        public Settings(double phiThreshold, double expectedIntervalMs, double minStandardDeviationMs,
+                        double acceptablePauseMs, int maxSamples, long minTimeoutMs, long maxTimeoutMs) {
+            if (phiThreshold <= 0 || expectedIntervalMs <= 0 || maxSamples <= 0 || minTimeoutMs > maxTimeoutMs) {
+                throw new IllegalArgumentException("Invalid phi accrual settings");
+            }
+            this.expectedIntervalMs = expectedIntervalMs;
+            this.minStandardDeviationMs = Math.max(1, minStandardDeviationMs);
+            this.acceptablePauseMs = acceptablePauseMs;
+            this.maxSamples = maxSamples;
+            this.minTimeoutMs = minTimeoutMs;
+            this.maxTimeoutMs = maxTimeoutMs;
+            this.maxIntervalMs = maxTimeoutMs;
+            this.thresholdDeviations = deviationsFor(phiThreshold);
+        }
+
+        /**
+         * 解y*(1.5976 + 0.070566*y^2) = ln((1 - p) / p)，p = 10^-phi；左边单调递增，用二分求解
+         */
+        private static double deviationsFor(double phi) {
+            double p = Math.pow(10, -phi);
+            double target = Math.log((1 - p) / p);
+            double low = 0;
+            double high = 100;
+            for (int i = 0; i < 100; i++) {
+                double y = (low + high) / 2;
+                if (y * (1.5976 + 0.070566 * y * y) < target) {
+                    low = y;
+                } else {
+                    high = y;
+                }
+            }
+            return (low + high) / 2;
+        }
+
+        public double getThresholdDeviations() {
+            return thresholdDeviations;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.aick.mmp.messaging;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 二进制格式的边缘节点心跳，字段全部为基本类型，编解码见{@link EdgeHeartbeatCodec}
+ */
+@Data
+public class EdgeHeartbeat {
+    private long nodeId;
+
+    /**
+     * 节点端单调递增的心跳序号，增量帧用它引用基准帧
+     */
+    private long sequence;
+
+    /**
+     * 节点生成心跳的时间（毫秒）
+     */
+    private long timestamp;
+
+    // 瞬时值，百分比
+    private double cpuUsage;
+    private double memoryUsage;
+    private double storageUsage;
+
+    // 网络指标，与NetworkMonitorService使用的键一致
+    private double latency;
+    private double packetLoss;
+    private double bandwidth;
+    private double jitter;
+
+    private int activeStreams;
+    private int cameraCount;
+
+    // 节点启动以来的累计计数
+    private long bytesSent;
+    private long bytesReceived;
+    private long framesProcessed;
+    private long packetsLost;
+
+    /**
+     * 转换为registerHeartbeat使用的指标Map
+     */
+    public Map<String, Object> toMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("cpuUsage", cpuUsage);
+        metrics.put("memoryUsage", memoryUsage);
+        metrics.put("storageUsage", storageUsage);
+        metrics.put("activeStreams", activeStreams);
+        metrics.put("cameraCount", cameraCount);
+        metrics.put("bytesSent", bytesSent);
+        metrics.put("bytesReceived", bytesReceived);
+        metrics.put("framesProcessed", framesProcessed);
+        metrics.put("packetsLost", packetsLost);
+        Map<String, Double> network = new HashMap<>();
+        network.put("latency", latency);
+        network.put("packetLoss", packetLoss);
+        network.put("bandwidth", bandwidth);
+        network.put("jitter", jitter);
+        metrics.put("network", network);
+        return metrics;
+    }
+}
@@ -0,0 +1,177 @@
+package com.aick.mmp.messaging;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * 边缘节点二进制心跳编解码
+ * <p>
+ * 帧格式（版本1，多字节定长字段为大端序）：
+ * <pre>
+ * magic      2B  0x48 0x42 ("HB")
+ * version    1B  1
+ * flags      1B  bit0=增量帧
+ * nodeId     varint
+ * sequence   varint
+ * 全量帧：timestamp varint
+ * 增量帧：baseSequence varint，timestamp zigzag varint（相对基准帧）
+ * cpuUsage, memoryUsage, storageUsage, latency, packetLoss, bandwidth, jitter  7 x double
+ * activeStreams, cameraCount  varint
+ * bytesSent, bytesReceived, framesProcessed, packetsLost
+ *            全量帧为varint，增量帧为相对基准帧的zigzag varint
+ * </pre>
+ * 增量帧的基准是服务端最近一次成功接收的帧；服务端没有对应的基准时拒绝，节点随后改发全量帧。
+ * 典型心跳的全量帧约90字节，增量帧约80字节，同样内容的JSON约270字节。
+ */
+public final class EdgeHeartbeatCodec {
+
+    public static final String CONTENT_TYPE = "application/x-mmp-heartbeat";
+    public static final int VERSION = 1;
+    /**
+     * 帧的最大长度，编码时的缓冲区大小
+     */
+    public static final int MAX_FRAME_BYTES = 4 + 10 * 10 + 8 * 7;
+
+    private static final byte MAGIC_0 = 'H';
+    private static final byte MAGIC_1 = 'B';
+    private static final int FLAG_DELTA = 0x01;
+
+    private EdgeHeartbeatCodec() {
+    }
+
+    /**
+     * 编码一帧心跳；base为空时写全量帧，否则写相对base的增量帧
+     */
+    public static void encode(EdgeHeartbeat heartbeat, EdgeHeartbeat base, ByteBuffer out) {
+        boolean delta = base != null;
+        out.put(MAGIC_0).put(MAGIC_1).put((byte) VERSION).put((byte) (delta ? FLAG_DELTA : 0));
+        putVarint(out, heartbeat.getNodeId());
+        putVarint(out, heartbeat.getSequence());
+        if (delta) {
+            putVarint(out, base.getSequence());
+            putZigzag(out, heartbeat.getTimestamp() - base.getTimestamp());
+        } else {
+            putVarint(out, heartbeat.getTimestamp());
+        }
+        out.putDouble(heartbeat.getCpuUsage());
+        out.putDouble(heartbeat.getMemoryUsage());
+        out.putDouble(heartbeat.getStorageUsage());
+        out.putDouble(heartbeat.getLatency());
+        out.putDouble(heartbeat.getPacketLoss());
+        out.putDouble(heartbeat.getBandwidth());
+        out.putDouble(heartbeat.getJitter());
+        putVarint(out, heartbeat.getActiveStreams());
+        putVarint(out, heartbeat.getCameraCount());
+        if (delta) {
+            putZigzag(out, heartbeat.getBytesSent() - base.getBytesSent());
+            putZigzag(out, heartbeat.getBytesReceived() - base.getBytesReceived());
+            putZigzag(out, heartbeat.getFramesProcessed() - base.getFramesProcessed());
+            putZigzag(out, heartbeat.getPacketsLost() - base.getPacketsLost());
+        } else {
+            putVarint(out, heartbeat.getBytesSent());
+            putVarint(out, heartbeat.getBytesReceived());
+            putVarint(out, heartbeat.getFramesProcessed());
+            putVarint(out, heartbeat.getPacketsLost());
+        }
+    }
+
+    /**
+     * 解码一帧心跳；增量帧需要的基准由baseLookup按节点id提供，没有基准或序号不符时返回null
+     *
+     * @throws IllegalArgumentException 帧格式错误或版本不支持
+     */
+    public static EdgeHeartbeat decode(ByteBuffer in, BaseLookup baseLookup) {
+        try {
+            boolean delta = (readHeader(in) & FLAG_DELTA) != 0;
+            EdgeHeartbeat heartbeat = new EdgeHeartbeat();
+            heartbeat.setNodeId(getVarint(in));
+            heartbeat.setSequence(getVarint(in));
+            EdgeHeartbeat base = null;
+            if (delta) {
+                long baseSequence = getVarint(in);
+                base = baseLookup.find(heartbeat.getNodeId());
+                if (base == null || base.getSequence() != baseSequence) {
+                    return null;
+                }
+                heartbeat.setTimestamp(base.getTimestamp() + getZigzag(in));
+            } else {
+                heartbeat.setTimestamp(getVarint(in));
+            }
+            heartbeat.setCpuUsage(in.getDouble());
+            heartbeat.setMemoryUsage(in.getDouble());
+            heartbeat.setStorageUsage(in.getDouble());
+            heartbeat.setLatency(in.getDouble());
+            heartbeat.setPacketLoss(in.getDouble());
+            heartbeat.setBandwidth(in.getDouble());
+            heartbeat.setJitter(in.getDouble());
+            heartbeat.setActiveStreams((int) getVarint(in));
+            heartbeat.setCameraCount((int) getVarint(in));
+            if (delta) {
+                heartbeat.setBytesSent(base.getBytesSent() + getZigzag(in));
+                heartbeat.setBytesReceived(base.getBytesReceived() + getZigzag(in));
+                heartbeat.setFramesProcessed(base.getFramesProcessed() + getZigzag(in));
+                heartbeat.setPacketsLost(base.getPacketsLost() + getZigzag(in));
+            } else {
+                heartbeat.setBytesSent(getVarint(in));
+                heartbeat.setBytesReceived(getVarint(in));
+                heartbeat.setFramesProcessed(getVarint(in));
+                heartbeat.setPacketsLost(getVarint(in));
+            }
+            return heartbeat;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated heartbeat frame");
+        }
+    }
+
+    private static int readHeader(ByteBuffer in) {
+        try {
+            if (in.get() != MAGIC_0 || in.get() != MAGIC_1) {
+                throw new IllegalArgumentException("Not a heartbeat frame");
+            }
+            int version = in.get() & 0xFF;
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported heartbeat version: " + version);
+            }
+            return in.get() & 0xFF;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated heartbeat frame");
+        }
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static void putZigzag(ByteBuffer out, long value) {
+        putVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in heartbeat frame");
+    }
+
+    private static long getZigzag(ByteBuffer in) {
+        long value = getVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 按节点id查找增量帧的基准
+     */
+    @FunctionalInterface
+    public interface BaseLookup {
+        EdgeHeartbeat find(long nodeId);
+    }
+}
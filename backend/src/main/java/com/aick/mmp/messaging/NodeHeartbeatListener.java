@@ -0,0 +1,188 @@
+package com.aick.mmp.messaging;
+
+import com.aick.mmp.dto.NodeHeartbeatMessage;
+import com.aick.mmp.exception.ServiceException;
+import com.aick.mmp.service.CdnNodeService;
+import com.aick.mmp.service.EdgeNodeService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点心跳批量消费
+ * <p>
+ * 每批消息按节点哈希分到固定数量的处理通道并行处理，同一节点的心跳总在同一通道内按顺序处理；
+ * 整批处理完才返回，下一批才会被拉取和提交位点，因此跨批次的顺序也得到保证。
+ * CDN心跳只更新最新状态，同一批内只处理每个节点的最后一条；边缘节点的网络指标需要趋势分析，逐条处理。
+ * 超过max-age的心跳（如区域故障恢复后积压的消息）直接丢弃，避免把早已失联的节点重新标记为在线。
+ */
+@Component
+@ConditionalOnProperty(prefix = "heartbeat.kafka", name = "enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class NodeHeartbeatListener {
+
+    private final EdgeNodeService edgeNodeService;
+    private final CdnNodeService cdnNodeService;
+
+    @Value("${heartbeat.kafka.lanes:8}")
+    private int lanes = 8;
+
+    @Value("${heartbeat.kafka.max-age:60000}")
+    private long maxAgeMs = 60000;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private ThreadPoolExecutor executor;
+
+    @Autowired
+    public NodeHeartbeatListener(EdgeNodeService edgeNodeService, CdnNodeService cdnNodeService) {
+        this.edgeNodeService = edgeNodeService;
+        this.cdnNodeService = cdnNodeService;
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public NodeHeartbeatListener(EdgeNodeService edgeNodeService, CdnNodeService cdnNodeService, int lanes,
+                                 long maxAgeMs) {
+        this(edgeNodeService, cdnNodeService);
+        this.lanes = lanes;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(lanes, lanes, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "heartbeat-lane-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @KafkaListener(id = "node-heartbeats", topics = "${heartbeat.kafka.topic:mmp-node-heartbeats}",
+            containerFactory = "heartbeatListenerContainerFactory")
+    public void onHeartbeats(List<ConsumerRecord<String, NodeHeartbeatMessage>> records) throws InterruptedException {
+        process(records);
+    }
+
+    /**
+     * 处理一批心跳，全部处理完后返回
+     */
+    public void process(List<ConsumerRecord<String, NodeHeartbeatMessage>> records) throws InterruptedException {
+        received.addAndGet(records.size());
+        batches.incrementAndGet();
+        long now = System.currentTimeMillis();
+
+        // CDN节点在本批中最后一条心跳的位置
+        Map<String, Integer> lastCdnIndex = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            NodeHeartbeatMessage message = records.get(i).value();
+            if (message != null && message.getNodeType() == NodeHeartbeatMessage.NodeType.CDN) {
+                lastCdnIndex.put(message.getNodeId(), i);
+            }
+        }
+
+        List<List<NodeHeartbeatMessage>> byLane = new ArrayList<>(Collections.nCopies(lanes, null));
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, NodeHeartbeatMessage> record = records.get(i);
+            NodeHeartbeatMessage message = record.value();
+            if (message == null || message.getNodeType() == null || message.getNodeId() == null) {
+                rejected.incrementAndGet();
+                continue;
+            }
+            long timestamp = message.getTimestamp() != null ? message.getTimestamp() : record.timestamp();
+            if (now - timestamp > maxAgeMs) {
+                expired.incrementAndGet();
+                continue;
+            }
+            if (message.getNodeType() == NodeHeartbeatMessage.NodeType.CDN
+                    && lastCdnIndex.get(message.getNodeId()) != i) {
+                coalesced.incrementAndGet();
+                continue;
+            }
+            int lane = Math.floorMod(message.partitionKey().hashCode(), lanes);
+            List<NodeHeartbeatMessage> messages = byLane.get(lane);
+            if (messages == null) {
+                messages = new ArrayList<>();
+                byLane.set(lane, messages);
+            }
+            messages.add(message);
+        }
+
+        List<Future<?>> futures = new ArrayList<>(lanes);
+        for (List<NodeHeartbeatMessage> messages : byLane) {
+            if (messages != null) {
+                futures.add(executor.submit(() -> messages.forEach(this::apply)));
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                log.error("Heartbeat lane failed", e.getCause());
+            }
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("batches", batches.get());
+        statistics.put("received", received.get());
+        statistics.put("processed", processed.get());
+        statistics.put("coalesced", coalesced.get());
+        statistics.put("expired", expired.get());
+        statistics.put("rejected", rejected.get());
+        return statistics;
+    }
+
+    private void apply(NodeHeartbeatMessage message) {
+        Map<String, Object> metrics = message.getMetrics() != null ? message.getMetrics() : new HashMap<>();
+        try {
+            if (message.getNodeType() == NodeHeartbeatMessage.NodeType.EDGE) {
+                edgeNodeService.registerHeartbeat(Long.valueOf(message.getNodeId()), metrics);
+            } else {
+                cdnNodeService.registerHeartbeat(message.getNodeId(), metrics);
+            }
+            processed.incrementAndGet();
+        } catch (ServiceException | NumberFormatException e) {
+            // 未注册或已删除的节点，重试也不会成功
+            rejected.incrementAndGet();
+            log.debug("Dropped heartbeat from {}: {}", message.partitionKey(), e.getMessage());
+        } catch (Exception e) {
+            rejected.incrementAndGet();
+            log.warn("Failed to process heartbeat from {}: {}", message.partitionKey(), e.getMessage());
+        }
+    }
+}
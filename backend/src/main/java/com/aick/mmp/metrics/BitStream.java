@@ -0,0 +1,103 @@
+package com.aick.mmp.metrics;
+
+import java.util.Arrays;
+
+/**
+ * 按位追加写入、从高位开始的位流，供{@link GorillaChunk}使用
+ */
+final class BitStream {
+
+    private long[] words;
+    private int size;
+
+    BitStream(int initialWords) {
+        this.words = new long[Math.max(1, initialWords)];
+    }
+
+    /**
+     * 写入value的低count位（1~64）
+     */
+    void write(long value, int count) {
+        if (count == 0) {
+            return;
+        }
+        ensureCapacity(size + count);
+        long bits = count == 64 ? value : value & ((1L << count) - 1);
+        int index = size >>> 6;
+        int free = 64 - (size & 63);
+        if (count <= free) {
+            words[index] |= bits << (free - count);
+        } else {
+            int spill = count - free;
+            words[index] |= bits >>> spill;
+            words[index + 1] |= bits << (64 - spill);
+        }
+        size += count;
+    }
+
+    void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * 写满后释放多余的容量
+     */
+    void trim() {
+        int used = (size + 63) >>> 6;
+        if (used < words.length) {
+            words = Arrays.copyOf(words, Math.max(1, used));
+        }
+    }
+
+    long sizeInBytes() {
+        return words.length * 8L;
+    }
+
+    Reader reader() {
+        return new Reader(words, size);
+    }
+
+    private void ensureCapacity(int bits) {
+        int required = (bits + 63) >>> 6;
+        if (required > words.length) {
+            words = Arrays.copyOf(words, Math.max(required, words.length * 2));
+        }
+    }
+
+    static final class Reader {
+        private final long[] words;
+        private final int limit;
+        private int position;
+
+        private Reader(long[] words, int limit) {
+            this.words = words;
+            this.limit = limit;
+        }
+
+        long read(int count) {
+            if (count == 0) {
+                return 0;
+            }
+            if (position + count > limit) {
+                throw new IllegalStateException("Read past the end of the bit stream");
+            }
+            int index = position >>> 6;
+            int offset = position & 63;
+            int free = 64 - offset;
+            long result;
+            if (count <= free) {
+                result = (words[index] << offset) >>> (64 - count);
+            } else {
+                int spill = count - free;
+                long high = words[index] & ((1L << free) - 1);
+                result = (high << spill) | (words[index + 1] >>> (64 - spill));
+            }
+            position += count;
+            return result;
+        }
+
+        boolean readBit() {
+            return read(1) != 0;
+        }
+    }
+}
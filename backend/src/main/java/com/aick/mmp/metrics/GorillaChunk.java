@@ -0,0 +1,199 @@
+package com.aick.mmp.metrics;
+
+/**
+ * 一段按Gorilla方式压缩的时间序列：时间戳存二阶差分，每列数值与同列上一个值按位异或后只存有效位
+ * <p>
+ * 所有列交错写在同一个位流中，每个点占用的位数随数据规律性变化，采样间隔稳定、数值变化小的序列
+ * 每个点只需几个字节。写满capacity个点后封存并释放多余容量。
+ */
+final class GorillaChunk {
+
+    private static final int INITIAL_WORDS = 16;
+
+    private final int columns;
+    private final int capacity;
+    private final BitStream stream = new BitStream(INITIAL_WORDS);
+    private final long[] previousBits;
+    private final int[] previousLeading;
+    private final int[] previousTrailing;
+    private int count;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private long lastDelta;
+
+    GorillaChunk(int columns, int capacity) {
+        this.columns = columns;
+        this.capacity = capacity;
+        this.previousBits = new long[columns];
+        this.previousLeading = new int[columns];
+        this.previousTrailing = new int[columns];
+    }
+
+    /**
+     * 单个点的最大编码位数：时间戳最多68位，每列数值最多77位
+     */
+    static long maxBytes(int columns, int capacity) {
+        return ((68L + 77L * columns) * capacity + 63) / 64 * 8;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    int size() {
+        return count;
+    }
+
+    long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    long sizeInBytes() {
+        return stream.sizeInBytes();
+    }
+
+    void seal() {
+        stream.trim();
+    }
+
+    /**
+     * 追加一个点，时间戳必须大于上一个点
+     */
+    void append(long timestamp, double[] values) {
+        if (count == 0) {
+            firstTimestamp = timestamp;
+            stream.write(timestamp, 64);
+        } else {
+            long delta = timestamp - lastTimestamp;
+            writeDeltaOfDelta(delta - lastDelta);
+            lastDelta = delta;
+        }
+        lastTimestamp = timestamp;
+        for (int column = 0; column < columns; column++) {
+            long bits = Double.doubleToRawLongBits(values[column]);
+            if (count == 0) {
+                stream.write(bits, 64);
+                previousLeading[column] = -1;
+            } else {
+                writeXor(column, bits ^ previousBits[column]);
+            }
+            previousBits[column] = bits;
+        }
+        count++;
+    }
+
+    /**
+     * 按时间顺序回放[from, to]范围内的点，values数组在各次回调间复用
+     */
+    void scan(long from, long to, PointConsumer consumer) {
+        BitStream.Reader reader = stream.reader();
+        double[] values = new double[columns];
+        long[] bits = new long[columns];
+        int[] leading = new int[columns];
+        int[] trailing = new int[columns];
+        long timestamp = 0;
+        long delta = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                timestamp = reader.read(64);
+            } else {
+                delta += readDeltaOfDelta(reader);
+                timestamp += delta;
+            }
+            for (int column = 0; column < columns; column++) {
+                if (i == 0) {
+                    bits[column] = reader.read(64);
+                } else if (reader.readBit()) {
+                    if (reader.readBit()) {
+                        leading[column] = (int) reader.read(5);
+                        int length = (int) reader.read(6);
+                        if (length == 0) {
+                            length = 64;
+                        }
+                        trailing[column] = 64 - leading[column] - length;
+                    }
+                    int length = 64 - leading[column] - trailing[column];
+                    bits[column] ^= reader.read(length) << trailing[column];
+                }
+                values[column] = Double.longBitsToDouble(bits[column]);
+            }
+            if (timestamp > to) {
+                return;
+            }
+            if (timestamp >= from) {
+                consumer.accept(timestamp, values);
+            }
+        }
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            stream.write(0, 1);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            stream.write(0b10, 2);
+            stream.write(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            stream.write(0b110, 3);
+            stream.write(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            stream.write(0b1110, 4);
+            stream.write(deltaOfDelta, 12);
+        } else {
+            stream.write(0b1111, 4);
+            stream.write(deltaOfDelta, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitStream.Reader reader) {
+        if (!reader.readBit()) {
+            return 0;
+        }
+        if (!reader.readBit()) {
+            return signExtend(reader.read(7), 7);
+        }
+        if (!reader.readBit()) {
+            return signExtend(reader.read(9), 9);
+        }
+        if (!reader.readBit()) {
+            return signExtend(reader.read(12), 12);
+        }
+        return reader.read(64);
+    }
+
+    private static long signExtend(long value, int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private void writeXor(int column, long xor) {
+        if (xor == 0) {
+            stream.write(0, 1);
+            return;
+        }
+        stream.write(1, 1);
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading[column] >= 0 && leading >= previousLeading[column]
+                && trailing >= previousTrailing[column]) {
+            // 有效位落在上一个窗口内，沿用窗口
+            stream.write(0, 1);
+            stream.write(xor >>> previousTrailing[column], 64 - previousLeading[column] - previousTrailing[column]);
+            return;
+        }
+        int length = 64 - leading - trailing;
+        stream.write(1, 1);
+        stream.write(leading, 5);
+        stream.write(length == 64 ? 0 : length, 6);
+        stream.write(xor >>> trailing, length);
+        previousLeading[column] = leading;
+        previousTrailing[column] = trailing;
+    }
+
+    @FunctionalInterface
+    interface PointConsumer {
+        void accept(long timestamp, double[] values);
+    }
+}
@@ -0,0 +1,16 @@
+package com.aick.mmp.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 查询结果中的一个点；原始精度下min、max、avg相同，降采样精度下为该时间桶内的统计值
+ */
+@Getter
+@AllArgsConstructor
+public class MetricPoint {
+    private final long timestamp;
+    private final double min;
+    private final double max;
+    private final double avg;
+}
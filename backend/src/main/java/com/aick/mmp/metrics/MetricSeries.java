@@ -0,0 +1,214 @@
+package com.aick.mmp.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个指标的时间序列，分原始、分钟、小时三级存储
+ * <p>
+ * 原始点写入原始级；同时累加当前分钟桶和小时桶的最小、最大、总和，桶结束时把(min, max, avg)写入对应级。
+ * 每级是一组压缩块组成的环，超过保留时间或块数上限的最旧块被整块丢弃，因此单个序列的内存有固定上限。
+ * 非线程安全，由{@link TimeSeriesStore}按序列加锁。
+ */
+final class MetricSeries {
+
+    private final Tier raw;
+    private final Tier minute;
+    private final Tier hour;
+    private final Bucket minuteBucket = new Bucket(Resolution.MINUTE.getBucketMillis());
+    private final Bucket hourBucket = new Bucket(Resolution.HOUR.getBucketMillis());
+    private final double[] single = new double[1];
+    private long lastTimestamp = Long.MIN_VALUE;
+    private long samples;
+
+    MetricSeries(TierSpec rawSpec, TierSpec minuteSpec, TierSpec hourSpec) {
+        this.raw = new Tier(rawSpec);
+        this.minute = new Tier(minuteSpec);
+        this.hour = new Tier(hourSpec);
+    }
+
+    /**
+     * 追加一个原始点，时间戳不大于上一个点时丢弃并返回false
+     */
+    boolean append(long timestamp, double value) {
+        if (timestamp <= lastTimestamp || Double.isNaN(value)) {
+            return false;
+        }
+        single[0] = value;
+        raw.append(timestamp, single);
+        minuteBucket.add(timestamp, value, minute);
+        hourBucket.add(timestamp, value, hour);
+        lastTimestamp = timestamp;
+        samples++;
+        return true;
+    }
+
+    List<MetricPoint> query(long from, long to, Resolution resolution) {
+        List<MetricPoint> points = new ArrayList<>();
+        switch (resolution) {
+            case RAW:
+                raw.scan(from, to, (timestamp, values) ->
+                        points.add(new MetricPoint(timestamp, values[0], values[0], values[0])));
+                break;
+            case MINUTE:
+                minute.scan(from, to, (timestamp, values) ->
+                        points.add(new MetricPoint(timestamp, values[0], values[1], values[2])));
+                minuteBucket.addOpenPoint(from, to, points);
+                break;
+            default:
+                hour.scan(from, to, (timestamp, values) ->
+                        points.add(new MetricPoint(timestamp, values[0], values[1], values[2])));
+                hourBucket.addOpenPoint(from, to, points);
+                break;
+        }
+        return points;
+    }
+
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    long getSamples() {
+        return samples;
+    }
+
+    long sizeInBytes() {
+        return raw.sizeInBytes() + minute.sizeInBytes() + hour.sizeInBytes();
+    }
+
+    long rawSizeInBytes() {
+        return raw.sizeInBytes();
+    }
+
+    int rawSize() {
+        return raw.size();
+    }
+
+    /**
+     * 一级存储的参数：每点列数、每块点数、最多保留的点数和保留时间
+     */
+    static final class TierSpec {
+        private final int columns;
+        private final int chunkCapacity;
+        private final int maxChunks;
+        private final long retentionMillis;
+
+        TierSpec(int columns, int chunkCapacity, int maxSamples, long retentionMillis) {
+            this.columns = columns;
+            this.chunkCapacity = chunkCapacity;
+            this.maxChunks = Math.max(2, (maxSamples + chunkCapacity - 1) / chunkCapacity);
+            this.retentionMillis = retentionMillis;
+        }
+
+        /**
+         * 该级最坏情况下占用的字节数
+         */
+        long maxBytes() {
+            return maxChunks * GorillaChunk.maxBytes(columns, chunkCapacity);
+        }
+    }
+
+    private static final class Tier {
+        private final TierSpec spec;
+        private final ArrayDeque<GorillaChunk> sealed = new ArrayDeque<>();
+        private GorillaChunk open;
+        private long sealedBytes;
+        private int sealedSamples;
+
+        Tier(TierSpec spec) {
+            this.spec = spec;
+        }
+
+        void append(long timestamp, double[] values) {
+            if (open == null || open.isFull()) {
+                if (open != null) {
+                    open.seal();
+                    sealed.addLast(open);
+                    sealedBytes += open.sizeInBytes();
+                    sealedSamples += open.size();
+                }
+                open = new GorillaChunk(spec.columns, spec.chunkCapacity);
+                // 整块淘汰：块数达到上限，或最旧块的最后一个点已超出保留时间
+                while (!sealed.isEmpty() && (sealed.size() + 1 > spec.maxChunks
+                        || sealed.peekFirst().getLastTimestamp() < timestamp - spec.retentionMillis)) {
+                    GorillaChunk evicted = sealed.pollFirst();
+                    sealedBytes -= evicted.sizeInBytes();
+                    sealedSamples -= evicted.size();
+                }
+            }
+            open.append(timestamp, values);
+        }
+
+        void scan(long from, long to, GorillaChunk.PointConsumer consumer) {
+            for (GorillaChunk chunk : sealed) {
+                if (chunk.getLastTimestamp() >= from && chunk.getFirstTimestamp() <= to) {
+                    chunk.scan(from, to, consumer);
+                }
+            }
+            if (open != null && open.size() > 0 && open.getLastTimestamp() >= from && open.getFirstTimestamp() <= to) {
+                open.scan(from, to, consumer);
+            }
+        }
+
+        long sizeInBytes() {
+            return sealedBytes + (open != null ? open.sizeInBytes() : 0);
+        }
+
+        int size() {
+            return sealedSamples + (open != null ? open.size() : 0);
+        }
+    }
+
+    /**
+     * 正在累加的降采样桶，桶结束时以桶的起始时间写入下一级
+     */
+    private static final class Bucket {
+        private static final long PRECISION_MASK = 0xFFFFFFFF_00000000L;
+        private final long millis;
+        private final double[] values = new double[3];
+        private long start = Long.MIN_VALUE;
+        private double min;
+        private double max;
+        private double sum;
+        private int count;
+
+        Bucket(long millis) {
+            this.millis = millis;
+        }
+
+        void add(long timestamp, double value, Tier tier) {
+            long bucketStart = timestamp - Math.floorMod(timestamp, millis);
+            if (bucketStart != start) {
+                if (count > 0) {
+                    values[0] = reducePrecision(min);
+                    values[1] = reducePrecision(max);
+                    values[2] = reducePrecision(sum / count);
+                    tier.append(start, values);
+                }
+                start = bucketStart;
+                min = value;
+                max = value;
+                sum = 0;
+                count = 0;
+            }
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+        }
+
+        /**
+         * 降采样值只保留约6位有效数字，清零的低位让异或结果的有效位大幅减少
+         */
+        private static double reducePrecision(double value) {
+            return Double.longBitsToDouble(Double.doubleToRawLongBits(value) & PRECISION_MASK);
+        }
+
+        void addOpenPoint(long from, long to, List<MetricPoint> points) {
+            if (count > 0 && start >= from && start <= to) {
+                points.add(new MetricPoint(start, min, max, sum / count));
+            }
+        }
+    }
+}
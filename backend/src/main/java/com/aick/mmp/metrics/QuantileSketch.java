@@ -0,0 +1,116 @@
+package com.aick.mmp.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 对数分桶的分位数草图（DDSketch方式），分位数的相对误差不超过布局给定的精度
+ * <p>
+ * 写入只是一次原子自增，可以并发写入；布局相同的草图按桶相加或相减即可合并或扣除：
+ * 滑动窗口的样本同时写入时间片草图和整个窗口的草图，时间片过期时把该片的计数从窗口草图中扣除。
+ */
+public final class QuantileSketch {
+
+    private final Layout layout;
+    private final AtomicIntegerArray counts;
+
+    public QuantileSketch(Layout layout) {
+        this.layout = layout;
+        this.counts = new AtomicIntegerArray(layout.bins);
+    }
+
+    public void add(double value) {
+        counts.incrementAndGet(layout.index(value));
+    }
+
+    void increment(int index) {
+        counts.incrementAndGet(index);
+    }
+
+    Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * 清空本草图，并从target中扣除被清空的计数；清空期间并发写入的样本要么同时保留在两者中，要么同时被扣除
+     */
+    public void drainFrom(QuantileSketch target) {
+        for (int i = 0; i < counts.length(); i++) {
+            if (counts.get(i) != 0) {
+                int count = counts.getAndSet(i, 0);
+                target.counts.addAndGet(i, -count);
+            }
+        }
+    }
+
+    /**
+     * 一次扫描计算多个分位数（qs需升序，取值0~1），没有样本时返回NaN
+     */
+    public double[] quantiles(double... qs) {
+        int[] snapshot = new int[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = Math.max(0, counts.get(i));
+            total += snapshot[i];
+        }
+        double[] values = new double[qs.length];
+        if (total == 0) {
+            Arrays.fill(values, Double.NaN);
+            return values;
+        }
+        int next = 0;
+        long seen = 0;
+        for (int i = 0; i < snapshot.length && next < qs.length; i++) {
+            seen += snapshot[i];
+            while (next < qs.length && seen >= Math.max(1, (long) Math.ceil(qs[next] * total))) {
+                values[next++] = layout.value(i);
+            }
+        }
+        while (next < qs.length) {
+            values[next++] = layout.value(snapshot.length - 1);
+        }
+        return values;
+    }
+
+    /**
+     * 分桶布局：[min, max]按比例gamma分桶，小于min的归入第0桶（视为0），大于max的归入最后一桶
+     */
+    public static final class Layout {
+        private final double min;
+        private final double max;
+        private final double gamma;
+        private final double logGamma;
+        private final int bins;
+
+        public Layout(double min, double max, double relativeAccuracy) {
+            this.min = min;
+            this.max = max;
+            this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+            this.logGamma = Math.log(gamma);
+            this.bins = (int) Math.ceil(Math.log(max / min) / logGamma) + 2;
+        }
+
+        int index(double value) {
+            if (!(value >= min)) {
+                return 0;
+            }
+            if (value >= max) {
+                return bins - 1;
+            }
+            return Math.min(bins - 2, 1 + (int) (Math.log(value / min) / logGamma));
+        }
+
+        /**
+         * 第i桶的代表值，取桶上下界的调和中点，到上下界的相对误差都恰好等于精度
+         */
+        double value(int index) {
+            if (index == 0) {
+                return 0;
+            }
+            if (index == bins - 1) {
+                return max;
+            }
+            return min * Math.pow(gamma, index - 1) * 2 * gamma / (1 + gamma);
+        }
+    }
+}
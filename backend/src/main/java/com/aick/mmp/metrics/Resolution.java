@@ -0,0 +1,20 @@
+package com.aick.mmp.metrics;
+
+/**
+ * 时间序列的存储精度
+ */
+public enum Resolution {
+    RAW(0),
+    MINUTE(60_000L),
+    HOUR(3_600_000L);
+
+    private final long bucketMillis;
+
+    Resolution(long bucketMillis) {
+        this.bucketMillis = bucketMillis;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+}
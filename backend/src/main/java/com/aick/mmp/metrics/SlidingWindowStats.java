@@ -0,0 +1,157 @@
+package com.aick.mmp.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个指标的滑动窗口统计：EWMA、窗口内分位数和趋势斜率
+ * <p>
+ * 窗口由固定数量的时间片组成，每个时间片有一个{@link QuantileSketch}和总和、计数，样本同时计入整个窗口的草图；
+ * 时间片过期后由第一个写入者（或快照）通过CAS接管，清空该片并从窗口草图中扣除它的计数。
+ * 写入是几次原子操作，快照扫描一次窗口草图，开销与历史样本数无关，全程无锁。
+ * 时间片被接管的瞬间并发写入的少量样本可能丢失或计入新的时间片，对统计结果的影响可以忽略。
+ */
+public final class SlidingWindowStats {
+
+    private final Slice[] slices;
+    private final long sliceMillis;
+    private final double ewmaAlpha;
+    private final QuantileSketch window;
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+    private volatile long lastUpdate;
+
+    public SlidingWindowStats(QuantileSketch.Layout layout, int slices, long sliceMillis, double ewmaAlpha) {
+        this.window = new QuantileSketch(layout);
+        this.sliceMillis = sliceMillis;
+        this.ewmaAlpha = ewmaAlpha;
+        this.slices = new Slice[slices];
+        for (int i = 0; i < slices; i++) {
+            this.slices[i] = new Slice(layout);
+        }
+    }
+
+    public void add(long now, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        updateEwma(value);
+        long epoch = now / sliceMillis;
+        Slice slice = slices[(int) (epoch % slices.length)];
+        long current = slice.epoch.get();
+        if (current != epoch) {
+            if (current > epoch) {
+                // 迟到的样本所在时间片已被复用，只计入EWMA
+                return;
+            }
+            if (slice.epoch.compareAndSet(current, epoch)) {
+                slice.drain();
+            }
+        }
+        // 先写时间片再写窗口草图，被并发清空的样本在两处同时抵消
+        int index = window.getLayout().index(value);
+        slice.sketch.increment(index);
+        window.increment(index);
+        slice.sum.add(value);
+        slice.count.increment();
+        lastUpdate = now;
+    }
+
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    public Snapshot snapshot(long now) {
+        long nowEpoch = now / sliceMillis;
+        long total = 0;
+        double sum = 0;
+        // 以各时间片的均值对时间（分钟）做最小二乘拟合
+        double sx = 0;
+        double sy = 0;
+        double sxx = 0;
+        double sxy = 0;
+        int points = 0;
+        for (Slice slice : slices) {
+            long epoch = slice.epoch.get();
+            if (epoch > nowEpoch) {
+                continue;
+            }
+            if (epoch <= nowEpoch - slices.length) {
+                // 长时间没有写入时，过期的时间片由快照清除
+                if (epoch >= 0 && slice.epoch.compareAndSet(epoch, -1)) {
+                    slice.drain();
+                }
+                continue;
+            }
+            long count = slice.count.sum();
+            if (count == 0) {
+                continue;
+            }
+            double sliceSum = slice.sum.sum();
+            total += count;
+            sum += sliceSum;
+            double x = (epoch - nowEpoch) * (double) sliceMillis / 60_000;
+            double y = sliceSum / count;
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+            points++;
+        }
+        double slope = 0;
+        double denominator = points * sxx - sx * sx;
+        if (points >= 2 && denominator != 0) {
+            slope = (points * sxy - sx * sy) / denominator;
+        }
+        double[] quantiles = total == 0 ? new double[]{Double.NaN, Double.NaN, Double.NaN}
+                : window.quantiles(0.50, 0.95, 0.99);
+        return new Snapshot(total, total == 0 ? Double.NaN : sum / total,
+                Double.longBitsToDouble(ewmaBits.get()), quantiles[0], quantiles[1], quantiles[2], slope);
+    }
+
+    private void updateEwma(double value) {
+        while (true) {
+            long bits = ewmaBits.get();
+            double previous = Double.longBitsToDouble(bits);
+            double next = Double.isNaN(previous) ? value : previous + ewmaAlpha * (value - previous);
+            if (ewmaBits.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    private final class Slice {
+        private final AtomicLong epoch = new AtomicLong(-1);
+        private final QuantileSketch sketch;
+        private final DoubleAdder sum = new DoubleAdder();
+        private final LongAdder count = new LongAdder();
+
+        Slice(QuantileSketch.Layout layout) {
+            this.sketch = new QuantileSketch(layout);
+        }
+
+        void drain() {
+            sketch.drainFrom(window);
+            sum.reset();
+            count.reset();
+        }
+    }
+
+    /**
+     * 窗口统计快照；slopePerMinute为各时间片均值的线性趋势（每分钟变化量）
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Snapshot {
+        private final long count;
+        private final double mean;
+        private final double ewma;
+        private final double p50;
+        private final double p95;
+        private final double p99;
+        private final double slopePerMinute;
+    }
+}
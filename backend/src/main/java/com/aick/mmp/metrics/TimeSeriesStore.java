@@ -0,0 +1,215 @@
+package com.aick.mmp.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的节点指标时间序列存储
+ * <p>
+ * 每个实体（如"edge:12"）的每个数值指标是一条{@link MetricSeries}，嵌套的指标Map展开为"network.latency"这样的名称。
+ * 原始点保留raw-retention，分钟级和小时级的(min, max, avg)分别保留minute-retention和hour-retention；
+ * 每级的块数有上限，单条序列的内存上限由{@link #getBoundBytesPerSeries()}给出，每个实体的序列数也有上限。
+ * 长时间没有新数据的实体由定时任务清理。
+ */
+@Component
+@Slf4j
+public class TimeSeriesStore {
+
+    private static final int RAW_CHUNK_SAMPLES = 120;
+    private static final int MINUTE_CHUNK_SAMPLES = 60;
+    private static final int HOUR_CHUNK_SAMPLES = 24;
+    private static final int AGGREGATE_COLUMNS = 3;
+
+    @Value("${metrics.history.raw-retention:3600000}")
+    private long rawRetentionMs = 3600000;
+
+    /**
+     * 原始级最多保留的点数，按5秒一次心跳覆盖raw-retention
+     */
+    @Value("${metrics.history.raw-max-samples:720}")
+    private int rawMaxSamples = 720;
+
+    @Value("${metrics.history.minute-retention:86400000}")
+    private long minuteRetentionMs = 86400000;
+
+    @Value("${metrics.history.hour-retention:2592000000}")
+    private long hourRetentionMs = 2592000000L;
+
+    @Value("${metrics.history.max-series-per-entity:64}")
+    private int maxSeriesPerEntity = 64;
+
+    private final Map<String, Map<String, MetricSeries>> entities = new ConcurrentHashMap<>();
+    private final AtomicLong rejectedSamples = new AtomicLong();
+    private final AtomicLong rejectedSeries = new AtomicLong();
+    private MetricSeries.TierSpec rawSpec;
+    private MetricSeries.TierSpec minuteSpec;
+    private MetricSeries.TierSpec hourSpec;
+
+    public TimeSeriesStore() {
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public TimeSeriesStore(long rawRetentionMs, int rawMaxSamples, long minuteRetentionMs, long hourRetentionMs,
+                           int maxSeriesPerEntity) {
+        this.rawRetentionMs = rawRetentionMs;
+        this.rawMaxSamples = rawMaxSamples;
+        this.minuteRetentionMs = minuteRetentionMs;
+        this.hourRetentionMs = hourRetentionMs;
+        this.maxSeriesPerEntity = maxSeriesPerEntity;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        rawSpec = new MetricSeries.TierSpec(1, RAW_CHUNK_SAMPLES, rawMaxSamples, rawRetentionMs);
+        minuteSpec = new MetricSeries.TierSpec(AGGREGATE_COLUMNS, MINUTE_CHUNK_SAMPLES,
+                (int) (minuteRetentionMs / Resolution.MINUTE.getBucketMillis()), minuteRetentionMs);
+        hourSpec = new MetricSeries.TierSpec(AGGREGATE_COLUMNS, HOUR_CHUNK_SAMPLES,
+                (int) (hourRetentionMs / Resolution.HOUR.getBucketMillis()), hourRetentionMs);
+    }
+
+    /**
+     * 记录一个实体在某一时刻的全部数值指标，非数值的指标被忽略
+     */
+    public void record(String entity, Map<String, ?> metrics, long timestamp) {
+        Map<String, MetricSeries> series = entities.computeIfAbsent(entity, key -> new ConcurrentHashMap<>());
+        record(series, "", metrics, timestamp);
+    }
+
+    /**
+     * 查询一条序列，resolution为空时按时间范围选择能覆盖该范围的最高精度
+     */
+    public List<MetricPoint> query(String entity, String metric, long from, long to, Resolution resolution) {
+        Map<String, MetricSeries> series = entities.get(entity);
+        MetricSeries metricSeries = series != null ? series.get(metric) : null;
+        if (metricSeries == null) {
+            return Collections.emptyList();
+        }
+        synchronized (metricSeries) {
+            return metricSeries.query(from, to,
+                    resolution != null ? resolution : chooseResolution(from, metricSeries.getLastTimestamp()));
+        }
+    }
+
+    public Set<String> getMetricNames(String entity) {
+        Map<String, MetricSeries> series = entities.get(entity);
+        return series != null ? new TreeSet<>(series.keySet()) : Collections.emptySet();
+    }
+
+    public void remove(String entity) {
+        entities.remove(entity);
+    }
+
+    /**
+     * 单条序列最坏情况下的内存上限（字节）
+     */
+    public long getBoundBytesPerSeries() {
+        return rawSpec.maxBytes() + minuteSpec.maxBytes() + hourSpec.maxBytes();
+    }
+
+    /**
+     * 清理在最长保留时间内都没有新数据的实体
+     */
+    @Scheduled(fixedDelayString = "${metrics.history.eviction-interval:600000}")
+    public void evictIdle() {
+        long threshold = System.currentTimeMillis() - hourRetentionMs;
+        List<String> idle = new ArrayList<>();
+        for (Map.Entry<String, Map<String, MetricSeries>> entry : entities.entrySet()) {
+            long last = Long.MIN_VALUE;
+            for (MetricSeries series : entry.getValue().values()) {
+                synchronized (series) {
+                    last = Math.max(last, series.getLastTimestamp());
+                }
+            }
+            if (last < threshold) {
+                idle.add(entry.getKey());
+            }
+        }
+        idle.forEach(entities::remove);
+        if (!idle.isEmpty()) {
+            log.info("Evicted metric history of {} idle entities", idle.size());
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        long seriesCount = 0;
+        long bytes = 0;
+        long maxBytes = 0;
+        long samples = 0;
+        long rawBytes = 0;
+        long rawSamples = 0;
+        for (Map<String, MetricSeries> series : entities.values()) {
+            for (MetricSeries metricSeries : series.values()) {
+                synchronized (metricSeries) {
+                    long size = metricSeries.sizeInBytes();
+                    seriesCount++;
+                    bytes += size;
+                    maxBytes = Math.max(maxBytes, size);
+                    samples += metricSeries.getSamples();
+                    rawBytes += metricSeries.rawSizeInBytes();
+                    rawSamples += metricSeries.rawSize();
+                }
+            }
+        }
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("entities", entities.size());
+        statistics.put("series", seriesCount);
+        statistics.put("samplesRecorded", samples);
+        statistics.put("bytes", bytes);
+        statistics.put("averageBytesPerSeries", seriesCount == 0 ? 0 : bytes / seriesCount);
+        statistics.put("maxBytesPerSeries", maxBytes);
+        statistics.put("boundBytesPerSeries", getBoundBytesPerSeries());
+        statistics.put("rawBytesPerSample", rawSamples == 0 ? 0 : (double) rawBytes / rawSamples);
+        statistics.put("rejectedSamples", rejectedSamples.get());
+        statistics.put("rejectedSeries", rejectedSeries.get());
+        return statistics;
+    }
+
+    private Resolution chooseResolution(long from, long lastTimestamp) {
+        long age = lastTimestamp - from;
+        if (age <= rawRetentionMs) {
+            return Resolution.RAW;
+        }
+        return age <= minuteRetentionMs ? Resolution.MINUTE : Resolution.HOUR;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void record(Map<String, MetricSeries> series, String prefix, Map<String, ?> metrics, long timestamp) {
+        for (Map.Entry<String, ?> entry : metrics.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                record(series, prefix + entry.getKey() + ".", (Map<String, ?>) value, timestamp);
+            } else if (value instanceof Number) {
+                MetricSeries metricSeries = series.get(prefix + entry.getKey());
+                if (metricSeries == null) {
+                    if (series.size() >= maxSeriesPerEntity) {
+                        rejectedSeries.incrementAndGet();
+                        continue;
+                    }
+                    metricSeries = series.computeIfAbsent(prefix + entry.getKey(),
+                            key -> new MetricSeries(rawSpec, minuteSpec, hourSpec));
+                }
+                synchronized (metricSeries) {
+                    if (!metricSeries.append(timestamp, ((Number) value).doubleValue())) {
+                        rejectedSamples.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -30,6 +30,12 @@ public class Camera {
     @Column(name = "edge_node_id")
     private Long edgeNodeId;
 
+    /**
+     * 原边缘节点失联后摄像头被转移到其他节点时记录原节点，迁回或手动指定节点后清空
+     */
+    @Column(name = "failover_from_edge_node_id")
+    private Long failoverFromEdgeNodeId;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private Protocol protocol;
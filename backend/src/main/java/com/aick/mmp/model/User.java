@@ -1,9 +1,12 @@
 package com.aick.mmp.model;
 
+import com.aick.mmp.config.security.UserTokenRevocationListener;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -13,6 +16,7 @@ import java.util.Set;
 
 @Entity
 @Table(name = "users")
+@EntityListeners(UserTokenRevocationListener.class)
 @Data
 @Builder
 @NoArgsConstructor
@@ -65,6 +69,14 @@ public class User {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    /**
+     * 从数据库加载时的角色，由UserTokenRevocationListener维护，用于识别角色变更
+     */
+    @Transient
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private UserRole loadedRole;
+
     public enum UserRole {
         ADMIN, OPERATOR, VIEWER
     }
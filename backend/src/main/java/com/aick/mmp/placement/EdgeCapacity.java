@@ -0,0 +1,102 @@
+package com.aick.mmp.placement;
+
+/**
+ * 边缘节点在一次放置计算中的容量：摄像头数、CPU（%）和上行带宽（kbps）的上限与已用量
+ * <p>
+ * 每放置一个摄像头，摄像头数加一，CPU按cpuPerCamera、带宽按摄像头码率增加；
+ * 带宽上限为正无穷时表示节点没有上报链路容量和测得带宽，带宽不参与判断。非线程安全。
+ */
+public final class EdgeCapacity {
+
+    private final long id;
+    private final String location;
+    private final int maxCameras;
+    private final double cpuLimit;
+    private final double cpuPerCamera;
+    private final double bandwidthLimitKbps;
+    private int cameras;
+    private double cpu;
+    private double bandwidthKbps;
+    private int placed;
+
+    /**
+     * 每次放置后加一，堆中版本不一致的条目已经过期
+     */
+    int version;
+
+    public EdgeCapacity(long id, String location, int maxCameras, int cameras, double cpuLimit, double cpu,
+                        double cpuPerCamera, double bandwidthLimitKbps, double bandwidthKbps) {
+        this.id = id;
+        this.location = location;
+        this.maxCameras = maxCameras;
+        this.cameras = cameras;
+        this.cpuLimit = cpuLimit;
+        this.cpu = cpu;
+        this.cpuPerCamera = cpuPerCamera;
+        this.bandwidthLimitKbps = bandwidthLimitKbps;
+        this.bandwidthKbps = bandwidthKbps;
+    }
+
+    /**
+     * 放置一个码率为kbps的摄像头后各项资源都不超过上限
+     */
+    public boolean fits(double kbps) {
+        return cameras < maxCameras
+                && cpu + cpuPerCamera <= cpuLimit
+                && bandwidthKbps + kbps <= bandwidthLimitKbps;
+    }
+
+    /**
+     * 剩余比例最小的一项资源的剩余比例，0表示至少一项已满
+     */
+    public double headroom() {
+        double headroom = Math.min(1 - cameras / (double) maxCameras, 1 - cpu / cpuLimit);
+        if (!Double.isInfinite(bandwidthLimitKbps)) {
+            headroom = Math.min(headroom, bandwidthLimitKbps > 0 ? 1 - bandwidthKbps / bandwidthLimitKbps : 0);
+        }
+        return Math.max(0, headroom);
+    }
+
+    void place(double kbps) {
+        cameras++;
+        cpu += cpuPerCamera;
+        bandwidthKbps += kbps;
+        placed++;
+        version++;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public int getCameras() {
+        return cameras;
+    }
+
+    public int getMaxCameras() {
+        return maxCameras;
+    }
+
+    public double getCpu() {
+        return cpu;
+    }
+
+    public double getBandwidthKbps() {
+        return bandwidthKbps;
+    }
+
+    public double getBandwidthLimitKbps() {
+        return bandwidthLimitKbps;
+    }
+
+    /**
+     * 本次计算放置到该节点的摄像头数
+     */
+    public int getPlaced() {
+        return placed;
+    }
+}
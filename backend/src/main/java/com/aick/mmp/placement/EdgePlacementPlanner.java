@@ -0,0 +1,151 @@
+package com.aick.mmp.placement;
+
+import com.aick.mmp.model.Camera;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 摄像头到边缘节点的批量放置
+ * <p>
+ * 摄像头按码率从大到小依次放置，每个摄像头放到同一位置（Camera.location与EdgeNode.location相同）中
+ * 剩余比例最小的一项资源（摄像头数、CPU、带宽）剩余最多的节点上，使各节点最紧张的资源保持均衡；
+ * 同一位置没有放得下的节点时才放到其他位置。每个位置和全局各有一个按剩余比例排序的堆，
+ * 放置后节点以新的剩余比例重新入堆，旧条目按版本号惰性丢弃，一次计算的开销为O(C·log N)。
+ * 所有节点都放不下的摄像头不分配。
+ */
+public class EdgePlacementPlanner {
+
+    /**
+     * 每个摄像头在一个堆中最多查看的节点数，堆顶的节点只是带宽放不下这个摄像头时继续往下找
+     */
+    private static final int MAX_PROBES = 8;
+
+    private static final Comparator<Entry> BY_HEADROOM = (a, b) -> Double.compare(b.headroom, a.headroom);
+
+    private final double defaultBitrateKbps;
+
+    public EdgePlacementPlanner(double defaultBitrateKbps) {
+        this.defaultBitrateKbps = defaultBitrateKbps;
+    }
+
+    public Result plan(List<EdgeCapacity> nodes, List<Camera> cameras) {
+        return plan(nodes, cameras, true);
+    }
+
+    /**
+     * @param remote 同一位置没有放得下的节点时是否放到其他位置
+     */
+    public Result plan(List<EdgeCapacity> nodes, List<Camera> cameras, boolean remote) {
+        Map<String, PriorityQueue<Entry>> byLocation = new HashMap<>();
+        PriorityQueue<Entry> global = new PriorityQueue<>(Math.max(1, nodes.size()), BY_HEADROOM);
+        for (EdgeCapacity node : nodes) {
+            push(node, byLocation, global);
+        }
+
+        List<Camera> ordered = new ArrayList<>(cameras);
+        ordered.sort(Comparator.comparingDouble(this::demand).reversed());
+        Result result = new Result();
+        for (Camera camera : ordered) {
+            double kbps = demand(camera);
+            PriorityQueue<Entry> local = camera.getLocation() != null ? byLocation.get(camera.getLocation()) : null;
+            EdgeCapacity chosen = local != null ? take(local, kbps) : null;
+            if (chosen == null && remote) {
+                chosen = take(global, kbps);
+                if (chosen != null) {
+                    result.remote++;
+                }
+            }
+            if (chosen == null) {
+                result.unplaced++;
+                continue;
+            }
+            chosen.place(kbps);
+            push(chosen, byLocation, global);
+            result.assignments.put(camera.getId(), chosen.getId());
+        }
+        return result;
+    }
+
+    /**
+     * 摄像头的码率（kbps），未设置时使用默认码率
+     */
+    public double demand(Camera camera) {
+        return camera.getBitrate() != null && camera.getBitrate() > 0 ? camera.getBitrate() : defaultBitrateKbps;
+    }
+
+    private static void push(EdgeCapacity node, Map<String, PriorityQueue<Entry>> byLocation,
+                             PriorityQueue<Entry> global) {
+        // 连最小的摄像头都放不下的节点不再入堆
+        if (!node.fits(0)) {
+            return;
+        }
+        Entry entry = new Entry(node);
+        global.add(entry);
+        if (node.getLocation() != null) {
+            byLocation.computeIfAbsent(node.getLocation(), key -> new PriorityQueue<>(BY_HEADROOM)).add(entry);
+        }
+    }
+
+    /**
+     * 取出堆中剩余最多且放得下的节点，查看过但放不下的节点放回堆中
+     */
+    private static EdgeCapacity take(PriorityQueue<Entry> heap, double kbps) {
+        List<Entry> skipped = new ArrayList<>();
+        EdgeCapacity chosen = null;
+        while (skipped.size() < MAX_PROBES && !heap.isEmpty()) {
+            Entry entry = heap.poll();
+            if (entry.version != entry.node.version || !entry.node.fits(0)) {
+                continue;
+            }
+            if (entry.node.fits(kbps)) {
+                chosen = entry.node;
+                break;
+            }
+            skipped.add(entry);
+        }
+        heap.addAll(skipped);
+        return chosen;
+    }
+
+    private static final class Entry {
+        private final EdgeCapacity node;
+        private final int version;
+        private final double headroom;
+
+        Entry(EdgeCapacity node) {
+            this.node = node;
+            this.version = node.version;
+            this.headroom = node.headroom();
+        }
+    }
+
+    public static final class Result {
+        private final Map<Long, Long> assignments = new LinkedHashMap<>();
+        private int remote;
+        private int unplaced;
+
+        /**
+         * 摄像头ID到边缘节点ID
+         */
+        public Map<Long, Long> getAssignments() {
+            return assignments;
+        }
+
+        /**
+         * 放到其他位置节点上的摄像头数
+         */
+        public int getRemote() {
+            return remote;
+        }
+
+        public int getUnplaced() {
+            return unplaced;
+        }
+    }
+}
@@ -4,8 +4,14 @@ import com.aick.mmp.model.Camera;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +23,97 @@ public interface CameraRepository extends JpaRepository<Camera, Long> {
     List<Camera> findByEdgeNodeIdAndStatus(Long edgeNodeId, Camera.CameraStatus status);
     Optional<Camera> findByConnectionUrl(String connectionUrl);
     boolean existsByConnectionUrl(String connectionUrl);
+    List<Camera> findByConnectionUrlIn(Collection<String> connectionUrls);
     long countByStatus(Camera.CameraStatus status);
     long countByEdgeNodeId(Long edgeNodeId);
-}
\ No newline at end of file
+    List<Camera> findByStatusAndUpdatedAtBefore(Camera.CameraStatus status, LocalDateTime updatedAt);
+    List<Camera> findByEnabledTrue();
+    List<Camera> findByEdgeNodeIdAndEnabledTrue(Long edgeNodeId);
+    List<Camera> findByFailoverFromEdgeNodeId(Long edgeNodeId);
+    long countByFailoverFromEdgeNodeId(Long edgeNodeId);
+
+    /**
+     * 仅当状态仍为expected时更新，避免覆盖探测期间被其他操作修改的状态
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Camera c SET c.status = :status, c.updatedAt = :now WHERE c.id = :id AND c.status = :expected")
+    int updateStatusIfCurrent(@Param("id") Long id, @Param("expected") Camera.CameraStatus expected,
+                              @Param("status") Camera.CameraStatus status, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Camera c SET c.status = :status, c.lastActiveTime = :now, c.updatedAt = :now "
+            + "WHERE c.id = :id AND c.status = :expected")
+    int updateStatusAndActiveTimeIfCurrent(@Param("id") Long id, @Param("expected") Camera.CameraStatus expected,
+                                           @Param("status") Camera.CameraStatus status,
+                                           @Param("now") LocalDateTime now);
+
+    /**
+     * 批量状态变化，同样只更新状态仍在expected中的摄像头
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Camera c SET c.status = :status, c.updatedAt = :now WHERE c.id IN :ids AND c.status IN :expected")
+    int updateStatusIn(@Param("ids") Collection<Long> ids, @Param("expected") Collection<Camera.CameraStatus> expected,
+                       @Param("status") Camera.CameraStatus status, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Camera c SET c.status = :status, c.lastActiveTime = :now, c.updatedAt = :now "
+            + "WHERE c.id IN :ids AND c.status IN :expected")
+    int updateStatusAndActiveTimeIn(@Param("ids") Collection<Long> ids,
+                                    @Param("expected") Collection<Camera.CameraStatus> expected,
+                                    @Param("status") Camera.CameraStatus status, @Param("now") LocalDateTime now);
+
+    /**
+     * 每个边缘节点上的摄像头数、已设置码率的摄像头数和码率之和：[edgeNodeId, count, bitrateCount, bitrateSum]
+     */
+    @Query("SELECT c.edgeNodeId, COUNT(c), COUNT(c.bitrate), SUM(c.bitrate) FROM Camera c "
+            + "WHERE c.edgeNodeId IS NOT NULL GROUP BY c.edgeNodeId")
+    List<Object[]> summarizeByEdgeNode();
+
+    /**
+     * 没有分配边缘节点或所在节点不在retained中的启用摄像头
+     */
+    @Query("SELECT c FROM Camera c WHERE c.enabled = true "
+            + "AND (c.edgeNodeId IS NULL OR c.edgeNodeId NOT IN :retained)")
+    List<Camera> findUnplaced(@Param("retained") Collection<Long> retained);
+
+    /**
+     * 批量分配边缘节点，只更新仍未分配或所在节点仍不在retained中的摄像头
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Camera c SET c.edgeNodeId = :edgeNodeId, c.updatedAt = :now WHERE c.id IN :ids "
+            + "AND (c.edgeNodeId IS NULL OR c.edgeNodeId NOT IN :retained)")
+    int assignEdgeNodeIn(@Param("ids") Collection<Long> ids, @Param("edgeNodeId") Long edgeNodeId,
+                         @Param("retained") Collection<Long> retained, @Param("now") LocalDateTime now);
+
+    /**
+     * 把失联节点上的摄像头转移到target，记录原节点（已转移过的摄像头保留最初的原节点）；只更新仍在source上的摄像头
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Camera c SET c.edgeNodeId = :target, "
+            + "c.failoverFromEdgeNodeId = COALESCE(c.failoverFromEdgeNodeId, :source), c.updatedAt = :now "
+            + "WHERE c.id IN :ids AND c.edgeNodeId = :source")
+    int failoverEdgeNodeIn(@Param("ids") Collection<Long> ids, @Param("source") Long source,
+                           @Param("target") Long target, @Param("now") LocalDateTime now);
+
+    /**
+     * 把从source转移走的摄像头迁回source
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Camera c SET c.edgeNodeId = c.failoverFromEdgeNodeId, c.failoverFromEdgeNodeId = NULL, "
+            + "c.updatedAt = :now WHERE c.id IN :ids AND c.failoverFromEdgeNodeId = :source")
+    int failbackEdgeNodeIn(@Param("ids") Collection<Long> ids, @Param("source") Long source,
+                           @Param("now") LocalDateTime now);
+
+    /**
+     * ids中当前在edgeNodeId上的摄像头ID，用于确认条件更新实际移动了哪些摄像头
+     */
+    @Query("SELECT c.id FROM Camera c WHERE c.id IN :ids AND c.edgeNodeId = :edgeNodeId")
+    List<Long> findIdsOnEdgeNode(@Param("ids") Collection<Long> ids, @Param("edgeNodeId") Long edgeNodeId);
+}
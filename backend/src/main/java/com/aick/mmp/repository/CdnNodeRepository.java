@@ -2,8 +2,13 @@ package com.aick.mmp.repository;
 
 import com.aick.mmp.model.CdnNode;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
@@ -18,4 +23,13 @@ public interface CdnNodeRepository extends JpaRepository<CdnNode, Long> {
     List<CdnNode> findByStatusOrderByCurrentLoadAsc(CdnNode.NodeStatus status);
     Optional<CdnNode> findByNodeId(String nodeId);
     CdnNode findByIpAddressAndPort(String ipAddress, Integer port);
+
+    /**
+     * 批量状态变化，只更新状态仍在expected中的节点
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE CdnNode n SET n.status = :status WHERE n.id IN :ids AND n.status IN :expected")
+    int updateStatusIn(@Param("ids") Collection<Long> ids, @Param("expected") Collection<CdnNode.NodeStatus> expected,
+                       @Param("status") CdnNode.NodeStatus status);
 }
\ No newline at end of file
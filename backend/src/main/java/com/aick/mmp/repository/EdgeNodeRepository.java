@@ -5,8 +5,14 @@ import com.aick.mmp.model.EdgeNode;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,4 +27,18 @@ public interface EdgeNodeRepository extends JpaRepository<EdgeNode, Long> {
     boolean existsByName(String name);
     boolean existsByIpAddressAndPort(String ipAddress, Integer port);
     Optional<EdgeNodeDTO> findByIpAddress(String ipAddress);
-}
\ No newline at end of file
+
+    /**
+     * 批量状态变化，只更新状态仍在expected中的节点
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EdgeNode n SET n.status = :status, n.updatedAt = :now WHERE n.id IN :ids AND n.status IN :expected")
+    int updateStatusIn(@Param("ids") Collection<Long> ids, @Param("expected") Collection<EdgeNode.NodeStatus> expected,
+                       @Param("status") EdgeNode.NodeStatus status, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EdgeNode n SET n.currentCameraCount = :count WHERE n.id = :id")
+    int updateCameraCount(@Param("id") Long id, @Param("count") Integer count);
+}
@@ -2,18 +2,41 @@ package com.aick.mmp.repository;
 
 import com.aick.mmp.model.StreamSession;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface StreamSessionRepository extends JpaRepository<StreamSession, Long> {
 
-    List<StreamSession> findByEdgeNodeId(String edgeNodeId);
+    List<StreamSession> findByEdgeNodeId(Long edgeNodeId);
 
     List<StreamSession> findByCdnNodeId(String cdnNodeId);
 
     List<StreamSession> findByStatus(StreamSession.StreamStatus status);
 
     void deleteBySessionId(String sessionId);
-}
\ No newline at end of file
+
+    /**
+     * 批量把会话迁移到另一个CDN节点，只更新仍在source节点上且处于status状态的会话
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StreamSession s SET s.cdnNodeId = :target, s.updatedAt = :now "
+            + "WHERE s.id IN :ids AND s.cdnNodeId = :source AND s.status = :status")
+    int updateCdnNodeIn(@Param("ids") Collection<Long> ids, @Param("source") String source,
+                        @Param("target") String target, @Param("status") StreamSession.StreamStatus status,
+                        @Param("now") LocalDateTime now);
+
+    /**
+     * ids中当前在cdnNodeId节点上的会话ID，用于确认条件更新实际迁移了哪些会话
+     */
+    @Query("SELECT s.id FROM StreamSession s WHERE s.id IN :ids AND s.cdnNodeId = :cdnNodeId")
+    List<Long> findIdsOnCdnNode(@Param("ids") Collection<Long> ids, @Param("cdnNodeId") String cdnNodeId);
+}
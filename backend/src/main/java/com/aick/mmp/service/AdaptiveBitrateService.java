@@ -0,0 +1,23 @@
+package com.aick.mmp.service;
+
+import com.aick.mmp.model.EdgeNode;
+
+import java.util.Map;
+
+/**
+ * 边缘节点上行码率的闭环控制，使节点上所有流的总码率不超过链路容量
+ */
+public interface AdaptiveBitrateService {
+
+    /**
+     * 用一次心跳中的网络指标（bandwidth、packetLoss、latency）执行一个控制周期，必要时调整各路流的质量级别
+     */
+    void control(EdgeNode edgeNode, Map<String, ?> networkMetrics);
+
+    /**
+     * 节点的码率预算、控制状态和各摄像头的质量级别，节点未受控时返回空Map
+     */
+    Map<String, Object> getStatus(Long edgeNodeId);
+
+    void release(Long edgeNodeId);
+}
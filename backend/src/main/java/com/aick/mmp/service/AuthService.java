@@ -9,6 +9,11 @@ public interface AuthService {
     LoginResponse login(LoginRequest loginRequest);
     
     UserDTO getCurrentUser(String username);
+
+    /**
+     * 令牌有效且未吊销时返回用户名，否则返回null
+     */
+    String resolveUsername(String token);
     
     void logout(String token);
     
@@ -0,0 +1,21 @@
+package com.aick.mmp.service;
+
+import java.util.Map;
+
+/**
+ * 摄像头健康巡检：后台持续探测所有启用的摄像头，只在状态真正变化时回写数据库
+ */
+public interface CameraHealthService {
+
+    /**
+     * 重新加载启用的摄像头列表（新增、删除、账号和状态变化）
+     */
+    void refreshRoster();
+
+    /**
+     * 把积累的状态变化批量写入数据库
+     */
+    void flushTransitions();
+
+    Map<String, Object> getStatistics();
+}
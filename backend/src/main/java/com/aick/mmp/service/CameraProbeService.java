@@ -0,0 +1,21 @@
+package com.aick.mmp.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 摄像头连通性异步探测：探测不占用调用方的线程和数据库连接，结果只回写CONNECTING状态的摄像头
+ */
+public interface CameraProbeService {
+
+    /**
+     * 提交探测；在事务中调用时等事务提交后才开始，同一摄像头已在排队或探测中时复用同一个结果
+     * @return 摄像头是否可连接
+     */
+    CompletableFuture<Boolean> submit(Long cameraId);
+
+    void submitAll(Collection<Long> cameraIds);
+
+    Map<String, Object> getStatistics();
+}
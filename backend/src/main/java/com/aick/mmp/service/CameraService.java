@@ -1,6 +1,8 @@
 package com.aick.mmp.service;
 
 import com.aick.mmp.dto.CameraDTO;
+import com.aick.mmp.dto.CameraDiscoveryRequest;
+import com.aick.mmp.dto.CameraDiscoveryResultDTO;
 import com.aick.mmp.dto.CameraStatusUpdateDTO;
 import com.aick.mmp.model.Camera;
 import org.springframework.data.domain.Page;
@@ -16,6 +18,7 @@ public interface CameraService {
     Page<CameraDTO> getCamerasByStatus(Camera.CameraStatus status, Pageable pageable);
     CameraDTO getCameraById(Long id);
     CameraDTO createCamera(CameraDTO cameraDTO);
+    CameraDiscoveryResultDTO discoverCameras(CameraDiscoveryRequest request);
     CameraDTO updateCamera(Long id, CameraDTO cameraDTO);
     void updateCameraStatus(Long id, CameraStatusUpdateDTO statusUpdateDTO);
     void updateCameraResolution(Long id, String resolution);
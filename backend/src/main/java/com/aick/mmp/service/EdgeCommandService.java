@@ -0,0 +1,27 @@
+package com.aick.mmp.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 通过长连接向边缘节点下发命令（重启、配置下发、流控制等）
+ */
+public interface EdgeCommandService {
+
+    /**
+     * 异步发送命令，params序列化为JSON；Future在IO线程完成，返回节点响应的JSON对象
+     */
+    CompletableFuture<Map<String, Object>> send(Long edgeNodeId, String command, Map<String, ?> params);
+
+    /**
+     * 发送命令并等待响应，节点返回失败、超时或连接断开时抛出ServiceException
+     */
+    Map<String, Object> execute(Long edgeNodeId, String command, Map<String, ?> params);
+
+    /**
+     * 关闭节点的连接
+     */
+    void disconnect(Long edgeNodeId);
+
+    Map<String, Object> getStatistics();
+}
@@ -0,0 +1,27 @@
+package com.aick.mmp.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 边缘节点失联时把摄像头转移到同一位置的其他节点并重启它们的流，节点恢复后可迁回
+ */
+public interface EdgeFailoverService {
+
+    /**
+     * 节点被标记为OFFLINE后转移其上的摄像头，异步执行
+     */
+    void failover(Collection<Long> edgeNodeIds);
+
+    /**
+     * 节点恢复ONLINE；配置了自动迁回时把转移走的摄像头迁回，否则等待手动迁回
+     */
+    void recovered(Collection<Long> edgeNodeIds);
+
+    /**
+     * 把从节点转移走的摄像头迁回该节点并重启它们的流（异步），返回迁回的摄像头数
+     */
+    int failback(Long edgeNodeId);
+
+    Map<String, Object> getStatistics();
+}
@@ -0,0 +1,39 @@
+package com.aick.mmp.service;
+
+import com.aick.mmp.model.EdgeNode;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 边缘节点心跳的写后缓冲：心跳只更新内存中的最新状态，由定时任务批量写入数据库
+ */
+public interface EdgeHeartbeatService {
+
+    /**
+     * 记录一次心跳并返回节点，节点不存在时抛出ServiceException
+     */
+    EdgeNode record(Long nodeId, Map<String, Object> metrics);
+
+    /**
+     * 用内存中尚未写入数据库的最新心跳覆盖节点的状态、心跳时间和指标
+     */
+    void applyLatest(EdgeNode edgeNode);
+
+    /**
+     * 节点在心跳之外被修改或删除后丢弃缓存，下一次心跳重新从数据库加载
+     */
+    void evict(Long nodeId);
+
+    /**
+     * 把状态或指标有明显变化的节点批量写入数据库
+     */
+    void flush();
+
+    /**
+     * 把失联的节点标记为OFFLINE并丢弃它们的缓存，与批量写入互斥，避免缓存中较早的心跳把节点写回ONLINE；返回更新的行数
+     */
+    int markOffline(Collection<Long> nodeIds);
+
+    Map<String, Object> getStatistics();
+}
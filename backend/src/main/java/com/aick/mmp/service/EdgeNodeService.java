@@ -2,10 +2,13 @@ package com.aick.mmp.service;
 
 import com.aick.mmp.dto.EdgeNodeDTO;
 import com.aick.mmp.dto.EdgeNodeStatusUpdateDTO;
+import com.aick.mmp.metrics.MetricPoint;
+import com.aick.mmp.metrics.Resolution;
 import com.aick.mmp.model.EdgeNode;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
@@ -20,7 +23,17 @@ public interface EdgeNodeService {
     void updateEdgeNodeCredentials(Long id, String username, String password);
     void deleteEdgeNode(Long id);
     void registerHeartbeat(Long nodeId, Map<String, Object> metrics);
+
+    /**
+     * 接收一帧二进制心跳（格式见EdgeHeartbeatCodec），增量帧的基准已失效时返回false，节点应改发全量帧
+     */
+    boolean registerHeartbeat(ByteBuffer frame);
     Map<String, Object> getEdgeNodeStatistics(Long nodeId);
+
+    /**
+     * 节点某个指标的历史，from/to为毫秒时间戳，resolution为空时按时间范围自动选择精度
+     */
+    List<MetricPoint> getEdgeNodeMetricHistory(Long nodeId, String metric, long from, long to, Resolution resolution);
     List<EdgeNodeDTO> getOnlineEdgeNodes();
     long getEdgeNodeCountByStatus(EdgeNode.NodeStatus status);
     boolean testEdgeNodeConnection(Long nodeId);
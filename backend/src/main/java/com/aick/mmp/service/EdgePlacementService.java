@@ -0,0 +1,30 @@
+package com.aick.mmp.service;
+
+import com.aick.mmp.model.Camera;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 摄像头到边缘节点的自动分配
+ */
+public interface EdgePlacementService {
+
+    /**
+     * 为一个尚未入库的新摄像头选择边缘节点，没有放得下的节点时返回null
+     */
+    Long place(Camera camera);
+
+    /**
+     * 按当前容量为一批摄像头计算分配（不写入数据库），返回摄像头ID到边缘节点ID，放不下的摄像头不在结果中
+     * @param remote 同一位置没有放得下的节点时是否放到其他位置
+     */
+    Map<Long, Long> plan(List<Camera> cameras, boolean remote);
+
+    /**
+     * 为未分配节点和所在节点已长期离线的摄像头批量分配节点，返回本次的放置结果
+     */
+    Map<String, Object> placeUnassigned();
+
+    Map<String, Object> getStatistics();
+}
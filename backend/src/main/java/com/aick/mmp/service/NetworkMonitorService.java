@@ -9,4 +9,11 @@ public interface NetworkMonitorService {
     void evaluateAndAdjust(EdgeNode edgeNode, Map<String, Double> metrics);
 
     void evaluateAndAdjustCdn(CdnNode cdnNode, Map<String, Double> metrics);
+
+    /**
+     * 节点网络指标的滑动窗口统计（EWMA、p50/p95/p99、趋势）和降级状态，没有数据时返回空Map
+     */
+    Map<String, Object> getNetworkStatistics(EdgeNode edgeNode);
+
+    Map<String, Object> getNetworkStatistics(CdnNode cdnNode);
 }
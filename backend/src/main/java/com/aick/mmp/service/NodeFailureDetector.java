@@ -0,0 +1,33 @@
+package com.aick.mmp.service;
+
+import com.aick.mmp.dto.NodeHeartbeatMessage.NodeType;
+
+import java.util.Map;
+
+/**
+ * 边缘节点和CDN节点的心跳超时检测：停止心跳的节点被标记为OFFLINE，恢复心跳后重新标记为ONLINE
+ */
+public interface NodeFailureDetector {
+
+    /**
+     * 记录一次心跳，重新计算节点的失联期限
+     */
+    void heartbeat(NodeType nodeType, Long nodeId);
+
+    /**
+     * 节点被删除后停止检测
+     */
+    void remove(NodeType nodeType, Long nodeId);
+
+    /**
+     * 节点当前的怀疑度phi，未受检测时返回NaN
+     */
+    double getSuspicion(NodeType nodeType, Long nodeId);
+
+    /**
+     * 把检测到的状态变化批量写入数据库
+     */
+    void flushTransitions();
+
+    Map<String, Object> getStatistics();
+}
@@ -0,0 +1,33 @@
+package com.aick.mmp.service;
+
+import com.aick.mmp.model.CdnNode;
+
+import java.util.Map;
+
+/**
+ * 把流会话从性能下降的CDN节点迁移到其他节点
+ */
+public interface StreamMigrationService {
+
+    /**
+     * 开始迁出节点上的全部流会话，节点已在迁出中时忽略
+     */
+    void drain(CdnNode cdnNode);
+
+    /**
+     * 节点恢复后停止迁出，尚未迁移的会话留在原节点
+     */
+    void cancel(Long cdnNodeId);
+
+    /**
+     * 执行一波迁移
+     */
+    void runWave();
+
+    /**
+     * 会话被迁移后给观看端的重定向提示（新节点和播放地址），没有时返回null
+     */
+    Map<String, Object> getRedirect(String sessionId);
+
+    Map<String, Object> getStatistics();
+}
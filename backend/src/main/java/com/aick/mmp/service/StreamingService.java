@@ -13,6 +13,17 @@ public interface StreamingService {
     Map<String, Object> getStreamMetrics(String sessionId);
     void adjustStreamQuality(String sessionId, int qualityLevel);
     List<StreamSession> getActiveSessions();
+
+    /**
+     * 本实例上属于某个边缘节点的活动会话（内存中的状态，不查询数据库）
+     */
+    List<StreamSession> getActiveSessionsByEdgeNode(Long edgeNodeId);
+
+    /**
+     * 摄像头的边缘节点改变后重启它在本实例上的全部活动会话，会话ID不变；返回重启的会话数。
+     * 重新订阅失败的会话结束为ERROR，有会话失败时在保存全部会话后抛出ServiceException
+     */
+    int restartStreams(Camera camera);
     
     // 兼容原有接口
     default String getStreamUrl(Long cameraId) {
@@ -0,0 +1,27 @@
+package com.aick.mmp.service;
+
+import java.util.Map;
+
+/**
+ * 令牌吊销：吊销写入本实例的TokenRevocationList，并通过Redis发布给其他实例
+ */
+public interface TokenRevocationService {
+
+    /**
+     * 吊销令牌直到其过期；令牌无效或已吊销时返回false
+     */
+    boolean revoke(String token);
+
+    /**
+     * 吊销用户此前签发的全部令牌，用于用户停用或删除
+     */
+    void revokeUser(String username);
+
+    /**
+     * 处理其他实例（或本实例）发布的吊销消息，格式为"过期时间毫秒 成员"，
+     * 成员为令牌的吊销标识，或"user:生效时间毫秒:用户名"
+     */
+    void onRevocationMessage(String message);
+
+    Map<String, Object> getStatistics();
+}
@@ -0,0 +1,193 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.model.EdgeNode;
+import com.aick.mmp.model.StreamSession;
+import com.aick.mmp.service.AdaptiveBitrateService;
+import com.aick.mmp.service.StreamingService;
+import com.aick.mmp.stream.abr.BitrateController;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 边缘节点上行码率控制：每个节点一个{@link BitrateController}，由心跳驱动
+ * <p>
+ * 链路容量取自EdgeNode.networkBandwidth（如"100 Mbps"，没有单位时按kbps），测得带宽、丢包率和RTT取自心跳的network指标。
+ * 同一摄像头的多个观看会话共享一路上游流，因此按摄像头控制，通过该摄像头的任一会话下发质量级别。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AdaptiveBitrateServiceImpl implements AdaptiveBitrateService {
+
+    private static final Pattern BANDWIDTH_PATTERN =
+            Pattern.compile("\\s*([0-9]+(?:\\.[0-9]+)?)\\s*([kKmMgG]?)(?:bps|b/s|bit/s)?\\s*");
+
+    private final StreamingService streamingService;
+
+    @Value("${stream.abr.enabled:true}")
+    private boolean enabled = true;
+
+    /**
+     * 质量级别1-5对应的码率（kbps），与协议适配器的码率表一致
+     */
+    @Value("${stream.abr.ladder:500,1000,2000,4000,8000}")
+    private int[] ladderKbps = {500, 1000, 2000, 4000, 8000};
+
+    @Value("${stream.abr.initial-level:3}")
+    private int initialLevel = 3;
+
+    @Value("${stream.abr.headroom:0.9}")
+    private double headroom = 0.9;
+
+    @Value("${stream.abr.increase-ratio:0.05}")
+    private double increaseRatio = 0.05;
+
+    @Value("${stream.abr.probe-ratio:0.01}")
+    private double probeRatio = 0.01;
+
+    @Value("${stream.abr.decrease-factor:0.85}")
+    private double decreaseFactor = 0.85;
+
+    @Value("${stream.abr.hold-after-decrease:1}")
+    private int holdIntervalsAfterDecrease = 1;
+
+    @Value("${stream.abr.loss-low:0.5}")
+    private double lossLowPercent = 0.5;
+
+    @Value("${stream.abr.loss-high:2}")
+    private double lossHighPercent = 2;
+
+    @Value("${stream.abr.queue-delay-threshold:40}")
+    private double queueDelayThresholdMs = 40;
+
+    @Value("${stream.abr.base-rtt-drift:0.01}")
+    private double baseRttDrift = 0.01;
+
+    private final Map<Long, BitrateController> controllers = new ConcurrentHashMap<>();
+    private BitrateController.Settings settings;
+
+    @PostConstruct
+    public void init() {
+        settings = BitrateController.Settings.builder()
+                .ladderKbps(ladderKbps)
+                .initialLevel(initialLevel)
+                .headroom(headroom)
+                .increaseRatio(increaseRatio)
+                .probeRatio(probeRatio)
+                .decreaseFactor(decreaseFactor)
+                .holdIntervalsAfterDecrease(holdIntervalsAfterDecrease)
+                .lossLowPercent(lossLowPercent)
+                .lossHighPercent(lossHighPercent)
+                .queueDelayThresholdMs(queueDelayThresholdMs)
+                .baseRttDrift(baseRttDrift)
+                .build();
+    }
+
+    @Override
+    public void control(EdgeNode edgeNode, Map<String, ?> networkMetrics) {
+        if (!enabled || networkMetrics == null) {
+            return;
+        }
+        // 每个摄像头取一个会话作为下发质量级别的入口
+        Map<Long, String> streams = new TreeMap<>();
+        for (StreamSession session : streamingService.getActiveSessionsByEdgeNode(edgeNode.getId())) {
+            streams.putIfAbsent(session.getCameraId(), session.getSessionId());
+        }
+        if (streams.isEmpty()) {
+            controllers.remove(edgeNode.getId());
+            return;
+        }
+
+        BitrateController controller = controllers.computeIfAbsent(edgeNode.getId(),
+                id -> new BitrateController(settings));
+        synchronized (controller) {
+            Map<Long, Integer> changes = controller.update(parseBandwidth(edgeNode.getNetworkBandwidth()),
+                    value(networkMetrics, "bandwidth"), value(networkMetrics, "packetLoss"),
+                    value(networkMetrics, "latency"), streams.keySet());
+            for (Map.Entry<Long, Integer> change : changes.entrySet()) {
+                String sessionId = streams.get(change.getKey());
+                try {
+                    streamingService.adjustStreamQuality(sessionId, change.getValue());
+                } catch (RuntimeException e) {
+                    // 下个周期重新下发
+                    controller.forget(change.getKey());
+                    log.warn("Failed to set quality level {} for camera {} on edge node {}: {}",
+                            change.getValue(), change.getKey(), edgeNode.getId(), e.getMessage());
+                }
+            }
+            if (!changes.isEmpty()) {
+                log.debug("Edge node {} bitrate budget {} kbps ({}), {} streams adjusted", edgeNode.getId(),
+                        Math.round(controller.getBudgetKbps()), controller.getState(), changes.size());
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStatus(Long edgeNodeId) {
+        BitrateController controller = controllers.get(edgeNodeId);
+        if (controller == null) {
+            return Collections.emptyMap();
+        }
+        List<StreamSession> sessions = streamingService.getActiveSessionsByEdgeNode(edgeNodeId);
+        Set<Long> cameras = new TreeSet<>();
+        sessions.forEach(session -> cameras.add(session.getCameraId()));
+        Map<String, Object> status = new LinkedHashMap<>();
+        synchronized (controller) {
+            status.put("state", controller.getState());
+            status.put("budgetKbps", Math.round(controller.getBudgetKbps()));
+            status.put("allocatedKbps", Math.round(controller.allocatedKbps(cameras)));
+            status.put("congestionKbps", controller.getCongestionKbps());
+            status.put("baseRttMs", controller.getBaseRttMs());
+            status.put("queueDelayMs", controller.getQueueDelayMs());
+        }
+        status.put("streams", cameras.size());
+        return status;
+    }
+
+    @Override
+    public void release(Long edgeNodeId) {
+        controllers.remove(edgeNodeId);
+    }
+
+    /**
+     * 解析链路容量，返回kbps，无法解析时返回NaN
+     */
+    static double parseBandwidth(String bandwidth) {
+        if (!StringUtils.hasText(bandwidth)) {
+            return Double.NaN;
+        }
+        Matcher matcher = BANDWIDTH_PATTERN.matcher(bandwidth);
+        if (!matcher.matches()) {
+            return Double.NaN;
+        }
+        double value = Double.parseDouble(matcher.group(1));
+        switch (matcher.group(2).toLowerCase()) {
+            case "g":
+                return value * 1_000_000;
+            case "m":
+                return value * 1000;
+            default:
+                return value;
+        }
+    }
+
+    private static double value(Map<String, ?> metrics, String key) {
+        Object value = metrics.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+}
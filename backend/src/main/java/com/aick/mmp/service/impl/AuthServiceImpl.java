@@ -1,12 +1,17 @@
 package com.aick.mmp.service.impl;
 
+import com.aick.mmp.config.security.TokenPrincipalCache;
+import com.aick.mmp.config.security.TokenRevocationList;
 import com.aick.mmp.dto.LoginRequest;
 import com.aick.mmp.dto.LoginResponse;
 import com.aick.mmp.dto.UserDTO;
 import com.aick.mmp.model.User;
 import com.aick.mmp.repository.UserRepository;
 import com.aick.mmp.service.AuthService;
+import com.aick.mmp.service.TokenRevocationService;
 import com.aick.mmp.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
@@ -25,6 +30,8 @@ public class AuthServiceImpl implements AuthService {
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
     private final ModelMapper modelMapper;
+    private final TokenRevocationService tokenRevocationService;
+    private final TokenRevocationList tokenRevocationList;
 
     @Override
     @Transactional
@@ -40,7 +47,7 @@ public class AuthServiceImpl implements AuthService {
         user.setLastLoginTime(LocalDateTime.now());
         userRepository.save(user);
 
-        String token = jwtUtil.generateToken(user.getUsername());
+        String token = jwtUtil.generateToken(user.getUsername(), user.getRole().name());
         UserDTO userDTO = modelMapper.map(user, UserDTO.class);
 
         log.info("用户 {} 登录成功", user.getUsername());
@@ -56,14 +63,36 @@ public class AuthServiceImpl implements AuthService {
         return modelMapper.map(user, UserDTO.class);
     }
 
+    @Override
+    public String resolveUsername(String token) {
+        Claims claims = verify(token);
+        return claims != null ? claims.getSubject() : null;
+    }
+
     @Override
     public void logout(String token) {
-        // 实际应用中可以将token加入黑名单
-        log.info("用户退出登录");
+        // 令牌在过期前吊销，所有实例在一秒内拒绝该令牌
+        if (tokenRevocationService.revoke(token)) {
+            log.info("用户退出登录，令牌已吊销");
+        }
     }
 
     @Override
     public boolean validateToken(String token) {
-        return jwtUtil.validateToken(token);
+        return verify(token) != null;
+    }
+
+    /**
+     * 认证过滤器对吊销的令牌只是不设置登录状态，/api/auth/**允许匿名访问，请求仍会到达这里；
+     * 这些接口自行解析传入的令牌，因此同样检查签名、有效期和吊销
+     */
+    private Claims verify(String token) {
+        Claims claims;
+        try {
+            claims = jwtUtil.parseClaims(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        return tokenRevocationList.isRevoked(claims, TokenPrincipalCache.key(token)) ? null : claims;
     }
 }
\ No newline at end of file
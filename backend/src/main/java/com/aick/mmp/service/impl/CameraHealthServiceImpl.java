@@ -0,0 +1,485 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.model.Camera;
+import com.aick.mmp.repository.CameraRepository;
+import com.aick.mmp.service.CameraHealthService;
+import com.aick.mmp.service.StreamingService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 摄像头健康巡检
+ * <p>
+ * 一个调度线程按下次探测时间维护全部摄像头，到期的交给固定大小的探测线程池执行
+ * {@link com.aick.mmp.adapter.protocol.ProtocolAdapter#testConnection}；同一边缘节点下的并发探测数有上限，
+ * 超出的在该节点的等待队列中排队，避免一个节点的上行链路被巡检占满。
+ * 探测间隔按设备表现自适应：稳定在线的逐步拉长，连续失败的按指数退避并加随机抖动，
+ * 近期状态反复变化（抖动）的缩短到固定的短间隔。
+ * 只有状态真正变化才记录，由定时任务按目标状态批量UPDATE，调度和探测线程都不访问数据库。
+ */
+@Service
+@Slf4j
+public class CameraHealthServiceImpl implements CameraHealthService, Runnable {
+
+    /**
+     * 巡检会改写的状态；MAINTENANCE由人工设置，CONNECTING由创建时的首次探测负责
+     */
+    private static final Set<Camera.CameraStatus> MANAGED_STATUSES =
+            EnumSet.of(Camera.CameraStatus.ONLINE, Camera.CameraStatus.OFFLINE, Camera.CameraStatus.ERROR);
+    private static final long UNASSIGNED_EDGE_NODE = -1L;
+    private static final int MAX_BACKOFF_EXPONENT = 16;
+
+    private final CameraRepository cameraRepository;
+    private final StreamingService streamingService;
+
+    @Value("${camera.health.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${camera.health.max-concurrency:256}")
+    private int maxConcurrency = 256;
+
+    @Value("${camera.health.edge-node-concurrency:32}")
+    private int edgeNodeConcurrency = 32;
+
+    @Value("${camera.health.interval:30000}")
+    private long intervalMs = 30000;
+
+    @Value("${camera.health.max-interval:120000}")
+    private long maxIntervalMs = 120000;
+
+    @Value("${camera.health.stable-probes-per-doubling:10}")
+    private int stableProbesPerDoubling = 10;
+
+    @Value("${camera.health.retry-interval:5000}")
+    private long retryIntervalMs = 5000;
+
+    @Value("${camera.health.max-backoff:300000}")
+    private long maxBackoffMs = 300000;
+
+    @Value("${camera.health.flap-interval:10000}")
+    private long flapIntervalMs = 10000;
+
+    @Value("${camera.health.flap-threshold:3}")
+    private double flapThreshold = 3;
+
+    @Value("${camera.health.flap-half-life:600000}")
+    private long flapHalfLifeMs = 600000;
+
+    @Value("${camera.health.offline-after-failures:2}")
+    private int offlineAfterFailures = 2;
+
+    @Value("${camera.health.write-batch-size:500}")
+    private int writeBatchSize = 500;
+
+    // 以下状态只在调度线程内访问
+    private final Map<Long, Target> targets = new HashMap<>();
+    private final PriorityQueue<Target> schedule = new PriorityQueue<>((a, b) -> Long.compare(a.nextProbeAt, b.nextProbeAt));
+    private final Map<Long, EdgeNodeSlots> edgeNodes = new HashMap<>();
+    private int inFlight;
+
+    // 跨线程共享的状态
+    private final LinkedBlockingQueue<Target> completions = new LinkedBlockingQueue<>();
+    private final AtomicReference<List<Camera>> pendingRoster = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<Transition> transitions = new ConcurrentLinkedQueue<>();
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong probeNanos = new AtomicLong();
+    private final AtomicLong deferredByEdgeNode = new AtomicLong();
+    private final AtomicLong transitionsRecorded = new AtomicLong();
+    private final AtomicLong rowsUpdated = new AtomicLong();
+    private final AtomicLong writeStatements = new AtomicLong();
+    private final AtomicInteger targetCount = new AtomicInteger();
+    private final AtomicInteger flappingCount = new AtomicInteger();
+    private ExecutorService executor;
+    private Thread thread;
+    private volatile boolean running;
+
+    @Autowired
+    public CameraHealthServiceImpl(CameraRepository cameraRepository, StreamingService streamingService) {
+        this.cameraRepository = cameraRepository;
+        this.streamingService = streamingService;
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public CameraHealthServiceImpl(CameraRepository cameraRepository, StreamingService streamingService,
+                                   int maxConcurrency, int edgeNodeConcurrency, long intervalMs) {
+        this(cameraRepository, streamingService);
+        this.maxConcurrency = maxConcurrency;
+        this.edgeNodeConcurrency = edgeNodeConcurrency;
+        this.intervalMs = intervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("Camera health prober is disabled");
+            return;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread worker = new Thread(runnable, "camera-health-" + threadIndex.incrementAndGet());
+                    worker.setDaemon(true);
+                    return worker;
+                });
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+        running = true;
+        thread = new Thread(this, "camera-health-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    @Scheduled(initialDelayString = "${camera.health.initial-delay:10000}",
+            fixedDelayString = "${camera.health.roster-refresh-interval:300000}")
+    public void refreshRoster() {
+        if (!running) {
+            return;
+        }
+        // 查询在调用线程上执行，调度线程在下一轮循环中只做内存中的合并
+        pendingRoster.set(cameraRepository.findByEnabledTrue());
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${camera.health.flush-interval:1000}")
+    public void flushTransitions() {
+        if (transitions.isEmpty()) {
+            return;
+        }
+        // 同一摄像头在一个周期内多次变化时只保留最后一次
+        Map<Long, Transition> latest = new LinkedHashMap<>();
+        Transition transition;
+        while ((transition = transitions.poll()) != null) {
+            latest.put(transition.cameraId, transition);
+        }
+        Map<Camera.CameraStatus, List<Long>> byStatus = new HashMap<>();
+        for (Transition value : latest.values()) {
+            byStatus.computeIfAbsent(value.status, key -> new ArrayList<>()).add(value.cameraId);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Camera.CameraStatus, List<Long>> entry : byStatus.entrySet()) {
+            Camera.CameraStatus status = entry.getKey();
+            List<Long> ids = entry.getValue();
+            Set<Camera.CameraStatus> expected = EnumSet.copyOf(MANAGED_STATUSES);
+            expected.remove(status);
+            for (int from = 0; from < ids.size(); from += writeBatchSize) {
+                List<Long> batch = ids.subList(from, Math.min(ids.size(), from + writeBatchSize));
+                try {
+                    int updated = status == Camera.CameraStatus.ONLINE
+                            ? cameraRepository.updateStatusAndActiveTimeIn(batch, expected, status, now)
+                            : cameraRepository.updateStatusIn(batch, expected, status, now);
+                    rowsUpdated.addAndGet(updated);
+                    writeStatements.incrementAndGet();
+                } catch (Exception e) {
+                    // 丢弃这一批，下一次刷新摄像头列表时会按数据库中的状态重新比较
+                    log.error("Failed to persist {} camera status transitions to {}: {}", batch.size(), status,
+                            e.getMessage());
+                }
+            }
+            log.info("Camera health: {} cameras now {}", ids.size(), status);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        long probeCount = probes.get();
+        statistics.put("cameras", targetCount.get());
+        statistics.put("flapping", flappingCount.get());
+        statistics.put("probes", probeCount);
+        statistics.put("failures", failures.get());
+        statistics.put("averageProbeMillis", probeCount == 0 ? 0 : probeNanos.get() / probeCount / 1_000_000.0);
+        statistics.put("deferredByEdgeNode", deferredByEdgeNode.get());
+        statistics.put("transitions", transitionsRecorded.get());
+        statistics.put("rowsUpdated", rowsUpdated.get());
+        statistics.put("writeStatements", writeStatements.get());
+        return statistics;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                List<Camera> roster = pendingRoster.getAndSet(null);
+                if (roster != null) {
+                    mergeRoster(roster, System.currentTimeMillis());
+                }
+                Target completed;
+                while ((completed = completions.poll()) != null) {
+                    onCompleted(completed);
+                }
+                long now = System.currentTimeMillis();
+                dispatchDue(now);
+                long wait = 1000;
+                if (inFlight < maxConcurrency && !schedule.isEmpty()) {
+                    wait = Math.max(0, Math.min(wait, schedule.peek().nextProbeAt - now));
+                }
+                if (wait > 0) {
+                    completed = completions.poll(wait, TimeUnit.MILLISECONDS);
+                    if (completed != null) {
+                        onCompleted(completed);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Camera health scheduler error", e);
+            }
+        }
+    }
+
+    private void mergeRoster(List<Camera> cameras, long now) {
+        Set<Long> present = new HashSet<>(cameras.size() * 2);
+        int added = 0;
+        for (Camera camera : cameras) {
+            present.add(camera.getId());
+            Target target = targets.get(camera.getId());
+            if (target == null) {
+                target = new Target(camera, edgeKey(camera));
+                // 首轮探测均匀分散在一个基础间隔内，避免启动时集中探测
+                target.nextProbeAt = now + (long) (ThreadLocalRandom.current().nextDouble() * intervalMs);
+                targets.put(camera.getId(), target);
+                schedule.add(target);
+                added++;
+            } else {
+                // 账号、地址和人工修改的状态以数据库为准
+                target.camera = camera;
+                target.persisted = camera.getStatus();
+                // 新节点从下次调度开始生效；进行中的探测按派发时的节点释放名额
+                target.edgeKey = edgeKey(camera);
+            }
+        }
+        int removed = 0;
+        for (Target target : new ArrayList<>(targets.values())) {
+            if (!present.contains(target.camera.getId())) {
+                target.removed = true;
+                targets.remove(target.camera.getId());
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            schedule.removeIf(target -> target.removed);
+            for (EdgeNodeSlots slots : edgeNodes.values()) {
+                slots.waiting.removeIf(target -> target.removed);
+            }
+        }
+        targetCount.set(targets.size());
+        log.info("Camera health roster: {} cameras ({} added, {} removed)", targets.size(), added, removed);
+    }
+
+    private void dispatchDue(long now) {
+        while (inFlight < maxConcurrency && !schedule.isEmpty() && schedule.peek().nextProbeAt <= now) {
+            Target target = schedule.poll();
+            EdgeNodeSlots slots = edgeNodes.computeIfAbsent(target.edgeKey, key -> new EdgeNodeSlots());
+            if (slots.inFlight >= edgeNodeConcurrency) {
+                slots.waiting.addLast(target);
+                deferredByEdgeNode.incrementAndGet();
+                continue;
+            }
+            dispatch(target, slots);
+        }
+    }
+
+    private void dispatch(Target target, EdgeNodeSlots slots) {
+        Camera.CameraStatus persisted = target.persisted;
+        if (persisted != null && !MANAGED_STATUSES.contains(persisted)) {
+            // 维护中或首次探测尚未完成，只推迟下次检查
+            target.nextProbeAt = System.currentTimeMillis() + jitter(intervalMs, 0.1);
+            schedule.add(target);
+            return;
+        }
+        slots.inFlight++;
+        inFlight++;
+        target.inFlight = true;
+        target.slots = slots;
+        Camera camera = target.camera;
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            boolean up;
+            try {
+                up = streamingService.testCameraConnection(camera);
+            } catch (Exception e) {
+                log.debug("Health probe for camera {} failed: {}", camera.getId(), e.getMessage());
+                up = false;
+            }
+            probeNanos.addAndGet(System.nanoTime() - start);
+            probes.incrementAndGet();
+            if (!up) {
+                failures.incrementAndGet();
+            }
+            target.result = up;
+            completions.add(target);
+        });
+    }
+
+    private void onCompleted(Target target) {
+        target.inFlight = false;
+        inFlight--;
+        EdgeNodeSlots slots = target.slots;
+        target.slots = null;
+        slots.inFlight--;
+        // 优先放行同一节点上排队的探测
+        if (!slots.waiting.isEmpty() && inFlight < maxConcurrency) {
+            dispatch(slots.waiting.pollFirst(), slots);
+        }
+        if (target.removed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean up = target.result;
+        if (target.observed != null && target.observed != up) {
+            target.flapScore = decayedFlapScore(target, now) + 1;
+            target.flapUpdatedAt = now;
+        }
+        target.observed = up;
+        if (up) {
+            target.consecutiveFailures = 0;
+            target.consecutiveSuccesses++;
+        } else {
+            target.consecutiveSuccesses = 0;
+            target.consecutiveFailures++;
+        }
+        recordTransition(target, up);
+        boolean flapping = decayedFlapScore(target, now) >= flapThreshold;
+        if (flapping != target.flapping) {
+            target.flapping = flapping;
+            flappingCount.addAndGet(flapping ? 1 : -1);
+        }
+        target.nextProbeAt = now + nextInterval(target);
+        schedule.add(target);
+    }
+
+    private void recordTransition(Target target, boolean up) {
+        Camera.CameraStatus status = null;
+        if (up && target.persisted != Camera.CameraStatus.ONLINE) {
+            status = Camera.CameraStatus.ONLINE;
+        } else if (!up && target.persisted == Camera.CameraStatus.ONLINE
+                && target.consecutiveFailures >= offlineAfterFailures) {
+            // 单次失败不下线，避免偶发超时产生两次写入
+            status = Camera.CameraStatus.OFFLINE;
+        }
+        if (status != null) {
+            target.persisted = status;
+            transitions.add(new Transition(target.camera.getId(), status));
+            transitionsRecorded.incrementAndGet();
+        }
+    }
+
+    private long nextInterval(Target target) {
+        if (target.flapping) {
+            return jitter(flapIntervalMs, 0.1);
+        }
+        if (!target.observed) {
+            if (target.consecutiveFailures < offlineAfterFailures) {
+                // 尽快确认是否真的下线
+                return jitter(retryIntervalMs, 0.1);
+            }
+            int exponent = Math.min(target.consecutiveFailures - offlineAfterFailures, MAX_BACKOFF_EXPONENT);
+            long backoff = Math.min(maxBackoffMs, retryIntervalMs << exponent);
+            // 等量抖动：一半固定，一半随机，避免同时掉线的一批设备同步重试
+            return backoff / 2 + (long) (ThreadLocalRandom.current().nextDouble() * (backoff / 2));
+        }
+        int exponent = Math.min(target.consecutiveSuccesses / Math.max(1, stableProbesPerDoubling),
+                MAX_BACKOFF_EXPONENT);
+        return jitter(Math.min(maxIntervalMs, intervalMs << exponent), 0.1);
+    }
+
+    private double decayedFlapScore(Target target, long now) {
+        if (target.flapScore == 0) {
+            return 0;
+        }
+        return target.flapScore * Math.pow(0.5, (double) (now - target.flapUpdatedAt) / flapHalfLifeMs);
+    }
+
+    private static long jitter(long value, double ratio) {
+        return (long) (value * (1 - ratio + ThreadLocalRandom.current().nextDouble() * 2 * ratio));
+    }
+
+    private static long edgeKey(Camera camera) {
+        return camera.getEdgeNodeId() == null ? UNASSIGNED_EDGE_NODE : camera.getEdgeNodeId();
+    }
+
+    /**
+     * 单个摄像头的巡检状态，除camera和result外只在调度线程内访问
+     */
+    private static final class Target {
+        private volatile Camera camera;
+        private long edgeKey;
+        private Camera.CameraStatus persisted;
+        private Boolean observed;
+        private volatile boolean result;
+        private int consecutiveFailures;
+        private int consecutiveSuccesses;
+        private double flapScore;
+        private long flapUpdatedAt;
+        private boolean flapping;
+        private long nextProbeAt;
+        private boolean inFlight;
+        /**
+         * 探测进行中时占用名额的节点，摄像头在探测期间改挂其他节点时仍归还到原节点
+         */
+        private EdgeNodeSlots slots;
+        private boolean removed;
+
+        Target(Camera camera, long edgeKey) {
+            this.camera = camera;
+            this.edgeKey = edgeKey;
+            this.persisted = camera.getStatus();
+        }
+    }
+
+    private static final class EdgeNodeSlots {
+        private final ArrayDeque<Target> waiting = new ArrayDeque<>();
+        private int inFlight;
+    }
+
+    private static final class Transition {
+        private final long cameraId;
+        private final Camera.CameraStatus status;
+
+        Transition(long cameraId, Camera.CameraStatus status) {
+            this.cameraId = cameraId;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.model.Camera;
+import com.aick.mmp.repository.CameraRepository;
+import com.aick.mmp.service.CameraProbeService;
+import com.aick.mmp.service.StreamingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 摄像头连通性探测流水线
+ * <p>
+ * 探测在固定大小的线程池中执行，排队数有上限；每次探测按协议设置超时，超时后立即回写OFFLINE并中断探测线程。
+ * 结果用一条条件UPDATE回写，只在摄像头仍处于CONNECTING时生效，探测期间不持有数据库连接。
+ * 重启或排队溢出导致长时间停留在CONNECTING的摄像头由定时任务重新提交。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CameraProbeServiceImpl implements CameraProbeService {
+
+    private final CameraRepository cameraRepository;
+    private final StreamingService streamingService;
+
+    @Value("${camera.probe.max-concurrency:16}")
+    private int maxConcurrency = 16;
+
+    @Value("${camera.probe.queue-capacity:10000}")
+    private int queueCapacity = 10000;
+
+    @Value("${camera.probe.timeout.rtsp:10000}")
+    private long rtspTimeoutMs = 10000;
+
+    @Value("${camera.probe.timeout.onvif:8000}")
+    private long onvifTimeoutMs = 8000;
+
+    @Value("${camera.probe.timeout.gb28181:3000}")
+    private long gb28181TimeoutMs = 3000;
+
+    @Value("${camera.probe.timeout.http:5000}")
+    private long httpTimeoutMs = 5000;
+
+    @Value("${camera.probe.stale-after:120000}")
+    private long staleAfterMs = 120000;
+
+    private final Map<Long, CompletableFuture<Boolean>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong online = new AtomicLong();
+    private final AtomicLong offline = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private ThreadPoolExecutor executor;
+    private ScheduledThreadPoolExecutor timer;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "camera-probe-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "camera-probe-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> submit(Long cameraId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 事务提交前探测线程看不到新插入的行，也不能让探测结果先于创建提交
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        enqueue(cameraId).whenComplete((value, error) -> {
+                            if (error != null) {
+                                result.completeExceptionally(error);
+                            } else {
+                                result.complete(value);
+                            }
+                        });
+                    } else {
+                        result.complete(false);
+                    }
+                }
+            });
+            return result;
+        }
+        return enqueue(cameraId);
+    }
+
+    @Override
+    public void submitAll(Collection<Long> cameraIds) {
+        for (Long cameraId : cameraIds) {
+            submit(cameraId);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("submitted", submitted.get());
+        statistics.put("coalesced", coalesced.get());
+        statistics.put("online", online.get());
+        statistics.put("offline", offline.get());
+        statistics.put("timedOut", timedOut.get());
+        statistics.put("rejected", rejected.get());
+        statistics.put("staleResubmitted", stale.get());
+        statistics.put("active", executor.getActiveCount());
+        statistics.put("queued", executor.getQueue().size());
+        return statistics;
+    }
+
+    /**
+     * 重新提交长时间停留在CONNECTING的摄像头（服务重启前未完成或排队已满被拒绝的探测）
+     */
+    @Scheduled(fixedDelayString = "${camera.probe.stale-check-interval:60000}")
+    public void resubmitStaleProbes() {
+        LocalDateTime threshold = LocalDateTime.now().minusNanos(staleAfterMs * 1_000_000L);
+        List<Long> cameraIds = new ArrayList<>();
+        for (Camera camera : cameraRepository.findByStatusAndUpdatedAtBefore(Camera.CameraStatus.CONNECTING, threshold)) {
+            if (!pending.containsKey(camera.getId())) {
+                cameraIds.add(camera.getId());
+            }
+        }
+        if (!cameraIds.isEmpty()) {
+            log.info("Resubmitting connection probes for {} cameras stuck in CONNECTING", cameraIds.size());
+            stale.addAndGet(cameraIds.size());
+            submitAll(cameraIds);
+        }
+    }
+
+    private CompletableFuture<Boolean> enqueue(Long cameraId) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = pending.putIfAbsent(cameraId, result);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        submitted.incrementAndGet();
+        result.whenComplete((value, error) -> pending.remove(cameraId, result));
+        try {
+            executor.execute(() -> probe(cameraId, result));
+        } catch (RejectedExecutionException e) {
+            // 摄像头保持CONNECTING，由定时任务稍后重新提交
+            rejected.incrementAndGet();
+            log.warn("Camera probe queue is full, deferring probe for camera {}", cameraId);
+            result.complete(false);
+        }
+        return result;
+    }
+
+    private void probe(Long cameraId, CompletableFuture<Boolean> result) {
+        if (result.isDone()) {
+            return;
+        }
+        Camera camera = cameraRepository.findById(cameraId).orElse(null);
+        if (camera == null || camera.getStatus() != Camera.CameraStatus.CONNECTING) {
+            result.complete(false);
+            return;
+        }
+        long timeoutMs = timeoutFor(camera.getProtocol());
+        Thread worker = Thread.currentThread();
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            // 在锁内中断，探测线程随后进入complete时中断已送达，可以安全清除
+            synchronized (result) {
+                if (complete(camera, result, false)) {
+                    timedOut.incrementAndGet();
+                    log.warn("Connection probe for camera {} timed out after {} ms", cameraId, timeoutMs);
+                    worker.interrupt();
+                }
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        boolean reachable;
+        try {
+            reachable = streamingService.testCameraConnection(camera);
+        } catch (Exception e) {
+            log.error("Connection probe for camera {} failed: {}", cameraId, e.getMessage());
+            reachable = false;
+        }
+        timeout.cancel(false);
+        complete(camera, result, reachable);
+        // 清除超时中断标记，避免影响线程池中的下一次探测
+        Thread.interrupted();
+    }
+
+    /**
+     * 探测结果和超时只有先到的一个生效
+     */
+    private boolean complete(Camera camera, CompletableFuture<Boolean> result, boolean reachable) {
+        synchronized (result) {
+            if (result.isDone()) {
+                return false;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            int updated;
+            try {
+                updated = reachable
+                        ? cameraRepository.updateStatusAndActiveTimeIfCurrent(camera.getId(),
+                        Camera.CameraStatus.CONNECTING, Camera.CameraStatus.ONLINE, now)
+                        : cameraRepository.updateStatusIfCurrent(camera.getId(),
+                        Camera.CameraStatus.CONNECTING, Camera.CameraStatus.OFFLINE, now);
+            } catch (Exception e) {
+                log.error("Failed to record probe result for camera {}: {}", camera.getId(), e.getMessage());
+                result.completeExceptionally(e);
+                return true;
+            }
+            (reachable ? online : offline).incrementAndGet();
+            if (updated == 0) {
+                log.debug("Camera {} left CONNECTING during the probe, result discarded", camera.getId());
+            } else {
+                log.info("Camera {} probed {}", camera.getName(), reachable ? "ONLINE" : "OFFLINE");
+            }
+            result.complete(reachable);
+            return true;
+        }
+    }
+
+    private long timeoutFor(Camera.Protocol protocol) {
+        switch (protocol) {
+            case RTSP:
+                return rtspTimeoutMs;
+            case ONVIF:
+                return onvifTimeoutMs;
+            case GB28181:
+                return gb28181TimeoutMs;
+            default:
+                return httpTimeoutMs;
+        }
+    }
+}
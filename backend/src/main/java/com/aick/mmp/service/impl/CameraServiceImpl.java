@@ -1,6 +1,10 @@
 package com.aick.mmp.service.impl;
 
+import com.aick.mmp.adapter.protocol.onvif.DiscoveredDevice;
+import com.aick.mmp.adapter.protocol.onvif.WsDiscoveryScanner;
 import com.aick.mmp.dto.CameraDTO;
+import com.aick.mmp.dto.CameraDiscoveryRequest;
+import com.aick.mmp.dto.CameraDiscoveryResultDTO;
 import com.aick.mmp.dto.CameraStatusUpdateDTO;
 import com.aick.mmp.exception.ResourceNotFoundException;
 import com.aick.mmp.exception.ServiceException;
@@ -8,20 +12,27 @@ import com.aick.mmp.model.Camera;
 import com.aick.mmp.model.EdgeNode;
 import com.aick.mmp.repository.CameraRepository;
 import com.aick.mmp.repository.EdgeNodeRepository;
+import com.aick.mmp.service.CameraProbeService;
 import com.aick.mmp.service.CameraService;
+import com.aick.mmp.service.EdgePlacementService;
 import com.aick.mmp.service.StreamingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -32,6 +43,12 @@ public class CameraServiceImpl implements CameraService {
     private final EdgeNodeRepository edgeNodeRepository;
     private final StreamingService streamingService;
     private final ModelMapper modelMapper;
+    private final WsDiscoveryScanner wsDiscoveryScanner;
+    private final CameraProbeService cameraProbeService;
+    private final EdgePlacementService edgePlacementService;
+
+    @Value("${onvif.discovery.batch-size:100}")
+    private int discoveryBatchSize = 100;
 
     @Override
     public Page<CameraDTO> getAllCameras(Pageable pageable) {
@@ -86,6 +103,11 @@ public class CameraServiceImpl implements CameraService {
         }
 
         Camera camera = convertToEntity(cameraDTO);
+        camera.setFailoverFromEdgeNodeId(null);
+        // 未指定边缘节点时按各节点的剩余容量自动分配，没有放得下的节点时留给定时分配
+        if (camera.getEdgeNodeId() == null) {
+            camera.setEdgeNodeId(edgePlacementService.place(camera));
+        }
         camera.setStatus(Camera.CameraStatus.CONNECTING);
         camera.setEnabled(true);
         camera.setCreatedAt(LocalDateTime.now());
@@ -93,25 +115,57 @@ public class CameraServiceImpl implements CameraService {
 
         Camera savedCamera = cameraRepository.save(camera);
 
-        // Attempt initial connection
-        try {
-            boolean connectionSuccessful = testCameraConnection(savedCamera.getId());
-            if (connectionSuccessful) {
-                savedCamera.setStatus(Camera.CameraStatus.ONLINE);
-                savedCamera.setLastActiveTime(LocalDateTime.now());
-                cameraRepository.save(savedCamera);
-            } else {
-                savedCamera.setStatus(Camera.CameraStatus.OFFLINE);
-                cameraRepository.save(savedCamera);
-                log.warn("Initial connection to camera failed: {}", savedCamera.getName());
+        // 连通性探测在事务提交后异步执行，结果回写状态，不占用本事务的数据库连接
+        cameraProbeService.submit(savedCamera.getId());
+
+        return convertToDto(savedCamera);
+    }
+
+    /**
+     * 扫描ONVIF设备并批量入库；每批在各自的事务中写入，扫描期间不持有数据库事务，
+     * 已存在（连接地址相同）的设备跳过。新摄像头以CONNECTING状态入库，每批写入后提交异步连通性探测
+     */
+    @Override
+    public CameraDiscoveryResultDTO discoverCameras(CameraDiscoveryRequest request) {
+        List<String> subnets = request.getSubnets() != null && !request.getSubnets().isEmpty()
+                ? request.getSubnets() : wsDiscoveryScanner.getDefaultSubnets();
+        boolean multicast = request.getMulticast() == null || request.getMulticast();
+        log.info("Discovering ONVIF cameras in {} (multicast: {})", subnets, multicast);
+
+        EdgeNode edgeNode = null;
+        if (request.getEdgeNodeId() != null) {
+            edgeNode = edgeNodeRepository.findById(request.getEdgeNodeId())
+                    .orElseThrow(() -> new ResourceNotFoundException("Edge node not found with id: " + request.getEdgeNodeId()));
+        }
+
+        String edgeNodeName = edgeNode != null ? edgeNode.getName() : null;
+        List<Camera> batch = new ArrayList<>(discoveryBatchSize);
+        List<CameraDTO> created = new ArrayList<>();
+        long[] existing = new long[1];
+        WsDiscoveryScanner.ScanResult result = wsDiscoveryScanner.scan(subnets, multicast, device -> {
+            batch.add(toDiscoveredCamera(device, request));
+            if (batch.size() >= discoveryBatchSize) {
+                existing[0] += saveDiscoveredCameras(batch, edgeNodeName, created);
             }
-        } catch (Exception e) {
-            log.error("Error testing camera connection: {}", e.getMessage());
-            savedCamera.setStatus(Camera.CameraStatus.ERROR);
-            cameraRepository.save(savedCamera);
+        });
+        existing[0] += saveDiscoveredCameras(batch, edgeNodeName, created);
+        if (edgeNode == null && !created.isEmpty()) {
+            // 未指定边缘节点的一批摄像头一次性分配
+            edgePlacementService.placeUnassigned();
         }
 
-        return convertToDto(savedCamera);
+        log.info("Discovery probed {} hosts in {} ms: {} devices found, {} cameras created, {} already registered",
+                result.getHostsProbed(), result.getDurationMillis(), result.getDevicesFound(), created.size(),
+                existing[0]);
+        return CameraDiscoveryResultDTO.builder()
+                .hostsProbed(result.getHostsProbed())
+                .responses(result.getResponses())
+                .devicesFound(result.getDevicesFound())
+                .camerasCreated(created.size())
+                .camerasExisting(existing[0])
+                .durationMillis(result.getDurationMillis())
+                .cameras(created)
+                .build();
     }
 
     @Override
@@ -128,6 +182,11 @@ public class CameraServiceImpl implements CameraService {
                     .orElseThrow(() -> new ResourceNotFoundException("Edge node not found with id: " + cameraDTO.getEdgeNodeId()));
         }
 
+        // 手动指定其他节点后不再迁回失联前的节点
+        if (!Objects.equals(cameraDTO.getEdgeNodeId(), existingCamera.getEdgeNodeId())) {
+            existingCamera.setFailoverFromEdgeNodeId(null);
+        }
+
         // Update fields
         existingCamera.setName(cameraDTO.getName());
         existingCamera.setLocation(cameraDTO.getLocation());
@@ -308,6 +367,63 @@ public class CameraServiceImpl implements CameraService {
         return dto;
     }
 
+    private Camera toDiscoveredCamera(DiscoveredDevice device, CameraDiscoveryRequest request) {
+        String name = device.getName();
+        if (name == null) {
+            name = (device.getHardware() != null ? device.getHardware() : "ONVIF Camera") + " " + device.getSourceAddress();
+        }
+        String location = request.getLocation() != null ? request.getLocation()
+                : device.getLocation() != null ? device.getLocation() : "Unassigned";
+        return Camera.builder()
+                .name(name)
+                .location(location)
+                .edgeNodeId(request.getEdgeNodeId())
+                .protocol(Camera.Protocol.ONVIF)
+                .connectionUrl(device.getDeviceServiceUrl())
+                .username(request.getUsername())
+                .password(request.getPassword())
+                .status(Camera.CameraStatus.CONNECTING)
+                .enabled(true)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * 写入一批发现的摄像头并清空批次，返回其中已存在的数量
+     */
+    private long saveDiscoveredCameras(List<Camera> batch, String edgeNodeName, List<CameraDTO> created) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Set<String> urls = new HashSet<>();
+        for (Camera camera : batch) {
+            urls.add(camera.getConnectionUrl());
+        }
+        Set<String> registered = new HashSet<>();
+        for (Camera camera : cameraRepository.findByConnectionUrlIn(urls)) {
+            registered.add(camera.getConnectionUrl());
+        }
+        List<Camera> cameras = new ArrayList<>(batch.size());
+        for (Camera camera : batch) {
+            // 同一批内不同EndpointReference上报相同地址时也只保留一个
+            if (registered.add(camera.getConnectionUrl())) {
+                cameras.add(camera);
+            }
+        }
+        long skipped = batch.size() - cameras.size();
+        batch.clear();
+        List<Long> cameraIds = new ArrayList<>(cameras.size());
+        for (Camera camera : cameraRepository.saveAll(cameras)) {
+            CameraDTO dto = modelMapper.map(camera, CameraDTO.class);
+            dto.setEdgeNodeName(edgeNodeName);
+            created.add(dto);
+            cameraIds.add(camera.getId());
+        }
+        cameraProbeService.submitAll(cameraIds);
+        return skipped;
+    }
+
     private Camera convertToEntity(CameraDTO dto) {
         return modelMapper.map(dto, Camera.class);
     }
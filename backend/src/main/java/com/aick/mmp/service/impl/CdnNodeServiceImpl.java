@@ -1,10 +1,14 @@
 package com.aick.mmp.service.impl;
 
+import com.aick.mmp.cdn.CdnNodeSelector;
 import com.aick.mmp.dto.CdnNodeDTO;
+import com.aick.mmp.dto.NodeHeartbeatMessage;
 import com.aick.mmp.exception.ServiceException;
+import com.aick.mmp.metrics.TimeSeriesStore;
 import com.aick.mmp.model.CdnNode;
 import com.aick.mmp.repository.CdnNodeRepository;
 import com.aick.mmp.service.CdnNodeService;
+import com.aick.mmp.service.NodeFailureDetector;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -13,11 +17,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.HashMap;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -26,6 +30,9 @@ public class CdnNodeServiceImpl implements CdnNodeService {
 
 
     private final CdnNodeRepository cdnNodeRepository;
+    private final TimeSeriesStore timeSeriesStore;
+    private final NodeFailureDetector nodeFailureDetector;
+    private final CdnNodeSelector cdnNodeSelector;
 
 
 
@@ -74,6 +81,7 @@ public class CdnNodeServiceImpl implements CdnNodeService {
                 .build();
 
         CdnNode savedNode = cdnNodeRepository.save(cdnNode);
+        cdnNodeSelector.update(savedNode);
         log.info("Created new CDN node: {} ({}) in region {}",
                 savedNode.getName(), savedNode.getIpAddress(), savedNode.getLocation());
         return convertToDTO(savedNode);
@@ -98,6 +106,7 @@ public class CdnNodeServiceImpl implements CdnNodeService {
         cdnNode.setLastHeartbeat(LocalDateTime.now());
 
         CdnNode updatedNode = cdnNodeRepository.save(cdnNode);
+        cdnNodeSelector.update(updatedNode);
         return convertToDTO(updatedNode);
     }
 
@@ -114,6 +123,7 @@ public class CdnNodeServiceImpl implements CdnNodeService {
         cdnNode.setLastHeartbeat(LocalDateTime.now());
 
         cdnNodeRepository.save(cdnNode);
+        cdnNodeSelector.update(cdnNode);
         log.info("Updated CDN node status: {} (ID: {}) - {}", cdnNode.getName(), id, newStatus);
     }
 
@@ -125,6 +135,8 @@ public class CdnNodeServiceImpl implements CdnNodeService {
         }
 
         cdnNodeRepository.deleteById(id);
+        nodeFailureDetector.remove(NodeHeartbeatMessage.NodeType.CDN, id);
+        cdnNodeSelector.remove(id);
         log.info("Deleted CDN node with id: {}", id);
     }
 
@@ -146,6 +158,9 @@ public class CdnNodeServiceImpl implements CdnNodeService {
         }
 
         cdnNodeRepository.save(cdnNode);
+        nodeFailureDetector.heartbeat(NodeHeartbeatMessage.NodeType.CDN, cdnNode.getId());
+        cdnNodeSelector.update(cdnNode);
+        timeSeriesStore.record("cdn:" + nodeId, metrics, System.currentTimeMillis());
 
         // 分析网络指标
 
@@ -153,20 +168,23 @@ public class CdnNodeServiceImpl implements CdnNodeService {
 
     @Override
     public List<CdnNodeDTO> getBestCdnNodesForRegion(String region, int count) {
-        // 获取指定区域内健康的CDN节点
-        List<CdnNode> candidates = cdnNodeRepository.findByRegionAndStatusOrderByCurrentLoadAsc(region, CdnNode.NodeStatus.ONLINE);
-
-        if (candidates.isEmpty()) {
-            // 如果指定区域没有可用节点，获取全局健康节点
-            log.warn("No healthy CDN nodes in region {}. Using global nodes.", region);
-            candidates = cdnNodeRepository.findByStatusOrderByCurrentLoadAsc(CdnNode.NodeStatus.ONLINE);
+        if (count <= 0) {
+            return new ArrayList<>();
         }
-
-        // 返回指定数量的最佳节点（负载最低的）
-        return candidates.stream()
-                .limit(count)
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        // 在内存中按剩余容量做两次随机选择，区域内没有可用节点时回退到全局，第一个节点计入负载
+        long[] selected = new long[count];
+        int found = cdnNodeSelector.select(region, count, selected);
+        if (found == 0) {
+            log.warn("No healthy CDN nodes available for region {}", region);
+        }
+        List<CdnNodeDTO> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            CdnNode cdnNode = cdnNodeSelector.getNode(selected[i]);
+            if (cdnNode != null) {
+                result.add(convertToDTO(cdnNode));
+            }
+        }
+        return result;
     }
 
     @Override
@@ -183,6 +201,7 @@ public class CdnNodeServiceImpl implements CdnNodeService {
                 put("currentLoad", cdnNode.getCurrentLoad());
                 put("loadPercentage", (cdnNode.getCurrentLoad() * 100.0) / cdnNode.getCapacity());
                 put("lastHeartbeat", cdnNode.getLastHeartbeat());
+                put("suspicion", nodeFailureDetector.getSuspicion(NodeHeartbeatMessage.NodeType.CDN, nodeId));
         }};
     }
 
@@ -0,0 +1,97 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.edge.EdgeCommandClient;
+import com.aick.mmp.exception.ServiceException;
+import com.aick.mmp.model.EdgeNode;
+import com.aick.mmp.repository.EdgeNodeRepository;
+import com.aick.mmp.service.EdgeCommandService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 边缘节点命令下发：按节点的ipAddress和port通过{@link EdgeCommandClient}的长连接发送
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EdgeCommandServiceImpl implements EdgeCommandService {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final EdgeNodeRepository edgeNodeRepository;
+    private final EdgeCommandClient edgeCommandClient;
+
+    @Override
+    public CompletableFuture<Map<String, Object>> send(Long edgeNodeId, String command, Map<String, ?> params) {
+        EdgeNode edgeNode = edgeNodeRepository.findById(edgeNodeId)
+                .orElseThrow(() -> new ServiceException("Edge node not found with id: " + edgeNodeId));
+        if (!edgeNode.isEnabled()) {
+            throw new ServiceException("Edge node is disabled: " + edgeNodeId);
+        }
+        // 在调用线程完成域名解析，避免阻塞IO线程
+        InetSocketAddress address = new InetSocketAddress(edgeNode.getIpAddress(), edgeNode.getPort());
+        if (address.isUnresolved()) {
+            throw new ServiceException("Cannot resolve edge node address: " + edgeNode.getIpAddress());
+        }
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(params != null ? params : Collections.emptyMap());
+        } catch (JsonProcessingException e) {
+            throw new ServiceException("Invalid parameters for edge command " + command + ": " + e.getMessage());
+        }
+        return edgeCommandClient.send(edgeNodeId, edgeNode.getUuid(), address, command, body)
+                .thenApply(EdgeCommandServiceImpl::parse);
+    }
+
+    @Override
+    public Map<String, Object> execute(Long edgeNodeId, String command, Map<String, ?> params) {
+        try {
+            return send(edgeNodeId, command, params).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof ServiceException) {
+                throw (ServiceException) cause;
+            }
+            throw new ServiceException("Edge command " + command + " to node " + edgeNodeId + " failed: "
+                    + cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public void disconnect(Long edgeNodeId) {
+        edgeCommandClient.disconnect(edgeNodeId);
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        return edgeCommandClient.getStatistics();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parse(String body) {
+        if (body.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        try {
+            Object value = objectMapper.readValue(body, Object.class);
+            if (value instanceof Map) {
+                return (Map<String, Object>) value;
+            }
+            Map<String, Object> result = new HashMap<>();
+            result.put("result", value);
+            return result;
+        } catch (JsonProcessingException e) {
+            throw new ServiceException("Invalid response from edge node: " + e.getMessage());
+        }
+    }
+}
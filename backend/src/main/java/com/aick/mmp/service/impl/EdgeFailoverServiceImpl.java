@@ -0,0 +1,517 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.exception.ServiceException;
+import com.aick.mmp.model.Camera;
+import com.aick.mmp.model.EdgeNode;
+import com.aick.mmp.model.StreamSession;
+import com.aick.mmp.repository.CameraRepository;
+import com.aick.mmp.repository.EdgeNodeRepository;
+import com.aick.mmp.service.EdgeFailoverService;
+import com.aick.mmp.service.EdgePlacementService;
+import com.aick.mmp.service.StreamingService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 边缘节点失联转移
+ * <p>
+ * 节点被标记为OFFLINE后，由{@link EdgePlacementService}按同一位置其他在线节点的剩余容量为其上的摄像头计算新节点，
+ * 按目标节点批量UPDATE，并在摄像头上记录原节点；同一位置放不下的摄像头留在原节点，由定时分配在orphan-after后处理。
+ * 有活动会话的摄像头在parallelism个线程上并行重启流，每个目标节点同时最多max-concurrent-per-node个，
+ * 重启按目标节点轮流排列，避免某个存活节点同时承受大量的流建立。
+ * 恢复时间从检测到失联算起，到最后一个摄像头的流重启完成为止。
+ * 节点恢复后，配置了auto-failback时自动迁回，否则由运维通过接口手动迁回；手动给摄像头指定过节点的不再迁回。
+ * 批量UPDATE只更新仍满足条件的摄像头，更新行数不足时回查实际移动的摄像头，只重启这些摄像头的流；
+ * 移动后按实际摄像头数刷新涉及节点的currentCameraCount。
+ */
+@Service
+@Slf4j
+public class EdgeFailoverServiceImpl implements EdgeFailoverService {
+
+    /**
+     * 统计中保留的最近完成的转移和迁回数
+     */
+    private static final int HISTORY_SIZE = 20;
+
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    private final CameraRepository cameraRepository;
+    private final EdgeNodeRepository edgeNodeRepository;
+    private final EdgePlacementService edgePlacementService;
+    private final StreamingService streamingService;
+
+    @Value("${edge-node.failover.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${edge-node.failover.parallelism:16}")
+    private int parallelism = 16;
+
+    @Value("${edge-node.failover.max-concurrent-per-node:4}")
+    private int maxConcurrentPerNode = 4;
+
+    @Value("${edge-node.failover.restart-attempts:2}")
+    private int restartAttempts = 2;
+
+    @Value("${edge-node.failover.auto-failback:false}")
+    private boolean autoFailback = false;
+
+    /**
+     * 恢复时间目标，超过时记录警告
+     */
+    @Value("${edge-node.failover.recovery-target:30000}")
+    private long recoveryTargetMs = 30000;
+
+    private final Map<String, Recovery> active = new ConcurrentHashMap<>();
+    private final Map<Long, Semaphore> nodePermits = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> history = new ArrayDeque<>();
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong failbacks = new AtomicLong();
+    private final AtomicLong camerasMoved = new AtomicLong();
+    private final AtomicLong camerasUnplaced = new AtomicLong();
+    private final AtomicLong streamsRestarted = new AtomicLong();
+    private final AtomicLong restartFailures = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong overTarget = new AtomicLong();
+    private final AtomicLong totalRecoveryMillis = new AtomicLong();
+    private final AtomicLong maxRecoveryMillis = new AtomicLong();
+    private ExecutorService coordinator;
+    private ExecutorService restarts;
+
+    @Autowired
+    public EdgeFailoverServiceImpl(CameraRepository cameraRepository, EdgeNodeRepository edgeNodeRepository,
+                                   EdgePlacementService edgePlacementService, StreamingService streamingService) {
+        this.cameraRepository = cameraRepository;
+        this.edgeNodeRepository = edgeNodeRepository;
+        this.edgePlacementService = edgePlacementService;
+        this.streamingService = streamingService;
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public EdgeFailoverServiceImpl(CameraRepository cameraRepository, EdgeNodeRepository edgeNodeRepository,
+                                   EdgePlacementService edgePlacementService, StreamingService streamingService,
+                                   int parallelism, int maxConcurrentPerNode) {
+        this(cameraRepository, edgeNodeRepository, edgePlacementService, streamingService);
+        this.parallelism = parallelism;
+        this.maxConcurrentPerNode = maxConcurrentPerNode;
+    }
+
+    @PostConstruct
+    public void start() {
+        coordinator = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "edge-failover");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threads = new AtomicInteger();
+        restarts = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "edge-failover-restart-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        restarts.shutdownNow();
+    }
+
+    @Override
+    public void failover(Collection<Long> edgeNodeIds) {
+        if (!enabled) {
+            return;
+        }
+        long detectedAt = System.currentTimeMillis();
+        for (Long edgeNodeId : edgeNodeIds) {
+            coordinator.execute(() -> {
+                try {
+                    failover(edgeNodeId, detectedAt);
+                } catch (Exception e) {
+                    log.error("Failover of edge node {} failed: {}", edgeNodeId, e.getMessage(), e);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void recovered(Collection<Long> edgeNodeIds) {
+        if (!enabled) {
+            return;
+        }
+        for (Long edgeNodeId : edgeNodeIds) {
+            coordinator.execute(() -> {
+                try {
+                    if (autoFailback) {
+                        failback(edgeNodeId);
+                    } else {
+                        long moved = cameraRepository.countByFailoverFromEdgeNodeId(edgeNodeId);
+                        if (moved > 0) {
+                            log.info("Edge node {} is back online; {} cameras stay on their failover nodes "
+                                    + "until they are failed back", edgeNodeId, moved);
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("Failback of edge node {} failed: {}", edgeNodeId, e.getMessage(), e);
+                }
+            });
+        }
+    }
+
+    @Override
+    public int failback(Long edgeNodeId) {
+        EdgeNode edgeNode = edgeNodeRepository.findById(edgeNodeId)
+                .orElseThrow(() -> new ServiceException("Edge node not found with id: " + edgeNodeId));
+        if (edgeNode.getStatus() != EdgeNode.NodeStatus.ONLINE) {
+            throw new ServiceException("Edge node is not online: " + edgeNodeId);
+        }
+        List<Camera> cameras = cameraRepository.findByFailoverFromEdgeNodeId(edgeNodeId);
+        if (cameras.isEmpty()) {
+            return 0;
+        }
+        Recovery recovery = new Recovery("failback", edgeNodeId, System.currentTimeMillis(), cameras.size());
+        if (active.putIfAbsent(recovery.key(), recovery) != null) {
+            throw new ServiceException("Failback of edge node " + edgeNodeId + " is already running");
+        }
+        failbacks.incrementAndGet();
+
+        // 迁回前按当前所在节点找出有活动会话的摄像头
+        Set<Long> currentNodes = new HashSet<>();
+        cameras.forEach(camera -> currentNodes.add(camera.getEdgeNodeId()));
+        Set<Long> streaming = new HashSet<>();
+        currentNodes.forEach(nodeId -> streaming.addAll(streamingCameras(nodeId)));
+
+        List<Restart> pending = new ArrayList<>();
+        Set<Long> touched = new HashSet<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < cameras.size(); from += WRITE_BATCH_SIZE) {
+            List<Camera> batch = cameras.subList(from, Math.min(cameras.size(), from + WRITE_BATCH_SIZE));
+            List<Long> ids = new ArrayList<>(batch.size());
+            batch.forEach(camera -> ids.add(camera.getId()));
+            Set<Long> moved;
+            try {
+                moved = moved(ids, cameraRepository.failbackEdgeNodeIn(ids, edgeNodeId, now), edgeNodeId);
+            } catch (Exception e) {
+                writeFailures.incrementAndGet();
+                log.warn("Failed to fail back {} cameras to edge node {}: {}", ids.size(), edgeNodeId, e.getMessage());
+                continue;
+            }
+            recovery.moved.addAndGet(moved.size());
+            for (Camera camera : batch) {
+                if (!moved.contains(camera.getId())) {
+                    // 期间被手动指定了节点或已迁回
+                    continue;
+                }
+                if (camera.getEdgeNodeId() != null) {
+                    touched.add(camera.getEdgeNodeId());
+                }
+                camera.setEdgeNodeId(edgeNodeId);
+                camera.setFailoverFromEdgeNodeId(null);
+                if (streaming.contains(camera.getId())) {
+                    pending.add(new Restart(camera, edgeNodeId));
+                }
+            }
+        }
+        if (!touched.isEmpty()) {
+            touched.add(edgeNodeId);
+            refreshCameraCounts(touched);
+        }
+        camerasMoved.addAndGet(recovery.moved.get());
+        log.info("Failing back {} cameras to edge node {}, restarting {} streams", recovery.moved.get(), edgeNodeId,
+                pending.size());
+        restart(recovery, pending);
+        return recovery.moved.get();
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        long completedCount = completed.get();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("failovers", failovers.get());
+        statistics.put("failbacks", failbacks.get());
+        statistics.put("camerasMoved", camerasMoved.get());
+        statistics.put("camerasUnplaced", camerasUnplaced.get());
+        statistics.put("streamsRestarted", streamsRestarted.get());
+        statistics.put("restartFailures", restartFailures.get());
+        statistics.put("writeFailures", writeFailures.get());
+        statistics.put("averageRecoveryMillis",
+                completedCount == 0 ? 0.0 : totalRecoveryMillis.get() / (double) completedCount);
+        statistics.put("maxRecoveryMillis", maxRecoveryMillis.get());
+        statistics.put("recoveryTargetMillis", recoveryTargetMs);
+        statistics.put("overTarget", overTarget.get());
+        List<Map<String, Object>> running = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        active.values().forEach(recovery -> running.add(recovery.toMap(now)));
+        statistics.put("active", running);
+        synchronized (history) {
+            statistics.put("recent", new ArrayList<>(history));
+        }
+        return statistics;
+    }
+
+    private void failover(Long source, long detectedAt) {
+        EdgeNode edgeNode = edgeNodeRepository.findById(source).orElse(null);
+        if (edgeNode == null || edgeNode.getStatus() != EdgeNode.NodeStatus.OFFLINE) {
+            // 期间已恢复或被删除
+            return;
+        }
+        List<Camera> cameras = cameraRepository.findByEdgeNodeIdAndEnabledTrue(source);
+        if (cameras.isEmpty()) {
+            return;
+        }
+        Recovery recovery = new Recovery("failover", source, detectedAt, cameras.size());
+        if (active.putIfAbsent(recovery.key(), recovery) != null) {
+            return;
+        }
+        failovers.incrementAndGet();
+        Set<Long> streaming = streamingCameras(source);
+        Map<Long, Long> assignments = edgePlacementService.plan(cameras, false);
+
+        Map<Long, List<Camera>> byTarget = new LinkedHashMap<>();
+        for (Camera camera : cameras) {
+            Long target = assignments.get(camera.getId());
+            if (target != null) {
+                byTarget.computeIfAbsent(target, key -> new ArrayList<>()).add(camera);
+            }
+        }
+        List<Restart> pending = new ArrayList<>();
+        Set<Long> touched = new HashSet<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Long, List<Camera>> entry : byTarget.entrySet()) {
+            Long target = entry.getKey();
+            List<Long> ids = new ArrayList<>(entry.getValue().size());
+            entry.getValue().forEach(camera -> ids.add(camera.getId()));
+            Set<Long> moved;
+            try {
+                moved = moved(ids, cameraRepository.failoverEdgeNodeIn(ids, source, target, now), target);
+            } catch (Exception e) {
+                // 留在原节点，由定时分配处理
+                writeFailures.incrementAndGet();
+                log.warn("Failed to move {} cameras from edge node {} to {}: {}", ids.size(), source, target,
+                        e.getMessage());
+                continue;
+            }
+            recovery.moved.addAndGet(moved.size());
+            if (!moved.isEmpty()) {
+                touched.add(target);
+            }
+            for (Camera camera : entry.getValue()) {
+                if (!moved.contains(camera.getId())) {
+                    // 期间已被移走，由移动它的一方负责
+                    continue;
+                }
+                camera.setEdgeNodeId(target);
+                if (streaming.contains(camera.getId())) {
+                    pending.add(new Restart(camera, target));
+                }
+            }
+        }
+        if (!touched.isEmpty()) {
+            touched.add(source);
+            refreshCameraCounts(touched);
+        }
+        int unplaced = cameras.size() - assignments.size();
+        recovery.unplaced = unplaced;
+        camerasMoved.addAndGet(recovery.moved.get());
+        camerasUnplaced.addAndGet(unplaced);
+        recovery.reassignedAt = System.currentTimeMillis();
+        log.warn("Edge node {} is offline: moved {} of {} cameras to {} nodes in location {} ({} without capacity), "
+                        + "restarting {} streams", source, recovery.moved.get(), cameras.size(), byTarget.size(),
+                edgeNode.getLocation(), unplaced, pending.size());
+        restart(recovery, pending);
+    }
+
+    /**
+     * 条件UPDATE实际移动到target的摄像头；更新行数等于批量大小时全部移动，不需要回查
+     */
+    private Set<Long> moved(List<Long> ids, int updated, Long target) {
+        if (updated >= ids.size()) {
+            return new HashSet<>(ids);
+        }
+        if (updated == 0) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(cameraRepository.findIdsOnEdgeNode(ids, target));
+    }
+
+    /**
+     * 按实际摄像头数刷新节点的currentCameraCount，失败时等待下一次心跳或分配更新
+     */
+    private void refreshCameraCounts(Collection<Long> edgeNodeIds) {
+        for (Long edgeNodeId : edgeNodeIds) {
+            try {
+                edgeNodeRepository.updateCameraCount(edgeNodeId, (int) cameraRepository.countByEdgeNodeId(edgeNodeId));
+            } catch (Exception e) {
+                writeFailures.incrementAndGet();
+                log.warn("Failed to update camera count of edge node {}: {}", edgeNodeId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 本实例上有活动会话的摄像头
+     */
+    private Set<Long> streamingCameras(Long edgeNodeId) {
+        Set<Long> cameras = new HashSet<>();
+        for (StreamSession session : streamingService.getActiveSessionsByEdgeNode(edgeNodeId)) {
+            cameras.add(session.getCameraId());
+        }
+        return cameras;
+    }
+
+    private void restart(Recovery recovery, List<Restart> pending) {
+        recovery.streams = pending.size();
+        if (pending.isEmpty()) {
+            complete(recovery);
+            return;
+        }
+        // 按目标节点轮流排列，同时进行的重启分散在各个节点上
+        Map<Long, Deque<Restart>> byTarget = new LinkedHashMap<>();
+        pending.forEach(restart -> byTarget.computeIfAbsent(restart.target, key -> new ArrayDeque<>()).add(restart));
+        List<CompletableFuture<Void>> futures = new ArrayList<>(pending.size());
+        while (!byTarget.isEmpty()) {
+            Iterator<Deque<Restart>> queues = byTarget.values().iterator();
+            while (queues.hasNext()) {
+                Deque<Restart> queue = queues.next();
+                Restart restart = queue.poll();
+                futures.add(CompletableFuture.runAsync(() -> restart(recovery, restart), restarts));
+                if (queue.isEmpty()) {
+                    queues.remove();
+                }
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, e) -> complete(recovery));
+    }
+
+    private void restart(Recovery recovery, Restart restart) {
+        Semaphore permits = nodePermits.computeIfAbsent(restart.target, key -> new Semaphore(maxConcurrentPerNode));
+        permits.acquireUninterruptibly();
+        try {
+            RuntimeException failure = null;
+            for (int attempt = 0; attempt < restartAttempts; attempt++) {
+                try {
+                    streamsRestarted.addAndGet(streamingService.restartStreams(restart.camera));
+                    recovery.restarted.incrementAndGet();
+                    return;
+                } catch (ServiceException e) {
+                    // 失败的会话已被结束，重试只会重复重启成功的会话
+                    failure = e;
+                    break;
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            recovery.failed.incrementAndGet();
+            restartFailures.incrementAndGet();
+            log.warn("Failed to restart streams of camera {} on edge node {}: {}", restart.camera.getId(),
+                    restart.target, failure.getMessage());
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void complete(Recovery recovery) {
+        long now = System.currentTimeMillis();
+        recovery.finishedAt = now;
+        active.remove(recovery.key(), recovery);
+        long elapsed = now - recovery.startedAt;
+        completed.incrementAndGet();
+        totalRecoveryMillis.addAndGet(elapsed);
+        maxRecoveryMillis.accumulateAndGet(elapsed, Math::max);
+        synchronized (history) {
+            history.addFirst(recovery.toMap(now));
+            if (history.size() > HISTORY_SIZE) {
+                history.removeLast();
+            }
+        }
+        if (elapsed > recoveryTargetMs) {
+            overTarget.incrementAndGet();
+            log.warn("{} of edge node {} took {} ms, over the {} ms target: {} cameras moved, {} streams restarted, "
+                            + "{} failed", recovery.kind, recovery.edgeNodeId, elapsed, recoveryTargetMs,
+                    recovery.moved.get(), recovery.restarted.get(), recovery.failed.get());
+        } else {
+            log.info("{} of edge node {} finished in {} ms: {} cameras moved, {} streams restarted, {} failed",
+                    recovery.kind, recovery.edgeNodeId, elapsed, recovery.moved.get(), recovery.restarted.get(),
+                    recovery.failed.get());
+        }
+    }
+
+    private static final class Restart {
+        private final Camera camera;
+        private final Long target;
+
+        Restart(Camera camera, Long target) {
+            this.camera = camera;
+            this.target = target;
+        }
+    }
+
+    /**
+     * 一次转移或迁回的进度
+     */
+    private static final class Recovery {
+        private final String kind;
+        private final Long edgeNodeId;
+        private final long startedAt;
+        private final int cameras;
+        private final AtomicInteger moved = new AtomicInteger();
+        private final AtomicInteger restarted = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile int unplaced;
+        private volatile int streams;
+        private volatile long reassignedAt;
+        private volatile long finishedAt;
+
+        Recovery(String kind, Long edgeNodeId, long startedAt, int cameras) {
+            this.kind = kind;
+            this.edgeNodeId = edgeNodeId;
+            this.startedAt = startedAt;
+            this.cameras = cameras;
+        }
+
+        String key() {
+            return kind + ":" + edgeNodeId;
+        }
+
+        Map<String, Object> toMap(long now) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("kind", kind);
+            map.put("edgeNodeId", edgeNodeId);
+            map.put("cameras", cameras);
+            map.put("moved", moved.get());
+            map.put("unplaced", unplaced);
+            map.put("streams", streams);
+            map.put("restarted", restarted.get());
+            map.put("failed", failed.get());
+            map.put("reassignMillis", reassignedAt == 0 ? null : reassignedAt - startedAt);
+            map.put("recoveryMillis", (finishedAt == 0 ? now : finishedAt) - startedAt);
+            map.put("finished", finishedAt != 0);
+            return map;
+        }
+    }
+}
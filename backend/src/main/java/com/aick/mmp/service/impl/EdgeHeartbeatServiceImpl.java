@@ -0,0 +1,307 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.converter.MapToStringConverter;
+import com.aick.mmp.exception.ServiceException;
+import com.aick.mmp.model.EdgeNode;
+import com.aick.mmp.repository.EdgeNodeRepository;
+import com.aick.mmp.service.EdgeHeartbeatService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 边缘节点心跳写后缓冲
+ * <p>
+ * 节点第一次心跳时从数据库加载一次，之后的心跳只合并到内存中的最新状态。
+ * 定时任务只挑出状态变化、指标变化超过阈值或心跳时间在数据库中已过旧的节点，用一条JDBC批量UPDATE写入；
+ * 没有明显变化的心跳不产生写入，服务异常退出时最多丢失一个刷新周期内的变化。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EdgeHeartbeatServiceImpl implements EdgeHeartbeatService {
+
+    /**
+     * 心跳不覆盖人工设置的MAINTENANCE和UPGRADING，只更新心跳时间和指标
+     */
+    private static final String UPDATE_SQL = "UPDATE edge_nodes SET "
+            + "status = CASE WHEN status IN ('MAINTENANCE', 'UPGRADING') THEN status ELSE ? END, "
+            + "last_heartbeat_time = ?, system_metrics = ?, updated_at = ? WHERE id = ?";
+
+    /**
+     * 失联检测会改写的状态；MAINTENANCE和UPGRADING由人工设置
+     */
+    private static final Set<EdgeNode.NodeStatus> REACHABILITY_STATUSES =
+            EnumSet.of(EdgeNode.NodeStatus.ONLINE, EdgeNode.NodeStatus.CONNECTING, EdgeNode.NodeStatus.ERROR);
+
+    /**
+     * 人工设置的状态，心跳不改写（与UPDATE_SQL中的CASE一致）
+     */
+    private static final Set<EdgeNode.NodeStatus> MANUAL_STATUSES =
+            EnumSet.of(EdgeNode.NodeStatus.MAINTENANCE, EdgeNode.NodeStatus.UPGRADING);
+
+    private final EdgeNodeRepository edgeNodeRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 数值指标相对上次写入的变化超过该比例才算明显变化
+     */
+    @Value("${edge-node.heartbeat.metric-relative-change:0.05}")
+    private double metricRelativeChange = 0.05;
+
+    /**
+     * 接近0的指标按绝对值判断，避免在0附近的抖动被当作明显变化
+     */
+    @Value("${edge-node.heartbeat.metric-absolute-change:0.5}")
+    private double metricAbsoluteChange = 0.5;
+
+    /**
+     * 指标没有明显变化时，数据库中的心跳时间最多落后这么久
+     */
+    @Value("${edge-node.heartbeat.persist-interval:60000}")
+    private long persistIntervalMs = 60000;
+
+    @Value("${edge-node.heartbeat.write-batch-size:500}")
+    private int writeBatchSize = 500;
+
+    private final MapToStringConverter metricsConverter = new MapToStringConverter();
+    private final Map<Long, HeartbeatState> states = new ConcurrentHashMap<>();
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    @Override
+    public EdgeNode record(Long nodeId, Map<String, Object> metrics) {
+        while (true) {
+            HeartbeatState state = states.get(nodeId);
+            if (state == null) {
+                EdgeNode edgeNode = edgeNodeRepository.findById(nodeId)
+                        .orElseThrow(() -> new ServiceException("Edge node not found with id: " + nodeId));
+                loads.incrementAndGet();
+                HeartbeatState loaded = new HeartbeatState(edgeNode);
+                state = states.putIfAbsent(nodeId, loaded);
+                if (state == null) {
+                    state = loaded;
+                }
+            }
+            synchronized (state) {
+                if (state.evicted) {
+                    continue;
+                }
+                LocalDateTime now = LocalDateTime.now();
+                state.metrics.putAll(metrics);
+                state.lastHeartbeat = now;
+                state.edgeNode.setStatus(EdgeNode.NodeStatus.ONLINE);
+                state.edgeNode.setLastHeartbeatTime(now);
+                state.dirty = true;
+            }
+            heartbeats.incrementAndGet();
+            return state.edgeNode;
+        }
+    }
+
+    @Override
+    public void applyLatest(EdgeNode edgeNode) {
+        HeartbeatState state = states.get(edgeNode.getId());
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.evicted || state.lastHeartbeat == null) {
+                return;
+            }
+            if (!MANUAL_STATUSES.contains(edgeNode.getStatus())) {
+                edgeNode.setStatus(EdgeNode.NodeStatus.ONLINE);
+            }
+            edgeNode.setLastHeartbeatTime(state.lastHeartbeat);
+            edgeNode.setSystemMetrics(copy(state.metrics));
+        }
+    }
+
+    @Override
+    public void evict(Long nodeId) {
+        HeartbeatState state = states.remove(nodeId);
+        if (state != null) {
+            synchronized (state) {
+                state.evicted = true;
+            }
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${edge-node.heartbeat.flush-interval:5000}")
+    public synchronized void flush() {
+        long now = System.currentTimeMillis();
+        List<PendingWrite> writes = new ArrayList<>();
+        for (HeartbeatState state : states.values()) {
+            synchronized (state) {
+                if (!state.dirty || state.evicted) {
+                    continue;
+                }
+                boolean statusChanged = state.persistedStatus != EdgeNode.NodeStatus.ONLINE;
+                boolean heartbeatStale = now - state.persistedAt >= persistIntervalMs;
+                if (!statusChanged && !heartbeatStale && !changedMaterially(state.persistedMetrics, state.metrics)) {
+                    // 保持dirty，等到指标明显变化或数据库中的心跳时间过旧时再写
+                    unchanged.incrementAndGet();
+                    continue;
+                }
+                writes.add(new PendingWrite(state, copy(state.metrics), state.lastHeartbeat));
+            }
+        }
+        for (int from = 0; from < writes.size(); from += writeBatchSize) {
+            write(writes.subList(from, Math.min(writes.size(), from + writeBatchSize)), now);
+        }
+    }
+
+    @Override
+    public synchronized int markOffline(Collection<Long> nodeIds) {
+        nodeIds.forEach(this::evict);
+        return edgeNodeRepository.updateStatusIn(nodeIds, REACHABILITY_STATUSES, EdgeNode.NodeStatus.OFFLINE,
+                LocalDateTime.now());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("nodes", states.size());
+        statistics.put("heartbeats", heartbeats.get());
+        statistics.put("loads", loads.get());
+        statistics.put("rowsWritten", rowsWritten.get());
+        statistics.put("batches", batches.get());
+        statistics.put("unchangedSkipped", unchanged.get());
+        statistics.put("writeFailures", writeFailures.get());
+        return statistics;
+    }
+
+    private void write(List<PendingWrite> writes, long now) {
+        Timestamp updatedAt = new Timestamp(now);
+        List<Object[]> arguments = new ArrayList<>(writes.size());
+        for (PendingWrite write : writes) {
+            // 序列化在状态锁之外进行
+            arguments.add(new Object[]{EdgeNode.NodeStatus.ONLINE.name(), Timestamp.valueOf(write.heartbeat),
+                    metricsConverter.convertToDatabaseColumn(write.metrics), updatedAt, write.state.nodeId});
+        }
+        int[] counts;
+        try {
+            counts = jdbcTemplate.batchUpdate(UPDATE_SQL, arguments);
+        } catch (Exception e) {
+            // 状态保持dirty，下一个周期重试
+            writeFailures.incrementAndGet();
+            log.error("Failed to flush {} edge node heartbeats: {}", writes.size(), e.getMessage());
+            return;
+        }
+        batches.incrementAndGet();
+        for (int i = 0; i < writes.size(); i++) {
+            PendingWrite write = writes.get(i);
+            HeartbeatState state = write.state;
+            if (counts[i] == 0) {
+                // 节点已被删除
+                log.debug("Edge node {} no longer exists, dropping its heartbeat state", state.nodeId);
+                states.remove(state.nodeId, state);
+                continue;
+            }
+            rowsWritten.incrementAndGet();
+            synchronized (state) {
+                state.persistedStatus = EdgeNode.NodeStatus.ONLINE;
+                state.persistedMetrics = write.metrics;
+                state.persistedAt = now;
+                // 写入期间又收到的心跳留到下一个周期
+                state.dirty = state.lastHeartbeat.isAfter(write.heartbeat);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean changedMaterially(Object persisted, Object current) {
+        if (persisted instanceof Number && current instanceof Number) {
+            double before = ((Number) persisted).doubleValue();
+            double after = ((Number) current).doubleValue();
+            return Math.abs(after - before) > Math.max(metricAbsoluteChange, Math.abs(before) * metricRelativeChange);
+        }
+        if (persisted instanceof Map && current instanceof Map) {
+            Map<String, Object> before = (Map<String, Object>) persisted;
+            Map<String, Object> after = (Map<String, Object>) current;
+            if (!before.keySet().equals(after.keySet())) {
+                return true;
+            }
+            for (Map.Entry<String, Object> entry : after.entrySet()) {
+                if (changedMaterially(before.get(entry.getKey()), entry.getValue())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return !Objects.equals(persisted, current);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> copy(Map<String, Object> metrics) {
+        Map<String, Object> copy = new HashMap<>(metrics);
+        for (Map.Entry<String, Object> entry : copy.entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                entry.setValue(copy((Map<String, Object>) entry.getValue()));
+            }
+        }
+        return copy;
+    }
+
+    private static final class HeartbeatState {
+        private final Long nodeId;
+        private final EdgeNode edgeNode;
+        private final Map<String, Object> metrics;
+        private LocalDateTime lastHeartbeat;
+        private boolean dirty;
+        private boolean evicted;
+        private EdgeNode.NodeStatus persistedStatus;
+        private Map<String, Object> persistedMetrics;
+        private long persistedAt;
+
+        HeartbeatState(EdgeNode edgeNode) {
+            this.nodeId = edgeNode.getId();
+            this.edgeNode = edgeNode;
+            this.metrics = edgeNode.getSystemMetrics() != null ? copy(edgeNode.getSystemMetrics()) : new HashMap<>();
+            this.persistedStatus = edgeNode.getStatus();
+            this.persistedMetrics = copy(metrics);
+            LocalDateTime persistedHeartbeat = edgeNode.getLastHeartbeatTime();
+            this.persistedAt = persistedHeartbeat != null ? Timestamp.valueOf(persistedHeartbeat).getTime() : 0;
+        }
+    }
+
+    private static final class PendingWrite {
+        private final HeartbeatState state;
+        private final Map<String, Object> metrics;
+        private final LocalDateTime heartbeat;
+
+        PendingWrite(HeartbeatState state, Map<String, Object> metrics, LocalDateTime heartbeat) {
+            this.state = state;
+            this.metrics = metrics;
+            this.heartbeat = heartbeat;
+        }
+    }
+}
@@ -2,11 +2,22 @@ package com.aick.mmp.service.impl;
 
 import com.aick.mmp.dto.EdgeNodeDTO;
 import com.aick.mmp.dto.EdgeNodeStatusUpdateDTO;
+import com.aick.mmp.dto.NodeHeartbeatMessage;
 import com.aick.mmp.exception.ServiceException;
+import com.aick.mmp.messaging.EdgeHeartbeat;
+import com.aick.mmp.messaging.EdgeHeartbeatCodec;
+import com.aick.mmp.metrics.MetricPoint;
+import com.aick.mmp.metrics.Resolution;
+import com.aick.mmp.metrics.TimeSeriesStore;
 import com.aick.mmp.model.EdgeNode;
 import com.aick.mmp.model.EdgeNode.NodeStatus;
 import com.aick.mmp.repository.EdgeNodeRepository;
+import com.aick.mmp.service.AdaptiveBitrateService;
+import com.aick.mmp.service.EdgeCommandService;
+import com.aick.mmp.service.EdgeFailoverService;
+import com.aick.mmp.service.EdgeHeartbeatService;
 import com.aick.mmp.service.EdgeNodeService;
+import com.aick.mmp.service.NodeFailureDetector;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.util.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,12 +32,17 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -40,6 +56,17 @@ public class EdgeNodeServiceImpl implements EdgeNodeService {
 
     private final EdgeNodeRepository edgeNodeRepository;
     private final NetworkMonitorService networkMonitorService;
+    private final EdgeHeartbeatService edgeHeartbeatService;
+    private final TimeSeriesStore timeSeriesStore;
+    private final AdaptiveBitrateService adaptiveBitrateService;
+    private final NodeFailureDetector nodeFailureDetector;
+    private final EdgeFailoverService edgeFailoverService;
+    private final EdgeCommandService edgeCommandService;
+
+    /**
+     * 每个节点最近一次接收的二进制心跳，作为增量帧的基准
+     */
+    private final Map<Long, EdgeHeartbeat> lastBinaryHeartbeats = new ConcurrentHashMap<>();
 
     @Override
     public Page<EdgeNodeDTO> getAllEdgeNodes(Pageable pageable) {
@@ -117,6 +144,7 @@ public class EdgeNodeServiceImpl implements EdgeNodeService {
         edgeNode.setUpdatedAt(LocalDateTime.now());
 
         EdgeNode updatedNode = edgeNodeRepository.save(edgeNode);
+        edgeHeartbeatService.evict(id);
         return convertToDTO(updatedNode);
     }
 
@@ -127,12 +155,35 @@ public class EdgeNodeServiceImpl implements EdgeNodeService {
                 .orElseThrow(() -> new ServiceException("Edge node not found with id: " + id));
 
         EdgeNode.NodeStatus newStatus = EdgeNode.NodeStatus.valueOf(statusUpdateDTO.getStatus().toUpperCase());
+        EdgeNode.NodeStatus oldStatus = edgeNode.getStatus();
         edgeNode.setStatus(newStatus);
         edgeNode.setLastHeartbeatTime(LocalDateTime.now());
         edgeNode.setUpdatedAt(LocalDateTime.now());
 
         edgeNodeRepository.save(edgeNode);
+        edgeHeartbeatService.evict(id);
         log.info("Updated edge node status: {} (ID: {}) - {}", edgeNode.getName(), id, newStatus);
+        if (newStatus == NodeStatus.OFFLINE && oldStatus != NodeStatus.OFFLINE) {
+            afterCommit(() -> edgeFailoverService.failover(Collections.singleton(id)));
+        } else if (newStatus == NodeStatus.ONLINE && oldStatus == NodeStatus.OFFLINE) {
+            afterCommit(() -> edgeFailoverService.recovered(Collections.singleton(id)));
+        }
+    }
+
+    /**
+     * 转移线程在事务提交前看不到新的状态
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     @Override
@@ -168,25 +219,21 @@ public class EdgeNodeServiceImpl implements EdgeNodeService {
         }
 
         edgeNodeRepository.deleteById(id);
+        edgeHeartbeatService.evict(id);
+        lastBinaryHeartbeats.remove(id);
+        timeSeriesStore.remove(metricEntity(id));
+        adaptiveBitrateService.release(id);
+        nodeFailureDetector.remove(NodeHeartbeatMessage.NodeType.EDGE, id);
+        edgeCommandService.disconnect(id);
         log.info("Deleted edge node with id: {}", id);
     }
 
     @Override
-    @Transactional
     public void registerHeartbeat(Long nodeId, Map<String, Object> metrics) {
-        EdgeNode edgeNode = edgeNodeRepository.findById(nodeId)
-                .orElseThrow(() -> new ServiceException("Edge node not found with id: " + nodeId));
-
-        // 更新心跳时间和指标
-        edgeNode.setLastHeartbeatTime(LocalDateTime.now());
-        if (edgeNode.getSystemMetrics() == null) {
-    edgeNode.setSystemMetrics(new HashMap<>());
-}
-edgeNode.getSystemMetrics().putAll(metrics);
-        edgeNode.setStatus(EdgeNode.NodeStatus.ONLINE); // 心跳意味着节点在线
-        edgeNode.setUpdatedAt(LocalDateTime.now());
-
-        edgeNodeRepository.save(edgeNode);
+        // 心跳只更新内存中的最新状态（节点视为在线），由EdgeHeartbeatService批量写入数据库
+        EdgeNode edgeNode = edgeHeartbeatService.record(nodeId, metrics);
+        nodeFailureDetector.heartbeat(NodeHeartbeatMessage.NodeType.EDGE, nodeId);
+        timeSeriesStore.record(metricEntity(nodeId), metrics, System.currentTimeMillis());
 
         // 分析网络指标并可能触发调整
         if (metrics.containsKey("network")) {
@@ -194,10 +241,23 @@ edgeNode.getSystemMetrics().putAll(metrics);
         }
     }
 
+    @Override
+    public boolean registerHeartbeat(ByteBuffer frame) {
+        EdgeHeartbeat heartbeat = EdgeHeartbeatCodec.decode(frame, lastBinaryHeartbeats::get);
+        if (heartbeat == null) {
+            return false;
+        }
+        registerHeartbeat(heartbeat.getNodeId(), heartbeat.toMetrics());
+        // 只有成功处理的帧才能作为后续增量帧的基准
+        lastBinaryHeartbeats.put(heartbeat.getNodeId(), heartbeat);
+        return true;
+    }
+
     @Override
     public Map<String, Object> getEdgeNodeStatistics(Long nodeId) {
         EdgeNode edgeNode = edgeNodeRepository.findById(nodeId)
                 .orElseThrow(() -> new ServiceException("Edge node not found with id: " + nodeId));
+        edgeHeartbeatService.applyLatest(edgeNode);
 
         // 在实际实现中，这应该从监控系统获取实时统计数据
         return new HashMap<String, Object>() {{
@@ -205,6 +265,7 @@ edgeNode.getSystemMetrics().putAll(metrics);
             put("name", edgeNode.getName());
             put("status", edgeNode.getStatus());
             put("lastHeartbeatTime", edgeNode.getLastHeartbeatTime());
+            put("suspicion", nodeFailureDetector.getSuspicion(NodeHeartbeatMessage.NodeType.EDGE, nodeId));
             put("currentCameraCount", edgeNode.getCurrentCameraCount());
             put("maxCameraSupport", edgeNode.getMaxCameraSupport());
             put("cpuUsage", edgeNode.getCpuUsage());
@@ -213,9 +274,21 @@ edgeNode.getSystemMetrics().putAll(metrics);
             put("networkBandwidth", edgeNode.getNetworkBandwidth());
             put("systemMetrics", edgeNode.getSystemMetrics() != null ? edgeNode.getSystemMetrics() : new HashMap<>());
             put("networkMetrics", edgeNode.getSystemMetrics() != null ? edgeNode.getSystemMetrics().get("network") : null);
+            put("metricHistory", timeSeriesStore.getMetricNames(metricEntity(nodeId)));
+            put("networkStatistics", networkMonitorService.getNetworkStatistics(edgeNode));
+            put("bitrateControl", adaptiveBitrateService.getStatus(nodeId));
         }};
     }
 
+    @Override
+    public List<MetricPoint> getEdgeNodeMetricHistory(Long nodeId, String metric, long from, long to,
+                                                      Resolution resolution) {
+        if (!edgeNodeRepository.existsById(nodeId)) {
+            throw new ServiceException("Edge node not found with id: " + nodeId);
+        }
+        return timeSeriesStore.query(metricEntity(nodeId), metric, from, to, resolution);
+    }
+
     @Override
     public List<EdgeNodeDTO> getOnlineEdgeNodes() {
         return edgeNodeRepository.findByStatusAndEnabled(EdgeNode.NodeStatus.ONLINE, true)
@@ -234,12 +307,11 @@ edgeNode.getSystemMetrics().putAll(metrics);
         EdgeNode edgeNode = edgeNodeRepository.findById(nodeId)
                 .orElseThrow(() -> new ServiceException("Edge node not found with id: " + nodeId));
 
-        // 简单的连接测试实现
+        log.info("Testing connection to edge node: {} ({})", edgeNode.getName(), edgeNode.getIpAddress());
         try {
-            // 实际实现中应该有真实的网络连接测试
-            log.info("Testing connection to edge node: {} ({})", edgeNode.getName(), edgeNode.getIpAddress());
-            return true; // 假设连接测试成功
-        } catch (Exception e) {
+            edgeCommandService.execute(nodeId, "ping", null);
+            return true;
+        } catch (ServiceException e) {
             log.error("Connection test failed for edge node {}: {}", nodeId, e.getMessage());
             return false;
         }
@@ -250,9 +322,13 @@ edgeNode.getSystemMetrics().putAll(metrics);
         EdgeNode edgeNode = edgeNodeRepository.findById(nodeId)
                 .orElseThrow(() -> new ServiceException("Edge node not found with id: " + nodeId));
 
-        // 在实际实现中，这应该发送重启命令到边缘节点
         log.info("Sending restart command to edge node: {} ({})", edgeNode.getName(), edgeNode.getIpAddress());
-        // 这里应该有实际的服务重启逻辑
+        // 节点确认后重启，连接随之断开，下一个命令会重新建立连接
+        edgeCommandService.execute(nodeId, "restart", null);
+    }
+
+    private static String metricEntity(Long nodeId) {
+        return "edge:" + nodeId;
     }
 
     /**
@@ -266,6 +342,7 @@ edgeNode.getSystemMetrics().putAll(metrics);
      * 将实体转换为DTO
      */
     private EdgeNodeDTO convertToDTO(EdgeNode edgeNode) {
+        edgeHeartbeatService.applyLatest(edgeNode);
         return EdgeNodeDTO.builder()
                 .id(edgeNode.getId())
                 .uuid(edgeNode.getUuid())
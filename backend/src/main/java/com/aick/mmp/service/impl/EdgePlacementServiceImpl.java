@@ -0,0 +1,232 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.model.Camera;
+import com.aick.mmp.model.EdgeNode;
+import com.aick.mmp.placement.EdgeCapacity;
+import com.aick.mmp.placement.EdgePlacementPlanner;
+import com.aick.mmp.repository.CameraRepository;
+import com.aick.mmp.repository.EdgeNodeRepository;
+import com.aick.mmp.service.EdgeHeartbeatService;
+import com.aick.mmp.service.EdgePlacementService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 摄像头到边缘节点的自动分配
+ * <p>
+ * 每次放置从数据库读出全部边缘节点和每个节点上的摄像头数、码率之和，在线节点再叠加内存中最新心跳的
+ * CPU使用率和测得带宽，构造各节点的剩余容量后由{@link EdgePlacementPlanner}一次算出全部摄像头的分配。
+ * 每个摄像头的CPU开销按节点当前CPU使用率除以摄像头数估算，节点上还没有摄像头时使用cpu-per-camera。
+ * 定时任务为未分配节点的摄像头，以及所在节点已删除或OFFLINE超过orphan-after的摄像头分配节点，
+ * 按目标节点批量UPDATE，只更新仍未分配的摄像头，不会覆盖期间手动指定的节点。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EdgePlacementServiceImpl implements EdgePlacementService {
+
+    private final EdgeNodeRepository edgeNodeRepository;
+    private final CameraRepository cameraRepository;
+    private final EdgeHeartbeatService edgeHeartbeatService;
+
+    @Value("${edge-node.placement.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${edge-node.placement.max-cpu-usage:80}")
+    private double maxCpuUsage = 80;
+
+    @Value("${edge-node.placement.cpu-per-camera:2.0}")
+    private double cpuPerCamera = 2.0;
+
+    @Value("${edge-node.placement.bandwidth-headroom:0.9}")
+    private double bandwidthHeadroom = 0.9;
+
+    @Value("${edge-node.placement.default-bitrate:4000}")
+    private double defaultBitrateKbps = 4000;
+
+    @Value("${edge-node.placement.default-max-cameras:64}")
+    private int defaultMaxCameras = 64;
+
+    @Value("${edge-node.placement.orphan-after:600000}")
+    private long orphanAfterMs = 600000;
+
+    @Value("${edge-node.placement.write-batch-size:500}")
+    private int writeBatchSize = 500;
+
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong camerasPlaced = new AtomicLong();
+    private final AtomicLong remotePlacements = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private volatile Map<String, Object> lastPass = Collections.emptyMap();
+
+    @Override
+    public synchronized Long place(Camera camera) {
+        Model model = load();
+        if (model.capacities.isEmpty()) {
+            return null;
+        }
+        EdgePlacementPlanner.Result result = new EdgePlacementPlanner(defaultBitrateKbps)
+                .plan(model.capacities, Collections.singletonList(camera));
+        return result.getAssignments().get(camera.getId());
+    }
+
+    @Override
+    public synchronized Map<Long, Long> plan(List<Camera> cameras, boolean remote) {
+        Model model = load();
+        if (model.capacities.isEmpty() || cameras.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return new EdgePlacementPlanner(defaultBitrateKbps).plan(model.capacities, cameras, remote).getAssignments();
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${edge-node.placement.interval:60000}")
+    public synchronized Map<String, Object> placeUnassigned() {
+        if (!enabled) {
+            return Collections.emptyMap();
+        }
+        long started = System.nanoTime();
+        Model model = load();
+        if (model.capacities.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Camera> cameras = cameraRepository.findUnplaced(model.retained);
+        if (cameras.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        long planStarted = System.nanoTime();
+        EdgePlacementPlanner.Result result = new EdgePlacementPlanner(defaultBitrateKbps).plan(model.capacities, cameras);
+        long planMicros = (System.nanoTime() - planStarted) / 1000;
+
+        Map<Long, List<Long>> byEdgeNode = new HashMap<>();
+        result.getAssignments().forEach((cameraId, edgeNodeId) ->
+                byEdgeNode.computeIfAbsent(edgeNodeId, key -> new ArrayList<>()).add(cameraId));
+        int placed = 0;
+        for (EdgeCapacity capacity : model.capacities) {
+            List<Long> ids = byEdgeNode.get(capacity.getId());
+            if (ids == null) {
+                continue;
+            }
+            int updated = 0;
+            for (int from = 0; from < ids.size(); from += writeBatchSize) {
+                List<Long> batch = ids.subList(from, Math.min(ids.size(), from + writeBatchSize));
+                try {
+                    updated += cameraRepository.assignEdgeNodeIn(batch, capacity.getId(), model.retained,
+                            LocalDateTime.now());
+                } catch (Exception e) {
+                    // 下一轮重新分配
+                    writeFailures.incrementAndGet();
+                    log.warn("Failed to assign {} cameras to edge node {}: {}", batch.size(), capacity.getId(),
+                            e.getMessage());
+                }
+            }
+            if (updated > 0) {
+                edgeNodeRepository.updateCameraCount(capacity.getId(),
+                        capacity.getCameras() - capacity.getPlaced() + updated);
+            }
+            placed += updated;
+        }
+
+        passes.incrementAndGet();
+        camerasPlaced.addAndGet(placed);
+        remotePlacements.addAndGet(result.getRemote());
+        Map<String, Object> pass = new LinkedHashMap<>();
+        pass.put("cameras", cameras.size());
+        pass.put("placed", placed);
+        pass.put("remote", result.getRemote());
+        pass.put("unplaced", result.getUnplaced());
+        pass.put("edgeNodes", model.capacities.size());
+        pass.put("planMicros", planMicros);
+        pass.put("elapsedMillis", (System.nanoTime() - started) / 1_000_000);
+        lastPass = pass;
+        log.info("Placed {} of {} cameras on {} edge nodes ({} outside their location, {} without capacity)",
+                placed, cameras.size(), byEdgeNode.size(), result.getRemote(), result.getUnplaced());
+        return pass;
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("passes", passes.get());
+        statistics.put("camerasPlaced", camerasPlaced.get());
+        statistics.put("remotePlacements", remotePlacements.get());
+        statistics.put("writeFailures", writeFailures.get());
+        statistics.put("lastPass", lastPass);
+        return statistics;
+    }
+
+    /**
+     * 读出可放置的节点容量，以及其上摄像头不需要重新分配的节点
+     */
+    private Model load() {
+        Map<Long, long[]> summaries = new HashMap<>();
+        for (Object[] row : cameraRepository.summarizeByEdgeNode()) {
+            summaries.put((Long) row[0], new long[]{((Number) row[1]).longValue(), ((Number) row[2]).longValue(),
+                    row[3] != null ? ((Number) row[3]).longValue() : 0});
+        }
+        LocalDateTime orphanBefore = LocalDateTime.now().minusNanos(orphanAfterMs * 1_000_000);
+        Model model = new Model();
+        for (EdgeNode node : edgeNodeRepository.findAll()) {
+            boolean orphaned = node.getStatus() == EdgeNode.NodeStatus.OFFLINE
+                    && (node.getLastHeartbeatTime() == null || node.getLastHeartbeatTime().isBefore(orphanBefore));
+            if (!orphaned) {
+                model.retained.add(node.getId());
+            }
+            if (node.getStatus() == EdgeNode.NodeStatus.ONLINE && node.isEnabled()) {
+                model.capacities.add(capacity(node, summaries.getOrDefault(node.getId(), new long[3])));
+            }
+        }
+        return model;
+    }
+
+    private EdgeCapacity capacity(EdgeNode node, long[] summary) {
+        edgeHeartbeatService.applyLatest(node);
+        Map<String, Object> metrics = node.getSystemMetrics() != null ? node.getSystemMetrics() : Collections.emptyMap();
+        int cameras = (int) summary[0];
+        double usedKbps = summary[2] + (summary[0] - summary[1]) * defaultBitrateKbps;
+
+        double cpu = value(metrics.get("cpuUsage"));
+        if (Double.isNaN(cpu)) {
+            cpu = node.getCpuUsage() != null ? node.getCpuUsage() : 0;
+        }
+        double perCamera = cameras > 0 && cpu > 0 ? cpu / cameras : cpuPerCamera;
+
+        // 链路容量和测得带宽取较小的一个，都没有时不限制带宽
+        double limitKbps = AdaptiveBitrateServiceImpl.parseBandwidth(node.getNetworkBandwidth());
+        Object network = metrics.get("network");
+        double measuredKbps = network instanceof Map ? value(((Map<?, ?>) network).get("bandwidth")) : Double.NaN;
+        if (Double.isNaN(limitKbps) || measuredKbps < limitKbps) {
+            limitKbps = measuredKbps;
+        }
+        limitKbps = Double.isNaN(limitKbps) ? Double.POSITIVE_INFINITY : limitKbps * bandwidthHeadroom;
+
+        int maxCameras = node.getMaxCameraSupport() != null && node.getMaxCameraSupport() > 0
+                ? node.getMaxCameraSupport() : defaultMaxCameras;
+        return new EdgeCapacity(node.getId(), node.getLocation(), maxCameras, cameras, maxCpuUsage, cpu, perCamera,
+                limitKbps, usedKbps);
+    }
+
+    private static double value(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    private static final class Model {
+        private final List<EdgeCapacity> capacities = new ArrayList<>();
+        private final Set<Long> retained = new HashSet<>();
+    }
+}
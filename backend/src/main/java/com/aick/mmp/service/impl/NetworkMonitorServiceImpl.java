@@ -1,56 +1,130 @@
 package com.aick.mmp.service.impl;
 
+import com.aick.mmp.metrics.QuantileSketch;
+import com.aick.mmp.metrics.SlidingWindowStats;
 import com.aick.mmp.model.EdgeNode;
 import com.aick.mmp.model.CdnNode;
 import com.aick.mmp.model.StreamSession;
 import com.aick.mmp.repository.StreamSessionRepository;
+import com.aick.mmp.service.AdaptiveBitrateService;
 import com.aick.mmp.service.CdnNodeService;
 import com.aick.mmp.service.NetworkMonitorService;
+import com.aick.mmp.service.StreamMigrationService;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 
 import org.springframework.util.StringUtils;
 
+/**
+ * 网络质量监控
+ * <p>
+ * 每个节点的时延、丢包率、带宽各有一个滑动窗口（{@link SlidingWindowStats}），
+ * 判定使用窗口统计量而不是最近一次心跳：时延看p95（同时要求EWMA已接近阈值，排除窗口内零星的尖峰），
+ * 丢包率看窗口平均值，带宽看中位数。
+ * 进入降级和恢复使用不同的阈值（恢复阈值按recovery-ratio收紧），且时延仍在上升时不恢复，
+ * 只有状态发生转换时才调整流或更新CDN节点状态，避免单个异常样本引起反复切换。
+ * 每次心跳的开销是固定的几次原子操作加一次窗口快照，与节点数和历史长度无关。
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class NetworkMonitorServiceImpl implements NetworkMonitorService {
 
+    private static final QuantileSketch.Layout LATENCY_LAYOUT = new QuantileSketch.Layout(1, 30_000, 0.05);
+    private static final QuantileSketch.Layout PACKET_LOSS_LAYOUT = new QuantileSketch.Layout(0.01, 100, 0.05);
+    private static final QuantileSketch.Layout BANDWIDTH_LAYOUT = new QuantileSketch.Layout(100, 10_000_000, 0.05);
+
     private final StreamSessionRepository streamSessionRepository;
     private final CdnNodeService cdnNodeService;
-
+    private final AdaptiveBitrateService adaptiveBitrateService;
+    private final StreamMigrationService streamMigrationService;
 
     // 网络指标阈值配置
-    private static final double MAX_LATENCY_THRESHOLD = 300.0; // 毫秒
-    private static final double MAX_PACKET_LOSS_THRESHOLD = 2.0; // 百分比
-    private static final double MIN_BANDWIDTH_THRESHOLD = 5000.0; // kbps
+    @Value("${network.monitor.max-latency:300}")
+    private double maxLatencyThreshold = 300.0; // 毫秒
+
+    @Value("${network.monitor.max-packet-loss:2}")
+    private double maxPacketLossThreshold = 2.0; // 百分比
+
+    @Value("${network.monitor.min-bandwidth:5000}")
+    private double minBandwidthThreshold = 5000.0; // kbps
+
+    /**
+     * 恢复阈值相对降级阈值的比例，时延和丢包率需低于阈值*ratio，带宽需高于阈值/ratio
+     */
+    @Value("${network.monitor.recovery-ratio:0.8}")
+    private double recoveryRatio = 0.8;
 
-    // 存储最近的网络指标用于趋势分析
-    private final Map<String, NetworkMetricsHistory> metricsHistory = new ConcurrentHashMap<>();
+    @Value("${network.monitor.window:120000}")
+    private long windowMs = 120000;
+
+    @Value("${network.monitor.window-slices:6}")
+    private int windowSlices = 6;
+
+    @Value("${network.monitor.ewma-alpha:0.1}")
+    private double ewmaAlpha = 0.1;
+
+    /**
+     * 窗口内样本数达到该值后才判定降级
+     */
+    @Value("${network.monitor.min-samples:20}")
+    private int minSamples = 20;
+
+    /**
+     * 超过该时间没有心跳的节点窗口被清理
+     */
+    @Value("${network.monitor.idle-eviction:600000}")
+    private long idleEvictionMs = 600000;
+
+    private final Map<String, NodeWindow> windows = new ConcurrentHashMap<>();
+    private LongSupplier clock = System::currentTimeMillis;
+
+    @Autowired
+    public NetworkMonitorServiceImpl(StreamSessionRepository streamSessionRepository, CdnNodeService cdnNodeService,
+                                     AdaptiveBitrateService adaptiveBitrateService,
+                                     StreamMigrationService streamMigrationService) {
+        this.streamSessionRepository = streamSessionRepository;
+        this.cdnNodeService = cdnNodeService;
+        this.adaptiveBitrateService = adaptiveBitrateService;
+        this.streamMigrationService = streamMigrationService;
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法，clock用于以模拟时间驱动窗口
+     */
+    public NetworkMonitorServiceImpl(StreamSessionRepository streamSessionRepository, CdnNodeService cdnNodeService,
+                                     AdaptiveBitrateService adaptiveBitrateService,
+                                     StreamMigrationService streamMigrationService, LongSupplier clock) {
+        this(streamSessionRepository, cdnNodeService, adaptiveBitrateService, streamMigrationService);
+        this.clock = clock;
+    }
 
     @Override
     public void evaluateAndAdjust(EdgeNode edgeNode, Map<String, Double> metrics) {
         if (metrics == null) return;
 
         String nodeId = edgeNode.getId().toString();
-        NetworkMetricsHistory history = metricsHistory.computeIfAbsent(nodeId, k -> new NetworkMetricsHistory());
-        history.addMetrics(metrics);
-
-        // 检查是否需要调整
-        boolean needAdjustment = checkMetricsThresholds(history.getRecentMetrics());
+        NodeWindow window = windows.computeIfAbsent(edgeKey(edgeNode.getId()), k -> new NodeWindow(false));
+        Transition transition = window.evaluate(metrics, clock.getAsLong());
+        // 码率控制是闭环的，每次心跳都执行，不依赖降级判定
+        adaptiveBitrateService.control(edgeNode, metrics);
 
-        if (needAdjustment) {
-            log.warn("Network metrics threshold exceeded for edge node: {}", nodeId);
-            adjustStreamsForEdgeNode(edgeNode, history.getRecentMetrics());
+        if (transition == Transition.DEGRADED) {
+            log.warn("Network metrics threshold exceeded for edge node: {} ({})", nodeId, window.describe());
+            adjustStreamsForEdgeNode(edgeNode, window);
+        } else if (transition == Transition.RESTORED) {
+            log.info("Network performance restored for edge node: {} ({})", nodeId, window.describe());
         }
     }
 
@@ -59,102 +133,182 @@ public class NetworkMonitorServiceImpl implements NetworkMonitorService {
         if (metrics == null) return;
 
         String nodeId = cdnNode.getId().toString();
-        NetworkMetricsHistory history = metricsHistory.computeIfAbsent(nodeId, k -> new NetworkMetricsHistory());
-        history.addMetrics(metrics);
-
-        boolean needAdjustment = checkMetricsThresholds(history.getRecentMetrics());
+        // 服务重启后以数据库中的状态为初始状态，已降级的节点仍需满足恢复条件才恢复
+        NodeWindow window = windows.computeIfAbsent(cdnKey(cdnNode.getId()),
+                k -> new NodeWindow(cdnNode.getStatus() == CdnNode.NodeStatus.DEGRADED));
+        Transition transition = window.evaluate(metrics, clock.getAsLong());
 
-        if (needAdjustment) {
-            log.warn("Network metrics threshold exceeded for CDN node: {}", nodeId);
+        if (transition == Transition.DEGRADED) {
+            log.warn("Network metrics threshold exceeded for CDN node: {} ({})", nodeId, window.describe());
             cdnNodeService.updateCdnNodeStatus(cdnNode.getId(), "DEGRADED", "Network performance below threshold");
             redistributeStreamsFromCdn(cdnNode);
-        } else if (cdnNode.getStatus() == CdnNode.NodeStatus.DEGRADED) {
+        } else if (transition == Transition.RESTORED && cdnNode.getStatus() == CdnNode.NodeStatus.DEGRADED) {
             cdnNodeService.updateCdnNodeStatus(cdnNode.getId(), "ONLINE", "Network performance restored");
+            streamMigrationService.cancel(cdnNode.getId());
         }
     }
 
+    @Override
+    public Map<String, Object> getNetworkStatistics(EdgeNode edgeNode) {
+        NodeWindow window = windows.get(edgeKey(edgeNode.getId()));
+        return window != null ? window.toMap(clock.getAsLong()) : Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, Object> getNetworkStatistics(CdnNode cdnNode) {
+        NodeWindow window = windows.get(cdnKey(cdnNode.getId()));
+        return window != null ? window.toMap(clock.getAsLong()) : Collections.emptyMap();
+    }
+
+    private static String edgeKey(Long id) {
+        return "edge:" + id;
+    }
+
+    private static String cdnKey(Long id) {
+        return "cdn:" + id;
+    }
+
     /**
-     * 检查网络指标是否超过阈值
+     * 心跳中的数值可能是Integer、Long或Double，统一按Number读取，缺失时返回NaN
      */
-    private boolean checkMetricsThresholds(Map<String, Double> metrics) {
-        double latency = metrics.getOrDefault("latency", 0.0);
-        double packetLoss = metrics.getOrDefault("packetLoss", 0.0);
-        double bandwidth = metrics.getOrDefault("bandwidth", 0.0);
-
-        return latency > MAX_LATENCY_THRESHOLD ||
-               packetLoss > MAX_PACKET_LOSS_THRESHOLD ||
-               bandwidth < MIN_BANDWIDTH_THRESHOLD;
+    private static double value(Map<String, ?> metrics, String key) {
+        Object value = metrics.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
     }
 
     /**
-     * 调整边缘节点上的流
+     * 调整边缘节点上的流；码率由AdaptiveBitrateService按心跳持续调整，这里只处理码率无法解决的持续丢包
      */
-    private void adjustStreamsForEdgeNode(EdgeNode edgeNode, Map<String, Double> metrics) {
-        String edgeNodeId = edgeNode.getId().toString();
-        List<StreamSession> sessions = StringUtils.hasText(edgeNodeId) ? 
-            streamSessionRepository.findByEdgeNodeId(edgeNodeId) : 
-            Collections.emptyList();
+    private void adjustStreamsForEdgeNode(EdgeNode edgeNode, NodeWindow window) {
+        List<StreamSession> sessions = streamSessionRepository.findByEdgeNodeId(edgeNode.getId());
         if (sessions.isEmpty()) return;
 
-        double bandwidth = metrics.getOrDefault("bandwidth", 0.0);
-        double packetLoss = metrics.getOrDefault("packetLoss", 0.0);
+        double packetLoss = window.packetLoss.snapshot(clock.getAsLong()).getMean();
+        if (packetLoss <= maxPacketLossThreshold) return;
 
-        // 根据网络状况调整流质量
         for (StreamSession session : sessions) {
             if (session == null || StringUtils.isEmpty(session.getSessionId())) {
                 continue;
             }
-            try {
-                if (bandwidth < MIN_BANDWIDTH_THRESHOLD * 0.7) {
-                    // 严重带宽不足，降低视频质量
-                    log.warn("Stream quality adjustment not implemented: Low bandwidth for session {}", session.getSessionId());
-                } else if (packetLoss > MAX_PACKET_LOSS_THRESHOLD) {
-                    log.warn("Stream protocol switch not implemented: High packet loss for session {}", session.getSessionId());
-                }
-            } catch (Exception e) {
-                log.error("Failed to adjust stream {}: {}", session.getSessionId(), e.getMessage());
-            }
+            log.warn("Stream protocol switch not implemented: High packet loss for session {}", session.getSessionId());
         }
     }
 
     /**
-     * 重新分配来自性能下降CDN节点的流
+     * 重新分配来自性能下降CDN节点的流，由StreamMigrationService分波迁移到有剩余容量的节点
      */
     private void redistributeStreamsFromCdn(CdnNode degradedNode) {
-        // 在实际实现中，这里应该:
-        // 1. 找到使用该CDN节点的所有流会话
-        // 2. 为这些会话找到替代CDN节点
-        // 3. 将流切换到新的CDN节点
         log.info("Redistributing streams from degraded CDN node: {}", degradedNode.getName());
+        streamMigrationService.drain(degradedNode);
     }
 
     /**
-     * 定期检查所有节点的网络状态
+     * 定期检查所有节点的网络状态，并清理长时间没有心跳的节点窗口
      */
     @Scheduled(fixedRate = 60000) // 每分钟执行一次
     public void scheduledNetworkCheck() {
-        log.info("Performing scheduled network health check");
-        // 实现定期检查逻辑
+        long threshold = clock.getAsLong() - idleEvictionMs;
+        int degraded = 0;
+        for (Map.Entry<String, NodeWindow> entry : windows.entrySet()) {
+            if (entry.getValue().lastUpdate() < threshold) {
+                windows.remove(entry.getKey(), entry.getValue());
+            } else if (entry.getValue().degraded.get()) {
+                degraded++;
+            }
+        }
+        log.info("Performing scheduled network health check: {} nodes monitored, {} degraded", windows.size(), degraded);
+    }
+
+    private enum Transition {
+        NONE, DEGRADED, RESTORED
     }
 
     /**
-     * 网络指标历史记录类
+     * 单个节点的网络指标窗口和降级状态
      */
-    private static class NetworkMetricsHistory {
-        private final Map<String, Double> recentMetrics = new ConcurrentHashMap<>();
-        private LocalDateTime lastUpdated;
+    private class NodeWindow {
+        private final SlidingWindowStats latency = newWindow(LATENCY_LAYOUT);
+        private final SlidingWindowStats packetLoss = newWindow(PACKET_LOSS_LAYOUT);
+        private final SlidingWindowStats bandwidth = newWindow(BANDWIDTH_LAYOUT);
+        private final AtomicBoolean degraded;
 
-        public void addMetrics(Map<String, Double> metrics) {
-            recentMetrics.putAll(metrics);
-            lastUpdated = LocalDateTime.now();
+        NodeWindow(boolean degraded) {
+            this.degraded = new AtomicBoolean(degraded);
         }
 
-        public Map<String, Double> getRecentMetrics() {
-            return new ConcurrentHashMap<>(recentMetrics);
+        private SlidingWindowStats newWindow(QuantileSketch.Layout layout) {
+            return new SlidingWindowStats(layout, windowSlices, windowMs / windowSlices, ewmaAlpha);
         }
 
-        public LocalDateTime getLastUpdated() {
-            return lastUpdated;
+        /**
+         * 写入一次心跳的指标并判定状态转换，转换通过CAS完成，并发心跳中只有一个会得到转换结果
+         */
+        Transition evaluate(Map<String, ?> metrics, long now) {
+            latency.add(now, value(metrics, "latency"));
+            packetLoss.add(now, value(metrics, "packetLoss"));
+            bandwidth.add(now, value(metrics, "bandwidth"));
+
+            SlidingWindowStats.Snapshot latencyStats = latency.snapshot(now);
+            SlidingWindowStats.Snapshot lossStats = packetLoss.snapshot(now);
+            SlidingWindowStats.Snapshot bandwidthStats = bandwidth.snapshot(now);
+            if (!degraded.get()) {
+                boolean exceeded = exceeds(latencyStats, lossStats, bandwidthStats);
+                return exceeded && degraded.compareAndSet(false, true) ? Transition.DEGRADED : Transition.NONE;
+            }
+            boolean recovered = recovered(latencyStats, lossStats, bandwidthStats);
+            return recovered && degraded.compareAndSet(true, false) ? Transition.RESTORED : Transition.NONE;
+        }
+
+        private boolean exceeds(SlidingWindowStats.Snapshot latencyStats, SlidingWindowStats.Snapshot lossStats,
+                                SlidingWindowStats.Snapshot bandwidthStats) {
+            return latencyStats.getCount() >= minSamples && latencyStats.getP95() > maxLatencyThreshold
+                    && latencyStats.getEwma() > maxLatencyThreshold * recoveryRatio
+                    || lossStats.getCount() >= minSamples && lossStats.getMean() > maxPacketLossThreshold
+                    || bandwidthStats.getCount() >= minSamples && bandwidthStats.getP50() < minBandwidthThreshold;
+        }
+
+        /**
+         * 缺失的指标不阻止恢复；时延仍在上升时保持降级
+         */
+        private boolean recovered(SlidingWindowStats.Snapshot latencyStats, SlidingWindowStats.Snapshot lossStats,
+                                  SlidingWindowStats.Snapshot bandwidthStats) {
+            return (latencyStats.getCount() == 0 || latencyStats.getP95() < maxLatencyThreshold * recoveryRatio
+                    && latencyStats.getSlopePerMinute() <= 0)
+                    && (lossStats.getCount() == 0 || lossStats.getMean() < maxPacketLossThreshold * recoveryRatio)
+                    && (bandwidthStats.getCount() == 0 || bandwidthStats.getP50() > minBandwidthThreshold / recoveryRatio);
+        }
+
+        long lastUpdate() {
+            return Math.max(latency.getLastUpdate(), Math.max(packetLoss.getLastUpdate(), bandwidth.getLastUpdate()));
+        }
+
+        String describe() {
+            long now = clock.getAsLong();
+            return String.format("latency p95=%.1fms, packetLoss mean=%.2f%%, bandwidth p50=%.0fkbps",
+                    latency.snapshot(now).getP95(), packetLoss.snapshot(now).getMean(), bandwidth.snapshot(now).getP50());
+        }
+
+        Map<String, Object> toMap(long now) {
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("degraded", degraded.get());
+            statistics.put("latency", toMap(latency.snapshot(now)));
+            statistics.put("packetLoss", toMap(packetLoss.snapshot(now)));
+            statistics.put("bandwidth", toMap(bandwidth.snapshot(now)));
+            return statistics;
+        }
+
+        private Map<String, Object> toMap(SlidingWindowStats.Snapshot snapshot) {
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("samples", snapshot.getCount());
+            if (snapshot.getCount() > 0) {
+                statistics.put("mean", snapshot.getMean());
+                statistics.put("ewma", snapshot.getEwma());
+                statistics.put("p50", snapshot.getP50());
+                statistics.put("p95", snapshot.getP95());
+                statistics.put("p99", snapshot.getP99());
+                statistics.put("slopePerMinute", snapshot.getSlopePerMinute());
+            }
+            return statistics;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,400 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.dto.NodeHeartbeatMessage.NodeType;
+import com.aick.mmp.health.HashedTimingWheel;
+import com.aick.mmp.health.PhiAccrualEstimator;
+import com.aick.mmp.model.CdnNode;
+import com.aick.mmp.model.EdgeNode;
+import com.aick.mmp.repository.CdnNodeRepository;
+import com.aick.mmp.repository.EdgeNodeRepository;
+import com.aick.mmp.service.EdgeFailoverService;
+import com.aick.mmp.service.EdgeHeartbeatService;
+import com.aick.mmp.service.NodeFailureDetector;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 节点失联检测
+ * <p>
+ * 每个节点在哈希时间轮中有一个失联期限，每次心跳把期限重新挂到新的槽（O(1)），
+ * 期限由phi累积检测按该节点心跳间隔的均值和方差算出：phi达到阈值的时刻即判定失联。
+ * 检测线程每个刻度只访问到期的槽，按时心跳的节点在到期前就已移走，不会被访问，开销与健康节点数无关；
+ * 也不扫描节点表。状态变化由定时任务按目标状态批量UPDATE，只更新状态仍可由检测改写的节点。
+ * 服务启动时为数据库中在线的节点设置一个max-timeout的宽限期限，重启期间停止心跳的节点同样会被发现。
+ */
+@Service
+@Slf4j
+public class NodeFailureDetectorImpl implements NodeFailureDetector, Runnable {
+
+    private static final Set<CdnNode.NodeStatus> CDN_REACHABLE_STATUSES =
+            EnumSet.of(CdnNode.NodeStatus.ONLINE, CdnNode.NodeStatus.DEGRADED);
+
+    private final EdgeHeartbeatService edgeHeartbeatService;
+    private final EdgeNodeRepository edgeNodeRepository;
+    private final CdnNodeRepository cdnNodeRepository;
+    private final EdgeFailoverService edgeFailoverService;
+    private final LongSupplier clock;
+
+    @Value("${node.failure-detector.enabled:true}")
+    private boolean enabled = true;
+
+    /**
+     * 时间轮刻度（毫秒），期限过后最多延迟一个刻度被发现
+     */
+    @Value("${node.failure-detector.tick:100}")
+    private long tickMs = 100;
+
+    /**
+     * 时间轮槽数，tick * wheel-size应不小于max-timeout
+     */
+    @Value("${node.failure-detector.wheel-size:1024}")
+    private int wheelSize = 1024;
+
+    @Value("${node.failure-detector.phi-threshold:8}")
+    private double phiThreshold = 8;
+
+    /**
+     * 心跳样本不足时假定的心跳间隔
+     */
+    @Value("${node.failure-detector.expected-interval:5000}")
+    private long expectedIntervalMs = 5000;
+
+    @Value("${node.failure-detector.min-std-deviation:500}")
+    private long minStandardDeviationMs = 500;
+
+    /**
+     * 容忍的额外停顿，如Kafka消费积压、GC
+     */
+    @Value("${node.failure-detector.acceptable-pause:3000}")
+    private long acceptablePauseMs = 3000;
+
+    @Value("${node.failure-detector.max-samples:32}")
+    private int maxSamples = 32;
+
+    @Value("${node.failure-detector.min-timeout:10000}")
+    private long minTimeoutMs = 10000;
+
+    @Value("${node.failure-detector.max-timeout:60000}")
+    private long maxTimeoutMs = 60000;
+
+    @Value("${node.failure-detector.write-batch-size:500}")
+    private int writeBatchSize = 500;
+
+    private final Map<NodeType, Map<Long, Node>> nodes = new EnumMap<>(NodeType.class);
+    private final ConcurrentLinkedQueue<Transition> transitions = new ConcurrentLinkedQueue<>();
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong revivals = new AtomicLong();
+    private final AtomicLong detectionDelayMs = new AtomicLong();
+    private final AtomicLong maxDetectionDelayMs = new AtomicLong();
+    private final AtomicLong wheelVisits = new AtomicLong();
+    private final AtomicLong rowsUpdated = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicInteger offline = new AtomicInteger();
+    private PhiAccrualEstimator.Settings settings;
+    private HashedTimingWheel wheel;
+    private Thread thread;
+    private volatile boolean running;
+
+    @Autowired
+    public NodeFailureDetectorImpl(EdgeHeartbeatService edgeHeartbeatService, EdgeNodeRepository edgeNodeRepository,
+                                   CdnNodeRepository cdnNodeRepository, EdgeFailoverService edgeFailoverService) {
+        this(edgeHeartbeatService, edgeNodeRepository, cdnNodeRepository, edgeFailoverService, System::currentTimeMillis);
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public NodeFailureDetectorImpl(EdgeHeartbeatService edgeHeartbeatService, EdgeNodeRepository edgeNodeRepository,
+                                   CdnNodeRepository cdnNodeRepository, EdgeFailoverService edgeFailoverService,
+                                   LongSupplier clock) {
+        this.edgeHeartbeatService = edgeHeartbeatService;
+        this.edgeNodeRepository = edgeNodeRepository;
+        this.cdnNodeRepository = cdnNodeRepository;
+        this.edgeFailoverService = edgeFailoverService;
+        this.clock = clock;
+        for (NodeType type : NodeType.values()) {
+            nodes.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * 按配置创建时间轮；非Spring环境下由调用方执行，之后用{@link #checkTimeouts()}推进
+     */
+    public void init() {
+        settings = new PhiAccrualEstimator.Settings(phiThreshold, expectedIntervalMs, minStandardDeviationMs,
+                acceptablePauseMs, maxSamples, minTimeoutMs, maxTimeoutMs);
+        wheel = new HashedTimingWheel(tickMs, wheelSize, clock.getAsLong());
+    }
+
+    @PostConstruct
+    public void start() {
+        init();
+        if (!enabled) {
+            log.info("Node failure detector is disabled");
+            return;
+        }
+        armKnownNodes();
+        running = true;
+        thread = new Thread(this, "node-failure-detector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void heartbeat(NodeType nodeType, Long nodeId) {
+        if (!enabled) {
+            return;
+        }
+        long now = clock.getAsLong();
+        Node node = nodes.get(nodeType).computeIfAbsent(nodeId, id -> new Node(nodeType, id, settings));
+        synchronized (node) {
+            if (node.removed) {
+                return;
+            }
+            node.estimator.heartbeat(now);
+            wheel.schedule(node, node.estimator.deadline());
+            if (node.offline) {
+                node.offline = false;
+                offline.decrementAndGet();
+                revivals.incrementAndGet();
+                transitions.add(new Transition(node, false));
+            }
+        }
+        heartbeats.incrementAndGet();
+    }
+
+    @Override
+    public void remove(NodeType nodeType, Long nodeId) {
+        Node node = nodes.get(nodeType).remove(nodeId);
+        if (node == null) {
+            return;
+        }
+        synchronized (node) {
+            node.removed = true;
+            if (wheel != null) {
+                wheel.cancel(node);
+            }
+            if (node.offline) {
+                offline.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public double getSuspicion(NodeType nodeType, Long nodeId) {
+        Node node = nodes.get(nodeType).get(nodeId);
+        if (node == null) {
+            return Double.NaN;
+        }
+        synchronized (node) {
+            return node.estimator.phi(clock.getAsLong());
+        }
+    }
+
+    /**
+     * 推进时间轮，把期限已过的节点记为失联，返回本次新发现的失联节点数
+     */
+    public int checkTimeouts() {
+        long now = clock.getAsLong();
+        List<HashedTimingWheel.Timeout> expired = new ArrayList<>();
+        wheelVisits.addAndGet(wheel.expire(now, expired));
+        int detected = 0;
+        for (HashedTimingWheel.Timeout timeout : expired) {
+            Node node = (Node) timeout;
+            synchronized (node) {
+                // 出轮之后、加锁之前可能刚收到心跳并重新挂入时间轮
+                if (node.removed || node.offline || node.isScheduled()) {
+                    continue;
+                }
+                node.offline = true;
+            }
+            long delay = now - node.getDeadline();
+            detectionDelayMs.addAndGet(delay);
+            maxDetectionDelayMs.accumulateAndGet(delay, Math::max);
+            offline.incrementAndGet();
+            timeouts.incrementAndGet();
+            transitions.add(new Transition(node, true));
+            detected++;
+        }
+        return detected;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (checkTimeouts() > 0) {
+                    log.debug("Node failure detector: {} nodes offline", offline.get());
+                }
+                Thread.sleep(tickMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Node failure detector error", e);
+            }
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${node.failure-detector.flush-interval:1000}")
+    public void flushTransitions() {
+        if (transitions.isEmpty()) {
+            return;
+        }
+        // 同一节点在一个周期内多次变化时只保留最后一次
+        Map<Node, Transition> latest = new LinkedHashMap<>();
+        Transition transition;
+        while ((transition = transitions.poll()) != null) {
+            latest.put(transition.node, transition);
+        }
+        Map<NodeType, List<Node>> lost = new EnumMap<>(NodeType.class);
+        Map<NodeType, List<Node>> restored = new EnumMap<>(NodeType.class);
+        for (Transition value : latest.values()) {
+            (value.offline ? lost : restored).computeIfAbsent(value.node.type, key -> new ArrayList<>())
+                    .add(value.node);
+        }
+        lost.forEach((type, batch) -> write(type, batch, true));
+        restored.forEach((type, batch) -> write(type, batch, false));
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        long timeoutCount = timeouts.get();
+        statistics.put("edgeNodes", nodes.get(NodeType.EDGE).size());
+        statistics.put("cdnNodes", nodes.get(NodeType.CDN).size());
+        statistics.put("armed", wheel != null ? wheel.size() : 0);
+        statistics.put("offline", offline.get());
+        statistics.put("heartbeats", heartbeats.get());
+        statistics.put("timeouts", timeoutCount);
+        statistics.put("revivals", revivals.get());
+        statistics.put("averageDetectionDelayMillis", timeoutCount == 0 ? 0 : detectionDelayMs.get() / (double) timeoutCount);
+        statistics.put("maxDetectionDelayMillis", maxDetectionDelayMs.get());
+        statistics.put("wheelVisits", wheelVisits.get());
+        statistics.put("rowsUpdated", rowsUpdated.get());
+        statistics.put("writeFailures", writeFailures.get());
+        return statistics;
+    }
+
+    /**
+     * 为数据库中在线的节点设置宽限期限，期间没有心跳的节点会被判定失联
+     */
+    private void armKnownNodes() {
+        List<EdgeNode> edgeNodes;
+        List<CdnNode> cdnNodes = new ArrayList<>();
+        try {
+            edgeNodes = edgeNodeRepository.findByStatusAndEnabled(EdgeNode.NodeStatus.ONLINE, true);
+            for (CdnNode.NodeStatus status : CDN_REACHABLE_STATUSES) {
+                cdnNodes.addAll(cdnNodeRepository.findByStatusOrderByCurrentLoadAsc(status));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to load online nodes for failure detection: {}", e.getMessage());
+            return;
+        }
+        long deadline = clock.getAsLong() + maxTimeoutMs;
+        edgeNodes.forEach(edgeNode -> arm(NodeType.EDGE, edgeNode.getId(), deadline));
+        cdnNodes.forEach(cdnNode -> arm(NodeType.CDN, cdnNode.getId(), deadline));
+        log.info("Node failure detector armed {} edge nodes and {} CDN nodes", edgeNodes.size(), cdnNodes.size());
+    }
+
+    private void arm(NodeType nodeType, Long nodeId, long deadline) {
+        Node node = nodes.get(nodeType).computeIfAbsent(nodeId, id -> new Node(nodeType, id, settings));
+        synchronized (node) {
+            if (!node.removed && !node.isScheduled()) {
+                wheel.schedule(node, deadline);
+            }
+        }
+    }
+
+    private void write(NodeType nodeType, List<Node> changed, boolean lost) {
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < changed.size(); from += writeBatchSize) {
+            List<Node> batch = changed.subList(from, Math.min(changed.size(), from + writeBatchSize));
+            List<Long> ids = new ArrayList<>(batch.size());
+            batch.forEach(node -> ids.add(node.id));
+            try {
+                int updated;
+                if (nodeType == NodeType.EDGE) {
+                    updated = lost ? edgeHeartbeatService.markOffline(ids)
+                            : edgeNodeRepository.updateStatusIn(ids, Collections.singleton(EdgeNode.NodeStatus.OFFLINE),
+                            EdgeNode.NodeStatus.ONLINE, now);
+                    // 转移只处理状态确为OFFLINE的节点，迁回由转移服务按配置决定
+                    if (lost) {
+                        edgeFailoverService.failover(ids);
+                    } else {
+                        edgeFailoverService.recovered(ids);
+                    }
+                } else {
+                    updated = lost ? cdnNodeRepository.updateStatusIn(ids, CDN_REACHABLE_STATUSES, CdnNode.NodeStatus.OFFLINE)
+                            : cdnNodeRepository.updateStatusIn(ids, Collections.singleton(CdnNode.NodeStatus.OFFLINE),
+                            CdnNode.NodeStatus.ONLINE);
+                }
+                rowsUpdated.addAndGet(updated);
+            } catch (Exception e) {
+                // 失联的节点不会再有心跳触发重写，放回队列在下一个周期重试；期间恢复的节点以后来的变化为准
+                writeFailures.incrementAndGet();
+                batch.forEach(node -> transitions.add(new Transition(node, lost)));
+                log.error("Failed to persist {} {} node transitions to {}: {}", batch.size(), nodeType,
+                        lost ? "OFFLINE" : "ONLINE", e.getMessage());
+            }
+        }
+        log.info("Node failure detector: {} {} nodes now {}", changed.size(), nodeType, lost ? "OFFLINE" : "ONLINE");
+    }
+
+    /**
+     * 单个节点的失联期限和心跳统计
+     */
+    private static final class Node extends HashedTimingWheel.Timeout {
+        private final NodeType type;
+        private final Long id;
+        private final PhiAccrualEstimator estimator;
+        private boolean offline;
+        private boolean removed;
+
+        Node(NodeType type, Long id, PhiAccrualEstimator.Settings settings) {
+            this.type = type;
+            this.id = id;
+            this.estimator = new PhiAccrualEstimator(settings);
+        }
+    }
+
+    private static final class Transition {
+        private final Node node;
+        private final boolean offline;
+
+        Transition(Node node, boolean offline) {
+            this.node = node;
+            this.offline = offline;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.cdn.CdnNodeSelector;
+import com.aick.mmp.model.CdnNode;
+import com.aick.mmp.model.StreamSession;
+import com.aick.mmp.repository.StreamSessionRepository;
+import com.aick.mmp.service.StreamMigrationService;
+import com.aick.mmp.stream.hls.HlsUrlSigner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 流会话迁移
+ * <p>
+ * 节点降级时读出其上全部STREAMING会话放入待迁移队列，之后由定时任务分波迁移：每波最多wave-size个会话，
+ * 每个目标节点每波最多接收max-per-target个，避免大量观众同时涌向同一个节点。
+ * 目标节点由{@link CdnNodeSelector}预留，只选择仍有剩余容量的在线节点，没有可用容量时剩余会话留到下一波。
+ * 迁移按目标节点批量UPDATE会话的cdnNodeId，只更新仍在原节点上且仍在推流的会话；写入失败的会话
+ * 重新排队，超过max-attempts次记为失败。迁移后的会话在redirect-ttl内保留重定向提示，供观看端切换播放地址。
+ */
+@Service
+@Slf4j
+public class StreamMigrationServiceImpl implements StreamMigrationService {
+
+    /**
+     * 统计中保留的最近完成的迁出数
+     */
+    private static final int HISTORY_SIZE = 20;
+
+    /**
+     * 为一个会话选择目标节点的次数，都落在本波已满的节点上时结束本波
+     */
+    private static final int TARGET_ATTEMPTS = 3;
+
+    private final StreamSessionRepository streamSessionRepository;
+    private final CdnNodeSelector cdnNodeSelector;
+    private final HlsUrlSigner urlSigner;
+    private final LongSupplier clock;
+
+    @Value("${stream.migration.wave-size:200}")
+    private int waveSize = 200;
+
+    @Value("${stream.migration.max-per-target:20}")
+    private int maxPerTarget = 20;
+
+    @Value("${stream.migration.max-attempts:3}")
+    private int maxAttempts = 3;
+
+    /**
+     * 超过该时间仍未迁完的会话记为失败
+     */
+    @Value("${stream.migration.drain-timeout:600000}")
+    private long drainTimeoutMs = 600000;
+
+    @Value("${stream.migration.redirect-ttl:300000}")
+    private long redirectTtlMs = 300000;
+
+    @Value("${stream.migration.redirect-url:http://{host}:{port}/api/hls/{cameraId}/{token}/index.m3u8}")
+    private String redirectUrl = "http://{host}:{port}/api/hls/{cameraId}/{token}/index.m3u8";
+
+    private final Map<Long, Drain> drains = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Object>> redirects = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> history = new ArrayDeque<>();
+
+    private final LongAdder drainsStarted = new LongAdder();
+    private final LongAdder drainsCompleted = new LongAdder();
+    private final LongAdder sessionsMoved = new LongAdder();
+    private final LongAdder sessionsFailed = new LongAdder();
+    private final LongAdder sessionsSkipped = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+    private final LongAdder waves = new LongAdder();
+    private final AtomicLong totalDrainMillis = new AtomicLong();
+    private final AtomicLong maxDrainMillis = new AtomicLong();
+
+    @Autowired
+    public StreamMigrationServiceImpl(StreamSessionRepository streamSessionRepository,
+                                      CdnNodeSelector cdnNodeSelector, HlsUrlSigner urlSigner) {
+        this(streamSessionRepository, cdnNodeSelector, urlSigner, System::currentTimeMillis);
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public StreamMigrationServiceImpl(StreamSessionRepository streamSessionRepository,
+                                      CdnNodeSelector cdnNodeSelector, HlsUrlSigner urlSigner,
+                                      LongSupplier clock) {
+        this.streamSessionRepository = streamSessionRepository;
+        this.cdnNodeSelector = cdnNodeSelector;
+        this.urlSigner = urlSigner;
+        this.clock = clock;
+    }
+
+    @Override
+    public void drain(CdnNode cdnNode) {
+        if (drains.containsKey(cdnNode.getId())) {
+            return;
+        }
+        List<StreamSession> sessions = new ArrayList<>();
+        for (StreamSession session : streamSessionRepository.findByCdnNodeId(cdnNode.getId().toString())) {
+            if (session.getId() != null && session.getStatus() == StreamSession.StreamStatus.STREAMING) {
+                sessions.add(session);
+            }
+        }
+        Drain drain = new Drain(cdnNode, sessions, clock.getAsLong());
+        if (drains.putIfAbsent(cdnNode.getId(), drain) == null) {
+            drainsStarted.increment();
+            log.info("Draining {} stream sessions from CDN node {}", sessions.size(), cdnNode.getName());
+        }
+    }
+
+    @Override
+    public void cancel(Long cdnNodeId) {
+        Drain drain = drains.get(cdnNodeId);
+        if (drain != null) {
+            drain.cancelled = true;
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${stream.migration.wave-interval:1000}")
+    public void runWave() {
+        long now = clock.getAsLong();
+        redirects.values().removeIf(redirect -> now - (long) redirect.get("migratedAt") > redirectTtlMs);
+        if (drains.isEmpty()) {
+            return;
+        }
+        // 同一波内所有迁出节点共用每个目标节点的接收上限
+        Map<Long, Integer> accepted = new HashMap<>();
+        for (Drain drain : drains.values()) {
+            synchronized (drain) {
+                migrate(drain, accepted, now);
+            }
+            if (drain.finished() && drains.remove(drain.nodeId, drain)) {
+                complete(drain, now);
+            }
+        }
+        waves.increment();
+    }
+
+    @Override
+    public Map<String, Object> getRedirect(String sessionId) {
+        return redirects.get(sessionId);
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        long completed = drainsCompleted.sum();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("activeDrains", drains.size());
+        statistics.put("drainsStarted", drainsStarted.sum());
+        statistics.put("drainsCompleted", completed);
+        statistics.put("sessionsMoved", sessionsMoved.sum());
+        statistics.put("sessionsFailed", sessionsFailed.sum());
+        statistics.put("sessionsSkipped", sessionsSkipped.sum());
+        statistics.put("writeFailures", writeFailures.sum());
+        statistics.put("waves", waves.sum());
+        statistics.put("averageDrainMillis", completed == 0 ? 0.0 : totalDrainMillis.get() / (double) completed);
+        statistics.put("maxDrainMillis", maxDrainMillis.get());
+        statistics.put("redirects", redirects.size());
+        List<Map<String, Object>> active = new ArrayList<>();
+        long now = clock.getAsLong();
+        for (Drain drain : drains.values()) {
+            synchronized (drain) {
+                active.add(drain.toMap(now));
+            }
+        }
+        statistics.put("active", active);
+        synchronized (history) {
+            statistics.put("recent", new ArrayList<>(history));
+        }
+        return statistics;
+    }
+
+    private void migrate(Drain drain, Map<Long, Integer> accepted, long now) {
+        if (drain.cancelled || drain.pending.isEmpty()) {
+            return;
+        }
+        if (now - drain.startedAt > drainTimeoutMs) {
+            log.warn("Draining CDN node {} timed out, {} sessions not moved", drain.nodeName, drain.pending.size());
+            drain.failed += drain.pending.size();
+            sessionsFailed.add(drain.pending.size());
+            drain.pending.clear();
+            return;
+        }
+
+        // 预留目标节点，按目标节点分组
+        Map<Long, List<StreamSession>> byTarget = new HashMap<>();
+        int taken = 0;
+        while (taken < waveSize && !drain.pending.isEmpty()) {
+            long target = reserve(drain, accepted);
+            if (target < 0) {
+                break;
+            }
+            byTarget.computeIfAbsent(target, key -> new ArrayList<>()).add(drain.pending.pollFirst());
+            taken++;
+        }
+        if (taken == 0) {
+            drain.stalledWaves++;
+            return;
+        }
+
+        long started = System.nanoTime();
+        int moved = 0;
+        String source = drain.nodeId.toString();
+        for (Map.Entry<Long, List<StreamSession>> entry : byTarget.entrySet()) {
+            long target = entry.getKey();
+            List<StreamSession> sessions = entry.getValue();
+            List<Long> ids = new ArrayList<>(sessions.size());
+            for (StreamSession session : sessions) {
+                ids.add(session.getId());
+            }
+            int updated;
+            try {
+                updated = streamSessionRepository.updateCdnNodeIn(ids, source, Long.toString(target),
+                        StreamSession.StreamStatus.STREAMING, LocalDateTime.now());
+            } catch (Exception e) {
+                log.warn("Failed to move {} stream sessions from CDN node {} to {}: {}",
+                        ids.size(), drain.nodeName, target, e.getMessage());
+                writeFailures.increment();
+                cdnNodeSelector.release(target, ids.size());
+                retry(drain, sessions);
+                continue;
+            }
+            // 已结束或已被移走的会话没有更新，撤销为它们预留的容量
+            cdnNodeSelector.release(target, ids.size() - updated);
+            drain.skipped += ids.size() - updated;
+            sessionsSkipped.add(ids.size() - updated);
+            moved += updated;
+            if (updated == 0) {
+                continue;
+            }
+            // 只给实际迁移的会话发送重定向，更新行数不足时回查
+            Set<Long> updatedIds = updated < ids.size()
+                    ? new HashSet<>(streamSessionRepository.findIdsOnCdnNode(ids, Long.toString(target)))
+                    : null;
+            CdnNode node = cdnNodeSelector.getNode(target);
+            for (StreamSession session : sessions) {
+                if (updatedIds != null && !updatedIds.contains(session.getId())) {
+                    continue;
+                }
+                session.setCdnNodeId(Long.toString(target));
+                redirects.put(session.getSessionId(), redirect(drain, session, target, node, now));
+            }
+        }
+
+        drain.moved += moved;
+        drain.waves++;
+        drain.lastWaveMoved = moved;
+        drain.maxWaveMoved = Math.max(drain.maxWaveMoved, moved);
+        drain.lastWaveWriteMicros = (System.nanoTime() - started) / 1000;
+        sessionsMoved.add(moved);
+    }
+
+    /**
+     * 预留一个本波还能接收会话的目标节点，没有时返回-1
+     */
+    private long reserve(Drain drain, Map<Long, Integer> accepted) {
+        for (int attempt = 0; attempt < TARGET_ATTEMPTS; attempt++) {
+            long target = cdnNodeSelector.reserve(drain.region, drain.nodeId);
+            if (target < 0) {
+                return -1;
+            }
+            int count = accepted.getOrDefault(target, 0);
+            if (count < maxPerTarget) {
+                accepted.put(target, count + 1);
+                return target;
+            }
+            cdnNodeSelector.release(target, 1);
+        }
+        return -1;
+    }
+
+    private void retry(Drain drain, List<StreamSession> sessions) {
+        for (StreamSession session : sessions) {
+            int attempts = drain.attempts.merge(session.getId(), 1, Integer::sum);
+            if (attempts < maxAttempts) {
+                drain.pending.addLast(session);
+            } else {
+                drain.failed++;
+                sessionsFailed.increment();
+            }
+        }
+    }
+
+    private Map<String, Object> redirect(Drain drain, StreamSession session, long target, CdnNode node, long now) {
+        Map<String, Object> redirect = new LinkedHashMap<>();
+        redirect.put("sessionId", session.getSessionId());
+        redirect.put("fromCdnNodeId", drain.nodeId);
+        redirect.put("cdnNodeId", target);
+        redirect.put("url", node == null ? null : redirectUrl
+                .replace("{host}", node.getIpAddress())
+                .replace("{port}", String.valueOf(node.getPort()))
+                .replace("{cameraId}", String.valueOf(session.getCameraId()))
+                .replace("{token}", urlSigner.sign(session.getCameraId())));
+        redirect.put("migratedAt", now);
+        return redirect;
+    }
+
+    private void complete(Drain drain, long now) {
+        long elapsed = now - drain.startedAt;
+        drainsCompleted.increment();
+        totalDrainMillis.addAndGet(elapsed);
+        maxDrainMillis.accumulateAndGet(elapsed, Math::max);
+        Map<String, Object> summary;
+        synchronized (drain) {
+            summary = drain.toMap(now);
+        }
+        synchronized (history) {
+            history.addFirst(summary);
+            if (history.size() > HISTORY_SIZE) {
+                history.removeLast();
+            }
+        }
+        log.info("Finished draining CDN node {}{}: {} moved, {} failed, {} skipped in {} waves, {} ms",
+                drain.nodeName, drain.cancelled ? " (cancelled)" : "", drain.moved, drain.failed, drain.skipped,
+                drain.waves, elapsed);
+    }
+
+    /**
+     * 一个节点的迁出进度，除cancelled外只在持有该对象的锁时访问
+     */
+    private static final class Drain {
+        private final Long nodeId;
+        private final String nodeName;
+        private final String region;
+        private final long startedAt;
+        private final int total;
+        private final Deque<StreamSession> pending;
+        private final Map<Long, Integer> attempts = new HashMap<>();
+        private volatile boolean cancelled;
+        private long moved;
+        private long failed;
+        private long skipped;
+        private int waves;
+        private int stalledWaves;
+        private int lastWaveMoved;
+        private int maxWaveMoved;
+        private long lastWaveWriteMicros;
+
+        Drain(CdnNode node, List<StreamSession> sessions, long startedAt) {
+            this.nodeId = node.getId();
+            this.nodeName = node.getName();
+            this.region = node.getLocation();
+            this.startedAt = startedAt;
+            this.total = sessions.size();
+            this.pending = new ArrayDeque<>(sessions);
+        }
+
+        synchronized boolean finished() {
+            return cancelled || pending.isEmpty();
+        }
+
+        Map<String, Object> toMap(long now) {
+            long elapsed = now - startedAt;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("cdnNodeId", nodeId);
+            map.put("cdnNodeName", nodeName);
+            map.put("cancelled", cancelled);
+            map.put("sessions", total);
+            map.put("pending", pending.size());
+            map.put("moved", moved);
+            map.put("failed", failed);
+            map.put("skipped", skipped);
+            map.put("waves", waves);
+            map.put("stalledWaves", stalledWaves);
+            map.put("lastWaveMoved", lastWaveMoved);
+            map.put("maxWaveMoved", maxWaveMoved);
+            map.put("averageWaveMoved", waves == 0 ? 0.0 : moved / (double) waves);
+            map.put("lastWaveWriteMicros", lastWaveWriteMicros);
+            map.put("sessionsPerSecond", elapsed <= 0 ? 0.0 : moved * 1000.0 / elapsed);
+            map.put("elapsedMillis", elapsed);
+            return map;
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package com.aick.mmp.service.impl;
 
 import com.aick.mmp.adapter.protocol.ProtocolAdapter;
+import com.aick.mmp.exception.ResourceNotFoundException;
+import com.aick.mmp.exception.ServiceException;
 import com.aick.mmp.model.Camera;
 import com.aick.mmp.model.StreamSession;
+import com.aick.mmp.repository.CameraRepository;
 import com.aick.mmp.repository.StreamSessionRepository;
 import com.aick.mmp.service.StreamingService;
+import com.aick.mmp.stream.GopCache;
+import com.aick.mmp.stream.StreamHub;
+import com.aick.mmp.stream.StreamSubscriber;
+import com.aick.mmp.stream.hls.LlHlsManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -22,6 +31,10 @@ public class StreamingServiceImpl implements StreamingService {
 
     private final StreamSessionRepository streamSessionRepository;
     private final List<ProtocolAdapter> protocolAdapters;
+    private final StreamHub streamHub;
+    private final GopCache gopCache;
+    private final LlHlsManager hlsManager;
+    private final CameraRepository cameraRepository;
     
     // 存储活动的流会话
     private final Map<String, StreamSession> activeSessions = new ConcurrentHashMap<>();
@@ -39,21 +52,33 @@ public class StreamingServiceImpl implements StreamingService {
             StreamSession session = StreamSession.builder()
                     .sessionId(generateSessionId())
                     .cameraId(camera.getId())
+                    .edgeNodeId(camera.getEdgeNodeId())
                     .protocol(camera.getProtocol().name())
                     .status(StreamSession.StreamStatus.INITIATED)
                     .startTime(LocalDateTime.now())
                     .build();
 
-            // 启动流
-            String sessionId = adapter.startStreamSession(camera);
-            session.setSessionId(sessionId);
+            // 订阅摄像头的共享上游流，同一摄像头的多个观看者只向设备拉一路流；
+            // 会话只保持上游，媒体由HLS打包器分发，因此不接收帧
+            StreamSubscriber subscriber = streamHub.subscribe(session.getSessionId(), camera, adapter, false,
+                    this::onSubscriberClosed);
+            String sessionId = subscriber.getSubscriberId();
             session.setStatus(StreamSession.StreamStatus.STREAMING);
 
             // 保存会话
             streamSessionRepository.save(session);
             activeSessions.put(sessionId, session);
+            if (subscriber.isClosed()) {
+                // 登记会话之前上游已经结束
+                onSubscriberClosed(subscriber);
+            }
 
-            log.info("Started stream for camera {} with session {}", camera.getId(), sessionId);
+            if (subscriber.isGopCacheHit()) {
+                log.info("Started stream for camera {} with session {} from GOP cache (saved ~{} ms)",
+                        camera.getId(), sessionId, subscriber.getTimeToFirstFrameSavedMillis());
+            } else {
+                log.info("Started stream for camera {} with session {}", camera.getId(), sessionId);
+            }
             return sessionId;
 
         } catch (Exception e) {
@@ -71,11 +96,8 @@ public class StreamingServiceImpl implements StreamingService {
                 return;
             }
 
-            // 查找协议适配器并停止流
-            ProtocolAdapter adapter = findProtocolAdapter(session.getProtocol());
-            if (adapter != null) {
-                adapter.stopStreamSession(sessionId);
-            }
+            // 退出订阅，最后一个观看者退出时由StreamHub关闭上游会话
+            streamHub.unsubscribe(sessionId);
 
             // 更新会话状态
             session.setStatus(StreamSession.StreamStatus.DISCONNECTED);
@@ -103,7 +125,16 @@ public class StreamingServiceImpl implements StreamingService {
                 throw new RuntimeException("Protocol adapter not found for: " + session.getProtocol());
             }
 
-            return adapter.getStreamMetrics(sessionId);
+            StreamSubscriber subscriber = streamHub.getSubscriber(sessionId);
+            Map<String, Object> metrics = new HashMap<>(adapter.getStreamMetrics(streamHub.getUpstreamSessionId(sessionId)));
+            metrics.put("viewers", streamHub.getSubscriberCount(session.getCameraId()));
+            metrics.put("queuedFrames", subscriber.getQueuedFrames());
+            metrics.put("deliveredFrames", subscriber.getDeliveredFrames());
+            metrics.put("droppedFrames", subscriber.getDroppedFrames());
+            metrics.put("gopCacheHit", subscriber.isGopCacheHit());
+            metrics.put("timeToFirstFrameSavedMillis", subscriber.getTimeToFirstFrameSavedMillis());
+            metrics.put("gopCacheHitRate", gopCache.getHitRate());
+            return metrics;
 
         } catch (Exception e) {
             log.error("Failed to get stream metrics for {}: {}", sessionId, e.getMessage());
@@ -124,7 +155,8 @@ public class StreamingServiceImpl implements StreamingService {
                 throw new RuntimeException("Protocol adapter not found for: " + session.getProtocol());
             }
 
-            adapter.adjustStreamQuality(sessionId, qualityLevel);
+            // 码流调整作用于共享的上游会话，同一摄像头的所有观看者都会受影响
+            adapter.adjustStreamQuality(streamHub.getUpstreamSessionId(sessionId), qualityLevel);
             log.info("Adjusted stream quality for session {} to level {}", sessionId, qualityLevel);
 
         } catch (Exception e) {
@@ -133,11 +165,114 @@ public class StreamingServiceImpl implements StreamingService {
         }
     }
 
+    @Override
+    public String getStreamUrl(Long cameraId) {
+        Camera camera = cameraRepository.findById(cameraId)
+                .orElseThrow(() -> new ResourceNotFoundException("Camera not found with id: " + cameraId));
+
+        ProtocolAdapter adapter = findProtocolAdapter(camera.getProtocol().name());
+        if (adapter == null) {
+            throw new ServiceException("No protocol adapter found for: " + camera.getProtocol());
+        }
+
+        // LL-HLS打包器作为StreamHub的一个订阅者，与其他观看者共享上游流
+        hlsManager.start(camera, adapter);
+        return hlsManager.getPlaylistUrl(cameraId);
+    }
+
     @Override
     public List<StreamSession> getActiveSessions() {
         return streamSessionRepository.findByStatus(StreamSession.StreamStatus.STREAMING);
     }
 
+    @Override
+    public List<StreamSession> getActiveSessionsByEdgeNode(Long edgeNodeId) {
+        List<StreamSession> sessions = new ArrayList<>();
+        for (StreamSession session : activeSessions.values()) {
+            if (edgeNodeId.equals(session.getEdgeNodeId())
+                    && session.getStatus() == StreamSession.StreamStatus.STREAMING) {
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
+    @Override
+    public int restartStreams(Camera camera) {
+        ProtocolAdapter adapter = findProtocolAdapter(camera.getProtocol().name());
+        if (adapter == null) {
+            throw new ServiceException("No protocol adapter found for: " + camera.getProtocol());
+        }
+        List<StreamSession> sessions = new ArrayList<>();
+        for (StreamSession session : activeSessions.values()) {
+            if (camera.getId().equals(session.getCameraId())
+                    && session.getStatus() == StreamSession.StreamStatus.STREAMING) {
+                sessions.add(session);
+            }
+        }
+        if (sessions.isEmpty()) {
+            return 0;
+        }
+        // 先退出全部订阅，最后一个退出时StreamHub关闭旧的上游会话，重新订阅时打开新的上游会话
+        for (StreamSession session : sessions) {
+            streamHub.unsubscribe(session.getSessionId());
+        }
+        // 每个会话单独处理，重新订阅失败的会话已没有订阅，结束为ERROR，不留在活动会话中
+        int restarted = 0;
+        RuntimeException failure = null;
+        for (StreamSession session : sessions) {
+            try {
+                streamHub.subscribe(session.getSessionId(), camera, adapter, false, this::onSubscriberClosed);
+                session.setEdgeNodeId(camera.getEdgeNodeId());
+                restarted++;
+            } catch (RuntimeException e) {
+                failure = e;
+                activeSessions.remove(session.getSessionId(), session);
+                session.setStatus(StreamSession.StreamStatus.ERROR);
+                session.setEndTime(LocalDateTime.now());
+                log.warn("Failed to restart stream session {} for camera {}: {}", session.getSessionId(),
+                        camera.getId(), e.getMessage());
+            }
+        }
+        streamSessionRepository.saveAll(sessions);
+        if (failure != null) {
+            throw new ServiceException("Restarted " + restarted + " of " + sessions.size()
+                    + " stream sessions for camera " + camera.getId() + ": " + failure.getMessage());
+        }
+        log.info("Restarted {} stream sessions for camera {} on edge node {}", restarted, camera.getId(),
+                camera.getEdgeNodeId());
+        return restarted;
+    }
+
+    @Override
+    public boolean testCameraConnection(Camera camera) {
+        ProtocolAdapter adapter = findProtocolAdapter(camera.getProtocol().name());
+        if (adapter == null) {
+            throw new ServiceException("No protocol adapter found for: " + camera.getProtocol());
+        }
+        return adapter.testConnection(camera);
+    }
+
+    /**
+     * 上游结束时StreamHub已关闭订阅，会话随之结束，不再参与码率调整和故障转移
+     */
+    private void onSubscriberClosed(StreamSubscriber subscriber) {
+        String sessionId = subscriber.getSubscriberId();
+        if (streamHub.findSubscriber(sessionId) != null) {
+            // 会话已重新订阅到新的上游
+            return;
+        }
+        StreamSession session = activeSessions.remove(sessionId);
+        if (session == null) {
+            return;
+        }
+        session.setStatus(StreamSession.StreamStatus.DISCONNECTED);
+        session.setEndTime(LocalDateTime.now());
+        streamSessionRepository.save(session);
+        log.warn("Stream session {} for camera {} ended with its upstream: {}", sessionId, session.getCameraId(),
+                subscriber.getCloseCause() == null ? "closed" : subscriber.getCloseCause().getMessage());
+    }
+
     private ProtocolAdapter findProtocolAdapter(String protocolName) {
         // 简单的协议匹配，实际应该更智能
         for (ProtocolAdapter adapter : protocolAdapters) {
@@ -0,0 +1,199 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.config.security.TokenPrincipalCache;
+import com.aick.mmp.config.security.TokenRevocationList;
+import com.aick.mmp.service.TokenRevocationService;
+import com.aick.mmp.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 令牌吊销在实例间的同步
+ * <p>
+ * 吊销先写入本实例的列表，再写入Redis有序集合（成员为吊销标识或用户吊销，分值为过期时间）并在频道上发布，
+ * 各实例订阅频道后在毫秒级收到吊销。发布是即发即弃的，断线期间的消息会丢失，因此每隔resync-interval
+ * 从有序集合全量同步一次，并重试发布失败的吊销；启动时的第一次同步加载已有的吊销。
+ * Redis不可用时吊销仍在本实例生效，恢复后由同步补齐。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TokenRevocationServiceImpl implements TokenRevocationService {
+
+    private static final String USER_PREFIX = "user:";
+
+    private final TokenRevocationList tokenRevocationList;
+    private final StringRedisTemplate redisTemplate;
+    private final JwtUtil jwtUtil;
+
+    @Value("${security.jwt.revocation.redis-sync:true}")
+    private boolean redisSync = true;
+
+    @Value("${security.jwt.revocation.channel:mmp:token-revocations}")
+    private String channel = "mmp:token-revocations";
+
+    @Value("${security.jwt.revocation.key:mmp:revoked-tokens}")
+    private String key = "mmp:revoked-tokens";
+
+    private final Map<String, Long> unpublished = new ConcurrentHashMap<>();
+    private final LongAdder revoked = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder publishFailures = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder resyncFailures = new LongAdder();
+    private volatile long lastResyncAt;
+
+    @Override
+    public boolean revoke(String token) {
+        Claims claims;
+        try {
+            claims = jwtUtil.parseClaims(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            // 无效或已过期的令牌本身无法通过认证
+            return false;
+        }
+        if (claims.getExpiration() == null) {
+            return false;
+        }
+        String tokenId = TokenRevocationList.tokenId(claims, TokenPrincipalCache.key(token));
+        long expiresAt = claims.getExpiration().getTime();
+        if (!tokenRevocationList.add(tokenId, expiresAt)) {
+            return false;
+        }
+        revoked.increment();
+        publish(tokenId, expiresAt);
+        return true;
+    }
+
+    @Override
+    public void revokeUser(String username) {
+        long notBefore = System.currentTimeMillis();
+        long expiresAt = notBefore + jwtUtil.getExpiration();
+        if (!tokenRevocationList.addUser(username, notBefore, expiresAt)) {
+            return;
+        }
+        revoked.increment();
+        log.info("Revoked tokens of user {} issued before {}", username, notBefore);
+        publish(USER_PREFIX + notBefore + ":" + username, expiresAt);
+    }
+
+    @Override
+    public void onRevocationMessage(String message) {
+        int separator = message.indexOf(' ');
+        if (separator <= 0 || separator == message.length() - 1) {
+            log.warn("Ignoring malformed token revocation message: {}", message);
+            return;
+        }
+        long expiresAt;
+        try {
+            expiresAt = Long.parseLong(message.substring(0, separator));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed token revocation message: {}", message);
+            return;
+        }
+        received.increment();
+        apply(message.substring(separator + 1), expiresAt);
+    }
+
+    /**
+     * 吊销标识（jti或令牌摘要）不含冒号，带user:前缀的成员是用户吊销
+     */
+    private boolean apply(String member, long expiresAt) {
+        if (!member.startsWith(USER_PREFIX)) {
+            return tokenRevocationList.add(member, expiresAt);
+        }
+        int separator = member.indexOf(':', USER_PREFIX.length());
+        if (separator < 0) {
+            log.warn("Ignoring malformed user revocation: {}", member);
+            return false;
+        }
+        try {
+            long notBefore = Long.parseLong(member.substring(USER_PREFIX.length(), separator));
+            return tokenRevocationList.addUser(member.substring(separator + 1), notBefore, expiresAt);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed user revocation: {}", member);
+            return false;
+        }
+    }
+
+    private void publish(String member, long expiresAt) {
+        if (!redisSync) {
+            return;
+        }
+        try {
+            redisTemplate.opsForZSet().add(key, member, expiresAt);
+            redisTemplate.convertAndSend(channel, expiresAt + " " + member);
+            published.increment();
+        } catch (RuntimeException e) {
+            publishFailures.increment();
+            unpublished.put(member, expiresAt);
+            log.warn("Failed to publish token revocation, will retry on next resync: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 重试未发布的吊销，删除有序集合中已过期的成员，加载其余成员
+     */
+    @Scheduled(fixedDelayString = "${security.jwt.revocation.resync-interval:30000}")
+    public void resync() {
+        if (!redisSync) {
+            return;
+        }
+        try {
+            for (Map.Entry<String, Long> entry : unpublished.entrySet()) {
+                redisTemplate.opsForZSet().add(key, entry.getKey(), entry.getValue());
+                redisTemplate.convertAndSend(channel, entry.getValue() + " " + entry.getKey());
+                unpublished.remove(entry.getKey(), entry.getValue());
+                published.increment();
+            }
+
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForZSet().removeRangeByScore(key, 0, now);
+            Set<TypedTuple<String>> members = redisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(key, now, Double.POSITIVE_INFINITY);
+            int added = 0;
+            if (members != null) {
+                for (TypedTuple<String> member : members) {
+                    if (member.getValue() != null && member.getScore() != null
+                            && apply(member.getValue(), member.getScore().longValue())) {
+                        added++;
+                    }
+                }
+            }
+            if (added > 0) {
+                log.info("Loaded {} token revocations from Redis", added);
+            }
+            lastResyncAt = now;
+        } catch (RuntimeException e) {
+            resyncFailures.increment();
+            log.warn("Token revocation resync failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>(tokenRevocationList.getStatistics());
+        statistics.put("redisSync", redisSync);
+        statistics.put("revokedHere", revoked.sum());
+        statistics.put("published", published.sum());
+        statistics.put("publishFailures", publishFailures.sum());
+        statistics.put("unpublished", unpublished.size());
+        statistics.put("received", received.sum());
+        statistics.put("resyncFailures", resyncFailures.sum());
+        statistics.put("lastResyncAt", lastResyncAt);
+        return statistics;
+    }
+}
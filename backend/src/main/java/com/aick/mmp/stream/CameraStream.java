@@ -0,0 +1,172 @@
+package com.aick.mmp.stream;
+
+import com.aick.mmp.adapter.protocol.ProtocolAdapter;
+import com.aick.mmp.adapter.protocol.media.AccessUnit;
+import com.aick.mmp.adapter.protocol.media.AccessUnitListener;
+import com.aick.mmp.model.Camera;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 单个摄像头的上游流：一路上游会话，帧数据写入GOP缓存并分发给全部订阅者
+ * <p>
+ * 增减订阅者在{@link StreamHub}中对本对象加锁完成，打开上游会话不持有该锁；帧分发在上游IO线程执行，
+ * 与新订阅者的GOP回放通过frameLock互斥，保证回放和实时帧之间不丢帧也不重复。
+ * 上游可能在startStreamSession返回会话ID之前就已结束，关闭上游会话由start和stop中后执行的一方完成，且只执行一次
+ */
+class CameraStream implements AccessUnitListener {
+
+    private final Long cameraId;
+    private final ProtocolAdapter adapter;
+    private final GopCache gopCache;
+    private final BiConsumer<CameraStream, Throwable> upstreamClosedHandler;
+    private final List<StreamSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicBoolean starting = new AtomicBoolean();
+    private final AtomicBoolean upstreamStopped = new AtomicBoolean();
+    private final CompletableFuture<Void> started = new CompletableFuture<>();
+    private final Object frameLock = new Object();
+
+    private volatile String upstreamSessionId;
+    private volatile boolean stopRequested;
+    private volatile long startedAt;
+
+    CameraStream(Long cameraId, ProtocolAdapter adapter, GopCache gopCache,
+                 BiConsumer<CameraStream, Throwable> upstreamClosedHandler) {
+        this.cameraId = cameraId;
+        this.adapter = adapter;
+        this.gopCache = gopCache;
+        this.upstreamClosedHandler = upstreamClosedHandler;
+    }
+
+    /**
+     * 由第一个订阅者认领打开上游会话，只有第一次调用返回true
+     */
+    boolean claimStart() {
+        return starting.compareAndSet(false, true);
+    }
+
+    /**
+     * 打开上游会话，阻塞直到会话建立或失败；期间已被关闭时立即关闭刚建立的会话
+     */
+    void start(Camera camera) {
+        String sessionId;
+        try {
+            sessionId = adapter.startStreamSession(camera, this);
+        } catch (RuntimeException e) {
+            started.completeExceptionally(e);
+            throw e;
+        }
+        startedAt = System.currentTimeMillis();
+        upstreamSessionId = sessionId;
+        started.complete(null);
+        if (stopRequested) {
+            // 会话ID赋值之前上游已结束，stop没有拿到会话ID
+            stopUpstream();
+        }
+    }
+
+    /**
+     * 等待认领者打开上游会话，不论成败
+     */
+    void awaitStarted() {
+        started.handle((ignored, e) -> null).join();
+    }
+
+    /**
+     * 关闭上游会话，会话尚未建立时由start在建立后关闭
+     */
+    void stop() {
+        synchronized (frameLock) {
+            gopCache.invalidate(cameraId);
+        }
+        stopRequested = true;
+        stopUpstream();
+    }
+
+    private void stopUpstream() {
+        String sessionId = upstreamSessionId;
+        if (sessionId != null && upstreamStopped.compareAndSet(false, true)) {
+            adapter.stopStreamSession(sessionId);
+        }
+    }
+
+    @Override
+    public void onAccessUnit(AccessUnit accessUnit) {
+        synchronized (frameLock) {
+            if (closed.get()) {
+                return;
+            }
+            gopCache.onAccessUnit(cameraId, accessUnit);
+            for (StreamSubscriber subscriber : subscribers) {
+                subscriber.offer(accessUnit);
+            }
+        }
+    }
+
+    @Override
+    public void onStreamClosed(Throwable cause) {
+        upstreamClosedHandler.accept(this, cause);
+    }
+
+    /**
+     * 创建订阅者并加入分发列表，先回放缓存的GOP
+     * @param queueCapacity 实时帧的队列容量，回放帧另外计入；0表示不接收帧
+     * @param joiningRunningStream 是否加入已运行的流（首个订阅者为false）
+     * @param closeListener 上游结束导致订阅关闭时的回调，可为null
+     */
+    StreamSubscriber attach(String subscriberId, int queueCapacity, boolean joiningRunningStream,
+                            Consumer<StreamSubscriber> closeListener) {
+        synchronized (frameLock) {
+            GopCache.Replay replay = gopCache.replay(cameraId, joiningRunningStream);
+            int replayFrames = replay == null || queueCapacity == 0 ? 0 : replay.getFrames().size();
+            StreamSubscriber subscriber = new StreamSubscriber(subscriberId, this,
+                    queueCapacity == 0 ? 0 : queueCapacity + replayFrames, closeListener);
+            if (replay != null) {
+                subscriber.replay(replay, joiningRunningStream);
+            }
+            subscribers.add(subscriber);
+            return subscriber;
+        }
+    }
+
+    void removeSubscriber(StreamSubscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    List<StreamSubscriber> getSubscribers() {
+        return subscribers;
+    }
+
+    /**
+     * 标记为已关闭，只有第一次调用返回true
+     */
+    boolean markClosed() {
+        return closed.compareAndSet(false, true);
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    Long getCameraId() {
+        return cameraId;
+    }
+
+    ProtocolAdapter getAdapter() {
+        return adapter;
+    }
+
+    String getUpstreamSessionId() {
+        return upstreamSessionId;
+    }
+
+    long getStartedAt() {
+        return startedAt;
+    }
+}
@@ -0,0 +1,231 @@
+package com.aick.mmp.stream;
+
+import com.aick.mmp.adapter.protocol.media.AccessUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GOP缓存：为每个摄像头保存最近一个关键帧及其后续帧，新观看者加入时立即回放，无需等待下一个关键帧
+ * <p>
+ * 全部摄像头共享一个内存预算，超出时按最近访问时间淘汰最久未被使用的摄像头缓存。
+ * 被淘汰或超过单GOP上限的摄像头从下一个关键帧开始重新缓存。
+ */
+@Component
+@Slf4j
+public class GopCache {
+
+    @Value("${stream.gop-cache.max-bytes:268435456}")
+    private long maxBytes = 256L * 1024 * 1024;
+
+    @Value("${stream.gop-cache.max-gop-bytes:33554432}")
+    private long maxGopBytes = 32L * 1024 * 1024;
+
+    private final Map<Long, CameraGop> gops = new ConcurrentHashMap<>();
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong savedMillis = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    public GopCache() {
+    }
+
+    /**
+     * 非Spring环境使用的构造方法
+     */
+    public GopCache(long maxBytes, long maxGopBytes) {
+        this.maxBytes = maxBytes;
+        this.maxGopBytes = maxGopBytes;
+    }
+
+    /**
+     * 缓存上游新到达的一帧，在上游IO线程调用
+     */
+    public void onAccessUnit(Long cameraId, AccessUnit accessUnit) {
+        CameraGop gop = gops.computeIfAbsent(cameraId, CameraGop::new);
+        long delta = gop.append(accessUnit, maxGopBytes);
+        if (delta != 0 && cachedBytes.addAndGet(delta) > maxBytes) {
+            evictUntilWithinBudget();
+        }
+    }
+
+    /**
+     * 为新观看者取出缓存的GOP
+     * @param joiningRunningStream 是否加入已运行的流，只有这种情况计入命中率
+     * @return 回放数据，未命中时返回null
+     */
+    public Replay replay(Long cameraId, boolean joiningRunningStream) {
+        CameraGop gop = gops.get(cameraId);
+        Replay replay = gop == null ? null : gop.snapshot(System.currentTimeMillis());
+        if (!joiningRunningStream) {
+            return replay;
+        }
+        if (replay == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        savedMillis.addAndGet(replay.getSavedMillis());
+        return replay;
+    }
+
+    /**
+     * 上游会话结束时丢弃该摄像头的缓存
+     */
+    public void invalidate(Long cameraId) {
+        CameraGop gop = gops.remove(cameraId);
+        if (gop != null) {
+            cachedBytes.addAndGet(-gop.clear(false));
+        }
+    }
+
+    public long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    /**
+     * 命中率（仅统计加入运行中流的请求）
+     */
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.get();
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("cachedCameras", gops.size());
+        statistics.put("cachedBytes", cachedBytes.get());
+        statistics.put("maxBytes", maxBytes);
+        statistics.put("hits", hitCount);
+        statistics.put("misses", misses.get());
+        statistics.put("hitRate", getHitRate());
+        statistics.put("evictions", evictions.get());
+        statistics.put("timeToFirstFrameSavedMillis", savedMillis.get());
+        statistics.put("averageTimeToFirstFrameSavedMillis", hitCount == 0 ? 0 : savedMillis.get() / hitCount);
+        return statistics;
+    }
+
+    private void evictUntilWithinBudget() {
+        synchronized (evictionLock) {
+            while (cachedBytes.get() > maxBytes) {
+                CameraGop victim = null;
+                for (CameraGop gop : gops.values()) {
+                    if (gop.bytes > 0 && (victim == null || gop.lastAccessedAt < victim.lastAccessedAt)) {
+                        victim = gop;
+                    }
+                }
+                if (victim == null) {
+                    return;
+                }
+                cachedBytes.addAndGet(-victim.clear(true));
+                evictions.incrementAndGet();
+                log.debug("Evicted GOP cache of camera {} to stay within {} bytes", victim.cameraId, maxBytes);
+            }
+        }
+    }
+
+    /**
+     * 回放给新观看者的缓存帧（已retain，由接收方释放）
+     */
+    public static class Replay {
+        private final List<AccessUnit> frames;
+        private final long savedMillis;
+
+        Replay(List<AccessUnit> frames, long savedMillis) {
+            this.frames = frames;
+            this.savedMillis = savedMillis;
+        }
+
+        public List<AccessUnit> getFrames() {
+            return frames;
+        }
+
+        /**
+         * 估算节省的起播等待时间：上一个GOP的时长减去当前GOP已播放的时长
+         */
+        public long getSavedMillis() {
+            return savedMillis;
+        }
+    }
+
+    /**
+     * 单个摄像头的当前GOP，方法在对象锁内执行
+     */
+    private static final class CameraGop {
+        private final Long cameraId;
+        private final List<AccessUnit> frames = new ArrayList<>();
+        private volatile long bytes;
+        private volatile long lastAccessedAt = System.currentTimeMillis();
+        private long keyframeReceivedAt;
+        private long lastGopDurationMs;
+        private boolean skipUntilKeyframe;
+
+        CameraGop(Long cameraId) {
+            this.cameraId = cameraId;
+        }
+
+        /**
+         * @return 缓存字节数的变化量
+         */
+        synchronized long append(AccessUnit accessUnit, long maxGopBytes) {
+            long delta = 0;
+            if (accessUnit.isKeyframe()) {
+                delta -= clear(false);
+                if (keyframeReceivedAt > 0) {
+                    lastGopDurationMs = accessUnit.getReceivedAt() - keyframeReceivedAt;
+                }
+                keyframeReceivedAt = accessUnit.getReceivedAt();
+            } else if (skipUntilKeyframe || frames.isEmpty()) {
+                return 0;
+            }
+
+            int frameBytes = accessUnit.getBuffer().capacity();
+            if (bytes + frameBytes > maxGopBytes) {
+                return delta - clear(true);
+            }
+            frames.add(accessUnit.retain());
+            bytes += frameBytes;
+            return delta + frameBytes;
+        }
+
+        synchronized Replay snapshot(long now) {
+            lastAccessedAt = now;
+            if (frames.isEmpty()) {
+                return null;
+            }
+            List<AccessUnit> copy = new ArrayList<>(frames.size());
+            for (AccessUnit frame : frames) {
+                copy.add(frame.retain());
+            }
+            long saved = lastGopDurationMs > 0 ? Math.max(0, lastGopDurationMs - (now - keyframeReceivedAt)) : 0;
+            return new Replay(Collections.unmodifiableList(copy), saved);
+        }
+
+        /**
+         * 释放全部缓存帧
+         * @param skipUntilKeyframe 是否在下一个关键帧之前停止缓存
+         * @return 释放的字节数
+         */
+        synchronized long clear(boolean skipUntilKeyframe) {
+            for (AccessUnit frame : frames) {
+                frame.release();
+            }
+            frames.clear();
+            long freed = bytes;
+            bytes = 0;
+            this.skipUntilKeyframe = skipUntilKeyframe;
+            return freed;
+        }
+    }
+}
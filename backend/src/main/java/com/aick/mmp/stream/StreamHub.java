@@ -0,0 +1,217 @@
+package com.aick.mmp.stream;
+
+import com.aick.mmp.adapter.protocol.ProtocolAdapter;
+import com.aick.mmp.exception.ResourceNotFoundException;
+import com.aick.mmp.model.Camera;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 摄像头流分发中心
+ * <p>
+ * 每个摄像头只向设备拉一路流：第一个订阅者打开上游会话，后续订阅者直接挂到同一路帧数据上，
+ * 最后一个订阅者退出时关闭上游会话。每个订阅者有独立的有界队列，慢速观看者不会拖慢其他人。
+ * 上游结束时关闭全部订阅者，并在事件线程中通知订阅时登记的回调，回调不占用上游IO线程。
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StreamHub {
+
+    private final GopCache gopCache;
+
+    @Value("${stream.hub.subscriber-queue-size:90}")
+    private int subscriberQueueSize = 90;
+
+    private final Map<Long, CameraStream> streams = new ConcurrentHashMap<>();
+    private final Map<String, StreamSubscriber> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService events = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "stream-hub-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 订阅摄像头的帧数据，必要时打开上游会话（阻塞直到会话建立）
+     * @param subscriberId 订阅ID
+     * @param camera 摄像头信息
+     * @param adapter 摄像头对应的协议适配器
+     * @return 订阅者
+     */
+    public StreamSubscriber subscribe(String subscriberId, Camera camera, ProtocolAdapter adapter) {
+        return subscribe(subscriberId, camera, adapter, true, null);
+    }
+
+    /**
+     * 订阅摄像头，必要时打开上游会话（阻塞直到会话建立）
+     * @param receiveFrames 是否接收帧；不消费帧的订阅者只保持上游会话，不占用帧缓冲
+     * @param closeListener 上游结束导致订阅关闭时在事件线程中回调，取消订阅不回调；可为null
+     */
+    public StreamSubscriber subscribe(String subscriberId, Camera camera, ProtocolAdapter adapter,
+                                      boolean receiveFrames, Consumer<StreamSubscriber> closeListener) {
+        while (true) {
+            CameraStream stream = streams.computeIfAbsent(camera.getId(),
+                    id -> new CameraStream(id, adapter, gopCache, this::onUpstreamClosed));
+
+            if (stream.isClosed()) {
+                // 上游刚被关闭，已从映射中移除，重新创建
+                streams.remove(camera.getId(), stream);
+                continue;
+            }
+            // 只有第一个订阅者打开上游会话，且不持有锁；同一摄像头的并发订阅等待其完成
+            boolean joiningRunningStream = !stream.claimStart();
+            if (joiningRunningStream) {
+                stream.awaitStarted();
+            } else {
+                try {
+                    stream.start(camera);
+                    log.info("Opened upstream session {} for camera {}", stream.getUpstreamSessionId(), camera.getId());
+                } catch (RuntimeException e) {
+                    stream.markClosed();
+                    streams.remove(camera.getId(), stream);
+                    throw e;
+                }
+            }
+
+            synchronized (stream) {
+                if (joiningRunningStream && stream.isClosed()) {
+                    // 上游打开失败或已结束，重新创建
+                    streams.remove(camera.getId(), stream);
+                    continue;
+                }
+                StreamSubscriber subscriber = stream.attach(subscriberId, receiveFrames ? subscriberQueueSize : 0,
+                        joiningRunningStream, closeListener);
+                subscribers.put(subscriberId, subscriber);
+                if (stream.isClosed()) {
+                    // 加入期间上游断开
+                    subscriber.close(null);
+                    subscribers.remove(subscriberId, subscriber);
+                    notifyClosed(subscriber);
+                }
+                log.debug("Subscriber {} attached to camera {} ({} viewers, GOP cache hit: {})",
+                        subscriberId, camera.getId(), stream.getSubscribers().size(), subscriber.isGopCacheHit());
+                return subscriber;
+            }
+        }
+    }
+
+    /**
+     * 取消订阅，最后一个订阅者退出时关闭上游会话
+     */
+    public void unsubscribe(String subscriberId) {
+        StreamSubscriber subscriber = subscribers.remove(subscriberId);
+        if (subscriber == null) {
+            return;
+        }
+        CameraStream stream = subscriber.getStream();
+        synchronized (stream) {
+            stream.removeSubscriber(subscriber);
+            subscriber.close(null);
+            if (stream.getSubscribers().isEmpty() && stream.markClosed()) {
+                streams.remove(stream.getCameraId(), stream);
+                stream.stop();
+                log.info("Closed upstream session {} for camera {}: no viewers left",
+                        stream.getUpstreamSessionId(), stream.getCameraId());
+            }
+        }
+    }
+
+    /**
+     * 订阅不存在或已随上游关闭时返回null
+     */
+    public StreamSubscriber findSubscriber(String subscriberId) {
+        return subscribers.get(subscriberId);
+    }
+
+    public StreamSubscriber getSubscriber(String subscriberId) {
+        StreamSubscriber subscriber = subscribers.get(subscriberId);
+        if (subscriber == null) {
+            throw new ResourceNotFoundException("Stream subscriber not found: " + subscriberId);
+        }
+        return subscriber;
+    }
+
+    /**
+     * 订阅所在的上游会话ID，用于查询指标和调整码流
+     */
+    public String getUpstreamSessionId(String subscriberId) {
+        return getSubscriber(subscriberId).getStream().getUpstreamSessionId();
+    }
+
+    public int getSubscriberCount(Long cameraId) {
+        CameraStream stream = streams.get(cameraId);
+        return stream == null ? 0 : stream.getSubscribers().size();
+    }
+
+    /**
+     * 各摄像头上游流的概况
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("upstreamSessions", streams.size());
+        statistics.put("subscribers", subscribers.size());
+        return statistics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (CameraStream stream : streams.values()) {
+            if (stream.markClosed()) {
+                closeSubscribers(stream, null, false);
+                stream.stop();
+            }
+        }
+        streams.clear();
+        events.shutdownNow();
+    }
+
+    /**
+     * 上游会话结束（设备断开或被关闭），在上游IO线程中调用，不能加锁等待
+     */
+    private void onUpstreamClosed(CameraStream stream, Throwable cause) {
+        if (!stream.markClosed()) {
+            return;
+        }
+        streams.remove(stream.getCameraId(), stream);
+        closeSubscribers(stream, cause, true);
+        // 释放适配器中的会话记录
+        stream.stop();
+        log.warn("Upstream session {} for camera {} ended, {} viewers disconnected",
+                stream.getUpstreamSessionId(), stream.getCameraId(), stream.getSubscribers().size());
+    }
+
+    private void closeSubscribers(CameraStream stream, Throwable cause, boolean notify) {
+        for (StreamSubscriber subscriber : stream.getSubscribers()) {
+            subscriber.close(cause);
+            // 同一ID可能已重新订阅到新的上游
+            subscribers.remove(subscriber.getSubscriberId(), subscriber);
+            if (notify) {
+                notifyClosed(subscriber);
+            }
+        }
+    }
+
+    private void notifyClosed(StreamSubscriber subscriber) {
+        Consumer<StreamSubscriber> listener = subscriber.getCloseListener();
+        if (listener == null) {
+            return;
+        }
+        events.execute(() -> {
+            try {
+                listener.accept(subscriber);
+            } catch (RuntimeException e) {
+                log.error("Close listener for subscriber {} failed", subscriber.getSubscriberId(), e);
+            }
+        });
+    }
+}
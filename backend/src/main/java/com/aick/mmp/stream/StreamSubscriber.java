@@ -0,0 +1,194 @@
+package com.aick.mmp.stream;
+
+import com.aick.mmp.adapter.protocol.media.AccessUnit;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 单个观看者的订阅：独立的有界帧队列
+ * <p>
+ * 生产者（上游IO线程）从不阻塞：队列满时清空积压并丢帧直到下一个关键帧，
+ * 慢速观看者只会自己跳帧，不影响同一摄像头的其他观看者。
+ * 通过{@link #poll(long, TimeUnit)}取出的帧由调用方负责{@link AccessUnit#release()}。
+ * 队列容量为0的订阅者不接收帧，只用于保持上游会话（如API创建的观看会话，媒体由HLS打包器分发）。
+ */
+public class StreamSubscriber {
+
+    private final String subscriberId;
+    private final Long cameraId;
+    private final CameraStream stream;
+    private final BlockingQueue<AccessUnit> queue;
+    private final Consumer<StreamSubscriber> closeListener;
+    private final long subscribedAt = System.currentTimeMillis();
+
+    private final AtomicLong deliveredFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+
+    // 新订阅者从关键帧开始，否则解码器无法起播
+    private volatile boolean waitingForKeyframe = true;
+    private volatile boolean closed;
+    private volatile Throwable closeCause;
+    private volatile boolean gopCacheHit;
+    private volatile long timeToFirstFrameSavedMillis;
+
+    StreamSubscriber(String subscriberId, CameraStream stream, int queueCapacity,
+                     Consumer<StreamSubscriber> closeListener) {
+        this.subscriberId = subscriberId;
+        this.cameraId = stream.getCameraId();
+        this.stream = stream;
+        this.queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : null;
+        this.closeListener = closeListener;
+    }
+
+    /**
+     * 投递一帧，只在上游线程调用
+     */
+    void offer(AccessUnit accessUnit) {
+        if (closed || queue == null) {
+            return;
+        }
+        if (waitingForKeyframe) {
+            if (!accessUnit.isKeyframe()) {
+                droppedFrames.incrementAndGet();
+                return;
+            }
+            waitingForKeyframe = false;
+        }
+
+        accessUnit.retain();
+        if (!queue.offer(accessUnit)) {
+            // 观看者跟不上：丢弃积压，关键帧可以直接作为新的起点
+            overflows.incrementAndGet();
+            droppedFrames.addAndGet(discardQueued());
+            if (!accessUnit.isKeyframe() || !queue.offer(accessUnit)) {
+                accessUnit.release();
+                droppedFrames.incrementAndGet();
+                waitingForKeyframe = true;
+            }
+        }
+        if (closed) {
+            discardQueued();
+        }
+    }
+
+    /**
+     * 回放GOP缓存中的帧，接管replay中各帧的引用
+     * @param cacheHit 是否作为GOP缓存命中记录（首个订阅者回放的只是启动期间到达的帧）
+     */
+    void replay(GopCache.Replay replay, boolean cacheHit) {
+        if (cacheHit) {
+            gopCacheHit = true;
+            timeToFirstFrameSavedMillis = replay.getSavedMillis();
+        }
+        for (AccessUnit accessUnit : replay.getFrames()) {
+            offer(accessUnit);
+            accessUnit.release();
+        }
+    }
+
+    /**
+     * 取出下一帧，超时或订阅已关闭时返回null
+     */
+    public AccessUnit poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (closed || queue == null) {
+            return null;
+        }
+        AccessUnit accessUnit = queue.poll(timeout, unit);
+        if (accessUnit != null) {
+            deliveredFrames.incrementAndGet();
+        }
+        return accessUnit;
+    }
+
+    /**
+     * 关闭订阅并释放队列中的帧
+     */
+    void close(Throwable cause) {
+        closeCause = cause;
+        closed = true;
+        discardQueued();
+    }
+
+    public String getSubscriberId() {
+        return subscriberId;
+    }
+
+    public Long getCameraId() {
+        return cameraId;
+    }
+
+    public long getSubscribedAt() {
+        return subscribedAt;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 上游异常断开的原因，正常关闭时为null
+     */
+    public Throwable getCloseCause() {
+        return closeCause;
+    }
+
+    /**
+     * 加入时是否命中GOP缓存
+     */
+    public boolean isGopCacheHit() {
+        return gopCacheHit;
+    }
+
+    /**
+     * 命中GOP缓存时估算节省的起播等待时间
+     */
+    public long getTimeToFirstFrameSavedMillis() {
+        return timeToFirstFrameSavedMillis;
+    }
+
+    public boolean isReceivingFrames() {
+        return queue != null;
+    }
+
+    public int getQueuedFrames() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    public long getDeliveredFrames() {
+        return deliveredFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getOverflows() {
+        return overflows.get();
+    }
+
+    CameraStream getStream() {
+        return stream;
+    }
+
+    Consumer<StreamSubscriber> getCloseListener() {
+        return closeListener;
+    }
+
+    private int discardQueued() {
+        if (queue == null) {
+            return 0;
+        }
+        int discarded = 0;
+        AccessUnit accessUnit;
+        while ((accessUnit = queue.poll()) != null) {
+            accessUnit.release();
+            discarded++;
+        }
+        return discarded;
+    }
+}
@@ -0,0 +1,218 @@
+package com.aick.mmp.stream.abr;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个边缘节点的上行码率控制器（AIMD，拥塞信号来自丢包率和排队时延梯度）
+ * <p>
+ * 每个控制周期（一次心跳）根据链路容量、测得的带宽、丢包率和RTT更新节点的总码率预算：
+ * 丢包率超过上限，或排队时延（RTT减去基线RTT）超过阈值且仍在增长时判定为过载，预算乘性下降
+ * （丢包时不高于按丢包率扣除后的送达码率），随后保持若干周期等待降档生效；丢包率处于上下限之间时保持；否则预算按上限的固定比例加性增加，
+ * 预算接近上次过载时的码率（上下10%以内）时改用更小的探测增量，避免反复以大步长越过瓶颈容量。
+ * 预算上限为min(链路容量, 测得带宽)*headroom，下限为所有流都在最低档时的码率。
+ * <p>
+ * 预算按码率阶梯分配给各路流：所有流从最低档开始，按档位由低到高逐路提升，直到再提升一档会超出预算。
+ * 降档立即执行，升档每周期最多一档，避免预算的小幅波动引起档位来回切换。
+ * 非线程安全，由调用方按节点串行调用。
+ */
+public final class BitrateController {
+
+    public enum State {
+        INCREASE, HOLD, DECREASE
+    }
+
+    private static final double NEAR_CONGESTION = 0.1;
+
+    private final Settings settings;
+    /**
+     * 流（摄像头ID）到当前档位下标（从0开始）的映射，只包含已下发过档位的流
+     */
+    private final Map<Long, Integer> levels = new HashMap<>();
+    private double budgetKbps = Double.NaN;
+    private double congestionKbps = Double.NaN;
+    private double baseRttMs = Double.NaN;
+    private double queueDelayMs;
+    private int holdIntervals;
+    private State state = State.HOLD;
+
+    public BitrateController(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * 执行一个控制周期，返回需要调整的流及其新档位（1-N，与ProtocolAdapter的质量级别一致）
+     *
+     * @param capacityKbps  链路容量，未知时为NaN
+     * @param measuredKbps  节点测得的可用带宽，未知时为NaN
+     * @param lossPercent   丢包率（百分比），未知时为NaN
+     * @param rttMs         RTT（毫秒），未知时为NaN
+     * @param streams       节点上正在推流的摄像头
+     */
+    public Map<Long, Integer> update(double capacityKbps, double measuredKbps, double lossPercent, double rttMs,
+                                     Collection<Long> streams) {
+        levels.keySet().retainAll(streams);
+        double ceiling = settings.headroom * min(capacityKbps, measuredKbps);
+        if (Double.isNaN(ceiling) || streams.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        int[] ladder = settings.ladderKbps;
+        double floor = streams.size() * (double) ladder[0];
+        double allocated = allocatedKbps(streams);
+        if (Double.isNaN(budgetKbps)) {
+            budgetKbps = allocated;
+        }
+
+        boolean delayOveruse = updateQueueDelay(rttMs);
+        boolean lossOveruse = lossPercent > settings.lossHighPercent;
+        if (holdIntervals > 0) {
+            holdIntervals--;
+            state = State.HOLD;
+        } else if (lossOveruse || delayOveruse) {
+            congestionKbps = allocated;
+            budgetKbps = settings.decreaseFactor * Math.min(budgetKbps, allocated);
+            if (lossOveruse) {
+                // 瓶颈只送达了(1 - 丢包率)的流量，以此估计可用容量，严重丢包时一步降到位
+                budgetKbps = Math.min(budgetKbps, allocated * (1 - lossPercent / 100));
+            }
+            holdIntervals = settings.holdIntervalsAfterDecrease;
+            state = State.DECREASE;
+        } else if (lossPercent > settings.lossLowPercent) {
+            state = State.HOLD;
+        } else {
+            boolean nearCongestion = Math.abs(budgetKbps - congestionKbps) <= NEAR_CONGESTION * congestionKbps;
+            budgetKbps += (nearCongestion ? settings.probeRatio : settings.increaseRatio) * ceiling;
+            state = State.INCREASE;
+        }
+        budgetKbps = Math.max(floor, Math.min(budgetKbps, ceiling));
+        return allocate(streams);
+    }
+
+    /**
+     * 档位下发失败的流在下个周期重新下发
+     */
+    public void forget(Long stream) {
+        levels.remove(stream);
+    }
+
+    public double getBudgetKbps() {
+        return budgetKbps;
+    }
+
+    public double getCongestionKbps() {
+        return congestionKbps;
+    }
+
+    public double getBaseRttMs() {
+        return baseRttMs;
+    }
+
+    public double getQueueDelayMs() {
+        return queueDelayMs;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 已下发档位的流的码率合计，未下发过的流按初始档位计算
+     */
+    public double allocatedKbps(Collection<Long> streams) {
+        double total = 0;
+        for (Long stream : streams) {
+            Integer level = levels.get(stream);
+            total += settings.ladderKbps[level != null ? level : settings.initialLevel - 1];
+        }
+        return total;
+    }
+
+    /**
+     * 更新基线RTT和平滑后的排队时延，返回是否因时延判定为过载
+     * <p>
+     * 基线取观测到的最小RTT，每周期按base-rtt-drift缓慢上调，路由变化后基线能够跟随。
+     */
+    private boolean updateQueueDelay(double rttMs) {
+        if (Double.isNaN(rttMs)) {
+            return false;
+        }
+        baseRttMs = Double.isNaN(baseRttMs) ? rttMs : Math.min(rttMs, baseRttMs * (1 + settings.baseRttDrift));
+        double previous = queueDelayMs;
+        queueDelayMs += 0.5 * (rttMs - baseRttMs - queueDelayMs);
+        return queueDelayMs > settings.queueDelayThresholdMs && queueDelayMs >= previous;
+    }
+
+    private Map<Long, Integer> allocate(Collection<Long> streams) {
+        int[] ladder = settings.ladderKbps;
+        List<Long> ordered = new ArrayList<>(streams);
+        Collections.sort(ordered);
+        int[] target = new int[ordered.size()];
+        double total = ordered.size() * (double) ladder[0];
+        fill:
+        for (int level = 0; level < ladder.length - 1; level++) {
+            double cost = ladder[level + 1] - ladder[level];
+            for (int i = 0; i < target.length; i++) {
+                if (target[i] != level) {
+                    continue;
+                }
+                if (total + cost > budgetKbps) {
+                    break fill;
+                }
+                target[i]++;
+                total += cost;
+            }
+        }
+
+        Map<Long, Integer> changes = new LinkedHashMap<>();
+        for (int i = 0; i < target.length; i++) {
+            Long stream = ordered.get(i);
+            Integer current = levels.get(stream);
+            int next = current == null || target[i] < current ? target[i] : Math.min(target[i], current + 1);
+            if (current == null || next != current) {
+                levels.put(stream, next);
+                changes.put(stream, next + 1);
+            }
+        }
+        return changes;
+    }
+
+    private static double min(double a, double b) {
+        if (Double.isNaN(a)) {
+            return b;
+        }
+        return Double.isNaN(b) ? a : Math.min(a, b);
+    }
+
+    /**
+     * 控制器参数
+     */
+    @Getter
+    @Builder
+    public static final class Settings {
+        /**
+         * 各质量级别（1-N）对应的码率（kbps），升序
+         */
+        private final int[] ladderKbps;
+        /**
+         * 尚未下发过档位的流假定所处的质量级别
+         */
+        private final int initialLevel;
+        private final double headroom;
+        private final double increaseRatio;
+        private final double probeRatio;
+        private final double decreaseFactor;
+        private final int holdIntervalsAfterDecrease;
+        private final double lossLowPercent;
+        private final double lossHighPercent;
+        private final double queueDelayThresholdMs;
+        private final double baseRttDrift;
+    }
+}
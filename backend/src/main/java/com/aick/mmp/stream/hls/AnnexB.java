@@ -0,0 +1,29 @@
+package com.aick.mmp.stream.hls;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Annex-B字节流工具，只处理解包器输出的4字节起始码格式
+ */
+final class AnnexB {
+
+    private AnnexB() {
+    }
+
+    /**
+     * 从from开始查找下一个 00 00 00 01 起始码的位置，找不到时返回limit
+     */
+    static int nextStartCode(ByteBuffer data, int from, int limit) {
+        for (int i = from; i + 3 < limit; i++) {
+            if (data.get(i + 2) != 0) {
+                // 起始码从i、i+1、i+2开始都要求i+2处为0，否则直接跳过
+                i += 2;
+                continue;
+            }
+            if (data.get(i) == 0 && data.get(i + 1) == 0 && data.get(i + 2) == 0 && data.get(i + 3) == 1) {
+                return i;
+            }
+        }
+        return limit;
+    }
+}
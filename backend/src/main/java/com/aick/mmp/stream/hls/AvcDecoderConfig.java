@@ -0,0 +1,222 @@
+package com.aick.mmp.stream.hls;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * H.264解码配置（SPS/PPS及解析出的分辨率），用于生成fMP4初始化段中的avcC
+ */
+@Getter
+public class AvcDecoderConfig {
+
+    private static final int NAL_SPS = 7;
+    private static final int NAL_PPS = 8;
+
+    private final byte[] sps;
+    private final byte[] pps;
+    private final int width;
+    private final int height;
+
+    private AvcDecoderConfig(byte[] sps, byte[] pps, int width, int height) {
+        this.sps = sps;
+        this.pps = pps;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getProfileIdc() {
+        return sps[1] & 0xFF;
+    }
+
+    public int getProfileCompatibility() {
+        return sps[2] & 0xFF;
+    }
+
+    public int getLevelIdc() {
+        return sps[3] & 0xFF;
+    }
+
+    /**
+     * RFC 6381编码字符串，如 avc1.42001e
+     */
+    public String getCodecString() {
+        return String.format("avc1.%02x%02x%02x", getProfileIdc(), getProfileCompatibility(), getLevelIdc());
+    }
+
+    /**
+     * 从Annex-B格式的访问单元（4字节起始码）中提取SPS和PPS
+     * @return 缺少SPS或PPS时返回null
+     */
+    public static AvcDecoderConfig fromAccessUnit(ByteBuffer data) {
+        byte[] sps = null;
+        byte[] pps = null;
+        int limit = data.limit();
+        int position = data.position();
+        while (position + 4 < limit) {
+            int nalStart = position + 4;
+            int nalEnd = AnnexB.nextStartCode(data, nalStart, limit);
+            int type = data.get(nalStart) & 0x1F;
+            if (type == NAL_SPS && sps == null) {
+                sps = copy(data, nalStart, nalEnd);
+            } else if (type == NAL_PPS && pps == null) {
+                pps = copy(data, nalStart, nalEnd);
+            }
+            position = nalEnd;
+        }
+        if (sps == null || pps == null || sps.length < 4) {
+            return null;
+        }
+        int[] size = parseResolution(sps);
+        return new AvcDecoderConfig(sps, pps, size[0], size[1]);
+    }
+
+    private static byte[] copy(ByteBuffer data, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(from + i);
+        }
+        return bytes;
+    }
+
+    /**
+     * 按ITU-T H.264 7.3.2.1解析SPS中的宽高（含裁剪）
+     */
+    static int[] parseResolution(byte[] sps) {
+        BitReader reader = new BitReader(unescape(sps));
+        reader.skip(8);
+        int profileIdc = reader.read(8);
+        reader.skip(16);
+        reader.readUe();
+
+        int chromaFormatIdc = 1;
+        if (profileIdc == 100 || profileIdc == 110 || profileIdc == 122 || profileIdc == 244 || profileIdc == 44
+                || profileIdc == 83 || profileIdc == 86 || profileIdc == 118 || profileIdc == 128
+                || profileIdc == 138 || profileIdc == 139 || profileIdc == 134 || profileIdc == 135) {
+            chromaFormatIdc = reader.readUe();
+            if (chromaFormatIdc == 3) {
+                reader.skip(1);
+            }
+            reader.readUe();
+            reader.readUe();
+            reader.skip(1);
+            if (reader.read(1) == 1) {
+                int count = chromaFormatIdc != 3 ? 8 : 12;
+                for (int i = 0; i < count; i++) {
+                    if (reader.read(1) == 1) {
+                        skipScalingList(reader, i < 6 ? 16 : 64);
+                    }
+                }
+            }
+        }
+
+        reader.readUe();
+        int picOrderCntType = reader.readUe();
+        if (picOrderCntType == 0) {
+            reader.readUe();
+        } else if (picOrderCntType == 1) {
+            reader.skip(1);
+            reader.readSe();
+            reader.readSe();
+            int cycle = reader.readUe();
+            for (int i = 0; i < cycle; i++) {
+                reader.readSe();
+            }
+        }
+        reader.readUe();
+        reader.skip(1);
+
+        int widthInMbs = reader.readUe() + 1;
+        int heightInMapUnits = reader.readUe() + 1;
+        int frameMbsOnly = reader.read(1);
+        if (frameMbsOnly == 0) {
+            reader.skip(1);
+        }
+        reader.skip(1);
+
+        int width = widthInMbs * 16;
+        int height = (2 - frameMbsOnly) * heightInMapUnits * 16;
+        if (reader.read(1) == 1) {
+            int left = reader.readUe();
+            int right = reader.readUe();
+            int top = reader.readUe();
+            int bottom = reader.readUe();
+            int cropUnitX = chromaFormatIdc == 0 || chromaFormatIdc == 3 ? 1 : 2;
+            int cropUnitY = (chromaFormatIdc == 1 ? 2 : 1) * (2 - frameMbsOnly);
+            width -= (left + right) * cropUnitX;
+            height -= (top + bottom) * cropUnitY;
+        }
+        return new int[]{width, height};
+    }
+
+    private static void skipScalingList(BitReader reader, int size) {
+        int last = 8;
+        int next = 8;
+        for (int i = 0; i < size; i++) {
+            if (next != 0) {
+                next = (last + reader.readSe() + 256) % 256;
+            }
+            last = next == 0 ? last : next;
+        }
+    }
+
+    /**
+     * 去除防竞争字节（00 00 03）
+     */
+    private static byte[] unescape(byte[] nal) {
+        byte[] out = new byte[nal.length];
+        int length = 0;
+        int zeros = 0;
+        for (byte b : nal) {
+            if (zeros >= 2 && b == 3) {
+                zeros = 0;
+                continue;
+            }
+            zeros = b == 0 ? zeros + 1 : 0;
+            out[length++] = b;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(out, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * 指数哥伦布码读取器，越界时按0处理
+     */
+    private static final class BitReader {
+        private final byte[] data;
+        private int bitPosition;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        int read(int bits) {
+            int value = 0;
+            for (int i = 0; i < bits; i++) {
+                int index = bitPosition >> 3;
+                int bit = index < data.length ? (data[index] >> (7 - (bitPosition & 7))) & 1 : 0;
+                value = (value << 1) | bit;
+                bitPosition++;
+            }
+            return value;
+        }
+
+        void skip(int bits) {
+            bitPosition += bits;
+        }
+
+        int readUe() {
+            int leadingZeros = 0;
+            while (read(1) == 0 && leadingZeros < 32) {
+                leadingZeros++;
+            }
+            return (1 << leadingZeros) - 1 + read(leadingZeros);
+        }
+
+        int readSe() {
+            int value = readUe();
+            return (value & 1) == 1 ? (value + 1) / 2 : -(value / 2);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.aick.mmp.stream.hls;
+
+import com.aick.mmp.adapter.protocol.media.AccessUnit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 单视频轨fMP4（ISO/IEC 14496-12 / CMAF）封装：初始化段 ftyp+moov，媒体分片 moof+mdat
+ * <p>
+ * 分片大小可以预先算出，调用方据此在环形文件中预留空间，再把帧数据直接写入映射内存，
+ * 写入时把Annex-B起始码原位替换为4字节NAL长度（AVCC格式）
+ */
+final class Fmp4Muxer {
+
+    private static final int TRACK_ID = 1;
+    private static final int MOOF_FIXED_SIZE = 88;
+    private static final int TRUN_ENTRY_SIZE = 12;
+    private static final int SAMPLE_FLAGS_SYNC = 0x02000000;
+    private static final int SAMPLE_FLAGS_NON_SYNC = 0x01010000;
+    private static final int[] UNITY_MATRIX = {0x00010000, 0, 0, 0, 0x00010000, 0, 0, 0, 0x40000000};
+
+    private Fmp4Muxer() {
+    }
+
+    /**
+     * 一个样本（帧）及其时长（以轨道时间刻度计）
+     */
+    static final class Sample {
+        final AccessUnit accessUnit;
+        final int duration;
+
+        Sample(AccessUnit accessUnit, int duration) {
+            this.accessUnit = accessUnit;
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * 生成初始化段
+     * @param timescale 轨道时间刻度（与RTP时钟频率一致，视频为90000）
+     */
+    static byte[] createInitSegment(AvcDecoderConfig config, int timescale) {
+        ByteBuffer out = ByteBuffer.allocate(1024 + config.getSps().length + config.getPps().length);
+
+        int ftyp = begin(out, "ftyp");
+        out.put(ascii("iso6")).putInt(0);
+        out.put(ascii("iso6")).put(ascii("iso5")).put(ascii("cmfc")).put(ascii("mp41"));
+        end(out, ftyp);
+
+        int moov = begin(out, "moov");
+
+        int mvhd = beginFull(out, "mvhd", 0, 0);
+        out.putInt(0).putInt(0).putInt(1000).putInt(0);
+        out.putInt(0x00010000).putShort((short) 0x0100).putShort((short) 0).putLong(0);
+        putMatrix(out);
+        for (int i = 0; i < 6; i++) {
+            out.putInt(0);
+        }
+        out.putInt(TRACK_ID + 1);
+        end(out, mvhd);
+
+        int trak = begin(out, "trak");
+        int tkhd = beginFull(out, "tkhd", 0, 3);
+        out.putInt(0).putInt(0).putInt(TRACK_ID).putInt(0).putInt(0);
+        out.putLong(0).putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        putMatrix(out);
+        out.putInt(config.getWidth() << 16).putInt(config.getHeight() << 16);
+        end(out, tkhd);
+
+        int mdia = begin(out, "mdia");
+        int mdhd = beginFull(out, "mdhd", 0, 0);
+        // language 'und'
+        out.putInt(0).putInt(0).putInt(timescale).putInt(0).putShort((short) 0x55C4).putShort((short) 0);
+        end(out, mdhd);
+
+        int hdlr = beginFull(out, "hdlr", 0, 0);
+        out.putInt(0).put(ascii("vide")).putInt(0).putInt(0).putInt(0);
+        out.put("VideoHandler".getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+        end(out, hdlr);
+
+        int minf = begin(out, "minf");
+        int vmhd = beginFull(out, "vmhd", 0, 1);
+        out.putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        end(out, vmhd);
+
+        int dinf = begin(out, "dinf");
+        int dref = beginFull(out, "dref", 0, 0);
+        out.putInt(1);
+        int url = beginFull(out, "url ", 0, 1);
+        end(out, url);
+        end(out, dref);
+        end(out, dinf);
+
+        int stbl = begin(out, "stbl");
+        int stsd = beginFull(out, "stsd", 0, 0);
+        out.putInt(1);
+        writeAvc1(out, config);
+        end(out, stsd);
+        for (String empty : new String[]{"stts", "stsc", "stco"}) {
+            int box = beginFull(out, empty, 0, 0);
+            out.putInt(0);
+            end(out, box);
+        }
+        int stsz = beginFull(out, "stsz", 0, 0);
+        out.putInt(0).putInt(0);
+        end(out, stsz);
+        end(out, stbl);
+        end(out, minf);
+        end(out, mdia);
+        end(out, trak);
+
+        int mvex = begin(out, "mvex");
+        int trex = beginFull(out, "trex", 0, 0);
+        out.putInt(TRACK_ID).putInt(1).putInt(0).putInt(0).putInt(0);
+        end(out, trex);
+        end(out, mvex);
+
+        end(out, moov);
+
+        byte[] result = new byte[out.position()];
+        out.flip();
+        out.get(result);
+        return result;
+    }
+
+    /**
+     * 媒体分片（moof+mdat）的字节数
+     */
+    static int fragmentSize(List<Sample> samples) {
+        int size = MOOF_FIXED_SIZE + TRUN_ENTRY_SIZE * samples.size() + 8;
+        for (Sample sample : samples) {
+            size += sample.accessUnit.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * 在target当前位置写入一个媒体分片，写入长度等于{@link #fragmentSize(List)}
+     */
+    static void writeFragment(ByteBuffer target, int sequenceNumber, long baseDecodeTime, List<Sample> samples) {
+        int moofSize = MOOF_FIXED_SIZE + TRUN_ENTRY_SIZE * samples.size();
+
+        int moof = begin(target, "moof");
+        int mfhd = beginFull(target, "mfhd", 0, 0);
+        target.putInt(sequenceNumber);
+        end(target, mfhd);
+
+        int traf = begin(target, "traf");
+        // default-base-is-moof
+        int tfhd = beginFull(target, "tfhd", 0, 0x020000);
+        target.putInt(TRACK_ID);
+        end(target, tfhd);
+
+        int tfdt = beginFull(target, "tfdt", 1, 0);
+        target.putLong(baseDecodeTime);
+        end(target, tfdt);
+
+        // data-offset, sample-duration, sample-size, sample-flags
+        int trun = beginFull(target, "trun", 0, 0x000701);
+        target.putInt(samples.size()).putInt(moofSize + 8);
+        for (Sample sample : samples) {
+            target.putInt(sample.duration).putInt(sample.accessUnit.getSize());
+            target.putInt(sample.accessUnit.isKeyframe() ? SAMPLE_FLAGS_SYNC : SAMPLE_FLAGS_NON_SYNC);
+        }
+        end(target, trun);
+        end(target, traf);
+        end(target, moof);
+
+        int mdat = begin(target, "mdat");
+        for (Sample sample : samples) {
+            writeAvcc(target, sample.accessUnit.data());
+        }
+        end(target, mdat);
+    }
+
+    /**
+     * 把Annex-B数据写成AVCC：每个4字节起始码替换为NAL长度
+     */
+    private static void writeAvcc(ByteBuffer target, ByteBuffer annexB) {
+        int limit = annexB.limit();
+        int position = annexB.position();
+        while (position + 4 <= limit) {
+            int nalStart = position + 4;
+            int nalEnd = AnnexB.nextStartCode(annexB, nalStart, limit);
+            target.putInt(nalEnd - nalStart);
+            annexB.limit(nalEnd);
+            annexB.position(nalStart);
+            target.put(annexB);
+            annexB.limit(limit);
+            position = nalEnd;
+        }
+    }
+
+    private static void writeAvc1(ByteBuffer out, AvcDecoderConfig config) {
+        int avc1 = begin(out, "avc1");
+        out.putInt(0).putShort((short) 0).putShort((short) 1);
+        out.putShort((short) 0).putShort((short) 0).putInt(0).putInt(0).putInt(0);
+        out.putShort((short) config.getWidth()).putShort((short) config.getHeight());
+        out.putInt(0x00480000).putInt(0x00480000).putInt(0).putShort((short) 1);
+        out.put(new byte[32]);
+        out.putShort((short) 0x0018).putShort((short) -1);
+
+        int avcC = begin(out, "avcC");
+        out.put((byte) 1).put((byte) config.getProfileIdc()).put((byte) config.getProfileCompatibility())
+                .put((byte) config.getLevelIdc());
+        // lengthSizeMinusOne = 3，1个SPS
+        out.put((byte) 0xFF).put((byte) 0xE1);
+        out.putShort((short) config.getSps().length).put(config.getSps());
+        out.put((byte) 1).putShort((short) config.getPps().length).put(config.getPps());
+        end(out, avcC);
+        end(out, avc1);
+    }
+
+    private static void putMatrix(ByteBuffer out) {
+        for (int value : UNITY_MATRIX) {
+            out.putInt(value);
+        }
+    }
+
+    private static int begin(ByteBuffer out, String type) {
+        int start = out.position();
+        out.putInt(0).put(ascii(type));
+        return start;
+    }
+
+    private static int beginFull(ByteBuffer out, String type, int version, int flags) {
+        int start = begin(out, type);
+        out.putInt((version << 24) | flags);
+        return start;
+    }
+
+    private static void end(ByteBuffer out, int start) {
+        out.putInt(start, out.position() - start);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
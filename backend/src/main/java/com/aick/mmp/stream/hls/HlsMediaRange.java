@@ -0,0 +1,76 @@
+package com.aick.mmp.stream.hls;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 环形文件中的一段媒体数据（部分段或完整媒体段）
+ */
+public class HlsMediaRange {
+
+    private final HlsRingFile ring;
+    private final long start;
+    private final int length;
+    private final List<HlsMediaRange> pieces;
+
+    HlsMediaRange(HlsRingFile ring, long start, int length, List<HlsMediaRange> pieces) {
+        this.ring = ring;
+        this.start = start;
+        this.length = length;
+        this.pieces = pieces;
+    }
+
+    /**
+     * 是否为文件中的单个连续区域（可直接sendfile）
+     */
+    public boolean isContiguous() {
+        return pieces == null;
+    }
+
+    public Path getPath() {
+        return ring.getPath();
+    }
+
+    /**
+     * 在文件中的起始偏移，仅连续区域有意义
+     */
+    public long getFileOffset() {
+        return ring.offsetOf(start);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 按顺序排列的只读数据视图，用于不支持sendfile时的回退路径
+     */
+    public List<ByteBuffer> buffers() {
+        if (pieces == null) {
+            return Collections.singletonList(ring.readable(start, length));
+        }
+        List<ByteBuffer> buffers = new ArrayList<>(pieces.size());
+        for (HlsMediaRange piece : pieces) {
+            buffers.add(ring.readable(piece.start, piece.length));
+        }
+        return buffers;
+    }
+
+    /**
+     * 读取buffers()前获取环形文件的引用，打包器已停止时返回false；读取完成后调用release
+     */
+    public boolean retain() {
+        return ring.retain();
+    }
+
+    public void release() {
+        ring.release();
+    }
+
+    long getStart() {
+        return start;
+    }
+}
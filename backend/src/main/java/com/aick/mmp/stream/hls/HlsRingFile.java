@@ -0,0 +1,193 @@
+package com.aick.mmp.stream.hls;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 存放fMP4分片的内存映射环形文件
+ * <p>
+ * 写入端（打包线程）直接写映射内存；读取端通过文件路径和偏移量交给Tomcat sendfile，
+ * 数据从页缓存直接发往socket，不经过Java堆。位置以单调递增的绝对偏移表示，
+ * 写指针超过某段数据起点一整圈后该数据即被覆盖。
+ * <p>
+ * 映射内存在环形文件上（通常是tmpfs），不能等GC回收：访问映射内存的线程（打包线程、回退路径的读取请求）
+ * 先retain再访问，close释放创建者的引用，引用数归零时立即解除映射；解除映射后再访问会使JVM崩溃。
+ */
+@Slf4j
+class HlsRingFile implements AutoCloseable {
+
+    private static final Unmapper UNMAPPER = Unmapper.create();
+
+    private final Path path;
+    private final int capacity;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer mapped;
+    /** 创建者持有一个引用 */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /** 下一次写入的绝对位置，只由写入线程修改 */
+    private volatile long head;
+
+    HlsRingFile(Path path, int capacity) throws IOException {
+        this.path = path;
+        this.capacity = capacity;
+        Files.createDirectories(path.getParent());
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+        this.file.setLength(capacity);
+        this.mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * 预留length字节的连续空间，末尾放不下时回到文件开头
+     * @return 预留区域的绝对起始位置
+     */
+    long allocate(int length) {
+        if (length > capacity) {
+            throw new IllegalArgumentException("Fragment of " + length + " bytes exceeds HLS ring capacity " + capacity);
+        }
+        long start = head;
+        if (offsetOf(start) + length > capacity) {
+            start = start - offsetOf(start) + capacity;
+        }
+        head = start + length;
+        return start;
+    }
+
+    /**
+     * 剩余空间不足minFree时直接回到文件开头，保证新的媒体段整段连续
+     */
+    void wrapIfLessThan(int minFree) {
+        long offset = offsetOf(head);
+        if (offset != 0 && capacity - offset < minFree) {
+            head = head - offset + capacity;
+        }
+    }
+
+    /**
+     * 预留区域的可写视图
+     */
+    ByteBuffer writable(long start, int length) {
+        ByteBuffer view = mapped.duplicate();
+        int offset = offsetOf(start);
+        view.limit(offset + length);
+        view.position(offset);
+        return view;
+    }
+
+    /**
+     * 只读视图，用于不支持sendfile时的回退路径
+     */
+    ByteBuffer readable(long start, int length) {
+        return writable(start, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * 区域是否仍然有效（未被后续写入覆盖）
+     */
+    boolean isIntact(long start, int length) {
+        return head - start <= capacity && start + length <= head;
+    }
+
+    int offsetOf(long absolute) {
+        return (int) (absolute % capacity);
+    }
+
+    /**
+     * 访问映射内存前获取引用，已关闭时返回false
+     */
+    boolean retain() {
+        while (true) {
+            int current = references.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            UNMAPPER.unmap(mapped, path);
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 删除文件并释放创建者的引用，仍在读写的线程释放引用后解除映射
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            file.close();
+            Files.deleteIfExists(path);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 主动解除映射：Java 9+使用Unsafe.invokeCleaner，Java 8使用DirectByteBuffer的Cleaner；
+     * 都不可用时映射内存只能等MappedByteBuffer被GC回收
+     */
+    private static final class Unmapper {
+        private final Object unsafe;
+        private final Method invokeCleaner;
+
+        private Unmapper(Object unsafe, Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        static Unmapper create() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                return new Unmapper(theUnsafe.get(null), invokeCleaner);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                return new Unmapper(null, null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warn("Cannot unmap HLS ring files explicitly, mapped memory is freed by GC: {}", e.getMessage());
+                return new Unmapper(null, null);
+            }
+        }
+
+        void unmap(MappedByteBuffer buffer, Path path) {
+            try {
+                if (invokeCleaner != null) {
+                    invokeCleaner.invoke(unsafe, buffer);
+                    return;
+                }
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warn("Failed to unmap HLS ring file {}, mapped memory is freed by GC: {}", path, e.getMessage());
+            }
+        }
+    }
+}
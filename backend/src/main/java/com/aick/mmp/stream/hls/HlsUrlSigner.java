@@ -0,0 +1,91 @@
+package com.aick.mmp.stream.hls;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * HLS播放地址签名
+ * <p>
+ * 原生HLS播放器和CDN回源都无法携带Bearer令牌，因此/api/hls/**不做登录认证，改为校验地址中的签名：
+ * 令牌为"过期时间秒-HMAC"，作为路径的一段放在摄像头ID之后，播放列表中的分片使用相对地址，自动带上同一令牌。
+ * 过期时间按url-ttl对齐到时间窗口，同一窗口内同一摄像头的所有观看者得到相同的地址，CDN可以共享缓存；
+ * 地址的有效期在url-ttl到两倍url-ttl之间，过期后需重新通过已认证的接口获取。
+ */
+@Component
+public class HlsUrlSigner {
+
+    private static final int SIGNATURE_BYTES = 16;
+
+    @Value("${hls.signing-secret:${security.jwt.secret}}")
+    private String secret;
+
+    @Value("${hls.url-ttl:3600000}")
+    private long ttlMs = 3600000;
+
+    private SecretKeySpec key;
+    private ThreadLocal<Mac> macs;
+
+    public HlsUrlSigner() {
+    }
+
+    /**
+     * 非Spring环境（如本地模拟器）使用的构造方法
+     */
+    public HlsUrlSigner(String secret, long ttlMs) {
+        this.secret = secret;
+        this.ttlMs = ttlMs;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    public String sign(Long cameraId) {
+        long expiresAt = (System.currentTimeMillis() / ttlMs + 2) * ttlMs / 1000;
+        return expiresAt + "-" + signature(cameraId, expiresAt);
+    }
+
+    public boolean verify(Long cameraId, String token) {
+        int separator = token.indexOf('-');
+        if (separator <= 0) {
+            return false;
+        }
+        long expiresAt;
+        try {
+            expiresAt = Long.parseLong(token.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (expiresAt * 1000 <= System.currentTimeMillis()) {
+            return false;
+        }
+        byte[] expected = signature(cameraId, expiresAt).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = token.substring(separator + 1).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private String signature(Long cameraId, long expiresAt) {
+        byte[] digest = macs.get().doFinal((cameraId + ":" + expiresAt).getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, SIGNATURE_BYTES));
+    }
+}
@@ -0,0 +1,195 @@
+package com.aick.mmp.stream.hls;
+
+import com.aick.mmp.adapter.protocol.ProtocolAdapter;
+import com.aick.mmp.exception.ResourceNotFoundException;
+import com.aick.mmp.exception.ServiceException;
+import com.aick.mmp.model.Camera;
+import com.aick.mmp.stream.StreamHub;
+import com.aick.mmp.stream.StreamSubscriber;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LL-HLS打包器管理：按需为摄像头启动打包器，长时间无人请求时自动停止
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LlHlsManager {
+
+    private final StreamHub streamHub;
+    private final HlsUrlSigner urlSigner;
+
+    @Value("${hls.part-target-ms:200}")
+    private long partTargetMs;
+
+    @Value("${hls.segment-target-ms:2000}")
+    private long segmentTargetMs;
+
+    @Value("${hls.target-duration:4}")
+    private int targetDuration;
+
+    @Value("${hls.playlist-segments:6}")
+    private int playlistSegments;
+
+    @Value("${hls.ring-size:67108864}")
+    private int ringSize;
+
+    @Value("${hls.storage-path:${java.io.tmpdir}/mmp-hls}")
+    private String storagePath;
+
+    @Value("${hls.idle-timeout:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${hls.public-base-url:}")
+    private String publicBaseUrl;
+
+    @Value("${server.servlet.context-path:}")
+    private String contextPath;
+
+    private final Map<Long, LlHlsPackager> packagers = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<LlHlsPackager>> starting = new ConcurrentHashMap<>();
+
+    /**
+     * 确保摄像头的打包器已运行
+     * <p>
+     * 打开上游可能阻塞到RTSP建立超时，因此不持有管理器的锁：同一摄像头的并发请求等待同一个启动结果，
+     * 其他摄像头的请求和空闲清理不受影响。
+     */
+    public LlHlsPackager start(Camera camera, ProtocolAdapter adapter) {
+        Long cameraId = camera.getId();
+        LlHlsPackager existing = packagers.get(cameraId);
+        if (existing != null && existing.isRunning()) {
+            existing.touch();
+            return existing;
+        }
+        CompletableFuture<LlHlsPackager> created = new CompletableFuture<>();
+        CompletableFuture<LlHlsPackager> pending = starting.putIfAbsent(cameraId, created);
+        if (pending != null) {
+            return await(pending);
+        }
+        try {
+            // 检查之后、登记之前可能有其他请求完成了启动
+            existing = packagers.get(cameraId);
+            if (existing != null && existing.isRunning()) {
+                existing.touch();
+                created.complete(existing);
+                return existing;
+            }
+            if (existing != null) {
+                stop(existing);
+            }
+            LlHlsPackager packager = create(camera, adapter);
+            packagers.put(cameraId, packager);
+            created.complete(packager);
+            return packager;
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            starting.remove(cameraId, created);
+        }
+    }
+
+    private LlHlsPackager create(Camera camera, ProtocolAdapter adapter) {
+        String subscriberId = "hls-" + camera.getId() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        StreamSubscriber subscriber = streamHub.subscribe(subscriberId, camera, adapter);
+        HlsRingFile ring;
+        try {
+            Path path = Paths.get(storagePath, "camera-" + camera.getId() + "-" + subscriberId + ".ring");
+            ring = new HlsRingFile(path, ringSize);
+        } catch (IOException e) {
+            streamHub.unsubscribe(subscriberId);
+            throw new ServiceException("Failed to create HLS storage for camera " + camera.getId() + ": " + e.getMessage());
+        }
+
+        LlHlsPackager packager = new LlHlsPackager(camera.getId(), subscriber, ring, partTargetMs,
+                segmentTargetMs, targetDuration, playlistSegments);
+        packager.start();
+        log.info("Started LL-HLS packager for camera {}", camera.getId());
+        return packager;
+    }
+
+    private static LlHlsPackager await(CompletableFuture<LlHlsPackager> pending) {
+        try {
+            LlHlsPackager packager = pending.join();
+            packager.touch();
+            return packager;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ServiceException("Failed to start HLS packager: " + e.getCause());
+        }
+    }
+
+    public LlHlsPackager getPackager(Long cameraId) {
+        LlHlsPackager packager = packagers.get(cameraId);
+        if (packager == null || !packager.isRunning()) {
+            throw new ResourceNotFoundException("HLS stream not started for camera: " + cameraId);
+        }
+        return packager;
+    }
+
+    /**
+     * 带签名的播放列表地址，配置了CDN地址时使用CDN地址
+     */
+    public String getPlaylistUrl(Long cameraId) {
+        String base = publicBaseUrl == null || publicBaseUrl.isEmpty() ? contextPath + "/api/hls" : publicBaseUrl;
+        return base + "/" + cameraId + "/" + urlSigner.sign(cameraId) + "/index.m3u8";
+    }
+
+    /**
+     * 停止长时间无人请求或上游已断开的打包器
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void stopIdlePackagers() {
+        long now = System.currentTimeMillis();
+        for (LlHlsPackager packager : packagers.values()) {
+            if (!packager.isRunning() || now - packager.getLastRequestAt() > idleTimeoutMs) {
+                log.info("Stopping LL-HLS packager for camera {}: {}", packager.getCameraId(),
+                        packager.isRunning() ? "idle" : "upstream closed");
+                stop(packager);
+            }
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("activePackagers", packagers.size());
+        statistics.put("ringSize", ringSize);
+        return statistics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (LlHlsPackager packager : packagers.values()) {
+            stop(packager);
+        }
+    }
+
+    /**
+     * 空闲清理和重新启动可能同时停止同一个打包器，只有从映射中移除成功的一方执行停止
+     */
+    private void stop(LlHlsPackager packager) {
+        if (!packagers.remove(packager.getCameraId(), packager)) {
+            return;
+        }
+        streamHub.unsubscribe(packager.getSubscriberId());
+        packager.stop();
+    }
+}
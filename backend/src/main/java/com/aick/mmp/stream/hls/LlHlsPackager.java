@@ -0,0 +1,520 @@
+package com.aick.mmp.stream.hls;
+
+import com.aick.mmp.adapter.protocol.media.AccessUnit;
+import com.aick.mmp.stream.StreamSubscriber;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个摄像头的LL-HLS打包器
+ * <p>
+ * 专用线程从StreamHub订阅中取帧，按部分段目标时长切成fMP4部分段（moof+mdat），
+ * 在关键帧处切分媒体段，分片直接写入内存映射环形文件。媒体段即其部分段的顺序拼接，
+ * 因此同一份数据既可以按部分段也可以按整段提供。播放列表和阻塞式重载的等待者由本对象的锁保护。
+ */
+@Slf4j
+public class LlHlsPackager {
+
+    private static final int PLAYLIST_PART_SEGMENTS = 3;
+
+    private final Long cameraId;
+    private final StreamSubscriber subscriber;
+    private final HlsRingFile ring;
+    private final long partTargetMs;
+    private final long segmentTargetMs;
+    private final int targetDuration;
+    private final int playlistSegments;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile long lastRequestAt = System.currentTimeMillis();
+    private volatile byte[] initSegment;
+    private volatile String codecs;
+
+    // ==================== 打包线程状态 ====================
+    private int timescale;
+    private AccessUnit pendingFrame;
+    private final List<Fmp4Muxer.Sample> partSamples = new ArrayList<>();
+    private long partDuration;
+    private long partStartDecodeTime;
+    private long segmentDuration;
+    private int fragmentSequence;
+    private HlsSegment openSegment;
+    private int nextMediaSequence;
+
+    // ==================== 共享状态（this锁） ====================
+    private final ArrayDeque<HlsSegment> segments = new ArrayDeque<>();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private String playlist;
+
+    LlHlsPackager(Long cameraId, StreamSubscriber subscriber, HlsRingFile ring, long partTargetMs,
+                  long segmentTargetMs, int targetDuration, int playlistSegments) {
+        this.cameraId = cameraId;
+        this.subscriber = subscriber;
+        this.ring = ring;
+        this.partTargetMs = partTargetMs;
+        this.segmentTargetMs = segmentTargetMs;
+        this.targetDuration = targetDuration;
+        this.playlistSegments = playlistSegments;
+        this.thread = new Thread(this::run, "hls-packager-" + cameraId);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        // 打包线程写入映射内存，持有环形文件的引用直到退出
+        if (ring.retain()) {
+            thread.start();
+        }
+    }
+
+    /**
+     * 停止打包线程并删除环形文件，等待中的请求按超时处理
+     */
+    void stop() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            ring.close();
+        } catch (IOException e) {
+            log.warn("Failed to remove HLS ring file {}: {}", ring.getPath(), e.getMessage());
+        }
+    }
+
+    // ==================== 打包 ====================
+
+    private void run() {
+        try {
+            while (running && !subscriber.isClosed()) {
+                AccessUnit accessUnit = subscriber.poll(500, TimeUnit.MILLISECONDS);
+                if (accessUnit != null) {
+                    process(accessUnit);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("HLS packager for camera {} failed: {}", cameraId, e.getMessage(), e);
+        } finally {
+            running = false;
+            if (pendingFrame != null) {
+                pendingFrame.release();
+                pendingFrame = null;
+            }
+            releaseSamples();
+            ring.release();
+        }
+    }
+
+    private void process(AccessUnit accessUnit) {
+        if (accessUnit.getCodec() != AccessUnit.Codec.H264) {
+            accessUnit.release();
+            return;
+        }
+        if (initSegment == null) {
+            AvcDecoderConfig config = accessUnit.isKeyframe() ? AvcDecoderConfig.fromAccessUnit(accessUnit.data()) : null;
+            if (config == null) {
+                accessUnit.release();
+                return;
+            }
+            timescale = accessUnit.getClockRate();
+            codecs = config.getCodecString();
+            initSegment = Fmp4Muxer.createInitSegment(config, timescale);
+            log.info("HLS packager for camera {} initialized: {} {}x{}", cameraId, codecs,
+                    config.getWidth(), config.getHeight());
+        }
+
+        // 帧时长要等下一帧到达才能确定，因此始终滞后一帧输出
+        if (pendingFrame != null) {
+            long delta = (accessUnit.getTimestamp() - pendingFrame.getTimestamp()) & 0xFFFFFFFFL;
+            int duration = delta == 0 || delta > timescale * 5L ? defaultFrameDuration() : (int) delta;
+            addSample(pendingFrame, duration, accessUnit.isKeyframe());
+        }
+        pendingFrame = accessUnit;
+    }
+
+    private void addSample(AccessUnit frame, int duration, boolean nextIsKeyframe) {
+        if (openSegment == null) {
+            if (nextMediaSequence == 0 && !frame.isKeyframe()) {
+                frame.release();
+                return;
+            }
+            openSegment();
+        }
+
+        long partTargetTicks = partTargetMs * timescale / 1000;
+        if (!partSamples.isEmpty() && partDuration + duration > partTargetTicks) {
+            flushPart();
+        }
+        partSamples.add(new Fmp4Muxer.Sample(frame, duration));
+        partDuration += duration;
+        segmentDuration += duration;
+
+        // 到达目标时长后在下一个关键帧前切段；关键帧迟迟不来时在超过目标时长前强制切段
+        boolean segmentEnds = nextIsKeyframe && segmentDuration >= segmentTargetMs * timescale / 1000
+                || segmentDuration + 2L * duration > (long) targetDuration * timescale;
+        if (segmentEnds) {
+            flushPart();
+            closeSegment();
+        }
+    }
+
+    private void openSegment() {
+        // 媒体段尽量连续存放，便于整段一次sendfile
+        ring.wrapIfLessThan(ring.getCapacity() / 4);
+        openSegment = new HlsSegment(nextMediaSequence++, System.currentTimeMillis());
+        segmentDuration = 0;
+    }
+
+    private void flushPart() {
+        if (partSamples.isEmpty()) {
+            return;
+        }
+        int size = Fmp4Muxer.fragmentSize(partSamples);
+        long start = ring.allocate(size);
+        ByteBuffer target = ring.writable(start, size);
+        Fmp4Muxer.writeFragment(target, ++fragmentSequence, partStartDecodeTime, partSamples);
+
+        boolean independent = partSamples.get(0).accessUnit.isKeyframe();
+        double duration = (double) partDuration / timescale;
+        releaseSamples();
+        partStartDecodeTime += partDuration;
+        partDuration = 0;
+
+        synchronized (this) {
+            HlsSegment segment = openSegment;
+            if (segment.parts.isEmpty()) {
+                segments.addLast(segment);
+            }
+            segment.addPart(new HlsPart(segment.mediaSequence, segment.parts.size(), start, size, duration, independent));
+            renderPlaylist();
+        }
+        notifyWaiters();
+    }
+
+    private void closeSegment() {
+        synchronized (this) {
+            openSegment.complete = true;
+            while (segments.size() > playlistSegments) {
+                segments.removeFirst();
+            }
+            renderPlaylist();
+        }
+        openSegment = null;
+        notifyWaiters();
+    }
+
+    private void releaseSamples() {
+        for (Fmp4Muxer.Sample sample : partSamples) {
+            sample.accessUnit.release();
+        }
+        partSamples.clear();
+    }
+
+    private int defaultFrameDuration() {
+        return timescale / 25;
+    }
+
+    // ==================== 播放列表 ====================
+
+    private void renderPlaylist() {
+        StringBuilder builder = new StringBuilder(4096);
+        builder.append("#EXTM3U\n");
+        builder.append("#EXT-X-VERSION:9\n");
+        builder.append("#EXT-X-TARGETDURATION:").append(targetDuration).append('\n');
+        builder.append("#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,PART-HOLD-BACK=")
+                .append(seconds(partTargetMs * 3)).append('\n');
+        builder.append("#EXT-X-PART-INF:PART-TARGET=").append(seconds(partTargetMs)).append('\n');
+        builder.append("#EXT-X-MEDIA-SEQUENCE:").append(segments.getFirst().mediaSequence).append('\n');
+        builder.append("#EXT-X-MAP:URI=\"init.mp4\"\n");
+
+        int index = 0;
+        int partListStart = segments.size() - PLAYLIST_PART_SEGMENTS;
+        for (HlsSegment segment : segments) {
+            builder.append("#EXT-X-PROGRAM-DATE-TIME:").append(Instant.ofEpochMilli(segment.programDateTime)).append('\n');
+            if (index++ >= partListStart) {
+                for (HlsPart part : segment.parts) {
+                    builder.append("#EXT-X-PART:DURATION=").append(format(part.duration))
+                            .append(",URI=\"part-").append(part.mediaSequence).append('-').append(part.index).append(".m4s\"");
+                    if (part.independent) {
+                        builder.append(",INDEPENDENT=YES");
+                    }
+                    builder.append('\n');
+                }
+            }
+            if (segment.complete) {
+                builder.append("#EXTINF:").append(format(segment.duration)).append(",\n");
+                builder.append("seg-").append(segment.mediaSequence).append(".m4s\n");
+            }
+        }
+
+        HlsSegment last = segments.getLast();
+        int hintSequence = last.complete ? last.mediaSequence + 1 : last.mediaSequence;
+        int hintPart = last.complete ? 0 : last.parts.size();
+        builder.append("#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part-").append(hintSequence).append('-')
+                .append(hintPart).append(".m4s\"\n");
+        playlist = builder.toString();
+    }
+
+    private static String seconds(long millis) {
+        return format(millis / 1000.0);
+    }
+
+    private static String format(double seconds) {
+        return String.format(Locale.ROOT, "%.3f", seconds);
+    }
+
+    // ==================== 阻塞式重载 ====================
+
+    /**
+     * 等待播放列表包含指定媒体段（part为-1）或部分段，已满足时立即回调
+     * @return 等待句柄，用于超时后取消
+     */
+    public Waiter await(int mediaSequence, int part, Runnable callback) {
+        Waiter waiter = new Waiter(mediaSequence, part, callback);
+        synchronized (this) {
+            if (!isAvailable(mediaSequence, part)) {
+                waiters.add(waiter);
+                return waiter;
+            }
+        }
+        callback.run();
+        return waiter;
+    }
+
+    public synchronized void cancel(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    private void notifyWaiters() {
+        List<Waiter> ready = null;
+        synchronized (this) {
+            Iterator<Waiter> iterator = waiters.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (isAvailable(waiter.mediaSequence, waiter.part)) {
+                    iterator.remove();
+                    if (ready == null) {
+                        ready = new ArrayList<>();
+                    }
+                    ready.add(waiter);
+                }
+            }
+        }
+        if (ready != null) {
+            for (Waiter waiter : ready) {
+                try {
+                    waiter.callback.run();
+                } catch (RuntimeException e) {
+                    log.debug("HLS waiter callback failed for camera {}: {}", cameraId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private boolean isAvailable(int mediaSequence, int part) {
+        if (segments.isEmpty()) {
+            return false;
+        }
+        if (mediaSequence < segments.getFirst().mediaSequence) {
+            return true;
+        }
+        HlsSegment segment = findSegment(mediaSequence);
+        if (segment == null) {
+            return false;
+        }
+        // 超出该段实际部分段数量的请求在段结束后即视为可用（对应下一段的第一个部分段）
+        return segment.complete || (part >= 0 && part < segment.parts.size());
+    }
+
+    /**
+     * 请求的媒体序号是否超出当前直播点太远（规范要求返回400）
+     */
+    public synchronized boolean isTooFarAhead(int mediaSequence) {
+        int next = segments.isEmpty() ? 0 : segments.getLast().mediaSequence + 1;
+        return mediaSequence > next + 1;
+    }
+
+    /**
+     * 请求的部分段是否即将生成，值得阻塞等待（预加载提示）
+     */
+    public synchronized boolean isUpcoming(int mediaSequence, int part) {
+        if (segments.isEmpty()) {
+            return mediaSequence == 0;
+        }
+        HlsSegment last = segments.getLast();
+        if (last.complete) {
+            return mediaSequence == last.mediaSequence + 1 && part <= 1;
+        }
+        return mediaSequence == last.mediaSequence && part >= last.parts.size() && part <= last.parts.size() + 1
+                || mediaSequence == last.mediaSequence + 1 && part == 0;
+    }
+
+    // ==================== 读取 ====================
+
+    public synchronized String getPlaylist() {
+        return playlist;
+    }
+
+    public byte[] getInitSegment() {
+        return initSegment;
+    }
+
+    public String getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * 查找部分段在环形文件中的位置，不存在或已被覆盖时返回null
+     */
+    public synchronized HlsMediaRange findPart(int mediaSequence, int index) {
+        HlsSegment segment = findSegment(mediaSequence);
+        if (segment == null || index >= segment.parts.size()) {
+            return null;
+        }
+        HlsPart part = segment.parts.get(index);
+        return intact(new HlsMediaRange(ring, part.start, part.length, null));
+    }
+
+    /**
+     * 查找完整媒体段，段在环形文件中连续时可作为单个区域发送
+     */
+    public synchronized HlsMediaRange findSegment(int mediaSequence, boolean completeOnly) {
+        HlsSegment segment = findSegment(mediaSequence);
+        if (segment == null || (completeOnly && !segment.complete) || segment.parts.isEmpty()) {
+            return null;
+        }
+        HlsPart first = segment.parts.get(0);
+        if (segment.contiguous) {
+            return intact(new HlsMediaRange(ring, first.start, segment.length, null));
+        }
+        // 段跨越了环形文件末尾，按部分段逐块发送
+        List<HlsMediaRange> pieces = new ArrayList<>(segment.parts.size());
+        for (HlsPart part : segment.parts) {
+            HlsMediaRange piece = intact(new HlsMediaRange(ring, part.start, part.length, null));
+            if (piece == null) {
+                return null;
+            }
+            pieces.add(piece);
+        }
+        return new HlsMediaRange(ring, first.start, segment.length, pieces);
+    }
+
+    private HlsMediaRange intact(HlsMediaRange range) {
+        return ring.isIntact(range.getStart(), range.getLength()) ? range : null;
+    }
+
+    private HlsSegment findSegment(int mediaSequence) {
+        for (HlsSegment segment : segments) {
+            if (segment.mediaSequence == mediaSequence) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    public synchronized boolean hasContent() {
+        return playlist != null;
+    }
+
+    public void touch() {
+        lastRequestAt = System.currentTimeMillis();
+    }
+
+    public long getLastRequestAt() {
+        return lastRequestAt;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public Long getCameraId() {
+        return cameraId;
+    }
+
+    public String getSubscriberId() {
+        return subscriber.getSubscriberId();
+    }
+
+    public int getTargetDuration() {
+        return targetDuration;
+    }
+
+    public long getPartTargetMs() {
+        return partTargetMs;
+    }
+
+    // ==================== 内部结构 ====================
+
+    /**
+     * 阻塞式重载请求
+     */
+    public static final class Waiter {
+        private final int mediaSequence;
+        private final int part;
+        private final Runnable callback;
+
+        Waiter(int mediaSequence, int part, Runnable callback) {
+            this.mediaSequence = mediaSequence;
+            this.part = part;
+            this.callback = callback;
+        }
+    }
+
+    private static final class HlsPart {
+        final int mediaSequence;
+        final int index;
+        final long start;
+        final int length;
+        final double duration;
+        final boolean independent;
+
+        HlsPart(int mediaSequence, int index, long start, int length, double duration, boolean independent) {
+            this.mediaSequence = mediaSequence;
+            this.index = index;
+            this.start = start;
+            this.length = length;
+            this.duration = duration;
+            this.independent = independent;
+        }
+    }
+
+    private static final class HlsSegment {
+        final int mediaSequence;
+        final long programDateTime;
+        final List<HlsPart> parts = new ArrayList<>();
+        double duration;
+        int length;
+        boolean contiguous = true;
+        boolean complete;
+
+        HlsSegment(int mediaSequence, long programDateTime) {
+            this.mediaSequence = mediaSequence;
+            this.programDateTime = programDateTime;
+        }
+
+        void addPart(HlsPart part) {
+            if (!parts.isEmpty()) {
+                HlsPart previous = parts.get(parts.size() - 1);
+                contiguous &= previous.start + previous.length == part.start;
+            }
+            parts.add(part);
+            duration += part.duration;
+            length += part.length;
+        }
+    }
+}
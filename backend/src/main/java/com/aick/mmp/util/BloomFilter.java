@@ -0,0 +1,86 @@
+package com.aick.mmp.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 字符串的布隆过滤器，位数和哈希函数个数按预期元素数和误判率计算，位数向上取整为2的幂以便用掩码定位
+ * <p>
+ * 查询无锁，可与写入并发；不支持删除，元素过期后需重建。
+ */
+public class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final long mask;
+    private final int hashes;
+
+    public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1) {
+            throw new IllegalArgumentException("expectedInsertions must be positive: " + expectedInsertions);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be in (0, 1): " + falsePositiveRate);
+        }
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (LN2 * LN2));
+        long wordCount = Math.min(Long.highestOneBit(Math.max(1, (optimalBits + 63) / 64 - 1)) << 1, 1 << 30);
+        this.words = new AtomicLongArray((int) wordCount);
+        this.bits = wordCount * 64;
+        this.mask = bits - 1;
+        this.hashes = Math.max(1, (int) Math.round((double) optimalBits / expectedInsertions * LN2));
+    }
+
+    public void put(String value) {
+        long hash = hash(value);
+        long h1 = hash;
+        long h2 = hash >>> 32 | 1;
+        for (int i = 1; i <= hashes; i++) {
+            long index = (h1 + i * h2) & mask;
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long h1 = hash;
+        long h2 = hash >>> 32 | 1;
+        for (int i = 1; i <= hashes; i++) {
+            long index = (h1 + i * h2) & mask;
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBits() {
+        return bits;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * 以String缓存的hashCode为输入，经MurmurHash3的fmix64扩展为64位，作为双重哈希的两个基值；
+     * hashCode相同的字符串得到相同的位，由调用方的精确集合排除
+     */
+    private static long hash(String value) {
+        long hash = value.hashCode() * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,117 @@
+package com.aick.mmp.adapter.protocol.gb28181;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SipMessageTest {
+
+    private static final String REGISTER = "REGISTER sip:34020000002000000001@3402000000 SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 192.168.1.64:5060;rport;branch=z9hG4bK1371463273\r\n"
+            + "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bKouter\r\n"
+            + "From: <sip:34020000001320000001@3402000000>;tag=2043466181\r\n"
+            + "To: <sip:34020000001320000001@3402000000>\r\n"
+            + "Call-ID: 1011047669\r\n"
+            + "CSeq: 1 REGISTER\r\n"
+            + "Contact: <sip:34020000001320000001@192.168.1.64:5060>;expires=7200\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    private final SipMessage message = new SipMessage();
+
+    @Test
+    void parsesRegisterHeadersWithoutCreatingStrings() {
+        assertThat(parse(REGISTER)).isTrue();
+
+        assertThat(message.isRequest()).isTrue();
+        assertThat(message.method()).isEqualTo(SipMessage.METHOD_REGISTER);
+        assertThat(message.requestUri()).isEqualTo("sip:34020000002000000001@3402000000");
+        assertThat(message.cseqNumber()).isEqualTo(1);
+        assertThat(message.cseqMethod()).isEqualTo(SipMessage.METHOD_REGISTER);
+        assertThat(message.findFromUser()).isTrue();
+        assertThat(message.found()).isEqualTo("34020000001320000001");
+        assertThat(message.findRequestUriUser()).isTrue();
+        assertThat(message.found()).isEqualTo("34020000002000000001");
+        // 只取最上层Via的branch
+        assertThat(message.findBranch()).isTrue();
+        assertThat(message.found()).isEqualTo("z9hG4bK1371463273");
+        assertThat(message.findToTag()).isFalse();
+        // 没有Expires头时读取Contact中的参数
+        assertThat(message.expires(3600)).isEqualTo(7200);
+        assertThat(message.hasBody()).isFalse();
+    }
+
+    @Test
+    void parsesCompactHeadersAndXmlBody() {
+        String body = "<?xml version=\"1.0\" encoding=\"GB2312\"?>\r\n<Notify>\r\n<CmdType>Keepalive</CmdType>\r\n"
+                + "<SN>43</SN>\r\n<DeviceID> 34020000001320000001 </DeviceID>\r\n<Status>OK</Status>\r\n</Notify>\r\n";
+        String keepalive = "MESSAGE sip:34020000002000000001@3402000000 SIP/2.0\r\n"
+                + "v: SIP/2.0/UDP 192.168.1.64:5060;branch=z9hG4bK2\r\n"
+                + "f: <sip:34020000001320000001@3402000000>;tag=1\r\n"
+                + "t: <sip:34020000002000000001@3402000000>\r\n"
+                + "i: 20\r\n"
+                + "CSeq: 20 MESSAGE\r\n"
+                + "Content-Type: Application/MANSCDP+xml\r\n"
+                + "l: " + body.length() + "\r\n"
+                + "\r\n" + body + "trailing garbage";
+
+        assertThat(parse(keepalive)).isTrue();
+
+        assertThat(message.method()).isEqualTo(SipMessage.METHOD_MESSAGE);
+        assertThat(message.body()).isEqualTo(body);
+        assertThat(message.findXmlElement(SipMessage.bytes("<CmdType>"))).isTrue();
+        assertThat(message.foundEquals(SipMessage.bytes("Keepalive"))).isTrue();
+        assertThat(message.findXmlElement(SipMessage.bytes("<DeviceID>"))).isTrue();
+        assertThat(message.found()).isEqualTo("34020000001320000001");
+        assertThat(message.findXmlElement(SipMessage.bytes("<Info>"))).isFalse();
+        assertThat(message.expires(3600)).isEqualTo(3600);
+    }
+
+    @Test
+    void parsesResponseStatusAndToTag() {
+        String response = "SIP/2.0 200 OK\r\n"
+                + "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bKinvite\r\n"
+                + "From: <sip:34020000002000000001@3402000000>;tag=abc\r\n"
+                + "To: <sip:34020000001320000001@3402000000>;tag=9f8e\r\n"
+                + "Call-ID: invite-1\r\n"
+                + "CSeq: 3 INVITE\r\n"
+                + "\r\n";
+
+        assertThat(parse(response)).isTrue();
+
+        assertThat(message.isRequest()).isFalse();
+        assertThat(message.statusCode()).isEqualTo(200);
+        assertThat(message.cseqMethod()).isEqualTo(SipMessage.METHOD_INVITE);
+        assertThat(message.findToTag()).isTrue();
+        assertThat(message.found()).isEqualTo("9f8e");
+    }
+
+    @Test
+    void rejectsMessagesMissingRequiredHeadersOrWithBadStartLine() {
+        assertThat(parse(REGISTER.replace("Call-ID: 1011047669\r\n", ""))).isFalse();
+        assertThat(parse("SIP/2.0 99 Too Low\r\n\r\n")).isFalse();
+        assertThat(parse("REGISTER sip:x@y HTTP/1.1\r\n\r\n")).isFalse();
+        assertThat(parse("REGISTER sip:x@y SIP/2.0\r\nno colon here\r\n\r\n")).isFalse();
+    }
+
+    @Test
+    void reusedInstanceDoesNotKeepHeadersFromThePreviousMessage() {
+        assertThat(parse(REGISTER.replace("Contact", "Expires: 60\r\nContact"))).isTrue();
+        assertThat(message.expires(3600)).isEqualTo(60);
+
+        assertThat(parse(REGISTER.replace("Contact: <sip:34020000001320000001@192.168.1.64:5060>;expires=7200\r\n", "")))
+                .isTrue();
+        assertThat(message.expires(3600)).isEqualTo(3600);
+    }
+
+    private boolean parse(String text) {
+        // 接收缓冲区通常比数据报大，尾部残留上一次的数据
+        byte[] datagram = text.getBytes(StandardCharsets.UTF_8);
+        byte[] buffer = new byte[datagram.length + 64];
+        System.arraycopy(datagram, 0, buffer, 0, datagram.length);
+        return message.parse(buffer, datagram.length);
+    }
+}
@@ -0,0 +1,106 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import org.junit.jupiter.api.Test;
+
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.bytes;
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.concat;
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.packet;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class H264DepacketizerTest {
+
+    private static final byte[] START_CODE = bytes(0, 0, 0, 1);
+    private static final byte[] SPS = bytes(0x67, 0x42, 0xC0, 0x1E, 0xDA);
+    private static final byte[] PPS = bytes(0x68, 0xCE, 0x3C, 0x80);
+
+    private final BufferPool pool = new BufferPool();
+    private final IngestStatistics statistics = new IngestStatistics();
+    private final RtpFixtures.CollectingListener listener = new RtpFixtures.CollectingListener();
+    private final H264Depacketizer depacketizer = new H264Depacketizer(pool, 90000, listener, statistics);
+
+    @Test
+    void singleNalUnitBecomesOneAnnexBFrame() {
+        byte[] idr = bytes(0x65, 0x88, 0x84, 0x00, 0x33);
+
+        depacketizer.onPacket(packet(pool, 1, 3000, true, idr));
+
+        assertThat(listener.frames).hasSize(1);
+        assertThat(listener.frames.get(0)).isEqualTo(concat(START_CODE, idr));
+        assertThat(listener.keyframes).containsExactly(true);
+        assertThat(listener.timestamps).containsExactly(3000L);
+    }
+
+    @Test
+    void stapAAndFuAAreReassembledIntoOneKeyframe() {
+        // STAP-A（NRI=3）：SPS + PPS
+        byte[] stapA = concat(bytes(0x78, 0, SPS.length), SPS, bytes(0, PPS.length), PPS);
+        // IDR（0x65）拆成三个FU-A分片
+        byte[] fuStart = bytes(0x7C, 0x85, 0x88, 0x84);
+        byte[] fuMiddle = bytes(0x7C, 0x05, 0x00, 0x33);
+        byte[] fuEnd = bytes(0x7C, 0x45, 0xFF);
+
+        depacketizer.onPacket(packet(pool, 1, 6000, false, stapA));
+        depacketizer.onPacket(packet(pool, 2, 6000, false, fuStart));
+        depacketizer.onPacket(packet(pool, 3, 6000, false, fuMiddle));
+        depacketizer.onPacket(packet(pool, 4, 6000, true, fuEnd));
+
+        byte[] idr = bytes(0x65, 0x88, 0x84, 0x00, 0x33, 0xFF);
+        assertThat(listener.frames).hasSize(1);
+        assertThat(listener.frames.get(0)).isEqualTo(concat(START_CODE, SPS, START_CODE, PPS, START_CODE, idr));
+        assertThat(listener.keyframes).containsExactly(true);
+    }
+
+    @Test
+    void timestampChangeFlushesFrameWhoseMarkerWasNotSeen() {
+        byte[] idr = bytes(0x65, 0x01);
+        byte[] slice = bytes(0x41, 0x02);
+
+        depacketizer.onPacket(packet(pool, 1, 3000, false, idr));
+        depacketizer.onPacket(packet(pool, 2, 6000, true, slice));
+
+        assertThat(listener.frames).hasSize(2);
+        assertThat(listener.keyframes).containsExactly(true, false);
+        assertThat(listener.timestamps).containsExactly(3000L, 6000L);
+    }
+
+    @Test
+    void framesBeforeTheFirstKeyframeAreDropped() {
+        depacketizer.onPacket(packet(pool, 1, 3000, true, bytes(0x41, 0x01)));
+        depacketizer.onPacket(packet(pool, 2, 6000, true, bytes(0x65, 0x02)));
+
+        assertThat(listener.keyframes).containsExactly(true);
+        assertThat(statistics.getDroppedAccessUnits()).isEqualTo(1);
+    }
+
+    @Test
+    void lostFragmentDropsFrameAndWaitsForNextKeyframe() {
+        depacketizer.onPacket(packet(pool, 1, 3000, true, bytes(0x65, 0x01)));
+
+        // 第二帧的FU-A中间分片丢失
+        depacketizer.onPacket(packet(pool, 2, 6000, false, bytes(0x5C, 0x81, 0x10)));
+        depacketizer.onPacketLoss();
+        depacketizer.onPacket(packet(pool, 4, 6000, true, bytes(0x5C, 0x41, 0x30)));
+        // 参考了损坏帧的P帧也不能输出
+        depacketizer.onPacket(packet(pool, 5, 9000, true, bytes(0x41, 0x02)));
+        depacketizer.onPacket(packet(pool, 6, 12000, true, bytes(0x65, 0x03)));
+
+        assertThat(listener.timestamps).containsExactly(3000L, 12000L);
+        assertThat(statistics.getDroppedAccessUnits()).isEqualTo(2);
+    }
+
+    @Test
+    void fragmentWithoutStartIsDropped() {
+        depacketizer.onPacket(packet(pool, 1, 3000, true, bytes(0x7C, 0x45, 0x01)));
+
+        assertThat(listener.frames).isEmpty();
+        assertThat(statistics.getDroppedAccessUnits()).isEqualTo(1);
+    }
+
+    @Test
+    void truncatedStapAIsDropped() {
+        depacketizer.onPacket(packet(pool, 1, 3000, true, bytes(0x78, 0, 9, 0x65, 0x01)));
+
+        assertThat(listener.frames).isEmpty();
+        assertThat(statistics.getDroppedAccessUnits()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,68 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import org.junit.jupiter.api.Test;
+
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.bytes;
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.concat;
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.packet;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class H265DepacketizerTest {
+
+    private static final byte[] START_CODE = bytes(0, 0, 0, 1);
+    private static final byte[] VPS = bytes(0x40, 0x01, 0x0C, 0x01);
+    private static final byte[] SPS = bytes(0x42, 0x01, 0x01, 0x60);
+    private static final byte[] PPS = bytes(0x44, 0x01, 0xC1, 0x73);
+
+    private final BufferPool pool = new BufferPool();
+    private final IngestStatistics statistics = new IngestStatistics();
+    private final RtpFixtures.CollectingListener listener = new RtpFixtures.CollectingListener();
+    private final H265Depacketizer depacketizer = new H265Depacketizer(pool, 90000, listener, statistics);
+
+    @Test
+    void aggregationPacketAndFragmentsAreReassembledIntoOneKeyframe() {
+        // AP（类型48）：VPS + SPS + PPS
+        byte[] ap = concat(bytes(0x60, 0x01),
+                bytes(0, VPS.length), VPS, bytes(0, SPS.length), SPS, bytes(0, PPS.length), PPS);
+        // IDR_W_RADL（类型19）拆成两个FU（类型49）
+        byte[] fuStart = bytes(0x62, 0x01, 0x80 | 19, 0xAF, 0x08);
+        byte[] fuEnd = bytes(0x62, 0x01, 0x40 | 19, 0x40);
+
+        depacketizer.onPacket(packet(pool, 1, 3000, false, ap));
+        depacketizer.onPacket(packet(pool, 2, 3000, false, fuStart));
+        depacketizer.onPacket(packet(pool, 3, 3000, true, fuEnd));
+
+        byte[] idr = bytes(0x26, 0x01, 0xAF, 0x08, 0x40);
+        assertThat(listener.frames).hasSize(1);
+        assertThat(listener.frames.get(0)).isEqualTo(concat(START_CODE, VPS, START_CODE, SPS, START_CODE, PPS,
+                START_CODE, idr));
+        assertThat(listener.keyframes).containsExactly(true);
+        assertThat(listener.codecs).containsExactly(AccessUnit.Codec.H265);
+    }
+
+    @Test
+    void craIsAKeyframeAndTrailingPictureIsNot() {
+        // CRA（类型21）和TRAIL_R（类型1）
+        depacketizer.onPacket(packet(pool, 1, 3000, true, bytes(0x2A, 0x01, 0xAA)));
+        depacketizer.onPacket(packet(pool, 2, 6000, true, bytes(0x02, 0x01, 0xBB)));
+
+        assertThat(listener.keyframes).containsExactly(true, false);
+        assertThat(listener.frames.get(1)).isEqualTo(concat(START_CODE, bytes(0x02, 0x01, 0xBB)));
+    }
+
+    @Test
+    void aggregatedNalShorterThanItsHeaderIsDropped() {
+        depacketizer.onPacket(packet(pool, 1, 3000, true, bytes(0x60, 0x01, 0, 1, 0x26)));
+
+        assertThat(listener.frames).isEmpty();
+        assertThat(statistics.getDroppedAccessUnits()).isEqualTo(1);
+    }
+
+    @Test
+    void fragmentWithoutStartIsDropped() {
+        depacketizer.onPacket(packet(pool, 1, 3000, true, bytes(0x62, 0x01, 0x40 | 19, 0x40)));
+
+        assertThat(listener.frames).isEmpty();
+        assertThat(statistics.getDroppedAccessUnits()).isEqualTo(1);
+    }
+}
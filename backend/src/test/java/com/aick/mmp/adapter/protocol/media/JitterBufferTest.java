@@ -0,0 +1,113 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.bytes;
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.packet;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JitterBufferTest {
+
+    /** 丢包在输出序列中记为-1 */
+    private static final int LOSS = -1;
+
+    private final BufferPool pool = new BufferPool();
+    private final IngestStatistics statistics = new IngestStatistics();
+    private final RecordingSink sink = new RecordingSink();
+    private final JitterBuffer jitterBuffer = new JitterBuffer(64, 50, sink, statistics);
+
+    @Test
+    void reorderedPacketsAreDeliveredInSequence() {
+        insert(100, 0);
+        insert(102, 1);
+        insert(103, 2);
+        assertThat(sink.delivered).containsExactly(100);
+
+        insert(101, 3);
+
+        assertThat(sink.delivered).containsExactly(100, 101, 102, 103);
+        assertThat(statistics.getPacketsReordered()).isEqualTo(1);
+        assertThat(jitterBuffer.getBufferedPackets()).isZero();
+    }
+
+    @Test
+    void missingPacketIsDeclaredLostAfterMaxDelay() {
+        insert(10, 0);
+        insert(12, 0);
+        insert(13, 10);
+
+        jitterBuffer.drain(49);
+        assertThat(sink.delivered).containsExactly(10);
+
+        jitterBuffer.drain(50);
+        assertThat(sink.delivered).containsExactly(10, LOSS, 12, 13);
+        assertThat(statistics.getPacketsLost()).isEqualTo(1);
+    }
+
+    @Test
+    void duplicateAndLatePacketsAreReleasedWithoutDelivery() {
+        insert(10, 0);
+        insert(12, 0);
+        insert(12, 1);
+        insert(11, 2);
+        insert(10, 3);
+
+        assertThat(sink.delivered).containsExactly(10, 11, 12);
+        // 重复和过期的包都已归还缓冲池
+        assertThat(pool.getStatistics().get("buffersInUse")).isEqualTo(0L);
+    }
+
+    @Test
+    void sequenceNumbersWrapAround() {
+        insert(65534, 0);
+        insert(0, 1);
+        insert(65535, 2);
+        insert(1, 3);
+
+        assertThat(sink.delivered).containsExactly(65534, 65535, 0, 1);
+    }
+
+    @Test
+    void largeSequenceJumpResetsTheBuffer() {
+        insert(10, 0);
+        insert(12, 0);
+        insert(5000, 1);
+
+        assertThat(sink.delivered).containsExactly(10, LOSS, 12, LOSS, 5000);
+        assertThat(statistics.toMetrics().get("sequenceResets")).isEqualTo(1L);
+    }
+
+    @Test
+    void clearReleasesBufferedPackets() {
+        insert(10, 0);
+        insert(12, 0);
+        insert(13, 0);
+
+        jitterBuffer.clear();
+
+        assertThat(jitterBuffer.getBufferedPackets()).isZero();
+        assertThat(pool.getStatistics().get("buffersInUse")).isEqualTo(0L);
+    }
+
+    private void insert(int seq, long now) {
+        jitterBuffer.insert(packet(pool, seq, 0, false, bytes(seq & 0xFF)), now);
+    }
+
+    private static final class RecordingSink implements JitterBuffer.Sink {
+        private final List<Integer> delivered = new ArrayList<>();
+
+        @Override
+        public void onPacket(PooledBuffer packet) {
+            delivered.add(packet.buffer().getShort(2) & 0xFFFF);
+            packet.release();
+        }
+
+        @Override
+        public void onPacketLoss() {
+            delivered.add(LOSS);
+        }
+    }
+}
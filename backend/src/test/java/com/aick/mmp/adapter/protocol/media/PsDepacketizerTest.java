@@ -0,0 +1,114 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.bytes;
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.concat;
+import static com.aick.mmp.adapter.protocol.media.RtpFixtures.packet;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PsDepacketizerTest {
+
+    private static final byte[] PACK_HEADER = bytes(0, 0, 1, 0xBA,
+            0x44, 0x00, 0x04, 0x00, 0x04, 0x01, 0x01, 0x89, 0xC3, 0xF8);
+    private static final byte[] H264_IDR_PAYLOAD = bytes(
+            0, 0, 0, 1, 0x67, 0x42, 0xC0, 0x1E,
+            0, 0, 0, 1, 0x68, 0xCE, 0x3C, 0x80,
+            0, 0, 0, 1, 0x65, 0x88, 0x84, 0x00);
+    private static final byte[] H264_IDR_TAIL = bytes(0x33, 0x7F, 0xE0, 0x01);
+    // 音频PES的载荷里恰好有一个PS包头起始码，必须按长度整体跳过
+    private static final byte[] AUDIO_PES = bytes(0, 0, 1, 0xC0, 0x00, 0x07,
+            0x80, 0x00, 0x00, 0, 0, 1, 0xBA);
+
+    private final BufferPool pool = new BufferPool();
+    private final IngestStatistics statistics = new IngestStatistics();
+    private final RtpFixtures.CollectingListener listener = new RtpFixtures.CollectingListener();
+    private PsDepacketizer depacketizer = new PsDepacketizer(pool, listener, statistics);
+
+    @Test
+    void videoPayloadIsExtractedAndOtherStreamsAreSkipped() {
+        byte[] ps = concat(PACK_HEADER, streamMap(0x1B), videoPes(H264_IDR_PAYLOAD), AUDIO_PES,
+                videoPes(H264_IDR_TAIL));
+
+        depacketizer.onPacket(packet(pool, 1, 3600, true, ps));
+
+        assertThat(listener.frames).hasSize(1);
+        assertThat(listener.frames.get(0)).isEqualTo(concat(H264_IDR_PAYLOAD, H264_IDR_TAIL));
+        assertThat(listener.keyframes).containsExactly(true);
+        assertThat(listener.codecs).containsExactly(AccessUnit.Codec.H264);
+    }
+
+    @Test
+    void outputDoesNotDependOnWhereRtpPacketsSplitTheStream() {
+        byte[] ps = concat(PACK_HEADER, streamMap(0x1B), videoPes(H264_IDR_PAYLOAD), AUDIO_PES,
+                videoPes(H264_IDR_TAIL));
+        byte[] expected = concat(H264_IDR_PAYLOAD, H264_IDR_TAIL);
+
+        // 每种分片长度都会把包头、PES头切在不同位置
+        for (int chunk = 1; chunk <= ps.length; chunk++) {
+            RtpFixtures.CollectingListener chunked = new RtpFixtures.CollectingListener();
+            depacketizer = new PsDepacketizer(pool, chunked, statistics);
+            int seq = 0;
+            for (int from = 0; from < ps.length; from += chunk) {
+                int to = Math.min(ps.length, from + chunk);
+                depacketizer.onPacket(packet(pool, seq++, 3600, to == ps.length, Arrays.copyOfRange(ps, from, to)));
+            }
+
+            assertThat(chunked.frames).as("chunk size %d", chunk).hasSize(1);
+            assertThat(chunked.frames.get(0)).as("chunk size %d", chunk).isEqualTo(expected);
+            assertThat(chunked.keyframes).as("chunk size %d", chunk).containsExactly(true);
+        }
+    }
+
+    @Test
+    void streamMapSelectsH265AndIrapIsAKeyframe() {
+        byte[] idr = bytes(0, 0, 0, 1, 0x26, 0x01, 0xAF, 0x08);
+
+        depacketizer.onPacket(packet(pool, 1, 3600, true, concat(PACK_HEADER, streamMap(0x24), videoPes(idr))));
+
+        assertThat(listener.codecs).containsExactly(AccessUnit.Codec.H265);
+        assertThat(listener.keyframes).containsExactly(true);
+        assertThat(listener.frames.get(0)).isEqualTo(idr);
+    }
+
+    @Test
+    void nonIdrSliceIsNotAKeyframe() {
+        byte[] slice = bytes(0, 0, 0, 1, 0x41, 0x9A, 0x02);
+
+        depacketizer.onPacket(packet(pool, 1, 3600, true,
+                concat(PACK_HEADER, streamMap(0x1B), videoPes(H264_IDR_PAYLOAD))));
+        depacketizer.onPacket(packet(pool, 2, 7200, true, concat(PACK_HEADER, videoPes(slice))));
+
+        assertThat(listener.keyframes).containsExactly(true, false);
+        assertThat(listener.frames.get(1)).isEqualTo(slice);
+    }
+
+    @Test
+    void packetLossDropsFrameAndParserResyncsOnNextPackHeader() {
+        byte[] frame = concat(PACK_HEADER, streamMap(0x1B), videoPes(H264_IDR_PAYLOAD));
+
+        depacketizer.onPacket(packet(pool, 1, 3600, true, frame));
+        // 第二帧只收到前半段，后半段丢失
+        depacketizer.onPacket(packet(pool, 2, 7200, false, Arrays.copyOf(frame, 30)));
+        depacketizer.onPacketLoss();
+        depacketizer.onPacket(packet(pool, 4, 10800, true, frame));
+
+        assertThat(listener.timestamps).containsExactly(3600L, 10800L);
+        assertThat(listener.frames.get(1)).isEqualTo(H264_IDR_PAYLOAD);
+        assertThat(statistics.getDroppedAccessUnits()).isEqualTo(1);
+    }
+
+    private static byte[] streamMap(int streamType) {
+        byte[] body = bytes(0xE0, 0xFF, 0x00, 0x00, 0x00, 0x04, streamType, 0xE0, 0x00, 0x00,
+                0x00, 0x00, 0x00, 0x00);
+        return concat(bytes(0, 0, 1, 0xBC, 0, body.length), body);
+    }
+
+    private static byte[] videoPes(byte[] payload) {
+        byte[] header = bytes(0x80, 0x80, 0x05, 0x21, 0x00, 0x01, 0x00, 0x01);
+        int length = header.length + payload.length;
+        return concat(bytes(0, 0, 1, 0xE0, length >> 8, length & 0xFF), header, payload);
+    }
+}
@@ -0,0 +1,75 @@
+package com.aick.mmp.adapter.protocol.media;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解包测试用的RTP包构造和访问单元收集
+ */
+final class RtpFixtures {
+
+    static final int PAYLOAD_TYPE = 96;
+
+    private RtpFixtures() {
+    }
+
+    /**
+     * 构造一个固定头部（无CSRC、无扩展、无填充）的RTP包
+     */
+    static PooledBuffer packet(BufferPool pool, int seq, long timestamp, boolean marker, byte[] payload) {
+        PooledBuffer packet = pool.acquire(12 + payload.length);
+        ByteBuffer buffer = packet.buffer();
+        buffer.put((byte) 0x80);
+        buffer.put((byte) ((marker ? 0x80 : 0) | PAYLOAD_TYPE));
+        buffer.putShort((short) seq);
+        buffer.putInt((int) timestamp);
+        buffer.putInt(0x12345678);
+        buffer.put(payload);
+        buffer.flip();
+        return packet;
+    }
+
+    static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, position, part.length);
+            position += part.length;
+        }
+        return result;
+    }
+
+    /**
+     * 收集解包输出，回调内拷贝数据，不持有池化缓冲区
+     */
+    static final class CollectingListener implements AccessUnitListener {
+        final List<byte[]> frames = new ArrayList<>();
+        final List<Boolean> keyframes = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+        final List<AccessUnit.Codec> codecs = new ArrayList<>();
+
+        @Override
+        public void onAccessUnit(AccessUnit accessUnit) {
+            ByteBuffer data = accessUnit.data();
+            byte[] frame = new byte[data.remaining()];
+            data.get(frame);
+            frames.add(frame);
+            keyframes.add(accessUnit.isKeyframe());
+            timestamps.add(accessUnit.getTimestamp());
+            codecs.add(accessUnit.getCodec());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpDigestAuthTest {
+
+    private static final String URI = "/onvif/device_service";
+
+    @Test
+    void qopAuthResponseIncludesNonceCountAndClientNonce() throws Exception {
+        HttpDigestAuth auth = HttpDigestAuth.fromChallenge(
+                "Digest qop=\"auth\", realm=\"IP Camera\", nonce=\"4e4f4e4345\", opaque=\"0a1b\"");
+
+        String first = auth.authorization("admin", "12345", "POST", URI);
+        String second = auth.authorization("admin", "12345", "POST", URI);
+
+        String ha1 = md5("admin:IP Camera:12345");
+        String ha2 = md5("POST:" + URI);
+        String cnonce = param(first, "cnonce");
+        assertThat(param(first, "nc")).isEqualTo("00000001");
+        assertThat(param(first, "response")).isEqualTo(md5(ha1 + ":4e4f4e4345:00000001:" + cnonce + ":auth:" + ha2));
+        assertThat(param(first, "opaque")).isEqualTo("0a1b");
+        // 缓存的挑战被重复使用时nc递增
+        assertThat(param(second, "nc")).isEqualTo("00000002");
+    }
+
+    @Test
+    void challengeWithoutQopUsesRfc2069Response() throws Exception {
+        HttpDigestAuth auth = HttpDigestAuth.fromChallenge("Digest realm=\"cam\", nonce=\"abc\"");
+
+        String header = auth.authorization("admin", "12345", "POST", URI);
+
+        String expected = md5(md5("admin:cam:12345") + ":abc:" + md5("POST:" + URI));
+        assertThat(param(header, "response")).isEqualTo(expected);
+        assertThat(header).doesNotContain("qop", "opaque");
+    }
+
+    @Test
+    void nonDigestChallengeIsIgnored() {
+        assertThat(HttpDigestAuth.fromChallenge("Basic realm=\"cam\"")).isNull();
+        assertThat(HttpDigestAuth.fromChallenge(null)).isNull();
+    }
+
+    private static String param(String header, String name) {
+        Matcher matcher = Pattern.compile("[ ,]" + name + "=\"?([^\",]+)\"?").matcher(header);
+        assertThat(matcher.find()).as("parameter %s", name).isTrue();
+        return matcher.group(1);
+    }
+
+    private static String md5(String value) throws Exception {
+        byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+        return String.format("%032x", new BigInteger(1, digest));
+    }
+}
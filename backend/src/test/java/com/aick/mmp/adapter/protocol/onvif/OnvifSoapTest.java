@@ -0,0 +1,209 @@
+package com.aick.mmp.adapter.protocol.onvif;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OnvifSoapTest {
+
+    private static final String ENVELOPE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://www.w3.org/2003/05/soap-envelope\""
+            + " xmlns:tds=\"http://www.onvif.org/ver10/device/wsdl\" xmlns:trt=\"http://www.onvif.org/ver10/media/wsdl\""
+            + " xmlns:tt=\"http://www.onvif.org/ver10/schema\"><SOAP-ENV:Body>%s</SOAP-ENV:Body></SOAP-ENV:Envelope>";
+
+    @Test
+    void usernameTokenDigestIsSha1OfNonceCreatedAndPassword() throws Exception {
+        // 2024-01-02T03:04:05Z
+        String xml = new String(OnvifSoap.envelope(OnvifSoap.getProfiles(), "admin", "p<ss", 1704164645123L),
+                StandardCharsets.UTF_8);
+
+        byte[] nonce = Base64.getDecoder().decode(element(xml, "Nonce"));
+        String created = element(xml, "Created");
+        byte[] createdBytes = created.getBytes(StandardCharsets.UTF_8);
+        byte[] password = "p<ss".getBytes(StandardCharsets.UTF_8);
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        sha1.update(nonce);
+        sha1.update(createdBytes);
+        sha1.update(password);
+
+        assertThat(created).isEqualTo("2024-01-02T03:04:05Z");
+        assertThat(element(xml, "Password")).isEqualTo(Base64.getEncoder().encodeToString(sha1.digest()));
+        assertThat(xml).contains("<Username>admin</Username>", "<s:Body><trt:GetProfiles/></s:Body>");
+    }
+
+    @Test
+    void envelopeWithoutAccountHasNoSecurityHeader() {
+        String xml = new String(OnvifSoap.envelope(OnvifSoap.getCapabilities(), null, null, 0), StandardCharsets.UTF_8);
+
+        assertThat(xml).doesNotContain("Security").contains("<tds:Category>All</tds:Category>");
+    }
+
+    @Test
+    void parsesProfilesWithEncoderConfiguration() throws Exception {
+        String body = "<trt:GetProfilesResponse>"
+                + "<trt:Profiles token=\"Profile_1\" fixed=\"true\"><tt:Name>mainStream</tt:Name>"
+                + "<tt:VideoSourceConfiguration token=\"VSC_1\"><tt:Name>VSC</tt:Name>"
+                + "<tt:SourceToken>VideoSource_1</tt:SourceToken></tt:VideoSourceConfiguration>"
+                + "<tt:VideoEncoderConfiguration token=\"VEC_1\"><tt:Name>VEC</tt:Name><tt:UseCount>1</tt:UseCount>"
+                + "<tt:Encoding>H264</tt:Encoding><tt:Resolution><tt:Width>1920</tt:Width>"
+                + "<tt:Height>1080</tt:Height></tt:Resolution><tt:Quality>4.5</tt:Quality>"
+                + "<tt:RateControl><tt:FrameRateLimit>25</tt:FrameRateLimit><tt:EncodingInterval>1"
+                + "</tt:EncodingInterval><tt:BitrateLimit>4096</tt:BitrateLimit></tt:RateControl>"
+                + "<tt:H264><tt:GovLength>50</tt:GovLength><tt:H264Profile>Main</tt:H264Profile></tt:H264>"
+                + "<tt:Multicast><tt:Address><tt:Type>IPv4</tt:Type><tt:IPv4Address>239.0.0.1</tt:IPv4Address>"
+                + "</tt:Address><tt:Port>8600</tt:Port><tt:TTL>128</tt:TTL><tt:AutoStart>false</tt:AutoStart>"
+                + "</tt:Multicast><tt:SessionTimeout>PT5S</tt:SessionTimeout></tt:VideoEncoderConfiguration>"
+                + "</trt:Profiles>"
+                + "<trt:Profiles token=\"Profile_Audio\"><tt:Name>audio</tt:Name></trt:Profiles>"
+                + "</trt:GetProfilesResponse>";
+
+        List<OnvifProfile> profiles = OnvifSoap.parseProfiles(response(body));
+
+        assertThat(profiles).extracting(OnvifProfile::getToken).containsExactly("Profile_1", "Profile_Audio");
+        OnvifProfile main = profiles.get(0);
+        assertThat(main.getName()).isEqualTo("mainStream");
+        assertThat(main.getVideoSourceToken()).isEqualTo("VideoSource_1");
+        VideoEncoderConfiguration encoder = main.getVideoEncoder();
+        assertThat(encoder.getToken()).isEqualTo("VEC_1");
+        assertThat(encoder.getName()).isEqualTo("VEC");
+        assertThat(encoder.getWidth()).isEqualTo(1920);
+        assertThat(encoder.getHeight()).isEqualTo(1080);
+        assertThat(encoder.getQuality()).isEqualTo(4.5f);
+        assertThat(encoder.getFrameRateLimit()).isEqualTo(25);
+        assertThat(encoder.getBitrateLimit()).isEqualTo(4096);
+        assertThat(encoder.getGovLength()).isEqualTo(50);
+        assertThat(encoder.getMulticastAddress()).isEqualTo("239.0.0.1");
+        assertThat(encoder.getMulticastPort()).isEqualTo(8600);
+        assertThat(encoder.getSessionTimeout()).isEqualTo("PT5S");
+        assertThat(profiles.get(1).getVideoEncoder()).isNull();
+    }
+
+    @Test
+    void encoderConfigurationRoundTripsThroughSetRequest() throws Exception {
+        VideoEncoderConfiguration config = VideoEncoderConfiguration.builder().token("VEC&1").name("VEC")
+                .encoding("H264").width(1280).height(720).quality(3).frameRateLimit(15).bitrateLimit(1024)
+                .govLength(30).build();
+
+        String request = OnvifSoap.setVideoEncoderConfiguration(config);
+
+        assertThat(request).contains("token=\"VEC&amp;1\"", "<tt:Quality>3</tt:Quality>",
+                "<tt:EncodingInterval>1</tt:EncodingInterval>", "<tt:H264Profile>Main</tt:H264Profile>",
+                "<tt:IPv4Address>0.0.0.0</tt:IPv4Address>", "<tt:SessionTimeout>PT60S</tt:SessionTimeout>");
+        String profiles = "<trt:GetProfilesResponse><trt:Profiles token=\"P\">"
+                + request.replace("trt:Configuration", "tt:VideoEncoderConfiguration")
+                .replaceAll("</?trt:SetVideoEncoderConfiguration>", "")
+                .replace("<trt:ForcePersistence>true</trt:ForcePersistence>", "")
+                + "</trt:Profiles></trt:GetProfilesResponse>";
+        VideoEncoderConfiguration parsed = OnvifSoap.parseProfiles(response(profiles)).get(0).getVideoEncoder();
+        assertThat(parsed.getToken()).isEqualTo("VEC&1");
+        assertThat(parsed.getWidth()).isEqualTo(1280);
+        assertThat(parsed.getBitrateLimit()).isEqualTo(1024);
+        assertThat(parsed.getGovLength()).isEqualTo(30);
+    }
+
+    @Test
+    void parsesUtcDeviceTime() throws Exception {
+        String body = "<tds:GetSystemDateAndTimeResponse><tds:SystemDateAndTime>"
+                + "<tt:LocalDateTime><tt:Time><tt:Hour>11</tt:Hour></tt:Time></tt:LocalDateTime>"
+                + "<tt:UTCDateTime><tt:Time><tt:Hour>3</tt:Hour><tt:Minute>4</tt:Minute><tt:Second>5</tt:Second>"
+                + "</tt:Time><tt:Date><tt:Year>2024</tt:Year><tt:Month>1</tt:Month><tt:Day>2</tt:Day></tt:Date>"
+                + "</tt:UTCDateTime></tds:SystemDateAndTime></tds:GetSystemDateAndTimeResponse>";
+
+        assertThat(OnvifSoap.parseSystemDateAndTime(response(body))).isEqualTo(1704164645000L);
+        assertThat(OnvifSoap.parseSystemDateAndTime(response("<tds:GetSystemDateAndTimeResponse/>"))).isEqualTo(-1);
+    }
+
+    @Test
+    void capabilitiesRequireMediaService() throws Exception {
+        String body = "<tds:GetCapabilitiesResponse><tds:Capabilities>"
+                + "<tt:Device><tt:XAddr> http://10.0.0.2/onvif/device_service </tt:XAddr></tt:Device>"
+                + "<tt:Media><tt:XAddr>http://10.0.0.2/onvif/Media</tt:XAddr></tt:Media>"
+                + "</tds:Capabilities></tds:GetCapabilitiesResponse>";
+
+        OnvifCapabilities capabilities = OnvifSoap.parseCapabilities(response(body));
+
+        assertThat(capabilities.getDeviceXAddr()).isEqualTo("http://10.0.0.2/onvif/device_service");
+        assertThat(capabilities.getMediaXAddr()).isEqualTo("http://10.0.0.2/onvif/Media");
+        assertThat(capabilities.getPtzXAddr()).isNull();
+        assertThatThrownBy(() -> OnvifSoap.parseCapabilities(response("<tds:GetCapabilitiesResponse/>")))
+                .isInstanceOf(OnvifException.class);
+    }
+
+    @Test
+    void faultUsesInnermostSubcode() {
+        String body = "<SOAP-ENV:Fault><SOAP-ENV:Code><SOAP-ENV:Value>SOAP-ENV:Sender</SOAP-ENV:Value>"
+                + "<SOAP-ENV:Subcode><SOAP-ENV:Value>ter:NotAuthorized</SOAP-ENV:Value></SOAP-ENV:Subcode>"
+                + "</SOAP-ENV:Code><SOAP-ENV:Reason><SOAP-ENV:Text xml:lang=\"en\">Sender not authorized"
+                + "</SOAP-ENV:Text></SOAP-ENV:Reason></SOAP-ENV:Fault>";
+
+        OnvifException fault = OnvifSoap.parseFault(400, response(body));
+
+        assertThat(fault.getHttpStatus()).isEqualTo(400);
+        assertThat(fault.isNotAuthorized()).isTrue();
+        assertThat(fault.getMessage()).isEqualTo("ONVIF fault ter:NotAuthorized: Sender not authorized");
+        OnvifException html = OnvifSoap.parseFault(401, stream("<html><body>401</body>"));
+        assertThat(html.getSubcode()).isNull();
+        assertThat(html.getMessage()).isEqualTo("ONVIF request failed with HTTP 401");
+    }
+
+    @Test
+    void probeMatchesAreAcceptedOnlyForOwnMessageIds() throws Exception {
+        String probeMatches = "<?xml version=\"1.0\"?><s:Envelope xmlns:s=\"http://www.w3.org/2003/05/soap-envelope\""
+                + " xmlns:a=\"http://schemas.xmlsoap.org/ws/2004/08/addressing\""
+                + " xmlns:d=\"http://schemas.xmlsoap.org/ws/2005/04/discovery\"><s:Header>"
+                + "<a:RelatesTo>uuid:scan-1</a:RelatesTo></s:Header><s:Body><d:ProbeMatches><d:ProbeMatch>"
+                + "<a:EndpointReference><a:Address>urn:uuid:device-1</a:Address></a:EndpointReference>"
+                + "<d:Types>dn:NetworkVideoTransmitter tds:Device</d:Types>"
+                + "<d:Scopes>onvif://www.onvif.org/name/Gate%20Camera onvif://www.onvif.org/hardware/DS-2CD</d:Scopes>"
+                + "<d:XAddrs>http://[fe80::1]/onvif/device_service http://192.168.1.64/onvif/device_service</d:XAddrs>"
+                + "<d:MetadataVersion>10</d:MetadataVersion></d:ProbeMatch></d:ProbeMatches></s:Body></s:Envelope>";
+
+        List<DiscoveredDevice> devices = OnvifSoap.parseProbeMatches(stream(probeMatches),
+                Arrays.asList("uuid:scan-0", "uuid:scan-1"), "192.168.1.64");
+
+        assertThat(devices).hasSize(1);
+        DiscoveredDevice device = devices.get(0);
+        assertThat(device.getIdentity()).isEqualTo("urn:uuid:device-1");
+        assertThat(device.getName()).isEqualTo("Gate Camera");
+        assertThat(device.getHardware()).isEqualTo("DS-2CD");
+        assertThat(device.getMetadataVersion()).isEqualTo(10);
+        assertThat(device.getDeviceServiceUrl()).isEqualTo("http://192.168.1.64/onvif/device_service");
+        assertThat(OnvifSoap.parseProbeMatches(stream(probeMatches), Collections.singletonList("uuid:other"),
+                "192.168.1.64")).isEmpty();
+    }
+
+    @Test
+    void externalEntitiesAreNotResolved() {
+        String xxe = "<?xml version=\"1.0\"?><!DOCTYPE r [<!ENTITY x SYSTEM \"file:///etc/passwd\">]>"
+                + "<r><MediaUri><Uri>&x;</Uri></MediaUri></r>";
+
+        assertThatThrownBy(() -> OnvifSoap.parseStreamUri(stream(xxe))).isInstanceOf(IOException.class);
+    }
+
+    private static InputStream response(String body) {
+        return stream(String.format(ENVELOPE, body));
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String element(String xml, String name) {
+        Matcher matcher = Pattern.compile("<" + name + "[^>]*>([^<]*)</" + name + ">").matcher(xml);
+        assertThat(matcher.find()).as("element %s", name).isTrue();
+        return matcher.group(1);
+    }
+}
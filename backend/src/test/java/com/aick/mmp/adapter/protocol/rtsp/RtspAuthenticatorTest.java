@@ -0,0 +1,44 @@
+package com.aick.mmp.adapter.protocol.rtsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RtspAuthenticatorTest {
+
+    @Test
+    void basicChallengeProducesBasicCredentials() {
+        RtspAuthenticator authenticator = RtspAuthenticator.fromChallenge("Basic realm=\"camera\"", "admin", "12345");
+
+        // admin:12345
+        assertThat(authenticator.authorization("DESCRIBE", "rtsp://10.0.0.1/live"))
+                .isEqualTo("Basic YWRtaW46MTIzNDU=");
+    }
+
+    @Test
+    void digestResponseFollowsRfc2617() throws Exception {
+        RtspAuthenticator authenticator = RtspAuthenticator.fromChallenge(
+                "digest realm=\"IP Camera(C1234)\", nonce=\"a1b2c3\", stale=\"FALSE\"", "admin", "12345");
+        String uri = "rtsp://10.0.0.1:554/Streaming/Channels/101";
+
+        String ha1 = md5("admin:IP Camera(C1234):12345");
+        String ha2 = md5("DESCRIBE:" + uri);
+        String response = md5(ha1 + ":a1b2c3:" + ha2);
+        assertThat(authenticator.authorization("DESCRIBE", uri)).isEqualTo("Digest username=\"admin\", "
+                + "realm=\"IP Camera(C1234)\", nonce=\"a1b2c3\", uri=\"" + uri + "\", response=\"" + response + "\"");
+    }
+
+    @Test
+    void missingChallengeYieldsNoAuthenticator() {
+        assertThat(RtspAuthenticator.fromChallenge(null, "admin", "12345")).isNull();
+    }
+
+    private static String md5(String value) throws Exception {
+        byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+        return String.format("%032x", new BigInteger(1, digest));
+    }
+}
@@ -0,0 +1,43 @@
+package com.aick.mmp.adapter.protocol.rtsp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RtspMessageTest {
+
+    @Test
+    void parsesResponseStatusAndCaseInsensitiveHeaders() {
+        RtspMessage message = RtspMessage.parseHeaders("RTSP/1.0 401 Unauthorized\r\n"
+                + "CSeq: 2\r\n"
+                + "WWW-Authenticate: Digest realm=\"IP Camera\", nonce=\"abc\"\r\n"
+                + "content-length: 42");
+
+        assertThat(message.isResponse()).isTrue();
+        assertThat(message.getStatusCode()).isEqualTo(401);
+        assertThat(message.getReason()).isEqualTo("Unauthorized");
+        assertThat(message.getHeader("cseq")).isEqualTo("2");
+        assertThat(message.getHeader("www-authenticate")).isEqualTo("Digest realm=\"IP Camera\", nonce=\"abc\"");
+        assertThat(message.getContentLength()).isEqualTo(42);
+    }
+
+    @Test
+    void parsesServerRequest() {
+        RtspMessage message = RtspMessage.parseHeaders("GET_PARAMETER rtsp://10.0.0.1/live RTSP/1.0\r\nCSeq: 7");
+
+        assertThat(message.isResponse()).isFalse();
+        assertThat(message.getMethod()).isEqualTo("GET_PARAMETER");
+        assertThat(message.getUri()).isEqualTo("rtsp://10.0.0.1/live");
+        assertThat(message.getContentLength()).isZero();
+    }
+
+    @Test
+    void malformedStatusAndLengthFallBackToDefaults() {
+        RtspMessage message = RtspMessage.parseHeaders("RTSP/1.0 OK\r\nContent-Length: many\r\nbroken line");
+
+        assertThat(message.isResponse()).isTrue();
+        assertThat(message.getStatusCode()).isEqualTo(-1);
+        assertThat(message.getContentLength()).isZero();
+        assertThat(message.getHeader("broken line")).isNull();
+    }
+}
@@ -0,0 +1,72 @@
+package com.aick.mmp.adapter.protocol.rtsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SdpDescriptionTest {
+
+    private static final String CAMERA_SDP = "v=0\r\n"
+            + "o=- 1 1 IN IP4 192.168.1.64\r\n"
+            + "s=Media Presentation\r\n"
+            + "a=control:*\r\n"
+            + "m=video 0 RTP/AVP 96\r\n"
+            + "a=rtpmap:96 H264/90000\r\n"
+            + "a=fmtp:96 profile-level-id=420029; packetization-mode=1; sprop-parameter-sets=Z0IAKeKQ,aM48gA==\r\n"
+            + "a=control:trackID=1\r\n"
+            + "m=audio 0 RTP/AVP 8\r\n"
+            + "a=rtpmap:8 PCMA/8000\r\n"
+            + "a=control:rtsp://192.168.1.64/live/trackID=2\r\n";
+
+    @Test
+    void parsesVideoAndAudioTracks() {
+        SdpDescription sdp = SdpDescription.parse(CAMERA_SDP);
+
+        assertThat(sdp.getTracks()).hasSize(2);
+        SdpDescription.MediaTrack video = sdp.getTracks().get(0);
+        assertThat(video.getMediaType()).isEqualTo("video");
+        assertThat(video.getPayloadType()).isEqualTo(96);
+        assertThat(video.getEncodingName()).isEqualTo("H264");
+        assertThat(video.getClockRate()).isEqualTo(90000);
+        assertThat(video.getControl()).isEqualTo("trackID=1");
+        assertThat(video.getFormatParameters())
+                .containsEntry("packetization-mode", "1")
+                .containsEntry("sprop-parameter-sets", "Z0IAKeKQ,aM48gA==");
+
+        SdpDescription.MediaTrack audio = sdp.getTracks().get(1);
+        assertThat(audio.getEncodingName()).isEqualTo("PCMA");
+        assertThat(audio.getClockRate()).isEqualTo(8000);
+    }
+
+    @Test
+    void videoTracksSkipAudio() {
+        List<SdpDescription.MediaTrack> tracks = SdpDescription.parse(CAMERA_SDP).getVideoTracks();
+
+        assertThat(tracks).extracting(SdpDescription.MediaTrack::getMediaType).containsExactly("video");
+    }
+
+    @Test
+    void firstTrackIsUsedWhenThereIsNoVideo() {
+        SdpDescription sdp = SdpDescription.parse("v=0\nm=application 0 RTP/AVP 107\na=rtpmap:107 vnd.onvif.metadata/90000\n");
+
+        assertThat(sdp.getVideoTracks()).extracting(SdpDescription.MediaTrack::getMediaType)
+                .containsExactly("application");
+    }
+
+    @Test
+    void controlUrlIsResolvedAgainstContentBase() {
+        SdpDescription.MediaTrack track = new SdpDescription.MediaTrack();
+        String base = "rtsp://192.168.1.64/live";
+
+        assertThat(track.resolveControlUrl(base)).isEqualTo(base);
+        track.setControl("*");
+        assertThat(track.resolveControlUrl(base)).isEqualTo(base);
+        track.setControl("trackID=1");
+        assertThat(track.resolveControlUrl(base)).isEqualTo("rtsp://192.168.1.64/live/trackID=1");
+        assertThat(track.resolveControlUrl(base + "/")).isEqualTo("rtsp://192.168.1.64/live/trackID=1");
+        track.setControl("rtsp://192.168.1.64/other/trackID=3");
+        assertThat(track.resolveControlUrl(base)).isEqualTo("rtsp://192.168.1.64/other/trackID=3");
+    }
+}
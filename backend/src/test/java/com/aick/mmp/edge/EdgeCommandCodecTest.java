@@ -0,0 +1,93 @@
+package com.aick.mmp.edge;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EdgeCommandCodecTest {
+
+    @Test
+    void requestAndResponseRoundTrip() {
+        ByteBuffer request = EdgeCommandCodec.encode(
+                EdgeCommandFrame.request(42, "hello", "{\"uuid\":\"节点-1\"}".getBytes(StandardCharsets.UTF_8)));
+        ByteBuffer response = EdgeCommandCodec.encode(
+                EdgeCommandFrame.response(-7, false, "camera not found".getBytes(StandardCharsets.UTF_8)));
+
+        EdgeCommandFrame decodedRequest = EdgeCommandCodec.decode(request);
+        EdgeCommandFrame decodedResponse = EdgeCommandCodec.decode(response);
+
+        assertThat(decodedRequest.isRequest()).isTrue();
+        assertThat(decodedRequest.getRequestId()).isEqualTo(42);
+        assertThat(decodedRequest.getCommand()).isEqualTo("hello");
+        assertThat(decodedRequest.bodyAsString()).isEqualTo("{\"uuid\":\"节点-1\"}");
+        assertThat(decodedResponse.isRequest()).isFalse();
+        assertThat(decodedResponse.getRequestId()).isEqualTo(-7);
+        assertThat(decodedResponse.isOk()).isFalse();
+        assertThat(decodedResponse.bodyAsString()).isEqualTo("camera not found");
+        assertThat(request.hasRemaining()).isFalse();
+    }
+
+    @Test
+    void fixedHeaderLayout() {
+        ByteBuffer frame = EdgeCommandCodec.encode(EdgeCommandFrame.response(0x01020304, true, null));
+
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        assertThat(bytes).containsExactly('E', 'C', 1, 2, 1, 2, 3, 4, 0, 0, 0, 1, 0);
+    }
+
+    @Test
+    void partialFramesAreDecodedOnceComplete() {
+        ByteBuffer first = EdgeCommandCodec.encode(EdgeCommandFrame.request(1, "ptz", "{\"pan\":1}".getBytes()));
+        ByteBuffer second = EdgeCommandCodec.encode(EdgeCommandFrame.response(1, true, "{}".getBytes()));
+        ByteBuffer stream = ByteBuffer.allocate(first.remaining() + second.remaining());
+        stream.put(first).put(second);
+        byte[] bytes = stream.array();
+
+        // 逐字节送入，模拟读缓冲区中的半包和粘包
+        ByteBuffer in = ByteBuffer.allocate(bytes.length);
+        int decoded = 0;
+        for (byte b : bytes) {
+            in.put(b);
+            in.flip();
+            int before = in.position();
+            EdgeCommandFrame frame = EdgeCommandCodec.decode(in);
+            if (frame == null) {
+                assertThat(in.position()).isEqualTo(before);
+                assertThat(EdgeCommandCodec.requiredBytes(in)).isGreaterThan(in.remaining());
+            } else {
+                decoded++;
+                assertThat(frame.getRequestId()).isEqualTo(1);
+            }
+            in.compact();
+        }
+        assertThat(decoded).isEqualTo(2);
+    }
+
+    @Test
+    void invalidFramesAreRejected() {
+        assertThatThrownBy(() -> EdgeCommandCodec.encode(EdgeCommandFrame.request(1, "", null)))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        ByteBuffer badMagic = EdgeCommandCodec.encode(EdgeCommandFrame.request(1, "hello", null));
+        badMagic.put(0, (byte) 'X');
+        assertThatThrownBy(() -> EdgeCommandCodec.decode(badMagic)).isInstanceOf(IllegalArgumentException.class);
+
+        ByteBuffer tooLarge = EdgeCommandCodec.encode(EdgeCommandFrame.request(1, "hello", null));
+        tooLarge.putInt(8, EdgeCommandCodec.MAX_PAYLOAD_BYTES + 1);
+        assertThatThrownBy(() -> EdgeCommandCodec.decode(tooLarge)).isInstanceOf(IllegalArgumentException.class);
+
+        // 命令名长度超出帧长度
+        ByteBuffer badCommand = EdgeCommandCodec.encode(EdgeCommandFrame.request(1, "hello", null));
+        badCommand.put(EdgeCommandCodec.HEADER_BYTES, (byte) 200);
+        assertThatThrownBy(() -> EdgeCommandCodec.decode(badCommand)).isInstanceOf(IllegalArgumentException.class);
+
+        ByteBuffer badType = EdgeCommandCodec.encode(EdgeCommandFrame.request(1, "hello", null));
+        badType.put(3, (byte) 9);
+        assertThatThrownBy(() -> EdgeCommandCodec.decode(badType)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
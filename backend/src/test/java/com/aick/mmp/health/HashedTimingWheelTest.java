@@ -0,0 +1,137 @@
+package com.aick.mmp.health;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashedTimingWheelTest {
+
+    private static final long TICK = 100;
+
+    private final HashedTimingWheel wheel = new HashedTimingWheel(TICK, 8, 0);
+
+    @Test
+    void timeoutNeverFiresEarlyAndAtMostOneTickLate() {
+        HashedTimingWheel.Timeout timeout = new HashedTimingWheel.Timeout();
+        wheel.schedule(timeout, 250);
+
+        assertThat(expire(299)).isEmpty();
+        assertThat(timeout.isScheduled()).isTrue();
+        assertThat(expire(300)).containsExactly(timeout);
+        assertThat(timeout.isScheduled()).isFalse();
+        assertThat(timeout.getDeadline()).isEqualTo(250);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void timeoutBeyondOneRoundWaitsInItsSlot() {
+        // 8个槽、每槽100ms，一圈800ms
+        HashedTimingWheel.Timeout timeout = new HashedTimingWheel.Timeout();
+        wheel.schedule(timeout, 2500);
+
+        for (long now = TICK; now < 2500; now += TICK) {
+            assertThat(expire(now)).as("now=%d", now).isEmpty();
+        }
+        assertThat(expire(2500)).containsExactly(timeout);
+    }
+
+    @Test
+    void rescheduleMovesAndCancelRemoves() {
+        HashedTimingWheel.Timeout first = new HashedTimingWheel.Timeout();
+        HashedTimingWheel.Timeout second = new HashedTimingWheel.Timeout();
+        wheel.schedule(first, 200);
+        wheel.schedule(second, 200);
+        // 重新调度先从原槽移除，不会重复计数
+        wheel.schedule(first, 600);
+        assertThat(wheel.size()).isEqualTo(2);
+
+        assertThat(wheel.cancel(second)).isTrue();
+        assertThat(wheel.cancel(second)).isFalse();
+        assertThat(wheel.size()).isEqualTo(1);
+
+        assertThat(expire(500)).isEmpty();
+        assertThat(expire(600)).containsExactly(first);
+        assertThat(wheel.cancel(first)).isFalse();
+    }
+
+    @Test
+    void pastDeadlineFiresOnTheNextTick() {
+        expire(1000);
+        HashedTimingWheel.Timeout timeout = new HashedTimingWheel.Timeout();
+        wheel.schedule(timeout, 10);
+
+        assertThat(expire(1099)).isEmpty();
+        assertThat(expire(1100)).containsExactly(timeout);
+    }
+
+    @Test
+    void longPauseVisitsEachSlotOnceAndFiresEverythingDue() {
+        List<HashedTimingWheel.Timeout> timeouts = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            HashedTimingWheel.Timeout timeout = new HashedTimingWheel.Timeout();
+            wheel.schedule(timeout, i * 50L);
+            timeouts.add(timeout);
+        }
+        HashedTimingWheel.Timeout later = new HashedTimingWheel.Timeout();
+        wheel.schedule(later, 5000);
+
+        List<HashedTimingWheel.Timeout> expired = new ArrayList<>();
+        int visited = wheel.expire(3000, expired);
+
+        // 落后30个刻度，只扫一圈8个槽，每个超时访问一次
+        assertThat(visited).isEqualTo(41);
+        assertThat(expired).containsExactlyInAnyOrderElementsOf(timeouts);
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(expire(4900)).isEmpty();
+        assertThat(expire(5000)).containsExactly(later);
+    }
+
+    @Test
+    void matchesReferenceModelUnderRandomOperations() {
+        Random random = new Random(11);
+        HashedTimingWheel.Timeout[] timeouts = new HashedTimingWheel.Timeout[50];
+        for (int i = 0; i < timeouts.length; i++) {
+            timeouts[i] = new HashedTimingWheel.Timeout();
+        }
+        // 参考模型：超时 -> 应到期的刻度，即deadline向上取整，且不早于调度时的下一个刻度
+        Map<HashedTimingWheel.Timeout, Long> dueTicks = new HashMap<>();
+        long now = 0;
+        for (int step = 0; step < 20_000; step++) {
+            HashedTimingWheel.Timeout timeout = timeouts[random.nextInt(timeouts.length)];
+            int op = random.nextInt(10);
+            if (op < 5) {
+                long deadline = now - 200 + random.nextInt(3000);
+                wheel.schedule(timeout, deadline);
+                dueTicks.put(timeout, Math.max((deadline + TICK - 1) / TICK, now / TICK + 1));
+            } else if (op < 7) {
+                assertThat(wheel.cancel(timeout)).isEqualTo(dueTicks.remove(timeout) != null);
+            } else {
+                now += random.nextInt(random.nextInt(20) == 0 ? 2000 : 150);
+                long nowTick = now / TICK;
+                for (HashedTimingWheel.Timeout fired : expire(now)) {
+                    Long dueTick = dueTicks.remove(fired);
+                    assertThat(dueTick).isNotNull();
+                    assertThat(now).isGreaterThanOrEqualTo(fired.getDeadline());
+                    assertThat(nowTick).isGreaterThanOrEqualTo(dueTick);
+                }
+                // 到期的都已经取出，剩下的都还没到期
+                for (Map.Entry<HashedTimingWheel.Timeout, Long> entry : dueTicks.entrySet()) {
+                    assertThat(entry.getValue()).as("due tick at tick %d", nowTick).isGreaterThan(nowTick);
+                }
+            }
+            assertThat(wheel.size()).isEqualTo(dueTicks.size());
+        }
+    }
+
+    private List<HashedTimingWheel.Timeout> expire(long now) {
+        List<HashedTimingWheel.Timeout> expired = new ArrayList<>();
+        wheel.expire(now, expired);
+        return expired;
+    }
+}
@@ -0,0 +1,109 @@
+package com.aick.mmp.health;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PhiAccrualEstimatorTest {
+
+    /** 阈值8，预期间隔1秒，最小标准差100ms，不额外容忍停顿，保留10个间隔，超时限制在[1秒, 60秒] */
+    private final PhiAccrualEstimator.Settings settings =
+            new PhiAccrualEstimator.Settings(8, 1000, 100, 0, 10, 1000, 60_000);
+
+    @Test
+    void phiReachesTheThresholdAtTheDeadline() {
+        Random random = new Random(5);
+        PhiAccrualEstimator estimator = new PhiAccrualEstimator(settings);
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            estimator.heartbeat(now);
+            now += 1000 + random.nextInt(400) - 200;
+        }
+
+        long deadline = estimator.deadline();
+
+        assertThat(estimator.phi(deadline)).isCloseTo(8, within(0.05));
+        assertThat(estimator.phi(deadline - 200)).isLessThan(8);
+        assertThat(estimator.phi(deadline + 200)).isGreaterThan(8);
+        // 上次心跳刚发生时几乎不怀疑
+        assertThat(estimator.phi(estimator.getLastHeartbeat())).isLessThan(0.1);
+    }
+
+    @Test
+    void phiIsMonotonicAcrossTheMean() {
+        PhiAccrualEstimator estimator = new PhiAccrualEstimator(settings);
+        estimator.heartbeat(0);
+        double previous = -1;
+        // 跨过均值时两个计算分支衔接
+        for (long now = 0; now <= 5000; now += 10) {
+            double phi = estimator.phi(now);
+            assertThat(phi).as("now=%d", now).isGreaterThanOrEqualTo(previous).isFinite();
+            previous = phi;
+        }
+    }
+
+    @Test
+    void expectedIntervalIsThePriorUntilSamplesArrive() {
+        PhiAccrualEstimator estimator = new PhiAccrualEstimator(settings);
+        assertThat(estimator.phi(10_000)).isZero();
+
+        estimator.heartbeat(0);
+
+        assertThat(estimator.getSampleCount()).isZero();
+        assertThat(estimator.mean()).isEqualTo(1000);
+        assertThat(estimator.standardDeviation()).isEqualTo(250);
+        assertThat(estimator.deadline())
+                .isEqualTo((long) Math.ceil(1000 + settings.getThresholdDeviations() * 250));
+    }
+
+    @Test
+    void regularHeartbeatsUseTheMinimumDeviationAndDeadlineIsClamped() {
+        PhiAccrualEstimator estimator = new PhiAccrualEstimator(settings);
+        for (int i = 0; i <= 10; i++) {
+            estimator.heartbeat(i * 1000L);
+        }
+
+        assertThat(estimator.standardDeviation()).isEqualTo(100);
+        assertThat(estimator.deadline()).isEqualTo(10_000 + (long) Math.ceil(1000 + settings.getThresholdDeviations() * 100));
+
+        PhiAccrualEstimator fast = new PhiAccrualEstimator(settings);
+        for (int i = 0; i <= 10; i++) {
+            fast.heartbeat(i * 10L);
+        }
+        assertThat(fast.deadline()).isEqualTo(100 + 1000);
+    }
+
+    @Test
+    void outageGapsAreIgnoredAndOldIntervalsEvicted() {
+        PhiAccrualEstimator estimator = new PhiAccrualEstimator(settings);
+        for (int i = 0; i <= 10; i++) {
+            estimator.heartbeat(i * 1000L);
+        }
+        // 失联恢复后的间隔超过最大超时，不计入
+        estimator.heartbeat(200_000);
+        assertThat(estimator.getSampleCount()).isEqualTo(10);
+        assertThat(estimator.mean()).isEqualTo(1000);
+        // 乱序的旧心跳不回退
+        estimator.heartbeat(150_000);
+        assertThat(estimator.getLastHeartbeat()).isEqualTo(200_000);
+
+        // 再来10个2秒间隔，1秒间隔全部被挤出
+        for (int i = 1; i <= 10; i++) {
+            estimator.heartbeat(200_000 + i * 2000L);
+        }
+        assertThat(estimator.getSampleCount()).isEqualTo(10);
+        assertThat(estimator.mean()).isEqualTo(2000);
+        assertThat(estimator.standardDeviation()).isEqualTo(100);
+    }
+
+    @Test
+    void higherThresholdMeansMoreDeviations() {
+        double low = new PhiAccrualEstimator.Settings(1, 1000, 100, 0, 10, 0, 60_000).getThresholdDeviations();
+        double high = new PhiAccrualEstimator.Settings(12, 1000, 100, 0, 10, 0, 60_000).getThresholdDeviations();
+
+        assertThat(low).isGreaterThan(0).isLessThan(high);
+    }
+}
@@ -0,0 +1,106 @@
+package com.aick.mmp.messaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EdgeHeartbeatCodecTest {
+
+    @Test
+    void fullAndDeltaFramesRoundTrip() {
+        Random random = new Random(17);
+        EdgeHeartbeat base = null;
+        for (int i = 0; i < 200; i++) {
+            EdgeHeartbeat heartbeat = heartbeat(random, i, base);
+            // 每10帧一个全量帧
+            EdgeHeartbeat encodeBase = i % 10 == 0 ? null : base;
+            ByteBuffer frame = encode(heartbeat, encodeBase);
+            EdgeHeartbeat known = base;
+
+            EdgeHeartbeat decoded = EdgeHeartbeatCodec.decode(frame, nodeId -> known);
+
+            assertThat(decoded).as("frame %d", i).isEqualTo(heartbeat);
+            assertThat(frame.hasRemaining()).isFalse();
+            base = decoded;
+        }
+    }
+
+    @Test
+    void deltaFrameIsSmallerThanFullFrame() {
+        Random random = new Random(1);
+        EdgeHeartbeat base = heartbeat(random, 0, null);
+        EdgeHeartbeat next = heartbeat(random, 1, base);
+
+        assertThat(encode(next, base).remaining()).isLessThan(encode(next, null).remaining());
+    }
+
+    @Test
+    void deltaFrameWithoutMatchingBaseIsRejected() {
+        Random random = new Random(2);
+        EdgeHeartbeat base = heartbeat(random, 0, null);
+        EdgeHeartbeat next = heartbeat(random, 1, base);
+        ByteBuffer frame = encode(next, base);
+
+        assertThat(EdgeHeartbeatCodec.decode(frame.duplicate(), nodeId -> null)).isNull();
+        EdgeHeartbeat stale = heartbeat(random, 0, null);
+        stale.setSequence(base.getSequence() - 1);
+        assertThat(EdgeHeartbeatCodec.decode(frame, nodeId -> stale)).isNull();
+    }
+
+    @Test
+    void malformedFramesThrow() {
+        EdgeHeartbeat heartbeat = heartbeat(new Random(3), 0, null);
+        ByteBuffer frame = encode(heartbeat, null);
+
+        ByteBuffer truncated = frame.duplicate();
+        truncated.limit(frame.limit() - 3);
+        assertThatThrownBy(() -> EdgeHeartbeatCodec.decode(truncated, nodeId -> null))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Truncated");
+
+        ByteBuffer wrongVersion = frame.duplicate();
+        wrongVersion.put(2, (byte) 9);
+        assertThatThrownBy(() -> EdgeHeartbeatCodec.decode(wrongVersion, nodeId -> null))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("version");
+
+        ByteBuffer json = ByteBuffer.wrap("{\"nodeId\":1}".getBytes());
+        assertThatThrownBy(() -> EdgeHeartbeatCodec.decode(json, nodeId -> null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ByteBuffer encode(EdgeHeartbeat heartbeat, EdgeHeartbeat base) {
+        ByteBuffer out = ByteBuffer.allocate(EdgeHeartbeatCodec.MAX_FRAME_BYTES);
+        EdgeHeartbeatCodec.encode(heartbeat, base, out);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * 累计计数器单调增加；第0帧使用接近上限的值，覆盖最长的varint
+     */
+    private static EdgeHeartbeat heartbeat(Random random, int sequence, EdgeHeartbeat previous) {
+        EdgeHeartbeat heartbeat = new EdgeHeartbeat();
+        heartbeat.setNodeId(Long.MAX_VALUE - 5);
+        heartbeat.setSequence(sequence);
+        heartbeat.setTimestamp(previous == null ? 1_700_000_000_000L : previous.getTimestamp() + 5000 - random.nextInt(20));
+        heartbeat.setCpuUsage(random.nextDouble() * 100);
+        heartbeat.setMemoryUsage(random.nextDouble() * 100);
+        heartbeat.setStorageUsage(Double.NaN);
+        heartbeat.setLatency(random.nextGaussian() * 50 + 80);
+        heartbeat.setPacketLoss(0);
+        heartbeat.setBandwidth(random.nextDouble() * 1e5);
+        heartbeat.setJitter(-0.0);
+        heartbeat.setActiveStreams(random.nextInt(64));
+        heartbeat.setCameraCount(Integer.MAX_VALUE);
+        long offset = previous == null ? Long.MAX_VALUE / 2 : 0;
+        heartbeat.setBytesSent(offset + (previous == null ? 0 : previous.getBytesSent()) + random.nextInt(1 << 24));
+        heartbeat.setBytesReceived((previous == null ? 0 : previous.getBytesReceived()) + random.nextInt(1 << 20));
+        heartbeat.setFramesProcessed((previous == null ? 0 : previous.getFramesProcessed()) + 125);
+        // 节点重启后计数器归零，增量为负
+        heartbeat.setPacketsLost(random.nextInt(1000));
+        return heartbeat;
+    }
+}
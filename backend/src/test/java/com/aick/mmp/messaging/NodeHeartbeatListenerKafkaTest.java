@@ -0,0 +1,184 @@
+package com.aick.mmp.messaging;
+
+import com.aick.mmp.config.KafkaHeartbeatConfig;
+import com.aick.mmp.dto.NodeHeartbeatMessage;
+import com.aick.mmp.service.CdnNodeService;
+import com.aick.mmp.service.EdgeNodeService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 通过嵌入式Kafka驱动批量{@code @KafkaListener}：生产者按节点key写入带递增序号的心跳，
+ * 检查每条心跳都送达节点服务（CDN心跳按设计在批内合并，合并的条数计入统计）、同一节点按序处理，并输出消费速率
+ */
+@Slf4j
+@SpringJUnitConfig(NodeHeartbeatListenerKafkaTest.TestConfig.class)
+@EmbeddedKafka(partitions = NodeHeartbeatListenerKafkaTest.PARTITIONS, topics = NodeHeartbeatListenerKafkaTest.TOPIC,
+        bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+@TestPropertySource(properties = {
+        "heartbeat.kafka.topic=" + NodeHeartbeatListenerKafkaTest.TOPIC,
+        "heartbeat.kafka.partitions=" + NodeHeartbeatListenerKafkaTest.PARTITIONS,
+        "heartbeat.kafka.group-id=heartbeat-test"
+})
+class NodeHeartbeatListenerKafkaTest {
+
+    static final String TOPIC = "node-heartbeats-test";
+    static final int PARTITIONS = 12;
+
+    private static final int HEARTBEATS = 44_000;
+    private static final int EDGE_NODES = 200;
+    private static final int CDN_NODES = 20;
+
+    /** 每个节点最近一次处理的序号、处理的条数，以及乱序的次数 */
+    private static final Map<String, Long> LAST_SEQUENCE = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicLong> DELIVERED = new ConcurrentHashMap<>();
+    private static final AtomicLong OUT_OF_ORDER = new AtomicLong();
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private NodeHeartbeatListener listener;
+
+    @Test
+    void everyHeartbeatIsDeliveredInOrderPerNode() throws Exception {
+        // 新的消费组从最新位置开始，分区分配完成后才能开始写入
+        ContainerTestUtils.waitForAssignment(registry.getListenerContainer("node-heartbeats"), PARTITIONS);
+
+        Map<String, Object> producerProperties = KafkaTestUtils.producerProps(broker);
+        producerProperties.put("linger.ms", 5);
+        JsonSerializer<NodeHeartbeatMessage> serializer = new JsonSerializer<>();
+        serializer.setAddTypeInfo(false);
+        long started = System.nanoTime();
+        try (Producer<String, NodeHeartbeatMessage> producer = new DefaultKafkaProducerFactory<>(producerProperties,
+                new StringSerializer(), serializer).createProducer()) {
+            for (long sequence = 0; sequence < HEARTBEATS; sequence++) {
+                NodeHeartbeatMessage message = heartbeat(sequence);
+                producer.send(new ProducerRecord<>(TOPIC, message.partitionKey(), message));
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (handled() < HEARTBEATS && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        log.info("Consumed {} heartbeats in {} s: {} heartbeats/s, listener {}", handled(),
+                String.format("%.2f", seconds), Math.round(handled() / seconds), listener.getStatistics());
+
+        Map<String, Object> statistics = listener.getStatistics();
+        assertThat(statistics.get("received")).isEqualTo((long) HEARTBEATS);
+        assertThat(statistics.get("rejected")).isEqualTo(0L);
+        assertThat(statistics.get("expired")).isEqualTo(0L);
+        assertThat(OUT_OF_ORDER.get()).isZero();
+        // 边缘节点的每条心跳都逐条送达
+        for (int node = 0; node < EDGE_NODES; node++) {
+            assertThat(DELIVERED.get("EDGE:" + (node + 1))).as("edge node %d", node + 1)
+                    .hasValue(HEARTBEATS / (EDGE_NODES + CDN_NODES));
+        }
+        // CDN节点的最后一条心跳一定送达，批内更早的被合并
+        for (int node = 0; node < CDN_NODES; node++) {
+            long last = HEARTBEATS - (EDGE_NODES + CDN_NODES) + EDGE_NODES + node;
+            assertThat(LAST_SEQUENCE.get("CDN:cdn-" + node)).as("cdn node %d", node).isEqualTo(last);
+        }
+        assertThat((Long) statistics.get("processed") + (Long) statistics.get("coalesced")).isEqualTo(HEARTBEATS);
+    }
+
+    /**
+     * 监听器已经处理完的心跳数，包括被合并、过期和拒绝的
+     */
+    private long handled() {
+        Map<String, Object> statistics = listener.getStatistics();
+        return (Long) statistics.get("processed") + (Long) statistics.get("coalesced")
+                + (Long) statistics.get("expired") + (Long) statistics.get("rejected");
+    }
+
+    private static NodeHeartbeatMessage heartbeat(long sequence) {
+        int node = (int) (sequence % (EDGE_NODES + CDN_NODES));
+        boolean edge = node < EDGE_NODES;
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("sequence", sequence);
+        metrics.put("cpu", 40 + sequence % 20);
+        return NodeHeartbeatMessage.builder()
+                .nodeType(edge ? NodeHeartbeatMessage.NodeType.EDGE : NodeHeartbeatMessage.NodeType.CDN)
+                .nodeId(edge ? String.valueOf(node + 1) : "cdn-" + (node - EDGE_NODES))
+                .metrics(metrics)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+
+    private static void record(String node, Map<?, ?> metrics) {
+        long sequence = ((Number) metrics.get("sequence")).longValue();
+        Long previous = LAST_SEQUENCE.put(node, sequence);
+        if (previous != null && previous >= sequence) {
+            OUT_OF_ORDER.incrementAndGet();
+        }
+        DELIVERED.computeIfAbsent(node, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    @Configuration
+    @EnableKafka
+    @EnableConfigurationProperties(KafkaProperties.class)
+    @Import({KafkaHeartbeatConfig.class, NodeHeartbeatListener.class})
+    static class TestConfig {
+
+        /**
+         * 节点服务只记录序号；stubOnly不保存调用记录，避免大量心跳占用内存
+         */
+        @Bean
+        EdgeNodeService edgeNodeService() {
+            EdgeNodeService service = mock(EdgeNodeService.class, withSettings().stubOnly());
+            doAnswer(invocation -> {
+                record("EDGE:" + invocation.getArgument(0), invocation.getArgument(1));
+                return null;
+            }).when(service).registerHeartbeat(anyLong(), any());
+            return service;
+        }
+
+        @Bean
+        CdnNodeService cdnNodeService() {
+            CdnNodeService service = mock(CdnNodeService.class, withSettings().stubOnly());
+            doAnswer(invocation -> {
+                record("CDN:" + invocation.getArgument(0), invocation.getArgument(1));
+                return null;
+            }).when(service).registerHeartbeat(anyString(), any());
+            return service;
+        }
+    }
+}
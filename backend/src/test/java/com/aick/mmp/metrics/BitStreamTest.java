@@ -0,0 +1,65 @@
+package com.aick.mmp.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BitStreamTest {
+
+    @Test
+    void randomWidthsRoundTripAcrossWordBoundaries() {
+        Random random = new Random(42);
+        int[] widths = new int[5000];
+        long[] values = new long[widths.length];
+        BitStream stream = new BitStream(1);
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = 1 + random.nextInt(64);
+            values[i] = random.nextLong();
+            stream.write(values[i], widths[i]);
+        }
+
+        BitStream.Reader reader = stream.reader();
+        for (int i = 0; i < widths.length; i++) {
+            long mask = widths[i] == 64 ? -1L : (1L << widths[i]) - 1;
+            assertThat(reader.read(widths[i])).as("value %d", i).isEqualTo(values[i] & mask);
+        }
+    }
+
+    @Test
+    void bitsAreStoredMostSignificantFirst() {
+        BitStream stream = new BitStream(1);
+        stream.writeBit(true);
+        stream.write(0b0110, 4);
+        stream.writeBit(false);
+
+        BitStream.Reader reader = stream.reader();
+        assertThat(reader.read(6)).isEqualTo(0b101100);
+    }
+
+    @Test
+    void readingPastTheEndFails() {
+        BitStream stream = new BitStream(4);
+        stream.write(0x3FF, 10);
+
+        BitStream.Reader reader = stream.reader();
+        reader.read(8);
+        assertThatThrownBy(() -> reader.read(3)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void trimKeepsWrittenBitsAndReleasesCapacity() {
+        BitStream stream = new BitStream(16);
+        stream.write(-1L, 64);
+        stream.write(0x5, 3);
+
+        stream.trim();
+
+        assertThat(stream.sizeInBytes()).isEqualTo(16);
+        BitStream.Reader reader = stream.reader();
+        assertThat(reader.read(64)).isEqualTo(-1L);
+        assertThat(reader.read(3)).isEqualTo(0x5);
+    }
+}
@@ -0,0 +1,106 @@
+package com.aick.mmp.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GorillaChunkTest {
+
+    @Test
+    void valuesAndTimestampsRoundTripBitExactly() {
+        Random random = new Random(7);
+        int columns = 3;
+        int points = 500;
+        GorillaChunk chunk = new GorillaChunk(columns, points);
+        long[] timestamps = new long[points];
+        double[][] values = new double[points][];
+        long timestamp = 1_700_000_000_000L;
+        double load = 40;
+        for (int i = 0; i < points; i++) {
+            // 大部分间隔稳定，偶尔抖动或长时间缺数，覆盖所有二阶差分编码长度
+            int jitter = random.nextInt(10);
+            timestamp += jitter < 6 ? 10_000 : jitter < 8 ? 10_000 + random.nextInt(200) - 100
+                    : jitter == 8 ? 10_000 + random.nextInt(4000) - 2000 : 3_600_000L + random.nextInt(1000);
+            load += random.nextGaussian();
+            timestamps[i] = timestamp;
+            values[i] = new double[]{load, random.nextInt(4) == 0 ? random.nextDouble() * 1e9 : 100.0,
+                    special(i)};
+            chunk.append(timestamps[i], values[i]);
+        }
+        chunk.seal();
+
+        List<long[]> decoded = new ArrayList<>();
+        chunk.scan(Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> {
+            long[] row = new long[columns + 1];
+            row[0] = t;
+            for (int c = 0; c < columns; c++) {
+                row[c + 1] = Double.doubleToRawLongBits(v[c]);
+            }
+            decoded.add(row);
+        });
+
+        assertThat(decoded).hasSize(points);
+        for (int i = 0; i < points; i++) {
+            assertThat(decoded.get(i)[0]).isEqualTo(timestamps[i]);
+            for (int c = 0; c < columns; c++) {
+                assertThat(decoded.get(i)[c + 1]).as("point %d column %d", i, c)
+                        .isEqualTo(Double.doubleToRawLongBits(values[i][c]));
+            }
+        }
+        assertThat(chunk.getFirstTimestamp()).isEqualTo(timestamps[0]);
+        assertThat(chunk.getLastTimestamp()).isEqualTo(timestamps[points - 1]);
+        assertThat(chunk.isFull()).isTrue();
+        assertThat(chunk.sizeInBytes()).isLessThanOrEqualTo(GorillaChunk.maxBytes(columns, points));
+    }
+
+    @Test
+    void scanReturnsOnlyTheRequestedRange() {
+        GorillaChunk chunk = new GorillaChunk(1, 10);
+        for (int i = 0; i < 10; i++) {
+            chunk.append(1000L * i, new double[]{i});
+        }
+
+        List<Long> timestamps = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        chunk.scan(2000, 4500, (t, v) -> {
+            timestamps.add(t);
+            values.add(v[0]);
+        });
+
+        assertThat(timestamps).containsExactly(2000L, 3000L, 4000L);
+        assertThat(values).containsExactly(2.0, 3.0, 4.0);
+    }
+
+    @Test
+    void regularSeriesCompressesToAFewBitsPerPoint() {
+        GorillaChunk chunk = new GorillaChunk(2, 720);
+        for (int i = 0; i < 720; i++) {
+            chunk.append(60_000L * i, new double[]{50.0, i % 2 == 0 ? 1.5 : 1.25});
+        }
+        chunk.seal();
+
+        // 首个点占192位，之后固定间隔1位、不变的列1位、交替变化的列沿用窗口后只存几位
+        assertThat(chunk.sizeInBytes()).isLessThan(720 * 2);
+    }
+
+    private static double special(int i) {
+        switch (i % 7) {
+            case 0:
+                return Double.NaN;
+            case 1:
+                return -0.0;
+            case 2:
+                return Double.POSITIVE_INFINITY;
+            case 3:
+                return Double.MIN_VALUE;
+            case 4:
+                return -Double.MAX_VALUE;
+            default:
+                return i;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.aick.mmp.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class QuantileSketchTest {
+
+    private static final double ACCURACY = 0.01;
+
+    private final QuantileSketch.Layout layout = new QuantileSketch.Layout(0.1, 100_000, ACCURACY);
+
+    @Test
+    void quantilesStayWithinRelativeAccuracy() {
+        Random random = new Random(3);
+        double[] samples = new double[20_000];
+        QuantileSketch sketch = new QuantileSketch(layout);
+        for (int i = 0; i < samples.length; i++) {
+            // 长尾分布，类似延迟
+            samples[i] = Math.exp(3 + random.nextGaussian());
+            sketch.add(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        double[] qs = {0.5, 0.9, 0.99};
+        double[] estimates = sketch.quantiles(qs);
+
+        for (int i = 0; i < qs.length; i++) {
+            double exact = samples[(int) Math.ceil(qs[i] * samples.length) - 1];
+            assertThat(estimates[i]).as("q=%s", qs[i]).isCloseTo(exact, within(exact * ACCURACY));
+        }
+    }
+
+    @Test
+    void everyBinRepresentsItsValuesWithinRelativeAccuracy() {
+        // 包括桶边界两侧
+        for (double x = 0.1; x < 100_000; x *= 1.0007) {
+            double represented = layout.value(layout.index(x));
+            assertThat(represented).as("x=%s", x).isCloseTo(x, within(x * ACCURACY * (1 + 1e-9)));
+        }
+    }
+
+    @Test
+    void outOfRangeValuesGoToEdgeBins() {
+        QuantileSketch sketch = new QuantileSketch(layout);
+        sketch.add(0.001);
+        sketch.add(Double.NaN);
+        sketch.add(1e9);
+
+        double[] quantiles = sketch.quantiles(0.0, 0.5, 1.0);
+
+        assertThat(quantiles).containsExactly(0.0, 0.0, 100_000.0);
+    }
+
+    @Test
+    void emptySketchReturnsNaN() {
+        assertThat(new QuantileSketch(layout).quantiles(0.5, 0.99)).containsExactly(Double.NaN, Double.NaN);
+    }
+
+    @Test
+    void drainingASliceSubtractsItsCountsFromTheWindow() {
+        QuantileSketch window = new QuantileSketch(layout);
+        QuantileSketch slice = new QuantileSketch(layout);
+        for (int i = 0; i < 100; i++) {
+            window.add(1000);
+            slice.add(1000);
+        }
+        for (int i = 0; i < 10; i++) {
+            window.add(10);
+        }
+
+        slice.drainFrom(window);
+
+        assertThat(window.quantiles(1.0)[0]).isCloseTo(10, within(10 * ACCURACY));
+        assertThat(slice.quantiles(0.5)[0]).isNaN();
+    }
+}
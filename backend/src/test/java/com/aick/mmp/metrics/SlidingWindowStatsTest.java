@@ -0,0 +1,74 @@
+package com.aick.mmp.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SlidingWindowStatsTest {
+
+    private static final long SLICE_MILLIS = 60_000;
+
+    private final SlidingWindowStats stats = new SlidingWindowStats(
+            new QuantileSketch.Layout(0.1, 10_000, 0.01), 5, SLICE_MILLIS, 0.5);
+
+    @Test
+    void linearTrendIsReportedPerMinute() {
+        // 每分钟上升2，每个时间片内样本相同
+        for (int minute = 0; minute < 5; minute++) {
+            for (int i = 0; i < 10; i++) {
+                stats.add(minute * SLICE_MILLIS + i * 1000, 10 + 2 * minute);
+            }
+        }
+
+        SlidingWindowStats.Snapshot snapshot = stats.snapshot(4 * SLICE_MILLIS + 30_000);
+
+        assertThat(snapshot.getCount()).isEqualTo(50);
+        assertThat(snapshot.getMean()).isCloseTo(14, within(1e-9));
+        assertThat(snapshot.getSlopePerMinute()).isCloseTo(2, within(1e-9));
+        assertThat(snapshot.getP50()).isCloseTo(14, within(14 * 0.01));
+        assertThat(snapshot.getP99()).isCloseTo(18, within(18 * 0.01));
+        assertThat(snapshot.getEwma()).isCloseTo(18, within(0.01));
+    }
+
+    @Test
+    void expiredSlicesLeaveTheWindow() {
+        stats.add(0, 1000);
+        stats.add(SLICE_MILLIS, 1000);
+        // 第6分钟复用第0分钟的时间片
+        stats.add(5 * SLICE_MILLIS, 10);
+
+        SlidingWindowStats.Snapshot snapshot = stats.snapshot(5 * SLICE_MILLIS);
+
+        assertThat(snapshot.getCount()).isEqualTo(2);
+        assertThat(snapshot.getMean()).isCloseTo(505, within(1e-9));
+        assertThat(snapshot.getP99()).isCloseTo(1000, within(1000 * 0.01));
+
+        // 长时间没有写入，快照清除所有过期时间片，窗口草图也随之清空
+        SlidingWindowStats.Snapshot idle = stats.snapshot(20 * SLICE_MILLIS);
+        assertThat(idle.getCount()).isZero();
+        assertThat(idle.getP50()).isNaN();
+        stats.add(20 * SLICE_MILLIS, 10);
+        assertThat(stats.snapshot(20 * SLICE_MILLIS).getP99()).isCloseTo(10, within(10 * 0.01));
+    }
+
+    @Test
+    void lateSampleForAReusedSliceOnlyUpdatesEwma() {
+        stats.add(5 * SLICE_MILLIS, 100);
+        stats.add(0, 200);
+
+        SlidingWindowStats.Snapshot snapshot = stats.snapshot(5 * SLICE_MILLIS);
+
+        assertThat(snapshot.getCount()).isEqualTo(1);
+        assertThat(snapshot.getEwma()).isCloseTo(150, within(1e-9));
+    }
+
+    @Test
+    void nanSamplesAreIgnored() {
+        stats.add(0, Double.NaN);
+
+        SlidingWindowStats.Snapshot snapshot = stats.snapshot(0);
+        assertThat(snapshot.getCount()).isZero();
+        assertThat(snapshot.getEwma()).isNaN();
+    }
+}
@@ -0,0 +1,101 @@
+package com.aick.mmp.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeSeriesStoreTest {
+
+    private static final long HOUR = 3_600_000L;
+    private static final long T0 = 1_700_000_000_000L / HOUR * HOUR;
+
+    /** 原始级保留1小时、最多720点，分钟级1天，小时级30天，每个实体最多3条序列 */
+    private final TimeSeriesStore store = new TimeSeriesStore(HOUR, 720, 24 * HOUR, 720 * HOUR, 3);
+
+    @Test
+    void nestedMetricsAreFlattenedAndNonNumbersIgnored() {
+        Map<String, Object> network = new HashMap<>();
+        network.put("latency", 12.5);
+        network.put("state", "UP");
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("cpu", 40);
+        metrics.put("network", network);
+
+        store.record("edge-1", metrics, T0);
+
+        assertThat(store.getMetricNames("edge-1")).containsExactly("cpu", "network.latency");
+        List<MetricPoint> points = store.query("edge-1", "network.latency", T0, T0, Resolution.RAW);
+        assertThat(points).extracting(MetricPoint::getAvg).containsExactly(12.5);
+    }
+
+    @Test
+    void minuteBucketsCarryMinMaxAndAverage() {
+        // 每10秒一个点，第一分钟 1..6，第二分钟 7..12，第三分钟只有一个点
+        for (int i = 0; i < 13; i++) {
+            record(T0 + i * 10_000L, i + 1);
+        }
+
+        List<MetricPoint> minutes = store.query("edge-1", "cpu", T0, T0 + HOUR, Resolution.MINUTE);
+
+        assertThat(minutes).extracting(MetricPoint::getTimestamp).containsExactly(T0, T0 + 60_000, T0 + 120_000);
+        assertThat(minutes.get(0).getMin()).isEqualTo(1);
+        assertThat(minutes.get(0).getMax()).isEqualTo(6);
+        assertThat(minutes.get(0).getAvg()).isEqualTo(3.5);
+        assertThat(minutes.get(1).getAvg()).isEqualTo(9.5);
+        // 未结束的桶也能查到
+        assertThat(minutes.get(2).getMax()).isEqualTo(13);
+    }
+
+    @Test
+    void outOfOrderSamplesAndExtraSeriesAreRejected() {
+        record(T0 + 1000, 1);
+        record(T0, 2);
+        Map<String, Object> wide = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            wide.put("m" + i, i);
+        }
+        store.record("edge-2", wide, T0);
+
+        assertThat(store.query("edge-1", "cpu", T0, T0 + 1000, Resolution.RAW)).hasSize(1);
+        assertThat(store.getMetricNames("edge-2")).hasSize(3);
+        assertThat(store.getStatistics()).containsEntry("rejectedSamples", 1L).containsEntry("rejectedSeries", 2L);
+    }
+
+    @Test
+    void rawTierIsBoundedAndQueriesFallBackToCoarserResolution() {
+        // 5秒一次，写满3小时
+        long end = T0 + 3 * HOUR;
+        for (long t = T0; t < end; t += 5000) {
+            record(t, 50);
+        }
+
+        List<MetricPoint> raw = store.query("edge-1", "cpu", T0, end, Resolution.RAW);
+        // 整块淘汰，保留的原始点不超过上限，且覆盖最近一小时
+        assertThat(raw.size()).isLessThanOrEqualTo(720);
+        assertThat(raw.get(0).getTimestamp()).isLessThanOrEqualTo(end - HOUR);
+
+        // 查询范围超出原始级保留时间时自动改用分钟级
+        List<MetricPoint> auto = store.query("edge-1", "cpu", T0, end, null);
+        assertThat(auto).hasSize(180);
+        assertThat(auto.get(0).getTimestamp()).isEqualTo(T0);
+        assertThat(store.query("edge-1", "cpu", end - 60_000, end, null)).hasSize(12);
+
+        long bytes = (Long) store.getStatistics().get("maxBytesPerSeries");
+        assertThat(bytes).isLessThanOrEqualTo(store.getBoundBytesPerSeries());
+    }
+
+    @Test
+    void unknownSeriesIsEmpty() {
+        assertThat(store.query("missing", "cpu", 0, Long.MAX_VALUE, null)).isEmpty();
+        assertThat(store.getMetricNames("missing")).isEmpty();
+    }
+
+    private void record(long timestamp, double value) {
+        store.record("edge-1", Collections.singletonMap("cpu", value), timestamp);
+    }
+}
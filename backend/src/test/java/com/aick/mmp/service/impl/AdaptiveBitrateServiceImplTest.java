@@ -0,0 +1,204 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.model.EdgeNode;
+import com.aick.mmp.model.StreamSession;
+import com.aick.mmp.service.StreamingService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用确定性的瓶颈链路模型驱动码率控制：上行经过一个200ms缓冲的瓶颈队列，可用容量为链路容量减去交叉流量，
+ * 每路流的实际码率在档位码率上下浮动（VBR），编码器在收到调整后1秒生效；
+ * 以50ms为步长推进队列，每5秒上报一次心跳（RTT取最后一次采样，丢包率取周期内的丢包比例）并执行一次控制。
+ * <p>
+ * 收敛：心跳周期内的平均码率落在可用容量的[60%, 105%]之间，且此后直到阶段结束都保持在该范围内；
+ * 基于时延的控制需要短暂超过瓶颈容量才能探测到排队，超出的部分由瓶颈队列吸收，因此上限取105%。
+ */
+class AdaptiveBitrateServiceImplTest {
+
+    private static final long TICK_MS = 50;
+    private static final long HEARTBEAT_MS = 5000;
+    private static final long PHASE_MS = 300_000;
+    private static final int HEARTBEATS_PER_PHASE = (int) (PHASE_MS / HEARTBEAT_MS);
+    private static final long ENCODER_DELAY_MS = 1000;
+    private static final double BASE_RTT_MS = 30;
+    private static final double BUFFER_MS = 200;
+    private static final double LINK_KBPS = 100_000;
+    private static final int[] LADDER_KBPS = {500, 1000, 2000, 4000, 8000};
+
+    /** 进入收敛区间最多用的心跳周期数 */
+    private static final int MAX_CONVERGENCE_INTERVALS = 12;
+    /** 收敛后平均码率占可用容量比例的最大振幅 */
+    private static final double MAX_OSCILLATION = 0.35;
+
+    @Test
+    void convergesAfterEveryCapacityChangeAndOscillationStaysBounded() {
+        // 0~5分钟无交叉流量；5~10分钟交叉流量55 Mbps；10~15分钟交叉流量消失，同时新增20路摄像头；15~20分钟交叉流量30 Mbps
+        double[] crossTrafficKbps = {0, 55_000, 0, 30_000};
+        int[] cameras = {40, 40, 60, 60};
+        for (long seed = 1; seed <= 3; seed++) {
+            Emulation emulation = new Emulation(seed, "100 Mbps", crossTrafficKbps, cameras);
+            emulation.run();
+
+            for (int phase = 0; phase < crossTrafficKbps.length; phase++) {
+                List<double[]> intervals = emulation.phase(phase);
+                int converged = convergedAfter(intervals);
+                double low = Double.MAX_VALUE;
+                double high = 0;
+                for (double[] interval : intervals.subList(converged, intervals.size())) {
+                    low = Math.min(low, interval[0] / interval[1]);
+                    high = Math.max(high, interval[0] / interval[1]);
+                }
+                assertThat(converged).as("seed %d phase %d", seed, phase + 1)
+                        .isLessThanOrEqualTo(MAX_CONVERGENCE_INTERVALS);
+                assertThat(high - low).as("seed %d phase %d oscillation", seed, phase + 1)
+                        .isLessThanOrEqualTo(MAX_OSCILLATION);
+                // 每路流每分钟的档位调整不超过一次
+                assertThat(emulation.levelChanges[phase] / (double) cameras[phase] / (PHASE_MS / 60_000.0))
+                        .as("seed %d phase %d level changes", seed, phase + 1).isLessThanOrEqualTo(1.0);
+            }
+        }
+    }
+
+    @Test
+    void budgetStaysUnderRegisteredNetworkBandwidth() {
+        // 节点登记30 Mbps，实际链路空闲；预算不能因为没有拥塞信号而超过登记的容量
+        Emulation emulation = new Emulation(7, "30 Mbps", new double[]{0}, new int[]{40});
+        emulation.run();
+
+        List<double[]> intervals = emulation.phase(0);
+        for (double[] interval : intervals.subList(MAX_CONVERGENCE_INTERVALS, intervals.size())) {
+            // VBR浮动之外不超过登记容量
+            assertThat(interval[0]).isLessThanOrEqualTo(30_000 * 1.05);
+            assertThat(interval[0]).isGreaterThanOrEqualTo(30_000 * 0.6);
+        }
+        assertThat(((Number) emulation.bitrateService.getStatus(1L).get("budgetKbps")).doubleValue())
+                .isLessThanOrEqualTo(30_000);
+    }
+
+    /**
+     * 收敛所用的心跳周期数：从阶段末尾往前找最后一个不在收敛区间内的周期
+     */
+    private static int convergedAfter(List<double[]> intervals) {
+        int converged = intervals.size();
+        while (converged > 0 && inBand(intervals.get(converged - 1))) {
+            converged--;
+        }
+        return converged;
+    }
+
+    private static boolean inBand(double[] interval) {
+        return interval[0] >= 0.6 * interval[1] && interval[0] <= 1.05 * interval[1];
+    }
+
+    /**
+     * 一次仿真：随机数使用固定种子，相同参数的结果完全一致
+     */
+    private static final class Emulation {
+        private final Random random;
+        private final double[] crossTrafficKbps;
+        private final int[] cameras;
+        private final EdgeNode edgeNode;
+        private final AdaptiveBitrateServiceImpl bitrateService;
+
+        private long now;
+        private int activeCameras;
+        private final int[] level;
+        private final int[] pendingLevel;
+        private final long[] pendingAt;
+        private final long[] levelChanges;
+        /** 每个心跳周期的平均码率和可用容量（kbps） */
+        private final List<double[]> intervals = new ArrayList<>();
+
+        Emulation(long seed, String networkBandwidth, double[] crossTrafficKbps, int[] cameras) {
+            this.random = new Random(seed);
+            this.crossTrafficKbps = crossTrafficKbps;
+            this.cameras = cameras;
+            int maxCameras = Arrays.stream(cameras).max().getAsInt();
+            this.level = new int[maxCameras];
+            this.pendingLevel = new int[maxCameras];
+            this.pendingAt = new long[maxCameras];
+            this.levelChanges = new long[crossTrafficKbps.length];
+            Arrays.fill(level, 3);
+            Arrays.fill(pendingAt, Long.MAX_VALUE);
+
+            StreamingService streamingService = mock(StreamingService.class);
+            when(streamingService.getActiveSessionsByEdgeNode(anyLong())).thenAnswer(invocation -> {
+                List<StreamSession> sessions = new ArrayList<>();
+                for (int camera = 0; camera < activeCameras; camera++) {
+                    sessions.add(StreamSession.builder().sessionId("session-" + camera).cameraId((long) camera)
+                            .edgeNodeId(1L).status(StreamSession.StreamStatus.STREAMING).build());
+                }
+                return sessions;
+            });
+            doAnswer(invocation -> {
+                int camera = Integer.parseInt(invocation.<String>getArgument(0).substring("session-".length()));
+                pendingLevel[camera] = invocation.getArgument(1);
+                pendingAt[camera] = now + ENCODER_DELAY_MS;
+                levelChanges[(int) (now / PHASE_MS)]++;
+                return null;
+            }).when(streamingService).adjustStreamQuality(anyString(), anyInt());
+            this.bitrateService = new AdaptiveBitrateServiceImpl(streamingService);
+            bitrateService.init();
+            this.edgeNode = EdgeNode.builder().id(1L).name("edge-1").networkBandwidth(networkBandwidth).build();
+        }
+
+        void run() {
+            double backlogKbit = 0;
+            double offeredKbit = 0;
+            double droppedKbit = 0;
+            Map<String, Object> metrics = new HashMap<>();
+            for (now = 0; now < PHASE_MS * crossTrafficKbps.length; now += TICK_MS) {
+                int phase = (int) (now / PHASE_MS);
+                activeCameras = cameras[phase];
+                double availableKbps = LINK_KBPS - crossTrafficKbps[phase];
+
+                double rateKbps = 0;
+                for (int camera = 0; camera < activeCameras; camera++) {
+                    if (now >= pendingAt[camera]) {
+                        level[camera] = pendingLevel[camera];
+                        pendingAt[camera] = Long.MAX_VALUE;
+                    }
+                    rateKbps += LADDER_KBPS[level[camera] - 1] * Math.max(0.5, 1 + 0.15 * random.nextGaussian());
+                }
+                double sentKbit = rateKbps * TICK_MS / 1000;
+                offeredKbit += sentKbit;
+                backlogKbit = Math.max(0, backlogKbit + sentKbit - availableKbps * TICK_MS / 1000);
+                double bufferKbit = availableKbps * BUFFER_MS / 1000;
+                if (backlogKbit > bufferKbit) {
+                    droppedKbit += backlogKbit - bufferKbit;
+                    backlogKbit = bufferKbit;
+                }
+                double rttMs = BASE_RTT_MS + backlogKbit / availableKbps * 1000 + Math.abs(random.nextGaussian()) * 2;
+
+                if ((now + TICK_MS) % HEARTBEAT_MS == 0) {
+                    intervals.add(new double[]{offeredKbit / HEARTBEAT_MS * 1000, availableKbps});
+                    metrics.put("bandwidth", LINK_KBPS);
+                    metrics.put("packetLoss", offeredKbit == 0 ? 0 : droppedKbit / offeredKbit * 100);
+                    metrics.put("latency", rttMs);
+                    bitrateService.control(edgeNode, metrics);
+                    offeredKbit = 0;
+                    droppedKbit = 0;
+                }
+            }
+        }
+
+        List<double[]> phase(int phase) {
+            return intervals.subList(phase * HEARTBEATS_PER_PHASE, (phase + 1) * HEARTBEATS_PER_PHASE);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.aick.mmp.service.impl;
+
+import com.aick.mmp.model.CdnNode;
+import com.aick.mmp.model.EdgeNode;
+import com.aick.mmp.repository.StreamSessionRepository;
+import com.aick.mmp.service.AdaptiveBitrateService;
+import com.aick.mmp.service.CdnNodeService;
+import com.aick.mmp.service.StreamMigrationService;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class NetworkMonitorServiceImplTest {
+
+    /** 心跳间隔5秒，默认2分钟窗口内24个样本 */
+    private static final long HEARTBEAT_MS = 5000;
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+    private final CdnNodeService cdnNodeService = mock(CdnNodeService.class);
+    private final AdaptiveBitrateService adaptiveBitrateService = mock(AdaptiveBitrateService.class);
+    private final StreamMigrationService streamMigrationService = mock(StreamMigrationService.class);
+    private final NetworkMonitorServiceImpl service = new NetworkMonitorServiceImpl(
+            mock(StreamSessionRepository.class), cdnNodeService, adaptiveBitrateService, streamMigrationService,
+            clock::get);
+
+    private final CdnNode cdnNode = CdnNode.builder().id(1L).name("cdn-1").status(CdnNode.NodeStatus.ONLINE).build();
+
+    @Test
+    void cdnNodeDegradesOnceAndRecoversOnlyBelowTheRecoveryThreshold() {
+        feedCdn(30, 100);
+        // 单个尖峰不降级
+        feedCdn(1, 2000);
+        feedCdn(5, 100);
+        verify(cdnNodeService, never()).updateCdnNodeStatus(anyLong(), anyString(), anyString());
+
+        // 持续超过300ms降级，之后持续超标也只通知一次
+        feedCdn(50, 400);
+        verify(cdnNodeService, times(1)).updateCdnNodeStatus(eq(1L), eq("DEGRADED"), anyString());
+        verify(streamMigrationService, times(1)).drain(cdnNode);
+        cdnNode.setStatus(CdnNode.NodeStatus.DEGRADED);
+
+        // 低于降级阈值但高于恢复阈值（300*0.8），保持降级
+        feedCdn(50, 270);
+        verify(cdnNodeService, never()).updateCdnNodeStatus(eq(1L), eq("ONLINE"), anyString());
+
+        feedCdn(50, 100);
+        verify(cdnNodeService, times(1)).updateCdnNodeStatus(eq(1L), eq("ONLINE"), anyString());
+        verify(streamMigrationService, times(1)).cancel(1L);
+        verify(cdnNodeService, times(1)).updateCdnNodeStatus(eq(1L), eq("DEGRADED"), anyString());
+    }
+
+    @Test
+    void latencyStillRisingBlocksRecovery() {
+        cdnNode.setStatus(CdnNode.NodeStatus.DEGRADED);
+
+        // 重启后以数据库中的降级状态为初始状态；丢包率在两个阈值之间保持降级，期间时延开始上升
+        for (int i = 0; i < 30; i++) {
+            service.evaluateAndAdjustCdn(cdnNode, metrics(50 + 2 * i, 1.8));
+            clock.addAndGet(HEARTBEAT_MS);
+        }
+        // 丢包恢复，时延低于恢复阈值但仍在上升
+        for (int i = 30; i < 60; i++) {
+            service.evaluateAndAdjustCdn(cdnNode, metrics(50 + 2 * i, 0));
+            clock.addAndGet(HEARTBEAT_MS);
+        }
+        verify(cdnNodeService, never()).updateCdnNodeStatus(anyLong(), anyString(), anyString());
+
+        feedCdn(30, 100);
+        verify(cdnNodeService, times(1)).updateCdnNodeStatus(eq(1L), eq("ONLINE"), anyString());
+    }
+
+    @Test
+    void fewSamplesNeverDegrade() {
+        // 窗口内样本数不足min-samples
+        feedCdn(19, 1000);
+
+        verify(cdnNodeService, never()).updateCdnNodeStatus(anyLong(), anyString(), anyString());
+        assertThat(service.getNetworkStatistics(cdnNode)).containsEntry("degraded", false);
+    }
+
+    @Test
+    void edgeNodeDegradesOnSustainedPacketLossAndBitrateControlRunsEveryHeartbeat() {
+        EdgeNode edgeNode = EdgeNode.builder().id(7L).build();
+        for (int i = 0; i < 40; i++) {
+            service.evaluateAndAdjust(edgeNode, metrics(50, i < 20 ? 0.5 : 6.0));
+            clock.addAndGet(HEARTBEAT_MS);
+        }
+
+        verify(adaptiveBitrateService, times(40)).control(eq(edgeNode), any());
+        assertThat(service.getNetworkStatistics(edgeNode)).containsEntry("degraded", true);
+        verify(cdnNodeService, never()).updateCdnNodeStatus(anyLong(), anyString(), anyString());
+    }
+
+    private void feedCdn(int count, double latency) {
+        for (int i = 0; i < count; i++) {
+            service.evaluateAndAdjustCdn(cdnNode, metrics(latency, 0));
+            clock.addAndGet(HEARTBEAT_MS);
+        }
+    }
+
+    private static Map<String, Double> metrics(double latency, double packetLoss) {
+        Map<String, Double> metrics = new HashMap<>();
+        metrics.put("latency", latency);
+        metrics.put("packetLoss", packetLoss);
+        metrics.put("bandwidth", 10_000.0);
+        return metrics;
+    }
+}
@@ -0,0 +1,128 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.model.Camera;
+import com.aick.mmp.repository.CameraRepository;
+import com.aick.mmp.service.StreamingService;
+import com.aick.mmp.service.impl.CameraHealthServiceImpl;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 摄像头健康巡检基准：用内存中的摄像头表和模拟的探测延迟驱动{@link CameraHealthServiceImpl}，
+ * 统计首轮完整巡检耗时、单个边缘节点的最大并发探测数和数据库写入次数
+ * <p>
+ * 摄像头均匀分布在若干边缘节点上，探测延迟50~300ms；约2%的设备离线（探测等待3秒后失败），
+ * 约1%的设备每次探测结果都可能翻转，用于观察抖动设备的探测频率。
+ * 用法：CameraHealthProberBenchmark [摄像头数=20000] [边缘节点数=50] [运行秒数=90] [最大并发=256] [单节点并发=32]
+ */
+public class CameraHealthProberBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int cameras = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int edgeNodes = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 90;
+        int maxConcurrency = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+        int edgeNodeConcurrency = args.length > 4 ? Integer.parseInt(args[4]) : 32;
+
+        List<Camera> roster = new ArrayList<>(cameras);
+        for (long id = 1; id <= cameras; id++) {
+            roster.add(Camera.builder().id(id).name("camera-" + id).edgeNodeId(id % edgeNodes + 1)
+                    .protocol(Camera.Protocol.RTSP).status(Camera.CameraStatus.ONLINE).enabled(true).build());
+        }
+
+        AtomicLong writeStatements = new AtomicLong();
+        AtomicLong rowsWritten = new AtomicLong();
+        CameraRepository repository = (CameraRepository) Proxy.newProxyInstance(
+                CameraHealthProberBenchmark.class.getClassLoader(), new Class<?>[]{CameraRepository.class},
+                (proxy, method, arguments) -> {
+                    switch (method.getName()) {
+                        case "findByEnabledTrue":
+                            return roster;
+                        case "updateStatusIn":
+                        case "updateStatusAndActiveTimeIn":
+                            writeStatements.incrementAndGet();
+                            rowsWritten.addAndGet(((Collection<?>) arguments[0]).size());
+                            return ((Collection<?>) arguments[0]).size();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        Map<Long, Boolean> probed = new ConcurrentHashMap<>();
+        Map<Long, AtomicInteger> edgeInFlight = new ConcurrentHashMap<>();
+        AtomicInteger maxEdgeInFlight = new AtomicInteger();
+        AtomicLong flapperProbes = new AtomicLong();
+        AtomicLong stableProbes = new AtomicLong();
+        long started = System.currentTimeMillis();
+        AtomicLong firstSweepMillis = new AtomicLong();
+        StreamingService streamingService = (StreamingService) Proxy.newProxyInstance(
+                CameraHealthProberBenchmark.class.getClassLoader(), new Class<?>[]{StreamingService.class},
+                (proxy, method, arguments) -> {
+                    if (!method.getName().equals("testCameraConnection")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    Camera camera = (Camera) arguments[0];
+                    long id = camera.getId();
+                    AtomicInteger inFlight = edgeInFlight.computeIfAbsent(camera.getEdgeNodeId(), key -> new AtomicInteger());
+                    int current = inFlight.incrementAndGet();
+                    maxEdgeInFlight.accumulateAndGet(current, Math::max);
+                    try {
+                        boolean dead = id % 47 == 7;
+                        boolean flapper = id % 101 == 3;
+                        Thread.sleep(dead ? 3000 : 50 + ThreadLocalRandom.current().nextInt(250));
+                        if (flapper) {
+                            flapperProbes.incrementAndGet();
+                        } else if (!dead) {
+                            stableProbes.incrementAndGet();
+                        }
+                        return !dead && (!flapper || ThreadLocalRandom.current().nextBoolean());
+                    } finally {
+                        inFlight.decrementAndGet();
+                        if (probed.put(id, Boolean.TRUE) == null && probed.size() == cameras) {
+                            firstSweepMillis.set(System.currentTimeMillis() - started);
+                        }
+                    }
+                });
+
+        CameraHealthServiceImpl prober = new CameraHealthServiceImpl(repository, streamingService,
+                maxConcurrency, edgeNodeConcurrency, 30000);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        prober.start();
+        prober.refreshRoster();
+        scheduler.scheduleWithFixedDelay(prober::flushTransitions, 1, 1, TimeUnit.SECONDS);
+
+        for (int second = 10; second <= seconds; second += 10) {
+            Thread.sleep(10000);
+            System.out.printf("t=%ds probed=%d/%d writes=%d rows=%d %s%n", second, probed.size(), cameras,
+                    writeStatements.get(), rowsWritten.get(), prober.getStatistics());
+        }
+        scheduler.shutdownNow();
+        prober.shutdown();
+
+        int flappers = 0;
+        int stable = 0;
+        for (long id = 1; id <= cameras; id++) {
+            if (id % 101 == 3) {
+                flappers++;
+            } else if (id % 47 != 7) {
+                stable++;
+            }
+        }
+        System.out.printf("first full sweep: %s, max probes in flight per edge node: %d%n",
+                firstSweepMillis.get() == 0 ? "not finished" : firstSweepMillis.get() + " ms", maxEdgeInFlight.get());
+        System.out.printf("probes per camera: flapping %.2f, stable %.2f%n",
+                (double) flapperProbes.get() / flappers, (double) stableProbes.get() / stable);
+        System.out.printf("database: %d UPDATE statements, %d rows%n", writeStatements.get(), rowsWritten.get());
+    }
+}
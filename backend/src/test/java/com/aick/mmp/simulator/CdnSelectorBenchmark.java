@@ -0,0 +1,90 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.cdn.CdnNodeSelector;
+import com.aick.mmp.model.CdnNode;
+import com.aick.mmp.repository.CdnNodeRepository;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CDN节点选择基准
+ * <p>
+ * 模拟观众在心跳之间持续到达：一个区域50个节点，每个容量1000，每5秒心跳上报一次实际负载，
+ * 每个周期到达2000个观众、约20%的观众离开。对比原实现（每个观众都选上次心跳时负载最低的节点）和
+ * {@link CdnNodeSelector}（两次随机选择加本地负载计数），统计各周期末节点负载的最大值和超出容量的观众数。
+ * 单次选择的耗时和分配见{@link CdnSelectorJmh}。
+ * 用法：CdnSelectorBenchmark
+ */
+public class CdnSelectorBenchmark {
+
+    private static final int HERD_NODES = 50;
+    private static final int HERD_CAPACITY = 1000;
+    private static final int ARRIVALS_PER_INTERVAL = 2000;
+    private static final int INTERVALS = 60;
+    private static final long HEARTBEAT_MS = 5000;
+
+    public static void main(String[] args) {
+        herding();
+    }
+
+    private static void herding() {
+        System.out.println("strategy       peak node load  peak/capacity  viewers over capacity");
+        for (boolean leastLoaded : new boolean[]{true, false}) {
+            Random random = new Random(3);
+            AtomicLong now = new AtomicLong(1_700_000_000_000L);
+            CdnNodeSelector selector = new CdnNodeSelector(emptyRepository(), now::get);
+            int[] actual = new int[HERD_NODES];
+            int[] reported = new int[HERD_NODES];
+            for (int i = 0; i < HERD_NODES; i++) {
+                actual[i] = 300 + random.nextInt(200);
+            }
+            int peak = 0;
+            long over = 0;
+            for (int interval = 0; interval < INTERVALS; interval++) {
+                // 心跳：节点上报实际负载
+                for (int i = 0; i < HERD_NODES; i++) {
+                    reported[i] = actual[i];
+                    selector.update(node(i, "region-0", HERD_CAPACITY, actual[i], now.get()));
+                }
+                int leastLoadedNode = 0;
+                for (int i = 1; i < HERD_NODES; i++) {
+                    if (reported[i] < reported[leastLoadedNode]) {
+                        leastLoadedNode = i;
+                    }
+                }
+                for (int viewer = 0; viewer < ARRIVALS_PER_INTERVAL; viewer++) {
+                    int chosen = leastLoaded ? leastLoadedNode : (int) selector.select("region-0");
+                    actual[chosen]++;
+                    over += actual[chosen] > HERD_CAPACITY ? 1 : 0;
+                }
+                for (int i = 0; i < HERD_NODES; i++) {
+                    peak = Math.max(peak, actual[i]);
+                    // 约20%的观众在本周期离开
+                    actual[i] -= (int) Math.round(actual[i] * (0.15 + 0.1 * random.nextDouble()));
+                }
+                now.addAndGet(HEARTBEAT_MS);
+            }
+            System.out.printf("%-13s  %14d  %12.0f%%  %21d%n", leastLoaded ? "least-loaded" : "power-of-two",
+                    peak, peak * 100.0 / HERD_CAPACITY, over);
+        }
+    }
+
+    private static CdnNode node(long id, String region, int capacity, int load, long heartbeat) {
+        return CdnNode.builder().id(id).name("cdn-" + id).ipAddress("10.0.0." + id % 250).port(8080)
+                .status(CdnNode.NodeStatus.ONLINE).location(region).capacity(capacity).currentLoad(load)
+                .lastHeartbeat(LocalDateTime.ofInstant(Instant.ofEpochMilli(heartbeat), ZoneId.systemDefault()))
+                .build();
+    }
+
+    private static CdnNodeRepository emptyRepository() {
+        return (CdnNodeRepository) Proxy.newProxyInstance(CdnSelectorBenchmark.class.getClassLoader(),
+                new Class<?>[]{CdnNodeRepository.class}, (proxy, method, arguments) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,113 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.cdn.CdnNodeSelector;
+import com.aick.mmp.model.CdnNode;
+import com.aick.mmp.repository.CdnNodeRepository;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CdnNodeSelector}单次选择的JMH基准：区域内选择、未知区域的全局回退和一次选3个节点
+ * <p>
+ * 用-prof gc运行时gc.alloc.rate.norm即每次选择分配的字节数，选择路径应不分配对象。
+ * 用法：CdnSelectorJmh [JMH参数]，如 -prof gc；不带参数时运行本类的全部基准并附带gc分析
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CdnSelectorJmh {
+
+    @Param({"2000"})
+    private int nodes;
+
+    @Param({"20"})
+    private int regions;
+
+    private CdnNodeSelector selector;
+    private String[] names;
+    private final long[] out = new long[3];
+    private int next;
+
+    @Setup
+    public void setup() {
+        long now = 1_700_000_000_000L;
+        selector = new CdnNodeSelector(emptyRepository(), () -> now);
+        for (int i = 0; i < nodes; i++) {
+            // 容量足够大，测量期间不会因为计入的负载而变满
+            selector.update(node(i, "region-" + i % regions, 1_000_000_000, 0, now));
+        }
+        names = new String[regions];
+        for (int i = 0; i < regions; i++) {
+            names[i] = "region-" + i;
+        }
+    }
+
+    @Benchmark
+    public long region() {
+        return selector.select(nextRegion());
+    }
+
+    @Benchmark
+    public long globalFallback() {
+        return selector.select("unknown");
+    }
+
+    @Benchmark
+    public void regionThreeNodes(Blackhole blackhole) {
+        blackhole.consume(selector.select(nextRegion(), 3, out));
+        blackhole.consume(out);
+    }
+
+    private String nextRegion() {
+        String region = names[next];
+        next = next + 1 == names.length ? 0 : next + 1;
+        return region;
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        if (args.length > 0) {
+            Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().include(CdnSelectorJmh.class.getSimpleName()).addProfiler("gc").build())
+                .run();
+    }
+
+    private static CdnNode node(long id, String region, int capacity, int load, long heartbeat) {
+        return CdnNode.builder().id(id).name("cdn-" + id).ipAddress("10.0.0." + id % 250).port(8080)
+                .status(CdnNode.NodeStatus.ONLINE).location(region).capacity(capacity).currentLoad(load)
+                .lastHeartbeat(LocalDateTime.ofInstant(Instant.ofEpochMilli(heartbeat), ZoneId.systemDefault()))
+                .build();
+    }
+
+    private static CdnNodeRepository emptyRepository() {
+        return (CdnNodeRepository) Proxy.newProxyInstance(CdnSelectorJmh.class.getClassLoader(),
+                new Class<?>[]{CdnNodeRepository.class}, (proxy, method, arguments) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,175 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.edge.EdgeCommandClient;
+import com.aick.mmp.edge.EdgeCommandCodec;
+import com.aick.mmp.edge.EdgeCommandFrame;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 命令通道基准：每个命令新建连接与{@link EdgeCommandClient}多路复用长连接的对比
+ * <p>
+ * {@link LocalEdgeAgent}代表全部节点，每个新连接的握手耗时handshake（模拟TCP和TLS握手的往返），
+ * 每个命令的响应耗时rtt（0.5~1.5倍）。每个节点发送若干个config/stream/ping命令。
+ * 逐个建连：64个线程的线程池，每个命令建立连接、hello、发送命令、关闭连接；
+ * 多路复用：2个IO线程，全部命令同时提交，第一轮包含建立连接，第二轮在已建立的连接上发送。
+ * 用法：EdgeCommandBenchmark [节点数=1000] [每个节点的命令数=5] [handshake毫秒=60] [rtt毫秒=30]
+ */
+public class EdgeCommandBenchmark {
+
+    private static final String[] COMMANDS = {"config", "stream", "ping"};
+    private static final int BLOCKING_THREADS = 64;
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int perNode = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long handshakeMs = args.length > 2 ? Long.parseLong(args[2]) : 60;
+        long rttMs = args.length > 3 ? Long.parseLong(args[3]) : 30;
+
+        try (LocalEdgeAgent agent = new LocalEdgeAgent(0, handshakeMs, rttMs)) {
+            agent.start();
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", agent.getPort());
+            System.out.printf("%d edge nodes x %d commands, handshake %d ms, rtt %d ms%n", nodes, perNode,
+                    handshakeMs, rttMs);
+            System.out.println("strategy                 wall time  commands/s  p50 latency  p99 latency  "
+                    + "new connections  failed  threads");
+            perCommand(agent, address, nodes, perNode);
+            multiplexed(agent, address, nodes, perNode);
+        }
+    }
+
+    private static void perCommand(LocalEdgeAgent agent, InetSocketAddress address, int nodes, int perNode)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(BLOCKING_THREADS);
+        long[] latencies = new long[nodes * perNode];
+        AtomicInteger failed = new AtomicInteger();
+        long accepted = agent.getAccepted();
+        long started = System.nanoTime();
+        for (int node = 0; node < nodes; node++) {
+            for (int i = 0; i < perNode; i++) {
+                int index = node * perNode + i;
+                String uuid = "edge-" + node;
+                String command = COMMANDS[i % COMMANDS.length];
+                executor.execute(() -> {
+                    long commandStarted = System.nanoTime();
+                    try {
+                        oneShot(address, uuid, command, body(command, index));
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                    }
+                    latencies[index] = System.nanoTime() - commandStarted;
+                });
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        report("connection per command", System.nanoTime() - started, latencies,
+                agent.getAccepted() - accepted, failed.get(), BLOCKING_THREADS);
+    }
+
+    private static void multiplexed(LocalEdgeAgent agent, InetSocketAddress address, int nodes, int perNode)
+            throws Exception {
+        EdgeCommandClient client = new EdgeCommandClient(2, 10_000, 30_000, 15_000, 256);
+        client.start();
+        try {
+            for (String round : new String[]{"multiplexed (cold)", "multiplexed (warm)"}) {
+                long[] latencies = new long[nodes * perNode];
+                AtomicInteger failed = new AtomicInteger();
+                List<CompletableFuture<String>> futures = new ArrayList<>(latencies.length);
+                long accepted = agent.getAccepted();
+                long started = System.nanoTime();
+                for (int i = 0; i < perNode; i++) {
+                    for (int node = 0; node < nodes; node++) {
+                        int index = node * perNode + i;
+                        String command = COMMANDS[i % COMMANDS.length];
+                        long submitted = System.nanoTime();
+                        futures.add(client.send((long) node, "edge-" + node, address, command,
+                                body(command, index)).whenComplete((value, error) -> {
+                            latencies[index] = System.nanoTime() - submitted;
+                            if (error != null) {
+                                failed.incrementAndGet();
+                            }
+                        }));
+                    }
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((v, e) -> null).join();
+                report(round, System.nanoTime() - started, latencies, agent.getAccepted() - accepted, failed.get(),
+                        2);
+            }
+            System.out.printf("connections held: %d, agent sees %d nodes%n", client.getConnectionCount(),
+                    agent.getConnectedNodes());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * 每个命令单独建立连接：连接、hello、命令、关闭
+     */
+    private static void oneShot(InetSocketAddress address, String uuid, String command, byte[] body)
+            throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(address, 10_000);
+            socket.setSoTimeout(30_000);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            call(in, out, EdgeCommandFrame.request(1, "hello",
+                    ("{\"uuid\":\"" + uuid + "\"}").getBytes(StandardCharsets.UTF_8)));
+            call(in, out, EdgeCommandFrame.request(2, command, body));
+        }
+    }
+
+    private static void call(DataInputStream in, OutputStream out, EdgeCommandFrame request) throws IOException {
+        ByteBuffer encoded = EdgeCommandCodec.encode(request);
+        out.write(encoded.array(), 0, encoded.limit());
+        out.flush();
+        byte[] header = new byte[EdgeCommandCodec.HEADER_BYTES];
+        in.readFully(header);
+        int length = ByteBuffer.wrap(header).getInt(8);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        if (payload[0] != 0) {
+            throw new IOException("command " + request.getCommand() + " failed");
+        }
+    }
+
+    private static byte[] body(String command, int index) {
+        String json;
+        switch (command) {
+            case "config":
+                json = "{\"bitrate\":" + (1000 + index % 8 * 1000) + ",\"gop\":50}";
+                break;
+            case "stream":
+                json = "{\"cameraId\":" + index + ",\"action\":\"start\"}";
+                break;
+            default:
+                json = "{}";
+                break;
+        }
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void report(String name, long wallNanos, long[] latencies, long connections, int failed,
+                               int threads) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-23s  %8.2fs  %10.0f  %9.1fms  %9.1fms  %15d  %6d  %7d%n", name, wallNanos / 1e9,
+                latencies.length / (wallNanos / 1e9), sorted[sorted.length / 2] / 1e6,
+                sorted[(int) (sorted.length * 0.99)] / 1e6, connections, failed, threads);
+    }
+}
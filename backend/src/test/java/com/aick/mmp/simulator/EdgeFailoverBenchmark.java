@@ -0,0 +1,318 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.model.Camera;
+import com.aick.mmp.model.EdgeNode;
+import com.aick.mmp.model.StreamSession;
+import com.aick.mmp.placement.EdgeCapacity;
+import com.aick.mmp.placement.EdgePlacementPlanner;
+import com.aick.mmp.repository.CameraRepository;
+import com.aick.mmp.repository.EdgeNodeRepository;
+import com.aick.mmp.service.EdgePlacementService;
+import com.aick.mmp.service.StreamingService;
+import com.aick.mmp.service.impl.EdgeFailoverServiceImpl;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 边缘节点失联转移基准：一个节点失联后其上摄像头的流全部恢复所需的时间
+ * <p>
+ * 失联节点上有若干个正在推流的摄像头，同一位置有若干个存活节点，另一个位置的节点不应接收摄像头。
+ * 在目标节点上重启一个摄像头的流需要300~1500 ms（连接摄像头、协商、等待关键帧），
+ * 同一节点同时建立的流越多越慢（每多一个并发慢25%），并发超过8个时每次有一半的概率被节点拒绝，需要重试。
+ * 对比：{@link EdgeFailoverServiceImpl}的默认限流、不限流（全部同时重启）、逐个顺序重启（按单个耗时之和估算，不实际运行）。
+ * 时间按scale缩短运行，报告中换算回实际时间。
+ * 用法：EdgeFailoverBenchmark [摄像头数=200] [存活节点数=5] [scale=0.2]
+ */
+public class EdgeFailoverBenchmark {
+
+    private static final long DEAD_NODE = 1;
+    private static final String LOCATION = "site-a";
+    private static final int EXISTING_PER_NODE = 40;
+    private static final int OVERLOAD_CONCURRENCY = 8;
+
+    public static void main(String[] args) throws Exception {
+        int cameraCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int survivors = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        double scale = args.length > 2 ? Double.parseDouble(args[2]) : 0.2;
+
+        Random random = new Random(11);
+        long[] setupMillis = new long[cameraCount];
+        long sequential = 0;
+        for (int i = 0; i < cameraCount; i++) {
+            setupMillis[i] = 300 + random.nextInt(1201);
+            sequential += setupMillis[i];
+        }
+        System.out.printf("%d streaming cameras on a dead edge node, %d surviving nodes in the same location, "
+                + "1 node in another location%n", cameraCount, survivors);
+        System.out.println("strategy              recovery  target met  peak restarts/node  rejected  failed  "
+                + "moved  other location");
+        run("failover (16 / 4)", cameraCount, survivors, setupMillis, scale, 16, 4);
+        run("unthrottled", cameraCount, survivors, setupMillis, scale, cameraCount, cameraCount);
+        System.out.printf("%-20s  %7.1fs  %10s  %18d  %8s  %6s  %5s  %14s%n", "sequential", sequential / 1000.0,
+                sequential <= 30_000 ? "yes" : "no", 1, "-", "-", "-", "-");
+    }
+
+    private static void run(String name, int cameraCount, int survivors, long[] setupMillis, double scale,
+                            int parallelism, int maxConcurrentPerNode) throws InterruptedException {
+        Cluster cluster = new Cluster(cameraCount, survivors, setupMillis, scale);
+        EdgeFailoverServiceImpl service = new EdgeFailoverServiceImpl(cluster.cameraRepository(),
+                cluster.edgeNodeRepository(), cluster.placementService(), cluster.streamingService(), parallelism,
+                maxConcurrentPerNode);
+        service.start();
+        try {
+            service.failover(Collections.singleton(DEAD_NODE));
+            Map<String, Object> recovery = awaitRecovery(service, 1);
+            long recoveryMillis = (long) (((Number) recovery.get("recoveryMillis")).longValue() / scale);
+            System.out.printf("%-20s  %7.1fs  %10s  %18d  %8d  %6d  %5d  %14d%n", name, recoveryMillis / 1000.0,
+                    recoveryMillis <= 30_000 ? "yes" : "no", cluster.peakConcurrency.get(), cluster.rejected.get(),
+                    ((Number) recovery.get("failed")).intValue(), ((Number) recovery.get("moved")).intValue(),
+                    cluster.otherLocation());
+
+            // 原节点恢复后迁回
+            cluster.status.put(DEAD_NODE, EdgeNode.NodeStatus.ONLINE);
+            cluster.peakConcurrency.set(0);
+            int failedBack = service.failback(DEAD_NODE);
+            Map<String, Object> failback = awaitRecovery(service, 2);
+            System.out.printf("  failback: %d cameras back in %.1fs, %d still away, peak %d restarts on the node%n",
+                    failedBack, ((Number) failback.get("recoveryMillis")).longValue() / scale / 1000.0,
+                    cluster.away(), cluster.peakConcurrency.get());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * 等待第completed次恢复完成
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> awaitRecovery(EdgeFailoverServiceImpl service, int completed)
+            throws InterruptedException {
+        while (true) {
+            Map<String, Object> statistics = service.getStatistics();
+            List<Map<String, Object>> recent = (List<Map<String, Object>>) statistics.get("recent");
+            if (((List<?>) statistics.get("active")).isEmpty() && recent.size() >= completed) {
+                return recent.get(0);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * 内存中的摄像头、节点状态和流重启模型
+     */
+    private static final class Cluster {
+        private final Map<Long, Camera> cameras = new ConcurrentHashMap<>();
+        private final Map<Long, EdgeNode.NodeStatus> status = new ConcurrentHashMap<>();
+        private final Map<Long, String> locations = new ConcurrentHashMap<>();
+        private final Map<Long, AtomicInteger> concurrency = new ConcurrentHashMap<>();
+        private final AtomicInteger peakConcurrency = new AtomicInteger();
+        private final AtomicLong rejected = new AtomicLong();
+        private final long[] setupMillis;
+        private final double scale;
+        private final long otherNode;
+
+        Cluster(int cameraCount, int survivors, long[] setupMillis, double scale) {
+            this.setupMillis = setupMillis;
+            this.scale = scale;
+            status.put(DEAD_NODE, EdgeNode.NodeStatus.OFFLINE);
+            locations.put(DEAD_NODE, LOCATION);
+            for (long id = 2; id < 2 + survivors; id++) {
+                status.put(id, EdgeNode.NodeStatus.ONLINE);
+                locations.put(id, LOCATION);
+            }
+            otherNode = 2 + survivors;
+            status.put(otherNode, EdgeNode.NodeStatus.ONLINE);
+            locations.put(otherNode, "site-b");
+            Random random = new Random(5);
+            for (long id = 0; id < cameraCount; id++) {
+                cameras.put(id, Camera.builder().id(id).name("camera-" + id).location(LOCATION).edgeNodeId(DEAD_NODE)
+                        .bitrate(1000 + random.nextInt(8) * 1000).enabled(true).build());
+            }
+        }
+
+        int otherLocation() {
+            return (int) cameras.values().stream().filter(camera -> camera.getEdgeNodeId() == otherNode).count();
+        }
+
+        int away() {
+            return (int) cameras.values().stream().filter(camera -> camera.getEdgeNodeId() != DEAD_NODE).count();
+        }
+
+        CameraRepository cameraRepository() {
+            return (CameraRepository) Proxy.newProxyInstance(EdgeFailoverBenchmark.class.getClassLoader(),
+                    new Class<?>[]{CameraRepository.class}, (proxy, method, arguments) -> {
+                        switch (method.getName()) {
+                            case "findByEdgeNodeIdAndEnabledTrue":
+                                return copies(camera -> camera.getEdgeNodeId().equals(arguments[0]));
+                            case "findByFailoverFromEdgeNodeId":
+                                return copies(camera -> arguments[0].equals(camera.getFailoverFromEdgeNodeId()));
+                            case "countByFailoverFromEdgeNodeId":
+                                return (long) copies(camera -> arguments[0].equals(camera.getFailoverFromEdgeNodeId())).size();
+                            case "failoverEdgeNodeIn":
+                                return update((Collection<?>) arguments[0], camera -> {
+                                    if (!camera.getEdgeNodeId().equals(arguments[1])) {
+                                        return false;
+                                    }
+                                    if (camera.getFailoverFromEdgeNodeId() == null) {
+                                        camera.setFailoverFromEdgeNodeId((Long) arguments[1]);
+                                    }
+                                    camera.setEdgeNodeId((Long) arguments[2]);
+                                    return true;
+                                });
+                            case "findIdsOnEdgeNode": {
+                                List<Long> ids = new ArrayList<>();
+                                for (Object id : (Collection<?>) arguments[0]) {
+                                    Camera camera = cameras.get((Long) id);
+                                    if (camera != null && arguments[1].equals(camera.getEdgeNodeId())) {
+                                        ids.add((Long) id);
+                                    }
+                                }
+                                return ids;
+                            }
+                            case "countByEdgeNodeId":
+                                return (long) copies(camera -> arguments[0].equals(camera.getEdgeNodeId())).size();
+                            case "failbackEdgeNodeIn":
+                                return update((Collection<?>) arguments[0], camera -> {
+                                    if (!arguments[1].equals(camera.getFailoverFromEdgeNodeId())) {
+                                        return false;
+                                    }
+                                    camera.setEdgeNodeId(camera.getFailoverFromEdgeNodeId());
+                                    camera.setFailoverFromEdgeNodeId(null);
+                                    return true;
+                                });
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+
+        EdgeNodeRepository edgeNodeRepository() {
+            return (EdgeNodeRepository) Proxy.newProxyInstance(EdgeFailoverBenchmark.class.getClassLoader(),
+                    new Class<?>[]{EdgeNodeRepository.class}, (proxy, method, arguments) -> {
+                        if ("updateCameraCount".equals(method.getName())) {
+                            return 1;
+                        }
+                        if (!"findById".equals(method.getName())) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        Long id = (Long) arguments[0];
+                        return status.containsKey(id) ? Optional.of(EdgeNode.builder().id(id).name("edge-" + id)
+                                .location(locations.get(id)).status(status.get(id)).build()) : Optional.empty();
+                    });
+        }
+
+        /**
+         * 按各在线节点当前的摄像头数构造容量，使用与服务相同的放置计算
+         */
+        EdgePlacementService placementService() {
+            return (EdgePlacementService) Proxy.newProxyInstance(EdgeFailoverBenchmark.class.getClassLoader(),
+                    new Class<?>[]{EdgePlacementService.class}, (proxy, method, arguments) -> {
+                        if (!"plan".equals(method.getName())) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        List<EdgeCapacity> capacities = new ArrayList<>();
+                        status.forEach((id, nodeStatus) -> {
+                            if (nodeStatus == EdgeNode.NodeStatus.ONLINE) {
+                                int count = EXISTING_PER_NODE + (int) cameras.values().stream()
+                                        .filter(camera -> camera.getEdgeNodeId().equals(id)).count();
+                                capacities.add(new EdgeCapacity(id, locations.get(id), 128, count, 80,
+                                        count * 0.5, 0.5, 900_000, count * 4500.0));
+                            }
+                        });
+                        List<Camera> planned = new ArrayList<>();
+                        for (Object camera : (Collection<?>) arguments[0]) {
+                            planned.add((Camera) camera);
+                        }
+                        return new EdgePlacementPlanner(4000)
+                                .plan(capacities, planned, (Boolean) arguments[1])
+                                .getAssignments();
+                    });
+        }
+
+        StreamingService streamingService() {
+            return (StreamingService) Proxy.newProxyInstance(EdgeFailoverBenchmark.class.getClassLoader(),
+                    new Class<?>[]{StreamingService.class}, (proxy, method, arguments) -> {
+                        switch (method.getName()) {
+                            case "getActiveSessionsByEdgeNode": {
+                                List<StreamSession> sessions = new ArrayList<>();
+                                for (Camera camera : cameras.values()) {
+                                    if (camera.getEdgeNodeId().equals(arguments[0])) {
+                                        sessions.add(StreamSession.builder().sessionId("session-" + camera.getId())
+                                                .cameraId(camera.getId()).edgeNodeId(camera.getEdgeNodeId())
+                                                .status(StreamSession.StreamStatus.STREAMING).build());
+                                    }
+                                }
+                                return sessions;
+                            }
+                            case "restartStreams":
+                                return restart((Camera) arguments[0]);
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+
+        private int restart(Camera camera) {
+            AtomicInteger counter = concurrency.computeIfAbsent(camera.getEdgeNodeId(), key -> new AtomicInteger());
+            int concurrent = counter.incrementAndGet();
+            peakConcurrency.accumulateAndGet(concurrent, Math::max);
+            try {
+                long millis = (long) (setupMillis[camera.getId().intValue()] * (1 + 0.25 * (concurrent - 1)));
+                if (concurrent > OVERLOAD_CONCURRENCY && ThreadLocalRandom.current().nextBoolean()) {
+                    // 节点过载，等到超时后拒绝
+                    sleep(millis);
+                    rejected.incrementAndGet();
+                    throw new IllegalStateException("edge node " + camera.getEdgeNodeId() + " is overloaded");
+                }
+                sleep(millis);
+                return 1;
+            } finally {
+                counter.decrementAndGet();
+            }
+        }
+
+        private void sleep(long millis) {
+            try {
+                Thread.sleep((long) (millis * scale));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private List<Camera> copies(Predicate<Camera> filter) {
+            List<Camera> result = new ArrayList<>();
+            for (Camera camera : cameras.values()) {
+                if (filter.test(camera)) {
+                    result.add(Camera.builder().id(camera.getId()).name(camera.getName())
+                            .location(camera.getLocation()).bitrate(camera.getBitrate())
+                            .edgeNodeId(camera.getEdgeNodeId()).failoverFromEdgeNodeId(camera.getFailoverFromEdgeNodeId())
+                            .enabled(true).build());
+                }
+            }
+            return result;
+        }
+
+        private int update(Collection<?> ids, Predicate<Camera> change) {
+            int updated = 0;
+            for (Object id : ids) {
+                Camera camera = cameras.get((Long) id);
+                if (camera != null && change.test(camera)) {
+                    updated++;
+                }
+            }
+            return updated;
+        }
+    }
+}
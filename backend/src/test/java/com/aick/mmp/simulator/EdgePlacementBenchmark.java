@@ -0,0 +1,230 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.model.Camera;
+import com.aick.mmp.placement.EdgeCapacity;
+import com.aick.mmp.placement.EdgePlacementPlanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 边缘节点放置基准：对比手动指定节点与{@link EdgePlacementPlanner}的放置结果
+ * <p>
+ * 每个位置有若干个硬件不同的边缘节点：最大摄像头数32/64/128，每个摄像头实际消耗1~3%的CPU，
+ * 上行链路100/300/1000 Mbps，已有的摄像头占用不超过40%的实际容量。新摄像头码率1~8 Mbps，各位置的数量不均匀。
+ * 手动放置模拟两种常见做法：同一位置中第一个还有空位的节点（只看摄像头数），以及同一位置中随机一个节点；
+ * 空位用完后手动放置放到摄像头最少的节点上。放置计算只能看到心跳上报的CPU使用率和链路容量，
+ * 每个摄像头的CPU开销按节点当前使用率估算。
+ * 评估按实际开销计算各节点的CPU和带宽利用率，利用率超过100%的节点按超出比例丢帧。
+ * 用法：EdgePlacementBenchmark [位置数=20] [新摄像头数=2000] [每个位置平均节点数=8]
+ */
+public class EdgePlacementBenchmark {
+
+    private static final int[] MAX_CAMERAS = {32, 64, 128};
+    private static final int[] LINK_MBPS = {100, 300, 1000};
+    private static final double BANDWIDTH_HEADROOM = 0.9;
+    private static final double MAX_CPU_USAGE = 80;
+
+    public static void main(String[] args) {
+        int locations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int newCameras = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int nodesPerLocation = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        Random random = new Random(17);
+        List<Node> nodes = new ArrayList<>();
+        for (int location = 0; location < locations; location++) {
+            int count = Math.max(1, nodesPerLocation / 2 + random.nextInt(nodesPerLocation + 1));
+            for (int i = 0; i < count; i++) {
+                Node node = new Node(nodes.size(), "site-" + location);
+                node.maxCameras = MAX_CAMERAS[random.nextInt(MAX_CAMERAS.length)];
+                node.cpuPerCamera = 1 + random.nextDouble() * 2;
+                node.baseCpu = 5 + random.nextDouble() * 5;
+                node.linkKbps = LINK_MBPS[random.nextInt(LINK_MBPS.length)] * 1000.0;
+                // 已有的摄像头不超过节点实际能承载数量的40%
+                double sustainable = Math.min(node.maxCameras, Math.min((100 - node.baseCpu) / node.cpuPerCamera,
+                        node.linkKbps / 4500));
+                int existing = (int) (sustainable * random.nextDouble() * 0.4);
+                for (int c = 0; c < existing; c++) {
+                    node.add(bitrate(random));
+                }
+                nodes.add(node);
+            }
+        }
+        // 各位置的新摄像头数按权重分配，部分位置明显多于其他位置
+        double[] weights = new double[locations];
+        double totalWeight = 0;
+        for (int i = 0; i < locations; i++) {
+            weights[i] = Math.pow(random.nextDouble(), 2) + 0.1;
+            totalWeight += weights[i];
+        }
+        List<Camera> cameras = new ArrayList<>(newCameras);
+        for (long id = 0; id < newCameras; id++) {
+            double pick = random.nextDouble() * totalWeight;
+            int location = 0;
+            while (location < locations - 1 && (pick -= weights[location]) > 0) {
+                location++;
+            }
+            cameras.add(Camera.builder().id(id).name("camera-" + id).location("site-" + location)
+                    .bitrate((int) bitrate(random)).build());
+        }
+
+        System.out.printf("%d edge nodes in %d locations, %d existing cameras, %d new cameras%n", nodes.size(),
+                locations, nodes.stream().mapToInt(node -> node.cameras).sum(), newCameras);
+        System.out.println("strategy         overloaded nodes  cameras on overloaded  dropped frames  "
+                + "max cpu  max uplink  p95 bottleneck  remote  unplaced");
+        manual("first free slot", nodes, cameras, null);
+        manual("random in site", nodes, cameras, new Random(23));
+        planned(nodes, cameras);
+    }
+
+    private static void manual(String name, List<Node> template, List<Camera> cameras, Random random) {
+        List<Node> nodes = copy(template);
+        for (Camera camera : cameras) {
+            List<Node> site = new ArrayList<>();
+            for (Node node : nodes) {
+                if (node.location.equals(camera.getLocation())) {
+                    site.add(node);
+                }
+            }
+            Node chosen = null;
+            if (random != null) {
+                chosen = site.get(random.nextInt(site.size()));
+            } else {
+                for (Node node : site) {
+                    if (node.cameras < node.maxCameras) {
+                        chosen = node;
+                        break;
+                    }
+                }
+            }
+            if (chosen == null || chosen.cameras >= chosen.maxCameras) {
+                for (Node node : site) {
+                    if (chosen == null || node.cameras < chosen.cameras) {
+                        chosen = node;
+                    }
+                }
+            }
+            chosen.add(camera.getBitrate());
+        }
+        report(name, nodes, 0, 0, 0);
+    }
+
+    private static void planned(List<Node> template, List<Camera> cameras) {
+        List<Node> nodes = copy(template);
+        List<EdgeCapacity> capacities = new ArrayList<>();
+        for (Node node : nodes) {
+            // 只使用心跳上报的CPU使用率估算每个摄像头的开销
+            double cpu = node.cpu();
+            double perCamera = node.cameras > 0 ? cpu / node.cameras : 2.0;
+            capacities.add(new EdgeCapacity(node.id, node.location, node.maxCameras, node.cameras, MAX_CPU_USAGE, cpu,
+                    perCamera, node.linkKbps * BANDWIDTH_HEADROOM, node.bandwidthKbps));
+        }
+        EdgePlacementPlanner planner = new EdgePlacementPlanner(4000);
+        // 预热后计时
+        for (int i = 0; i < 20; i++) {
+            planner.plan(copyCapacities(capacities), cameras);
+        }
+        long started = System.nanoTime();
+        EdgePlacementPlanner.Result result = planner.plan(capacities, cameras);
+        long planNanos = System.nanoTime() - started;
+        Camera[] byId = cameras.toArray(new Camera[0]);
+        for (Map.Entry<Long, Long> assignment : result.getAssignments().entrySet()) {
+            nodes.get(assignment.getValue().intValue()).add(byId[assignment.getKey().intValue()].getBitrate());
+        }
+        report("placement", nodes, result.getRemote(), result.getUnplaced(), planNanos);
+    }
+
+    private static void report(String name, List<Node> nodes, int remote, int unplaced, long planNanos) {
+        int overloaded = 0;
+        long camerasOnOverloaded = 0;
+        long cameras = 0;
+        double droppedFrames = 0;
+        double maxCpu = 0;
+        double maxUplink = 0;
+        double[] bottlenecks = new double[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            double cpu = node.cpu() / 100;
+            double uplink = node.bandwidthKbps / node.linkKbps;
+            double bottleneck = Math.max(cpu, uplink);
+            bottlenecks[i] = bottleneck;
+            maxCpu = Math.max(maxCpu, cpu);
+            maxUplink = Math.max(maxUplink, uplink);
+            cameras += node.cameras;
+            if (bottleneck > 1) {
+                overloaded++;
+                camerasOnOverloaded += node.cameras;
+                // 资源超出的部分对应的帧被丢弃
+                droppedFrames += node.cameras * (1 - 1 / bottleneck);
+            }
+        }
+        Arrays.sort(bottlenecks);
+        System.out.printf("%-15s  %16d  %20.1f%%  %13.2f%%  %6.0f%%  %9.0f%%  %13.0f%%  %6d  %8d%n", name, overloaded,
+                camerasOnOverloaded * 100.0 / cameras, droppedFrames * 100 / cameras, maxCpu * 100, maxUplink * 100,
+                bottlenecks[(int) (bottlenecks.length * 0.95)] * 100, remote, unplaced);
+        if (planNanos > 0) {
+            System.out.printf("placement computed in %.2f ms%n", planNanos / 1e6);
+        }
+    }
+
+    private static double bitrate(Random random) {
+        return 1000 + random.nextInt(8) * 1000;
+    }
+
+    private static List<Node> copy(List<Node> nodes) {
+        List<Node> copy = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            Node clone = new Node(node.id, node.location);
+            clone.maxCameras = node.maxCameras;
+            clone.cpuPerCamera = node.cpuPerCamera;
+            clone.baseCpu = node.baseCpu;
+            clone.linkKbps = node.linkKbps;
+            clone.cameras = node.cameras;
+            clone.bandwidthKbps = node.bandwidthKbps;
+            copy.add(clone);
+        }
+        return copy;
+    }
+
+    private static List<EdgeCapacity> copyCapacities(List<EdgeCapacity> capacities) {
+        List<EdgeCapacity> copy = new ArrayList<>(capacities.size());
+        for (EdgeCapacity capacity : capacities) {
+            copy.add(new EdgeCapacity(capacity.getId(), capacity.getLocation(), capacity.getMaxCameras(),
+                    capacity.getCameras(), MAX_CPU_USAGE, capacity.getCpu(),
+                    capacity.getCameras() > 0 ? capacity.getCpu() / capacity.getCameras() : 2.0,
+                    capacity.getBandwidthLimitKbps(), capacity.getBandwidthKbps()));
+        }
+        return copy;
+    }
+
+    /**
+     * 节点的实际资源消耗
+     */
+    private static final class Node {
+        private final int id;
+        private final String location;
+        private int maxCameras;
+        private double cpuPerCamera;
+        private double baseCpu;
+        private double linkKbps;
+        private int cameras;
+        private double bandwidthKbps;
+
+        Node(int id, String location) {
+            this.id = id;
+            this.location = location;
+        }
+
+        void add(double kbps) {
+            cameras++;
+            bandwidthKbps += kbps;
+        }
+
+        double cpu() {
+            return baseCpu + cameras * cpuPerCamera;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.dto.NodeHeartbeatMessage.NodeType;
+import com.aick.mmp.repository.CdnNodeRepository;
+import com.aick.mmp.repository.EdgeNodeRepository;
+import com.aick.mmp.service.EdgeFailoverService;
+import com.aick.mmp.service.EdgeHeartbeatService;
+import com.aick.mmp.service.impl.NodeFailureDetectorImpl;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点失联检测基准：以模拟时间驱动{@link NodeFailureDetectorImpl}，统计失联节点的发现时间、误判数，
+ * 以及每个时间轮刻度的检测耗时，并与每个刻度扫描全部节点的做法对比
+ * <p>
+ * 每个边缘节点每5秒心跳一次，间隔带±200ms的抖动，1%的心跳因Kafka积压额外延迟2~4秒；
+ * 运行一半时间后，deadPercent%的节点在随后一分钟内的随机时刻停止心跳。
+ * 检测时间从节点最后一次心跳算起；期限后延迟是发现时间超出失联期限的部分，由刻度长度决定。
+ * 用法：FailureDetectorBenchmark [节点数=10000] [分钟数=10] [失联比例%=1]
+ */
+public class FailureDetectorBenchmark {
+
+    private static final long TICK_MS = 100;
+    private static final long INTERVAL_MS = 5000;
+
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int minutes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double deadPercent = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+        long start = 1_700_000_000_000L;
+        long end = start + minutes * 60_000L;
+        AtomicLong now = new AtomicLong(start);
+
+        AtomicLong rowsWritten = new AtomicLong();
+        AtomicLong statements = new AtomicLong();
+        long[] persistedOfflineAt = new long[nodes];
+        EdgeHeartbeatService heartbeatService = (EdgeHeartbeatService) Proxy.newProxyInstance(
+                FailureDetectorBenchmark.class.getClassLoader(), new Class<?>[]{EdgeHeartbeatService.class},
+                (proxy, method, arguments) -> {
+                    if (!method.getName().equals("markOffline")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    statements.incrementAndGet();
+                    rowsWritten.addAndGet(((Collection<?>) arguments[0]).size());
+                    for (Object id : (Collection<?>) arguments[0]) {
+                        persistedOfflineAt[((Long) id).intValue()] = now.get();
+                    }
+                    return ((Collection<?>) arguments[0]).size();
+                });
+        EdgeNodeRepository edgeNodeRepository = (EdgeNodeRepository) Proxy.newProxyInstance(
+                FailureDetectorBenchmark.class.getClassLoader(), new Class<?>[]{EdgeNodeRepository.class},
+                (proxy, method, arguments) -> {
+                    if (!method.getName().equals("updateStatusIn")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    statements.incrementAndGet();
+                    rowsWritten.addAndGet(((Collection<?>) arguments[0]).size());
+                    return ((Collection<?>) arguments[0]).size();
+                });
+        CdnNodeRepository cdnNodeRepository = (CdnNodeRepository) Proxy.newProxyInstance(
+                FailureDetectorBenchmark.class.getClassLoader(), new Class<?>[]{CdnNodeRepository.class},
+                (proxy, method, arguments) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        EdgeFailoverService edgeFailoverService = (EdgeFailoverService) Proxy.newProxyInstance(
+                FailureDetectorBenchmark.class.getClassLoader(), new Class<?>[]{EdgeFailoverService.class},
+                (proxy, method, arguments) -> null);
+        NodeFailureDetectorImpl detector = new NodeFailureDetectorImpl(heartbeatService, edgeNodeRepository,
+                cdnNodeRepository, edgeFailoverService, now::get);
+        detector.init();
+
+        Random random = new Random(7);
+        long[] lastHeartbeat = new long[nodes];
+        long[] diesAt = new long[nodes];
+        int dead = 0;
+        for (int i = 0; i < nodes; i++) {
+            boolean dies = random.nextDouble() * 100 < deadPercent;
+            diesAt[i] = dies ? start + (end - start) / 2 + (long) (random.nextDouble() * 60_000) : Long.MAX_VALUE;
+            dead += dies ? 1 : 0;
+        }
+        // 按刻度排列的下次心跳，环长覆盖最长的心跳间隔
+        int ringSize = (int) (2 * INTERVAL_MS / TICK_MS);
+        List<List<Integer>> ring = new ArrayList<>(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            ring.add(new ArrayList<>());
+        }
+        for (int i = 0; i < nodes; i++) {
+            ring.get(random.nextInt((int) (INTERVAL_MS / TICK_MS))).add(i);
+        }
+
+        long checkNanos = 0;
+        long scanNanos = 0;
+        long ticks = 0;
+        long scanSuspects = 0;
+        long maxCheckNanos = 0;
+        for (long tick = 0; start + tick * TICK_MS < end; tick++) {
+            long time = start + tick * TICK_MS;
+            List<Integer> due = ring.get((int) (tick % ringSize));
+            List<Integer> beating = new ArrayList<>(due);
+            due.clear();
+            for (int i : beating) {
+                if (time >= diesAt[i]) {
+                    continue;
+                }
+                // 心跳在刻度内的随机时刻到达
+                now.set(time + random.nextInt((int) TICK_MS));
+                detector.heartbeat(NodeType.EDGE, (long) i);
+                lastHeartbeat[i] = now.get();
+                long next = INTERVAL_MS + (long) (random.nextGaussian() * 200);
+                if (random.nextInt(100) == 0) {
+                    next += 2000 + random.nextInt(2000);
+                }
+                ring.get((int) ((tick + Math.max(1, next / TICK_MS)) % ringSize)).add(i);
+            }
+
+            now.set(time + TICK_MS);
+            long started = System.nanoTime();
+            detector.checkTimeouts();
+            long elapsed = System.nanoTime() - started;
+            checkNanos += elapsed;
+            maxCheckNanos = Math.max(maxCheckNanos, elapsed);
+            ticks++;
+
+            // 对比：每个刻度扫描全部节点的最后心跳时间
+            started = System.nanoTime();
+            for (int i = 0; i < nodes; i++) {
+                if (now.get() - lastHeartbeat[i] > 10_000) {
+                    scanSuspects++;
+                }
+            }
+            scanNanos += System.nanoTime() - started;
+
+            if ((tick + 1) % (1000 / TICK_MS) == 0) {
+                detector.flushTransitions();
+            }
+        }
+
+        // 逐个核对：失联节点从最后一次心跳到OFFLINE写入数据库的时间，以及存活节点被写为OFFLINE的次数
+        long detected = 0;
+        long falsePositives = 0;
+        long totalSilence = 0;
+        long maxSilence = 0;
+        for (int i = 0; i < nodes; i++) {
+            if (persistedOfflineAt[i] == 0) {
+                continue;
+            }
+            if (persistedOfflineAt[i] < diesAt[i]) {
+                falsePositives++;
+            } else {
+                long silence = persistedOfflineAt[i] - lastHeartbeat[i];
+                detected++;
+                totalSilence += silence;
+                maxSilence = Math.max(maxSilence, silence);
+            }
+        }
+        Map<String, Object> statistics = detector.getStatistics();
+        System.out.printf("%d nodes, %d simulated minutes, %d stopped heartbeating%n", nodes, minutes, dead);
+        System.out.printf("detected %d/%d, false positives %d%n", detected, dead, falsePositives);
+        System.out.printf("last heartbeat to OFFLINE persisted: avg %.1f s, max %.1f s%n",
+                detected == 0 ? 0 : totalSilence / 1000.0 / detected, maxSilence / 1000.0);
+        System.out.printf("detection delay after deadline: avg %.0f ms, max %d ms%n",
+                (double) statistics.get("averageDetectionDelayMillis"), (long) statistics.get("maxDetectionDelayMillis"));
+        System.out.printf("timing wheel: %.1f us per tick (max %.1f us), %.2f timeouts visited per tick%n",
+                checkNanos / 1000.0 / ticks, maxCheckNanos / 1000.0, (long) statistics.get("wheelVisits") / (double) ticks);
+        System.out.printf("full scan:    %.1f us per tick (%d suspect observations)%n",
+                scanNanos / 1000.0 / ticks, scanSuspects);
+        System.out.printf("database: %d statements, %d rows%n", statements.get(), rowsWritten.get());
+        System.out.println("statistics: " + statistics);
+    }
+}
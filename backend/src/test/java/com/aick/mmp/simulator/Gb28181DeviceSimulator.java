@@ -0,0 +1,542 @@
+package com.aick.mmp.simulator;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.aick.mmp.adapter.protocol.gb28181.Gb28181SipServer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 国标设备模拟器，用大量虚拟设备回放网络闪断恢复后的注册风暴
+ * <p>
+ * 所有设备在同一时刻发起REGISTER（按RFC 3261定时器重传，遇到401时按Digest重新注册），
+ * 注册成功后按心跳周期对齐发送Keepalive，形成周期性的心跳风暴；同时应答平台下发的目录查询、
+ * INVITE和BYE。虚拟设备平均分布在少量UDP套接字上，由单个线程驱动。INVITE成功后按SDP中的地址和SSRC
+ * 以25fps推送合成的PS over RTP视频流（见{@link PsStreamGenerator}），收到BYE后停止。
+ * 用法：Gb28181DeviceSimulator &lt;平台地址|embedded&gt; [端口=5060] [设备数=10000] [时长秒=60]
+ * [心跳周期秒=20] [密码]；地址为embedded时在进程内启动平台SIP服务并统计其线程的内存分配。
+ * <p>
+ * 仅用于本地或预发环境评估，不在生产环境中启动。
+ */
+public class Gb28181DeviceSimulator {
+
+    private static final String DOMAIN = "3402000000";
+    private static final String SERVER_ID = "34020000002000000001";
+    private static final int SOCKETS = 8;
+    private static final int SEND_BATCH = 1000;
+    private static final long RETRANSMIT_T1_MS = 500;
+    private static final long RETRANSMIT_T2_MS = 4000;
+    private static final int REGISTER_EXPIRES = 3600;
+
+    private static final int UNREGISTERED = 0;
+    private static final int REGISTERING = 1;
+    private static final int REGISTERED = 2;
+
+    private final InetSocketAddress server;
+    private final int deviceCount;
+    private final long keepaliveIntervalMs;
+    private final String password;
+
+    private final Selector selector;
+    private final DatagramChannel[] channels = new DatagramChannel[SOCKETS];
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(65535);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(65535);
+    private final Map<String, Integer> deviceByChannelId = new HashMap<>();
+    private final ArrayDeque<Integer> registerQueue = new ArrayDeque<>();
+    private final Map<String, MediaSender> mediaSenders = new HashMap<>();
+    private final DatagramChannel mediaChannel;
+
+    private final String[] deviceIds;
+    private final int[] state;
+    private final int[] cseq;
+    private final long[] registerStartedAt;
+    private final long[] nextRetransmitAt;
+    private final long[] retransmitInterval;
+    private final String[] authorization;
+    private final long[] registerLatency;
+    private int registeredCount;
+    private int latencyCount;
+
+    private long registersSent;
+    private long registerRetransmits;
+    private long challenges;
+    private long keepalivesSent;
+    private long keepalivesAcked;
+    private long keepalivesRejected;
+    private long catalogQueries;
+    private long invites;
+    private long byes;
+    private long mediaPacketsSent;
+    private long sendWouldBlock;
+    private long nextKeepaliveRound;
+    private long stormCompletedAt;
+
+    public Gb28181DeviceSimulator(InetSocketAddress server, int deviceCount, long keepaliveIntervalMs,
+                                  String password) throws IOException {
+        this.server = server;
+        this.deviceCount = deviceCount;
+        this.keepaliveIntervalMs = keepaliveIntervalMs;
+        this.password = password;
+        this.deviceIds = new String[deviceCount];
+        this.state = new int[deviceCount];
+        this.cseq = new int[deviceCount];
+        this.registerStartedAt = new long[deviceCount];
+        this.nextRetransmitAt = new long[deviceCount];
+        this.retransmitInterval = new long[deviceCount];
+        this.authorization = new String[deviceCount];
+        this.registerLatency = new long[deviceCount];
+        for (int i = 0; i < deviceCount; i++) {
+            deviceIds[i] = String.format("%s132%07d", DOMAIN, i + 1);
+            deviceByChannelId.put(channelId(i), i);
+            deviceByChannelId.put(deviceIds[i], i);
+        }
+        this.selector = Selector.open();
+        for (int i = 0; i < SOCKETS; i++) {
+            channels[i] = DatagramChannel.open();
+            channels[i].setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+            channels[i].bind(new InetSocketAddress("0.0.0.0", 0));
+            channels[i].configureBlocking(false);
+            channels[i].register(selector, SelectionKey.OP_READ, i);
+        }
+        this.mediaChannel = DatagramChannel.open();
+        mediaChannel.setOption(StandardSocketOptions.SO_SNDBUF, 4 * 1024 * 1024);
+        mediaChannel.bind(new InetSocketAddress("0.0.0.0", 0));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: Gb28181DeviceSimulator <sip-host|embedded> [port=5060] [devices=10000]"
+                    + " [seconds=60] [keepalive-interval-seconds=20] [password]");
+            return;
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5060;
+        int devices = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 60;
+        int keepaliveSeconds = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+        String password = args.length > 5 ? args[5] : "";
+
+        Gb28181SipServer embedded = null;
+        String host = args[0];
+        if ("embedded".equals(host)) {
+            embedded = new Gb28181SipServer("127.0.0.1", port, SERVER_ID, DOMAIN, password);
+            embedded.start();
+            host = "127.0.0.1";
+            port = embedded.getPort();
+        }
+
+        Gb28181DeviceSimulator simulator = new Gb28181DeviceSimulator(new InetSocketAddress(host, port), devices,
+                keepaliveSeconds * 1000L, password);
+        long allocatedBefore = sipThreadAllocatedBytes();
+        simulator.run(seconds * 1000L);
+        if (embedded != null) {
+            long allocated = sipThreadAllocatedBytes() - allocatedBefore;
+            Map<String, Object> statistics = embedded.getStatistics();
+            long datagrams = ((Number) statistics.get("datagramsReceived")).longValue();
+            System.out.println("server: " + statistics);
+            if (allocated >= 0 && datagrams > 0) {
+                System.out.printf(Locale.ROOT, "server SIP thread allocated %.1f MB, %.0f bytes per datagram%n",
+                        allocated / 1048576.0, (double) allocated / datagrams);
+            }
+            embedded.shutdown();
+        }
+    }
+
+    public void run(long durationMs) throws IOException {
+        long start = System.currentTimeMillis();
+        long deadline = start + durationMs;
+        long nextReport = start + 1000;
+        // 所有设备同时开始注册
+        for (int i = 0; i < deviceCount; i++) {
+            registerQueue.add(i);
+        }
+        System.out.printf(Locale.ROOT, "replaying registration storm: %d devices on %d sockets -> %s%n",
+                deviceCount, SOCKETS, server);
+
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (now >= deadline) {
+                break;
+            }
+            sendQueuedRegisters(now);
+            retransmitRegisters(now);
+            if (nextKeepaliveRound > 0 && now >= nextKeepaliveRound) {
+                sendKeepalives();
+                nextKeepaliveRound = now + keepaliveIntervalMs;
+            }
+            sendMedia(now);
+            selector.select(registerQueue.isEmpty() ? 10 : 1);
+            selector.selectedKeys().clear();
+            for (DatagramChannel channel : channels) {
+                receive(channel, System.currentTimeMillis());
+            }
+            if (now >= nextReport) {
+                report(now - start);
+                nextReport += 1000;
+            }
+        }
+        report(System.currentTimeMillis() - start);
+        printSummary(start);
+        for (DatagramChannel channel : channels) {
+            channel.close();
+        }
+        mediaChannel.close();
+        selector.close();
+    }
+
+    private void sendQueuedRegisters(long now) throws IOException {
+        for (int sent = 0; sent < SEND_BATCH && !registerQueue.isEmpty(); sent++) {
+            int device = registerQueue.peek();
+            if (state[device] == UNREGISTERED) {
+                state[device] = REGISTERING;
+                registerStartedAt[device] = now;
+                retransmitInterval[device] = RETRANSMIT_T1_MS;
+            }
+            if (!send(device, registerRequest(device))) {
+                return;
+            }
+            registerQueue.poll();
+            registersSent++;
+            nextRetransmitAt[device] = now + retransmitInterval[device];
+        }
+    }
+
+    private void retransmitRegisters(long now) throws IOException {
+        if (registeredCount == deviceCount) {
+            return;
+        }
+        for (int device = 0; device < deviceCount; device++) {
+            if (state[device] == REGISTERING && nextRetransmitAt[device] > 0 && now >= nextRetransmitAt[device]) {
+                retransmitInterval[device] = Math.min(retransmitInterval[device] * 2, RETRANSMIT_T2_MS);
+                nextRetransmitAt[device] = now + retransmitInterval[device];
+                registerRetransmits++;
+                send(device, registerRequest(device));
+            }
+        }
+    }
+
+    private void sendKeepalives() throws IOException {
+        for (int device = 0; device < deviceCount; device++) {
+            if (state[device] == REGISTERED) {
+                String body = "<?xml version=\"1.0\" encoding=\"GB2312\"?>\r\n<Notify>\r\n<CmdType>Keepalive</CmdType>\r\n"
+                        + "<SN>" + (++cseq[device]) + "</SN>\r\n<DeviceID>" + deviceIds[device]
+                        + "</DeviceID>\r\n<Status>OK</Status>\r\n</Notify>\r\n";
+                if (send(device, request(device, "MESSAGE", "sip:" + SERVER_ID + "@" + DOMAIN,
+                        "ka-" + device + "-" + cseq[device], cseq[device], null,
+                        "Application/MANSCDP+xml", body))) {
+                    keepalivesSent++;
+                }
+            }
+        }
+    }
+
+    private String registerRequest(int device) {
+        String extra = authorization[device] == null ? "" : "Authorization: " + authorization[device] + "\r\n";
+        return request(device, "REGISTER", "sip:" + SERVER_ID + "@" + DOMAIN, "reg-" + device, ++cseq[device],
+                extra + "Expires: " + REGISTER_EXPIRES + "\r\n", null, null);
+    }
+
+    private String request(int device, String method, String uri, String callId, int sequence, String extra,
+                           String contentType, String body) {
+        InetSocketAddress local = localAddress(device);
+        StringBuilder text = new StringBuilder(512);
+        text.append(method).append(' ').append(uri).append(" SIP/2.0\r\n");
+        text.append("Via: SIP/2.0/UDP 127.0.0.1:").append(local.getPort()).append(";rport;branch=z9hG4bK")
+                .append(Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE)).append("\r\n");
+        text.append("From: <sip:").append(deviceIds[device]).append('@').append(DOMAIN).append(">;tag=")
+                .append(device).append("\r\n");
+        text.append("To: <sip:").append("REGISTER".equals(method) ? deviceIds[device] : SERVER_ID).append('@')
+                .append(DOMAIN).append(">\r\n");
+        text.append("Call-ID: ").append(callId).append("@sim\r\n");
+        text.append("CSeq: ").append(sequence).append(' ').append(method).append("\r\n");
+        text.append("Contact: <sip:").append(deviceIds[device]).append("@127.0.0.1:").append(local.getPort())
+                .append(">\r\n");
+        text.append("Max-Forwards: 70\r\nUser-Agent: GB28181 Device Simulator\r\n");
+        if (extra != null) {
+            text.append(extra);
+        }
+        byte[] content = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        if (contentType != null) {
+            text.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        text.append("Content-Length: ").append(content.length).append("\r\n\r\n");
+        if (body != null) {
+            text.append(body);
+        }
+        return text.toString();
+    }
+
+    private void receive(DatagramChannel channel, long now) throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            SocketAddress source = channel.receive(receiveBuffer);
+            if (source == null) {
+                return;
+            }
+            String text = new String(receiveBuffer.array(), 0, receiveBuffer.position(), StandardCharsets.UTF_8);
+            if (text.startsWith("SIP/2.0 ")) {
+                handleResponse(text, now);
+            } else {
+                handleRequest(text, channel, source);
+            }
+        }
+    }
+
+    private void handleResponse(String text, long now) throws IOException {
+        int status = Integer.parseInt(text.substring(8, 11));
+        String callId = header(text, "Call-ID");
+        if (callId == null) {
+            return;
+        }
+        if (callId.startsWith("reg-")) {
+            int device = Integer.parseInt(callId.substring(4, callId.indexOf('@')));
+            if (state[device] != REGISTERING) {
+                return;
+            }
+            if (status == 401) {
+                challenges++;
+                authorization[device] = digest(device, header(text, "WWW-Authenticate"));
+                send(device, registerRequest(device));
+            } else if (status == 200) {
+                state[device] = REGISTERED;
+                nextRetransmitAt[device] = 0;
+                registerLatency[latencyCount++] = now - registerStartedAt[device];
+                registeredCount++;
+                if (registeredCount == deviceCount) {
+                    stormCompletedAt = now;
+                }
+                if (nextKeepaliveRound == 0) {
+                    nextKeepaliveRound = now + keepaliveIntervalMs;
+                }
+            }
+        } else if (callId.startsWith("ka-")) {
+            if (status == 200) {
+                keepalivesAcked++;
+            } else if (status == 403) {
+                // 平台不认识该设备，重新注册
+                keepalivesRejected++;
+                int device = Integer.parseInt(callId.substring(3, callId.indexOf('-', 3)));
+                state[device] = UNREGISTERED;
+                registeredCount--;
+                registerQueue.add(device);
+            }
+        }
+    }
+
+    private void handleRequest(String text, DatagramChannel channel, SocketAddress source) throws IOException {
+        String method = text.substring(0, text.indexOf(' '));
+        if ("ACK".equals(method)) {
+            return;
+        }
+        String uri = text.substring(method.length() + 1, text.indexOf(' ', method.length() + 1));
+        Integer device = deviceByChannelId.get(uri.substring(4, uri.indexOf('@')));
+        if (device == null) {
+            reply(channel, source, text, 404, "Not Found", null, null);
+            return;
+        }
+        if ("MESSAGE".equals(method) && text.contains("<CmdType>Catalog</CmdType>")) {
+            catalogQueries++;
+            reply(channel, source, text, 200, "OK", null, null);
+            String sn = between(text, "<SN>", "</SN>");
+            String body = "<?xml version=\"1.0\" encoding=\"GB2312\"?>\r\n<Response>\r\n<CmdType>Catalog</CmdType>\r\n"
+                    + "<SN>" + sn + "</SN>\r\n<DeviceID>" + deviceIds[device] + "</DeviceID>\r\n"
+                    + "<SumNum>1</SumNum>\r\n<DeviceList Num=\"1\">\r\n<Item>\r\n<DeviceID>" + channelId(device)
+                    + "</DeviceID>\r\n<Name>Camera " + (device + 1) + "</Name>\r\n<Manufacturer>Simulator</Manufacturer>\r\n"
+                    + "<Status>ON</Status>\r\n</Item>\r\n</DeviceList>\r\n</Response>\r\n";
+            send(device, request(device, "MESSAGE", "sip:" + SERVER_ID + "@" + DOMAIN,
+                    "cat-" + device + "-" + sn, ++cseq[device], null, "Application/MANSCDP+xml", body));
+        } else if ("INVITE".equals(method)) {
+            invites++;
+            String ssrc = between(text, "y=", "\r\n");
+            reply(channel, source, text, 100, "Trying", null, null);
+            String sdp = "v=0\r\no=" + channelId(device) + " 0 0 IN IP4 127.0.0.1\r\ns=Play\r\nc=IN IP4 127.0.0.1\r\n"
+                    + "t=0 0\r\nm=video 15060 RTP/AVP 96\r\na=sendonly\r\na=rtpmap:96 PS/90000\r\ny=" + ssrc + "\r\n";
+            reply(channel, source, text, 200, "OK", "APPLICATION/SDP", sdp);
+            InetSocketAddress target = new InetSocketAddress(between(text, "c=IN IP4 ", "\r\n").trim(),
+                    Integer.parseInt(between(text, "m=video ", " ").trim()));
+            mediaSenders.put(header(text, "Call-ID"), new MediaSender(target, Long.parseLong(ssrc.trim())));
+        } else if ("BYE".equals(method)) {
+            byes++;
+            mediaSenders.remove(header(text, "Call-ID"));
+            reply(channel, source, text, 200, "OK", null, null);
+        } else {
+            reply(channel, source, text, 200, "OK", null, null);
+        }
+    }
+
+    /**
+     * 按帧间隔给每路已建立的会话推送一帧PS数据
+     */
+    private void sendMedia(long now) throws IOException {
+        for (MediaSender sender : mediaSenders.values()) {
+            while (now >= sender.nextFrameAt) {
+                long timestamp = sender.generator.nextTimestamp();
+                List<byte[]> packets = PsStreamGenerator.packetize(sender.generator.nextVideoFrame(),
+                        sender.sequence, timestamp, sender.ssrc);
+                sender.sequence += packets.size();
+                for (byte[] packet : packets) {
+                    mediaChannel.send(ByteBuffer.wrap(packet), sender.target);
+                    mediaPacketsSent++;
+                }
+                sender.nextFrameAt += 1000 / MediaSender.FRAME_RATE;
+            }
+        }
+    }
+
+    private void reply(DatagramChannel channel, SocketAddress target, String request, int status, String reason,
+                       String contentType, String body) throws IOException {
+        StringBuilder text = new StringBuilder(512);
+        text.append("SIP/2.0 ").append(status).append(' ').append(reason).append("\r\n");
+        text.append("Via: ").append(header(request, "Via")).append("\r\n");
+        text.append("From: ").append(header(request, "From")).append("\r\n");
+        String to = header(request, "To");
+        text.append("To: ").append(to).append(to.contains(";tag=") ? "" : ";tag=sim" + status).append("\r\n");
+        text.append("Call-ID: ").append(header(request, "Call-ID")).append("\r\n");
+        text.append("CSeq: ").append(header(request, "CSeq")).append("\r\n");
+        InetSocketAddress local = (InetSocketAddress) channel.getLocalAddress();
+        // Contact使用请求URI中的用户（通道编码），后续BYE据此路由到对应的虚拟设备
+        String uri = request.substring(request.indexOf(' ') + 1, request.indexOf(' ', request.indexOf(' ') + 1));
+        text.append("Contact: <sip:").append(uri.substring(4, uri.indexOf('@'))).append("@127.0.0.1:")
+                .append(local.getPort()).append(">\r\n");
+        byte[] content = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        if (contentType != null) {
+            text.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        text.append("Content-Length: ").append(content.length).append("\r\n\r\n");
+        if (body != null) {
+            text.append(body);
+        }
+        sendBuffer.clear();
+        sendBuffer.put(text.toString().getBytes(StandardCharsets.UTF_8));
+        sendBuffer.flip();
+        channel.send(sendBuffer, target);
+    }
+
+    /**
+     * 发送设备发起的请求；套接字发送缓冲区已满时返回false，由调用方稍后重试
+     */
+    private boolean send(int device, String text) throws IOException {
+        sendBuffer.clear();
+        sendBuffer.put(text.getBytes(StandardCharsets.UTF_8));
+        sendBuffer.flip();
+        if (channels[device % SOCKETS].send(sendBuffer, server) == 0) {
+            sendWouldBlock++;
+            return false;
+        }
+        return true;
+    }
+
+    private String digest(int device, String challenge) {
+        String realm = between(challenge, "realm=\"", "\"");
+        String nonce = between(challenge, "nonce=\"", "\"");
+        String uri = "sip:" + SERVER_ID + "@" + DOMAIN;
+        String ha1 = DigestUtil.md5Hex(deviceIds[device] + ":" + realm + ":" + password);
+        String ha2 = DigestUtil.md5Hex("REGISTER:" + uri);
+        String response = DigestUtil.md5Hex(ha1 + ":" + nonce + ":" + ha2);
+        return "Digest username=\"" + deviceIds[device] + "\", realm=\"" + realm + "\", nonce=\"" + nonce
+                + "\", uri=\"" + uri + "\", response=\"" + response + "\", algorithm=MD5";
+    }
+
+    private InetSocketAddress localAddress(int device) {
+        try {
+            return (InetSocketAddress) channels[device % SOCKETS].getLocalAddress();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void report(long elapsedMs) {
+        System.out.printf(Locale.ROOT,
+                "t=%5.1fs registered=%d/%d registers=%d retransmits=%d challenges=%d keepalives=%d acked=%d"
+                        + " rejected=%d catalog=%d invites=%d byes=%d streams=%d mediaPackets=%d sendBlocked=%d%n",
+                elapsedMs / 1000.0, registeredCount, deviceCount, registersSent, registerRetransmits, challenges,
+                keepalivesSent, keepalivesAcked, keepalivesRejected, catalogQueries, invites, byes,
+                mediaSenders.size(), mediaPacketsSent, sendWouldBlock);
+    }
+
+    private void printSummary(long start) {
+        long[] latencies = Arrays.copyOf(registerLatency, latencyCount);
+        Arrays.sort(latencies);
+        if (latencies.length > 0) {
+            System.out.printf(Locale.ROOT, "register latency ms: p50=%d p99=%d max=%d%n",
+                    latencies[latencies.length / 2], latencies[(int) (latencies.length * 0.99)],
+                    latencies[latencies.length - 1]);
+        }
+        if (stormCompletedAt > 0) {
+            System.out.printf(Locale.ROOT, "registration storm absorbed in %d ms%n", stormCompletedAt - start);
+        }
+        double ackRate = keepalivesSent == 0 ? 0 : keepalivesAcked * 100.0 / keepalivesSent;
+        System.out.printf(Locale.ROOT, "keepalives acknowledged: %.2f%%%n", ackRate);
+    }
+
+    private static String header(String text, String name) {
+        String prefix = "\r\n" + name + ":";
+        int start = text.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+        int end = text.indexOf("\r\n", start + prefix.length());
+        return text.substring(start + prefix.length(), end).trim();
+    }
+
+    private static String between(String text, String open, String close) {
+        int start = text.indexOf(open);
+        if (start < 0) {
+            return "";
+        }
+        int end = text.indexOf(close, start + open.length());
+        return end < 0 ? "" : text.substring(start + open.length(), end);
+    }
+
+    private static String channelId(int device) {
+        return String.format("%s131%07d", DOMAIN, device + 1);
+    }
+
+    /**
+     * 进程内SIP线程累计分配的堆内存，用于评估热路径的分配量；JVM不支持时返回-1
+     */
+    private static long sipThreadAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("gb28181-sip".equals(thread.getName())) {
+                return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(thread.getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 一路INVITE建立的实时流
+     */
+    private static final class MediaSender {
+        static final int FRAME_RATE = 25;
+
+        private final InetSocketAddress target;
+        private final long ssrc;
+        private final PsStreamGenerator generator = new PsStreamGenerator(40_000, 6_000, 50, FRAME_RATE);
+        private long nextFrameAt = System.currentTimeMillis();
+        private int sequence;
+
+        MediaSender(InetSocketAddress target, long ssrc) {
+            this.target = target;
+            this.ssrc = ssrc;
+        }
+    }
+}
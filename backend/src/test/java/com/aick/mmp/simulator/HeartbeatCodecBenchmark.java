@@ -0,0 +1,85 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.messaging.EdgeHeartbeat;
+import com.aick.mmp.messaging.EdgeHeartbeatCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * 心跳编码基准：比较JSON指标Map（Jackson）与{@link EdgeHeartbeatCodec}二进制帧的平均字节数和编解码耗时
+ * <p>
+ * 模拟一个节点连续发送心跳：累计计数每次按真实速率增长，二进制方式第一帧为全量帧，之后均为增量帧。
+ * 用法：HeartbeatCodecBenchmark [心跳数=2000000]
+ */
+public class HeartbeatCodecBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        EdgeHeartbeat[] heartbeats = new EdgeHeartbeat[1024];
+        for (int i = 0; i < heartbeats.length; i++) {
+            heartbeats[i] = heartbeat(i);
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        for (int round = 0; round < 3; round++) {
+            long jsonBytes = 0;
+            long started = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                byte[] json = objectMapper.writeValueAsBytes(heartbeats[i & 1023].toMetrics());
+                jsonBytes += json.length;
+                objectMapper.readValue(json, Map.class);
+            }
+            long jsonNanos = System.nanoTime() - started;
+
+            long binaryBytes = 0;
+            long fullBytes = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(EdgeHeartbeatCodec.MAX_FRAME_BYTES);
+            EdgeHeartbeat[] received = new EdgeHeartbeat[1];
+            started = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                int index = i & 1023;
+                buffer.clear();
+                // 每1024帧从全量帧重新开始，与节点重启或基准失效的情况一致
+                EdgeHeartbeatCodec.encode(heartbeats[index], index == 0 ? null : heartbeats[index - 1], buffer);
+                buffer.flip();
+                if (index == 0) {
+                    fullBytes = buffer.remaining();
+                }
+                binaryBytes += buffer.remaining();
+                received[0] = EdgeHeartbeatCodec.decode(buffer, nodeId -> received[0]);
+                if (received[0] == null || received[0].getBytesSent() != heartbeats[index].getBytesSent()) {
+                    throw new IllegalStateException("Heartbeat " + i + " did not round-trip");
+                }
+            }
+            long binaryNanos = System.nanoTime() - started;
+
+            System.out.printf("round %d: JSON %.1f B, %.0f ns/heartbeat; binary %.1f B (full frame %d B), %.0f ns/heartbeat%n",
+                    round, (double) jsonBytes / count, (double) jsonNanos / count,
+                    (double) binaryBytes / count, fullBytes, (double) binaryNanos / count);
+        }
+    }
+
+    private static EdgeHeartbeat heartbeat(int sequence) {
+        EdgeHeartbeat heartbeat = new EdgeHeartbeat();
+        heartbeat.setNodeId(1234);
+        heartbeat.setSequence(100_000 + sequence);
+        heartbeat.setTimestamp(1_700_000_000_000L + sequence * 5000L + sequence % 7);
+        heartbeat.setCpuUsage(35 + sequence % 17 * 0.37);
+        heartbeat.setMemoryUsage(61.25 + sequence % 5 * 0.1);
+        heartbeat.setStorageUsage(72.5);
+        heartbeat.setLatency(18 + sequence % 11 * 0.9);
+        heartbeat.setPacketLoss(sequence % 13 == 0 ? 0.4 : 0);
+        heartbeat.setBandwidth(48_000 + sequence % 23 * 130);
+        heartbeat.setJitter(2.5 + sequence % 3);
+        heartbeat.setActiveStreams(24);
+        heartbeat.setCameraCount(32);
+        // 32路约4Mbps的上行，5秒一次心跳
+        heartbeat.setBytesSent(80_000_000_000L + sequence * 80_000_000L);
+        heartbeat.setBytesReceived(900_000_000L + sequence * 900_000L);
+        heartbeat.setFramesProcessed(4_000_000_000L + sequence * 4000L);
+        heartbeat.setPacketsLost(12_000 + sequence / 13 * 3);
+        return heartbeat;
+    }
+}
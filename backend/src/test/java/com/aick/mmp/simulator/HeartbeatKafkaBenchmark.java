@@ -0,0 +1,199 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.dto.NodeHeartbeatMessage;
+import com.aick.mmp.messaging.NodeHeartbeatListener;
+import com.aick.mmp.service.CdnNodeService;
+import com.aick.mmp.service.EdgeNodeService;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 心跳Kafka消费吞吐量基准：生产者以最快速度写入心跳，消费者把每批消息交给{@link NodeHeartbeatListener#process}，
+ * 统计持续消费的心跳数/秒，并用每个节点递增的序号检查同一节点的心跳是否按顺序处理
+ * <p>
+ * 节点服务为只做计数的桩，测量范围是Kafka拉取、JSON反序列化和分通道分发。
+ * 不指定Kafka地址时直接把内存中构造的消息批次交给监听器，只测量分发部分。
+ * 用法：HeartbeatKafkaBenchmark [Kafka地址|-] [心跳数=1000000] [边缘节点数=2000] [CDN节点数=100] [分区数=12] [通道数=8]
+ */
+public class HeartbeatKafkaBenchmark {
+
+    private static final int MAX_POLL_RECORDS = 2000;
+
+    private final Map<String, Long> lastSequence = new ConcurrentHashMap<>();
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong outOfOrder = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        String bootstrap = args.length > 0 && !args[0].equals("-") ? args[0] : null;
+        long heartbeats = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+        int edgeNodes = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int cdnNodes = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        int partitions = args.length > 4 ? Integer.parseInt(args[4]) : 12;
+        int lanes = args.length > 5 ? Integer.parseInt(args[5]) : 8;
+
+        HeartbeatKafkaBenchmark benchmark = new HeartbeatKafkaBenchmark();
+        NodeHeartbeatListener listener = new NodeHeartbeatListener(benchmark.edgeNodeService(),
+                benchmark.cdnNodeService(), lanes, Long.MAX_VALUE);
+        listener.start();
+        long started = System.nanoTime();
+        long consumed = bootstrap == null
+                ? benchmark.runInMemory(listener, heartbeats, edgeNodes, cdnNodes)
+                : benchmark.runKafka(listener, bootstrap, heartbeats, edgeNodes, cdnNodes, partitions);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        listener.shutdown();
+
+        System.out.printf("consumed %d heartbeats in %.2f s: %.0f heartbeats/s%n", consumed, seconds, consumed / seconds);
+        System.out.printf("handled %d, out of order %d, listener %s%n", benchmark.handled.get(),
+                benchmark.outOfOrder.get(), listener.getStatistics());
+    }
+
+    private long runInMemory(NodeHeartbeatListener listener, long heartbeats, int edgeNodes, int cdnNodes)
+            throws InterruptedException {
+        long sequence = 0;
+        while (sequence < heartbeats) {
+            List<ConsumerRecord<String, NodeHeartbeatMessage>> batch = new ArrayList<>(MAX_POLL_RECORDS);
+            for (int i = 0; i < MAX_POLL_RECORDS && sequence < heartbeats; i++, sequence++) {
+                NodeHeartbeatMessage message = heartbeat(sequence, edgeNodes, cdnNodes);
+                batch.add(new ConsumerRecord<>("heartbeats", 0, sequence, message.partitionKey(), message));
+            }
+            listener.process(batch);
+        }
+        return sequence;
+    }
+
+    private long runKafka(NodeHeartbeatListener listener, String bootstrap, long heartbeats, int edgeNodes,
+                          int cdnNodes, int partitions) throws Exception {
+        String topic = "heartbeat-benchmark-" + UUID.randomUUID().toString().substring(0, 8);
+        Properties adminProperties = new Properties();
+        adminProperties.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        try (AdminClient admin = AdminClient.create(adminProperties)) {
+            admin.createTopics(Collections.singletonList(new NewTopic(topic, partitions, (short) 1))).all().get();
+        }
+
+        Thread producerThread = new Thread(() -> produce(bootstrap, topic, heartbeats, edgeNodes, cdnNodes),
+                "heartbeat-producer");
+        producerThread.start();
+
+        Map<String, Object> consumerProperties = new HashMap<>();
+        consumerProperties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        consumerProperties.put(ConsumerConfig.GROUP_ID_CONFIG, topic);
+        consumerProperties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        consumerProperties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, MAX_POLL_RECORDS);
+        consumerProperties.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 65536);
+        consumerProperties.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, 100);
+        long consumed = 0;
+        try (KafkaConsumer<String, NodeHeartbeatMessage> consumer = new KafkaConsumer<>(consumerProperties,
+                new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(new JsonDeserializer<>(NodeHeartbeatMessage.class, false)))) {
+            consumer.subscribe(Collections.singletonList(topic));
+            while (consumed < heartbeats) {
+                ConsumerRecords<String, NodeHeartbeatMessage> records = consumer.poll(Duration.ofMillis(500));
+                if (records.isEmpty()) {
+                    continue;
+                }
+                List<ConsumerRecord<String, NodeHeartbeatMessage>> batch = new ArrayList<>(records.count());
+                records.forEach(batch::add);
+                listener.process(batch);
+                consumer.commitSync();
+                consumed += batch.size();
+            }
+        }
+        producerThread.join();
+        return consumed;
+    }
+
+    private static void produce(String bootstrap, String topic, long heartbeats, int edgeNodes, int cdnNodes) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        properties.put(ProducerConfig.BATCH_SIZE_CONFIG, 65536);
+        properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        JsonSerializer<NodeHeartbeatMessage> serializer = new JsonSerializer<>();
+        serializer.setAddTypeInfo(false);
+        try (KafkaProducer<String, NodeHeartbeatMessage> producer = new KafkaProducer<>(properties,
+                new StringSerializer(), serializer)) {
+            for (long sequence = 0; sequence < heartbeats; sequence++) {
+                NodeHeartbeatMessage message = heartbeat(sequence, edgeNodes, cdnNodes);
+                producer.send(new ProducerRecord<>(topic, message.partitionKey(), message));
+            }
+        }
+    }
+
+    private static NodeHeartbeatMessage heartbeat(long sequence, int edgeNodes, int cdnNodes) {
+        int node = (int) (sequence % (edgeNodes + cdnNodes));
+        boolean edge = node < edgeNodes;
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("sequence", sequence);
+        metrics.put("cpu", 40 + sequence % 20);
+        if (edge) {
+            Map<String, Object> network = new HashMap<>();
+            network.put("latency", 20.0 + sequence % 7);
+            network.put("packetLoss", 0.1);
+            metrics.put("network", network);
+        } else {
+            metrics.put("currentLoad", (int) (sequence % 100));
+        }
+        return NodeHeartbeatMessage.builder()
+                .nodeType(edge ? NodeHeartbeatMessage.NodeType.EDGE : NodeHeartbeatMessage.NodeType.CDN)
+                .nodeId(edge ? String.valueOf(node + 1) : "cdn-" + (node - edgeNodes))
+                .metrics(metrics)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+
+    private void handle(String node, Map<?, ?> metrics) {
+        long sequence = ((Number) metrics.get("sequence")).longValue();
+        Long previous = lastSequence.put(node, sequence);
+        if (previous != null && previous >= sequence) {
+            outOfOrder.incrementAndGet();
+        }
+        handled.incrementAndGet();
+    }
+
+    private EdgeNodeService edgeNodeService() {
+        return (EdgeNodeService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{EdgeNodeService.class}, (proxy, method, arguments) -> {
+                    if (!method.getName().equals("registerHeartbeat")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    handle("edge:" + arguments[0], (Map<?, ?>) arguments[1]);
+                    return null;
+                });
+    }
+
+    private CdnNodeService cdnNodeService() {
+        return (CdnNodeService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CdnNodeService.class}, (proxy, method, arguments) -> {
+                    if (!method.getName().equals("registerHeartbeat")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    handle("cdn:" + arguments[0], (Map<?, ?>) arguments[1]);
+                    return null;
+                });
+    }
+}
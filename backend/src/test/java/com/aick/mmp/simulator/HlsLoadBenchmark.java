@@ -0,0 +1,206 @@
+package com.aick.mmp.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * LL-HLS接口压测工具，模拟大量低延迟播放器并发拉流
+ * <p>
+ * 每个虚拟播放器按LL-HLS客户端的方式循环：带_HLS_msn/_HLS_part的阻塞式播放列表请求，
+ * 然后请求预加载提示的部分段。统计两类请求的吞吐量、延迟分位数和错误数；
+ * 阻塞请求的延迟包含等待新部分段生成的时间，理想情况下每个播放器每秒完成 1/PART-TARGET 轮。
+ * 用法：HlsLoadBenchmark &lt;播放列表URL&gt; [并发数=200] [时长秒=30] [Bearer令牌]
+ * <p>
+ * 仅用于本地或预发环境评估，不在生产环境中启动。
+ */
+public class HlsLoadBenchmark {
+
+    private static final Pattern HINT = Pattern.compile("#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part-(\\d+)-(\\d+)\\.m4s\"");
+
+    private final String playlistUrl;
+    private final String baseUrl;
+    private final String token;
+    private final Recorder playlistRequests = new Recorder();
+    private final Recorder partRequests = new Recorder();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    public HlsLoadBenchmark(String playlistUrl, String token) {
+        this.playlistUrl = playlistUrl;
+        this.baseUrl = playlistUrl.substring(0, playlistUrl.lastIndexOf('/') + 1);
+        this.token = token;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: HlsLoadBenchmark <playlist-url> [clients=200] [seconds=30] [bearer-token]");
+            return;
+        }
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        String token = args.length > 3 ? args[3] : null;
+
+        System.setProperty("http.maxConnections", String.valueOf(clients * 2));
+        HlsLoadBenchmark benchmark = new HlsLoadBenchmark(args[0], token);
+        benchmark.run(clients, seconds * 1000L);
+    }
+
+    public void run(int clients, long durationMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + durationMs;
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread player = new Thread(() -> {
+                try {
+                    play(deadline);
+                } finally {
+                    done.countDown();
+                }
+            }, "hls-player-" + i);
+            player.setDaemon(true);
+            player.start();
+        }
+        done.await();
+
+        double elapsed = durationMs / 1000.0;
+        System.out.printf(Locale.ROOT, "clients=%d duration=%.0fs received=%.1f MB%n",
+                clients, elapsed, bytesReceived.get() / 1048576.0);
+        playlistRequests.print("playlist (blocking)", elapsed);
+        partRequests.print("part (preload hint)", elapsed);
+    }
+
+    private void play(long deadline) {
+        int mediaSequence = -1;
+        int part = -1;
+        while (System.currentTimeMillis() < deadline) {
+            String query = mediaSequence < 0 ? "" : "?_HLS_msn=" + mediaSequence + "&_HLS_part=" + part;
+            String playlist = fetchText(playlistUrl + query, playlistRequests);
+            if (playlist == null) {
+                sleep(200);
+                mediaSequence = -1;
+                continue;
+            }
+            Matcher hint = HINT.matcher(playlist);
+            if (!hint.find()) {
+                sleep(200);
+                continue;
+            }
+            mediaSequence = Integer.parseInt(hint.group(1));
+            part = Integer.parseInt(hint.group(2));
+            fetchBytes(baseUrl + "part-" + mediaSequence + "-" + part + ".m4s", partRequests);
+        }
+    }
+
+    private String fetchText(String url, Recorder recorder) {
+        byte[] body = fetchBytes(url, recorder);
+        return body == null ? null : new String(body, StandardCharsets.UTF_8);
+    }
+
+    private byte[] fetchBytes(String url, Recorder recorder) {
+        long start = System.nanoTime();
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(15000);
+            if (token != null) {
+                connection.setRequestProperty("Authorization", "Bearer " + token);
+            }
+            int status = connection.getResponseCode();
+            if (status != 200) {
+                drain(connection.getErrorStream());
+                recorder.error();
+                return null;
+            }
+            byte[] body = readAll(connection.getInputStream());
+            bytesReceived.addAndGet(body.length);
+            recorder.record(System.nanoTime() - start);
+            return body;
+        } catch (IOException e) {
+            recorder.error();
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return null;
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            byte[] buffer = new byte[64 * 1024];
+            int length = 0;
+            int read;
+            while ((read = input.read(buffer, length, buffer.length - length)) >= 0) {
+                length += read;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    private static void drain(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            readAll(in);
+        } catch (IOException ignored) {
+            // 只是为了复用连接
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 单类请求的延迟记录
+     */
+    private static final class Recorder {
+        private final List<Long> latencies = new ArrayList<>();
+        private final AtomicLong errors = new AtomicLong();
+
+        synchronized void record(long nanos) {
+            latencies.add(nanos);
+        }
+
+        void error() {
+            errors.incrementAndGet();
+        }
+
+        synchronized void print(String name, double seconds) {
+            long[] sorted = new long[latencies.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            System.out.printf(Locale.ROOT, "%-22s ok=%d (%.0f req/s) errors=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms%n",
+                    name, sorted.length, sorted.length / seconds, errors.get(),
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    percentile(sorted, 1.0));
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+}
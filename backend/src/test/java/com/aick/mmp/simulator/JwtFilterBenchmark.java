@@ -0,0 +1,168 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.config.security.JwtAuthenticationFilter;
+import com.aick.mmp.config.security.TokenPrincipalCache;
+import com.aick.mmp.config.security.TokenRevocationList;
+import com.aick.mmp.util.JwtUtil;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 认证过滤器基准：每个请求的认证耗时和用户查询次数
+ * <p>
+ * 原做法：每次调用重新构造签名密钥，validateToken和getUsernameFromToken各解析一次令牌，再按用户名查询一次用户；
+ * 单次解析：{@link JwtAuthenticationFilter}不启用缓存，每个请求解析一次令牌，用户和角色取自声明；
+ * 缓存命中：{@link TokenPrincipalCache}命中时只计算令牌摘要。后两种做法都包含一次本地吊销检查。
+ * 用户查询以代理模拟，每次查询耗时lookup微秒（模拟数据库往返）。
+ * 用法：JwtFilterBenchmark [用户数=1000] [请求数=200000] [lookup微秒=200]
+ */
+public class JwtFilterBenchmark {
+
+    private static final String SECRET = "mmp-secret-key-change-in-production-environment";
+    private static final long EXPIRATION = 86_400_000L;
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        long lookupMicros = args.length > 2 ? Long.parseLong(args[2]) : 200;
+
+        JwtUtil jwtUtil = new JwtUtil(SECRET, EXPIRATION);
+        String[] tokens = new String[users];
+        for (int i = 0; i < users; i++) {
+            tokens[i] = jwtUtil.generateToken("user-" + i, "OPERATOR");
+        }
+        AtomicLong lookups = new AtomicLong();
+        UserDetailsService userDetailsService = (UserDetailsService) Proxy.newProxyInstance(
+                JwtFilterBenchmark.class.getClassLoader(), new Class<?>[]{UserDetailsService.class},
+                (proxy, method, arguments) -> {
+                    if (!method.getName().equals("loadUserByUsername")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    lookups.incrementAndGet();
+                    spin(lookupMicros);
+                    return User.withUsername((String) arguments[0]).password("{noop}x").roles("OPERATOR").build();
+                });
+
+        System.out.printf("%d users, %d requests, user lookup %d us%n", users, requests, lookupMicros);
+        System.out.println("strategy          total time  us/request   parses  user lookups  authenticated");
+
+        TokenRevocationList revocationList = new TokenRevocationList(100_000, 0.001);
+        AtomicLong authenticated = new AtomicLong();
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+            lookups.set(0);
+            authenticated.set(0);
+            long started = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                if (legacy(tokens[i % users], userDetailsService)) {
+                    authenticated.incrementAndGet();
+                }
+            }
+            if (print) {
+                report("original", System.nanoTime() - started, requests, requests * 2L, lookups.get(),
+                        authenticated.get());
+            }
+
+            lookups.set(0);
+            JwtAuthenticationFilter uncached = new JwtAuthenticationFilter(jwtUtil, userDetailsService,
+                    new TokenPrincipalCache(0), revocationList);
+            long elapsed = run(uncached, tokens, requests, authenticated);
+            if (print) {
+                report("single parse", elapsed, requests, requests, lookups.get(), authenticated.get());
+            }
+
+            lookups.set(0);
+            TokenPrincipalCache cache = new TokenPrincipalCache(10_000);
+            JwtAuthenticationFilter cached = new JwtAuthenticationFilter(jwtUtil, userDetailsService, cache,
+                    revocationList);
+            elapsed = run(cached, tokens, requests, authenticated);
+            if (print) {
+                long misses = ((Number) cache.getStatistics().get("misses")).longValue();
+                report("cache hit", elapsed, requests, misses, lookups.get(), authenticated.get());
+                System.out.println("cache: " + cache.getStatistics());
+            }
+        }
+    }
+
+    private static long run(JwtAuthenticationFilter filter, String[] tokens, int requests, AtomicLong authenticated) {
+        authenticated.set(0);
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+                JwtFilterBenchmark.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class},
+                (proxy, method, arguments) -> null);
+        FilterChain chain = (request, servletResponse) -> {
+            if (SecurityContextHolder.getContext().getAuthentication() != null) {
+                authenticated.incrementAndGet();
+            }
+        };
+        HttpServletRequest[] requestsByUser = new HttpServletRequest[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            requestsByUser[i] = request("Bearer " + tokens[i]);
+        }
+        long started = System.nanoTime();
+        try {
+            for (int i = 0; i < requests; i++) {
+                filter.doFilter(requestsByUser[i % tokens.length], response, chain);
+                SecurityContextHolder.clearContext();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return System.nanoTime() - started;
+    }
+
+    /**
+     * 原过滤器的认证步骤
+     */
+    private static boolean legacy(String token, UserDetailsService userDetailsService) {
+        try {
+            Key key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        Key key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        String username = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody()
+                .getSubject();
+        return userDetailsService.loadUserByUsername(username).isEnabled();
+    }
+
+    private static HttpServletRequest request(String authorization) {
+        return (HttpServletRequest) Proxy.newProxyInstance(JwtFilterBenchmark.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, arguments) -> {
+                    switch (method.getName()) {
+                        case "getHeader":
+                            return "Authorization".equals(arguments[0]) ? authorization : null;
+                        case "getDispatcherType":
+                            return DispatcherType.REQUEST;
+                        case "getRemoteAddr":
+                            return "127.0.0.1";
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static void spin(long micros) {
+        long until = System.nanoTime() + micros * 1000;
+        while (System.nanoTime() < until) {
+            // 忙等，避免sleep的调度粒度
+        }
+    }
+
+    private static void report(String name, long nanos, int requests, long parses, long lookups, long authenticated) {
+        System.out.printf("%-16s  %9.2fs  %10.2f  %7d  %12d  %13d%n", name, nanos / 1e9, nanos / 1e3 / requests,
+                parses, lookups, authenticated);
+    }
+}
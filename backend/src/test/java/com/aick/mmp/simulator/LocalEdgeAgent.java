@@ -0,0 +1,292 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.edge.EdgeCommandCodec;
+import com.aick.mmp.edge.EdgeCommandFrame;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地边缘节点代理，用于在没有真实边缘节点时验证命令通道
+ * <p>
+ * 一个监听端口可以代表任意多个节点：每条连接以hello中的UUID区分节点。每条连接一个读线程，
+ * 请求在调度线程中延迟response-delay（加随机抖动）后响应，同一连接上的请求并行处理、响应乱序返回。
+ * 新连接在读取第一个请求前等待handshake-delay，模拟TCP和TLS握手的往返。
+ * 支持的命令：hello、ping、restart（响应后断开连接）、config（保存配置）、
+ * stream（参数cameraId和action=start/stop）。仅用于本地验证，不在生产环境中启动。
+ * 用法：LocalEdgeAgent [端口=7070]
+ */
+@Slf4j
+public class LocalEdgeAgent implements AutoCloseable {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final int requestedPort;
+    private final long handshakeDelayMs;
+    private final long responseDelayMs;
+    private final ScheduledExecutorService scheduler;
+    private final Set<String> connectedNodes = ConcurrentHashMap.newKeySet();
+    private final Map<String, Map<String, Object>> configs = new ConcurrentHashMap<>();
+    private final Map<String, Set<Object>> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private volatile ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public LocalEdgeAgent(int port) {
+        this(port, 0, 0);
+    }
+
+    /**
+     * @param port 监听端口，0表示随机端口
+     * @param handshakeDelayMs 新连接的握手耗时
+     * @param responseDelayMs 每个请求的响应耗时（往返和处理），实际在0.5~1.5倍之间
+     */
+    public LocalEdgeAgent(int port, long handshakeDelayMs, long responseDelayMs) {
+        this.requestedPort = port;
+        this.handshakeDelayMs = handshakeDelayMs;
+        this.responseDelayMs = responseDelayMs;
+        this.scheduler = Executors.newScheduledThreadPool(4, r -> {
+            Thread thread = new Thread(r, "local-edge-agent-responder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        try (LocalEdgeAgent agent = new LocalEdgeAgent(port)) {
+            agent.start();
+            Thread.currentThread().join();
+        }
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(requestedPort, 4096, InetAddress.getLoopbackAddress());
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "local-edge-agent-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Local edge agent listening on 127.0.0.1:{}", getPort());
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        scheduler.shutdownNow();
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            log.debug("Error closing local edge agent: {}", e.getMessage());
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * 当前打开的连接数
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * 累计接受的连接数
+     */
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getCommands() {
+        return commands.get();
+    }
+
+    public int getConnectedNodes() {
+        return connectedNodes.size();
+    }
+
+    public Map<String, Object> getConfig(String nodeUuid) {
+        return configs.get(nodeUuid);
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                accepted.incrementAndGet();
+                Thread reader = new Thread(() -> serve(socket), "local-edge-agent-" + accepted.get());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Local edge agent accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        connections.incrementAndGet();
+        String[] node = new String[1];
+        try (Socket client = socket) {
+            sleep(handshakeDelayMs);
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            OutputStream out = new BufferedOutputStream(client.getOutputStream());
+            byte[] header = new byte[EdgeCommandCodec.HEADER_BYTES];
+            while (running) {
+                in.readFully(header);
+                int length = ByteBuffer.wrap(header).getInt(8);
+                if (length < 1 || length > EdgeCommandCodec.MAX_PAYLOAD_BYTES) {
+                    throw new IOException("invalid frame length " + length);
+                }
+                byte[] frame = Arrays.copyOf(header, EdgeCommandCodec.HEADER_BYTES + length);
+                in.readFully(frame, EdgeCommandCodec.HEADER_BYTES, length);
+                EdgeCommandFrame request = EdgeCommandCodec.decode(ByteBuffer.wrap(frame));
+                commands.incrementAndGet();
+                if ("hello".equals(request.getCommand())) {
+                    // hello在读线程中处理，之后的请求都属于该节点
+                    Object uuid = parse(request).get("uuid");
+                    if (uuid == null) {
+                        respond(out, EdgeCommandFrame.response(request.getRequestId(), false, bytes("missing uuid")));
+                        return;
+                    }
+                    node[0] = uuid.toString();
+                    connectedNodes.add(node[0]);
+                    respond(out, EdgeCommandFrame.response(request.getRequestId(), true, bytes("{}")));
+                    continue;
+                }
+                if (node[0] == null) {
+                    respond(out, EdgeCommandFrame.response(request.getRequestId(), false, bytes("hello required")));
+                    return;
+                }
+                long delay = responseDelayMs > 0
+                        ? (long) (responseDelayMs * (0.5 + ThreadLocalRandom.current().nextDouble())) : 0;
+                scheduler.schedule(() -> handle(client, out, node[0], request), delay, TimeUnit.MILLISECONDS);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Local edge agent connection closed: {}", e.getMessage());
+        } finally {
+            if (node[0] != null) {
+                connectedNodes.remove(node[0]);
+            }
+            connections.decrementAndGet();
+        }
+    }
+
+    private void handle(Socket socket, OutputStream out, String node, EdgeCommandFrame request) {
+        EdgeCommandFrame response;
+        boolean disconnect = false;
+        try {
+            Map<String, Object> params = parse(request);
+            switch (request.getCommand()) {
+                case "ping":
+                    response = ok(request, "{\"time\":" + System.currentTimeMillis() + "}");
+                    break;
+                case "restart":
+                    response = ok(request, "{\"restarting\":true}");
+                    disconnect = true;
+                    break;
+                case "config":
+                    configs.put(node, params);
+                    response = ok(request, "{\"applied\":" + params.size() + "}");
+                    break;
+                case "stream":
+                    response = stream(request, node, params);
+                    break;
+                default:
+                    response = EdgeCommandFrame.response(request.getRequestId(), false,
+                            bytes("Unknown command: " + request.getCommand()));
+                    break;
+            }
+        } catch (RuntimeException e) {
+            response = EdgeCommandFrame.response(request.getRequestId(), false, bytes(e.getMessage()));
+        }
+        try {
+            respond(out, response);
+            if (disconnect) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to respond to {}: {}", node, e.getMessage());
+        }
+    }
+
+    private EdgeCommandFrame stream(EdgeCommandFrame request, String node, Map<String, Object> params) {
+        Object cameraId = params.get("cameraId");
+        Object action = params.get("action");
+        if (cameraId == null) {
+            return EdgeCommandFrame.response(request.getRequestId(), false, bytes("missing cameraId"));
+        }
+        Set<Object> active = streams.computeIfAbsent(node, key -> ConcurrentHashMap.newKeySet());
+        if ("start".equals(action)) {
+            active.add(cameraId);
+        } else if ("stop".equals(action)) {
+            active.remove(cameraId);
+        } else {
+            return EdgeCommandFrame.response(request.getRequestId(), false, bytes("unknown action: " + action));
+        }
+        return ok(request, "{\"streams\":" + active.size() + "}");
+    }
+
+    private static void respond(OutputStream out, EdgeCommandFrame response) throws IOException {
+        ByteBuffer encoded = EdgeCommandCodec.encode(response);
+        synchronized (out) {
+            out.write(encoded.array(), 0, encoded.limit());
+            out.flush();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parse(EdgeCommandFrame request) {
+        try {
+            return request.getBody().length == 0 ? new ConcurrentHashMap<>()
+                    : objectMapper.readValue(request.getBody(), Map.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid JSON: " + e.getMessage());
+        }
+    }
+
+    private static EdgeCommandFrame ok(EdgeCommandFrame request, String body) {
+        return EdgeCommandFrame.response(request.getRequestId(), true, bytes(body));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.aick.mmp.simulator;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地RTSP测试服务器，用于在没有真实摄像头时验证RTSP客户端
+ * <p>
+ * 支持 OPTIONS/DESCRIBE/SETUP/PLAY/TEARDOWN，PLAY后按固定帧率通过interleaved通道推送
+ * 合成的H.264 RTP包（关键帧前发送STAP-A封装的SPS/PPS，大帧使用FU-A分片），
+ * 可选模拟丢包和乱序。仅用于本地验证，不在生产环境中启动。
+ */
+@Slf4j
+public class LocalRtspServer implements AutoCloseable {
+
+    /** 640x480 Baseline SPS/PPS */
+    static final byte[] SPS = {0x67, 0x42, 0x00, 0x1e, (byte) 0x95, (byte) 0xa8, 0x28, 0x0f, 0x64};
+    static final byte[] PPS = {0x68, (byte) 0xce, 0x3c, (byte) 0x80};
+
+    private static final int RTP_MTU = 1400;
+    private static final int PAYLOAD_TYPE = 96;
+
+    private final int requestedPort;
+    private final int frameRate;
+    private final int gopSize;
+    private final int keyframeSize;
+    private final int frameSize;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicInteger sessionCounter = new AtomicInteger();
+    private volatile double packetLossRate;
+    private volatile double reorderRate;
+    private volatile ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public LocalRtspServer(int port) {
+        this(port, 25, 50, 12000, 1800);
+    }
+
+    /**
+     * @param port 监听端口，0表示随机端口
+     * @param frameRate 推流帧率
+     * @param gopSize 关键帧间隔（帧数）
+     * @param keyframeSize 关键帧NAL大小（字节）
+     * @param frameSize 普通帧NAL大小（字节）
+     */
+    public LocalRtspServer(int port, int frameRate, int gopSize, int keyframeSize, int frameSize) {
+        this.requestedPort = port;
+        this.frameRate = frameRate;
+        this.gopSize = gopSize;
+        this.keyframeSize = keyframeSize;
+        this.frameSize = frameSize;
+        this.scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "local-rtsp-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(requestedPort, 1024, InetAddress.getLoopbackAddress());
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "local-rtsp-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Local RTSP server listening on {}", getUrl());
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        scheduler.shutdownNow();
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            log.debug("Error closing local RTSP server: {}", e.getMessage());
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getUrl() {
+        return "rtsp://127.0.0.1:" + getPort() + "/live";
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * 设置模拟丢包率（0-1）
+     */
+    public void setPacketLossRate(double packetLossRate) {
+        this.packetLossRate = packetLossRate;
+    }
+
+    /**
+     * 设置模拟乱序率（0-1），命中时与下一个包交换发送顺序
+     */
+    public void setReorderRate(double reorderRate) {
+        this.reorderRate = reorderRate;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread handler = new Thread(() -> handleClient(socket), "local-rtsp-client");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Local RTSP server accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handleClient(Socket socket) {
+        ClientSession session = null;
+        try {
+            session = new ClientSession(socket);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null) {
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+                String cseq = "0";
+                String line;
+                while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                    if (line.regionMatches(true, 0, "CSeq:", 0, 5)) {
+                        cseq = line.substring(5).trim();
+                    }
+                }
+                if (!session.handleRequest(requestLine, cseq)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Local RTSP client disconnected: {}", e.getMessage());
+        } finally {
+            if (session != null) {
+                session.stop();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Error closing local RTSP client socket: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 单个客户端会话
+     */
+    private class ClientSession {
+        private final OutputStream out;
+        private final String sessionId = "local" + sessionCounter.incrementAndGet();
+        private final Random random = new Random();
+        private final int ssrc = random.nextInt();
+        private ScheduledFuture<?> sender;
+        private int sequence = random.nextInt(0xFFFF);
+        private long timestamp = random.nextInt() & 0xFFFFFFFFL;
+        private long frameIndex;
+        private byte[] heldPacket;
+
+        ClientSession(Socket socket) throws IOException {
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        }
+
+        boolean handleRequest(String requestLine, String cseq) throws IOException {
+            String[] parts = requestLine.split(" ");
+            String method = parts[0];
+            String url = parts.length > 1 ? parts[1] : "";
+
+            switch (method) {
+                case "OPTIONS":
+                    respond(cseq, "Public: OPTIONS, DESCRIBE, SETUP, PLAY, TEARDOWN\r\n", null);
+                    return true;
+                case "DESCRIBE":
+                    respond(cseq, "Content-Base: " + url + "/\r\nContent-Type: application/sdp\r\n", buildSdp());
+                    return true;
+                case "SETUP":
+                    respond(cseq, "Transport: RTP/AVP/TCP;unicast;interleaved=0-1\r\nSession: " + sessionId
+                            + ";timeout=60\r\n", null);
+                    return true;
+                case "PLAY":
+                    respond(cseq, "Session: " + sessionId + "\r\nRange: npt=0.000-\r\n", null);
+                    startSending();
+                    return true;
+                case "TEARDOWN":
+                    respond(cseq, "Session: " + sessionId + "\r\n", null);
+                    return false;
+                default:
+                    respond(cseq, null, null, "501 Not Implemented");
+                    return true;
+            }
+        }
+
+        private String buildSdp() {
+            Base64.Encoder encoder = Base64.getEncoder();
+            return "v=0\r\n"
+                    + "o=- 0 0 IN IP4 127.0.0.1\r\n"
+                    + "s=AICK-MMP Local RTSP Server\r\n"
+                    + "t=0 0\r\n"
+                    + "a=control:*\r\n"
+                    + "m=video 0 RTP/AVP " + PAYLOAD_TYPE + "\r\n"
+                    + "a=rtpmap:" + PAYLOAD_TYPE + " H264/90000\r\n"
+                    + "a=fmtp:" + PAYLOAD_TYPE + " packetization-mode=1;profile-level-id=42001e;sprop-parameter-sets="
+                    + encoder.encodeToString(SPS) + "," + encoder.encodeToString(PPS) + "\r\n"
+                    + "a=framerate:" + frameRate + "\r\n"
+                    + "a=control:trackID=0\r\n";
+        }
+
+        private void respond(String cseq, String headers, String body) throws IOException {
+            respond(cseq, headers, body, "200 OK");
+        }
+
+        private void respond(String cseq, String headers, String body, String status) throws IOException {
+            byte[] bodyBytes = body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            StringBuilder response = new StringBuilder()
+                    .append("RTSP/1.0 ").append(status).append("\r\n")
+                    .append("CSeq: ").append(cseq).append("\r\n");
+            if (headers != null) {
+                response.append(headers);
+            }
+            if (bodyBytes.length > 0) {
+                response.append("Content-Length: ").append(bodyBytes.length).append("\r\n");
+            }
+            response.append("\r\n");
+            synchronized (this) {
+                out.write(response.toString().getBytes(StandardCharsets.US_ASCII));
+                out.write(bodyBytes);
+                out.flush();
+            }
+        }
+
+        private synchronized void startSending() {
+            if (sender != null) {
+                return;
+            }
+            activeSessions.incrementAndGet();
+            sender = scheduler.scheduleAtFixedRate(this::sendFrame, 0, 1000L / frameRate, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void stop() {
+            if (sender != null) {
+                sender.cancel(false);
+                sender = null;
+                activeSessions.decrementAndGet();
+            }
+        }
+
+        private synchronized void sendFrame() {
+            try {
+                List<byte[]> packets = new ArrayList<>();
+                boolean keyframe = frameIndex % gopSize == 0;
+                if (keyframe) {
+                    packets.add(buildStapA());
+                }
+                byte[] nal = new byte[keyframe ? keyframeSize : frameSize];
+                random.nextBytes(nal);
+                nal[0] = (byte) (keyframe ? 0x65 : 0x41);
+                packetizeNal(nal, packets);
+
+                for (int i = 0; i < packets.size(); i++) {
+                    boolean marker = i == packets.size() - 1;
+                    byte[] rtp = buildRtp(packets.get(i), marker);
+                    if (packetLossRate > 0 && random.nextDouble() < packetLossRate) {
+                        continue;
+                    }
+                    if (heldPacket == null && reorderRate > 0 && random.nextDouble() < reorderRate) {
+                        heldPacket = rtp;
+                        continue;
+                    }
+                    writeInterleaved(rtp);
+                    if (heldPacket != null) {
+                        writeInterleaved(heldPacket);
+                        heldPacket = null;
+                    }
+                }
+                out.flush();
+                frameIndex++;
+                timestamp = (timestamp + 90000 / frameRate) & 0xFFFFFFFFL;
+            } catch (IOException e) {
+                log.debug("Local RTSP session {} send failed: {}", sessionId, e.getMessage());
+                stop();
+            }
+        }
+
+        private byte[] buildStapA() {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + SPS.length + 2 + PPS.length);
+            buffer.put((byte) 24);
+            buffer.putShort((short) SPS.length).put(SPS);
+            buffer.putShort((short) PPS.length).put(PPS);
+            return buffer.array();
+        }
+
+        private void packetizeNal(byte[] nal, List<byte[]> packets) {
+            if (nal.length <= RTP_MTU) {
+                packets.add(nal);
+                return;
+            }
+            byte indicator = (byte) ((nal[0] & 0xE0) | 28);
+            int nalType = nal[0] & 0x1F;
+            int offset = 1;
+            while (offset < nal.length) {
+                int length = Math.min(RTP_MTU - 2, nal.length - offset);
+                byte header = (byte) nalType;
+                if (offset == 1) {
+                    header |= 0x80;
+                }
+                if (offset + length == nal.length) {
+                    header |= 0x40;
+                }
+                byte[] fragment = new byte[2 + length];
+                fragment[0] = indicator;
+                fragment[1] = header;
+                System.arraycopy(nal, offset, fragment, 2, length);
+                packets.add(fragment);
+                offset += length;
+            }
+        }
+
+        private byte[] buildRtp(byte[] payload, boolean marker) {
+            ByteBuffer buffer = ByteBuffer.allocate(12 + payload.length);
+            buffer.put((byte) 0x80);
+            buffer.put((byte) ((marker ? 0x80 : 0) | PAYLOAD_TYPE));
+            buffer.putShort((short) sequence);
+            buffer.putInt((int) timestamp);
+            buffer.putInt(ssrc);
+            buffer.put(payload);
+            sequence = (sequence + 1) & 0xFFFF;
+            return buffer.array();
+        }
+
+        private void writeInterleaved(byte[] rtp) throws IOException {
+            out.write('$');
+            out.write(0);
+            out.write((rtp.length >> 8) & 0xFF);
+            out.write(rtp.length & 0xFF);
+            out.write(rtp);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8554;
+        LocalRtspServer server = new LocalRtspServer(port);
+        server.start();
+        Thread.currentThread().join();
+    }
+}
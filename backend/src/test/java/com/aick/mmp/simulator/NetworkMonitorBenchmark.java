@@ -0,0 +1,131 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.model.CdnNode;
+import com.aick.mmp.repository.StreamSessionRepository;
+import com.aick.mmp.service.AdaptiveBitrateService;
+import com.aick.mmp.service.CdnNodeService;
+import com.aick.mmp.service.StreamMigrationService;
+import com.aick.mmp.service.impl.NetworkMonitorServiceImpl;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 网络监控基准：以模拟时间驱动{@link NetworkMonitorServiceImpl}，若干CDN节点每5秒上报一次时延、丢包率和带宽，
+ * 对比按单个样本判定和按滑动窗口加滞回判定时的降级次数、真实故障的发现延迟，以及每次心跳的评估耗时
+ * <p>
+ * 正常节点的指标带噪声，并有少量孤立的异常样本（时延尖峰、丢包突发、带宽骤降）；
+ * 每10个节点中有1个在第20~30分钟时延持续升高到约450ms，作为应被发现的真实故障。
+ * 用法：NetworkMonitorBenchmark [节点数=2000] [分钟数=60]
+ */
+public class NetworkMonitorBenchmark {
+
+    private static final long INTERVAL_MS = 5000;
+    private static final long FAULT_START = 20 * 60_000L;
+    private static final long FAULT_END = 30 * 60_000L;
+
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int minutes = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        long start = 1_700_000_000_000L;
+        AtomicLong now = new AtomicLong(start);
+
+        CdnNode[] cdnNodes = new CdnNode[nodes];
+        for (int i = 0; i < nodes; i++) {
+            cdnNodes[i] = CdnNode.builder().id((long) i).name("cdn-" + i).status(CdnNode.NodeStatus.ONLINE).build();
+        }
+        AtomicLong degradations = new AtomicLong();
+        AtomicLong faultDetections = new AtomicLong();
+        AtomicLong detectionDelay = new AtomicLong();
+        CdnNodeService cdnNodeService = (CdnNodeService) Proxy.newProxyInstance(
+                NetworkMonitorBenchmark.class.getClassLoader(), new Class<?>[]{CdnNodeService.class},
+                (proxy, method, arguments) -> {
+                    if (!method.getName().equals("updateCdnNodeStatus")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    CdnNode node = cdnNodes[((Long) arguments[0]).intValue()];
+                    node.setStatus(CdnNode.NodeStatus.valueOf((String) arguments[1]));
+                    if (node.getStatus() == CdnNode.NodeStatus.DEGRADED) {
+                        degradations.incrementAndGet();
+                        long elapsed = now.get() - start;
+                        if (faulty(node.getId().intValue()) && elapsed >= FAULT_START && elapsed < FAULT_END) {
+                            faultDetections.incrementAndGet();
+                            detectionDelay.addAndGet(elapsed - FAULT_START);
+                        }
+                    }
+                    return null;
+                });
+        StreamSessionRepository sessions = (StreamSessionRepository) Proxy.newProxyInstance(
+                NetworkMonitorBenchmark.class.getClassLoader(), new Class<?>[]{StreamSessionRepository.class},
+                (proxy, method, arguments) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        // 基准只评估CDN节点，不涉及边缘节点的码率控制
+        AdaptiveBitrateService bitrateService = (AdaptiveBitrateService) Proxy.newProxyInstance(
+                NetworkMonitorBenchmark.class.getClassLoader(), new Class<?>[]{AdaptiveBitrateService.class},
+                (proxy, method, arguments) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        // 基准只统计降级判定，迁出请求直接忽略
+        StreamMigrationService migrationService = (StreamMigrationService) Proxy.newProxyInstance(
+                NetworkMonitorBenchmark.class.getClassLoader(), new Class<?>[]{StreamMigrationService.class},
+                (proxy, method, arguments) -> null);
+        NetworkMonitorServiceImpl monitor = new NetworkMonitorServiceImpl(sessions, cdnNodeService, bitrateService,
+                migrationService, now::get);
+
+        Random random = new Random(11);
+        boolean[] singleSampleDegraded = new boolean[nodes];
+        long singleSampleDegradations = 0;
+        long heartbeats = 0;
+        long evaluationNanos = 0;
+        Map<String, Double> metrics = new HashMap<>();
+        for (long elapsed = 0; elapsed < minutes * 60_000L; elapsed += INTERVAL_MS) {
+            for (int i = 0; i < nodes; i++) {
+                now.set(start + elapsed + i % 1000);
+                boolean fault = faulty(i) && elapsed >= FAULT_START && elapsed < FAULT_END;
+                double latency = (fault ? 450 : 80) * Math.exp(random.nextGaussian() * 0.25);
+                if (random.nextInt(100) == 0) {
+                    latency += 300 + random.nextInt(500);
+                }
+                double packetLoss = random.nextInt(200) == 0 ? 3 + random.nextInt(10) : random.nextInt(4) * 0.1;
+                double bandwidth = random.nextInt(300) == 0 ? 2000 : 20000 + random.nextGaussian() * 2000;
+                metrics.put("latency", latency);
+                metrics.put("packetLoss", packetLoss);
+                metrics.put("bandwidth", bandwidth);
+
+                // 原实现：按单个样本判定，超过阈值即降级，回到阈值内即恢复
+                boolean exceeded = latency > 300 || packetLoss > 2 || bandwidth < 5000;
+                if (exceeded && !singleSampleDegraded[i]) {
+                    singleSampleDegradations++;
+                }
+                singleSampleDegraded[i] = exceeded;
+
+                long started = System.nanoTime();
+                monitor.evaluateAndAdjustCdn(cdnNodes[i], metrics);
+                evaluationNanos += System.nanoTime() - started;
+                heartbeats++;
+            }
+        }
+
+        int faulty = 0;
+        int degradedAtEnd = 0;
+        for (int i = 0; i < nodes; i++) {
+            faulty += faulty(i) ? 1 : 0;
+            degradedAtEnd += cdnNodes[i].getStatus() == CdnNode.NodeStatus.DEGRADED ? 1 : 0;
+        }
+        System.out.printf("%d heartbeats from %d nodes over %d simulated minutes, %.0f ns per evaluation%n",
+                heartbeats, nodes, minutes, (double) evaluationNanos / heartbeats);
+        System.out.printf("single-sample rule: %d degradations%n", singleSampleDegradations);
+        System.out.printf("windowed rule: %d degradations, %d/%d faults detected, mean detection delay %.1f s, "
+                        + "%d nodes still degraded at end%n", degradations.get(), faultDetections.get(), faulty,
+                faultDetections.get() == 0 ? 0 : detectionDelay.get() / 1000.0 / faultDetections.get(), degradedAtEnd);
+        System.out.println("node 0: " + monitor.getNetworkStatistics(cdnNodes[0]));
+    }
+
+    private static boolean faulty(int node) {
+        return node % 10 == 3;
+    }
+}
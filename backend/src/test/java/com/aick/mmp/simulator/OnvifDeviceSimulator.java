@@ -0,0 +1,412 @@
+package com.aick.mmp.simulator;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.aick.mmp.adapter.protocol.onvif.OnvifClient;
+import com.aick.mmp.adapter.protocol.onvif.OnvifDevice;
+import com.aick.mmp.adapter.protocol.onvif.OnvifProfile;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ONVIF设备模拟器，用于在没有真实摄像头时验证ONVIF客户端并评估拉流前的SOAP握手耗时
+ * <p>
+ * 提供设备服务（GetCapabilities、GetSystemDateAndTime）和媒体服务（GetProfiles、GetStreamUri、
+ * SetVideoEncoderConfiguration），校验WS-Security PasswordDigest，可模拟设备处理延迟和时钟偏差；
+ * 流地址指向进程内的{@link LocalRtspServer}。基准模式下分别测量每次新建客户端（新TCP连接加完整握手）
+ * 和复用缓存与长连接两种情况下解析流地址的耗时。
+ * 用法：OnvifDeviceSimulator [端口=8899] [处理延迟毫秒=100] [用户名=admin] [密码=admin] [基准次数=0]
+ * [时钟偏差秒=0]；基准次数为0时只作为模拟设备运行。
+ * <p>
+ * 仅用于本地或预发环境评估，不在生产环境中启动。
+ */
+public class OnvifDeviceSimulator implements AutoCloseable {
+
+    private static final Pattern USERNAME = Pattern.compile("<(?:\\w+:)?Username>([^<]*)</");
+    private static final Pattern PASSWORD = Pattern.compile("<(?:\\w+:)?Password[^>]*>([^<]*)</");
+    private static final Pattern NONCE = Pattern.compile("<(?:\\w+:)?Nonce[^>]*>([^<]*)</");
+    private static final Pattern CREATED = Pattern.compile("<(?:\\w+:)?Created[^>]*>([^<]*)</");
+    private static final Pattern CONFIGURATION_TOKEN = Pattern.compile("<trt:Configuration token=\"([^\"]+)\"");
+    private static final long MAX_CLOCK_SKEW_MS = 5000;
+
+    private final int requestedPort;
+    private final long latencyMs;
+    private final String username;
+    private final String password;
+    private final long clockSkewMs;
+    private final Map<String, Encoder> encoders = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private HttpServer server;
+    private LocalRtspServer rtspServer;
+
+    public OnvifDeviceSimulator(int port, long latencyMs, String username, String password, long clockSkewMs) {
+        this.requestedPort = port;
+        this.latencyMs = latencyMs;
+        this.username = username;
+        this.password = password;
+        this.clockSkewMs = clockSkewMs;
+        encoders.put("VideoEncoder_1", new Encoder("VideoEncoder_1", "MainStream", 1920, 1080, 25, 4096));
+        encoders.put("VideoEncoder_2", new Encoder("VideoEncoder_2", "SubStream", 640, 480, 15, 512));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8899;
+        long latencyMs = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        String username = args.length > 2 ? args[2] : "admin";
+        String password = args.length > 3 ? args[3] : "admin";
+        int iterations = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        long clockSkewMs = args.length > 5 ? Long.parseLong(args[5]) * 1000 : 0;
+
+        OnvifDeviceSimulator simulator = new OnvifDeviceSimulator(port, latencyMs, username, password, clockSkewMs);
+        simulator.start();
+        System.out.printf(Locale.ROOT, "ONVIF device listening on %s (latency %d ms), stream %s%n",
+                simulator.getServiceUrl(), latencyMs, simulator.rtspServer.getUrl());
+        if (iterations <= 0) {
+            Thread.currentThread().join();
+            return;
+        }
+        try {
+            simulator.benchmark(iterations);
+        } finally {
+            simulator.close();
+        }
+    }
+
+    public void start() throws IOException {
+        // JDK内置HttpServer默认未开启TCP_NODELAY，响应头和响应体分两次写出时会叠加约40ms的延迟确认
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        rtspServer = new LocalRtspServer(0);
+        rtspServer.start();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", requestedPort), 64);
+        server.createContext("/onvif/", this::handle);
+        server.setExecutor(Executors.newFixedThreadPool(8, runnable -> {
+            Thread thread = new Thread(runnable, "onvif-device");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (rtspServer != null) {
+            rtspServer.close();
+        }
+    }
+
+    public String getServiceUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/onvif/device_service";
+    }
+
+    /**
+     * 对比未缓存（每次新客户端）和已缓存（同一客户端）时从发起到拿到流地址的耗时
+     */
+    private void benchmark(int iterations) {
+        OnvifDevice device = OnvifDevice.of(getServiceUrl(), username, password);
+        long[] cold = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            OnvifClient client = new OnvifClient(3000, 5000, 600000);
+            client.start();
+            long start = System.nanoTime();
+            OnvifProfile profile = client.getProfile(device, null);
+            client.getStreamUri(device, profile.getToken());
+            cold[i] = System.nanoTime() - start;
+            client.shutdown();
+        }
+
+        OnvifClient client = new OnvifClient(3000, 5000, 600000);
+        client.start();
+        OnvifProfile profile = client.getProfile(device, null);
+        String uri = client.getStreamUri(device, profile.getToken());
+        long[] warm = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            OnvifProfile cached = client.getProfile(device, null);
+            client.getStreamUri(device, cached.getToken());
+            warm[i] = System.nanoTime() - start;
+        }
+        System.out.printf(Locale.ROOT, "profile %s (%s %dx%d) -> %s%n", profile.getToken(), profile.getName(),
+                profile.getVideoEncoder().getWidth(), profile.getVideoEncoder().getHeight(), uri);
+        print("uncached (new connection + full SOAP handshake)", cold);
+        print("cached (pooled connection, GetStreamUri only)", warm);
+        System.out.println("client: " + client.getStatistics());
+        System.out.println("device requests: " + requests + ", tcp connections: " + clientPorts.size());
+        client.shutdown();
+    }
+
+    private static void print(String label, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf(Locale.ROOT, "%-50s p50=%6.1f ms p99=%6.1f ms max=%6.1f ms%n", label,
+                sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.99)] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            String request = read(exchange.getRequestBody());
+            String operation = operation(request);
+            requests.computeIfAbsent(operation, key -> new AtomicLong()).incrementAndGet();
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+            if (!"GetSystemDateAndTime".equals(operation) && !authenticated(request)) {
+                respond(exchange, 400, fault("ter:NotAuthorized", "Sender not authorized"));
+                return;
+            }
+            switch (operation) {
+                case "GetCapabilities":
+                    respond(exchange, 200, capabilities(exchange));
+                    break;
+                case "GetSystemDateAndTime":
+                    respond(exchange, 200, systemDateAndTime());
+                    break;
+                case "GetProfiles":
+                    respond(exchange, 200, profiles());
+                    break;
+                case "GetStreamUri":
+                    respond(exchange, 200, streamUri(request));
+                    break;
+                case "SetVideoEncoderConfiguration":
+                    respond(exchange, 200, setVideoEncoderConfiguration(request));
+                    break;
+                default:
+                    respond(exchange, 400, fault("ter:ActionNotSupported", "Unsupported operation"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String operation(String request) {
+        int body = request.indexOf("Body>");
+        int start = request.indexOf('<', body + 5);
+        int end = start;
+        while (end < request.length() && " />".indexOf(request.charAt(end)) < 0) {
+            end++;
+        }
+        String name = request.substring(start + 1, end);
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    private boolean authenticated(String request) {
+        if (password == null || password.isEmpty()) {
+            return true;
+        }
+        String user = group(USERNAME, request);
+        String digest = group(PASSWORD, request);
+        String nonce = group(NONCE, request);
+        String created = group(CREATED, request);
+        if (!username.equals(user) || digest == null || nonce == null || created == null) {
+            return false;
+        }
+        try {
+            long createdAt = Instant.parse(created).toEpochMilli();
+            if (Math.abs(createdAt - (System.currentTimeMillis() + clockSkewMs)) > MAX_CLOCK_SKEW_MS) {
+                return false;
+            }
+        } catch (RuntimeException e) {
+            return false;
+        }
+        byte[] nonceBytes = Base64.getDecoder().decode(nonce);
+        byte[] createdBytes = created.getBytes(StandardCharsets.UTF_8);
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        byte[] input = new byte[nonceBytes.length + createdBytes.length + passwordBytes.length];
+        System.arraycopy(nonceBytes, 0, input, 0, nonceBytes.length);
+        System.arraycopy(createdBytes, 0, input, nonceBytes.length, createdBytes.length);
+        System.arraycopy(passwordBytes, 0, input, nonceBytes.length + createdBytes.length, passwordBytes.length);
+        return Base64.getEncoder().encodeToString(DigestUtil.sha1(input)).equals(digest);
+    }
+
+    private String capabilities(HttpExchange exchange) {
+        String base = "http://" + exchange.getLocalAddress().getAddress().getHostAddress() + ":"
+                + exchange.getLocalAddress().getPort() + "/onvif/";
+        return envelope("<tds:GetCapabilitiesResponse><tds:Capabilities>"
+                + "<tt:Analytics><tt:XAddr>" + base + "analytics_service</tt:XAddr></tt:Analytics>"
+                + "<tt:Device><tt:XAddr>" + base + "device_service</tt:XAddr><tt:Network><tt:IPFilter>false"
+                + "</tt:IPFilter></tt:Network></tt:Device>"
+                + "<tt:Events><tt:XAddr>" + base + "event_service</tt:XAddr></tt:Events>"
+                + "<tt:Imaging><tt:XAddr>" + base + "imaging_service</tt:XAddr></tt:Imaging>"
+                + "<tt:Media><tt:XAddr>" + base + "media_service</tt:XAddr><tt:StreamingCapabilities>"
+                + "<tt:RTPMulticast>false</tt:RTPMulticast><tt:RTP_TCP>true</tt:RTP_TCP>"
+                + "<tt:RTP_RTSP_TCP>true</tt:RTP_RTSP_TCP></tt:StreamingCapabilities></tt:Media>"
+                + "<tt:PTZ><tt:XAddr>" + base + "ptz_service</tt:XAddr></tt:PTZ>"
+                + "<tt:Extension><tt:DeviceIO><tt:XAddr>" + base + "deviceio_service</tt:XAddr></tt:DeviceIO>"
+                + "</tt:Extension></tds:Capabilities></tds:GetCapabilitiesResponse>");
+    }
+
+    private String systemDateAndTime() {
+        ZonedDateTime now = Instant.ofEpochMilli(System.currentTimeMillis() + clockSkewMs).atZone(ZoneOffset.UTC);
+        return envelope("<tds:GetSystemDateAndTimeResponse><tds:SystemDateAndTime>"
+                + "<tt:DateTimeType>Manual</tt:DateTimeType><tt:DaylightSavings>false</tt:DaylightSavings>"
+                + "<tt:TimeZone><tt:TZ>CST-8</tt:TZ></tt:TimeZone><tt:UTCDateTime>"
+                + "<tt:Time><tt:Hour>" + now.getHour() + "</tt:Hour><tt:Minute>" + now.getMinute()
+                + "</tt:Minute><tt:Second>" + now.getSecond() + "</tt:Second></tt:Time>"
+                + "<tt:Date><tt:Year>" + now.getYear() + "</tt:Year><tt:Month>" + now.getMonthValue()
+                + "</tt:Month><tt:Day>" + now.getDayOfMonth() + "</tt:Day></tt:Date>"
+                + "</tt:UTCDateTime></tds:SystemDateAndTime></tds:GetSystemDateAndTimeResponse>");
+    }
+
+    private String profiles() {
+        StringBuilder body = new StringBuilder("<trt:GetProfilesResponse>");
+        int index = 1;
+        for (String token : new String[]{"VideoEncoder_1", "VideoEncoder_2"}) {
+            Encoder encoder = encoders.get(token);
+            body.append("<trt:Profiles token=\"Profile_").append(index).append("\" fixed=\"true\">")
+                    .append("<tt:Name>").append(encoder.name).append("</tt:Name>")
+                    .append("<tt:VideoSourceConfiguration token=\"VideoSourceToken\"><tt:Name>VideoSourceConfig")
+                    .append("</tt:Name><tt:UseCount>2</tt:UseCount><tt:SourceToken>VideoSource_1</tt:SourceToken>")
+                    .append("<tt:Bounds x=\"0\" y=\"0\" width=\"1920\" height=\"1080\"/></tt:VideoSourceConfiguration>")
+                    .append("<tt:AudioSourceConfiguration token=\"AudioSourceConfigToken\"><tt:Name>AudioSource")
+                    .append("</tt:Name><tt:UseCount>2</tt:UseCount><tt:SourceToken>AudioSource_1</tt:SourceToken>")
+                    .append("</tt:AudioSourceConfiguration>")
+                    .append("<tt:VideoEncoderConfiguration token=\"").append(token).append("\">")
+                    .append("<tt:Name>").append(token).append("</tt:Name><tt:UseCount>1</tt:UseCount>")
+                    .append("<tt:Encoding>H264</tt:Encoding><tt:Resolution><tt:Width>").append(encoder.width)
+                    .append("</tt:Width><tt:Height>").append(encoder.height).append("</tt:Height></tt:Resolution>")
+                    .append("<tt:Quality>3</tt:Quality><tt:RateControl><tt:FrameRateLimit>").append(encoder.frameRate)
+                    .append("</tt:FrameRateLimit><tt:EncodingInterval>1</tt:EncodingInterval><tt:BitrateLimit>")
+                    .append(encoder.bitrate).append("</tt:BitrateLimit></tt:RateControl>")
+                    .append("<tt:H264><tt:GovLength>50</tt:GovLength><tt:H264Profile>Main</tt:H264Profile></tt:H264>")
+                    .append("<tt:Multicast><tt:Address><tt:Type>IPv4</tt:Type><tt:IPv4Address>239.0.0.1")
+                    .append("</tt:IPv4Address></tt:Address><tt:Port>8600</tt:Port><tt:TTL>128</tt:TTL>")
+                    .append("<tt:AutoStart>false</tt:AutoStart></tt:Multicast>")
+                    .append("<tt:SessionTimeout>PT5S</tt:SessionTimeout></tt:VideoEncoderConfiguration>")
+                    .append("<tt:AudioEncoderConfiguration token=\"AudioEncoderToken\"><tt:Name>AudioEncoder")
+                    .append("</tt:Name><tt:UseCount>2</tt:UseCount><tt:Encoding>G711</tt:Encoding>")
+                    .append("<tt:Bitrate>64</tt:Bitrate><tt:SampleRate>8</tt:SampleRate>")
+                    .append("<tt:Multicast><tt:Address><tt:Type>IPv4</tt:Type><tt:IPv4Address>0.0.0.0")
+                    .append("</tt:IPv4Address></tt:Address><tt:Port>8602</tt:Port><tt:TTL>128</tt:TTL>")
+                    .append("<tt:AutoStart>false</tt:AutoStart></tt:Multicast>")
+                    .append("<tt:SessionTimeout>PT5S</tt:SessionTimeout></tt:AudioEncoderConfiguration>")
+                    .append("<tt:PTZConfiguration token=\"PTZToken\"><tt:Name>PTZ</tt:Name>")
+                    .append("<tt:UseCount>2</tt:UseCount><tt:NodeToken>PTZNODETOKEN</tt:NodeToken>")
+                    .append("</tt:PTZConfiguration></trt:Profiles>");
+            index++;
+        }
+        return envelope(body.append("</trt:GetProfilesResponse>").toString());
+    }
+
+    private String streamUri(String request) {
+        String token = between(request, "ProfileToken>", "</");
+        if (!"Profile_1".equals(token) && !"Profile_2".equals(token)) {
+            return fault("ter:NoProfile", "Profile token does not exist");
+        }
+        return envelope("<trt:GetStreamUriResponse><trt:MediaUri><tt:Uri>" + rtspServer.getUrl()
+                + "</tt:Uri><tt:InvalidAfterConnect>false</tt:InvalidAfterConnect>"
+                + "<tt:InvalidAfterReboot>false</tt:InvalidAfterReboot><tt:Timeout>PT60S</tt:Timeout>"
+                + "</trt:MediaUri></trt:GetStreamUriResponse>");
+    }
+
+    private String setVideoEncoderConfiguration(String request) {
+        String token = group(CONFIGURATION_TOKEN, request);
+        Encoder encoder = token == null ? null : encoders.get(token);
+        if (encoder == null) {
+            return fault("ter:NoConfig", "Configuration token does not exist");
+        }
+        encoder.width = Integer.parseInt(between(request, "Width>", "</"));
+        encoder.height = Integer.parseInt(between(request, "Height>", "</"));
+        encoder.frameRate = Integer.parseInt(between(request, "FrameRateLimit>", "</"));
+        encoder.bitrate = Integer.parseInt(between(request, "BitrateLimit>", "</"));
+        return envelope("<trt:SetVideoEncoderConfigurationResponse/>");
+    }
+
+    private static String envelope(String body) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://www.w3.org/2003/05/soap-envelope\""
+                + " xmlns:tt=\"http://www.onvif.org/ver10/schema\""
+                + " xmlns:tds=\"http://www.onvif.org/ver10/device/wsdl\""
+                + " xmlns:trt=\"http://www.onvif.org/ver10/media/wsdl\""
+                + " xmlns:ter=\"http://www.onvif.org/ver10/error\">"
+                + "<SOAP-ENV:Body>" + body + "</SOAP-ENV:Body></SOAP-ENV:Envelope>";
+    }
+
+    private static String fault(String subcode, String reason) {
+        return envelope("<SOAP-ENV:Fault><SOAP-ENV:Code><SOAP-ENV:Value>SOAP-ENV:Sender</SOAP-ENV:Value>"
+                + "<SOAP-ENV:Subcode><SOAP-ENV:Value>" + subcode + "</SOAP-ENV:Value></SOAP-ENV:Subcode>"
+                + "</SOAP-ENV:Code><SOAP-ENV:Reason><SOAP-ENV:Text xml:lang=\"en\">" + reason
+                + "</SOAP-ENV:Text></SOAP-ENV:Reason></SOAP-ENV:Fault>");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        // 业务错误同样以SOAP Fault返回，按SOAP 1.2约定使用HTTP 400
+        int code = status == 200 && body.contains(":Fault>") ? 400 : status;
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/soap+xml; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String group(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static String between(String text, String open, String close) {
+        int start = text.indexOf(open);
+        if (start < 0) {
+            return "";
+        }
+        int end = text.indexOf(close, start + open.length());
+        return end < 0 ? "" : text.substring(start + open.length(), end).trim();
+    }
+
+    /**
+     * 可被SetVideoEncoderConfiguration修改的编码器参数
+     */
+    private static final class Encoder {
+        private final String token;
+        private final String name;
+        private volatile int width;
+        private volatile int height;
+        private volatile int frameRate;
+        private volatile int bitrate;
+
+        Encoder(String token, String name, int width, int height, int frameRate, int bitrate) {
+            this.token = token;
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.bitrate = bitrate;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.adapter.protocol.media.AccessUnit;
+import com.aick.mmp.adapter.protocol.media.AccessUnitListener;
+import com.aick.mmp.adapter.protocol.media.BufferPool;
+import com.aick.mmp.adapter.protocol.media.IngestStatistics;
+import com.aick.mmp.adapter.protocol.media.MediaIngestPipeline;
+import com.aick.mmp.adapter.protocol.media.PooledBuffer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * GB28181 PS解包吞吐量基准：把PS录像按包头切分、按MTU封装成RTP后反复送入{@link MediaIngestPipeline}，
+ * 以线程CPU时间计算单核MB/s
+ * <p>
+ * 录像文件为设备推流RTP载荷按顺序拼接的原始PS数据（例如抓包后导出的RTP载荷，或ffmpeg -f vob的输出），
+ * 每个PS包使用包头中的SCR作为RTP时间戳。不指定文件时使用合成的1080p码率PS流（含音频包）。
+ * 测量范围包含RTP包写入池化缓冲区、抖动缓冲和解包重组，与媒体接收线程的工作一致。
+ * 用法：PsDemuxBenchmark [时长秒=10] [PS录像文件...]
+ */
+public class PsDemuxBenchmark {
+
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+
+    private final List<byte[]> packets;
+    private final long psBytes;
+    private final long duration;
+    private final BufferPool bufferPool = new BufferPool();
+
+    private long accessUnits;
+    private long keyframes;
+    private long elementaryBytes;
+    private AccessUnit.Codec codec;
+
+    PsDemuxBenchmark(List<byte[]> packs, List<Long> timestamps) {
+        this.packets = new ArrayList<>();
+        long bytes = 0;
+        int sequence = 0;
+        long first = timestamps.get(0);
+        for (int i = 0; i < packs.size(); i++) {
+            List<byte[]> rtp = PsStreamGenerator.packetize(packs.get(i), sequence, timestamps.get(i) - first, 1);
+            sequence += rtp.size();
+            packets.addAll(rtp);
+            bytes += packs.get(i).length;
+        }
+        this.psBytes = bytes;
+        // 下一轮的时间戳接在本轮之后，避免被当作乱序或时间戳回退
+        this.duration = timestamps.get(timestamps.size() - 1) - first + 3600;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        List<byte[]> packs = new ArrayList<>();
+        List<Long> timestamps = new ArrayList<>();
+        if (args.length > 1) {
+            for (String file : Arrays.asList(args).subList(1, args.length)) {
+                splitPacks(Files.readAllBytes(Paths.get(file)), packs, timestamps);
+            }
+            System.out.printf(Locale.ROOT, "capture: %d files, %d packs%n", args.length - 1, packs.size());
+        } else {
+            // 约4Mbps、25fps、GOP 50
+            PsStreamGenerator generator = new PsStreamGenerator(120_000, 18_000, 50, 25);
+            for (int i = 0; i < 250; i++) {
+                long pts = generator.nextTimestamp();
+                packs.add(generator.nextVideoFrame());
+                timestamps.add(pts);
+                packs.add(generator.audioPack(pts));
+                timestamps.add(pts);
+            }
+            System.out.printf(Locale.ROOT, "synthetic: %d packs (250 video frames + audio)%n", packs.size());
+        }
+        if (packs.isEmpty()) {
+            System.out.println("No PS pack header found in capture");
+            return;
+        }
+        new PsDemuxBenchmark(packs, timestamps).run(seconds * 1_000_000_000L);
+    }
+
+    /**
+     * 在 00 00 01 BA 处切分PS数据，包头之前的数据并入第一个包
+     */
+    static void splitPacks(byte[] data, List<byte[]> packs, List<Long> timestamps) {
+        int start = -1;
+        for (int i = 0; i + 4 <= data.length; i++) {
+            if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1 && (data[i + 3] & 0xFF) == 0xBA) {
+                if (start >= 0) {
+                    packs.add(Arrays.copyOfRange(data, start, i));
+                    timestamps.add(readScr(data, start + 4));
+                }
+                start = i;
+                i += 3;
+            }
+        }
+        if (start >= 0) {
+            packs.add(Arrays.copyOfRange(data, start, data.length));
+            timestamps.add(readScr(data, start + 4));
+        }
+    }
+
+    private static long readScr(byte[] data, int offset) {
+        if (offset + 5 > data.length) {
+            return 0;
+        }
+        long b0 = data[offset] & 0xFF;
+        long b1 = data[offset + 1] & 0xFF;
+        long b2 = data[offset + 2] & 0xFF;
+        long b3 = data[offset + 3] & 0xFF;
+        long b4 = data[offset + 4] & 0xFF;
+        return ((b0 >> 3) & 0x07) << 30 | (b0 & 0x03) << 28 | b1 << 20 | ((b2 >> 3) & 0x1F) << 15
+                | (b2 & 0x03) << 13 | b3 << 5 | (b4 >> 3) & 0x1F;
+    }
+
+    void run(long measureNanos) {
+        AccessUnitListener listener = new AccessUnitListener() {
+            @Override
+            public void onAccessUnit(AccessUnit accessUnit) {
+                accessUnits++;
+                elementaryBytes += accessUnit.getSize();
+                codec = accessUnit.getCodec();
+                if (accessUnit.isKeyframe()) {
+                    keyframes++;
+                }
+            }
+        };
+        MediaIngestPipeline pipeline = MediaIngestPipeline.forProgramStream(bufferPool, listener);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        int sequence = 0;
+        long timestampOffset = 0;
+        long warmupStart = threads.getCurrentThreadCpuTime();
+        while (threads.getCurrentThreadCpuTime() - warmupStart < WARMUP_NANOS) {
+            sequence = feed(pipeline, sequence, timestampOffset);
+            timestampOffset += duration;
+        }
+        accessUnits = 0;
+        keyframes = 0;
+        elementaryBytes = 0;
+
+        long rounds = 0;
+        long wallStart = System.nanoTime();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long cpu;
+        do {
+            sequence = feed(pipeline, sequence, timestampOffset);
+            timestampOffset += duration;
+            rounds++;
+            cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+        } while (cpu < measureNanos);
+        long wall = System.nanoTime() - wallStart;
+        IngestStatistics statistics = pipeline.getStatistics();
+        pipeline.close();
+
+        double cpuSeconds = cpu / 1e9;
+        double inputMb = rounds * psBytes / 1048576.0;
+        System.out.printf(Locale.ROOT, "rounds=%d input=%.1f MB packets=%d codec=%s%n",
+                rounds, inputMb, rounds * packets.size(), codec);
+        System.out.printf(Locale.ROOT, "cpu=%.2fs wall=%.2fs throughput=%.1f MB/s per core (%.1f MB/s wall)%n",
+                cpuSeconds, wall / 1e9, inputMb / cpuSeconds, inputMb / (wall / 1e9));
+        System.out.printf(Locale.ROOT, "access units=%d (%.0f/s per core) keyframes=%d es=%.1f MB (%.1f%% of input)%n",
+                accessUnits, accessUnits / cpuSeconds, keyframes, elementaryBytes / 1048576.0,
+                elementaryBytes * 100.0 / (rounds * psBytes));
+        System.out.printf(Locale.ROOT, "lost=%d dropped=%d malformed=%d buffer pool=%s%n",
+                statistics.getPacketsLost(), statistics.getDroppedAccessUnits(),
+                statistics.toMetrics().get("malformedPackets"), bufferPool.getStatistics());
+    }
+
+    /**
+     * 送入一轮录像，和媒体接收线程一样先把数据报放进池化缓冲区，再把所有权交给流水线
+     */
+    private int feed(MediaIngestPipeline pipeline, int sequence, long timestampOffset) {
+        for (byte[] packet : packets) {
+            PooledBuffer pooled = bufferPool.acquire(packet.length);
+            ByteBuffer buffer = pooled.buffer();
+            buffer.clear();
+            buffer.put(packet);
+            buffer.flip();
+            long timestamp = (buffer.getInt(4) & 0xFFFFFFFFL) + timestampOffset;
+            buffer.putShort(2, (short) sequence++);
+            buffer.putInt(4, (int) timestamp);
+            pipeline.onRtpPacket(pooled);
+        }
+        return sequence;
+    }
+}
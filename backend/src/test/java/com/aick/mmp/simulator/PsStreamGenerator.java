@@ -0,0 +1,167 @@
+package com.aick.mmp.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 合成GB28181风格的MPEG-PS流：每个视频帧一个PS包，关键帧前带系统头和PSM，
+ * 大帧拆成多个PES；可选插入G.711音频包。H.264数据使用与{@link LocalRtspServer}相同的SPS/PPS，
+ * 帧内容为不含起始码的随机字节。
+ */
+class PsStreamGenerator {
+
+    static final int RTP_PAYLOAD_TYPE = 96;
+    static final int MAX_RTP_PAYLOAD = 1400;
+
+    private static final int MAX_PES_PAYLOAD = 65000;
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+
+    private final int keyframeSize;
+    private final int frameSize;
+    private final int gopSize;
+    private final int frameRate;
+    private final Random random = new Random(7);
+    private long frameIndex;
+
+    PsStreamGenerator(int keyframeSize, int frameSize, int gopSize, int frameRate) {
+        this.keyframeSize = keyframeSize;
+        this.frameSize = frameSize;
+        this.gopSize = gopSize;
+        this.frameRate = frameRate;
+    }
+
+    long nextTimestamp() {
+        return frameIndex * 90000 / frameRate;
+    }
+
+    /**
+     * 生成下一帧视频的完整PS数据
+     */
+    byte[] nextVideoFrame() {
+        boolean keyframe = frameIndex % gopSize == 0;
+        long pts = nextTimestamp();
+        frameIndex++;
+
+        ByteArrayOutputStream es = new ByteArrayOutputStream(keyframe ? keyframeSize + 64 : frameSize + 16);
+        if (keyframe) {
+            es.write(START_CODE, 0, 4);
+            es.write(LocalRtspServer.SPS, 0, LocalRtspServer.SPS.length);
+            es.write(START_CODE, 0, 4);
+            es.write(LocalRtspServer.PPS, 0, LocalRtspServer.PPS.length);
+        }
+        byte[] slice = new byte[keyframe ? keyframeSize : frameSize];
+        for (int i = 0; i < slice.length; i++) {
+            // 避免随机数据中出现起始码
+            slice[i] = (byte) (1 + random.nextInt(255));
+        }
+        slice[0] = (byte) (keyframe ? 0x65 : 0x41);
+        es.write(START_CODE, 0, 4);
+        es.write(slice, 0, slice.length);
+
+        ByteArrayOutputStream ps = new ByteArrayOutputStream(es.size() + 256);
+        writePackHeader(ps, pts);
+        if (keyframe) {
+            writeSystemHeader(ps);
+            writeStreamMap(ps);
+        }
+        byte[] payload = es.toByteArray();
+        for (int offset = 0; offset < payload.length; offset += MAX_PES_PAYLOAD) {
+            writePes(ps, 0xE0, pts, payload, offset, Math.min(MAX_PES_PAYLOAD, payload.length - offset));
+        }
+        return ps.toByteArray();
+    }
+
+    /**
+     * 一个40ms的G.711A音频PS包
+     */
+    byte[] audioPack(long pts) {
+        ByteArrayOutputStream ps = new ByteArrayOutputStream(400);
+        writePackHeader(ps, pts);
+        byte[] samples = new byte[320];
+        random.nextBytes(samples);
+        writePes(ps, 0xC0, pts, samples, 0, samples.length);
+        return ps.toByteArray();
+    }
+
+    /**
+     * 按MTU把一段PS数据切成RTP包，最后一个包置marker位
+     */
+    static List<byte[]> packetize(byte[] ps, int sequence, long timestamp, long ssrc) {
+        List<byte[]> packets = new ArrayList<>(ps.length / MAX_RTP_PAYLOAD + 1);
+        for (int offset = 0; offset < ps.length; offset += MAX_RTP_PAYLOAD) {
+            int length = Math.min(MAX_RTP_PAYLOAD, ps.length - offset);
+            boolean marker = offset + length == ps.length;
+            ByteBuffer rtp = ByteBuffer.allocate(12 + length);
+            rtp.put((byte) 0x80);
+            rtp.put((byte) ((marker ? 0x80 : 0) | RTP_PAYLOAD_TYPE));
+            rtp.putShort((short) sequence++);
+            rtp.putInt((int) timestamp);
+            rtp.putInt((int) ssrc);
+            rtp.put(ps, offset, length);
+            packets.add(rtp.array());
+        }
+        return packets;
+    }
+
+    private static void writePackHeader(ByteArrayOutputStream out, long scr) {
+        out.write(0);
+        out.write(0);
+        out.write(1);
+        out.write(0xBA);
+        out.write((int) (0x44 | ((scr >> 27) & 0x38) | ((scr >> 28) & 0x03)));
+        out.write((int) (scr >> 20));
+        out.write((int) (0x04 | ((scr >> 12) & 0xF8) | ((scr >> 13) & 0x03)));
+        out.write((int) (scr >> 5));
+        out.write((int) (0x04 | ((scr << 3) & 0xF8)));
+        out.write(0x01);
+        // program_mux_rate
+        int muxRate = 0x3FFF;
+        out.write(muxRate >> 14);
+        out.write(muxRate >> 6);
+        out.write(((muxRate << 2) & 0xFC) | 0x03);
+        // 两个填充字节
+        out.write(0xFA);
+        out.write(0xFF);
+        out.write(0xFF);
+    }
+
+    private static void writeSystemHeader(ByteArrayOutputStream out) {
+        byte[] header = {0, 0, 1, (byte) 0xBB, 0, 12,
+                (byte) 0x80, 0x00, 0x01, 0x04, (byte) 0xE1, (byte) 0xFF,
+                (byte) 0xE0, (byte) 0xE0, (byte) 0xE8,
+                (byte) 0xC0, (byte) 0xC0, 0x20};
+        out.write(header, 0, header.length);
+    }
+
+    private static void writeStreamMap(ByteArrayOutputStream out) {
+        byte[] map = {0, 0, 1, (byte) 0xBC, 0, 18,
+                (byte) 0xE0, (byte) 0xFF, 0, 0, 0, 8,
+                0x1B, (byte) 0xE0, 0, 0,
+                (byte) 0x90, (byte) 0xC0, 0, 0,
+                0, 0, 0, 0};
+        out.write(map, 0, map.length);
+    }
+
+    private static void writePes(ByteArrayOutputStream out, int streamId, long pts, byte[] data, int offset,
+                                 int length) {
+        int packetLength = 3 + 5 + length;
+        out.write(0);
+        out.write(0);
+        out.write(1);
+        out.write(streamId);
+        out.write(packetLength >> 8);
+        out.write(packetLength & 0xFF);
+        out.write(0x80);
+        out.write(0x80);
+        out.write(5);
+        out.write((int) (0x21 | ((pts >> 29) & 0x0E)));
+        out.write((int) (pts >> 22));
+        out.write((int) (((pts >> 14) & 0xFE) | 1));
+        out.write((int) (pts >> 7));
+        out.write((int) (((pts << 1) & 0xFE) | 1));
+        out.write(data, offset, length);
+    }
+}
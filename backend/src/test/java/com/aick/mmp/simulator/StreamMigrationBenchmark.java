@@ -0,0 +1,192 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.cdn.CdnNodeSelector;
+import com.aick.mmp.model.CdnNode;
+import com.aick.mmp.model.StreamSession;
+import com.aick.mmp.repository.CdnNodeRepository;
+import com.aick.mmp.repository.StreamSessionRepository;
+import com.aick.mmp.service.impl.StreamMigrationServiceImpl;
+import com.aick.mmp.stream.hls.HlsUrlSigner;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CDN节点迁出基准：以模拟时间驱动{@link StreamMigrationServiceImpl}
+ * <p>
+ * 一个区域有若干个容量1000的CDN节点，负载在40%~70%之间，每5秒心跳上报实际负载；节点0降级，其上的会话需要迁出。
+ * 迁移期间每秒约0.5%的会话自然结束，数据库写入以writeFailPercent%的概率失败。
+ * 对比一次性把全部会话移到上报负载最低的节点（原来的做法）与分波迁移：统计各目标节点单秒内接收的最多会话数、
+ * 迁移后超出容量的观众数，以及分波迁移的迁出耗时、每波迁移数和失败数。
+ * 用法：StreamMigrationBenchmark [节点数=30] [迁出会话数=900] [写入失败比例%=2]
+ */
+public class StreamMigrationBenchmark {
+
+    private static final int CAPACITY = 1000;
+    private static final long HEARTBEAT_MS = 5000;
+    private static final long WAVE_MS = 1000;
+
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int drained = args.length > 1 ? Integer.parseInt(args[1]) : 900;
+        double writeFailPercent = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+
+        Random random = new Random(5);
+        int[] baseLoad = new int[nodes];
+        for (int i = 1; i < nodes; i++) {
+            baseLoad[i] = 400 + random.nextInt(300);
+        }
+        baseLoad[0] = drained;
+
+        System.out.println("strategy      peak arrivals/node/s  peak load  viewers over capacity");
+        allAtOnce(baseLoad, drained);
+        waves(baseLoad.clone(), drained, writeFailPercent, random);
+    }
+
+    /**
+     * 原来的做法：全部会话在同一时刻移到上报负载最低的节点
+     */
+    private static void allAtOnce(int[] baseLoad, int drained) {
+        int target = 1;
+        for (int i = 2; i < baseLoad.length; i++) {
+            if (baseLoad[i] < baseLoad[target]) {
+                target = i;
+            }
+        }
+        int load = baseLoad[target] + drained;
+        System.out.printf("%-12s  %20d  %9d  %21d%n", "all at once", drained, load, Math.max(0, load - CAPACITY));
+    }
+
+    private static void waves(int[] load, int drained, double writeFailPercent, Random random) {
+        long start = 1_700_000_000_000L;
+        AtomicLong now = new AtomicLong(start);
+        Map<Long, StreamSession> sessions = new ConcurrentHashMap<>();
+        for (long id = 1; id <= drained; id++) {
+            sessions.put(id, StreamSession.builder().id(id).sessionId("stream-" + id).cameraId(id % 200)
+                    .cdnNodeId("0").status(StreamSession.StreamStatus.STREAMING).build());
+        }
+        int[] arrivals = new int[load.length];
+        AtomicLong statements = new AtomicLong();
+        StreamSessionRepository repository = (StreamSessionRepository) Proxy.newProxyInstance(
+                StreamMigrationBenchmark.class.getClassLoader(), new Class<?>[]{StreamSessionRepository.class},
+                (proxy, method, arguments) -> {
+                    switch (method.getName()) {
+                        case "findByCdnNodeId":
+                            List<StreamSession> found = new ArrayList<>();
+                            for (StreamSession session : sessions.values()) {
+                                if (session.getCdnNodeId().equals(arguments[0])) {
+                                    found.add(session);
+                                }
+                            }
+                            return found;
+                        case "findIdsOnCdnNode": {
+                            List<Long> ids = new ArrayList<>();
+                            for (Object id : (Collection<?>) arguments[0]) {
+                                StreamSession session = sessions.get((Long) id);
+                                if (session != null && session.getCdnNodeId().equals(arguments[1])) {
+                                    ids.add((Long) id);
+                                }
+                            }
+                            return ids;
+                        }
+                        case "updateCdnNodeIn":
+                            statements.incrementAndGet();
+                            if (random.nextDouble() * 100 < writeFailPercent) {
+                                throw new IllegalStateException("simulated write failure");
+                            }
+                            int updated = 0;
+                            for (Object id : (Collection<?>) arguments[0]) {
+                                StreamSession session = sessions.get((Long) id);
+                                if (session != null && session.getCdnNodeId().equals(arguments[1])
+                                        && session.getStatus() == arguments[3]) {
+                                    session.setCdnNodeId((String) arguments[2]);
+                                    int target = Integer.parseInt((String) arguments[2]);
+                                    load[target]++;
+                                    arrivals[target]++;
+                                    load[0]--;
+                                    updated++;
+                                }
+                            }
+                            return updated;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        CdnNodeRepository cdnNodeRepository = (CdnNodeRepository) Proxy.newProxyInstance(
+                StreamMigrationBenchmark.class.getClassLoader(), new Class<?>[]{CdnNodeRepository.class},
+                (proxy, method, arguments) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        CdnNodeSelector selector = new CdnNodeSelector(cdnNodeRepository, now::get);
+        StreamMigrationServiceImpl migration = new StreamMigrationServiceImpl(repository, selector,
+                new HlsUrlSigner("benchmark-secret", 3600000), now::get);
+
+        CdnNode degraded = heartbeat(selector, load, 0, now.get());
+        for (int i = 1; i < load.length; i++) {
+            heartbeat(selector, load, i, now.get());
+        }
+        migration.drain(degraded);
+
+        int peakArrivals = 0;
+        int peakLoad = 0;
+        long over = 0;
+        long ended = 0;
+        while ((int) migration.getStatistics().get("activeDrains") > 0) {
+            now.addAndGet(WAVE_MS);
+            // 迁移期间部分会话自然结束
+            for (StreamSession session : sessions.values()) {
+                if (session.getStatus() == StreamSession.StreamStatus.STREAMING && random.nextInt(200) == 0) {
+                    session.setStatus(StreamSession.StreamStatus.DISCONNECTED);
+                    load[Integer.parseInt(session.getCdnNodeId())]--;
+                    ended++;
+                }
+            }
+            if ((now.get() - start) % HEARTBEAT_MS == 0) {
+                for (int i = 1; i < load.length; i++) {
+                    heartbeat(selector, load, i, now.get());
+                }
+            }
+            Arrays.fill(arrivals, 0);
+            migration.runWave();
+            for (int i = 1; i < load.length; i++) {
+                peakArrivals = Math.max(peakArrivals, arrivals[i]);
+                peakLoad = Math.max(peakLoad, load[i]);
+                over += Math.max(0, Math.min(arrivals[i], load[i] - CAPACITY));
+            }
+        }
+
+        Map<String, Object> statistics = migration.getStatistics();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> drain = ((List<Map<String, Object>>) statistics.get("recent")).get(0);
+        System.out.printf("%-12s  %20d  %9d  %21d%n", "waves", peakArrivals, peakLoad, over);
+        System.out.println();
+        System.out.printf("drained %s sessions in %s waves, %s ms: moved %s, failed %s, ended during drain %d%n",
+                drain.get("sessions"), drain.get("waves"), drain.get("elapsedMillis"), drain.get("moved"),
+                drain.get("failed"), ended);
+        System.out.printf("per wave: average %.1f moved, max %s; %.1f sessions/s; %d UPDATE statements, %s failed%n",
+                (double) drain.get("averageWaveMoved"), drain.get("maxWaveMoved"),
+                (double) drain.get("sessionsPerSecond"), statements.get(), statistics.get("writeFailures"));
+        System.out.println("left on degraded node: " + load[0] + " (ended or failed)");
+        System.out.println("statistics: " + statistics);
+    }
+
+    private static CdnNode heartbeat(CdnNodeSelector selector, int[] load, int id, long now) {
+        CdnNode node = CdnNode.builder().id((long) id).name("cdn-" + id).ipAddress("10.0.0." + id).port(8080)
+                .status(id == 0 ? CdnNode.NodeStatus.DEGRADED : CdnNode.NodeStatus.ONLINE).location("region-0")
+                .capacity(CAPACITY).currentLoad(load[id])
+                .lastHeartbeat(LocalDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneId.systemDefault()))
+                .build();
+        selector.update(node);
+        return node;
+    }
+}
@@ -0,0 +1,102 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.messaging.EdgeHeartbeat;
+import com.aick.mmp.metrics.MetricPoint;
+import com.aick.mmp.metrics.Resolution;
+import com.aick.mmp.metrics.TimeSeriesStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 指标历史存储基准：模拟若干边缘节点按5秒间隔（带毫秒级抖动）上报24小时心跳，
+ * 统计写入速率、每条序列的内存占用和查询耗时，并校验原始精度下的查询结果与写入值完全一致
+ * <p>
+ * 用法：TimeSeriesStoreBenchmark [节点数=200] [小时数=24]
+ */
+public class TimeSeriesStoreBenchmark {
+
+    private static final long INTERVAL_MS = 5000;
+
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int hours = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+        long start = 1_700_000_000_000L;
+        int heartbeats = (int) (hours * 3_600_000L / INTERVAL_MS);
+
+        TimeSeriesStore store = new TimeSeriesStore(3_600_000L, 720, 86_400_000L, 2_592_000_000L, 64);
+        Random random = new Random(7);
+        EdgeHeartbeat[] state = new EdgeHeartbeat[nodes];
+        for (int node = 0; node < nodes; node++) {
+            state[node] = new EdgeHeartbeat();
+            state[node].setCameraCount(16 + node % 32);
+            state[node].setStorageUsage(40 + node % 50);
+        }
+        // 记录第一个节点的cpuUsage，用于校验
+        List<Long> expectedTimestamps = new ArrayList<>();
+        List<Double> expectedValues = new ArrayList<>();
+
+        long samples = 0;
+        long timestamp = start;
+        long started = System.nanoTime();
+        for (int i = 0; i < heartbeats; i++) {
+            timestamp = start + i * INTERVAL_MS;
+            for (int node = 0; node < nodes; node++) {
+                EdgeHeartbeat heartbeat = next(state[node], random, i);
+                long time = timestamp + random.nextInt(40);
+                Map<String, Object> metrics = heartbeat.toMetrics();
+                store.record("edge:" + node, metrics, time);
+                samples += 13;
+                if (node == 0) {
+                    expectedTimestamps.add(time);
+                    expectedValues.add(heartbeat.getCpuUsage());
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("recorded %d samples in %.1f s: %.2f M samples/s%n", samples, seconds, samples / seconds / 1e6);
+        System.out.println("store: " + store.getStatistics());
+
+        long rawFrom = timestamp - 3_600_000L;
+        started = System.nanoTime();
+        List<MetricPoint> raw = store.query("edge:0", "cpuUsage", rawFrom, timestamp + INTERVAL_MS, Resolution.RAW);
+        long rawNanos = System.nanoTime() - started;
+        int mismatches = 0;
+        int offset = expectedTimestamps.size() - raw.size();
+        for (int i = 0; i < raw.size(); i++) {
+            if (raw.get(i).getTimestamp() != expectedTimestamps.get(offset + i)
+                    || raw.get(i).getAvg() != expectedValues.get(offset + i)) {
+                mismatches++;
+            }
+        }
+        started = System.nanoTime();
+        List<MetricPoint> minutes = store.query("edge:0", "network.latency", timestamp - 86_400_000L, timestamp,
+                Resolution.MINUTE);
+        long minuteNanos = System.nanoTime() - started;
+        List<MetricPoint> hourly = store.query("edge:0", "network.latency", start, timestamp, Resolution.HOUR);
+        System.out.printf("last hour raw: %d points in %.2f ms, %d mismatches%n", raw.size(), rawNanos / 1e6, mismatches);
+        System.out.printf("last 24 h by minute: %d points in %.2f ms; by hour: %d points%n",
+                minutes.size(), minuteNanos / 1e6, hourly.size());
+    }
+
+    /**
+     * 在上一次心跳的基础上生成下一次：负载按日周期缓慢变化并叠加噪声，计数器单调增长
+     */
+    private static EdgeHeartbeat next(EdgeHeartbeat heartbeat, Random random, int index) {
+        double daily = Math.sin(index * 2 * Math.PI / 17280);
+        heartbeat.setCpuUsage(Math.round((45 + 20 * daily + random.nextGaussian() * 3) * 10) / 10.0);
+        heartbeat.setMemoryUsage(Math.round((60 + 5 * daily) * 10) / 10.0);
+        heartbeat.setLatency(Math.round((25 + random.nextGaussian() * 4) * 100) / 100.0);
+        heartbeat.setPacketLoss(random.nextInt(20) == 0 ? 0.5 : 0);
+        heartbeat.setBandwidth(Math.round(40_000 + 10_000 * daily + random.nextGaussian() * 500));
+        heartbeat.setJitter(Math.round(random.nextDouble() * 50) / 10.0);
+        heartbeat.setActiveStreams(heartbeat.getCameraCount() - (random.nextInt(50) == 0 ? 1 : 0));
+        heartbeat.setBytesSent(heartbeat.getBytesSent() + 2_500_000 + random.nextInt(100_000));
+        heartbeat.setBytesReceived(heartbeat.getBytesReceived() + 30_000 + random.nextInt(1000));
+        heartbeat.setFramesProcessed(heartbeat.getFramesProcessed() + heartbeat.getActiveStreams() * 125L);
+        heartbeat.setPacketsLost(heartbeat.getPacketsLost() + (random.nextInt(10) == 0 ? 1 : 0));
+        return heartbeat;
+    }
+}
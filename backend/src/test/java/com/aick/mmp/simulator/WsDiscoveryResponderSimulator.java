@@ -0,0 +1,309 @@
+package com.aick.mmp.simulator;
+
+import com.aick.mmp.adapter.protocol.onvif.DiscoveredDevice;
+import com.aick.mmp.adapter.protocol.onvif.WsDiscoveryScanner;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * WS-Discovery设备模拟器，在本机回环网段上模拟一批ONVIF摄像头应答Probe
+ * <p>
+ * 每台设备绑定一个 127.x.y.z 地址上的UDP端口，收到单播Probe立即回复ProbeMatches；
+ * 能加入组播组时还会应答组播Probe，各设备按WS-Discovery的APP_MAX_DELAY随机延迟（最多500ms）回复。
+ * 可按比例丢弃收到的Probe以验证重发，设备丢弃重复的MessageID。
+ * 扫描模式下用{@link WsDiscoveryScanner}扫描整个网段并核对发现的设备数。
+ * 用法：WsDiscoveryResponderSimulator [设备数=400] [网段=127.0.8.0/22] [端口=3702] [丢包率=0] [扫描=true]
+ * <p>
+ * 仅用于本地或预发环境评估，不在生产环境中启动。
+ */
+public class WsDiscoveryResponderSimulator implements Runnable, AutoCloseable {
+
+    private static final String MULTICAST_ADDRESS = "239.255.255.250";
+    private static final Pattern MESSAGE_ID = Pattern.compile("<(?:\\w+:)?MessageID>([^<]+)</");
+    private static final long MULTICAST_MAX_DELAY_MS = 500;
+
+    private final List<Device> devices = new ArrayList<>();
+    private final double lossRate;
+    private final int port;
+    private final Random random = new Random(7);
+    private final Selector selector;
+    private final PriorityQueue<long[]> delayed = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+    private final List<SocketAddress> delayedTargets = new ArrayList<>();
+    private final AtomicLong probesReceived = new AtomicLong();
+    private final AtomicLong probesDropped = new AtomicLong();
+    private final AtomicLong matchesSent = new AtomicLong();
+    private DatagramChannel multicastChannel;
+    private volatile boolean running = true;
+
+    public WsDiscoveryResponderSimulator(int deviceCount, String subnet, int port, double lossRate)
+            throws IOException {
+        this.port = port;
+        this.lossRate = lossRate;
+        this.selector = Selector.open();
+        String base = subnet.substring(0, subnet.indexOf('/'));
+        int prefix = Integer.parseInt(subnet.substring(subnet.indexOf('/') + 1));
+        byte[] network = InetAddress.getByName(base).getAddress();
+        long first = ((network[0] & 0xFFL) << 24) | ((network[1] & 0xFFL) << 16) | ((network[2] & 0xFFL) << 8)
+                | (network[3] & 0xFFL);
+        // 回环网卡上不能绑定x.x.x.0和x.x.x.255，设备只放在其余地址上
+        List<Long> candidates = new ArrayList<>();
+        for (long address = first + 1; address < first + (1L << (32 - prefix)) - 1; address++) {
+            if ((address & 0xFF) != 0 && (address & 0xFF) != 0xFF) {
+                candidates.add(address);
+            }
+        }
+        if (deviceCount > candidates.size()) {
+            throw new IllegalArgumentException("Subnet " + subnet + " cannot hold " + deviceCount + " devices");
+        }
+        // 设备分散在网段内，中间留出不应答的空地址
+        double step = (double) candidates.size() / deviceCount;
+        for (int i = 0; i < deviceCount; i++) {
+            long address = candidates.get((int) (i * step));
+            InetAddress inet = InetAddress.getByAddress(new byte[]{
+                    (byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address});
+            DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            try {
+                channel.bind(new InetSocketAddress(inet, port));
+            } catch (IOException e) {
+                channel.close();
+                throw new IOException("Cannot bind simulated device to " + inet.getHostAddress() + ":" + port, e);
+            }
+            channel.configureBlocking(false);
+            Device device = new Device(i, inet.getHostAddress(), channel);
+            channel.register(selector, SelectionKey.OP_READ, device);
+            devices.add(device);
+        }
+        joinMulticastGroup();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int deviceCount = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        String subnet = args.length > 1 ? args[1] : "127.0.8.0/22";
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 3702;
+        double lossRate = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        boolean scan = args.length <= 4 || Boolean.parseBoolean(args[4]);
+
+        WsDiscoveryResponderSimulator simulator = new WsDiscoveryResponderSimulator(deviceCount, subnet, port,
+                lossRate);
+        Thread thread = new Thread(simulator, "ws-discovery-devices");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.printf(Locale.ROOT, "%d simulated ONVIF devices in %s on port %d (multicast %s, loss %.1f%%)%n",
+                deviceCount, subnet, port, simulator.multicastChannel != null ? "joined" : "unavailable",
+                lossRate * 100);
+        if (!scan) {
+            thread.join();
+            return;
+        }
+
+        WsDiscoveryScanner scanner = new WsDiscoveryScanner(port, 256, 2000, 500, 1000);
+        Set<String> found = ConcurrentHashMap.newKeySet();
+        long[] firstResultNanos = new long[1];
+        long start = System.nanoTime();
+        WsDiscoveryScanner.ScanResult result = scanner.scan(Collections.singletonList(subnet),
+                simulator.multicastChannel != null, (DiscoveredDevice device) -> {
+                    if (firstResultNanos[0] == 0) {
+                        firstResultNanos[0] = System.nanoTime() - start;
+                    }
+                    found.add(device.getDeviceServiceUrl());
+                });
+        System.out.printf(Locale.ROOT, "scan: %d hosts, %d probes sent, %d responses, %d devices (%d duplicates), "
+                        + "%d timeouts in %d ms, first device after %.1f ms%n",
+                result.getHostsProbed(), result.getProbesSent(), result.getResponses(), result.getDevicesFound(),
+                result.getDuplicates(), result.getTimeouts(), result.getDurationMillis(), firstResultNanos[0] / 1e6);
+        System.out.printf(Locale.ROOT, "devices: %d probes received, %d dropped, %d matches sent; found %d/%d%n",
+                simulator.probesReceived.get(), simulator.probesDropped.get(), simulator.matchesSent.get(),
+                found.size(), deviceCount);
+        simulator.close();
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(65535);
+        while (running) {
+            try {
+                long now = System.currentTimeMillis();
+                long wait = delayed.isEmpty() ? 100 : Math.max(1, delayed.peek()[0] - now);
+                selector.select(wait);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    while (true) {
+                        buffer.clear();
+                        SocketAddress source = channel.receive(buffer);
+                        if (source == null) {
+                            break;
+                        }
+                        String message = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+                        onProbe((Device) key.attachment(), source, message);
+                    }
+                }
+                sendDelayed(System.currentTimeMillis());
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Simulator error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        for (Device device : devices) {
+            device.channel.close();
+        }
+        if (multicastChannel != null) {
+            multicastChannel.close();
+        }
+        selector.close();
+    }
+
+    private void joinMulticastGroup() {
+        try {
+            DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            InetAddress group = InetAddress.getByName(MULTICAST_ADDRESS);
+            // 绑定到组播地址而不是通配地址，否则发给各设备地址的单播Probe也可能被这个套接字收走
+            channel.bind(new InetSocketAddress(group, port));
+            boolean joined = false;
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces.hasMoreElements()) {
+                NetworkInterface networkInterface = interfaces.nextElement();
+                try {
+                    if (networkInterface.isUp() && networkInterface.supportsMulticast()) {
+                        channel.join(group, networkInterface);
+                        joined = true;
+                    }
+                } catch (IOException | UnsupportedOperationException ignored) {
+                    // 该网卡不支持组播
+                }
+            }
+            if (!joined) {
+                channel.close();
+                return;
+            }
+            channel.configureBlocking(false);
+            // 组播通道不属于某台设备，附件为null
+            channel.register(selector, SelectionKey.OP_READ, null);
+            multicastChannel = channel;
+        } catch (IOException e) {
+            multicastChannel = null;
+        }
+    }
+
+    private void onProbe(Device target, SocketAddress source, String message) throws IOException {
+        if (!message.contains("discovery/Probe<")) {
+            return;
+        }
+        Matcher matcher = MESSAGE_ID.matcher(message);
+        if (!matcher.find()) {
+            return;
+        }
+        String messageId = matcher.group(1);
+        if (target == null) {
+            // 组播Probe：每台设备随机延迟后各自回复
+            long now = System.currentTimeMillis();
+            for (Device device : devices) {
+                if (device.seen.add(messageId)) {
+                    probesReceived.incrementAndGet();
+                    delayedTargets.add(source);
+                    delayed.add(new long[]{now + (long) (random.nextDouble() * MULTICAST_MAX_DELAY_MS),
+                            device.index, delayedTargets.size() - 1});
+                    device.pendingMessageId = messageId;
+                }
+            }
+            return;
+        }
+        probesReceived.incrementAndGet();
+        if (!target.seen.add(messageId)) {
+            return;
+        }
+        if (lossRate > 0 && random.nextDouble() < lossRate) {
+            probesDropped.incrementAndGet();
+            return;
+        }
+        reply(target, source, messageId);
+    }
+
+    private void sendDelayed(long now) throws IOException {
+        while (!delayed.isEmpty() && delayed.peek()[0] <= now) {
+            long[] entry = delayed.poll();
+            Device device = devices.get((int) entry[1]);
+            reply(device, delayedTargets.get((int) entry[2]), device.pendingMessageId);
+        }
+        if (delayed.isEmpty()) {
+            delayedTargets.clear();
+        }
+    }
+
+    private void reply(Device device, SocketAddress target, String relatesTo) throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://www.w3.org/2003/05/soap-envelope\""
+                + " xmlns:wsa=\"http://schemas.xmlsoap.org/ws/2004/08/addressing\""
+                + " xmlns:wsdd=\"http://schemas.xmlsoap.org/ws/2005/04/discovery\""
+                + " xmlns:tdn=\"http://www.onvif.org/ver10/network/wsdl\"><SOAP-ENV:Header>"
+                + "<wsa:MessageID>urn:uuid:" + UUID.randomUUID() + "</wsa:MessageID>"
+                + "<wsa:RelatesTo>" + relatesTo + "</wsa:RelatesTo>"
+                + "<wsa:To>http://schemas.xmlsoap.org/ws/2004/08/addressing/role/anonymous</wsa:To>"
+                + "<wsa:Action>http://schemas.xmlsoap.org/ws/2005/04/discovery/ProbeMatches</wsa:Action>"
+                + "<wsdd:AppSequence InstanceId=\"1\" MessageNumber=\"" + (device.index + 1) + "\"/>"
+                + "</SOAP-ENV:Header><SOAP-ENV:Body><wsdd:ProbeMatches><wsdd:ProbeMatch>"
+                + "<wsa:EndpointReference><wsa:Address>" + device.endpointReference
+                + "</wsa:Address></wsa:EndpointReference>"
+                + "<wsdd:Types>tdn:NetworkVideoTransmitter</wsdd:Types>"
+                + "<wsdd:Scopes>onvif://www.onvif.org/type/video_encoder onvif://www.onvif.org/Profile/Streaming "
+                + "onvif://www.onvif.org/hardware/SIM-IPC onvif://www.onvif.org/name/Camera_" + (device.index + 1)
+                + " onvif://www.onvif.org/location/city/Site_A</wsdd:Scopes>"
+                + "<wsdd:XAddrs>http://" + device.address + ":80/onvif/device_service "
+                + "http://[fe80::1]/onvif/device_service</wsdd:XAddrs>"
+                + "<wsdd:MetadataVersion>1</wsdd:MetadataVersion></wsdd:ProbeMatch></wsdd:ProbeMatches>"
+                + "</SOAP-ENV:Body></SOAP-ENV:Envelope>";
+        device.channel.send(ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8)), target);
+        matchesSent.incrementAndGet();
+    }
+
+    private static final class Device {
+        private final int index;
+        private final String address;
+        private final DatagramChannel channel;
+        private final String endpointReference = "urn:uuid:" + UUID.randomUUID();
+        private final Set<String> seen = ConcurrentHashMap.newKeySet();
+        private String pendingMessageId;
+
+        Device(int index, String address, DatagramChannel channel) {
+            this.index = index;
+            this.address = address;
+            this.channel = channel;
+        }
+    }
+}
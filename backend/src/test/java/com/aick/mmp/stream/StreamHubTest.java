@@ -0,0 +1,170 @@
+package com.aick.mmp.stream;
+
+import com.aick.mmp.adapter.protocol.ProtocolAdapter;
+import com.aick.mmp.adapter.protocol.media.AccessUnitListener;
+import com.aick.mmp.model.Camera;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamHubTest {
+
+    private final StreamHub streamHub = new StreamHub(new GopCache(1 << 20, 1 << 20));
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        streamHub.shutdown();
+    }
+
+    @Test
+    void stopsUpstreamThatClosesBeforeItsSessionIdIsReturned() throws Exception {
+        FakeAdapter adapter = new FakeAdapter();
+        adapter.closeDuringStart = true;
+        List<StreamSubscriber> closed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch notified = new CountDownLatch(1);
+
+        StreamSubscriber subscriber = streamHub.subscribe("viewer-1", camera(), adapter, true, s -> {
+            closed.add(s);
+            notified.countDown();
+        });
+
+        assertThat(notified.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(subscriber.isClosed()).isTrue();
+        assertThat(closed).containsExactly(subscriber);
+        assertThat(adapter.stopped).containsExactly("upstream-1");
+        assertThat(streamHub.getSubscriberCount(1L)).isZero();
+    }
+
+    @Test
+    void concurrentSubscribersShareOneUpstreamSession() throws Exception {
+        FakeAdapter adapter = new FakeAdapter();
+        adapter.startGate = new CountDownLatch(1);
+
+        Future<StreamSubscriber> first = executor.submit(() -> streamHub.subscribe("viewer-1", camera(), adapter));
+        assertThat(adapter.startEntered.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<StreamSubscriber> second = executor.submit(() -> streamHub.subscribe("viewer-2", camera(), adapter));
+
+        // 打开上游期间不持有锁，统计和其他操作不被阻塞
+        Map<String, Object> statistics = streamHub.getStatistics();
+        assertThat(statistics.get("upstreamSessions")).isEqualTo(1);
+        assertThat(second.isDone()).isFalse();
+
+        adapter.startGate.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        assertThat(adapter.starts.get()).isEqualTo(1);
+        assertThat(streamHub.getSubscriberCount(1L)).isEqualTo(2);
+        assertThat(streamHub.getUpstreamSessionId("viewer-2")).isEqualTo("upstream-1");
+    }
+
+    @Test
+    void lastUnsubscribeStopsUpstreamOnce() {
+        FakeAdapter adapter = new FakeAdapter();
+        streamHub.subscribe("viewer-1", camera(), adapter);
+        streamHub.subscribe("viewer-2", camera(), adapter);
+
+        streamHub.unsubscribe("viewer-1");
+        assertThat(adapter.stopped).isEmpty();
+        streamHub.unsubscribe("viewer-2");
+        streamHub.unsubscribe("viewer-2");
+
+        assertThat(adapter.stopped).containsExactly("upstream-1");
+        assertThat(streamHub.findSubscriber("viewer-2")).isNull();
+    }
+
+    @Test
+    void failedStartLetsTheNextSubscriberRetry() {
+        FakeAdapter adapter = new FakeAdapter();
+        adapter.failNextStart = true;
+
+        try {
+            streamHub.subscribe("viewer-1", camera(), adapter);
+        } catch (IllegalStateException expected) {
+            // 第一次打开失败
+        }
+        StreamSubscriber subscriber = streamHub.subscribe("viewer-2", camera(), adapter);
+
+        assertThat(subscriber.isClosed()).isFalse();
+        assertThat(adapter.starts.get()).isEqualTo(2);
+        assertThat(streamHub.getUpstreamSessionId("viewer-2")).isEqualTo("upstream-2");
+    }
+
+    private static Camera camera() {
+        return Camera.builder().id(1L).name("camera-1").build();
+    }
+
+    private static final class FakeAdapter implements ProtocolAdapter {
+        private final AtomicInteger starts = new AtomicInteger();
+        private final List<String> stopped = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch startEntered = new CountDownLatch(1);
+        private volatile CountDownLatch startGate;
+        private volatile boolean closeDuringStart;
+        private volatile boolean failNextStart;
+
+        @Override
+        public String getProtocol() {
+            return "FAKE";
+        }
+
+        @Override
+        public boolean testConnection(Camera camera) {
+            return true;
+        }
+
+        @Override
+        public String startStreamSession(Camera camera) {
+            return startStreamSession(camera, null);
+        }
+
+        @Override
+        public String startStreamSession(Camera camera, AccessUnitListener listener) {
+            String sessionId = "upstream-" + starts.incrementAndGet();
+            startEntered.countDown();
+            if (startGate != null) {
+                try {
+                    startGate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failNextStart) {
+                failNextStart = false;
+                throw new IllegalStateException("camera unreachable");
+            }
+            if (closeDuringStart) {
+                // 设备在会话ID返回之前就断开
+                listener.onStreamClosed(null);
+            }
+            return sessionId;
+        }
+
+        @Override
+        public void stopStreamSession(String sessionId) {
+            stopped.add(sessionId);
+        }
+
+        @Override
+        public void adjustStreamQuality(String sessionId, int qualityLevel) {
+        }
+
+        @Override
+        public Map<String, Object> getStreamMetrics(String sessionId) {
+            return Collections.emptyMap();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.aick.mmp.stream.hls;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HlsUrlSignerTest {
+
+    private static final String SECRET = "hls-test-secret";
+    private static final long TTL_MS = 3_600_000;
+
+    private final HlsUrlSigner signer = new HlsUrlSigner(SECRET, TTL_MS);
+
+    @Test
+    void signedTokenVerifiesForTheSameCamera() {
+        String token = signer.sign(7L);
+
+        assertThat(signer.verify(7L, token)).isTrue();
+        assertThat(signer.verify(8L, token)).isFalse();
+        assertThat(new HlsUrlSigner("other-secret", TTL_MS).verify(7L, token)).isFalse();
+    }
+
+    @Test
+    void expiryIsAlignedAndBetweenOneAndTwoTtls() {
+        long before = System.currentTimeMillis();
+        String token = signer.sign(7L);
+        long expiresAt = Long.parseLong(token.substring(0, token.indexOf('-'))) * 1000;
+
+        assertThat(expiresAt % TTL_MS).isZero();
+        assertThat(expiresAt).isGreaterThan(before + TTL_MS).isLessThanOrEqualTo(before + 2 * TTL_MS + 1000);
+    }
+
+    @Test
+    void tamperedTokensAreRejected() {
+        String token = signer.sign(7L);
+        int separator = token.indexOf('-');
+        long expiresAt = Long.parseLong(token.substring(0, separator));
+        String signature = token.substring(separator + 1);
+
+        // 延长过期时间
+        assertThat(signer.verify(7L, (expiresAt + 3600) + "-" + signature)).isFalse();
+        // 改动签名的一个字符
+        char last = signature.charAt(signature.length() - 1);
+        String flipped = signature.substring(0, signature.length() - 1) + (last == 'A' ? 'B' : 'A');
+        assertThat(signer.verify(7L, expiresAt + "-" + flipped)).isFalse();
+        // 截短签名
+        assertThat(signer.verify(7L, expiresAt + "-" + signature.substring(1))).isFalse();
+    }
+
+    @Test
+    void correctlySignedButExpiredTokenIsRejected() {
+        long expiresAt = System.currentTimeMillis() / 1000 - 1;
+        String token = expiresAt + "-" + hmac(7L, expiresAt);
+
+        assertThat(signer.verify(7L, token)).isFalse();
+        // 同样的算法对未过期的时间签名可以通过，说明拒绝的原因是过期
+        long future = System.currentTimeMillis() / 1000 + 600;
+        assertThat(signer.verify(7L, future + "-" + hmac(7L, future))).isTrue();
+    }
+
+    @Test
+    void malformedTokensAreRejected() {
+        assertThat(signer.verify(7L, "")).isFalse();
+        assertThat(signer.verify(7L, "no-separator-number")).isFalse();
+        assertThat(signer.verify(7L, "-abc")).isFalse();
+        assertThat(signer.verify(7L, "99999999999999999999-abc")).isFalse();
+        assertThat(signer.verify(7L, "4102444800")).isFalse();
+    }
+
+    /**
+     * 按文档中的格式独立计算签名：HmacSHA256(cameraId:expiresAt)取前16字节，URL安全Base64且不补齐
+     */
+    private static String hmac(long cameraId, long expiresAt) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] digest = mac.doFinal((cameraId + ":" + expiresAt).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.aick.mmp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+
+    @Test
+    void insertedValuesAreNeverMissed() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        Random random = new Random(23);
+        Set<String> inserted = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            String value = new UUID(random.nextLong(), random.nextLong()).toString();
+            filter.put(value);
+            inserted.add(value);
+        }
+
+        for (String value : inserted) {
+            assertThat(filter.mightContain(value)).as(value).isTrue();
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheTarget() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("jti-" + i);
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // 位数向上取整为2的幂，实际误判率不高于目标；留出统计波动余量
+        assertThat((double) falsePositives / probes).isLessThan(0.015);
+    }
+
+    @Test
+    void sizingFollowsTheStandardFormula() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+
+        // 最优位数约9586，向上取整为2的幂；哈希函数个数约7
+        assertThat(filter.getBits()).isEqualTo(16_384);
+        assertThat(filter.getHashes()).isEqualTo(7);
+        assertThat(Long.bitCount(new BloomFilter(1, 0.5).getBits())).isEqualTo(1);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+
+        assertThat(filter.mightContain("")).isFalse();
+        assertThat(filter.mightContain("jti")).isFalse();
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThatThrownBy(() -> new BloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(10, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(10, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}